@@ -0,0 +1,106 @@
+package com.l7tech.common.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serializable;
+
+/**
+ * Point in time statistics for a cache.
+ *
+ * @see SegmentedCache#getStatistics()
+ */
+public final class CacheStatistics implements Serializable {
+
+    //- PUBLIC
+
+    public CacheStatistics( @NotNull final String name,
+                            final long maximumWeight,
+                            final int size,
+                            final long weight,
+                            final long hitCount,
+                            final long missCount,
+                            final long evictionCount,
+                            final long expirationCount ) {
+        this.name = name;
+        this.maximumWeight = maximumWeight;
+        this.size = size;
+        this.weight = weight;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * @return The number of cached entries
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The total weight of cached entries
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return The ratio of hits to lookups, 1 if there have been no lookups
+     */
+    public double getHitRatio() {
+        final long lookups = hitCount + missCount;
+        return lookups == 0L ? 1.0 : (double) hitCount / (double) lookups;
+    }
+
+    /**
+     * @return The number of entries removed to keep the cache within its maximum weight
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return The number of entries removed due to expiry
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics[name=" + name + ", size=" + size + ", weight=" + weight + "/" + maximumWeight +
+                ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount +
+                ", expirations=" + expirationCount + "]";
+    }
+
+    //- PRIVATE
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final long maximumWeight;
+    private final int size;
+    private final long weight;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+}
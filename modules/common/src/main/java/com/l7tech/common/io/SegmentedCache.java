@@ -0,0 +1,755 @@
+package com.l7tech.common.io;
+
+import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.Functions;
+import com.l7tech.util.TimeSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A concurrent, size bounded, in-memory cache.
+ *
+ * <p>Entries are spread over independently locked segments. Lookups do not block, access order
+ * is recorded when the segment lock is uncontended and otherwise skipped.</p>
+ *
+ * <p>Each segment uses a W-TinyLFU replacement policy. New entries go to a small LRU window, an
+ * entry leaving the window only displaces an entry of the main (segmented LRU) region if it has
+ * been used more often, as estimated by a count-min frequency sketch. This keeps frequently used
+ * entries cached when there is churn from entries that are used only once.</p>
+ *
+ * <p>The size of the cache is the total weight of its entries, by default each entry has a weight
+ * of one. Entries can expire a fixed time after they are written, and can be refreshed in the
+ * background using a loader. Eviction is done as entries are written, no maintenance thread is
+ * used.</p>
+ *
+ * <p>Caches are tracked (weakly) so that statistics for all caches are available via
+ * {@link #getAllStatistics()}.</p>
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public final class SegmentedCache<K,V> {
+
+    //- PUBLIC
+
+    /**
+     * Create a cache with the given maximum number of entries.
+     *
+     * @param name The name for the cache (required)
+     * @param maximumSize The maximum number of entries to cache
+     */
+    public SegmentedCache( @NotNull final String name,
+                           final long maximumSize ) {
+        this( name, maximumSize, 0L, 0L, null, null, new TimeSource() );
+    }
+
+    /**
+     * Create a cache with the given settings.
+     *
+     * @param name The name for the cache (required)
+     * @param maximumWeight The maximum total weight for cached entries
+     * @param expireAfterWriteMillis The time after writing when an entry expires (0 for no expiry)
+     * @param refreshAfterWriteMillis The time after writing when an entry is refreshed (0 for no refresh)
+     * @param weigher The weigher for entries, null for a weight of one
+     * @param loader The loader used to refresh entries, required if entries are to be refreshed
+     */
+    public SegmentedCache( @NotNull  final String name,
+                           final long maximumWeight,
+                           final long expireAfterWriteMillis,
+                           final long refreshAfterWriteMillis,
+                           @Nullable final Functions.Binary<Integer,K,V> weigher,
+                           @Nullable final Functions.UnaryThrows<V,K,? extends Exception> loader ) {
+        this( name, maximumWeight, expireAfterWriteMillis, refreshAfterWriteMillis, weigher, loader, new TimeSource() );
+    }
+
+    /**
+     * Get the cached value for the given key.
+     *
+     * <p>If the entry is due to be refreshed then the current value is returned and a refresh is
+     * started in the background.</p>
+     *
+     * @param key The key (may be null)
+     * @return The value or null if not cached.
+     */
+    @Nullable
+    public V get( @Nullable final K key ) {
+        if ( key == null ) return null;
+
+        final int hash = spread( key.hashCode() );
+        final Segment segment = segmentFor( hash );
+        final Node<K,V> node = segment.map.get( key );
+        if ( node == null ) {
+            missCount.increment();
+            return null;
+        }
+
+        final long now = timeSource.nanoTime();
+        if ( node.isExpired( now ) ) {
+            missCount.increment();
+            segment.expire( node );
+            return null;
+        }
+
+        final V value = node.value;
+        hitCount.increment();
+        segment.recordRead( node );
+        if ( refreshAfterWriteNanos > 0L && now - node.writeTime > refreshAfterWriteNanos ) {
+            refresh( segment, node );
+        }
+        return value;
+    }
+
+    /**
+     * Cache the given value with the default expiry.
+     *
+     * <p>A null key or value is ignored.</p>
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put( @Nullable final K key, @Nullable final V value ) {
+        put( key, value, 0L );
+    }
+
+    /**
+     * Cache the given value.
+     *
+     * <p>A null key or value is ignored.</p>
+     *
+     * @param key The key
+     * @param value The value
+     * @param expireAfterWriteMillis The time after which the entry expires (0 for the cache default)
+     */
+    public void put( @Nullable final K key, @Nullable final V value, final long expireAfterWriteMillis ) {
+        if ( key == null || value == null ) return;
+
+        final int weight = weigh( key, value );
+        final int hash = spread( key.hashCode() );
+        final Segment segment = segmentFor( hash );
+        segment.lock();
+        try {
+            segment.put( key, hash, value, weight, expireAfterWriteMillis > 0L ?
+                    TimeUnit.MILLISECONDS.toNanos( expireAfterWriteMillis ) :
+                    expireAfterWriteNanos );
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Remove the cached value for the given key.
+     *
+     * @param key The key (may be null)
+     * @return The previously cached value or null
+     */
+    @Nullable
+    public V remove( @Nullable final K key ) {
+        if ( key == null ) return null;
+
+        final Segment segment = segmentFor( spread( key.hashCode() ) );
+        segment.lock();
+        try {
+            final Node<K,V> node = segment.map.get( key );
+            if ( node != null ) {
+                segment.removeNode( node );
+                return node.value;
+            }
+            return null;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear() {
+        for ( final Segment segment : segments ) {
+            segment.lock();
+            try {
+                segment.clear();
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    /**
+     * Get the number of cached entries.
+     *
+     * <p>This may include expired entries that have not yet been removed.</p>
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        int size = 0;
+        for ( final Segment segment : segments ) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the name of this cache.
+     *
+     * @return The name
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the current statistics for this cache.
+     *
+     * @return The statistics
+     */
+    @NotNull
+    public CacheStatistics getStatistics() {
+        long weight = 0L;
+        for ( final Segment segment : segments ) {
+            weight += segment.weight;
+        }
+        return new CacheStatistics(
+                name,
+                maximumWeight,
+                size(),
+                weight,
+                hitCount.sum(),
+                missCount.sum(),
+                evictionCount.sum(),
+                expirationCount.sum() );
+    }
+
+    /**
+     * Clear this cache and stop tracking its statistics.
+     */
+    public void shutdown() {
+        caches.remove( this );
+        clear();
+    }
+
+    /**
+     * Get statistics for all caches.
+     *
+     * @return The statistics, may be empty but never null
+     */
+    @NotNull
+    public static Collection<CacheStatistics> getAllStatistics() {
+        final Collection<SegmentedCache<?,?>> currentCaches;
+        synchronized ( caches ) {
+            currentCaches = new ArrayList<SegmentedCache<?,?>>( caches );
+        }
+
+        final Collection<CacheStatistics> statistics = new ArrayList<CacheStatistics>( currentCaches.size() );
+        for ( final SegmentedCache<?,?> cache : currentCaches ) {
+            statistics.add( cache.getStatistics() );
+        }
+        return statistics;
+    }
+
+    //- PACKAGE
+
+    SegmentedCache( @NotNull  final String name,
+                    final long maximumWeight,
+                    final long expireAfterWriteMillis,
+                    final long refreshAfterWriteMillis,
+                    @Nullable final Functions.Binary<Integer,K,V> weigher,
+                    @Nullable final Functions.UnaryThrows<V,K,? extends Exception> loader,
+                    @NotNull  final TimeSource timeSource ) {
+        if ( maximumWeight < 1L ) throw new IllegalArgumentException( "Invalid maximum weight " + maximumWeight );
+        if ( refreshAfterWriteMillis > 0L && loader == null ) throw new IllegalArgumentException( "Loader is required for refresh" );
+
+        this.name = name;
+        this.maximumWeight = maximumWeight;
+        this.expireAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos( Math.max( 0L, expireAfterWriteMillis ) );
+        this.refreshAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos( Math.max( 0L, refreshAfterWriteMillis ) );
+        this.weigher = weigher;
+        this.loader = loader;
+        this.timeSource = timeSource;
+
+        // Use fewer segments for small caches so that each segment has a useful capacity
+        int segmentCount = 1;
+        while ( segmentCount < MAX_SEGMENTS && maximumWeight / (long) (segmentCount * 2) >= MIN_SEGMENT_WEIGHT ) {
+            segmentCount *= 2;
+        }
+        @SuppressWarnings({ "unchecked" })
+        final Segment[] segments = (Segment[]) new SegmentedCache.Segment[segmentCount];
+        final long segmentWeight = (maximumWeight + (long) segmentCount - 1L) / (long) segmentCount;
+        for ( int i=0; i<segmentCount; i++ ) {
+            segments[i] = new Segment( segmentWeight );
+        }
+        this.segments = segments;
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros( segmentCount );
+
+        caches.add( this );
+    }
+
+    //- PRIVATE
+
+    private static final Logger logger = Logger.getLogger( SegmentedCache.class.getName() );
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final long MIN_SEGMENT_WEIGHT = 64L;
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final Set<SegmentedCache<?,?>> caches =
+            Collections.synchronizedSet( Collections.newSetFromMap( new WeakHashMap<SegmentedCache<?,?>,Boolean>() ) );
+
+    private final String name;
+    private final long maximumWeight;
+    private final long expireAfterWriteNanos;
+    private final long refreshAfterWriteNanos;
+    private final Functions.Binary<Integer,K,V> weigher;
+    private final Functions.UnaryThrows<V,K,? extends Exception> loader;
+    private final TimeSource timeSource;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    private static int spread( final int hashCode ) {
+        final int hash = hashCode * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Segment segmentFor( final int hash ) {
+        return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private int weigh( final K key, final V value ) {
+        if ( weigher == null ) return 1;
+        final Integer weight = weigher.call( key, value );
+        if ( weight == null || weight < 0 ) throw new IllegalArgumentException( "Invalid weight for entry " + weight );
+        return weight;
+    }
+
+    private void refresh( final Segment segment, final Node<K,V> node ) {
+        if ( !Node.REFRESHING.compareAndSet( node, 0, 1 ) ) return;
+
+        final long writeTime = node.writeTime;
+        try {
+            RefreshExecutor.executor.execute( new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final V value = loader.call( node.key );
+                        segment.refreshed( node, writeTime, value );
+                    } catch ( Exception e ) {
+                        logger.log( Level.FINE, "Error refreshing entry for cache ''{0}'': {1}",
+                                new Object[]{ name, ExceptionUtils.getMessage( e ) } );
+                    } finally {
+                        node.refreshing = 0;
+                    }
+                }
+            } );
+        } catch ( RejectedExecutionException e ) {
+            node.refreshing = 0;
+        }
+    }
+
+    /**
+     * Lazily created executor for background refresh.
+     */
+    private static final class RefreshExecutor {
+        private static final Executor executor;
+
+        static {
+            final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                    1, 4, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>( 1000 ), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread( final Runnable runnable ) {
+                    final Thread thread = new Thread( runnable, "SegmentedCache-refresh-" + count.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+            threadPoolExecutor.allowCoreThreadTimeOut( true );
+            executor = threadPoolExecutor;
+        }
+    }
+
+    private enum Queue { WINDOW, PROBATION, PROTECTED }
+
+    /**
+     * A cache entry, the entry is linked into the queue for its region of the segment.
+     */
+    private static final class Node<K,V> {
+        private static final AtomicIntegerFieldUpdater<Node> REFRESHING = AtomicIntegerFieldUpdater.newUpdater( Node.class, "refreshing" );
+
+        private final K key;
+        private final int hash;
+        private volatile V value;
+        private volatile long writeTime;
+        private volatile long expiresAt; // 0 for no expiry
+        private volatile int refreshing;
+        private int weight;
+        private Queue queue;
+        private Node<K,V> previous;
+        private Node<K,V> next;
+
+        private Node( final K key, final int hash ) {
+            this.key = key;
+            this.hash = hash;
+        }
+
+        private boolean isExpired( final long now ) {
+            final long expiresAt = this.expiresAt;
+            return expiresAt != 0L && now - expiresAt >= 0L;
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes, most recently used first.
+     */
+    private static final class AccessOrderQueue<K,V> {
+        private Node<K,V> head;
+        private Node<K,V> tail;
+        private long weight;
+
+        private void addFirst( final Node<K,V> node ) {
+            node.previous = null;
+            node.next = head;
+            if ( head == null ) {
+                tail = node;
+            } else {
+                head.previous = node;
+            }
+            head = node;
+            weight += (long) node.weight;
+        }
+
+        private void remove( final Node<K,V> node ) {
+            if ( node.previous == null ) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if ( node.next == null ) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            weight -= (long) node.weight;
+        }
+
+        private void moveToFirst( final Node<K,V> node ) {
+            if ( head != node ) {
+                remove( node );
+                addFirst( node );
+            }
+        }
+
+        private void clear() {
+            head = null;
+            tail = null;
+            weight = 0L;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 bit counters, used to estimate how often a key is used.
+     *
+     * <p>Counters are halved periodically so that the estimates favour recent use.</p>
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97cb3127, 0xc2b2ae35, 0x85ebca6b, 0x27d4eb2f };
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch( final long maximumWeight ) {
+            int size = 256;
+            while ( (long) size < maximumWeight * 4L && size < (1 << 18) ) {
+                size *= 2;
+            }
+            this.table = new byte[size];
+            this.mask = size - 1;
+            this.sampleSize = size * 10;
+        }
+
+        private int frequency( final int hash ) {
+            int frequency = Integer.MAX_VALUE;
+            for ( final int seed : SEEDS ) {
+                frequency = Math.min( frequency, (int) table[index( hash, seed )] );
+            }
+            return frequency;
+        }
+
+        private void increment( final int hash ) {
+            boolean added = false;
+            for ( final int seed : SEEDS ) {
+                final int index = index( hash, seed );
+                if ( table[index] < (byte) 15 ) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if ( added && ++additions >= sampleSize ) {
+                reset();
+            }
+        }
+
+        private int index( final int hash, final int seed ) {
+            int mixed = (hash + seed) * 0x9e3779b9;
+            mixed = (mixed ^ (mixed >>> 16)) * seed;
+            return (mixed ^ (mixed >>> 13)) & mask;
+        }
+
+        private void reset() {
+            for ( int i=0; i<table.length; i++ ) {
+                table[i] = (byte) (table[i] >>> 1);
+            }
+            additions /= 2;
+        }
+    }
+
+    /**
+     * A segment of the cache, the lock guards all state other than the map.
+     */
+    private final class Segment extends ReentrantLock {
+        private final ConcurrentHashMap<K,Node<K,V>> map = new ConcurrentHashMap<K,Node<K,V>>();
+        private final AccessOrderQueue<K,V> window = new AccessOrderQueue<K,V>();
+        private final AccessOrderQueue<K,V> probation = new AccessOrderQueue<K,V>();
+        private final AccessOrderQueue<K,V> protectedQueue = new AccessOrderQueue<K,V>();
+        private final FrequencySketch sketch;
+        private final long maximumWeight;
+        private final long windowMaximum;
+        private final long protectedMaximum;
+        private volatile long weight;
+
+        private Segment( final long maximumWeight ) {
+            this.maximumWeight = maximumWeight;
+            this.windowMaximum = Math.max( 1L, maximumWeight * (long) WINDOW_PERCENT / 100L );
+            this.protectedMaximum = (maximumWeight - windowMaximum) * (long) PROTECTED_PERCENT / 100L;
+            this.sketch = new FrequencySketch( maximumWeight );
+        }
+
+        /**
+         * Record a read of the node, skipped if the segment is busy.
+         */
+        private void recordRead( final Node<K,V> node ) {
+            if ( tryLock() ) {
+                try {
+                    sketch.increment( node.hash );
+                    if ( node.queue != null ) {
+                        onAccess( node );
+                    }
+                } finally {
+                    unlock();
+                }
+            }
+        }
+
+        private void put( final K key, final int hash, final V value, final int weight, final long expireAfterNanos ) {
+            sketch.increment( hash );
+
+            Node<K,V> node = map.get( key );
+            if ( weight > maximumWeight ) {
+                // too large to cache, also remove any current value
+                if ( node != null ) removeNode( node );
+                return;
+            }
+
+            final long now = timeSource.nanoTime();
+            if ( node == null ) {
+                node = new Node<K,V>( key, hash );
+                setValue( node, value, weight, now, expireAfterNanos );
+                node.queue = Queue.WINDOW;
+                window.addFirst( node );
+                map.put( key, node );
+                this.weight += (long) weight;
+            } else {
+                final AccessOrderQueue<K,V> queue = queue( node );
+                queue.remove( node );
+                this.weight -= (long) node.weight;
+                setValue( node, value, weight, now, expireAfterNanos );
+                queue.addFirst( node );
+                this.weight += (long) weight;
+                onAccess( node );
+            }
+
+            evict();
+        }
+
+        private void refreshed( final Node<K,V> node, final long writeTime, @Nullable final V value ) {
+            lock();
+            try {
+                if ( node.queue != null && node.writeTime == writeTime ) {
+                    if ( value == null ) {
+                        removeNode( node );
+                    } else {
+                        put( node.key, node.hash, value, weigh( node.key, value ), expireAfterWriteNanos );
+                    }
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        private void expire( final Node<K,V> node ) {
+            lock();
+            try {
+                if ( node.queue != null && node.isExpired( timeSource.nanoTime() ) ) {
+                    removeNode( node );
+                    expirationCount.increment();
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        private void removeNode( final Node<K,V> node ) {
+            map.remove( node.key, node );
+            queue( node ).remove( node );
+            node.queue = null;
+            weight -= (long) node.weight;
+        }
+
+        private void clear() {
+            for ( final Node<K,V> node : map.values() ) {
+                node.queue = null;
+            }
+            map.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            weight = 0L;
+        }
+
+        private void setValue( final Node<K,V> node,
+                               final V value,
+                               final int weight,
+                               final long now,
+                               final long expireAfterNanos ) {
+            node.value = value;
+            node.weight = weight;
+            node.writeTime = now;
+            node.expiresAt = expireAfterNanos > 0L ? Math.max( 1L, now + Math.min( expireAfterNanos, Long.MAX_VALUE / 2L ) ) : 0L;
+        }
+
+        private AccessOrderQueue<K,V> queue( final Node<K,V> node ) {
+            switch ( node.queue ) {
+                case WINDOW:
+                    return window;
+                case PROBATION:
+                    return probation;
+                default:
+                    return protectedQueue;
+            }
+        }
+
+        private void onAccess( final Node<K,V> node ) {
+            switch ( node.queue ) {
+                case WINDOW:
+                    window.moveToFirst( node );
+                    break;
+                case PROBATION:
+                    // promote to protected, demoting the least recently used protected entries if necessary
+                    probation.remove( node );
+                    node.queue = Queue.PROTECTED;
+                    protectedQueue.addFirst( node );
+                    while ( protectedQueue.weight > protectedMaximum && protectedQueue.tail != node ) {
+                        final Node<K,V> demoted = protectedQueue.tail;
+                        protectedQueue.remove( demoted );
+                        demoted.queue = Queue.PROBATION;
+                        probation.addFirst( demoted );
+                    }
+                    break;
+                case PROTECTED:
+                    protectedQueue.moveToFirst( node );
+                    break;
+            }
+        }
+
+        /**
+         * Evict entries until within the maximum weight.
+         *
+         * <p>Entries overflowing the window are candidates for the main region, a candidate is
+         * admitted if there is space or if it is used more often than the main region victim.</p>
+         */
+        private void evict() {
+            final long mainMaximum = maximumWeight - windowMaximum;
+            while ( weight > maximumWeight || window.weight > windowMaximum ) {
+                if ( window.weight > windowMaximum && window.tail != null ) {
+                    final Node<K,V> candidate = window.tail;
+                    window.remove( candidate );
+                    if ( probation.weight + protectedQueue.weight + (long) candidate.weight <= mainMaximum ) {
+                        candidate.queue = Queue.PROBATION;
+                        probation.addFirst( candidate );
+                        continue;
+                    }
+
+                    final Node<K,V> victim = mainVictim();
+                    if ( victim == null || admit( candidate, victim ) ) {
+                        candidate.queue = Queue.PROBATION;
+                        probation.addFirst( candidate );
+                        if ( victim != null ) evictNode( victim );
+                    } else {
+                        discard( candidate );
+                    }
+                } else {
+                    final Node<K,V> victim = mainVictim();
+                    if ( victim == null ) {
+                        if ( window.tail == null ) break;
+                        evictNode( window.tail );
+                    } else {
+                        evictNode( victim );
+                    }
+                }
+            }
+        }
+
+        private Node<K,V> mainVictim() {
+            return probation.tail != null ? probation.tail : protectedQueue.tail;
+        }
+
+        private boolean admit( final Node<K,V> candidate, final Node<K,V> victim ) {
+            return sketch.frequency( candidate.hash ) > sketch.frequency( victim.hash );
+        }
+
+        private void evictNode( final Node<K,V> node ) {
+            queue( node ).remove( node );
+            discard( node );
+        }
+
+        /**
+         * Discard a node that is not in any queue.
+         */
+        private void discard( final Node<K,V> node ) {
+            map.remove( node.key, node );
+            node.queue = null;
+            weight -= (long) node.weight;
+            if ( node.isExpired( timeSource.nanoTime() ) ) {
+                expirationCount.increment();
+            } else {
+                evictionCount.increment();
+            }
+        }
+    }
+}
@@ -14,7 +14,10 @@ import com.whirlycott.cache.impl.ConcurrentHashMapImpl;
 
 /**
  * Creates a whirlycache.
+ *
+ * @deprecated Use {@link SegmentedCache}, which bounds size without a tuner thread.
  */
+@Deprecated
 public class WhirlycacheFactory {
 
     //- PUBLIC
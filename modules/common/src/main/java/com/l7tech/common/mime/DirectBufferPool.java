@@ -0,0 +1,94 @@
+package com.l7tech.common.mime;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Budgeted pool of fixed size direct (off-heap) buffers.
+ *
+ * <p>At most the budgeted number of buffers are in use at any time. When the
+ * budget is exhausted callers wait for buffers to be released, and are refused
+ * a buffer if none is released in time.</p>
+ *
+ * <p>The pool used by {@link OffHeapStashManager} is shared so that other off-heap
+ * stores are included in the same budget.</p>
+ *
+ * @see OffHeapStashManager#getBufferPool()
+ */
+public final class DirectBufferPool {
+
+    //- PUBLIC
+
+    /**
+     * Create a pool with the given budget.
+     *
+     * @param chunkSize The size of each buffer in bytes
+     * @param maxBytes The maximum number of bytes in use
+     */
+    public DirectBufferPool( final int chunkSize, final long maxBytes ) {
+        if ( chunkSize < 1 ) throw new IllegalArgumentException( "chunkSize must be positive" );
+        this.chunkSize = chunkSize;
+        this.maxChunks = (int) Math.min( (long) Integer.MAX_VALUE, Math.max( 0L, maxBytes / (long) chunkSize ) );
+        this.permits = new Semaphore( maxChunks );
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Get a cleared buffer, waiting if the budget is exhausted.
+     *
+     * @param waitMillis The maximum time to wait for a buffer to be released
+     * @return The buffer or null if the budget or the JVM direct memory is exhausted
+     */
+    public ByteBuffer allocate( final long waitMillis ) {
+        try {
+            if ( !permits.tryAcquire( Math.max( 0L, waitMillis ), TimeUnit.MILLISECONDS ) ) {
+                return null;
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        ByteBuffer buffer = free.poll();
+        if ( buffer == null ) {
+            try {
+                buffer = ByteBuffer.allocateDirect( chunkSize );
+            } catch ( OutOfMemoryError e ) {
+                // direct memory limit reached before the budget
+                permits.release();
+                return null;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool, the buffer must not be used after it is released.
+     *
+     * @param buffer The buffer previously allocated from this pool
+     */
+    public void release( final ByteBuffer buffer ) {
+        buffer.clear();
+        free.offer( buffer );
+        permits.release();
+    }
+
+    /**
+     * @return The number of bytes in buffers that are currently allocated
+     */
+    public long getBytesInUse() {
+        return (long) (maxChunks - permits.availablePermits()) * (long) chunkSize;
+    }
+
+    //- PRIVATE
+
+    private final int chunkSize;
+    private final int maxChunks;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+}
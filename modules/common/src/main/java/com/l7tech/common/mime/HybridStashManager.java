@@ -108,7 +108,11 @@ public class HybridStashManager implements StashManager {
         size += length;
 
         if (size  > limit) {
-            getFilestash().stash(ordinal, in, offset, length);
+            try {
+                getFilestash().stash(ordinal, in, offset, length);
+            } finally {
+                BufferPool.returnBuffer(in); // the array is owned by the stash but is not kept by the file stash
+            }
             return;
         }
 
@@ -0,0 +1,497 @@
+package com.l7tech.common.mime;
+
+import com.l7tech.util.BufferPool;
+import com.l7tech.util.ConfigFactory;
+import com.l7tech.util.PoolByteArrayOutputStream;
+import com.l7tech.util.ResourceUtils;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A StashManager that keeps large parts out of the Java heap.
+ * <p>
+ * Small parts are stashed in byte arrays, as for the {@link HybridStashManager}, so their bytes remain available
+ * without a copy. Larger parts are stashed in pooled direct buffers until their totalled sizes exceed a limit, or
+ * the shared off-heap budget is exhausted. Further parts are written to files that are read through the file channel
+ * on recall. Recalled streams read the stashed buffers directly, no copy of the content is made.
+ * <p>
+ * When the off-heap budget is exhausted stashing waits briefly for buffers to be released by other stash managers
+ * before falling back to a file.
+ * <p>
+ * Buffers are returned to the pool when the stash manager is closed, so it must be closed when no longer required.
+ */
+public class OffHeapStashManager implements StashManager {
+    private static final int CHUNK_SIZE = 16384;
+    private static final long MAX_OFF_HEAP_BYTES = ConfigFactory.getLongProperty( OffHeapStashManager.class.getName() + ".maxOffHeapBytes", Math.min( 256L * 1024L * 1024L, getMaxDirectMemory() ) );
+    private static final int MAX_HEAP_PART_BYTES = ConfigFactory.getIntProperty( OffHeapStashManager.class.getName() + ".maxHeapPartBytes", 65536 );
+    private static final long BUFFER_WAIT_MILLIS = ConfigFactory.getLongProperty( OffHeapStashManager.class.getName() + ".bufferWaitMillis", 50L );
+    private static final DirectBufferPool POOL = new DirectBufferPool( CHUNK_SIZE, MAX_OFF_HEAP_BYTES );
+
+    private final int limit;
+    private final int heapPartLimit;
+    private final File dir;
+    private final String unique;
+    private final DirectBufferPool pool;
+    private final long bufferWaitMillis;
+    private final ArrayList<Part> stashed = new ArrayList<Part>();
+    private final ArrayList<IOException> thrown = new ArrayList<IOException>();
+    private long size = 0; // our current total stash size
+
+    /**
+     * Create a new OffHeapStashManager that will store stashed InputStreams in off-heap buffers, but move them to
+     * files if their totalled sizes exceed the specified size limit.
+     *
+     * @param limit   the maximum total number of bytes, for all attachments stashed, to store in buffers.
+     * @param dir     the directory in which to create stash files, should it be necessary; {@link FileStashManager}
+     * @param unique  the unique filename prefix to use for created stash files; {@link FileStashManager}
+     */
+    public OffHeapStashManager( int limit, File dir, String unique ) {
+        this( limit, dir, unique, MAX_HEAP_PART_BYTES, POOL, BUFFER_WAIT_MILLIS );
+    }
+
+    OffHeapStashManager( int limit, File dir, String unique, int heapPartLimit, DirectBufferPool pool, long bufferWaitMillis ) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be positive");
+        if (dir == null) throw new NullPointerException("directory must be supplied");
+        if (unique == null || unique.length() < 1) throw new IllegalArgumentException("unique filename prefix missing or empty");
+        this.limit = limit;
+        this.heapPartLimit = heapPartLimit;
+        this.dir = dir;
+        this.unique = unique;
+        this.pool = pool;
+        this.bufferWaitMillis = bufferWaitMillis;
+    }
+
+    /**
+     * Get the pool of direct buffers shared by off-heap stash managers.
+     *
+     * @return The shared pool, never null
+     */
+    public static DirectBufferPool getBufferPool() {
+        return POOL;
+    }
+
+    public void stash(int ordinal, InputStream in) throws IOException {
+        prepare(ordinal);
+        try {
+            final Part part = size >= limit ?
+                    spill(ordinal, new ArrayList<ByteBuffer>(), in) :
+                    read(ordinal, in);
+            stashed.set(ordinal, part);
+            size += part.size;
+        } catch (IOException e) {
+            thrown.set(ordinal, e);
+            throw e;
+        }
+    }
+
+    public void stash(int ordinal, byte[] in) throws IOException {
+        stash(ordinal, in, 0, in.length);
+    }
+
+    /**
+     * Stash a byte array, the array is retained rather than copied unless the limit is exceeded.
+     * <p>
+     * As for the {@link ByteArrayStashManager}, the stash manager takes ownership of the array. It is returned to
+     * the {@link BufferPool} when it is no longer required, unless it has been handed out by {@link #recallBytes}.
+     */
+    public void stash(int ordinal, byte[] in, int offset, int length) throws IOException {
+        if (size + length > limit) {
+            try {
+                stash(ordinal, new ByteArrayInputStream(in, offset, length));
+            } finally {
+                BufferPool.returnBuffer(in);
+            }
+            return;
+        }
+
+        prepare(ordinal);
+        stashed.set(ordinal, new Part(new ByteBuffer[]{ ByteBuffer.wrap(in, offset, length).slice() }, length, in, offset, null, null));
+        size += length;
+    }
+
+    public void unstash(int ordinal) {
+        final Part part = getPart(ordinal);
+        if (part != null) {
+            size -= part.size;
+            part.release();
+            stashed.set(ordinal, null);
+        }
+        if (ordinal >= 0 && ordinal < thrown.size())
+            thrown.set(ordinal, null);
+    }
+
+    public long getSize(int ordinal) {
+        final Part part = getPart(ordinal);
+        return part == null ? -1 : part.size;
+    }
+
+    /**
+     * Package-private test method that returns our current accounting size limit
+     *
+     * @return current total number of bytes we believe we are holding
+     */
+    long getCurrentTotalSize() {
+        return size;
+    }
+
+    /**
+     * Package-private test method to check if a part was stashed in a file.
+     */
+    boolean isInFile(int ordinal) {
+        final Part part = getPart(ordinal);
+        return part != null && part.file != null;
+    }
+
+    /**
+     * Recall a stream that reads the stashed content directly.
+     * <p>
+     * The stream fails with an IOException if the part is unstashed while it is being read.
+     */
+    public InputStream recall(int ordinal) throws IOException, NoSuchPartException {
+        if (ordinal >= 0 && ordinal < thrown.size()) {
+            final IOException ioex = thrown.get(ordinal);
+            if (ioex != null) throw ioex;
+        }
+
+        final Part part = getPart(ordinal);
+        if (part == null)
+            throw new NoSuchPartException("No part stashed with ordinal " + ordinal);
+
+        return new PartInputStream(part);
+    }
+
+    /**
+     * Byte arrays are available for parts that were stashed as byte arrays or that were small enough to be kept
+     * in the heap.
+     */
+    public boolean isByteArrayAvailable(int ordinal) {
+        final Part part = getPart(ordinal);
+        return part != null && part.bytes != null;
+    }
+
+    public byte[] recallBytes(int ordinal) throws NoSuchPartException {
+        final Part part = getPart(ordinal);
+        if (part == null || part.bytes == null)
+            throw new NoSuchPartException("Parts stashed off-heap or in a file do not keep a byte array", ordinal);
+
+        if (part.offset == 0 && part.bytes.length == part.size) {
+            part.bytesShared = true;
+            return part.bytes;
+        }
+
+        final byte[] bytes = new byte[(int) part.size];
+        System.arraycopy(part.bytes, part.offset, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    public boolean peek(int ordinal) {
+        return getPart(ordinal) != null;
+    }
+
+    public int getMaxOrdinal() {
+        return stashed.size();
+    }
+
+    public void close() {
+        for (Part part : stashed) {
+            if (part != null) part.release();
+        }
+        stashed.clear();
+        thrown.clear();
+        size = 0;
+    }
+
+    private void prepare(int ordinal) {
+        if (ordinal < 0) throw new IllegalArgumentException("ordinal must be non-negative");
+        while (stashed.size() <= ordinal) stashed.add(null);
+        while (thrown.size() <= ordinal) thrown.add(null);
+        unstash(ordinal);
+    }
+
+    private Part getPart(int ordinal) {
+        if (stashed.size() <= ordinal || ordinal < 0)
+            return null;
+        return stashed.get(ordinal);
+    }
+
+    /**
+     * Read the stream into a byte array if it is small, else into pooled buffers or a file.
+     */
+    private Part read(int ordinal, InputStream in) throws IOException {
+        final PoolByteArrayOutputStream heap = new PoolByteArrayOutputStream(Math.min(heapPartLimit + 1, CHUNK_SIZE));
+        final byte[] buff = BufferPool.getBuffer(CHUNK_SIZE);
+        try {
+            int got;
+            while ((got = in.read(buff)) != -1) {
+                heap.write(buff, 0, got);
+                if (heap.size() > heapPartLimit || size + heap.size() > limit) {
+                    final InputStream content = new SequenceInputStream(new ByteArrayInputStream(heap.getPooledByteArray(), 0, heap.size()), in);
+                    return size + heap.size() > limit ?
+                            spill(ordinal, new ArrayList<ByteBuffer>(), content) :
+                            readOffHeap(ordinal, content);
+                }
+            }
+
+            final byte[] bytes = heap.toByteArray();
+            return new Part(new ByteBuffer[]{ ByteBuffer.wrap(bytes) }, bytes.length, bytes, 0, null, null);
+        } finally {
+            heap.close();
+            BufferPool.returnBuffer(buff);
+        }
+    }
+
+    /**
+     * Read the stream into pooled buffers, spilling to a file if the limit or off-heap budget is exceeded.
+     */
+    private Part readOffHeap(int ordinal, InputStream in) throws IOException {
+        final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        final byte[] buff = BufferPool.getBuffer(CHUNK_SIZE);
+        boolean buffered = false;
+        try {
+            long partSize = 0;
+            ByteBuffer chunk = null;
+            int got;
+            while ((got = in.read(buff)) != -1) {
+                if (size + partSize + got > limit) {
+                    return spill(ordinal, chunks, new SequenceInputStream(new ByteArrayInputStream(buff, 0, got), in));
+                }
+
+                int offset = 0;
+                while (offset < got) {
+                    if (chunk == null || !chunk.hasRemaining()) {
+                        chunk = pool.allocate(bufferWaitMillis);
+                        if (chunk == null) {
+                            // off-heap budget exhausted
+                            return spill(ordinal, chunks, new SequenceInputStream(new ByteArrayInputStream(buff, offset, got - offset), in));
+                        }
+                        chunks.add(chunk);
+                    }
+                    final int length = Math.min(chunk.remaining(), got - offset);
+                    chunk.put(buff, offset, length);
+                    offset += length;
+                }
+                partSize += got;
+            }
+
+            final ByteBuffer[] buffers = chunks.toArray(new ByteBuffer[chunks.size()]);
+            for (ByteBuffer buffer : buffers) buffer.flip();
+            buffered = true;
+            return new Part(buffers, partSize, null, 0, pool, null);
+        } finally {
+            BufferPool.returnBuffer(buff);
+            if (!buffered) {
+                for (ByteBuffer buffer : chunks) pool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Write the given chunks followed by the remainder of the stream to a file that is kept open for recall.
+     */
+    private Part spill(int ordinal, List<ByteBuffer> chunks, InputStream in) throws IOException {
+        final File file = new File(dir, unique + "_" + ordinal + ".part");
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        boolean spilled = false;
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            for (ByteBuffer chunk : chunks) {
+                chunk.flip();
+                while (chunk.hasRemaining()) channel.write(chunk);
+            }
+
+            final byte[] buff = BufferPool.getBuffer(CHUNK_SIZE);
+            try {
+                int got;
+                while ((got = in.read(buff)) != -1) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(buff, 0, got);
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }
+            } finally {
+                BufferPool.returnBuffer(buff);
+            }
+
+            final long length = channel.position();
+            spilled = true;
+            return new Part(new ByteBuffer[0], length, null, 0, null, file, randomAccessFile);
+        } finally {
+            if (!spilled) {
+                ResourceUtils.closeQuietly(randomAccessFile);
+                delete(file);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) file.deleteOnExit();
+    }
+
+    /**
+     * Get the JVM limit for direct buffers, which is the maximum heap size unless -XX:MaxDirectMemorySize is set.
+     */
+    private static long getMaxDirectMemory() {
+        long max = Runtime.getRuntime().maxMemory();
+        try {
+            for (final String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (argument.startsWith("-XX:MaxDirectMemorySize=")) {
+                    final String value = argument.substring("-XX:MaxDirectMemorySize=".length()).toLowerCase();
+                    final int suffix = "kmgt".indexOf(value.isEmpty() ? ' ' : value.charAt(value.length() - 1));
+                    final long size = Long.parseLong(suffix < 0 ? value : value.substring(0, value.length() - 1));
+                    max = suffix < 0 ? size : size << (10 * (suffix + 1));
+                }
+            }
+        } catch (NumberFormatException | SecurityException e) {
+            // use the default
+        }
+        return max;
+    }
+
+    /**
+     * A stashed part, the buffers are flipped and are only read through views.
+     * <p>
+     * A part stashed in a file has no buffers, it is read through the file channel which is closed on release.
+     */
+    private static final class Part {
+        private final ByteBuffer[] buffers;
+        private final long size;
+        private final byte[] bytes;
+        private final int offset;
+        private final DirectBufferPool pool;
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private volatile boolean released;
+        private boolean bytesShared; // the byte array has been handed out so must not be returned to the pool
+
+        private Part(ByteBuffer[] buffers, long size, byte[] bytes, int offset, DirectBufferPool pool, File file) {
+            this(buffers, size, bytes, offset, pool, file, null);
+        }
+
+        private Part(ByteBuffer[] buffers, long size, byte[] bytes, int offset, DirectBufferPool pool, File file, RandomAccessFile randomAccessFile) {
+            this.buffers = buffers;
+            this.size = size;
+            this.bytes = bytes;
+            this.offset = offset;
+            this.pool = pool;
+            this.file = file;
+            this.randomAccessFile = randomAccessFile;
+        }
+
+        private void release() {
+            if (released) return;
+            released = true;
+            if (pool != null) {
+                for (ByteBuffer buffer : buffers) pool.release(buffer);
+            }
+            if (bytes != null && !bytesShared) {
+                BufferPool.returnBuffer(bytes);
+            }
+            if (randomAccessFile != null) {
+                ResourceUtils.closeQuietly(randomAccessFile);
+            }
+            if (file != null) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Stream over the buffers of a part using its own views of the buffers.
+     */
+    private static final class PartInputStream extends InputStream {
+        private final Part part;
+        private final ByteBuffer[] views;
+        private int index;
+        private long remaining;
+
+        private PartInputStream(Part part) {
+            this.part = part;
+            this.views = new ByteBuffer[part.buffers.length];
+            for (int i = 0; i < views.length; i++) {
+                views[i] = part.buffers[i].duplicate();
+            }
+            this.remaining = part.size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (part.randomAccessFile != null) {
+                final byte[] b = new byte[1];
+                return readFile(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+            final ByteBuffer buffer = current();
+            if (buffer == null) return -1;
+            remaining--;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (part.randomAccessFile != null) return readFile(b, off, len);
+            final ByteBuffer buffer = current();
+            if (buffer == null) return -1;
+            final int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            remaining -= length;
+            return length;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (part.randomAccessFile != null) {
+                if (part.released) throw new IOException("Stashed part has been released");
+                final long skipped = Math.max(0L, Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+            long skipped = 0;
+            while (skipped < n) {
+                final ByteBuffer buffer = current();
+                if (buffer == null) break;
+                final int length = (int) Math.min(n - skipped, (long) buffer.remaining());
+                buffer.position(buffer.position() + length);
+                remaining -= length;
+                skipped += length;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (part.released) throw new IOException("Stashed part has been released");
+            return (int) Math.min((long) Integer.MAX_VALUE, remaining);
+        }
+
+        /**
+         * Read from the file at the current offset, positional reads do not change the channel position so
+         * streams for the same part can be read concurrently.
+         */
+        private int readFile(byte[] b, int off, int len) throws IOException {
+            if (part.released) throw new IOException("Stashed part has been released");
+            if (remaining <= 0) return -1;
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min((long) len, remaining));
+            final FileChannel channel = part.randomAccessFile.getChannel();
+            int got;
+            do {
+                got = channel.read(buffer, part.size - remaining);
+            } while (got == 0);
+            if (got < 0) throw new EOFException("Stashed part file is truncated");
+            remaining -= got;
+            return got;
+        }
+
+        private ByteBuffer current() throws IOException {
+            if (part.released) throw new IOException("Stashed part has been released");
+            while (index < views.length) {
+                if (views[index].hasRemaining()) return views[index];
+                views[index++] = null;
+            }
+            return null;
+        }
+    }
+}
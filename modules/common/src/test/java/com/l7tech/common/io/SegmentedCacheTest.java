@@ -0,0 +1,257 @@
+package com.l7tech.common.io;
+
+import com.l7tech.util.Functions;
+import com.l7tech.util.TimeSource;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the segmented cache.
+ */
+public class SegmentedCacheTest {
+
+    @Test
+    public void testBasicOperations() {
+        final SegmentedCache<String,String> cache = new SegmentedCache<String,String>( "basic", 10L );
+        try {
+            cache.put( "a", "1" );
+            cache.put( "b", "2" );
+            cache.put( null, "3" );
+            cache.put( "c", null );
+            assertEquals( "1", cache.get( "a" ) );
+            assertEquals( "2", cache.get( "b" ) );
+            assertNull( cache.get( "c" ) );
+            assertNull( cache.get( null ) );
+            assertEquals( 2, cache.size() );
+
+            cache.put( "a", "4" );
+            assertEquals( "4", cache.get( "a" ) );
+            assertEquals( "4", cache.remove( "a" ) );
+            assertNull( cache.get( "a" ) );
+
+            cache.clear();
+            assertEquals( 0, cache.size() );
+            assertNull( cache.get( "b" ) );
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testMostRecentAvailable() {
+        final SegmentedCache<Integer,Integer> cache = new SegmentedCache<Integer,Integer>( "recent", 10L );
+        try {
+            for ( int i=0; i<1000; i++ ) {
+                cache.put( i, i );
+                assertEquals( "Cached value", (Integer) i, cache.get( i ) );
+                assertTrue( "Size " + cache.size(), cache.size() <= 10 );
+            }
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testMaximumSize() {
+        final SegmentedCache<Integer,Integer> cache = new SegmentedCache<Integer,Integer>( "maximum", 1000L );
+        try {
+            for ( int i=0; i<100000; i++ ) {
+                cache.put( i, i );
+            }
+            assertTrue( "Size " + cache.size(), cache.size() <= 1000 );
+            assertTrue( "Size " + cache.size(), cache.size() >= 900 );
+            assertEquals( 100000L - (long) cache.size(), cache.getStatistics().getEvictionCount() );
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testFrequentEntriesRetained() {
+        final SegmentedCache<Integer,Integer> cache = new SegmentedCache<Integer,Integer>( "frequent", 100L );
+        try {
+            // frequently used entries
+            for ( int round=0; round<5; round++ ) {
+                for ( int i=0; i<50; i++ ) {
+                    if ( cache.get( i ) == null ) cache.put( i, i );
+                }
+            }
+
+            // churn of entries used once
+            for ( int i=1000; i<20000; i++ ) {
+                cache.put( i, i );
+            }
+
+            int retained = 0;
+            for ( int i=0; i<50; i++ ) {
+                if ( cache.get( i ) != null ) retained++;
+            }
+            assertTrue( "Retained " + retained, retained >= 45 );
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testExpiry() {
+        final AtomicLong nanos = new AtomicLong( 1000L );
+        final SegmentedCache<String,String> cache = new SegmentedCache<String,String>( "expiry", 10L, 1000L, 0L, null, null, timeSource( nanos ) );
+        try {
+            cache.put( "a", "1" );
+            cache.put( "b", "2", 5000L );
+            nanos.addAndGet( TimeUnit.MILLISECONDS.toNanos( 999L ) );
+            assertEquals( "1", cache.get( "a" ) );
+            nanos.addAndGet( TimeUnit.MILLISECONDS.toNanos( 1L ) );
+            assertNull( "expired", cache.get( "a" ) );
+            assertEquals( "2", cache.get( "b" ) );
+            nanos.addAndGet( TimeUnit.MILLISECONDS.toNanos( 4000L ) );
+            assertNull( "expired", cache.get( "b" ) );
+
+            final CacheStatistics statistics = cache.getStatistics();
+            assertEquals( 2L, statistics.getExpirationCount() );
+            assertEquals( 0, statistics.getSize() );
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testWeight() {
+        final SegmentedCache<String,String> cache = new SegmentedCache<String,String>( "weight", 100L, 0L, 0L, new Functions.Binary<Integer,String,String>() {
+            @Override
+            public Integer call( final String key, final String value ) {
+                return value.length();
+            }
+        }, null );
+        try {
+            cache.put( "large", repeat( 101 ) );
+            assertNull( "Too large to cache", cache.get( "large" ) );
+
+            for ( int i=0; i<20; i++ ) {
+                cache.put( "key" + i, repeat( 10 ) );
+            }
+            final CacheStatistics statistics = cache.getStatistics();
+            assertTrue( "Weight " + statistics.getWeight(), statistics.getWeight() <= 100L );
+            assertEquals( statistics.getWeight(), 10L * (long) statistics.getSize() );
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        final AtomicLong nanos = new AtomicLong( 1000L );
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loaded = new CountDownLatch( 1 );
+        final SegmentedCache<String,String> cache = new SegmentedCache<String,String>( "refresh", 10L, 0L, 1000L, null, new Functions.UnaryThrows<String,String,Exception>() {
+            @Override
+            public String call( final String key ) {
+                loads.incrementAndGet();
+                loaded.countDown();
+                return key + "-refreshed";
+            }
+        }, timeSource( nanos ) );
+        try {
+            cache.put( "a", "1" );
+            assertEquals( "1", cache.get( "a" ) );
+            assertEquals( 0, loads.get() );
+
+            nanos.addAndGet( TimeUnit.SECONDS.toNanos( 2L ) );
+            assertEquals( "Stale value returned during refresh", "1", cache.get( "a" ) );
+            assertTrue( "Refreshed", loaded.await( 10L, TimeUnit.SECONDS ) );
+            for ( int i=0; i<100 && !"a-refreshed".equals( cache.get( "a" ) ); i++ ) {
+                Thread.sleep( 50L );
+            }
+            assertEquals( "a-refreshed", cache.get( "a" ) );
+            assertEquals( 1, loads.get() );
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        final SegmentedCache<String,String> cache = new SegmentedCache<String,String>( "statistics", 10L );
+        try {
+            cache.put( "a", "1" );
+            cache.get( "a" );
+            cache.get( "a" );
+            cache.get( "b" );
+
+            final CacheStatistics statistics = cache.getStatistics();
+            assertEquals( "statistics", statistics.getName() );
+            assertEquals( 2L, statistics.getHitCount() );
+            assertEquals( 1L, statistics.getMissCount() );
+            assertEquals( 1, statistics.getSize() );
+            assertEquals( 10L, statistics.getMaximumWeight() );
+
+            boolean found = false;
+            for ( final CacheStatistics cacheStatistics : SegmentedCache.getAllStatistics() ) {
+                if ( "statistics".equals( cacheStatistics.getName() ) ) found = true;
+            }
+            assertTrue( "Statistics for all caches", found );
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final SegmentedCache<Integer,Integer> cache = new SegmentedCache<Integer,Integer>( "concurrent", 500L );
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            final Future<?>[] futures = new Future<?>[8];
+            for ( int t=0; t<futures.length; t++ ) {
+                final int seed = t;
+                futures[t] = executor.submit( new Runnable() {
+                    @Override
+                    public void run() {
+                        for ( int i=0; i<100000; i++ ) {
+                            final int key = (i * 31 + seed) % 2000;
+                            final Integer value = cache.get( key );
+                            if ( value == null ) {
+                                cache.put( key, key );
+                            } else {
+                                assertEquals( (Integer) key, value );
+                            }
+                            if ( i % 100 == 0 ) cache.remove( key );
+                        }
+                    }
+                } );
+            }
+            for ( final Future<?> future : futures ) {
+                future.get();
+            }
+            assertTrue( "Size " + cache.size(), cache.size() <= 500 );
+        } finally {
+            executor.shutdownNow();
+            cache.shutdown();
+        }
+    }
+
+    //- PRIVATE
+
+    private static TimeSource timeSource( final AtomicLong nanos ) {
+        return new TimeSource() {
+            @Override
+            public long nanoTime() {
+                return nanos.get();
+            }
+        };
+    }
+
+    private static String repeat( final int length ) {
+        final StringBuilder builder = new StringBuilder();
+        for ( int i=0; i<length; i++ ) builder.append( 'x' );
+        return builder.toString();
+    }
+}
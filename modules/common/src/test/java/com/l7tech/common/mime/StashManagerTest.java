@@ -12,6 +12,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -45,6 +46,9 @@ public class StashManagerTest {
         if (sm instanceof HybridStashManager) {
             HybridStashManager hsm = (HybridStashManager)sm;
             assertEquals(hsm.getCurrentTotalSize(), computeTotalSize(sm));
+        } else if (sm instanceof OffHeapStashManager) {
+            OffHeapStashManager ohsm = (OffHeapStashManager)sm;
+            assertEquals(ohsm.getCurrentTotalSize(), computeTotalSize(sm));
         }
     }
 
@@ -124,7 +128,7 @@ public class StashManagerTest {
         }
 
         // Test replacing parts with different sizes, with and without unstash first
-        if (num > 0 && minSize != maxSize && sm instanceof HybridStashManager) {
+        if (num > 0 && minSize != maxSize && (sm instanceof HybridStashManager || sm instanceof OffHeapStashManager)) {
             // Do six passes of random size replacement
             for (int pass = 0; pass < 6; ++pass) {
                 for (int i = 0; i < num; ++i) {
@@ -223,6 +227,137 @@ public class StashManagerTest {
         });
     }
 
+    @Test
+    public void testOffHeapStashManager() throws Exception {
+        // this is not limited by ram, so go ahead and test the 30mb part
+        doTestStashManager(false, new StashManagerFactory() {
+            public StashManager createNewStashManager() {
+                return new OffHeapStashManager(100000, new File("."), "StashManagerTest" + unique++);
+            }
+        });
+    }
+
+    @Test
+    public void testOffHeapStashManagerBudget() throws Exception {
+        final DirectBufferPool pool = new DirectBufferPool(1024, 8192);
+        final OffHeapStashManager sm1 = new OffHeapStashManager(100000, new File("."), "StashManagerTest" + unique++, 0, pool, 0L);
+        final OffHeapStashManager sm2 = new OffHeapStashManager(100000, new File("."), "StashManagerTest" + unique++, 0, pool, 0L);
+        try {
+            sm1.stash(0, new RandomInputStream(1L, 6000L));
+            assertFalse("Stashed in buffers", sm1.isInFile(0));
+            assertEquals(6144L, pool.getBytesInUse());
+
+            // budget exhausted part way through, so stashed in a file
+            sm2.stash(0, new RandomInputStream(2L, 6000L));
+            assertTrue("Stashed in file", sm2.isInFile(0));
+            assertEquals(6144L, pool.getBytesInUse());
+            assertTrue(IOUtils.compareInputStreams(sm2.recall(0), true, new RandomInputStream(2L, 6000L), true));
+
+            sm1.close();
+            assertEquals(0L, pool.getBytesInUse());
+            sm2.stash(1, new RandomInputStream(3L, 6000L));
+            assertFalse("Stashed in buffers", sm2.isInFile(1));
+            assertTrue(IOUtils.compareInputStreams(sm2.recall(1), true, new RandomInputStream(3L, 6000L), true));
+        } finally {
+            sm1.close();
+            sm2.close();
+        }
+        assertEquals(0L, pool.getBytesInUse());
+    }
+
+    @Test
+    public void testOffHeapStashManagerLimit() throws Exception {
+        final DirectBufferPool pool = new DirectBufferPool(1024, 1024 * 1024);
+        final OffHeapStashManager sm = new OffHeapStashManager(10000, new File("."), "StashManagerTest" + unique++, 0, pool, 0L);
+        try {
+            sm.stash(0, new RandomInputStream(1L, 6000L));
+            sm.stash(1, new RandomInputStream(2L, 6000L));
+            sm.stash(2, new byte[100]);
+            assertFalse(sm.isInFile(0));
+            assertTrue(sm.isInFile(1));
+            assertTrue(sm.isInFile(2));
+            assertFalse(sm.isByteArrayAvailable(0));
+            assertFalse(sm.isByteArrayAvailable(2));
+
+            sm.unstash(1);
+            sm.unstash(2);
+            final byte[] bytes = new byte[]{ 1, 2, 3, 4 };
+            sm.stash(2, bytes, 1, 2);
+            assertFalse(sm.isInFile(2));
+            assertTrue(sm.isByteArrayAvailable(2));
+            assertTrue(Arrays.equals(new byte[]{ 2, 3 }, sm.recallBytes(2)));
+        } finally {
+            sm.close();
+        }
+    }
+
+    @Test
+    public void testOffHeapStashManagerFileDeletedOnClose() throws Exception {
+        final DirectBufferPool pool = new DirectBufferPool(1024, 1024 * 1024);
+        final String prefix = "StashManagerTest" + unique++;
+        final OffHeapStashManager sm = new OffHeapStashManager(1000, new File("."), prefix, 0, pool, 0L);
+        final File file = new File(".", prefix + "_0.part");
+        InputStream in = null;
+        try {
+            sm.stash(0, new RandomInputStream(1L, 6000L));
+            assertTrue(sm.isInFile(0));
+            assertTrue("Stash file exists", file.exists());
+            in = sm.recall(0);
+            assertEquals(100, in.read(new byte[100]));
+            assertEquals(5800L, in.skip(5800L));
+            assertEquals(100, in.available());
+        } finally {
+            sm.close();
+        }
+        assertFalse("Stash file deleted", file.exists());
+        try {
+            in.read();
+            fail("Expected IOException reading released part");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOffHeapStashManagerHeapParts() throws Exception {
+        final DirectBufferPool pool = new DirectBufferPool(1024, 1024 * 1024);
+        final OffHeapStashManager sm = new OffHeapStashManager(100000, new File("."), "StashManagerTest" + unique++, 4096, pool, 0L);
+        try {
+            sm.stash(0, new RandomInputStream(1L, 4096L));
+            sm.stash(1, new RandomInputStream(2L, 4097L));
+            assertTrue("Small part in heap", sm.isByteArrayAvailable(0));
+            assertFalse("Large part off-heap", sm.isByteArrayAvailable(1));
+            assertFalse(sm.isInFile(1));
+            assertEquals(5120L, pool.getBytesInUse());
+            assertSame("Stashed bytes are not copied", sm.recallBytes(0), sm.recallBytes(0));
+            assertTrue(IOUtils.compareInputStreams(new ByteArrayInputStream(sm.recallBytes(0)), true, new RandomInputStream(1L, 4096L), true));
+            assertTrue(IOUtils.compareInputStreams(sm.recall(1), true, new RandomInputStream(2L, 4097L), true));
+        } finally {
+            sm.close();
+        }
+        assertEquals(0L, pool.getBytesInUse());
+    }
+
+    @Test
+    public void testOffHeapStashManagerUnstashWhileReading() throws Exception {
+        final DirectBufferPool pool = new DirectBufferPool(1024, 1024 * 1024);
+        final OffHeapStashManager sm = new OffHeapStashManager(100000, new File("."), "StashManagerTest" + unique++, 0, pool, 0L);
+        try {
+            sm.stash(0, new RandomInputStream(1L, 6000L));
+            final InputStream in = sm.recall(0);
+            assertTrue(in.read(new byte[100]) > 0);
+            sm.unstash(0);
+            try {
+                in.read(new byte[100]);
+                fail("Expected IOException reading unstashed part");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            sm.close();
+        }
+    }
+
     /**
      * Compute the total size of all elements in the specified stash manager.
      * This will call getSize() on all ordinals less than or equal to getMaxOrdinal() and return
@@ -19,6 +19,7 @@ import com.l7tech.server.event.system.ReadyForMessages;
 import com.l7tech.server.identity.cert.TrustedCertServices;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.message.PolicyEnforcementContextFactory;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.search.DependencyProcessorRegistry;
 import com.l7tech.server.search.exceptions.CannotReplaceDependenciesException;
 import com.l7tech.server.search.exceptions.CannotRetrieveDependenciesException;
@@ -46,7 +47,9 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -268,7 +271,7 @@ public class AsyncHttpTransportModule extends TransportModule implements Applica
         return SUPPORTED_SCHEMES;
     }
 
-    void submitRequestToMessageProcessor(@NotNull PendingAsyncRequest pendingRequest, @NotNull HttpRequest httpRequest, @NotNull HttpResponse httpResponse, @NotNull InputStream bodyInputStream, @Nullable InetSocketAddress clientAddress) {
+    void submitRequestToMessageProcessor(@NotNull final PendingAsyncRequest pendingRequest, @NotNull HttpRequest httpRequest, @NotNull HttpResponse httpResponse, @NotNull InputStream bodyInputStream, @Nullable InetSocketAddress clientAddress) {
         final AsyncHttpListenerInfo listenerInfo = pendingRequest.getListenerInfo();
         final SsgConnector connector = listenerInfo.getConnector();
         Goid hardwiredServiceGoid = connector.getGoidProperty(EntityType.SERVICE, SsgConnector.PROP_HARDWIRED_SERVICE_ID, PersistentEntity.DEFAULT_GOID);
@@ -282,7 +285,8 @@ public class AsyncHttpTransportModule extends TransportModule implements Applica
 
             Message request = new Message();
             Message response = new Message();
-            context = PolicyEnforcementContextFactory.createPolicyEnforcementContext(request, response, true);
+            // Not registered with this thread since processing may complete on another thread
+            context = PolicyEnforcementContextFactory.createUnregisteredPolicyEnforcementContext(request, response, true);
 
             String pinnedCtypeStr = connector.getProperty(SsgConnector.PROP_OVERRIDE_CONTENT_TYPE);
             ContentTypeHeader pinnedCtype = pinnedCtypeStr == null ? null : ContentTypeHeader.create(pinnedCtypeStr);
@@ -320,62 +324,140 @@ public class AsyncHttpTransportModule extends TransportModule implements Applica
             if (logger.isLoggable(Level.FINE))
                 logger.log(Level.FINE, "Registering pending async response with correlation ID " + pendingRequest.getCorrelationId());
 
-            AssertionStatus status = messageProcessor.processMessage(context);
-
-            if (status != AssertionStatus.NONE) {
-                // Send fault
-                logger.log(Level.WARNING, "Async HTTP policy failed with assertion status: {0}", status);
-                // TODO customize response to send upon error?
-                pendingRequest.errorAndClose(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Policy failed with assertion status: " + status);
-            } else if (response.getKnob(MimeKnob.class) != null && response.isInitialized()) {
-                // Send the response from this policy, don't bother waiting for an inbound policy
-                logger.log(Level.FINE, "Async HTTP policy returned a synchronous response from the output policy -- returning it immediately");
-                // TODO check if OK to do response streaming, when supported
-                pendingRequest.respondAndMaybeClose(response, false);
-            } else {
-                // Response not initialized -- this is the common case.  Register an async request, set a timer task
-                // to clean it up if it goes unclaimed for too long, and return without invoking the listener.
-                idToCleanup = null;
-                Timer timer = timerPool[Math.abs(request.hashCode()) % timerPool.length];
-                timer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        try {
-                            PendingAsyncRequest pending = activeAsyncRequests.remove(correlationId);
-                            if (pending != null) {
-                                // TODO customize response to send upon error?
-                                pending.errorAndClose(HttpResponseStatus.GATEWAY_TIMEOUT, "Timeout awaiting async response");
+            // Processing is suspended rather than blocking this I/O thread if the policy routes asynchronously, it is
+            // then completed on the thread that resumes the policy.
+            final PolicyEnforcementContext processingContext = context;
+            final AssertionResumption resumption = new AssertionResumption(new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    try {
+                        PolicyEnforcementContextFactory.doWithCurrentContext(processingContext, new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                command.run();
+                                return null;
                             }
-                        } catch (Throwable t) {
-                            logger.log(Level.WARNING, "Error in response timeout task: " + ExceptionUtils.getMessage(t), ExceptionUtils.getDebugException(t));
-                        }
+                        });
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        // Shouldn't be possible
+                        throw new RuntimeException(e);
                     }
-                }, ASYNC_RESPONSE_TIMEOUT_MILLIS);
+                }
+            }, new AssertionResumption.Callback() {
+                @Override
+                public void completed(@NotNull final AssertionStatus status) {
+                    boolean awaitingResponse = false;
+                    try {
+                        awaitingResponse = requestProcessed(pendingRequest, processingContext, status);
+                    } catch (Throwable t) {
+                        requestFailed(pendingRequest, t);
+                    } finally {
+                        requestFinished(awaitingResponse ? null : correlationId, processingContext);
+                    }
+                }
+
+                @Override
+                public void failed(@NotNull final Throwable failure) {
+                    try {
+                        requestFailed(pendingRequest, failure);
+                    } finally {
+                        requestFinished(correlationId, processingContext);
+                    }
+                }
+            });
+
+            AssertionStatus status = PolicyEnforcementContextFactory.doWithCurrentContext(context, new Callable<AssertionStatus>() {
+                @Override
+                public AssertionStatus call() throws Exception {
+                    return messageProcessor.processMessage(processingContext, resumption);
+                }
+            });
+
+            if (status == null) {
+                // Suspended, the resumption callback now owns the context and the pending request
+                idToCleanup = null;
+                context = null;
+            } else if (requestProcessed(pendingRequest, context, status)) {
+                idToCleanup = null;
             }
 
-        } catch (IOException e) {
+        } catch (Exception e) {
+            requestFailed(pendingRequest, e);
+        } finally {
+            requestFinished(idToCleanup, context);
+
+            HybridDiagnosticContext.remove( GatewayDiagnosticContextKeys.LISTEN_PORT_ID );
+            HybridDiagnosticContext.remove( GatewayDiagnosticContextKeys.CLIENT_IP );
+            if (responseStream != null)
+                ResourceUtils.closeQuietly(responseStream);
+        }
+    }
+
+    /**
+     * Respond to a request once the output policy has completed.
+     *
+     * @return true if the request was registered to await an async response
+     */
+    private boolean requestProcessed(@NotNull final PendingAsyncRequest pendingRequest, @NotNull final PolicyEnforcementContext context, @NotNull final AssertionStatus status) {
+        final Message response = context.getResponse();
+        if (status != AssertionStatus.NONE) {
+            // Send fault
+            logger.log(Level.WARNING, "Async HTTP policy failed with assertion status: {0}", status);
+            // TODO customize response to send upon error?
+            pendingRequest.errorAndClose(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Policy failed with assertion status: " + status);
+        } else if (response.getKnob(MimeKnob.class) != null && response.isInitialized()) {
+            // Send the response from this policy, don't bother waiting for an inbound policy
+            logger.log(Level.FINE, "Async HTTP policy returned a synchronous response from the output policy -- returning it immediately");
+            // TODO check if OK to do response streaming, when supported
+            pendingRequest.respondAndMaybeClose(response, false);
+        } else {
+            // Response not initialized -- this is the common case.  Register an async request, set a timer task
+            // to clean it up if it goes unclaimed for too long, and return without invoking the listener.
+            final String correlationId = pendingRequest.getCorrelationId();
+            Timer timer = timerPool[Math.abs(context.getRequest().hashCode()) % timerPool.length];
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        PendingAsyncRequest pending = activeAsyncRequests.remove(correlationId);
+                        if (pending != null) {
+                            // TODO customize response to send upon error?
+                            pending.errorAndClose(HttpResponseStatus.GATEWAY_TIMEOUT, "Timeout awaiting async response");
+                        }
+                    } catch (Throwable t) {
+                        logger.log(Level.WARNING, "Error in response timeout task: " + ExceptionUtils.getMessage(t), ExceptionUtils.getDebugException(t));
+                    }
+                }
+            }, ASYNC_RESPONSE_TIMEOUT_MILLIS);
+            return true;
+        }
+        return false;
+    }
+
+    private void requestFailed(@NotNull final PendingAsyncRequest pendingRequest, @NotNull final Throwable e) {
+        if (e instanceof IOException) {
             // TODO customize response to send upon error?
             final String msg = "I/O error handling async HTTP request: " + ExceptionUtils.getMessage(e);
             logger.log(Level.WARNING, msg, ExceptionUtils.getDebugException(e));
             pendingRequest.errorAndClose(HttpResponseStatus.INTERNAL_SERVER_ERROR, msg);
-        } catch (Exception e) {
+        } else {
             // TODO customize response to send upon error?
             final String msg = "Unexpected error handling async HTTP request: " + ExceptionUtils.getMessage(e);
             logger.log(Level.WARNING, msg, e);
             pendingRequest.errorAndClose(HttpResponseStatus.INTERNAL_SERVER_ERROR, msg);
-        } finally {
-            if (idToCleanup != null)
-                activeAsyncRequests.remove(idToCleanup);
-
-            HybridDiagnosticContext.remove( GatewayDiagnosticContextKeys.LISTEN_PORT_ID );
-            HybridDiagnosticContext.remove( GatewayDiagnosticContextKeys.CLIENT_IP );
-            if (context != null)
-                ResourceUtils.closeQuietly(context);
-            if (responseStream != null)
-                ResourceUtils.closeQuietly(responseStream);
         }
     }
 
+    private void requestFinished(@Nullable final String idToCleanup, @Nullable final PolicyEnforcementContext context) {
+        if (idToCleanup != null)
+            activeAsyncRequests.remove(idToCleanup);
+
+        if (context != null)
+            ResourceUtils.closeQuietly(context);
+    }
+
     @Override
     public void reportMisconfiguredConnector(Goid connectorGoid) {
         logger.log(Level.WARNING, "Shutting down async HTTP connector OID " + connectorGoid + " because it cannot be opened in its current configuration");
@@ -436,6 +518,7 @@ public class AsyncHttpTransportModule extends TransportModule implements Applica
      */
     @SuppressWarnings("UnusedDeclaration")
     public static synchronized void onModuleUnloaded() {
+        ServerAsyncHttpRoutingAssertion.onModuleUnloaded();
         if (instance != null) {
             logger.log(Level.INFO, "Async HTTP transport module is shutting down");
             try {
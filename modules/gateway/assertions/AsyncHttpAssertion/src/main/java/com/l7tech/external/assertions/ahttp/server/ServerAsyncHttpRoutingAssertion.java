@@ -6,12 +6,12 @@ import com.l7tech.common.mime.ContentTypeHeader;
 import com.l7tech.common.mime.NoSuchPartException;
 import com.l7tech.external.assertions.ahttp.AsyncHttpRoutingAssertion;
 import com.l7tech.gateway.common.audit.AssertionMessages;
-import com.l7tech.gateway.common.audit.AuditRecord;
 import com.l7tech.message.HeadersKnob;
 import com.l7tech.message.Message;
 import com.l7tech.message.MimeKnob;
 import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
+import com.l7tech.policy.assertion.RoutingStatus;
 import com.l7tech.policy.variable.NoSuchVariableException;
 import com.l7tech.policy.variable.VariableNotSettableException;
 import com.l7tech.server.StashManagerFactory;
@@ -26,11 +26,14 @@ import com.l7tech.server.policy.PolicyCache;
 import com.l7tech.server.policy.ServerPolicyException;
 import com.l7tech.server.policy.ServerPolicyHandle;
 import com.l7tech.server.policy.assertion.AbstractServerHttpRoutingAssertion;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.policy.assertion.AssertionStatusException;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
 import com.l7tech.server.policy.variable.ExpandVariables;
 import com.l7tech.util.*;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.*;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -39,19 +42,59 @@ import javax.inject.Inject;
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
 import static com.l7tech.util.Option.optional;
 
 /**
+ * Server side implementation of the AsyncHttpRoutingAssertion.
  *
+ * <p>When a response policy is configured the request is routed and the
+ * assertion completes immediately, the response policy is run when the
+ * response arrives.</p>
+ *
+ * <p>When there is no response policy the response is delivered to the
+ * policy being evaluated. If the policy is evaluated with a resumption then
+ * evaluation is suspended until the response arrives, otherwise the current
+ * thread waits for the response.</p>
+ *
+ * <p>Response policies and resumed policies are evaluated on a bounded pool
+ * of response threads, never on the Netty I/O thread or the timeout timer
+ * thread. When the pool is saturated, or the module has been unloaded, a
+ * resumed policy fails and a response policy is not run.</p>
  */
-public class ServerAsyncHttpRoutingAssertion extends AbstractServerHttpRoutingAssertion<AsyncHttpRoutingAssertion> {
+public class ServerAsyncHttpRoutingAssertion extends AbstractServerHttpRoutingAssertion<AsyncHttpRoutingAssertion> implements SuspendableServerAssertion<AsyncHttpRoutingAssertion> {
+    private static final Timer responseTimer = new Timer("Async HTTP routing response timeout", true);
+    private static final ThreadPoolExecutor responseExecutor = createResponseExecutor();
+    private static final Set<RoutingResponse> pendingRoutingResponses = Collections.newSetFromMap(new ConcurrentHashMap<RoutingResponse, Boolean>());
+    private static final Set<ResponseContextInfo> pendingResponsePolicies = Collections.newSetFromMap(new ConcurrentHashMap<ResponseContextInfo, Boolean>());
+
+    static final String RESPONSE_THREAD_NAME = "Async HTTP routing response";
+    private static final String PROP_RESPONSE_CORE_THREADS = "com.l7tech.external.assertions.ahttp.server.responseCoreThreads";
+    private static final String PROP_RESPONSE_MAX_THREADS = "com.l7tech.external.assertions.ahttp.server.responseMaxThreads";
+    private static final String PROP_RESPONSE_MAX_QUEUE = "com.l7tech.external.assertions.ahttp.server.responseMaxQueue";
+
     private final String[] varsUsed;
 
     @Inject
@@ -84,9 +127,33 @@ public class ServerAsyncHttpRoutingAssertion extends AbstractServerHttpRoutingAs
             return AssertionStatus.FAILED;
         }
 
+        if ( assertion.getPolicyGuid() == null ) {
+            return routeToContext( context, message, messageDesc, null );
+        }
+
         return doCheckRequest( context, message, messageDesc, context.getAuthenticationContext(message) );
     }
 
+    @Override
+    public AssertionStatus checkRequest( final PolicyEnforcementContext context,
+                                         final AssertionResumption resumption )
+        throws IOException, PolicyAssertionException {
+        if ( assertion.getPolicyGuid() != null ) {
+            return checkRequest( context );
+        }
+
+        final String messageDesc = assertion.getTargetName();
+        final Message message;
+        try {
+            message = context.getTargetMessage(assertion);
+        } catch (NoSuchVariableException e) {
+            logAndAudit(AssertionMessages.MESSAGE_TARGET_ERROR, e.getVariable(), ExceptionUtils.getMessage(e));
+            return AssertionStatus.FAILED;
+        }
+
+        return routeToContext( context, message, messageDesc, resumption );
+    }
+
     protected AssertionStatus doCheckRequest( final PolicyEnforcementContext context,
                                               final Message message,
                                               final String messageDescription,
@@ -116,16 +183,31 @@ public class ServerAsyncHttpRoutingAssertion extends AbstractServerHttpRoutingAs
                 port = 80; // TODO use 443 as default for https when supported
 
             final ResponseContextInfo finalResponseContextInfo = responseContextInfo;
-            NettyHttpClient.issueAsyncHttpRequest(uri.getHost(), port, httpRequest, assertion.isUseKeepAlives(), new Functions.UnaryVoid<Either<IOException, HttpResponse>>() {
-                @Override
-                public void call(Either<IOException, HttpResponse> ioExceptionHttpResponseEither) {
-                    try {
-                        invokeResponsePolicy(finalResponseContextInfo, ioExceptionHttpResponseEither);
-                    } finally {
-                        ResourceUtils.closeQuietly(finalResponseContextInfo);
+            pendingResponsePolicies.add(finalResponseContextInfo);
+            try {
+                NettyHttpClient.issueAsyncHttpRequest(uri.getHost(), port, httpRequest, assertion.isUseKeepAlives(), new Functions.UnaryVoid<Either<IOException, HttpResponse>>() {
+                    @Override
+                    public void call(final Either<IOException, HttpResponse> ioExceptionHttpResponseEither) {
+                        if (!pendingResponsePolicies.remove(finalResponseContextInfo)) {
+                            return; // discarded on module unload
+                        }
+                        try {
+                            responseExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    invokeResponsePolicy(finalResponseContextInfo, ioExceptionHttpResponseEither);
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            logger.log(Level.WARNING, "Async HTTP response policy not run, no response thread is available");
+                            ResourceUtils.closeQuietly(finalResponseContextInfo);
+                        }
                     }
-                }
-            });
+                });
+            } catch (RuntimeException e) {
+                pendingResponsePolicies.remove(finalResponseContextInfo);
+                throw e;
+            }
 
             // We are no longer responsible for closing the server policy handle after handoff to async callback
             responseContextInfo = null;
@@ -145,6 +227,156 @@ public class ServerAsyncHttpRoutingAssertion extends AbstractServerHttpRoutingAs
         }
     }
 
+    /**
+     * Route the message, delivering the response to the current policy.
+     *
+     * @param resumption The resumption to use, null to wait for the response
+     * @return The assertion status, or null if evaluation was suspended
+     */
+    @Nullable
+    private AssertionStatus routeToContext( final PolicyEnforcementContext context,
+                                            final Message message,
+                                            final String messageDescription,
+                                            @Nullable final AssertionResumption resumption ) throws IOException {
+        final Map<String, Object> varsMap = context.getVariableMap(varsUsed, getAudit());
+        final String urlStr = ExpandVariables.process(assertion.getProtectedServiceUrl(), varsMap, getAudit());
+        final int timeout = getTimeout(varsMap);
+
+        final URI uri = parseUri(urlStr);
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = createNettyHttpRequest(uri, message);
+        } catch (NoSuchPartException e) {
+            logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO, new String[]{"Unable to read " + messageDescription + " message parts for asynchronous HTTP routing: " + ExceptionUtils.getMessage(e)}, ExceptionUtils.getDebugException(e));
+            return AssertionStatus.SERVER_ERROR;
+        }
+        int port = uri.getPort();
+        if (-1 == port)
+            port = 80;
+
+        context.setRoutingStatus(RoutingStatus.ATTEMPTED);
+        final RoutingResponse routingResponse = new RoutingResponse( context, resumption == null ? null : resumption.withExecutor( handOff( resumption.getExecutor() ) ) );
+        routingResponse.scheduleTimeout( timeout );
+        try {
+            NettyHttpClient.issueAsyncHttpRequest(uri.getHost(), port, httpRequest, assertion.isUseKeepAlives(), routingResponse);
+        } catch ( RuntimeException e ) {
+            routingResponse.cancel();
+            throw e;
+        }
+
+        if ( resumption != null ) {
+            return null;
+        }
+
+        return deliverResponse( context, routingResponse.await( timeout ) );
+    }
+
+    /**
+     * Initialize the response from the result of routing.
+     */
+    private AssertionStatus deliverResponse( final PolicyEnforcementContext context,
+                                             final Either<IOException, HttpResponse> result ) throws IOException {
+        if ( Eithers.isSuccess( result ) ) {
+            final HttpResponse httpResponse = result.right();
+            context.getResponse().initialize(stashManagerFactory.createStashManager(), getContentType(httpResponse), new ByteBuffersInputStream(Arrays.asList(httpResponse.getContent().toByteBuffers())));
+            httpResponse.setContent(null);
+
+            context.setVariable("async.response.status", Double.valueOf(httpResponse.getStatus().getCode()));
+            context.setVariable("async.response.success", Boolean.TRUE);
+            context.setRoutingStatus(RoutingStatus.ROUTED);
+            return AssertionStatus.NONE;
+        } else {
+            final IOException e = result.left();
+            logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO, new String[] { "Failed to obtain async response: " + ExceptionUtils.getMessage(e) }, ExceptionUtils.getDebugException(e));
+            context.setVariable("async.response.success", Boolean.FALSE);
+            return AssertionStatus.FAILED;
+        }
+    }
+
+    /**
+     * Response callback that resumes policy evaluation or wakes the waiting thread.
+     *
+     * <p>The first result wins, whether the response, an error or a timeout.</p>
+     */
+    private final class RoutingResponse implements Functions.UnaryVoid<Either<IOException, HttpResponse>> {
+        private final PolicyEnforcementContext context;
+        private final AssertionResumption resumption;
+        private final AtomicReference<Either<IOException, HttpResponse>> result = new AtomicReference<Either<IOException, HttpResponse>>();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private TimerTask timeoutTask;
+
+        private RoutingResponse( final PolicyEnforcementContext context,
+                                 @Nullable final AssertionResumption resumption ) {
+            this.context = context;
+            this.resumption = resumption;
+        }
+
+        @Override
+        public void call( final Either<IOException, HttpResponse> response ) {
+            if ( !result.compareAndSet( null, response ) ) return;
+            cancelTimeout();
+            pendingRoutingResponses.remove( this );
+            latch.countDown();
+
+            if ( resumption != null ) {
+                resumption.resume( new Callable<AssertionStatus>() {
+                    @Override
+                    public AssertionStatus call() throws IOException {
+                        return deliverResponse( context, response );
+                    }
+                } );
+            }
+        }
+
+        private synchronized void scheduleTimeout( final int timeout ) {
+            if ( resumption == null ) return; // waiting thread times out
+
+            pendingRoutingResponses.add( this );
+            timeoutTask = new TimerTask() {
+                @Override
+                public void run() {
+                    call( Either.<IOException, HttpResponse>left( new SocketTimeoutException( "Timeout awaiting async response" ) ) );
+                }
+            };
+            try {
+                responseTimer.schedule( timeoutTask, (long) timeout );
+            } catch ( IllegalStateException e ) {
+                // timer cancelled on module unload
+                call( Either.<IOException, HttpResponse>left( new IOException( "Async HTTP routing is not available" ) ) );
+            }
+        }
+
+        /**
+         * Cancel when the request could not be sent, the resumption is not used.
+         */
+        private void cancel() {
+            if ( result.compareAndSet( null, Either.<IOException, HttpResponse>left( new IOException( "Async request not sent" ) ) ) ) {
+                cancelTimeout();
+                pendingRoutingResponses.remove( this );
+                latch.countDown();
+            }
+        }
+
+        private synchronized void cancelTimeout() {
+            if ( timeoutTask != null ) {
+                timeoutTask.cancel();
+                timeoutTask = null;
+            }
+        }
+
+        private Either<IOException, HttpResponse> await( final int timeout ) {
+            try {
+                if ( !latch.await( (long) timeout, TimeUnit.MILLISECONDS ) ) {
+                    call( Either.<IOException, HttpResponse>left( new SocketTimeoutException( "Timeout awaiting async response" ) ) );
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                call( Either.<IOException, HttpResponse>left( new InterruptedIOException( "Interrupted awaiting async response" ) ) );
+            }
+            return result.get();
+        }
+    }
+
     private URI parseUri(String urlStr) {
         try {
             URI uri = new URI(urlStr);
@@ -229,79 +461,199 @@ public class ServerAsyncHttpRoutingAssertion extends AbstractServerHttpRoutingAs
         }
     }
 
+    /**
+     * Run the response policy for the given result.
+     *
+     * <p>The response policy may be suspended, in which case the audit context
+     * is flushed and the response context closed when evaluation completes.</p>
+     */
     private void invokeResponsePolicy(final ResponseContextInfo responseContextInfo, final Either<IOException, HttpResponse> result) {
-
+        final PolicyEnforcementContext context = responseContextInfo.clonedContext;
+        final AuditContext auditContext;
         try {
-            final PolicyEnforcementContext context = responseContextInfo.clonedContext;
+            auditContext = auditContextFactory.createAuditContext();
+        } catch (Exception e) {
+            // Nowhere to audit it, so log it
+            logger.log(Level.WARNING, "Unexpected exception while delivering async HTTP response: " + ExceptionUtils.getMessage(e), e);
+            ResourceUtils.closeQuietly(responseContextInfo);
+            return;
+        }
 
-            final AssertionStatus assertionStatus[] = { AssertionStatus.UNDEFINED };
-            auditContextFactory.doWithNewAuditContext(
-                new Callable<Void>() {
-                    @Override
-                    public Void call() throws Exception {
-                        final AuditContext auditContext = AuditContextFactory.getCurrent();
-                        context.setAuditContext(auditContext);
-                        try {
-                            // Copy response headers and body, or generate a fault message/fault variable in context
-                            if (Eithers.isSuccess(result)) {
-                                HttpResponse httpResponse = result.right();
-                                // Populate successful response
-                                final ContentTypeHeader contentType = getContentType(httpResponse);
-                                context.getResponse().initialize(stashManagerFactory.createStashManager(), contentType, new ByteBuffersInputStream(Arrays.asList(httpResponse.getContent().toByteBuffers())));
-                                context.getResponse().attachHttpResponseKnob(new NettyHttpResponseKnob(httpResponse));
-                                // Free up channel buffers early now that we have copied them
-                                httpResponse.setContent(null);
-
-                                // TODO attach header knob, copy response headers
-                                context.setVariable("async.response.status", Double.valueOf(httpResponse.getStatus().getCode()));
-                                context.setVariable("async.response.success", Boolean.TRUE);
-                            } else {
-                                // Indicate failure
-                                // TODO proper faults
-                                final IOException e = result.left();
-                                final String msg = "Failed to obtain async response: " + ExceptionUtils.getMessage(e);
-                                // Don't audit here, the policy can do that if it wants.  (Of course we will audit if the policy fails!)
-
-                                context.getResponse().initialize(new ByteArrayStashManager(), ContentTypeHeader.TEXT_DEFAULT, new ByteArrayInputStream(msg.getBytes(Charsets.UTF8)));
-                                context.setVariable("async.response.success", Boolean.FALSE);
-                            }
-
-                            assertionStatus[0] = responseContextInfo.serverPolicyHandle.checkRequest(context);
-
-                            if (!AssertionStatus.NONE.equals(assertionStatus[0])) {
-                                getAudit().logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO,
-                                    "Response policy failed while delivering async response with assertion status: " + assertionStatus[0]);
-                            }
-
-                        } catch (PolicyAssertionException e) {
-                            getAudit().logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO, new String[] {
-                                "Misconfigured policy assertion encountered while delivering async HTTP response: " + ExceptionUtils.getMessage(e) }, ExceptionUtils.getDebugException(e));
-                        } catch (IOException e) {
-                            getAudit().logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO, new String[] {
-                                "I/O error while delivering async HTTP response: " + ExceptionUtils.getMessage(e) }, ExceptionUtils.getDebugException(e));
-                        } finally {
-                            String[] ctxVariables = AuditLogFormatter.getContextVariablesUsed();
-                            if (ctxVariables != null && ctxVariables.length > 0) {
-                                auditContext.setContextVariables(context.getVariableMap(ctxVariables, getAudit()));
-                            }
+        final AssertionResumption resumption = new AssertionResumption(
+            handOff(new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    doWithAuditContext(auditContext, new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            command.run();
+                            return null;
                         }
+                    });
+                }
+            }),
+            new AssertionResumption.Callback() {
+                @Override
+                public void completed(@NotNull final AssertionStatus status) {
+                    responsePolicyFinished(responseContextInfo, auditContext, status);
+                }
 
-                        return null; // Void
+                @Override
+                public void failed(@NotNull final Throwable failure) {
+                    auditResponsePolicyFailure(failure);
+                    responsePolicyFinished(responseContextInfo, auditContext, AssertionStatus.UNDEFINED);
+                }
+            });
+
+        doWithAuditContext(auditContext, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                AssertionStatus assertionStatus = AssertionStatus.UNDEFINED;
+                try {
+                    context.setAuditContext(auditContext);
+
+                    // Copy response headers and body, or generate a fault message/fault variable in context
+                    if (Eithers.isSuccess(result)) {
+                        HttpResponse httpResponse = result.right();
+                        // Populate successful response
+                        final ContentTypeHeader contentType = getContentType(httpResponse);
+                        context.getResponse().initialize(stashManagerFactory.createStashManager(), contentType, new ByteBuffersInputStream(Arrays.asList(httpResponse.getContent().toByteBuffers())));
+                        context.getResponse().attachHttpResponseKnob(new NettyHttpResponseKnob(httpResponse));
+                        // Free up channel buffers early now that we have copied them
+                        httpResponse.setContent(null);
+
+                        // TODO attach header knob, copy response headers
+                        context.setVariable("async.response.status", Double.valueOf(httpResponse.getStatus().getCode()));
+                        context.setVariable("async.response.success", Boolean.TRUE);
+                    } else {
+                        // Indicate failure
+                        // TODO proper faults
+                        final IOException e = result.left();
+                        final String msg = "Failed to obtain async response: " + ExceptionUtils.getMessage(e);
+                        // Don't audit here, the policy can do that if it wants.  (Of course we will audit if the policy fails!)
+
+                        context.getResponse().initialize(new ByteArrayStashManager(), ContentTypeHeader.TEXT_DEFAULT, new ByteArrayInputStream(msg.getBytes(Charsets.UTF8)));
+                        context.setVariable("async.response.success", Boolean.FALSE);
                     }
-                },
-                new Functions.Nullary<com.l7tech.gateway.common.audit.AuditRecord>() {
-                    @Override
-                    public AuditRecord call() {
-                        return messageSummaryAuditFactory.makeEvent(context, assertionStatus[0]);
+
+                    assertionStatus = responseContextInfo.serverPolicyHandle.checkRequest(context, resumption);
+                    if (assertionStatus == null) {
+                        // Suspended, finished when resumed
+                        return null;
+                    }
+                } catch (Exception e) {
+                    auditResponsePolicyFailure(e);
+                }
+
+                responsePolicyFinished(responseContextInfo, auditContext, assertionStatus);
+                return null; // Void
+            }
+        });
+    }
+
+    private void responsePolicyFinished(final ResponseContextInfo responseContextInfo, final AuditContext auditContext, final AssertionStatus assertionStatus) {
+        final PolicyEnforcementContext context = responseContextInfo.clonedContext;
+        try {
+            doWithAuditContext(auditContext, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (!AssertionStatus.NONE.equals(assertionStatus)) {
+                        getAudit().logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO,
+                            "Response policy failed while delivering async response with assertion status: " + assertionStatus);
                     }
+
+                    String[] ctxVariables = AuditLogFormatter.getContextVariablesUsed();
+                    if (ctxVariables != null && ctxVariables.length > 0) {
+                        auditContext.setContextVariables(context.getVariableMap(ctxVariables, getAudit()));
+                    }
+                    return null;
                 }
-            );
+            });
+            AuditContextFactory.flushAuditContext(auditContext, messageSummaryAuditFactory.makeEvent(context, assertionStatus));
+        } catch (Exception e) {
+            // Nowhere to audit it, if it hasn't already been audited, so log it
+            logger.log(Level.WARNING, "Unexpected exception while delivering async HTTP response: " + ExceptionUtils.getMessage(e), e);
+        } finally {
+            ResourceUtils.closeQuietly(responseContextInfo);
+        }
+    }
+
+    private void auditResponsePolicyFailure(final Throwable e) {
+        if (e instanceof PolicyAssertionException) {
+            getAudit().logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO, new String[] {
+                "Misconfigured policy assertion encountered while delivering async HTTP response: " + ExceptionUtils.getMessage(e) }, ExceptionUtils.getDebugException(e));
+        } else if (e instanceof IOException) {
+            getAudit().logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO, new String[] {
+                "I/O error while delivering async HTTP response: " + ExceptionUtils.getMessage(e) }, ExceptionUtils.getDebugException(e));
+        } else {
+            logger.log(Level.WARNING, "Unexpected exception while delivering async HTTP response: " + ExceptionUtils.getMessage(e), e);
+        }
+    }
+
+    private void doWithAuditContext(final AuditContext auditContext, final Callable<Void> callable) {
+        try {
+            AuditContextFactory.doWithCustomAuditContext(auditContext, callable);
         } catch (Exception e) {
             // Nowhere to audit it, if it hasn't already been audited, so log it
             logger.log(Level.WARNING, "Unexpected exception while delivering async HTTP response: " + ExceptionUtils.getMessage(e), e);
         }
     }
 
+    /**
+     * Create an executor that runs commands on the given executor from a response thread.
+     *
+     * <p>The given executor provides any thread context for the command.</p>
+     */
+    private static Executor handOff(final Executor executor) {
+        return new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                responseExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        executor.execute(command);
+                    }
+                });
+            }
+        };
+    }
+
+    private static ThreadPoolExecutor createResponseExecutor() {
+        final int coreThreads = ConfigFactory.getIntProperty(PROP_RESPONSE_CORE_THREADS, 8);
+        final int maxThreads = ConfigFactory.getIntProperty(PROP_RESPONSE_MAX_THREADS, 64);
+        final int maxQueue = ConfigFactory.getIntProperty(PROP_RESPONSE_MAX_QUEUE, 1024);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(coreThreads, Math.max(coreThreads, maxThreads), 5L * 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(maxQueue, true), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, RESPONSE_THREAD_NAME + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /*
+     * Called when the module is unloaded to stop the response threads.
+     *
+     * Suspended policies that are still waiting for a response are failed, since
+     * their timeouts will no longer fire, and pending response policies are
+     * discarded.
+     */
+    static void onModuleUnloaded() {
+        responseTimer.cancel();
+        responseExecutor.shutdown();
+
+        for ( final RoutingResponse routingResponse : pendingRoutingResponses ) {
+            routingResponse.call( Either.<IOException, HttpResponse>left( new IOException( "Async HTTP routing module unloaded" ) ) );
+        }
+        for ( final ResponseContextInfo responseContextInfo : pendingResponsePolicies ) {
+            if ( pendingResponsePolicies.remove( responseContextInfo ) ) {
+                ResourceUtils.closeQuietly( responseContextInfo );
+            }
+        }
+    }
+
     private ContentTypeHeader getContentType(HttpResponse httpResponse) {
         try {
             return ContentTypeHeader.parseValue(httpResponse.getHeader(HttpHeaders.Names.CONTENT_TYPE));
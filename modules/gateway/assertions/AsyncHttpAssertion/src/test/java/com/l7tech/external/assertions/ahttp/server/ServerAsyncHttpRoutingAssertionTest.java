@@ -0,0 +1,164 @@
+package com.l7tech.external.assertions.ahttp.server;
+
+import com.l7tech.common.io.XmlUtil;
+import com.l7tech.common.http.GenericHttpRequestParams;
+import com.l7tech.common.mime.ContentTypeHeader;
+import com.l7tech.external.assertions.ahttp.AsyncHttpRoutingAssertion;
+import com.l7tech.message.Message;
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.policy.assertion.RoutingStatus;
+import com.l7tech.server.ApplicationContexts;
+import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.message.PolicyEnforcementContextFactory;
+import com.l7tech.server.policy.assertion.AssertionResumption;
+import com.l7tech.util.Charsets;
+import com.l7tech.util.IOUtils;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jetbrains.annotations.NotNull;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.context.ApplicationContext;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test routing with the response delivered to the current policy.
+ */
+public class ServerAsyncHttpRoutingAssertionTest {
+    private static final String REQUEST = "<echo>test</echo>";
+
+    private static final ChannelGroup channels = new DefaultChannelGroup();
+    private static ServerBootstrap bootstrap;
+    private static int port;
+
+    private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<Object>();
+    private final BlockingQueue<String> resumedThreads = new LinkedBlockingQueue<String>();
+    private PolicyEnforcementContext context;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() throws Exception {
+                final ChannelPipeline pipeline = new TestAsyncNettyHttpServerPipelineFactory().getPipeline();
+                pipeline.addFirst("channels", new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void channelOpen(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+                        channels.add(e.getChannel());
+                        super.channelOpen(ctx, e);
+                    }
+                });
+                return pipeline;
+            }
+        });
+        final Channel serverChannel = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+        channels.add(serverChannel);
+        port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        channels.close().awaitUninterruptibly();
+        bootstrap.releaseExternalResources();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        context = PolicyEnforcementContextFactory.createPolicyEnforcementContext(
+                new Message(XmlUtil.stringAsDocument(REQUEST)),
+                new Message());
+        outcomes.clear();
+        resumedThreads.clear();
+    }
+
+    @Test
+    public void testRouteAndWait() throws Exception {
+        final ServerAsyncHttpRoutingAssertion sass = serverAssertion(null);
+
+        assertEquals(AssertionStatus.NONE, sass.checkRequest(context));
+        assertEquals(RoutingStatus.ROUTED, context.getRoutingStatus());
+        assertEquals(REQUEST, responseText());
+    }
+
+    @Test
+    public void testRouteAndSuspend() throws Exception {
+        final ServerAsyncHttpRoutingAssertion sass = serverAssertion(null);
+
+        assertNull("suspended", sass.checkRequest(context, resumption()));
+        assertEquals(AssertionStatus.NONE, outcomes.poll(30L, TimeUnit.SECONDS));
+        assertTrue("resumed on response thread", resumedThreads.poll().startsWith(ServerAsyncHttpRoutingAssertion.RESPONSE_THREAD_NAME));
+        assertEquals(RoutingStatus.ROUTED, context.getRoutingStatus());
+        assertEquals(REQUEST, responseText());
+    }
+
+    @Test
+    public void testRouteAndSuspendTimeout() throws Exception {
+        final ServerAsyncHttpRoutingAssertion sass = serverAssertion("100");
+
+        assertNull("suspended", sass.checkRequest(context, resumption()));
+        assertEquals(AssertionStatus.FAILED, outcomes.poll(30L, TimeUnit.SECONDS));
+        assertTrue("resumed on response thread", resumedThreads.poll().startsWith(ServerAsyncHttpRoutingAssertion.RESPONSE_THREAD_NAME));
+        assertEquals(RoutingStatus.ATTEMPTED, context.getRoutingStatus());
+        assertEquals(Boolean.FALSE, context.getVariable("async.response.success"));
+    }
+
+    private ServerAsyncHttpRoutingAssertion serverAssertion(final String timeout) throws Exception {
+        final AsyncHttpRoutingAssertion assertion = new AsyncHttpRoutingAssertion();
+        assertion.setProtectedServiceUrl("http://127.0.0.1:" + port + "/echo");
+        assertion.setHttpVersion(GenericHttpRequestParams.HttpVersion.HTTP_VERSION_1_1);
+        assertion.setTimeout(timeout);
+
+        final ApplicationContext applicationContext = ApplicationContexts.getTestApplicationContext();
+        final ServerAsyncHttpRoutingAssertion sass = new ServerAsyncHttpRoutingAssertion(assertion, applicationContext);
+        applicationContext.getAutowireCapableBeanFactory().autowireBeanProperties(sass, AutowireCapableBeanFactory.AUTOWIRE_NO, false);
+        return sass;
+    }
+
+    private AssertionResumption resumption() {
+        return new AssertionResumption(
+                new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        resumedThreads.add(Thread.currentThread().getName());
+                        command.run();
+                    }
+                },
+                new AssertionResumption.Callback() {
+                    @Override
+                    public void completed(@NotNull final AssertionStatus status) {
+                        outcomes.add(status);
+                    }
+
+                    @Override
+                    public void failed(@NotNull final Throwable failure) {
+                        outcomes.add(failure);
+                    }
+                });
+    }
+
+    private String responseText() throws Exception {
+        final Message response = context.getResponse();
+        assertTrue(ContentTypeHeader.XML_DEFAULT.matches(response.getMimeKnob().getOuterContentType()));
+        return new String(IOUtils.slurpStream(response.getMimeKnob().getEntireMessageBodyAsInputStream()), Charsets.UTF8);
+    }
+}
@@ -1,20 +1,22 @@
 package com.l7tech.external.assertions.cache.server;
 
 import com.l7tech.common.mime.ContentTypeHeader;
-import com.l7tech.common.mime.NoSuchPartException;
 import com.l7tech.external.assertions.cache.CacheLookupAssertion;
 import com.l7tech.gateway.common.audit.AssertionMessages;
 import com.l7tech.message.Message;
 import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
 import com.l7tech.policy.variable.Syntax;
+import com.l7tech.server.StashManagerFactory;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.assertion.AbstractMessageTargetableServerAssertion;
 import com.l7tech.server.policy.variable.ExpandVariables;
 import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.ResourceUtils;
 import org.springframework.beans.factory.BeanFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 import static com.l7tech.external.assertions.cache.CacheLookupAssertion.MAX_SECONDS_FOR_MAX_ENTRY_AGE;
@@ -29,11 +31,13 @@ import static com.l7tech.util.ValidationUtils.isValidLong;
 public class ServerCacheLookupAssertion extends AbstractMessageTargetableServerAssertion<CacheLookupAssertion> {
     private final String[] variablesUsed;
     private final SsgCacheManager cacheManager;
+    private final StashManagerFactory stashManagerFactory;
 
     public ServerCacheLookupAssertion(final CacheLookupAssertion assertion, final BeanFactory beanFactory) throws PolicyAssertionException {
         super(assertion);
         this.variablesUsed = assertion.getVariablesUsed();
         this.cacheManager = SsgCacheManager.getInstance(beanFactory);
+        this.stashManagerFactory = beanFactory.getBean("stashManagerFactory", StashManagerFactory.class);
         final String maxAgeExpression = assertion.getMaxEntryAgeSeconds();
         final String[] refs = Syntax.getReferencedNames(maxAgeExpression);
         if (refs.length > 0) {
@@ -61,10 +65,26 @@ public class ServerCacheLookupAssertion extends AbstractMessageTargetableServerA
 
         SsgCache cache = cacheManager.getCache(cacheName);
         SsgCache.Entry cachedEntry = cache.lookup(key);
-        if (cachedEntry == null || cachedEntry.getTimeStamp() < System.currentTimeMillis() - cacheMaxEntryAgeMillis) {
+        final InputStream cachedBody;
+        try {
+            cachedBody = cachedEntry == null || cachedEntry.getTimeStamp() < System.currentTimeMillis() - cacheMaxEntryAgeMillis ?
+                    null :
+                    cachedEntry.getInputStream();
+        } catch (IOException e) {
+            logAndAudit(AssertionMessages.USERDETAIL_WARNING, "Exception while retrieving cached information: " + ExceptionUtils.getMessage(e));
+            return AssertionStatus.FAILED;
+        }
+        if (cachedBody == null) {
             logAndAudit(AssertionMessages.CACHE_LOOKUP_MISS, key);
             return AssertionStatus.FALSIFIED;
         }
+        // the cached entry is released when the body is fully read or the context is closed
+        context.runOnClose(new Runnable() {
+            @Override
+            public void run() {
+                ResourceUtils.closeQuietly(cachedBody);
+            }
+        });
 
         logAndAudit(AssertionMessages.CACHE_LOOKUP_RETRIEVED, key);
 
@@ -77,8 +97,15 @@ public class ServerCacheLookupAssertion extends AbstractMessageTargetableServerA
                 message = context.getResponse();
                 break;
             case OTHER:
-                message = new Message();
-                context.setVariable(assertion.getOtherTargetMessageVariable(), message);
+                final Message otherMessage = new Message();
+                context.setVariable(assertion.getOtherTargetMessageVariable(), otherMessage);
+                context.runOnClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        otherMessage.close();
+                    }
+                });
+                message = otherMessage;
         }
 
         try {
@@ -92,20 +119,9 @@ public class ServerCacheLookupAssertion extends AbstractMessageTargetableServerA
                 cachedContentType != null ? ContentTypeHeader.create(cachedContentType) :
                     ContentTypeHeader.XML_DEFAULT;
 
-            byte[] bodyBytes;
-            try {
-                bodyBytes = new byte[ cachedEntry.getDataSize() ];
-                cachedEntry.putData( bodyBytes );
-            } catch (IOException e) {
-                logAndAudit(AssertionMessages.USERDETAIL_WARNING, "Exception while retrieving cached information: " + ExceptionUtils.getMessage(e));
-                return AssertionStatus.FAILED;
-            } catch (NoSuchPartException e) {
-                logAndAudit(AssertionMessages.USERDETAIL_WARNING, "Exception while retrieving cached information: " + ExceptionUtils.getMessage(e)); // can't happen
-                return AssertionStatus.FAILED;
-            }
-            // TODO use proper hybrid stash manager, making arrangements to have it closed when context is closed,
-            // instead of just using two-arg initialize() which just uses ByteArrayStashManager
-            message.initialize(contentType, bodyBytes);
+            // The cached body is streamed into the message, it is only copied if the message is stashed.
+            // The stash manager is closed with the message, which is closed with the context.
+            message.initialize(stashManagerFactory.createStashManager(), contentType, cachedBody);
             return AssertionStatus.NONE;
         } catch (IOException e) {
             logAndAudit(AssertionMessages.USERDETAIL_WARNING, "Message cache error: " + ExceptionUtils.getMessage(e));
@@ -1,33 +1,49 @@
 package com.l7tech.external.assertions.cache.server;
 
+import com.l7tech.common.mime.DirectBufferPool;
 import com.l7tech.common.mime.NoSuchPartException;
+import com.l7tech.common.mime.OffHeapStashManager;
 import com.l7tech.common.mime.StashManager;
 import com.l7tech.server.StashManagerFactory;
+import com.l7tech.util.BufferPool;
+import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.ResourceUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Represents an instance of a cache.
- * TODO multithreaded cache retrieval
+ *
+ * <p>Entries are spread over shards, each with its own lock. Lookups do not block, the
+ * access order for a shard is only updated if its lock is free. Stores and evictions lock
+ * one shard at a time.</p>
+ *
+ * <p>Cached bodies are held in off-heap buffers from the pool shared with off-heap stash
+ * managers, so cached bodies count against the same off-heap budget. Bodies too large for
+ * off-heap storage, or stored when the budget is exhausted, are stashed using the cache's
+ * stash manager factory. Entries are reference
+ * counted so that an entry that is evicted while being read remains valid until the
+ * reader is finished with it.</p>
  */
 public class SsgCache {
 
     // - PUBLIC
 
     public SsgCache(StashManagerFactory stashManagerFactory, Config config) {
-        this.stashManagerFactory = stashManagerFactory;
-        this.config = config;
+        this(stashManagerFactory, OffHeapStashManager.getBufferPool(), config);
     }
 
     public void updateConfig(Config newConfig) {
@@ -35,6 +51,7 @@ public class SsgCache {
             this.config = newConfig;
             logger.log(Level.FINE, "Cache config update for " + toString());
             removeExpired();
+            evict(0, null, null);
         }
     }
 
@@ -43,22 +60,30 @@ public class SsgCache {
      *
      * @param key the key to look for.
      * @return the cached entry associated with the key, or null if not found.
-     *         If an InputStream is returned, caller is responsible for closing it when they are finished with it.
+     * @see Entry#getInputStream()
      */
     public Entry lookup(String key) {
         if (closed.get()) return null;
-        Entry cachedEntry;
-        synchronized (this) {
-            cachedEntry = cache.get(key);
+        final Shard shard = shardFor(key);
+        final Entry cachedEntry = shard.entries.get(key);
+        if (cachedEntry == null || isExpired(cachedEntry, config)) return null;
+
+        cachedEntry.recordAccess();
+        if (shard.lock.tryLock()) {
+            try {
+                shard.accessOrder.get(key);
+            } finally {
+                shard.lock.unlock();
+            }
         }
-        return (cachedEntry == null || cachedEntry.timeStamp < System.currentTimeMillis() - config.maxAgeMillis) ? null : cachedEntry;
+        return cachedEntry;
     }
 
     /**
      * Store an entry into the cache.
      *
      * @param key the key under which to store the entry.
-     * @param body the InputStream to store.  Will be drained, read all the way to EOF, but will not be closed.
+     * @param body the InputStream to store.  Will be read to EOF unless the body is too large to cache, but will not be closed.
      * @throws java.io.IOException if there is a problem reading the body or writing the cache information
      */
     public void store(String key, InputStream body) throws IOException {
@@ -69,29 +94,38 @@ public class SsgCache {
      * Store an entry into the cache.
      *
      * @param key the key under which to store the entry.
-     * @param body the InputStream to store.  Will be drained, read all the way to EOF, but will not be closed.
+     * @param body the InputStream to store.  Will be read to EOF unless the body is too large to cache, but will not be closed.
      * @param contetType the content-type associated with the privided input stream
      * @throws java.io.IOException if there is a problem reading the body or writing the cache information
      */
     public void store(String key, InputStream body, String contetType) throws IOException {
         if (closed.get()) return;
-        StashManager sm = stashManagerFactory.createStashManager();
-        boolean needsClose = true;
+        final Config config = this.config;
+        if (config.maxEntries <= 0) return;
+
+        final Entry entry = readEntry(body, contetType, config.maxSizeBytes);
+        if (entry == null) return;
+
+        final int shardIndex = shardIndex(key);
+        final Shard shard = shards.get(shardIndex);
+        shard.lock.lock();
         try {
-            sm.stash(0, body);
-            if (sm.getSize(0) > config.maxSizeBytes) {
+            if (closed.get()) {
+                entry.release();
                 return;
             }
-            synchronized (this) {
-                if (closed.get()) return;
-                Entry prev = cache.put(key, new Entry(sm, contetType));
-                removeExpired();
-                logger.log(Level.FINE, "Cache size: " + cache.size());
-                needsClose = false;
-                if (prev != null) removed.add(prev);
-            }
+            shard.entries.put(key, entry);
+            final Entry prev = shard.accessOrder.put(key, entry);
+            entryCount.incrementAndGet();
+            byteCount.addAndGet(entry.size);
+            if (prev != null) discard(prev);
         } finally {
-            if (needsClose) sm.close();
+            shard.lock.unlock();
+        }
+
+        evict(shardIndex, key, entry);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Cache size: " + entryCount.get());
         }
     }
 
@@ -100,31 +134,41 @@ public class SsgCache {
      */
     public void close() {
         if (closed.compareAndSet(false, true)) {
-            Collection<Entry> entries;
-            synchronized (this) { // don't start closing if a store may be in progress
-                entries = cache.values();
-                cache.clear();
-                for(Entry entry : entries) {
-                    closeEntry(entry);
-                }
-            }
+            clear();
         }
     }
 
     @Override
-    public synchronized String toString() {
-        return config.toString() + " : " + cache.size() + " entries.";
+    public String toString() {
+        return config.toString() + " : " + entryCount.get() + " entries, " + byteCount.get() + " bytes.";
     }
 
     public static class Entry {
         private final long timeStamp;
         private final String contentType;
+        private final long size;
+        private final DirectBufferPool bufferPool;
+        private final ByteBuffer[] buffers;
         private final StashManager stashManager;
-        private final ReadWriteLock stashManagerLock = new ReentrantReadWriteLock(); // ReentrantReadWriteLock supports lock downgrade
+        private final AtomicInteger references = new AtomicInteger(1); // reference held by the cache
+        private volatile long lastAccess;
+        private volatile int accessCount; // approximate, concurrent increments may be lost
+
+        private Entry(DirectBufferPool bufferPool, ByteBuffer[] buffers, long size, String contentType) {
+            this(bufferPool, buffers, null, size, contentType);
+        }
 
-        public Entry(StashManager stashManager, String contentType) {
+        private Entry(StashManager stashManager, String contentType) {
+            this(null, null, stashManager, stashManager.getSize(0), contentType);
+        }
+
+        private Entry(DirectBufferPool bufferPool, ByteBuffer[] buffers, StashManager stashManager, long size, String contentType) {
             this.timeStamp = System.currentTimeMillis();
+            this.lastAccess = System.nanoTime();
+            this.bufferPool = bufferPool;
+            this.buffers = buffers;
             this.stashManager = stashManager;
+            this.size = size;
             this.contentType = contentType;
         }
 
@@ -139,19 +183,9 @@ public class SsgCache {
         /**
          * Get the size of the entry.
          *
-         * @return The size, suitable for use with putData.
-         * @see #putData(byte[])
+         * @return The size, 0 if too large for an int.
          */
         public int getDataSize() {
-            final long size;
-
-            stashManagerLock.readLock().lock();
-            try {
-                size = stashManager.getSize( 0 );
-            } finally {
-                stashManagerLock.readLock().unlock();
-            }
-
             if ( size > Integer.MAX_VALUE || size < 0) {
                 return 0;
             }
@@ -160,75 +194,96 @@ public class SsgCache {
         }
 
         /**
-         * Put the data for this entry into the given byte array.
+         * Open a stream for the cached data.
+         *
+         * <p>The entry remains valid until the stream is closed or fully read, even if the
+         * entry is removed from the cache in the mean time. The caller must close the
+         * stream.</p>
          *
-         * @param buffer The buffer which must be large enough for the data.
-         * @throws NoSuchPartException If this entry has no part 0.
+         * @return The stream or null if the entry is no longer available
          * @throws IOException If an error occurs
          */
-        public void putData( final byte[] buffer ) throws NoSuchPartException, IOException {
-            InputStream in = null;
-            Lock writeLock = stashManagerLock.writeLock();
-            writeLock.lock();
+        public InputStream getInputStream() throws IOException {
+            if ( !ref() ) return null;
+
+            boolean opened = false;
             try {
-                if ( stashManager.isByteArrayAvailable( 0 ) ) {
-                    final byte[] data = stashManager.recallBytes( 0 );
-                    stashManagerLock.readLock().lock();
-                    try {
-                        writeLock.unlock(); // downgrade to read lock for copy
-                        writeLock = null;
-                        System.arraycopy( data, 0, buffer, 0, data.length );
-                    } finally {
-                        stashManagerLock.readLock().unlock();
-                    }
+                final InputStream in;
+                if ( buffers != null ) {
+                    in = new BufferInputStream( buffers, size );
                 } else {
-                    in = stashManager.recall(0);
-                    stashManagerLock.readLock().lock();
-                    try {
-                        writeLock.unlock(); // downgrade to read lock for copy
-                        writeLock = null;
-                        final int read = in.read( buffer );
-                        if ( read != buffer.length ) {
-                            throw new IOException( "Partial read " + read + "/" + buffer.length );
-                        }
-                    } finally {
-                        stashManagerLock.readLock().unlock();
+                    synchronized ( stashManager ) { // stash managers are not thread safe
+                        in = stashManager.recall( 0 );
                     }
                 }
+                opened = true;
+                return new EntryInputStream( this, in );
+            } catch ( NoSuchPartException e ) {
+                throw new IOException( ExceptionUtils.getMessage( e ), e );
             } finally {
-                ResourceUtils.closeQuietly( in );
-                if ( writeLock != null ) writeLock.unlock();
+                if ( !opened ) release();
             }
         }
 
-        private boolean tryClose() {
-            boolean closed = false;
+        private void recordAccess() {
+            lastAccess = System.nanoTime();
+            accessCount++;
+        }
 
-            if ( stashManagerLock.writeLock().tryLock() ) {
-                try {
-                    closed = true;
-                    stashManager.close();
-                } catch (Exception e) {
-                    logger.log(Level.WARNING, "Exception while closing StashManager: " + ExceptionUtils.getMessage(e), e);
-                } finally {
-                    stashManagerLock.writeLock().unlock();
+        private boolean ref() {
+            int current;
+            do {
+                current = references.get();
+                if ( current <= 0 ) return false;
+            } while ( !references.compareAndSet( current, current + 1 ) );
+            return true;
+        }
+
+        private void release() {
+            if ( references.decrementAndGet() == 0 ) {
+                if ( buffers != null ) {
+                    for ( final ByteBuffer buffer : buffers ) {
+                        bufferPool.release( buffer );
+                    }
+                } else {
+                    try {
+                        stashManager.close();
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Exception while closing StashManager: " + ExceptionUtils.getMessage(e), e);
+                    }
                 }
             }
-
-            return closed;
         }
     }
 
+    /**
+     * Eviction policy for a cache when it is over its entry or byte limit.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evict the least recently used entry
+         */
+        LRU,
+
+        /**
+         * Evict the least frequently used of the less recently used entries
+         */
+        LFU
+    }
+
     public static class Config {
 
         public static final int DEFAULT_MAX_ENTRIES = 10;
         public static final long DEFAULT_MAX_SIZE_BYTES = 10000; // 10k
         public static final long DEFAULT_MAX_AGE_MILLIS = 300000; // 5min
+        public static final long DEFAULT_MAX_TOTAL_BYTES = 0; // no limit other than entries * entry size
 
         private final String name;
         private int maxEntries = DEFAULT_MAX_ENTRIES;
         private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
         private long maxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+        private long maxTotalBytes = ConfigFactory.getLongProperty( PROP_MAX_TOTAL_BYTES, DEFAULT_MAX_TOTAL_BYTES );
+        private EvictionPolicy evictionPolicy = getDefaultEvictionPolicy();
 
         public Config(String name) {
             this.name = name;
@@ -253,13 +308,34 @@ public class SsgCache {
             return this;
         }
 
+        /**
+         * Set the limit for the total size of all entries in the cache.
+         *
+         * @param maxTotalBytes The limit in bytes, 0 for no limit
+         * @return this config
+         */
+        public Config maxTotalBytes(long maxTotalBytes) {
+            this.maxTotalBytes = maxTotalBytes;
+            return this;
+        }
+
+        public Config evictionPolicy(EvictionPolicy evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
         public SsgCache build(StashManagerFactory stashManagerFactory) {
             return new SsgCache(stashManagerFactory, this);
         }
 
+        public SsgCache build(StashManagerFactory stashManagerFactory, DirectBufferPool bufferPool) {
+            return new SsgCache(stashManagerFactory, bufferPool, this);
+        }
+
         @Override
         public String toString() {
-            return name + "[" + maxEntries + ", " + maxAgeMillis + "ms, " + maxSizeBytes + "bytes]";
+            return name + "[" + maxEntries + ", " + maxAgeMillis + "ms, " + maxSizeBytes + "bytes, " +
+                    (maxTotalBytes > 0 ? maxTotalBytes + "bytes total, " : "") + evictionPolicy + "]";
         }
 
         @SuppressWarnings({ "RedundantIfStatement" })
@@ -273,6 +349,8 @@ public class SsgCache {
             if (maxAgeMillis != config.maxAgeMillis) return false;
             if (maxEntries != config.maxEntries) return false;
             if (maxSizeBytes != config.maxSizeBytes) return false;
+            if (maxTotalBytes != config.maxTotalBytes) return false;
+            if (evictionPolicy != config.evictionPolicy) return false;
             if (name != null ? !name.equals(config.name) : config.name != null) return false;
 
             return true;
@@ -284,69 +362,392 @@ public class SsgCache {
             result = 31 * result + maxEntries;
             result = 31 * result + (int) (maxAgeMillis ^ (maxAgeMillis >>> 32));
             result = 31 * result + (int) (maxSizeBytes ^ (maxSizeBytes >>> 32));
+            result = 31 * result + (int) (maxTotalBytes ^ (maxTotalBytes >>> 32));
+            result = 31 * result + (evictionPolicy != null ? evictionPolicy.hashCode() : 0);
             return result;
         }
     }
 
     // - PACKAGE
 
+    SsgCache(StashManagerFactory stashManagerFactory, DirectBufferPool bufferPool, Config config) {
+        this.stashManagerFactory = stashManagerFactory;
+        this.bufferPool = bufferPool;
+        this.config = config;
+        final List<Shard> shards = new ArrayList<Shard>(SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards.add(new Shard());
+        }
+        this.shards = Collections.unmodifiableList(shards);
+    }
+
     static SsgCache getNullCache() {
-        SsgCache c = new SsgCache(null, null);
+        SsgCache c = new SsgCache(null, null, null);
         c.closed.set(true);
         return c;
     }
 
-    // moves expired Entry from the cache to the "removed" queue
-    synchronized void removeExpired() {
-        Iterator<Map.Entry<String, Entry>> iterator = cache.entrySet().iterator();
-        while(iterator.hasNext()) {
-            Entry entry = iterator.next().getValue();
-            if (cache.size() > config.maxEntries || entry.timeStamp < System.currentTimeMillis() - config.maxAgeMillis) {
-                iterator.remove();
-                removed.add(entry);
-            } else {
-                return;
+    // removes expired entries from the cache
+    void removeExpired() {
+        final Config config = this.config;
+        if (config == null) return;
+        for (final Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                final Iterator<Map.Entry<String, Entry>> iterator = shard.accessOrder.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    final Map.Entry<String, Entry> entry = iterator.next();
+                    if (isExpired(entry.getValue(), config)) {
+                        iterator.remove();
+                        removeFromShard(shard, entry.getKey(), entry.getValue());
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
             }
         }
     }
 
     // clears the cache
-    synchronized void clear() {
-        removed.addAll(cache.values());
-        cache.clear();
-    }
-
-    void cleanup() {
-        Entry entry;
-        int count = 0;
-        int deferredCount = 0;
-        while((entry = removed.poll()) != null) {
-            if ( closeEntry(entry) ) {
-                count++;
-            } else {
-                // try again later
-                removed.add(entry);
-                deferredCount++;
+    void clear() {
+        for (final Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                for (final Entry entry : shard.accessOrder.values()) {
+                    discard(entry);
+                }
+                shard.accessOrder.clear();
+                shard.entries.clear();
+            } finally {
+                shard.lock.unlock();
             }
         }
-        logger.log(Level.FINE, "Cache " + config.name + ": cleaned up " + count +" entries, deferred " + deferredCount +" entries.");
+    }
+
+    int size() {
+        return entryCount.get();
+    }
+
+    long getByteCount() {
+        return byteCount.get();
     }
 
     // - PRIVATE
 
     private static final Logger logger = Logger.getLogger(SsgCache.class.getName());
+    private static final String PROP_MAX_TOTAL_BYTES = SsgCache.class.getName() + ".maxTotalBytes";
+    private static final String PROP_EVICTION_POLICY = SsgCache.class.getName() + ".evictionPolicy";
+    private static final int OFF_HEAP_MAX_ENTRY_BYTES = ConfigFactory.getIntProperty( SsgCache.class.getName() + ".offHeapMaxEntryBytes", 1024 * 1024 );
+    private static final int SHARD_COUNT = shardCount();
+    private static final int LFU_SAMPLE_SIZE = 8;
+
     private final StashManagerFactory stashManagerFactory;
+    private final DirectBufferPool bufferPool;
     private volatile Config config;
-    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<String, Entry>();
+    private final List<Shard> shards;
+    private final AtomicInteger entryCount = new AtomicInteger();
+    private final AtomicLong byteCount = new AtomicLong();
     private final AtomicBoolean closed = new AtomicBoolean(false);
 
-    // entries removed from cache; background thread in SsgCacheManager will close() them
-    private final ConcurrentLinkedQueue<Entry> removed = new ConcurrentLinkedQueue<Entry>();
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+        private final LinkedHashMap<String, Entry> accessOrder = new LinkedHashMap<String, Entry>(16, 0.75f, true); // guarded by lock
+    }
+
+    private static int shardCount() {
+        int count = 1;
+        while (count < Runtime.getRuntime().availableProcessors() && count < 16) {
+            count *= 2;
+        }
+        return count;
+    }
+
+    private static EvictionPolicy getDefaultEvictionPolicy() {
+        final String policy = ConfigFactory.getProperty( PROP_EVICTION_POLICY, EvictionPolicy.LRU.name() );
+        try {
+            return EvictionPolicy.valueOf( policy.trim().toUpperCase() );
+        } catch ( IllegalArgumentException e ) {
+            logger.log( Level.WARNING, "Invalid cache eviction policy ''{0}'', using LRU", policy );
+            return EvictionPolicy.LRU;
+        }
+    }
+
+    private static boolean isExpired(final Entry entry, final Config config) {
+        return entry.timeStamp < System.currentTimeMillis() - config.maxAgeMillis;
+    }
+
+    private int shardIndex(final String key) {
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (shards.size() - 1);
+    }
+
+    private Shard shardFor(final String key) {
+        return shards.get(shardIndex(key));
+    }
+
+    /**
+     * Read the body into pooled buffers, or a stash manager if too large for off-heap storage or the off-heap
+     * budget is exhausted.
+     *
+     * @return The entry or null if the body is larger than the maximum size or cannot be stored
+     */
+    private Entry readEntry(final InputStream body, final String contentType, final long maxSizeBytes) throws IOException {
+        final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        final byte[] readBuffer = BufferPool.getBuffer(bufferPool.getChunkSize());
+        boolean success = false;
+        try {
+            long size = 0L;
+            ByteBuffer current = null;
+            int read;
+            while ((read = body.read(readBuffer, 0, bufferPool.getChunkSize())) >= 0) {
+                size += (long) read;
+                if (size > maxSizeBytes) return null;
+                if (size > (long) OFF_HEAP_MAX_ENTRY_BYTES) {
+                    return stash(buffers, size - (long) read, readBuffer, 0, read, body, contentType, maxSizeBytes);
+                }
+
+                int offset = 0;
+                while (offset < read) {
+                    if (current == null || !current.hasRemaining()) {
+                        current = bufferPool.allocate(0L);
+                        if (current == null) {
+                            return stash(buffers, size - (long) (read - offset), readBuffer, offset, read - offset, body, contentType, maxSizeBytes);
+                        }
+                        buffers.add(current);
+                    }
+                    final int length = Math.min(current.remaining(), read - offset);
+                    current.put(readBuffer, offset, length);
+                    offset += length;
+                }
+            }
+
+            success = true;
+            return new Entry(bufferPool, flip(buffers), size, contentType);
+        } finally {
+            BufferPool.returnBuffer(readBuffer);
+            if (!success) {
+                for (final ByteBuffer buffer : buffers) {
+                    bufferPool.release(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stash the body that could not be held in pooled buffers, the caller releases the buffers.
+     */
+    private Entry stash(final List<ByteBuffer> buffers,
+                        final long bufferedSize,
+                        final byte[] readBuffer,
+                        final int offset,
+                        final int length,
+                        final InputStream body,
+                        final String contentType,
+                        final long maxSizeBytes) throws IOException {
+        if (stashManagerFactory == null) return null;
+        final InputStream head = new BufferInputStream(flip(buffers), bufferedSize);
+        final InputStream remaining = new SequenceInputStream(
+                new ByteArrayInputStream(readBuffer, offset, length), body);
+        return stash(new SequenceInputStream(head, remaining), contentType, maxSizeBytes);
+    }
+
+    private static ByteBuffer[] flip(final List<ByteBuffer> buffers) {
+        for (final ByteBuffer buffer : buffers) {
+            buffer.flip();
+        }
+        return buffers.toArray(new ByteBuffer[buffers.size()]);
+    }
+
+    private Entry stash(final InputStream body, final String contentType, final long maxSizeBytes) throws IOException {
+        final StashManager sm = stashManagerFactory.createStashManager();
+        boolean needsClose = true;
+        try {
+            sm.stash(0, body);
+            if (sm.getSize(0) > maxSizeBytes) {
+                return null;
+            }
+            needsClose = false;
+            return new Entry(sm, contentType);
+        } finally {
+            if (needsClose) sm.close();
+        }
+    }
+
+    /**
+     * Evict entries until the cache is within its limits.
+     *
+     * <p>Candidates from each shard are compared so that the least recently (or frequently)
+     * used entry in the cache is evicted, not just the one in the shard being updated. The
+     * newly stored entry is only evicted when there is nothing else to evict.</p>
+     */
+    private void evict(final int startShard, final String storedKey, final Entry stored) {
+        final Config config = this.config;
+        if (config == null) return;
+
+        while (entryCount.get() > Math.max(0, config.maxEntries) ||
+                (config.maxTotalBytes > 0L && byteCount.get() > config.maxTotalBytes)) {
+            Shard victimShard = null;
+            String victimKey = null;
+            Entry victim = null;
+            for (int i = 0; i < shards.size(); i++) {
+                final Shard shard = shards.get((startShard + i) & (shards.size() - 1));
+                shard.lock.lock();
+                try {
+                    for (final Map.Entry<String, Entry> candidate : evictionCandidates(shard, config.evictionPolicy)) {
+                        if (candidate.getValue() == stored) continue;
+                        if (victim == null || isBetterVictim(candidate.getValue(), victim, config)) {
+                            victimShard = shard;
+                            victimKey = candidate.getKey();
+                            victim = candidate.getValue();
+                        }
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+
+            if (victim == null) {
+                if (stored == null) break;
+                victimShard = shards.get(startShard);
+                victimKey = storedKey;
+                victim = stored;
+            }
+
+            victimShard.lock.lock();
+            try {
+                if (victimShard.accessOrder.get(victimKey) == victim) {
+                    victimShard.accessOrder.remove(victimKey);
+                    removeFromShard(victimShard, victimKey, victim);
+                } else if (victim == stored) {
+                    break; // already replaced or removed
+                }
+            } finally {
+                victimShard.lock.unlock();
+            }
+        }
+    }
+
+    private static List<Map.Entry<String, Entry>> evictionCandidates(final Shard shard, final EvictionPolicy policy) {
+        final int sampleSize = policy == EvictionPolicy.LFU ? LFU_SAMPLE_SIZE : 1;
+        final List<Map.Entry<String, Entry>> candidates = new ArrayList<Map.Entry<String, Entry>>(sampleSize);
+        final Iterator<Map.Entry<String, Entry>> iterator = shard.accessOrder.entrySet().iterator();
+        while (iterator.hasNext() && candidates.size() < sampleSize) {
+            final Map.Entry<String, Entry> entry = iterator.next();
+            candidates.add(new AbstractMap.SimpleImmutableEntry<String, Entry>(entry.getKey(), entry.getValue()));
+        }
+        return candidates;
+    }
+
+    private static boolean isBetterVictim(final Entry candidate, final Entry victim, final Config config) {
+        final boolean candidateExpired = isExpired(candidate, config);
+        if (candidateExpired != isExpired(victim, config)) return candidateExpired;
+        if (config.evictionPolicy == EvictionPolicy.LFU && candidate.accessCount != victim.accessCount) {
+            return candidate.accessCount < victim.accessCount;
+        }
+        return candidate.lastAccess - victim.lastAccess < 0L;
+    }
+
+    // caller must hold the shard lock and have removed the entry from the access order
+    private void removeFromShard(final Shard shard, final String key, final Entry entry) {
+        shard.entries.remove(key, entry);
+        discard(entry);
+    }
+
+    private void discard(final Entry entry) {
+        entryCount.decrementAndGet();
+        byteCount.addAndGet(-entry.size);
+        entry.release();
+    }
 
     /**
-     * @return true if closed.
+     * Stream over the flipped buffers of an entry, each stream reads using its own views of the buffers.
      */
-    private boolean closeEntry(Entry entry) {
-        return entry == null || entry.tryClose();
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer[] buffers;
+        private long remaining;
+        private int index;
+
+        private BufferInputStream(final ByteBuffer[] buffers, final long size) {
+            this.buffers = new ByteBuffer[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                this.buffers[i] = buffers[i].duplicate();
+            }
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final ByteBuffer buffer = current();
+            if (buffer == null) return -1;
+            remaining--;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            final ByteBuffer buffer = current();
+            if (buffer == null) return -1;
+            final int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            remaining -= (long) length;
+            return length;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min((long) Integer.MAX_VALUE, remaining);
+        }
+
+        private ByteBuffer current() {
+            while (index < buffers.length && !buffers[index].hasRemaining()) {
+                index++;
+            }
+            return index < buffers.length ? buffers[index] : null;
+        }
+    }
+
+    /**
+     * Stream that holds a reference to the entry until closed or fully read.
+     */
+    private static final class EntryInputStream extends InputStream {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private final Entry entry;
+        private final InputStream in;
+
+        private EntryInputStream(final Entry entry, final InputStream in) {
+            this.entry = entry;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (released.get()) return -1;
+            final int read = in.read();
+            if (read < 0) close();
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (released.get()) return -1;
+            final int read = in.read(b, off, len);
+            if (read < 0) close();
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return released.get() ? 0 : in.available();
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                ResourceUtils.closeQuietly(in);
+                entry.release();
+            }
+        }
     }
 }
@@ -53,8 +53,6 @@ public class SsgCacheManager {
                 logger.log(Level.FINE, "Cache cleanup started.");
                 for(SsgCache cache : cachesByName.values()) {
                     cache.removeExpired();
-                    cache.cleanup();
-
                 }
                 logger.log(Level.FINE, "Cache cleanup completed in " + (System.currentTimeMillis() - cleanupStart) / 1000 + " seconds");
             }
@@ -56,6 +56,7 @@ public class CacheAssertionTest {
 
     static {
         beanFactory.addBean( "messageCacheStashManagerFactory", TestStashManagerFactory.getInstance() );
+        beanFactory.addBean( "stashManagerFactory", TestStashManagerFactory.getInstance() );
         beanFactory.addBean( "applicationEventProxy", eventProxy );
         beanFactory.addBean( "clusterPropertyManager", new MockClusterPropertyManager( new ClusterProperty("messageCache.resetGeneration", "0")));
     }
@@ -0,0 +1,234 @@
+package com.l7tech.external.assertions.cache.server;
+
+import com.l7tech.common.mime.ByteArrayStashManager;
+import com.l7tech.common.mime.DirectBufferPool;
+import com.l7tech.common.mime.StashManager;
+import com.l7tech.server.StashManagerFactory;
+import com.l7tech.util.IOUtils;
+import com.l7tech.util.ResourceUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the message cache.
+ */
+public class SsgCacheTest {
+
+    private final AtomicInteger stashManagers = new AtomicInteger();
+    private final StashManagerFactory stashManagerFactory = new StashManagerFactory() {
+        @Override
+        public StashManager createStashManager() {
+            stashManagers.incrementAndGet();
+            return new ByteArrayStashManager();
+        }
+    };
+    private final DirectBufferPool bufferPool = new DirectBufferPool( 4096, 1024L * 1024L );
+    private SsgCache cache;
+
+    @After
+    public void closeCache() {
+        if ( cache != null ) cache.close();
+    }
+
+    @Test
+    public void testStoreAndLookup() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxEntries( 10 ).maxSizeBytes( 100000L ).build( stashManagerFactory, bufferPool );
+        final String body = body( 10000 );
+        cache.store( "key", stream( body ), "text/plain" );
+
+        final SsgCache.Entry entry = cache.lookup( "key" );
+        assertNotNull( entry );
+        assertEquals( "text/plain", entry.getContentType() );
+        assertEquals( 10000, entry.getDataSize() );
+        assertEquals( body, read( entry ) );
+        assertEquals( body, read( entry ) );
+        assertNull( cache.lookup( "other" ) );
+        assertEquals( "Off-heap storage used", 0, stashManagers.get() );
+    }
+
+    @Test
+    public void testEntryTooLarge() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxEntries( 10 ).maxSizeBytes( 100L ).build( stashManagerFactory, bufferPool );
+        cache.store( "key", stream( body( 101 ) ), null );
+        assertNull( cache.lookup( "key" ) );
+        assertEquals( 0, cache.size() );
+        assertEquals( 0L, cache.getByteCount() );
+    }
+
+    @Test
+    public void testMaxEntriesLru() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxEntries( 3 ).build( stashManagerFactory, bufferPool );
+        cache.store( "a", stream( "a" ) );
+        cache.store( "b", stream( "b" ) );
+        cache.store( "c", stream( "c" ) );
+        assertNotNull( cache.lookup( "a" ) );
+        cache.store( "d", stream( "d" ) );
+
+        assertEquals( 3, cache.size() );
+        assertNotNull( "recently used", cache.lookup( "a" ) );
+        assertNull( "least recently used", cache.lookup( "b" ) );
+        assertNotNull( cache.lookup( "c" ) );
+        assertNotNull( cache.lookup( "d" ) );
+    }
+
+    @Test
+    public void testMaxEntriesLfu() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxEntries( 3 ).evictionPolicy( SsgCache.EvictionPolicy.LFU ).build( stashManagerFactory, bufferPool );
+        cache.store( "a", stream( "a" ) );
+        cache.store( "b", stream( "b" ) );
+        cache.store( "c", stream( "c" ) );
+        for ( int i=0; i<5; i++ ) {
+            assertNotNull( cache.lookup( "a" ) );
+            assertNotNull( cache.lookup( "c" ) );
+        }
+        assertNotNull( cache.lookup( "b" ) );
+        cache.store( "d", stream( "d" ) );
+
+        assertEquals( 3, cache.size() );
+        assertNotNull( cache.lookup( "a" ) );
+        assertNull( "least frequently used", cache.lookup( "b" ) );
+        assertNotNull( cache.lookup( "c" ) );
+    }
+
+    @Test
+    public void testMaxTotalBytes() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxEntries( 100 ).maxSizeBytes( 10000L ).maxTotalBytes( 25000L ).build( stashManagerFactory, bufferPool );
+        for ( int i=0; i<10; i++ ) {
+            cache.store( "key" + i, stream( body( 10000 ) ) );
+            assertTrue( "Bytes " + cache.getByteCount(), cache.getByteCount() <= 25000L );
+        }
+        assertEquals( 2, cache.size() );
+        assertNotNull( cache.lookup( "key9" ) );
+    }
+
+    @Test
+    public void testReplaceAndClear() throws Exception {
+        cache = new SsgCache.Config( "test" ).build( stashManagerFactory, bufferPool );
+        cache.store( "key", stream( "first" ) );
+        cache.store( "key", stream( "second" ) );
+        assertEquals( 1, cache.size() );
+        assertEquals( "second", read( cache.lookup( "key" ) ) );
+
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertEquals( 0L, cache.getByteCount() );
+        assertNull( cache.lookup( "key" ) );
+    }
+
+    @Test
+    public void testEvictedWhileReading() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxEntries( 1 ).maxSizeBytes( 100000L ).build( stashManagerFactory, bufferPool );
+        final String body = body( 20000 );
+        cache.store( "key", stream( body ) );
+        final InputStream in = cache.lookup( "key" ).getInputStream();
+        try {
+            final long inUse = bufferPool.getBytesInUse();
+            cache.store( "other", stream( body( 20000 ) ) );
+            assertNull( cache.lookup( "key" ) );
+            final long stored = bufferPool.getBytesInUse();
+            assertTrue( "Buffers in use", stored > inUse );
+            assertEquals( body, new String( IOUtils.slurpStream( in ), "UTF-8" ) );
+            assertTrue( "Buffers released", bufferPool.getBytesInUse() < stored );
+        } finally {
+            ResourceUtils.closeQuietly( in );
+        }
+    }
+
+    @Test
+    public void testLargeEntryStashed() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxSizeBytes( 4L * 1024L * 1024L ).build( stashManagerFactory, bufferPool );
+        final String body = body( 2 * 1024 * 1024 );
+        cache.store( "key", stream( body ) );
+        assertEquals( 1, stashManagers.get() );
+        assertEquals( body, read( cache.lookup( "key" ) ) );
+    }
+
+    @Test
+    public void testOffHeapBudgetExhaustedStashed() throws Exception {
+        final DirectBufferPool smallPool = new DirectBufferPool( 4096, 8192L );
+        cache = new SsgCache.Config( "test" ).maxSizeBytes( 100000L ).build( stashManagerFactory, smallPool );
+        final String body = body( 10000 );
+        cache.store( "key", stream( body ) );
+        assertEquals( 1, stashManagers.get() );
+        assertEquals( "Buffers released", 0L, smallPool.getBytesInUse() );
+        assertEquals( body, read( cache.lookup( "key" ) ) );
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        cache = new SsgCache.Config( "test" ).build( stashManagerFactory, bufferPool );
+        cache.store( "key", stream( "body" ) );
+        cache.close();
+        assertNull( cache.lookup( "key" ) );
+        cache.store( "key", stream( "body" ) );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        cache = new SsgCache.Config( "test" ).maxEntries( 50 ).maxSizeBytes( 100000L ).build( stashManagerFactory, bufferPool );
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            final Future<?>[] futures = new Future<?>[8];
+            for ( int t=0; t<futures.length; t++ ) {
+                final int seed = t;
+                futures[t] = executor.submit( new java.util.concurrent.Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for ( int i=0; i<2000; i++ ) {
+                            final int key = (i * 31 + seed) % 100;
+                            final SsgCache.Entry entry = cache.lookup( Integer.toString( key ) );
+                            final String read = entry == null ? null : read( entry );
+                            if ( read == null ) {
+                                cache.store( Integer.toString( key ), stream( key + body( key * 100 ) ) );
+                            } else {
+                                assertEquals( key + body( key * 100 ), read );
+                            }
+                        }
+                        return null;
+                    }
+                } );
+            }
+            for ( final Future<?> future : futures ) {
+                future.get();
+            }
+            assertTrue( "Size " + cache.size(), cache.size() <= 50 );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    //- PRIVATE
+
+    private static InputStream stream( final String body ) throws IOException {
+        return new ByteArrayInputStream( body.getBytes( "UTF-8" ) );
+    }
+
+    private static String read( final SsgCache.Entry entry ) throws IOException {
+        final InputStream in = entry.getInputStream();
+        if ( in == null ) return null;
+        try {
+            return new String( IOUtils.slurpStream( in ), "UTF-8" );
+        } finally {
+            ResourceUtils.closeQuietly( in );
+        }
+    }
+
+    private static String body( final int length ) {
+        final StringBuilder builder = new StringBuilder( length );
+        for ( int i=0; i<length; i++ ) {
+            builder.append( (char) ('a' + (i % 26)) );
+        }
+        return builder.toString();
+    }
+}
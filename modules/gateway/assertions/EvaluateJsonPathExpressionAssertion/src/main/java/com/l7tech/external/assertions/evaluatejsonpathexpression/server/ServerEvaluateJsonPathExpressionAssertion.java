@@ -7,6 +7,7 @@ import com.l7tech.external.assertions.evaluatejsonpathexpression.Evaluator;
 import com.l7tech.external.assertions.evaluatejsonpathexpression.JsonPathEvaluator;
 import com.l7tech.external.assertions.evaluatejsonpathexpression.JsonPathExpressionResult;
 import com.l7tech.gateway.common.audit.AssertionMessages;
+import com.l7tech.json.InvalidJsonException;
 import com.l7tech.message.Message;
 import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
@@ -17,12 +18,10 @@ import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.assertion.AbstractServerAssertion;
 import com.l7tech.server.policy.variable.ExpandVariables;
 import com.l7tech.util.ExceptionUtils;
-import com.l7tech.util.IOUtils;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import static com.l7tech.external.assertions.evaluatejsonpathexpression.EvaluateJsonPathExpressionAssertion.*;
@@ -52,8 +51,7 @@ public class ServerEvaluateJsonPathExpressionAssertion extends AbstractServerAss
             final Message sourceMessage = context.getTargetMessage(assertion, false);
             final PartInfo firstPart = sourceMessage.getMimeKnob().getFirstPart();
             if(firstPart.getContentType().isJson()){
-                final Charset encoding = firstPart.getContentType().getEncoding();
-                final String sourceJsonString = new String(IOUtils.slurpStream(firstPart.getInputStream(false)), encoding);
+                final String sourceJsonString = getSourceJson(sourceMessage);
                 final Map<String, Object> lookup = context.getVariableMap(Syntax.getReferencedNames(assertion.getExpression()), getAudit());
                 final String expression = ExpandVariables.process(assertion.getExpression(), lookup, getAudit());
                 final boolean withCompression = serverConfig.getBooleanProperty(PARAM_JSON_EVALJSONPATH_WITHCOMPRESSION, false);
@@ -119,4 +117,19 @@ public class ServerEvaluateJsonPathExpressionAssertion extends AbstractServerAss
         }
         return AssertionStatus.NONE;
     }
+
+    /**
+     * Get the JSON text for the message, this is read once and shared with other users of the message.
+     */
+    private static String getSourceJson(final Message sourceMessage) throws IOException, NoSuchPartException {
+        try {
+            return sourceMessage.getJsonKnob().getJsonData().getJsonData();
+        } catch (InvalidJsonException e) {
+            throw new IOException(ExceptionUtils.getMessage(e), e);
+        } catch (IOException e) {
+            final NoSuchPartException noSuchPartException = ExceptionUtils.getCauseIfCausedBy(e, NoSuchPartException.class);
+            if (noSuchPartException != null) throw noSuchPartException;
+            throw e;
+        }
+    }
 }
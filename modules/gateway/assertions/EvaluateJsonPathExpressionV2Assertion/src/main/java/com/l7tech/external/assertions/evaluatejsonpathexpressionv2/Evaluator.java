@@ -1,5 +1,7 @@
 package com.l7tech.external.assertions.evaluatejsonpathexpressionv2;
 
+import com.jayway.jsonpath.JsonPath;
+
 /**
  * <p>An evaluator to evaluate an expression against a JSON string to query/select data from a JSON data source.</p>
  */
@@ -14,6 +16,14 @@ public interface Evaluator {
 
     JsonPathExpressionResult evaluate(final String source, final String expression) throws EvaluatorException;
 
+    /**
+     * Evaluate the given compiled expression against already parsed source.
+     * @param source the source JSON data as simple Java objects (see {@link com.l7tech.json.JSONData#getJsonObject()}), this is not modified.
+     * @param path the compiled expression to evaluate (see {@link JsonPathEvaluator#compile(String)}).
+     * @return {@link JsonPathExpressionResult} which contains the result of the expression.
+     */
+    JsonPathExpressionResult evaluate(final Object source, final JsonPath path) throws EvaluatorException;
+
     /**
      * An exception to signal an error has occurred while evaluating the expression.
      */
@@ -4,8 +4,10 @@ import com.fasterxml.jackson.core.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jayway.jsonpath.*;
 import com.jayway.jsonpath.spi.json.AbstractJsonProvider;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.external.assertions.evaluatejsonpathexpressionv2.Evaluator.EvaluatorException;
 import com.l7tech.util.CollectionUtils;
+import com.l7tech.util.ConfigFactory;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import net.minidev.json.JSONStyle;
@@ -35,32 +37,73 @@ public class JsonPathEvaluator {
              * The {@link Evaluator} based on JSONPath.  Please refer to <a href='http://code.google.com/p/json-path/'>http://code.google.com/p/json-path/</a> and
              * <a href='http://goessner.net/articles/JsonPath/'>http://goessner.net/articles/JsonPath/</a>.
              */
-            .put(EvaluateJsonPathExpressionV2Assertion.JSONPATH_EVALUATOR, (s, e) -> evaluate(s, e, false))
+            .put(EvaluateJsonPathExpressionV2Assertion.JSONPATH_EVALUATOR, evaluator(false))
             /*
              * JSON Path evaluator with compression. That means, it returns json results in MAX compressed json-style. For more information, refer to JSONStyle.
              * The {@link Evaluator} based on JSONPath.  Please refer to <a href='http://code.google.com/p/json-path/'>http://code.google.com/p/json-path/</a> and
              * <a href='http://goessner.net/articles/JsonPath/'>http://goessner.net/articles/JsonPath/</a>.
              */
-            .put(EvaluateJsonPathExpressionV2Assertion.JSONPATH_COMPRESSION_EVALUATOR, (s, e) -> evaluate(s, e, true))
+            .put(EvaluateJsonPathExpressionV2Assertion.JSONPATH_COMPRESSION_EVALUATOR, evaluator(true))
             .unmodifiableMap();
 
+    /**
+     * Compile the given expression.
+     *
+     * <p>Compiled expressions are cached, so expressions built at runtime
+     * (e.g. from context variables) are not compiled for every use.</p>
+     *
+     * @param expression the expression to compile.
+     * @return the compiled expression, which is thread safe.
+     * @throws EvaluatorException if the expression is not valid.
+     */
+    public static JsonPath compile(final String expression) throws EvaluatorException {
+        JsonPath path = COMPILED_PATHS.get(expression);
+        if (path == null) {
+            try {
+                path = JsonPath.compile(expression);
+            } catch (RuntimeException e) {
+                throw new EvaluatorException("Error compiling expression: " + e.getMessage(), e);
+            }
+            COMPILED_PATHS.put(expression, path);
+        }
+        return path;
+    }
+
     private static final Configuration CONFIG_JACKSON = Configuration.builder()
             .jsonProvider(new TrailingTokenRejectingJacksonProvider()).build();
 
     private static final Configuration CONFIG_RECURSIVE_DESCENT = Configuration.defaultConfiguration()
             .addOptions(Option.AS_PATH_LIST);
 
-    private static JsonPathExpressionResult evaluate(final String source, final String expression,
+    private static final SegmentedCache<String, JsonPath> COMPILED_PATHS = new SegmentedCache<>(
+            "jsonPathExpressions",
+            (long) ConfigFactory.getIntProperty(JsonPathEvaluator.class.getName() + ".compiledExpressionCacheSize", 1000));
+
+    private static Evaluator evaluator(final boolean jsonCompression) {
+        return new Evaluator() {
+            @Override
+            public JsonPathExpressionResult evaluate(final String source, final String expression) throws EvaluatorException {
+                final JsonPath path = compile(expression);
+                final Object json;
+                try {
+                    json = CONFIG_JACKSON.jsonProvider().parse(source);
+                } catch (InvalidJsonException e) {
+                    throw new EvaluatorException(e.getMessage(), e);
+                }
+                return JsonPathEvaluator.evaluate(json, path, jsonCompression);
+            }
+
+            @Override
+            public JsonPathExpressionResult evaluate(final Object source, final JsonPath path) throws EvaluatorException {
+                return JsonPathEvaluator.evaluate(source, path, jsonCompression);
+            }
+        };
+    }
+
+    private static JsonPathExpressionResult evaluate(final Object source, final JsonPath path,
                                                      final boolean jsonCompression)
             throws EvaluatorException {
 
-        final JsonPath path;
-        try {
-            path = JsonPath.compile(expression);
-        } catch (RuntimeException e) {
-            throw new EvaluatorException("Error compiling expression: " + e.getMessage(), e);
-        }
-
         // As per jsonpath 2.2.0, setting JSONValue.COMPRESSION to JSONStyle.MAX_COMPRESS before parsing
         // returns JSON results in Max compressed JSON style
 
@@ -76,7 +119,7 @@ public class JsonPathEvaluator {
                     // Defect: DE278819, the library returns empty array for expressions that contains recursive desent ($..), filter expression (?()) etc
                     // and if the key mentioned in expression is not present in json data, wrongly mimicking key existence
                     // if the result is empty array, the code below tries to fetch the path, if the path is not found, it throws PathNotFoundException
-                    JsonPath.using(CONFIG_RECURSIVE_DESCENT).parse(source).read(expression);
+                    path.read(source, CONFIG_RECURSIVE_DESCENT);
 
                 } else {
                     for (Object item : jsonResultList) {
@@ -1,5 +1,6 @@
 package com.l7tech.external.assertions.evaluatejsonpathexpressionv2.server;
 
+import com.jayway.jsonpath.JsonPath;
 import com.l7tech.common.mime.NoSuchPartException;
 import com.l7tech.common.mime.PartInfo;
 import com.l7tech.external.assertions.evaluatejsonpathexpressionv2.EvaluateJsonPathExpressionV2Assertion;
@@ -7,6 +8,8 @@ import com.l7tech.external.assertions.evaluatejsonpathexpressionv2.Evaluator;
 import com.l7tech.external.assertions.evaluatejsonpathexpressionv2.JsonPathEvaluator;
 import com.l7tech.external.assertions.evaluatejsonpathexpressionv2.JsonPathExpressionResult;
 import com.l7tech.gateway.common.audit.AssertionMessages;
+import com.l7tech.json.InvalidJsonException;
+import com.l7tech.json.JsonSchemaVersion;
 import com.l7tech.message.Message;
 import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
@@ -17,12 +20,11 @@ import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.assertion.AbstractServerAssertion;
 import com.l7tech.server.policy.variable.ExpandVariables;
 import com.l7tech.util.ExceptionUtils;
-import com.l7tech.util.IOUtils;
+import com.l7tech.util.Pair;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import static com.l7tech.external.assertions.evaluatejsonpathexpressionv2.EvaluateJsonPathExpressionV2Assertion.*;
@@ -39,6 +41,8 @@ public class ServerEvaluateJsonPathExpressionV2Assertion
     static final String BEAN_NAME_SERVERCONFIG = "serverConfig";
 
     private final ServerConfig serverConfig;
+    // the expression for this assertion and its compiled form, when the expression does not reference variables
+    private volatile Pair<String, JsonPath> compiledExpression;
 
     /**
      * Construct a new server assertion.
@@ -58,9 +62,6 @@ public class ServerEvaluateJsonPathExpressionV2Assertion
             final Message sourceMessage = context.getTargetMessage(assertion, false);
             final PartInfo firstPart = sourceMessage.getMimeKnob().getFirstPart();
             if(firstPart.getContentType().isJson()){
-                final Charset encoding = firstPart.getContentType().getEncoding();
-                final String sourceJsonString = new String(IOUtils.slurpStream(
-                        firstPart.getInputStream(false)), encoding);
                 final Map<String, Object> lookup = context.getVariableMap(
                         Syntax.getReferencedNames(assertion.getExpression()), getAudit());
 
@@ -76,7 +77,7 @@ public class ServerEvaluateJsonPathExpressionV2Assertion
                         logAndAudit(AssertionMessages.EVALUATE_JSON_PATH_INVALID_EXPRESSION, expression);
                         return AssertionStatus.FAILED;
                     } else {
-                        return evaluateExpression(context, jsonPathEvaluator, sourceJsonString, expression);
+                        return evaluateExpression(context, jsonPathEvaluator, sourceMessage, expression);
                     }
                 } else {
                     logAndAudit(AssertionMessages.EVALUATE_JSON_PATH_INVALID_EVALUATOR, evaluator);
@@ -99,10 +100,12 @@ public class ServerEvaluateJsonPathExpressionV2Assertion
   
     private AssertionStatus evaluateExpression(@NotNull final PolicyEnforcementContext context,
                                                @NotNull final Evaluator evaluator,
-                                               @NotNull final String sourceJsonString,
-                                               @NotNull final String expression) {
+                                               @NotNull final Message sourceMessage,
+                                               @NotNull final String expression)
+            throws IOException, NoSuchPartException {
         try {
-            final JsonPathExpressionResult result = evaluator.evaluate(sourceJsonString, expression);
+            final JsonPath path = compile(expression);
+            final JsonPathExpressionResult result = evaluator.evaluate(getSourceJson(sourceMessage), path);
             context.setVariable(assertion.getVariablePrefix() + "." + SUFFIX_FOUND, result.isFound());
             final int count = result.getCount();
             context.setVariable(assertion.getVariablePrefix() + "." + SUFFIX_COUNT, count);
@@ -121,4 +124,36 @@ public class ServerEvaluateJsonPathExpressionV2Assertion
 
         return AssertionStatus.NONE;
     }
+
+    /**
+     * Get the parsed JSON for the message, this is shared with other users of the message.
+     */
+    private static Object getSourceJson(final Message sourceMessage)
+            throws IOException, NoSuchPartException, Evaluator.EvaluatorException {
+        try {
+            return sourceMessage.getJsonKnob().getJsonData(JsonSchemaVersion.DRAFT_V4).getJsonObject();
+        } catch (InvalidJsonException e) {
+            throw new Evaluator.EvaluatorException(ExceptionUtils.getMessage(e), e);
+        } catch (IOException e) {
+            final NoSuchPartException noSuchPartException = ExceptionUtils.getCauseIfCausedBy(e, NoSuchPartException.class);
+            if (noSuchPartException != null) throw noSuchPartException;
+            throw e;
+        }
+    }
+
+    /**
+     * Compile the expression, expressions built from variables are cached by the evaluator.
+     */
+    private JsonPath compile(final String expression) throws Evaluator.EvaluatorException {
+        final Pair<String, JsonPath> compiled = compiledExpression;
+        if (compiled != null && compiled.left.equals(expression)) {
+            return compiled.right;
+        }
+
+        final JsonPath path = JsonPathEvaluator.compile(expression);
+        if (expression.equals(assertion.getExpression())) {
+            compiledExpression = new Pair<>(expression, path);
+        }
+        return path;
+    }
 }
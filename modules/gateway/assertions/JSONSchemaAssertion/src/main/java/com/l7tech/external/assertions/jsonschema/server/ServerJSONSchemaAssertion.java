@@ -2,6 +2,7 @@ package com.l7tech.external.assertions.jsonschema.server;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.l7tech.common.http.GenericHttpClientFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.common.mime.ContentTypeHeader;
 import com.l7tech.external.assertions.jsonschema.JSONSchemaAssertion;
 import com.l7tech.gateway.common.audit.AssertionMessages;
@@ -30,6 +31,7 @@ import com.l7tech.server.util.res.UrlFinder;
 import com.l7tech.util.*;
 import com.networknt.schema.JsonSchemaException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.context.ApplicationContext;
 
@@ -84,6 +86,12 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
     private static final ConcurrentMap<JsonSchemaVersion, HttpObjectCache<JSONSchema>> SCHEMA_OBJ_CACHE =
             new ConcurrentHashMap<>(JsonSchemaVersion.values().length);
 
+    /**
+     * Schemas for static resources by content, so schemas from context variables are not compiled for each request.
+     */
+    private static final SegmentedCache<String, JSONSchema> INLINE_SCHEMA_CACHE = buildInlineSchemaCache();
+
+    private static final String PROP_INLINE_SCHEMA_CACHE_SIZE = "com.l7tech.external.assertions.jsonschema.inlineSchemaCacheSize";
     private static final String NO_JSON_SCHEMA_FOUND = "No JSON Schema found.";
     static final String MESSAGE_NOT_A_STRING = "Context variable '%s' is not of type String";
 
@@ -118,9 +126,11 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
             return AssertionStatus.SERVER_ERROR;
         }
 
+        // a streaming schema parses the data during validation
+        final boolean streaming = jsonSchema != null && jsonSchema.isStreaming();
         final JSONData jsonData;
         try {
-            jsonData = tryFindJsonData(message, context, assertion.getJsonSchemaVersion());
+            jsonData = tryFindJsonData(message, context, assertion.getJsonSchemaVersion(), !streaming);
         } catch (AssertionStatusException e) {
             return AssertionStatus.SERVER_ERROR;
 
@@ -152,6 +162,10 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
             return AssertionStatus.NONE;
 
         } catch (InvalidJsonException | JsonSchemaException e) {
+            if (streaming && !isWellFormed(jsonData)) {
+                auditInvalidJson(context, e);
+                return AssertionStatus.FAILED;
+            }
             logAndAudit(AssertionMessages.JSON_SCHEMA_VALIDATION_IO_ERROR, ExceptionUtils.getMessage(e) +
                     ". Attempted to validate with " + assertion.getJsonSchemaVersion().getDisplayName());
             context.setVariable(JSON_SCHEMA_FAILURE_VARIABLE, ExceptionUtils.getMessage(e));
@@ -173,7 +187,7 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
     }
 
     private JSONData tryFindJsonData(final Message message, final PolicyEnforcementContext context,
-                                     final JsonSchemaVersion configuredVersion)
+                                     final JsonSchemaVersion configuredVersion, final boolean preParse)
             throws IOException, InvalidJsonException, AssertionStatusException {
         final String messageDesc = assertion.getTargetName();
 
@@ -194,15 +208,15 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
                 data = JSON_FACTORY.newJsonData(jsonDataString, configuredVersion);
             }
 
-            // pre-parse to ensure json is valid
-            data.getJsonNode();
+            if (preParse) {
+                // pre-parse to ensure json is valid
+                data.getJsonNode();
+            }
 
             return data;
 
         } catch (InvalidJsonException e) {
-            logAndAudit(AssertionMessages.JSON_INVALID_JSON, "Attempted to validate with " +
-                    assertion.getJsonSchemaVersion().getDisplayName() + ". " + messageDesc);
-            context.setVariable(JSON_SCHEMA_FAILURE_VARIABLE, ExceptionUtils.getMessage(e));
+            auditInvalidJson(context, e);
             throw e;
 
         } catch (Exception e) {
@@ -214,6 +228,21 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
         }
     }
 
+    private void auditInvalidJson(final PolicyEnforcementContext context, final Exception e) {
+        logAndAudit(AssertionMessages.JSON_INVALID_JSON, "Attempted to validate with " +
+                assertion.getJsonSchemaVersion().getDisplayName() + ". " + assertion.getTargetName());
+        context.setVariable(JSON_SCHEMA_FAILURE_VARIABLE, ExceptionUtils.getMessage(e));
+    }
+
+    private static boolean isWellFormed(final JSONData jsonData) {
+        try {
+            jsonData.getJsonNode();
+            return true;
+        } catch (InvalidJsonException e) {
+            return false;
+        }
+    }
+
     private JSONSchema getJsonSchema(final PolicyEnforcementContext context, final Message message)
             throws IOException, InvalidPolicyException, ResourceIOException, ResourceParseException {
 
@@ -422,45 +451,24 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
     }
 
     private ResourceObjectFactory<JSONSchema> getResourceObjectFactory() {
+        final JsonSchemaVersion configuredVersion = assertion.getJsonSchemaVersion();
         return new ResourceObjectFactory<JSONSchema>() {
             @Override
             public JSONSchema createResourceObject(final String resourceString) throws ParseException {
-                Pair<String, JSONData> schemaUriAndParse = null;
-                final String schemaUri;
-                try {
-                    schemaUriAndParse = findVersionString(resourceString);
-                } catch (InvalidJsonException e) {
-                    // We allow this to continue to support backwards compatibility for v2
-                    logger.log(Level.INFO, "Unable to determine schema version due to invalid JSON schema: " + ExceptionUtils.getMessage(e));
+                if (INLINE_SCHEMA_CACHE == null) {
+                    return createInlineJsonSchema(resourceString, configuredVersion);
                 }
 
-                schemaUri = (schemaUriAndParse == null) ? null : schemaUriAndParse.left;
-                final JsonSchemaVersion configuredVersion = assertion.getJsonSchemaVersion();
-
-                final ServerConfig serverConfig = ServerConfig.getInstance();
                 final boolean strictJsonSchemaVersionEnabled =
-                        serverConfig.getBooleanProperty(PARAM_JSON_SCHEMA_VERSION_STRICT, false);
-
-                if (strictJsonSchemaVersionEnabled && schemaUri != null && !configuredVersion.matchesSchemaUri(schemaUri)) {
-                    return new ExceptionThrowingJsonSchema(() -> new InvalidJsonException(
-                            String.format(MESSAGE_WRONG_VERSION_STRICT, configuredVersion, versionUriAsString(schemaUri))
-                    ));
-                }
-
-                try {
-                    return new DelegatingJsonSchema(JSON_FACTORY.newJsonSchema(resourceString, configuredVersion)) {
-                        @Override
-                        public void beforeValidate() throws InvalidJsonException {
-                            logVersionMismatchWarnings(schemaUri, configuredVersion);
-                        }
-                    };
-
-                } catch (InvalidJsonException | IOException | JsonSchemaException e) {
-                    final String message = "Unable to parse JSON schema: " + ExceptionUtils.getMessage(e);
-
-                    // Create an exception throwing Json Schema so that the error is logged during policy execution time
-                    return new ExceptionThrowingJsonSchema(() -> new InvalidJsonException(message));
+                        ServerConfig.getInstance().getBooleanProperty(PARAM_JSON_SCHEMA_VERSION_STRICT, false);
+                final String cacheKey = configuredVersion + ":" + strictJsonSchemaVersionEnabled + ":" +
+                        HexUtils.hexDump(HexUtils.getSha256Digest(resourceString.getBytes(Charsets.UTF8)));
+                JSONSchema jsonSchema = INLINE_SCHEMA_CACHE.get(cacheKey);
+                if (jsonSchema == null) {
+                    jsonSchema = createInlineJsonSchema(resourceString, configuredVersion);
+                    INLINE_SCHEMA_CACHE.put(cacheKey, jsonSchema);
                 }
+                return jsonSchema;
             }
 
             @Override
@@ -469,12 +477,34 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
         };
     }
 
+    private static SegmentedCache<String, JSONSchema> buildInlineSchemaCache() {
+        final int size = ConfigFactory.getIntProperty(PROP_INLINE_SCHEMA_CACHE_SIZE, 100);
+        return size <= 0 ? null : new SegmentedCache<String, JSONSchema>("inlineJsonSchemas", (long) size);
+    }
+
+    /**
+     * Create a schema for a static resource, errors are reported when the schema is used.
+     */
+    private static JSONSchema createInlineJsonSchema(final String resourceString,
+                                                     final JsonSchemaVersion configuredVersion) {
+        try {
+            // We allow invalid JSON when finding the version to support backwards compatibility for v2
+            return createJsonSchema(resourceString, configuredVersion, false);
+
+        } catch (InvalidJsonException | IOException | JsonSchemaException e) {
+            final String message = "Unable to parse JSON schema: " + ExceptionUtils.getMessage(e);
+
+            // Create an exception throwing Json Schema so that the error is logged during policy execution time
+            return new ExceptionThrowingJsonSchema(() -> new InvalidJsonException(message));
+        }
+    }
+
     private static JSONSchema createJsonSchema(final UserObjectSource responseSource,
                                                final JsonSchemaVersion configuredVersion)
             throws IOException {
         final String response = responseSource.getString(false);
         try {
-            return createJsonSchema(response, configuredVersion);
+            return createJsonSchema(response, configuredVersion, true);
 
         } catch (InvalidJsonException pe) {
             //Create a ParseException so that the ResourceGetter.getResource() exception handling
@@ -487,27 +517,36 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
         }
     }
 
-    private static JSONSchema createJsonSchema(final String jsonSchemaString, final JsonSchemaVersion configuredVersion)
+    /**
+     * Create a schema, the schema only references the schema version URI and the configured version so may be cached.
+     *
+     * @param jsonSchemaString The schema JSON
+     * @param configuredVersion The version configured for the assertion
+     * @param versionRequired True if it is an error if the schema cannot be parsed to find its version URI
+     * @return The schema
+     */
+    private static JSONSchema createJsonSchema(final String jsonSchemaString,
+                                               final JsonSchemaVersion configuredVersion,
+                                               final boolean versionRequired)
             throws InvalidJsonException, IOException {
         try {
-            final Pair<String, JSONData> schemaUriAndParse = findVersionString(jsonSchemaString);
-            final String schemaUri = schemaUriAndParse.left;
+            String schemaUri = null;
+            try {
+                schemaUri = findVersionString(jsonSchemaString).left;
+            } catch (InvalidJsonException e) {
+                if (versionRequired) throw e;
+                logger.log(Level.INFO, "Unable to determine schema version due to invalid JSON schema: " + ExceptionUtils.getMessage(e));
+            }
 
             final ServerConfig serverConfig = ServerConfig.getInstance();
             final boolean strictJsonSchemaVersionEnabled =
                     serverConfig.getBooleanProperty(PARAM_JSON_SCHEMA_VERSION_STRICT, false);
 
             if (strictJsonSchemaVersionEnabled && schemaUri != null && !configuredVersion.matchesSchemaUri(schemaUri)) {
-                return new ExceptionThrowingJsonSchema(() -> new InvalidJsonException(
-                        String.format(MESSAGE_WRONG_VERSION_STRICT, configuredVersion, versionUriAsString(schemaUri))
-                ));
+                final String message = String.format(MESSAGE_WRONG_VERSION_STRICT, configuredVersion, versionUriAsString(schemaUri));
+                return new ExceptionThrowingJsonSchema(() -> new InvalidJsonException(message));
             }
-            return new DelegatingJsonSchema(JSON_FACTORY.newJsonSchema(jsonSchemaString, configuredVersion)) {
-                @Override
-                public void beforeValidate() throws InvalidJsonException {
-                    logVersionMismatchWarnings(schemaUri, configuredVersion);
-                }
-            };
+            return new VersionCheckingJsonSchema(JSON_FACTORY.newJsonSchema(jsonSchemaString, configuredVersion), schemaUri, configuredVersion);
 
         } catch (InvalidJsonException e) {
             if (logger.isLoggable(Level.FINE)) {
@@ -570,19 +609,31 @@ public class ServerJSONSchemaAssertion extends AbstractServerAssertion<JSONSchem
         }
     }
 
-    private static abstract class DelegatingJsonSchema implements JSONSchema {
-        final JSONSchema jsonSchema;
-
-        DelegatingJsonSchema(JSONSchema jsonSchema) {
+    /**
+     * Schema that logs any mismatch of the schema and configured versions before validation.
+     */
+    private static class VersionCheckingJsonSchema implements JSONSchema {
+        private final JSONSchema jsonSchema;
+        private final String schemaUri;
+        private final JsonSchemaVersion configuredVersion;
+
+        VersionCheckingJsonSchema(final JSONSchema jsonSchema,
+                                  @Nullable final String schemaUri,
+                                  final JsonSchemaVersion configuredVersion) {
             this.jsonSchema = jsonSchema;
+            this.schemaUri = schemaUri;
+            this.configuredVersion = configuredVersion;
         }
 
         @Override
         public List<String> validate(JSONData jsonData) throws InvalidJsonException {
-            beforeValidate();
+            logVersionMismatchWarnings(schemaUri, configuredVersion);
             return jsonSchema.validate(jsonData);
         }
 
-        abstract void beforeValidate() throws InvalidJsonException;
+        @Override
+        public boolean isStreaming() {
+            return jsonSchema.isStreaming();
+        }
     }
 }
@@ -2039,6 +2039,29 @@ public class ServerJSONSchemaAssertionTest {
         assertEquals(AssertionStatus.FAILED, assertionStatus);
     }
 
+    @Test
+    public void testTrailingTokensInDataV4() throws Exception {
+        final JSONSchemaAssertion assertion = new JSONSchemaAssertionBuilder()
+                .withVersion(DRAFT_V4).withTarget(REQUEST)
+                .withStaticResource("{\"type\": \"object\"}")
+                .build();
+
+        final ApplicationContext context = new AppContextBuilder().build();
+
+        final ServerJSONSchemaAssertion serverAssertion = new ServerJSONSchemaAssertion(assertion, context);
+
+        final PolicyEnforcementContext pec = new PECBuilder()
+                .withRequest(new RequestBuilder(context, APPLICATION_JSON)
+                        .withBody("{\"a\": 1}}")
+                        .build())
+                .build();
+
+        // data is parsed during validation, failure must be reported as for parsing before validation
+        final AssertionStatus assertionStatus = serverAssertion.checkRequest(pec);
+        assertEquals(AssertionStatus.FAILED, assertionStatus);
+        assertTrue(((String) pec.getVariable(VARIABLE_NAME_JSONSCHEMA_FAILURE)).startsWith("Expected EOF but found trailing tokens."));
+    }
+
     @Test
     public void testLinkHeaderRegex() throws Exception {
         Pattern p = Pattern.compile(ServerJSONSchemaAssertion.LINK_HEADER_PATTERN);
@@ -2,6 +2,7 @@ package com.l7tech.external.assertions.jsonjolt.server;
 
 import com.bazaarvoice.jolt.Chainr;
 import com.l7tech.common.io.NonCloseableOutputStream;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.common.mime.NoSuchPartException;
 import com.l7tech.external.assertions.jsonjolt.JsonJoltAssertion;
 import com.l7tech.gateway.common.audit.AssertionMessages;
@@ -12,6 +13,7 @@ import com.l7tech.server.message.AuthenticationContext;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.assertion.AbstractMessageTargetableServerAssertion;
 import com.l7tech.server.policy.variable.ExpandVariables;
+import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.PoolByteArrayOutputStream;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.Version;
@@ -23,17 +25,31 @@ import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Server side implementation of the JsonJoltAssertion.
  *
+ * <p>Compiled specs are thread safe and are reused. A spec that does not use
+ * context variables is compiled once, specs built from context variables are
+ * cached by content.</p>
+ *
  * @see com.l7tech.external.assertions.jsonjolt.JsonJoltAssertion
  */
 public class ServerJsonJoltAssertion extends AbstractMessageTargetableServerAssertion<JsonJoltAssertion> {
+    private static final Logger logger = Logger.getLogger( ServerJsonJoltAssertion.class.getName() );
+
+    private static final SegmentedCache<String, Chainr> chainrCache = new SegmentedCache<String, Chainr>(
+            "joltSpecs",
+            (long) ConfigFactory.getIntProperty( ServerJsonJoltAssertion.class.getName() + ".specCacheSize", 500 ) );
+
     private final String[] variablesUsed;
 
     private final ObjectMapper objectMapper;
 
+    private final Chainr staticChainr;
+
     public ServerJsonJoltAssertion( final JsonJoltAssertion assertion ) throws PolicyAssertionException {
         super( assertion );
 
@@ -45,23 +61,33 @@ public class ServerJsonJoltAssertion extends AbstractMessageTargetableServerAsse
                 .addAbstractTypeMapping( Map.class, LinkedHashMap.class );
         objectMapper.registerModule( stockModule );
         objectMapper.configure( JsonParser.Feature.ALLOW_COMMENTS, true );
+
+        this.staticChainr = variablesUsed.length == 0 ? compileStaticSpec( assertion.getSchemaExpression() ) : null;
     }
 
     @Override
     protected AssertionStatus doCheckRequest( PolicyEnforcementContext context, Message message, String messageDescription, AuthenticationContext authContext ) throws IOException, PolicyAssertionException {
 
         try {
-            Map<String, Object> variableMap = context.getVariableMap( variablesUsed, getAudit() );
-            String specString = ExpandVariables.process( assertion.getSchemaExpression(), variableMap, getAudit() );
-            Object spec = objectMapper.readValue( specString, new TypeReference<List<Object>>() {} );
-            Chainr chainr = Chainr.fromSpec( spec );
+            Chainr chainr = staticChainr;
+            if ( chainr == null ) {
+                Map<String, Object> variableMap = context.getVariableMap( variablesUsed, getAudit() );
+                String specString = ExpandVariables.process( assertion.getSchemaExpression(), variableMap, getAudit() );
+                chainr = chainrCache.get( specString );
+                if ( chainr == null ) {
+                    chainr = compile( specString );
+                    chainrCache.put( specString, chainr );
+                }
+            }
 
             Object input = objectMapper.readValue( message.getMimeKnob().getFirstPart().getInputStream( false ), Object.class );
             Object output = chainr.transform( input );
 
             try ( PoolByteArrayOutputStream outStream = new PoolByteArrayOutputStream() ) {
                 objectMapper.writeValue( new NonCloseableOutputStream( outStream ), output );
-                message.getMimeKnob().getFirstPart().setBodyBytes( outStream.toByteArray() );
+                // hand the buffer to the stash rather than copying it
+                final int length = outStream.size();
+                message.getMimeKnob().getFirstPart().setBodyBytes( outStream.detachPooledByteArray(), 0, length );
             }
 
             return AssertionStatus.NONE;
@@ -70,5 +96,25 @@ public class ServerJsonJoltAssertion extends AbstractMessageTargetableServerAsse
             logAndAudit( AssertionMessages.NO_SUCH_PART, messageDescription, e.getWhatWasMissing() );
             return AssertionStatus.SERVER_ERROR;
         }
-   }
+    }
+
+    private Chainr compile( final String specString ) throws IOException {
+        Object spec = objectMapper.readValue( specString, new TypeReference<List<Object>>() {} );
+        return Chainr.fromSpec( spec );
+    }
+
+    /**
+     * Compile a spec that does not use variables, an invalid spec is reported when the assertion is evaluated.
+     */
+    private Chainr compileStaticSpec( final String specString ) {
+        Chainr chainr = null;
+        if ( specString != null ) {
+            try {
+                chainr = compile( specString );
+            } catch ( IOException | RuntimeException e ) {
+                logger.log( Level.FINE, "Unable to compile Jolt spec, will retry on use", e );
+            }
+        }
+        return chainr;
+    }
 }
@@ -67,6 +67,30 @@ public class ServerJsonJoltAssertionTest {
                 transformOutput );
     }
 
+    @Test
+    public void testVariableSpecTransformation() throws Exception {
+        JsonJoltAssertion ass = new JsonJoltAssertion();
+        ass.setTarget( TargetMessageType.REQUEST );
+        ass.setSchemaExpression( "${spec}" );
+        ServerJsonJoltAssertion sass = new ServerJsonJoltAssertion( ass );
+
+        for ( int i = 0; i < 2; i++ ) {
+            PolicyEnforcementContext pec = PolicyEnforcementContextFactory.createPolicyEnforcementContext( new Message(), new Message() );
+            pec.setVariable( "spec", new String( IOUtils.slurpStream(
+                    clazz.getResourceAsStream( "/com/l7tech/external/assertions/jsonjolt/sample_spec.json" ) ), Charsets.UTF8 ) );
+            pec.getRequest().initialize( new ByteArrayStashManager(),
+                    ContentTypeHeader.APPLICATION_JSON,
+                    clazz.getResourceAsStream(  "/com/l7tech/external/assertions/jsonjolt/sample_input.json" ) );
+
+            AssertionStatus result = sass.checkRequest( pec );
+            assertEquals( AssertionStatus.NONE, result );
+
+            String transformOutput = new String( IOUtils.slurpStream( pec.getRequest().getMimeKnob().getEntireMessageBodyAsInputStream( false ) ), Charsets.UTF8 );
+            assertEquals( "{\"Rating\":3,\"SecondaryRatings\":{\"quality\":{\"Id\":\"quality\",\"Value\":3,\"Range\":5}},\"Range\":5}",
+                    transformOutput );
+        }
+    }
+
     private String jsonToString( Object jsonObj ) throws IOException {
         return objectMapper().writeValueAsString( jsonObj );
     }
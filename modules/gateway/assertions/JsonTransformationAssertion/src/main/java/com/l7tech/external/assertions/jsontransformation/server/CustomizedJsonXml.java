@@ -299,8 +299,20 @@ public class CustomizedJsonXml {
      * @throws JSONException
      */
     public JSONObject toJSONObject(String string) throws JSONException {
+        return toJSONObject(new XMLTokener(string));
+    }
+
+
+    /**
+     * Convert a well-formed (but not necessarily valid) XML text into a
+     * JSONObject. This is the same as {@link #toJSONObject(String)} but
+     * reads the XML from the given tokener.
+     * @param x The XMLTokener for the source text.
+     * @return A JSONObject containing the structured data from the XML text.
+     * @throws JSONException
+     */
+    public JSONObject toJSONObject(XMLTokener x) throws JSONException {
         JSONObject jo = new JSONObject();
-        XMLTokener x = new XMLTokener(string);
         while (x.more() && x.skipPast("<")) {
             parse(x, jo, null);
         }
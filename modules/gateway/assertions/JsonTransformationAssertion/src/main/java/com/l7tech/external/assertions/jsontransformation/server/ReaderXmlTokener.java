@@ -0,0 +1,105 @@
+package com.l7tech.external.assertions.jsontransformation.server;
+
+import org.json.JSONException;
+import org.json.XMLTokener;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * XMLTokener that reads the XML text from a Reader.
+ *
+ * <p>The org.json XMLTokener only accepts a String, this tokener overrides
+ * the character access methods so the same parsing can be performed on a
+ * stream. Behaviour (end of input, positions for errors) is the same as for
+ * a String source.</p>
+ */
+class ReaderXmlTokener extends XMLTokener {
+
+    //- PACKAGE
+
+    ReaderXmlTokener( final Reader reader ) {
+        super( "" );
+        this.reader = reader;
+    }
+
+    //- PUBLIC
+
+    @Override
+    public char next() throws JSONException {
+        int c;
+        if ( usePrevious ) {
+            usePrevious = false;
+            c = previous;
+        } else {
+            c = read();
+            if ( c <= 0 ) { // NUL is treated as the end of the input
+                eof = true;
+                c = 0;
+            }
+        }
+
+        index++;
+        if ( previous == '\r' ) {
+            line++;
+            character = c == '\n' ? 0 : 1;
+        } else if ( c == '\n' ) {
+            line++;
+            character = 0;
+        } else {
+            character++;
+        }
+        previous = (char) c;
+        return previous;
+    }
+
+    @Override
+    public void back() throws JSONException {
+        if ( usePrevious || index <= 0 ) {
+            throw new JSONException( "Stepping back two steps is not supported" );
+        }
+        index--;
+        character--;
+        usePrevious = true;
+        eof = false;
+    }
+
+    @Override
+    public boolean end() {
+        return eof && !usePrevious;
+    }
+
+    @Override
+    public String toString() {
+        return " at " + index + " [character " + character + " line " + line + "]";
+    }
+
+    //- PRIVATE
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean usePrevious;
+    private char previous;
+    private long index;
+    private long character = 1;
+    private long line = 1;
+
+    private int read() throws JSONException {
+        if ( position == limit ) {
+            try {
+                limit = reader.read( buffer, 0, buffer.length );
+            } catch ( IOException e ) {
+                throw new JSONException( e );
+            }
+            position = 0;
+            if ( limit <= 0 ) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
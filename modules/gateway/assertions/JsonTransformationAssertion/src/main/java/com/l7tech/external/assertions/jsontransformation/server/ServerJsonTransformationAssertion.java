@@ -1,7 +1,6 @@
 package com.l7tech.external.assertions.jsontransformation.server;
 
 
-import com.l7tech.common.io.XmlUtil;
 import com.l7tech.common.mime.ContentTypeHeader;
 import com.l7tech.common.mime.NoSuchPartException;
 import com.l7tech.common.mime.PartInfo;
@@ -16,14 +15,14 @@ import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.assertion.AbstractServerAssertion;
 import com.l7tech.server.policy.variable.ExpandVariables;
 import com.l7tech.util.ExceptionUtils;
-import com.l7tech.util.IOUtils;
+import com.l7tech.util.PoolByteArrayOutputStream;
 import org.json.*;
 import org.springframework.context.ApplicationContext;
-import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.util.Map;
 
@@ -54,15 +53,12 @@ public class ServerJsonTransformationAssertion extends AbstractServerAssertion<J
             return AssertionStatus.FAILED;
         }
 
-        String targetValue;
+        final PoolByteArrayOutputStream output = new PoolByteArrayOutputStream();
         try {
-            if (assertion.getTransformation().equals(JsonTransformationAssertion.Transformation.XML_to_JSON)) {
-                String sourceString = getFirstPartString(sourceMessage);
-                targetValue = doTransformation(sourceString, assertion.getTransformation(),
-                        assertion.getConvention(), assertion.getRootTagString(), assertion.isPrettyPrint(), assertion.isArrayForm(), assertion.isUseNumbersWhenPossible());
-            } else {
+            String rootTag = assertion.getRootTagString();
+            if (assertion.getTransformation().equals(JsonTransformationAssertion.Transformation.JSON_to_XML)) {
                 Map<String, Object> vars = context.getVariableMap(assertion.getVariablesUsed(), getAudit());
-                String rootTag = ExpandVariables.process(assertion.getRootTagString(), vars, getAudit(), true);
+                rootTag = ExpandVariables.process(assertion.getRootTagString(), vars, getAudit(), true);
                 if(assertion.getConvention().equals(JsonTransformationAssertion.TransformationConvention.STANDARD)){
                     if(rootTag == null || rootTag.trim().isEmpty()){
                         logAndAudit( AssertionMessages.USERDETAIL_WARNING, "Root Tag is required.");
@@ -73,14 +69,13 @@ public class ServerJsonTransformationAssertion extends AbstractServerAssertion<J
                         return AssertionStatus.FAILED;
                     }
                 }
-                String source = getFirstPartString(sourceMessage);
-                targetValue = doTransformation(source, assertion.getTransformation(), assertion.getConvention(),
-                        rootTag, assertion.isPrettyPrint(), assertion.isArrayForm(), assertion.isUseNumbersWhenPossible());
-
-                Document document = XmlUtil.stringToDocument(targetValue);
-                targetValue = assertion.isPrettyPrint() ? XmlUtil.nodeToFormattedString(document) : XmlUtil.nodeToString(document);
             }
-            setOutput(targetValue, context, assertion.getTransformation().equals(JsonTransformationAssertion.Transformation.XML_to_JSON));
+            final StreamingJsonTransformer transformer = new StreamingJsonTransformer(assertion.getTransformation(),
+                    assertion.getConvention(), rootTag, assertion.isPrettyPrint(), assertion.isArrayForm(), assertion.isUseNumbersWhenPossible());
+            try (final Reader source = getFirstPartReader(sourceMessage)) {
+                transformer.transform(source, output);
+            }
+            setOutput(output, context, assertion.getTransformation().equals(JsonTransformationAssertion.Transformation.XML_to_JSON));
         } catch (JSONException ex) {
             logAndAudit( AssertionMessages.JSON_TRANSFORMATION_FAILED, new String[]{}, ExceptionUtils.getDebugException(ex) );
             return AssertionStatus.FAILED;
@@ -96,19 +91,21 @@ public class ServerJsonTransformationAssertion extends AbstractServerAssertion<J
         } catch (SAXException e) {
             logAndAudit(AssertionMessages.EXCEPTION_WARNING_WITH_MORE_INFO, new String[]{"Converted XML is invalid.", e.getMessage()}, ExceptionUtils.getDebugException(e));
             return AssertionStatus.FAILED;
+        } finally {
+            output.close();
         }
         return AssertionStatus.NONE;
     }
 
-    private String getFirstPartString(Message sourceMessage) throws NoSuchPartException, IOException {
+    private Reader getFirstPartReader(Message sourceMessage) throws NoSuchPartException, IOException {
         final PartInfo firstPart = sourceMessage.getMimeKnob().getFirstPart();
         final Charset encoding = firstPart.getContentType().getEncoding();
-        return new String(IOUtils.slurpStream(firstPart.getInputStream(false)), encoding);
+        return new InputStreamReader(firstPart.getInputStream(false), encoding);
     }
 
-    private void setOutput(String targetValue, PolicyEnforcementContext context, boolean isJson) throws IOException, NoSuchVariableException {
+    private void setOutput(PoolByteArrayOutputStream output, PolicyEnforcementContext context, boolean isJson) throws IOException, NoSuchVariableException {
         Message target = context.getOrCreateTargetMessage(assertion.getDestinationMessageTarget(),false);
-        target.initialize(stashManagerFactory.createStashManager(), isJson ? ContentTypeHeader.APPLICATION_JSON : ContentTypeHeader.XML_DEFAULT, new ByteArrayInputStream(targetValue.getBytes()));
+        target.initialize(stashManagerFactory.createStashManager(), isJson ? ContentTypeHeader.APPLICATION_JSON : ContentTypeHeader.XML_DEFAULT, output.toInputStream());
     }
 
     public static String doTransformation(String sourceString, JsonTransformationAssertion.Transformation transformation,
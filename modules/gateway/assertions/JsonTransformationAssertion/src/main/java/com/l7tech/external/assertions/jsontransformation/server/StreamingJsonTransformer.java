@@ -0,0 +1,351 @@
+package com.l7tech.external.assertions.jsontransformation.server;
+
+import com.l7tech.common.io.XmlUtil;
+import com.l7tech.external.assertions.jsontransformation.JsonTransformationAssertion;
+import com.l7tech.util.Charsets;
+import com.l7tech.util.ExceptionUtils;
+import org.json.*;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Iterator;
+
+/**
+ * Converts between XML and JSON reading the source from a Reader and writing
+ * the UTF-8 result to an OutputStream.
+ *
+ * <p>The conversion and output are the same as for
+ * {@link ServerJsonTransformationAssertion#doTransformation} followed by
+ * parsing and serialization of any XML result, but the source and result
+ * are not held as Strings.</p>
+ *
+ * <p>Members of a JSON object are written in the (hash) order of the
+ * org.json object, so the members of each object are still collected before
+ * it is written.</p>
+ *
+ * <p>XML converted from JSON is written to a character buffer that is parsed
+ * directly. The parsed document is still built, since the result is
+ * serialized from it.</p>
+ */
+class StreamingJsonTransformer {
+
+    //- PACKAGE
+
+    StreamingJsonTransformer( final JsonTransformationAssertion.Transformation transformation,
+                              final JsonTransformationAssertion.TransformationConvention convention,
+                              final String rootTag,
+                              final boolean prettyPrint,
+                              final boolean asArray,
+                              final boolean useNumbers ) {
+        this.transformation = transformation;
+        this.convention = convention;
+        this.rootTag = rootTag;
+        this.prettyPrint = prettyPrint;
+        this.asArray = asArray;
+        this.useNumbers = useNumbers;
+    }
+
+    /**
+     * Transform the source, writing the result to the output.
+     *
+     * <p>Nothing is written when the source is empty and XML is being
+     * converted to JSON.</p>
+     *
+     * @param source The source text
+     * @param output The stream for the UTF-8 result
+     * @throws JSONException If the source is not valid
+     * @throws SAXException If the converted XML is not valid
+     * @throws IOException If an error occurs reading the source or writing the result
+     */
+    void transform( final Reader source, final OutputStream output ) throws JSONException, SAXException, IOException {
+        final BufferedReader reader = new BufferedReader( source );
+        final boolean empty = !skipWhitespace( reader );
+        try {
+            if ( transformation.equals( JsonTransformationAssertion.Transformation.XML_to_JSON ) ) {
+                if ( !empty ) {
+                    toJson( reader, output );
+                }
+            } else {
+                toXml( empty ? null : reader, output );
+            }
+        } catch ( JSONException e ) {
+            final IOException ioe = ExceptionUtils.getCauseIfCausedBy( e, IOException.class );
+            if ( ioe != null ) throw ioe;
+            throw e;
+        }
+    }
+
+    //- PRIVATE
+
+    private static final int JSON_INDENT = 4;
+
+    private final JsonTransformationAssertion.Transformation transformation;
+    private final JsonTransformationAssertion.TransformationConvention convention;
+    private final String rootTag;
+    private final boolean prettyPrint;
+    private final boolean asArray;
+    private final boolean useNumbers;
+
+    /**
+     * Skip leading whitespace as trimmed by String#trim.
+     *
+     * @return true if there is any remaining text
+     */
+    private static boolean skipWhitespace( final BufferedReader reader ) throws IOException {
+        int c;
+        do {
+            reader.mark( 1 );
+            c = reader.read();
+        } while ( c >= 0 && c <= ' ' );
+
+        if ( c < 0 ) return false;
+        reader.reset();
+        return true;
+    }
+
+    private void toJson( final Reader reader, final OutputStream output ) throws JSONException, IOException {
+        final XMLTokener tokener = new ReaderXmlTokener( reader );
+        final Object json;
+        if ( convention.equals( JsonTransformationAssertion.TransformationConvention.STANDARD ) ) {
+            final CustomizedJsonXml jsonXml = new CustomizedJsonXml();
+            jsonXml.setUseNumbersWhenPossible( useNumbers );
+            json = jsonXml.toJSONObject( tokener );
+        } else if ( convention.equals( JsonTransformationAssertion.TransformationConvention.JSONML ) ) {
+            json = asArray ? JSONML.toJSONArray( tokener ) : JSONML.toJSONObject( tokener );
+        } else {
+            return;
+        }
+
+        final Writer writer = new BufferedWriter( new OutputStreamWriter( output, Charsets.UTF8 ) );
+        writeValue( writer, json, prettyPrint ? JSON_INDENT : 0, 0 );
+        writer.flush();
+    }
+
+    private void toXml( final BufferedReader reader, final OutputStream output ) throws JSONException, SAXException, IOException {
+        final XmlBuffer xml = new XmlBuffer();
+        if ( reader != null ) {
+            reader.mark( 1 );
+            final int first = reader.read();
+            reader.reset();
+
+            final Object json;
+            if ( '{' == first ) {
+                json = new JSONObject( new JSONTokener( reader ) );
+            } else if ( '[' == first ) {
+                json = new JSONArray( new JSONTokener( reader ) );
+            } else {
+                throw new JSONException( "Source is not a valid JSON string." );
+            }
+
+            if ( convention.equals( JsonTransformationAssertion.TransformationConvention.STANDARD ) ) {
+                writeXml( xml, json, rootTag.trim().isEmpty() ? null : rootTag );
+            } else if ( json instanceof JSONObject ) {
+                xml.write( JSONML.toString( (JSONObject) json ) );
+            } else {
+                xml.write( JSONML.toString( (JSONArray) json ) );
+            }
+        }
+
+        // The DOM is still required, the result is serialized from the parsed document as before
+        final Document document = XmlUtil.parse( xml.toReader(), false );
+        if ( prettyPrint ) {
+            XmlUtil.nodeToFormattedOutputStream( document, output );
+        } else {
+            XmlUtil.nodeToOutputStream( document, output );
+        }
+    }
+
+    /**
+     * Write a value as org.json does for JSONObject#toString(int).
+     */
+    private static void writeValue( final Writer writer,
+                                    final Object value,
+                                    final int indentFactor,
+                                    final int indent ) throws JSONException, IOException {
+        if ( value == null || value.equals( null ) ) {
+            writer.write( "null" );
+        } else if ( value instanceof JSONObject ) {
+            writeObject( writer, (JSONObject) value, indentFactor, indent );
+        } else if ( value instanceof JSONArray ) {
+            writeArray( writer, (JSONArray) value, indentFactor, indent );
+        } else if ( value instanceof Number ) {
+            writer.write( JSONObject.numberToString( (Number) value ) );
+        } else if ( value instanceof Boolean ) {
+            writer.write( value.toString() );
+        } else {
+            JSONObject.quote( value.toString(), writer );
+        }
+    }
+
+    private static void writeObject( final Writer writer,
+                                     final JSONObject object,
+                                     final int indentFactor,
+                                     final int indent ) throws JSONException, IOException {
+        final int length = object.length();
+        final Iterator keys = object.keys();
+        writer.write( '{' );
+        if ( length == 1 ) {
+            final String key = keys.next().toString();
+            writeMember( writer, key, object.opt( key ), indentFactor, indent );
+        } else if ( length != 0 ) {
+            final int newIndent = indent + indentFactor;
+            boolean separator = false;
+            while ( keys.hasNext() ) {
+                final String key = keys.next().toString();
+                if ( separator ) writer.write( ',' );
+                newLine( writer, indentFactor, newIndent );
+                writeMember( writer, key, object.opt( key ), indentFactor, newIndent );
+                separator = true;
+            }
+            newLine( writer, indentFactor, indent );
+        }
+        writer.write( '}' );
+    }
+
+    private static void writeMember( final Writer writer,
+                                     final String key,
+                                     final Object value,
+                                     final int indentFactor,
+                                     final int indent ) throws JSONException, IOException {
+        JSONObject.quote( key, writer );
+        writer.write( ':' );
+        if ( indentFactor > 0 ) writer.write( ' ' );
+        writeValue( writer, value, indentFactor, indent );
+    }
+
+    private static void writeArray( final Writer writer,
+                                    final JSONArray array,
+                                    final int indentFactor,
+                                    final int indent ) throws JSONException, IOException {
+        final int length = array.length();
+        writer.write( '[' );
+        if ( length == 1 ) {
+            writeValue( writer, array.opt( 0 ), indentFactor, indent );
+        } else if ( length != 0 ) {
+            final int newIndent = indent + indentFactor;
+            for ( int i = 0; i < length; i++ ) {
+                if ( i > 0 ) writer.write( ',' );
+                newLine( writer, indentFactor, newIndent );
+                writeValue( writer, array.opt( i ), indentFactor, newIndent );
+            }
+            newLine( writer, indentFactor, indent );
+        }
+        writer.write( ']' );
+    }
+
+    /**
+     * Write a value as XML as org.json does for XML#toString(Object, String).
+     */
+    private static void writeXml( final Writer writer, Object value, final String tagName ) throws JSONException, IOException {
+        if ( value instanceof JSONObject ) {
+            final JSONObject object = (JSONObject) value;
+            if ( tagName != null ) writeTag( writer, tagName, "<", ">" );
+            final Iterator keys = object.keys();
+            while ( keys.hasNext() ) {
+                final String key = keys.next().toString();
+                Object member = object.opt( key );
+                if ( member == null ) member = "";
+                if ( "content".equals( key ) ) {
+                    if ( member instanceof JSONArray ) {
+                        final JSONArray array = (JSONArray) member;
+                        final int length = array.length();
+                        for ( int i = 0; i < length; i++ ) {
+                            if ( i > 0 ) writer.write( '\n' );
+                            writer.write( XML.escape( array.get( i ).toString() ) );
+                        }
+                    } else {
+                        writer.write( XML.escape( member.toString() ) );
+                    }
+                } else if ( member instanceof JSONArray ) {
+                    final JSONArray array = (JSONArray) member;
+                    final int length = array.length();
+                    for ( int i = 0; i < length; i++ ) {
+                        final Object item = array.get( i );
+                        if ( item instanceof JSONArray ) {
+                            writeTag( writer, key, "<", ">" );
+                            writeXml( writer, item, null );
+                            writeTag( writer, key, "</", ">" );
+                        } else {
+                            writeXml( writer, item, key );
+                        }
+                    }
+                } else if ( "".equals( member ) ) {
+                    writeTag( writer, key, "<", "/>" );
+                } else {
+                    writeXml( writer, member, key );
+                }
+            }
+            if ( tagName != null ) writeTag( writer, tagName, "</", ">" );
+            return;
+        }
+
+        if ( value != null && value.getClass().isArray() ) {
+            value = new JSONArray( value );
+        }
+        if ( value instanceof JSONArray ) {
+            final JSONArray array = (JSONArray) value;
+            final int length = array.length();
+            final String arrayTagName = tagName == null ? "array" : tagName;
+            if ( length == 0 ) {
+                writeTag( writer, arrayTagName, "<", "/>" );
+            } else {
+                writeTag( writer, arrayTagName, "<", ">" );
+                for ( int i = 0; i < length; i++ ) {
+                    writeXml( writer, array.opt( i ), "value" );
+                }
+                writeTag( writer, arrayTagName, "</", ">" );
+            }
+            return;
+        }
+
+        final String text = value == null ? "null" : XML.escape( value.toString() );
+        if ( tagName == null ) {
+            writer.write( '"' );
+            writer.write( text );
+            writer.write( '"' );
+        } else if ( text.isEmpty() ) {
+            writeTag( writer, tagName, "<", "/>" );
+        } else {
+            writeTag( writer, tagName, "<", ">" );
+            writer.write( text );
+            writeTag( writer, tagName, "</", ">" );
+        }
+    }
+
+    private static void writeTag( final Writer writer, final String tagName, final String start, final String end ) throws IOException {
+        writer.write( start );
+        writer.write( tagName );
+        writer.write( end );
+    }
+
+    private static void newLine( final Writer writer, final int indentFactor, final int indent ) throws IOException {
+        if ( indentFactor > 0 ) {
+            writer.write( '\n' );
+            for ( int i = 0; i < indent; i++ ) {
+                writer.write( ' ' );
+            }
+        }
+    }
+
+    /**
+     * Character buffer for converted XML that is parsed without a copy.
+     */
+    private static final class XmlBuffer extends CharArrayWriter {
+        private XmlBuffer() {
+            super( 8192 );
+        }
+
+        private Reader toReader() {
+            return new CharArrayReader( buf, 0, count );
+        }
+    }
+}
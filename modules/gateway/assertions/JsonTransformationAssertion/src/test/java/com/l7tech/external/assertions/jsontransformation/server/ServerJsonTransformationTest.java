@@ -1,5 +1,6 @@
 package com.l7tech.external.assertions.jsontransformation.server;
 
+import com.l7tech.common.io.XmlUtil;
 import com.l7tech.common.mime.ByteArrayStashManager;
 import com.l7tech.common.mime.ContentTypeHeader;
 import com.l7tech.common.mime.StashManager;
@@ -25,6 +26,8 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
 import java.nio.ByteBuffer;
 import java.util.*;
 
@@ -545,6 +548,65 @@ public class ServerJsonTransformationTest {
         assertEquals( "\"4.571666488570002E-56\"", valueAsJson( "4.571666488570002E-56", false ) );
     }
 
+    @Test
+    public void testStreamingSameAsString() throws Exception {
+        final StringBuilder largeXml = new StringBuilder( "<items>\r\n" );
+        final StringBuilder largeJson = new StringBuilder( "{\"items\":[" );
+        for ( int i = 0; i < 2000; i++ ) {
+            largeXml.append( "  <item id=\"" ).append( i ).append( "\"><name>n&amp;" ).append( i ).append( "</name><value>" ).append( i * 0.5 ).append( "</value></item>\r\n" );
+            largeJson.append( i == 0 ? "" : "," ).append( "{\"id\":" ).append( i ).append( ",\"name\":\"n\\u0026" ).append( i ).append( "\"}" );
+        }
+        largeXml.append( "</items>" );
+        largeJson.append( "]}" );
+
+        final String[] xmlSources = { xmlStr, SOAP_XML, TEST_XHTML_STRING, largeXml.toString(), "", " \n ", "text", "  <a>1</a>  ",
+                "<?xml version=\"1.0\"?><!DOCTYPE r><r><!-- c --><a x='1'>t&amp;&lt;&#65;<![CDATA[<x>]]></a><a/><b>-0.0</b><?pi x?>\u00e9</r>",
+                "<a><b></a>", "<a>&unknown;</a>", "<a\u0000>x</a>" };
+        final String[] jsonSources = { jsonStr, EXPECTED_UGLY_JSON, JSONML, EXPECTED_XHTML_JSONML, largeJson.toString(), "", "  ", "x",
+                "[1,2.50,true,null,{\"a\":\"\\u00e9<&>\"}]", "{\"tagName\":\"a\",\"childNodes\":[\"t\"]} trailing", "{\"a\":", "[\"a\"" };
+
+        for ( final boolean prettyPrint : new boolean[]{ true, false } ) {
+            for ( final boolean asArray : new boolean[]{ true, false } ) {
+                for ( final JsonTransformationAssertion.TransformationConvention convention : JsonTransformationAssertion.TransformationConvention.values() ) {
+                    for ( final String source : xmlSources ) {
+                        assertStreamingSameAsString( source, XML_to_JSON, convention, prettyPrint, asArray );
+                    }
+                    for ( final String source : jsonSources ) {
+                        assertStreamingSameAsString( source, JsonTransformationAssertion.Transformation.JSON_to_XML, convention, prettyPrint, asArray );
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertStreamingSameAsString( final String source,
+                                                     final JsonTransformationAssertion.Transformation transformation,
+                                                     final JsonTransformationAssertion.TransformationConvention convention,
+                                                     final boolean prettyPrint,
+                                                     final boolean asArray ) {
+        String expected;
+        try {
+            expected = ServerJsonTransformationAssertion.doTransformation( source, transformation, convention, "root", prettyPrint, asArray, true );
+            if ( transformation == JsonTransformationAssertion.Transformation.JSON_to_XML ) {
+                final Document document = XmlUtil.stringToDocument( expected );
+                expected = prettyPrint ? XmlUtil.nodeToFormattedString( document ) : XmlUtil.nodeToString( document );
+            }
+        } catch ( Exception e ) {
+            expected = e.getClass().getName() + ": " + e.getMessage();
+        }
+
+        String actual;
+        try {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new StreamingJsonTransformer( transformation, convention, "root", prettyPrint, asArray, true ).transform( new StringReader( source ), output );
+            actual = new String( output.toByteArray(), Charsets.UTF8 );
+        } catch ( Exception e ) {
+            actual = e.getClass().getName() + ": " + e.getMessage();
+        }
+
+        assertEquals( transformation + " " + convention + " pretty=" + prettyPrint + " array=" + asArray + " " + source, expected, actual );
+    }
+
     private String convert( String input,
                             JsonTransformationAssertion.Transformation transform,
                             JsonTransformationAssertion.TransformationConvention convention,
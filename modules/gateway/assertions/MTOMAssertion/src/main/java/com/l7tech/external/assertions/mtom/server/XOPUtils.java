@@ -120,7 +120,7 @@ public class XOPUtils {
      */
     public static void validate( final Message message ) throws IOException, SAXException, XOPException {
         final Set<String> contentIds = new HashSet<String>();
-        final ElementCursor cursor = message.getXmlKnob().getElementCursor();
+        final ElementCursor cursor = message.getXmlKnob().getReadOnlyElementCursor();
         cursor.moveToRoot();
         try {
             cursor.visitElements( new ElementCursor.Visitor(){
@@ -5,10 +5,15 @@ import java.math.BigInteger;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 /**
  * Represents a particular rate limit enforcement context.
+ * <p/>
+ * Points are fixed-point values (see {@link ServerRateLimitAssertion#POINTS_PER_REQUEST}) held in longs. The
+ * point balance and spend times are kept in an immutable state that is replaced using compare-and-set, so
+ * spending never blocks and a failed spend (rate exceeded) does not write to the counter at all.
  */
 class RateLimitCounter {
     private static final Logger logger = Logger.getLogger(RateLimitCounter.class.getName());
@@ -16,12 +21,9 @@ class RateLimitCounter {
     final AtomicInteger concurrency = new AtomicInteger();  // total not-yet-closed request threads that have passed through an RLA with this counter
     final String name; // counter name, for query/monitoring purposes
     private final ConcurrentLinkedQueue<RateLimitThreadToken> tokenQueue = new ConcurrentLinkedQueue<RateLimitThreadToken>();
-    private BigInteger points = BigInteger.valueOf( 0L );
-    private BigInteger lastPointsPerSecond = null;
-    private BigInteger lastMaxPoints = null;
-    private long lastUsed = 0L;
-    private long lastSpentMillis = 0L;
-    private long lastSpentNanos = Long.MIN_VALUE;
+    private final AtomicReference<State> state = new AtomicReference<State>( new State( 0L, 0L, 0L, Long.MIN_VALUE ) );
+    private volatile long lastPointsPerSecond = -1L;
+    private volatile long lastMaxPoints = -1L;
     final AtomicLong blackoutUntil = new AtomicLong( 0L );
 
     RateLimitCounter(String name) {
@@ -29,13 +31,13 @@ class RateLimitCounter {
     }
 
     class StateSnapshot {
-        final BigInteger points;
-        final BigInteger pointsCreditedForIdleTime;
+        final long points;
+        final long pointsCreditedForIdleTime;
         final long lastUsed;
         final long lastSpentMillis;
         final long lastSpentNanos;
 
-        StateSnapshot(BigInteger points, BigInteger pointsCreditedForIdleTime, long lastUsed, long lastSpentMillis, long lastSpentNanos) {
+        StateSnapshot(long points, long pointsCreditedForIdleTime, long lastUsed, long lastSpentMillis, long lastSpentNanos) {
             this.points = points;
             this.pointsCreditedForIdleTime = pointsCreditedForIdleTime;
             this.lastUsed = lastUsed;
@@ -44,18 +46,20 @@ class RateLimitCounter {
         }
     }
 
-    synchronized StateSnapshot query() {
-        BigInteger newPoints;
-        if (lastMaxPoints != null && lastPointsPerSecond != null) {
+    StateSnapshot query() {
+        final State current = state.get();
+        final long pointsPerSecond = lastPointsPerSecond;
+        final long maxPoints = lastMaxPoints;
+        long newPoints;
+        if (maxPoints >= 0L && pointsPerSecond >= 0L) {
             newPoints = ServerRateLimitAssertion.useNanos
-                    ? findNewPointsNano(ServerRateLimitAssertion.clock.nanoTime(), lastPointsPerSecond, lastMaxPoints)
-                    : findNewPointsMilli(ServerRateLimitAssertion.clock.currentTimeMillis(), lastPointsPerSecond, lastMaxPoints);
+                    ? findNewPointsNano(current, ServerRateLimitAssertion.clock.nanoTime(), pointsPerSecond, maxPoints)
+                    : findNewPointsMilli(current, ServerRateLimitAssertion.clock.currentTimeMillis(), pointsPerSecond, maxPoints);
         } else {
-            newPoints = points;
+            newPoints = current.points;
         }
 
-
-        return new StateSnapshot(points, newPoints, lastUsed, lastSpentMillis, lastSpentNanos);
+        return new StateSnapshot(current.points, newPoints, current.lastUsed, current.lastSpentMillis, current.lastSpentNanos);
     }
 
     // Attempt to spend enough points to send a request.
@@ -63,91 +67,100 @@ class RateLimitCounter {
     // @param pointsPerSecond  the number of points given for each 1000ms since the last spend
     // @param maxPoints   maximum number of points this counter should be allowed to accumulate
     // @return 0 if the spend was successful; otherwise, the number of points still needed
-    synchronized BigInteger spend(long now, BigInteger pointsPerSecond, BigInteger maxPoints) {
-        lastPointsPerSecond = pointsPerSecond;
-        lastMaxPoints = maxPoints;
+    long spend(long now, long pointsPerSecond, long maxPoints) {
+        // Avoid writing shared fields when the limits are unchanged
+        if (lastPointsPerSecond != pointsPerSecond) lastPointsPerSecond = pointsPerSecond;
+        if (lastMaxPoints != maxPoints) lastMaxPoints = maxPoints;
         return ServerRateLimitAssertion.useNanos
                 ? spendNano(now, pointsPerSecond, maxPoints)
                 : spendMilli(now, pointsPerSecond, maxPoints);
     }
 
-    private synchronized BigInteger spendMilli(long now, BigInteger pointsPerSecond, BigInteger maxPoints) {
-        BigInteger newPoints = findNewPointsMilli(now, pointsPerSecond, maxPoints);
+    private long spendMilli(long now, long pointsPerSecond, long maxPoints) {
+        for (;;) {
+            final State current = state.get();
+            final long newPoints = findNewPointsMilli(current, now, pointsPerSecond, maxPoints);
+
+            if (newPoints < ServerRateLimitAssertion.POINTS_PER_REQUEST) {
+                // Needs more points
+                return ServerRateLimitAssertion.POINTS_PER_REQUEST - newPoints;
+            }
 
-        if (newPoints.compareTo(ServerRateLimitAssertion.POINTS_PER_REQUEST) >= 0) {
             // Spend-n-send
-            newPoints = newPoints.subtract(ServerRateLimitAssertion.POINTS_PER_REQUEST);
-            points = newPoints;
-            lastSpentMillis = now;
-            lastUsed = now;
-            return BigInteger.ZERO;
+            if (state.compareAndSet(current, new State(newPoints - ServerRateLimitAssertion.POINTS_PER_REQUEST, now, now, current.lastSpentNanos)))
+                return 0L;
         }
+    }
 
-        // Needs more points
-        return ServerRateLimitAssertion.POINTS_PER_REQUEST.subtract(newPoints);
+    private long spendNano(long now, long pointsPerSecond, long maxPoints) {
+        for (;;) {
+            // First add points for time passed
+            final State current = state.get();
+            final long nanoNow = ServerRateLimitAssertion.clock.nanoTime();
+            final long newPoints = findNewPointsNano(current, nanoNow, pointsPerSecond, maxPoints);
+
+            if (newPoints < ServerRateLimitAssertion.POINTS_PER_REQUEST) {
+                // Needs more points
+                return ServerRateLimitAssertion.POINTS_PER_REQUEST - newPoints;
+            }
+
+            // Spend-n-send
+            if (state.compareAndSet(current, new State(newPoints - ServerRateLimitAssertion.POINTS_PER_REQUEST, now, current.lastSpentMillis, nanoNow)))
+                return 0L;
+        }
     }
 
-    private synchronized BigInteger findNewPointsMilli(long now, BigInteger pointsPerSecond, BigInteger maxPoints) {
+    private static long findNewPointsMilli(State current, long now, long pointsPerSecond, long maxPoints) {
         // First add points for time passed
         long idleMs;
-        if (lastSpentMillis > now) {
+        if (current.lastSpentMillis > now) {
             // Millisecond clock changed -- ntp adjustment?  shouldn't happen
             idleMs = 0L;
         } else {
-            idleMs = now - lastSpentMillis;
+            idleMs = now - current.lastSpentMillis;
         }
 
-        BigInteger newPoints = points.add((pointsPerSecond.multiply(BigInteger.valueOf(idleMs))).divide(ServerRateLimitAssertion.MILLIS_PER_SECOND_BIG));
-        if (newPoints.compareTo(maxPoints) > 0)
-            newPoints = maxPoints;
-        return newPoints;
+        return addPoints(current.points, pointsPerSecond, idleMs, ServerRateLimitAssertion.MILLIS_PER_SECOND, maxPoints);
     }
 
-    private synchronized BigInteger spendNano(long now, BigInteger pointsPerSecond, BigInteger maxPoints) {
-        // First add points for time passed
-        final long nanoNow = ServerRateLimitAssertion.clock.nanoTime();
-        BigInteger newPoints = findNewPointsNano(nanoNow, pointsPerSecond, maxPoints);
-
-        if (newPoints.compareTo(ServerRateLimitAssertion.POINTS_PER_REQUEST) >= 0) {
-            // Spend-n-send
-            newPoints = newPoints.subtract(ServerRateLimitAssertion.POINTS_PER_REQUEST);
-            points = newPoints;
-            lastUsed = now;
-            lastSpentNanos = nanoNow;
-            return BigInteger.ZERO;
-        }
-
-        // Needs more points
-        return ServerRateLimitAssertion.POINTS_PER_REQUEST.subtract(newPoints);
-    }
-
-    private synchronized BigInteger findNewPointsNano(long nanoNow, BigInteger pointsPerSecond, BigInteger maxPoints) {
-        BigInteger newPoints;
+    private static long findNewPointsNano(State current, long nanoNow, long pointsPerSecond, long maxPoints) {
+        final long lastSpentNanos = current.lastSpentNanos;
         if (lastSpentNanos == Long.MIN_VALUE) {
-            newPoints = maxPoints;
+            return maxPoints;
         } else if (lastSpentNanos > nanoNow) {
             // Nano jump backwards in time detected (Sun Java bug 6458294)
             if (ServerRateLimitAssertion.autoFallbackFromNanos && Math.abs(nanoNow - lastSpentNanos) > 10L * ServerRateLimitAssertion.NANOS_PER_MILLI) {
-                synchronized (ServerRateLimitAssertion.class) {
-                    if (ServerRateLimitAssertion.useNanos) {
-                        logger.severe("Nanosecond timer is too unreliable on this system; will use millisecond timer instead from now on");
-                        ServerRateLimitAssertion.useNanos = false;
-                    }
+                // Racing threads may both log, but no lock is needed to switch the flag
+                if (ServerRateLimitAssertion.useNanos) {
+                    ServerRateLimitAssertion.useNanos = false;
+                    logger.severe("Nanosecond timer is too unreliable on this system; will use millisecond timer instead from now on");
                 }
             }
-            newPoints = points;
+            return Math.min(current.points, maxPoints);
+        } else {
+            return addPoints(current.points, pointsPerSecond, nanoNow - lastSpentNanos, ServerRateLimitAssertion.NANOS_PER_SECOND, maxPoints);
+        }
+    }
+
+    // @return points plus the points earned at the given rate for the idle time, limited to maxPoints
+    private static long addPoints(long points, long pointsPerSecond, long idle, long unitsPerSecond, long maxPoints) {
+        if (points >= maxPoints)
+            return maxPoints;
+
+        final long credit;
+        if (pointsPerSecond == 0L || idle <= Long.MAX_VALUE / pointsPerSecond) {
+            credit = pointsPerSecond * idle / unitsPerSecond;
         } else {
-            long idleNanos = nanoNow - lastSpentNanos;
-            newPoints = points.add((pointsPerSecond.multiply(BigInteger.valueOf(idleNanos))).divide(ServerRateLimitAssertion.NANOS_PER_SECOND_BIG));
+            // Only for very long idle times, the result is almost certainly maxPoints
+            credit = BigInteger.valueOf(pointsPerSecond).multiply(BigInteger.valueOf(idle)).divide(BigInteger.valueOf(unitsPerSecond))
+                    .min(BigInteger.valueOf(Long.MAX_VALUE)).longValue();
         }
 
-        if (newPoints.compareTo(maxPoints) > 0)
-            newPoints = maxPoints;
-        return newPoints;
+        return credit >= maxPoints - points ? maxPoints : points + credit;
     }
 
-    synchronized boolean isStale(long now) {
-        return concurrency.get() < 1 && tokenQueue.isEmpty() && (now - lastUsed) > ServerRateLimitAssertion.cleanerPeriod.get();
+    boolean isStale(long now) {
+        return concurrency.get() < 1 && tokenQueue.isEmpty() && (now - state.get().lastUsed) > ServerRateLimitAssertion.cleanerPeriod.get();
     }
 
     void removeToken(RateLimitThreadToken token) {
@@ -182,21 +195,18 @@ class RateLimitCounter {
     //         1 if the sleep concurrency limit was hit
     //         2 if the maximum total sleep time was hit
     int pushTokenAndWaitUntilFirst(long startTime, RateLimitThreadToken token) throws IOException {
-        synchronized (token) {
+        token.notified = false;
+        tokenQueue.offer(token);
+        if (token.equals(tokenQueue.peek()))
+            return 0;
+
+        for (;;) {
+            if (!token.waitIfPossible())
+                return 1;
+            // clear before checking so that a notification for a later change is not lost
             token.notified = false;
-            tokenQueue.offer(token);
             if (token.equals(tokenQueue.peek()))
                 return 0;
-        }
-
-        for (;;) {
-            synchronized (token) {
-                if (!token.waitIfPossible())
-                    return 1;
-                if (token.equals(tokenQueue.peek()))
-                    return 0;
-                token.notified = false;
-            }
 
             if (ServerRateLimitAssertion.isOverslept(startTime, ServerRateLimitAssertion.clock.currentTimeMillis()))
                 return 2;
@@ -206,4 +216,21 @@ class RateLimitCounter {
     public String getName() {
         return name;
     }
+
+    /**
+     * Immutable point balance and spend times for a counter.
+     */
+    private static final class State {
+        private final long points;
+        private final long lastUsed;
+        private final long lastSpentMillis;
+        private final long lastSpentNanos;
+
+        private State(long points, long lastUsed, long lastSpentMillis, long lastSpentNanos) {
+            this.points = points;
+            this.lastUsed = lastUsed;
+            this.lastSpentMillis = lastSpentMillis;
+            this.lastSpentNanos = lastSpentNanos;
+        }
+    }
 }
@@ -2,21 +2,26 @@ package com.l7tech.external.assertions.ratelimit.server;
 
 import com.l7tech.util.CausedIOException;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 /**
  * Represents a particular thread's position in the queue to enter a rate limit counter.
+ * <p/>
+ * The owning thread parks while waiting, so no monitor is held by waiting threads.
  */
 class RateLimitThreadToken {
     private static final Logger logger = Logger.getLogger(RateLimitThreadToken.class.getName());
 
-    boolean notified = false;
+    private final Thread owner = Thread.currentThread();
+    volatile boolean notified = false;
 
-    synchronized boolean waitIfPossible() throws CausedIOException {
+    // Must be called by the thread that created the token
+    boolean waitIfPossible() throws CausedIOException {
         // Check for pending notification
         if (notified)
             return true;
-        notified = false;
 
         try {
             int sleepers = ServerRateLimitAssertion.curSleepThreads.incrementAndGet();
@@ -25,17 +30,19 @@ class RateLimitThreadToken {
 
             if (logger.isLoggable(ServerRateLimitAssertion.SUBINFO_LEVEL))
                 logger.log(ServerRateLimitAssertion.SUBINFO_LEVEL, "Thread " + Thread.currentThread().getName() + ": WAIT to be notified by previous in line");
-            wait(ServerRateLimitAssertion.maxNapTime.get());
+            // A notification before parking leaves a permit, so the park returns immediately
+            if (!notified)
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ServerRateLimitAssertion.maxNapTime.get()));
+            if (Thread.interrupted())
+                throw new CausedIOException("Thread interrupted", new InterruptedException());
             return true;
-        } catch (InterruptedException e) {
-            throw new CausedIOException("Thread interrupted", e);
         } finally {
             ServerRateLimitAssertion.curSleepThreads.decrementAndGet();
         }
     }
 
-    public synchronized void doNotify() {
+    public void doNotify() {
         notified = true;
-        super.notify();
+        LockSupport.unpark(owner);
     }
 }
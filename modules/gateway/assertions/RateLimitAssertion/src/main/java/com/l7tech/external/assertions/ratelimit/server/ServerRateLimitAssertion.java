@@ -18,7 +18,6 @@ import org.jetbrains.annotations.NotNull;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -36,17 +35,15 @@ import java.util.logging.Logger;
 public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitAssertion> {
     private static final Logger logger = Logger.getLogger(ServerRateLimitAssertion.class.getName());
     static final long NANOS_PER_MILLI = 1000000L;  // Number of nanoseconds in one millisecond
-    private static final BigInteger NANOS_PER_MILLI_BIG = BigInteger.valueOf(NANOS_PER_MILLI);
-    private static final long MILLIS_PER_SECOND = 1000L;
-    static final BigInteger MILLIS_PER_SECOND_BIG = BigInteger.valueOf(MILLIS_PER_SECOND);
+    static final long MILLIS_PER_SECOND = 1000L;
     static final long NANOS_PER_SECOND = MILLIS_PER_SECOND * NANOS_PER_MILLI;
-    static final BigInteger NANOS_PER_SECOND_BIG = BigInteger.valueOf(NANOS_PER_SECOND);
     private static final int DEFAULT_MAX_QUEUED_THREADS = 20;
     private static final int DEFAULT_CLEANER_PERIOD = 13613;
     private static final int DEFAULT_MAX_NAP_TIME = 4703;
     private static final int DEFAULT_MAX_TOTAL_SLEEP_TIME = 18371;
-    static final BigInteger POINTS_PER_REQUEST = BigInteger.valueOf(0x8000L); // cost in points to send a single request
-    static final BigInteger DEFAULT_MAX_POINTS = (POINTS_PER_REQUEST.add(POINTS_PER_REQUEST.divide(BigInteger.valueOf(2L))));
+    static final long POINTS_PER_REQUEST = 0x8000L; // cost in points to send a single request (fixed-point)
+    static final long DEFAULT_MAX_POINTS = POINTS_PER_REQUEST + POINTS_PER_REQUEST / 2L;
+    private static final long MAX_POINTS_PER_SECOND = Long.MAX_VALUE / POINTS_PER_REQUEST;
     static final Level SUBINFO_LEVEL =
             ConfigFactory.getBooleanProperty( "com.l7tech.external.server.ratelimit.logAtInfo", false ) ? Level.INFO : Level.FINE;
 
@@ -60,7 +57,7 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
     private static final AtomicLong maxTotalSleepTime = new AtomicLong( (long) DEFAULT_MAX_TOTAL_SLEEP_TIME );
 
     static boolean auditLimitExceeded = true;
-    static boolean useNanos = true;
+    static volatile boolean useNanos = true;
     static boolean autoFallbackFromNanos = !ConfigFactory.getBooleanProperty( "com.l7tech.external.server.ratelimit.forceNanos", false );
     static TimeSource clock = new TimeSource();
 
@@ -79,7 +76,7 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
         }, 3659L, 3659L );
     }
 
-    interface BigIntFinder extends Functions.Unary<BigInteger, PolicyEnforcementContext> {}
+    interface LongFinder extends Functions.Unary<Long, PolicyEnforcementContext> {}
 
     private final ClusterInfoService clusterInfoService;
     private final SharedClusterInfoServiceRegistry sharedClusterInfoServiceRegistry;
@@ -87,10 +84,10 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
 
     private final String[] variablesUsed;
     private final String counterNameRaw;
-    private final BigIntFinder windowSizeInSecondsFinder;
-    private final BigIntFinder maxConcurrencyFinder;
-    private final BigIntFinder maxRequestsPerSecondFinder;
-    private final BigIntFinder blackoutSecondsFinder;
+    private final LongFinder windowSizeInSecondsFinder;
+    private final LongFinder maxConcurrencyFinder;
+    private final LongFinder maxRequestsPerSecondFinder;
+    private final LongFinder blackoutSecondsFinder;
 
     public ServerRateLimitAssertion(RateLimitAssertion assertion, ApplicationContext context) throws PolicyAssertionException {
         super(assertion);
@@ -108,11 +105,11 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
             throw new PolicyAssertionException(assertion, "Missing serverConfig bean");
         }
 
-        this.windowSizeInSecondsFinder = makeBigIntFinder(assertion.getWindowSizeInSeconds(), "Burst spread limit", getAudit(), 1L);
-        this.maxConcurrencyFinder = makeBigIntFinder(assertion.getMaxConcurrency(), "Maximum concurrent requests", getAudit(), 0L);
-        this.maxRequestsPerSecondFinder = makeBigIntFinder(assertion.getMaxRequestsPerSecond(), "Maximum requests per second", getAudit(), 1L);
+        this.windowSizeInSecondsFinder = makeLongFinder(assertion.getWindowSizeInSeconds(), "Burst spread limit", getAudit(), 1L);
+        this.maxConcurrencyFinder = makeLongFinder(assertion.getMaxConcurrency(), "Maximum concurrent requests", getAudit(), 0L);
+        this.maxRequestsPerSecondFinder = makeLongFinder(assertion.getMaxRequestsPerSecond(), "Maximum requests per second", getAudit(), 1L);
         final String blackout = assertion.getBlackoutPeriodInSeconds();
-        this.blackoutSecondsFinder = blackout == null ? null : makeBigIntFinder(blackout, "Blackout period in seconds", getAudit(), 1L);
+        this.blackoutSecondsFinder = blackout == null ? null : makeLongFinder(blackout, "Blackout period in seconds", getAudit(), 1L);
     }
 
     @Override
@@ -160,7 +157,7 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
             }
         }
 
-        final BigInteger pps;
+        final long pps;
         try {
             pps = findPointsPerSecond(context);
         } catch (NoSuchVariableException e) {
@@ -179,9 +176,9 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
             return AssertionStatus.FAILED;
         }
 
-        final BigInteger maxPoints = assertion.isHardLimit()
+        final long maxPoints = assertion.isHardLimit()
                 ? DEFAULT_MAX_POINTS
-                : pps.multiply(windowSizeInSecondsFinder.call(context));
+                : multiplySaturated(pps, windowSizeInSecondsFinder.call(context));
 
         final boolean logOnly = assertion.isLogOnly();
         final boolean canSleep = assertion.isShapeRequests();
@@ -206,8 +203,8 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
     }
 
 
-    private AssertionStatus checkNoSleep(BigInteger pps, RateLimitCounter counter, String counterName, BigInteger maxPoints) throws IOException {
-        if (BigInteger.ZERO.equals(counter.spend(clock.currentTimeMillis(), pps, maxPoints))) {
+    private AssertionStatus checkNoSleep(long pps, RateLimitCounter counter, String counterName, long maxPoints) throws IOException {
+        if (counter.spend(clock.currentTimeMillis(), pps, maxPoints) == 0L) {
             // Successful spend.
             return AssertionStatus.NONE;
         }
@@ -222,9 +219,9 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
     }
 
 
-    private AssertionStatus checkWithSleep(BigInteger pps, RateLimitCounter counter, String counterName, BigInteger maxPoints) throws IOException {
+    private AssertionStatus checkWithSleep(long pps, RateLimitCounter counter, String counterName, long maxPoints) throws IOException {
         final RateLimitThreadToken token = new RateLimitThreadToken();
-        final BigInteger maxnap = BigInteger.valueOf(maxNapTime.get());
+        final long maxnap = maxNapTime.get();
         long startTime = clock.currentTimeMillis();
 
         try {
@@ -241,8 +238,8 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
             for (;;) {
                 long now = clock.currentTimeMillis();
 
-                BigInteger shortfall = counter.spend(now, pps, maxPoints);
-                if (shortfall.equals(BigInteger.ZERO)) {
+                long shortfall = counter.spend(now, pps, maxPoints);
+                if (shortfall == 0L) {
                     return AssertionStatus.NONE;
                 }
 
@@ -251,18 +248,18 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
                     return AssertionStatus.SERVICE_UNAVAILABLE;
                 }
 
-                BigInteger sleepNanos = shortfall.multiply(NANOS_PER_SECOND_BIG).divide(pps.add(BigInteger.ONE));
-                if (sleepNanos.compareTo(BigInteger.ONE) < 0) sleepNanos = BigInteger.ONE;
-                BigInteger[] dr = sleepNanos.divideAndRemainder(NANOS_PER_MILLI_BIG);
-                BigInteger sleepTime = dr[0];
-                int sleepNanosInt = dr[1].intValue();
+                // shortfall is at most POINTS_PER_REQUEST, so this cannot overflow
+                long sleepNanos = shortfall * NANOS_PER_SECOND / (pps + 1L);
+                if (sleepNanos < 1L) sleepNanos = 1L;
+                long sleepTime = sleepNanos / NANOS_PER_MILLI;
+                int sleepNanosInt = (int) (sleepNanos % NANOS_PER_MILLI);
 
                 // don't sleep for too long
-                if (sleepTime.compareTo(maxnap) > 0) {
+                if (sleepTime > maxnap) {
                     sleepTime = maxnap;
                 }
 
-                if (!sleepIfPossible(curSleepThreads, maxSleepThreads.get(), sleepTime.longValue(), sleepNanosInt)) {
+                if (!sleepIfPossible(curSleepThreads, maxSleepThreads.get(), sleepTime, sleepNanosInt)) {
                     logAndAudit( AssertionMessages.RATELIMIT_NODE_CONCURRENCY, counterName );
                     return AssertionStatus.SERVICE_UNAVAILABLE;
                 }
@@ -298,28 +295,31 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
     }
 
     int findMaxConcurrency(PolicyEnforcementContext context) throws NoSuchVariableException, NumberFormatException {
-        final BigInteger conc = maxConcurrencyFinder.call(context);
+        final long conc = maxConcurrencyFinder.call(context);
         return assertion.isSplitConcurrencyLimitAcrossNodes()
-                ? conc.divide(BigInteger.valueOf(clusterInfoService.getActiveNodes().size())).intValue()
-                : conc.intValue();
+                ? (int) (conc / (long) clusterInfoService.getActiveNodes().size())
+                : (int) conc;
     }
 
-    BigInteger findPointsPerSecond(PolicyEnforcementContext context) throws NoSuchVariableException, NumberFormatException {
-        BigInteger rps = maxRequestsPerSecondFinder.call(context);
-        if (rps.compareTo(BigInteger.ONE) < 0) {
+    long findPointsPerSecond(PolicyEnforcementContext context) throws NoSuchVariableException, NumberFormatException {
+        final long rps = maxRequestsPerSecondFinder.call(context);
+        if (rps < 1L) {
             throw new IllegalStateException("Max requests per second cannot be less than 1");
         }
-        final BigInteger pps = POINTS_PER_REQUEST.multiply(rps);
-        return assertion.isSplitRateLimitAcrossNodes() ? pps.divide(BigInteger.valueOf(clusterInfoService.getActiveNodes().size())) : pps;
+        final long pps = POINTS_PER_REQUEST * Math.min(rps, MAX_POINTS_PER_SECOND);
+        return assertion.isSplitRateLimitAcrossNodes() ? pps / (long) clusterInfoService.getActiveNodes().size() : pps;
+    }
+
+    // @return a * b, or Long.MAX_VALUE if the result would overflow (both values are positive)
+    private static long multiplySaturated(long a, long b) {
+        return b != 0L && a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
     }
 
     // @return the existing counter with this name, creating a new one if necessary.
     private static RateLimitCounter getCounter(String counterName) {
-        if(!counters.containsKey(counterName)) {
-            counters.put(counterName, new RateLimitCounter(counterName));
-        }
-
-        return counters.get(counterName);
+        // check first, computeIfAbsent locks the bin even when the counter exists
+        final RateLimitCounter counter = counters.get(counterName);
+        return counter != null ? counter : counters.computeIfAbsent(counterName, RateLimitCounter::new);
     }
 
     public static RateLimitCounter queryCounter(String counterName) {
@@ -350,13 +350,13 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
         }
     }
 
-    private static BigIntFinder makeBigIntFinder(final String variableExpression, final String fieldName, final Audit audit, final long min) {
+    private static LongFinder makeLongFinder(final String variableExpression, final String fieldName, final Audit audit, final long min) {
         final String[] varsUsed = Syntax.getReferencedNames(variableExpression);
         if (varsUsed.length > 0) {
             // Context variable
-            return new BigIntFinder() {
+            return new LongFinder() {
                 @Override
-                public BigInteger call(PolicyEnforcementContext context) {
+                public Long call(PolicyEnforcementContext context) {
                     final String str = ExpandVariables.process(variableExpression, context.getVariableMap(varsUsed, audit), audit);
 
                     final long longVal;
@@ -372,15 +372,15 @@ public class ServerRateLimitAssertion extends AbstractServerAssertion<RateLimitA
                         throw new AssertionStatusException(AssertionStatus.SERVER_ERROR);
                     }
 
-                    return BigInteger.valueOf(longVal);
+                    return longVal;
                 }
             };
         } else {
             // Constant value
-            final BigInteger i = new BigInteger(variableExpression);
-            return new BigIntFinder() {
+            final Long i = Long.valueOf(variableExpression);
+            return new LongFinder() {
                 @Override
-                public BigInteger call(PolicyEnforcementContext context) {
+                public Long call(PolicyEnforcementContext context) {
                     return i;
                 }
             };
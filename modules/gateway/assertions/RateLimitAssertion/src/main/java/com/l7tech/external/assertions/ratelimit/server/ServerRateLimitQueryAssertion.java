@@ -9,6 +9,7 @@ import com.l7tech.server.policy.variable.ExpandVariables;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.math.BigInteger;
 
 /**
  * Looks up a counter and sets variables about its current state.
@@ -69,7 +70,7 @@ public class ServerRateLimitQueryAssertion extends AbstractServerAssertion<RateL
 
         //context.setVariable(pointsVar, state.pointsCreditedForIdleTime);
         //context.setVariable(pointsPerRequestVar, ServerRateLimitAssertion.POINTS_PER_REQUEST);
-        context.setVariable(requestsRemainingVar, state.pointsCreditedForIdleTime.divide(ServerRateLimitAssertion.POINTS_PER_REQUEST));
+        context.setVariable(requestsRemainingVar, BigInteger.valueOf(state.pointsCreditedForIdleTime / ServerRateLimitAssertion.POINTS_PER_REQUEST));
 
         //context.setVariable(resolutionVar, ServerRateLimitAssertion.useNanos ? "nanos" : "millis");
 
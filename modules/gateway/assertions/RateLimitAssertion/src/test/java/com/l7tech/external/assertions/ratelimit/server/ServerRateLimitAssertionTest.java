@@ -605,6 +605,23 @@ public class ServerRateLimitAssertionTest {
 
     }
 
+    @Test
+    public void testLongIdleAtHighRate() throws Exception {
+        RateLimitAssertion rla = new RateLimitAssertion();
+        rla.setHardLimit(false);
+        rla.setWindowSizeInSeconds("1000");
+        rla.setCounterName("LongIdleAtHighRate");
+        rla.setMaxRequestsPerSecond("1000000");
+        ServerAssertion ass = makePolicy(rla);
+
+        clock.sync();
+        assertEquals(AssertionStatus.NONE, ass.checkRequest(makeContext())); // Initial request to create the counter
+
+        clock.advanceByMillis(10L * 24L * 60L * 60L * 1000L); // Idle long enough that the points earned overflow a long
+        for (int i = 0; i < 1000; ++i)
+            assertEquals("round " + i, AssertionStatus.NONE, ass.checkRequest(makeContext()));
+    }
+
     @Test
     public void testSimpleRateLimitWithSleep() throws Exception {
         RateLimitAssertion rla = new RateLimitAssertion();
@@ -970,7 +987,7 @@ public class ServerRateLimitAssertionTest {
         assertEquals("Max concurrency should be " + expectedConc + " for " + ass.getCounterName(),
                 expectedConc, sass.findMaxConcurrency(makeContext()));
         assertEquals("Max rate should be " + expectedRate + " for" + ass.getCounterName(),
-                expectedRate, sass.findPointsPerSecond(makeContext()).divide(ServerRateLimitAssertion.POINTS_PER_REQUEST).longValue());
+                expectedRate, sass.findPointsPerSecond(makeContext()) / ServerRateLimitAssertion.POINTS_PER_REQUEST);
     }
 
     private void setClusterSize(int upnodes, int totalnodes) {
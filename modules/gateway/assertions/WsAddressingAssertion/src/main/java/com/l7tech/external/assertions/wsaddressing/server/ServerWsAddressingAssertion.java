@@ -329,7 +329,7 @@ public class ServerWsAddressingAssertion extends AbstractServerAssertion<WsAddre
             if ( isElementsVariableUsed() ) { // then we need a DOM cursor
                 return new DomElementCursor( msg.getXmlKnob().getDocumentReadOnly() );
             } else {
-                return msg.getXmlKnob().getElementCursor();
+                return msg.getXmlKnob().getReadOnlyElementCursor();
             }
         } catch (SAXException se) {
              throw new CausedIOException(se);    
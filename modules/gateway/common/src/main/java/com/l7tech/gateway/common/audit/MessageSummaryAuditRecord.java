@@ -250,6 +250,23 @@ public class MessageSummaryAuditRecord extends AuditRecord implements ZoneableEn
         this.mappingValuesId = mappingValuesId;
     }
 
+    /**
+     * Resolve the lazily populated operation name and, optionally, the mapping values ID.
+     * <p/>
+     * Once resolved the record no longer refers to the message processing state used to
+     * populate them, so it can be retained or serialized after processing has completed.
+     *
+     * @param includeMappingValues true to also resolve the mapping values ID (which may save the mapping values)
+     */
+    public void resolveLazyProperties(boolean includeMappingValues) {
+        getOperationName();
+        operationNameHaver = null;
+        if (includeMappingValues) {
+            getMappingValuesId();
+            mappingValueIdHaver = null;
+        }
+    }
+
     /** @deprecated to be called only for serialization and persistence purposes! */
     @Deprecated
     protected void setOperationName(String operationName) {
@@ -1,5 +1,6 @@
 package com.l7tech.gateway.common.cluster;
 
+import com.l7tech.common.io.CacheStatistics;
 import com.l7tech.common.io.failover.FailoverStrategy;
 import com.l7tech.gateway.common.AsyncAdminMethods;
 import com.l7tech.gateway.common.InvalidLicenseException;
@@ -85,6 +86,16 @@ public interface ClusterStatusAdmin extends AsyncAdminMethods {
     @Administrative(background = true)
     ServiceUsage[] getServiceUsage() throws FindException;
 
+    /**
+     * Get statistics for the in-memory caches on this node.
+     *
+     * @return The statistics for each cache (hits, misses, evictions, size). Never null.
+     */
+    @Transactional(readOnly=true)
+    @Secured(types=EntityType.CLUSTER_INFO, stereotype=MethodStereotype.FIND_ENTITIES)
+    @Administrative(licensed=false, background = true)
+    Collection<CacheStatistics> getCacheStatistics();
+
     /**
      * Allows the administrator to change the human readable name of a cluster node. The original
      * names are automatically set by the server when they join the cluster.
@@ -7,8 +7,15 @@ import com.l7tech.policy.assertion.ext.message.InvalidDataException;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Converts {@link JSONData} into {@link CustomJsonData}.
+ * <p/>
+ * The parsed JSON object of a message is shared by all its users, so custom assertions are given their own copy.
  */
 public final class JsonDataToCustomConverter implements CustomJsonData {
 
@@ -30,9 +37,31 @@ public final class JsonDataToCustomConverter implements CustomJsonData {
     @Override
     public Object getJsonObject() throws InvalidDataException {
         try {
-            return jsonData.getJsonObject();
+            return copyOf(jsonData.getJsonObject());
         } catch (InvalidJsonException e) {
             throw new InvalidDataException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Copy the maps and lists of a parsed JSON object, other values are immutable.
+     */
+    private static Object copyOf(final Object value) {
+        if (value instanceof Map) {
+            final Map<?,?> map = (Map<?,?>) value;
+            final Map<Object,Object> copy = new LinkedHashMap<>(Math.max(16, map.size() * 4 / 3 + 1));
+            for (final Map.Entry<?,?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), copyOf(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            final List<Object> copy = new ArrayList<>(list.size());
+            for (final Object item : list) {
+                copy.add(copyOf(item));
+            }
+            return copy;
+        }
+        return value;
+    }
 }
@@ -0,0 +1,127 @@
+package com.l7tech.gateway.common.service;
+
+import com.l7tech.objectmodel.Goid;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Profiling statistics for a single assertion in a policy.
+ *
+ * <p>Invocation and failure counts include every evaluation of the
+ * assertion, latency values are derived from a sample of evaluations.</p>
+ */
+public class AssertionProfileStatistics implements Serializable {
+
+    public AssertionProfileStatistics( final Goid policyGoid,
+                                       final int ordinal,
+                                       final String assertionName,
+                                       final long invocationCount,
+                                       final long failureCount,
+                                       final long sampleCount,
+                                       final long meanNanos,
+                                       final long p50Nanos,
+                                       final long p90Nanos,
+                                       final long p99Nanos,
+                                       final long maxNanos ) {
+        this.policyGoid = policyGoid;
+        this.ordinal = ordinal;
+        this.assertionName = assertionName;
+        this.invocationCount = invocationCount;
+        this.failureCount = failureCount;
+        this.sampleCount = sampleCount;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return The GOID of the policy containing the assertion
+     */
+    public Goid getPolicyGoid() {
+        return policyGoid;
+    }
+
+    /**
+     * @return The ordinal of the assertion within its policy
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public String getAssertionName() {
+        return assertionName;
+    }
+
+    public long getInvocationCount() {
+        return invocationCount;
+    }
+
+    /**
+     * @return The number of evaluations that did not succeed
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return The number of evaluations for which latency was recorded
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return ordinal + " " + assertionName +
+                " invocations=" + invocationCount +
+                " failures=" + failureCount +
+                " mean=" + micros( meanNanos ) +
+                "us p50=" + micros( p50Nanos ) +
+                "us p90=" + micros( p90Nanos ) +
+                "us p99=" + micros( p99Nanos ) +
+                "us max=" + micros( maxNanos ) + "us";
+    }
+
+    //- PRIVATE
+
+    private static final long serialVersionUID = 1L;
+
+    private final Goid policyGoid;
+    private final int ordinal;
+    private final String assertionName;
+    private final long invocationCount;
+    private final long failureCount;
+    private final long sampleCount;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    private static long micros( final long nanos ) {
+        return TimeUnit.NANOSECONDS.toMicros( nanos );
+    }
+}
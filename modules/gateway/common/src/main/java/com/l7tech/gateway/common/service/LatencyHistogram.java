@@ -0,0 +1,229 @@
+package com.l7tech.gateway.common.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A mergeable histogram of response times (in milliseconds).
+ *
+ * <p>Values are counted in log-linear buckets: values less than 16 have their
+ * own bucket and each power of two above that is split into 8 buckets. A
+ * value read from the histogram is within 1/16 (about 6%) of a recorded value
+ * and the histogram has a fixed number of buckets for any range of values, so
+ * histograms can be merged by adding the bucket counts.</p>
+ *
+ * <p>Histograms are stored as a compact byte array containing only the
+ * non-empty buckets, see {@link #toBytes()}.</p>
+ */
+public final class LatencyHistogram implements Serializable {
+
+    /** The number of buckets in a histogram. */
+    public static final int BUCKET_COUNT = bucketIndex( Integer.MAX_VALUE ) + 1;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Create a histogram from bytes created by {@link #toBytes()}.
+     *
+     * @param bytes The histogram bytes (may be null or empty for an empty histogram)
+     * @return The histogram
+     * @throws IllegalArgumentException if the bytes are not a valid histogram
+     */
+    public static LatencyHistogram fromBytes( final byte[] bytes ) {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        if ( bytes != null && bytes.length > 0 ) {
+            if ( bytes[0] != FORMAT_VERSION ) {
+                throw new IllegalArgumentException( "Unsupported histogram format " + bytes[0] );
+            }
+            final int[] position = { 1 };
+            int index = -1;
+            while ( position[0] < bytes.length ) {
+                final long delta = readVarLong( bytes, position );
+                final long count = readVarLong( bytes, position );
+                final long next = index + delta + 1L;
+                if ( delta < 0L || next < 0L || next >= BUCKET_COUNT || count < 0L ) {
+                    throw new IllegalArgumentException( "Invalid histogram bucket " + next );
+                }
+                index = (int) next;
+                histogram.counts[index] = count;
+                histogram.totalCount += count;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Get the bucket for the given value.
+     *
+     * @param value The value in milliseconds (negative values are counted as zero)
+     * @return The bucket index
+     */
+    public static int bucketIndex( final int value ) {
+        if ( value < LINEAR_LIMIT ) {
+            return value < 0 ? 0 : value;
+        }
+        final int exponent = 31 - Integer.numberOfLeadingZeros( value );
+        final int subBucket = (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value The value in milliseconds
+     */
+    public void recordValue( final int value ) {
+        addCount( bucketIndex( value ), 1L );
+    }
+
+    /**
+     * Add to the count for a bucket.
+     *
+     * @param bucketIndex The bucket index
+     * @param count The count to add
+     * @see #bucketIndex(int)
+     */
+    public void addCount( final int bucketIndex, final long count ) {
+        counts[bucketIndex] += count;
+        totalCount += count;
+    }
+
+    /**
+     * Add the counts from the given histogram to this histogram.
+     *
+     * @param other The histogram to merge (may be null)
+     */
+    public void merge( final LatencyHistogram other ) {
+        if ( other != null ) {
+            for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+                counts[i] += other.counts[i];
+            }
+            totalCount += other.totalCount;
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Get the value at the given percentile.
+     *
+     * @param percentile The percentile (0 - 100)
+     * @return The value in milliseconds, 0 if the histogram is empty
+     */
+    public int getValueAtPercentile( final double percentile ) {
+        if ( totalCount == 0L ) return 0;
+
+        final double fraction = Math.min( 100.0, Math.max( 0.0, percentile ) ) / 100.0;
+        final long rank = Math.max( 1L, (long) Math.ceil( fraction * (double) totalCount ) );
+        long seen = 0L;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            seen += counts[i];
+            if ( seen >= rank ) {
+                return bucketValue( i );
+            }
+        }
+        return bucketValue( BUCKET_COUNT - 1 );
+    }
+
+    /**
+     * Get the bytes for this histogram.
+     *
+     * <p>The bytes are a format version followed by variable length encoded
+     * pairs of bucket offset and count for each non-empty bucket.</p>
+     *
+     * @return The histogram bytes
+     */
+    public byte[] toBytes() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream( 64 );
+        out.write( FORMAT_VERSION );
+        int lastIndex = -1;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            if ( counts[i] != 0L ) {
+                writeVarLong( out, (long) (i - lastIndex - 1) );
+                writeVarLong( out, counts[i] );
+                lastIndex = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings({ "RedundantIfStatement" })
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) return true;
+        if ( o == null || getClass() != o.getClass() ) return false;
+
+        final LatencyHistogram that = (LatencyHistogram) o;
+
+        if ( totalCount != that.totalCount ) return false;
+        if ( !Arrays.equals( counts, that.counts ) ) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode( counts );
+    }
+
+    //- PRIVATE
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int LINEAR_BITS = 4;
+    private static final int LINEAR_LIMIT = 1 << LINEAR_BITS;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts;
+    private long totalCount;
+
+    /**
+     * The middle of the range of values for a bucket.
+     */
+    private static int bucketValue( final int bucketIndex ) {
+        if ( bucketIndex < LINEAR_LIMIT ) {
+            return bucketIndex;
+        }
+        final int exponent = LINEAR_BITS + (bucketIndex - LINEAR_LIMIT) / SUB_BUCKETS;
+        final int subBucket = (bucketIndex - LINEAR_LIMIT) % SUB_BUCKETS;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+        return (int) Math.min( (long) Integer.MAX_VALUE, lowest + ((1L << shift) >> 1) );
+    }
+
+    private static void writeVarLong( final ByteArrayOutputStream out, long value ) {
+        while ( (value & ~0x7FL) != 0L ) {
+            out.write( (int) ((value & 0x7FL) | 0x80L) );
+            value >>>= 7;
+        }
+        out.write( (int) value );
+    }
+
+    private static long readVarLong( final byte[] bytes, final int[] position ) {
+        long value = 0L;
+        for ( int shift = 0; shift < 64; shift += 7 ) {
+            if ( position[0] >= bytes.length ) {
+                throw new IllegalArgumentException( "Truncated histogram" );
+            }
+            final int b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ( (b & 0x80) == 0 ) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException( "Invalid histogram" );
+    }
+}
@@ -91,6 +91,12 @@ public class MetricsBin extends PersistentEntityImp implements Comparable {
     /** Sum over backend response times (in milliseconds) of all completed requests. */
     private long _sumBackendResponseTime;
 
+    /** Histogram of frontend response times of all attempted requests (see {@link LatencyHistogram#toBytes()}). */
+    private byte[] _frontendResponseTimeHistogram;
+
+    /** Histogram of backend response times of all completed requests (see {@link LatencyHistogram#toBytes()}). */
+    private byte[] _backendResponseTimeHistogram;
+
     /**
      * State of the associated {@link PublishedService} at approximately the time this bin was archived.
      */
@@ -602,6 +608,42 @@ public class MetricsBin extends PersistentEntityImp implements Comparable {
         }
     }
 
+    /** @return the histogram of frontend response times of all attempted requests;
+     *          null if no histogram was recorded for this bin */
+    @Column(name="front_histogram", length=Integer.MAX_VALUE)
+    public byte[] getFrontendResponseTimeHistogram() {
+        return _frontendResponseTimeHistogram;
+    }
+
+    /** @return the histogram of backend response times of all completed requests;
+     *          null if no histogram was recorded for this bin */
+    @Column(name="back_histogram", length=Integer.MAX_VALUE)
+    public byte[] getBackendResponseTimeHistogram() {
+        return _backendResponseTimeHistogram;
+    }
+
+    /**
+     * Get a frontend response time percentile from the histogram for this bin.
+     *
+     * @param percentile the percentile (e.g. 95 or 99)
+     * @return the response time (in milliseconds) or null if no histogram was recorded for this bin
+     */
+    @Transient
+    public Integer getFrontendResponseTimePercentile(double percentile) {
+        return percentile(_frontendResponseTimeHistogram, percentile, _minFrontendResponseTime, _maxFrontendResponseTime);
+    }
+
+    /**
+     * Get a backend response time percentile from the histogram for this bin.
+     *
+     * @param percentile the percentile (e.g. 95 or 99)
+     * @return the response time (in milliseconds) or null if no histogram was recorded for this bin
+     */
+    @Transient
+    public Integer getBackendResponseTimePercentile(double percentile) {
+        return percentile(_backendResponseTimeHistogram, percentile, _minBackendResponseTime, _maxBackendResponseTime);
+    }
+
     public void setClusterNodeId(String clusterNodeId) {
         _clusterNodeId = clusterNodeId;
     }
@@ -676,6 +718,14 @@ public class MetricsBin extends PersistentEntityImp implements Comparable {
         _sumBackendResponseTime = sumBackendResponseTime;
     }
 
+    public void setFrontendResponseTimeHistogram(byte[] frontendResponseTimeHistogram) {
+        _frontendResponseTimeHistogram = frontendResponseTimeHistogram;
+    }
+
+    public void setBackendResponseTimeHistogram(byte[] backendResponseTimeHistogram) {
+        _backendResponseTimeHistogram = backendResponseTimeHistogram;
+    }
+
     /**
      * Merge the given bin into this bin if they are equal (i.e., same cluster
      * node ID, published service OID, resolution, period start and interval).
@@ -711,6 +761,9 @@ public class MetricsBin extends PersistentEntityImp implements Comparable {
                     }
                 }
 
+                _frontendResponseTimeHistogram = mergeHistograms(_frontendResponseTimeHistogram, other.getFrontendResponseTimeHistogram());
+                _backendResponseTimeHistogram = mergeHistograms(_backendResponseTimeHistogram, other.getBackendResponseTimeHistogram());
+
                 _sumFrontendResponseTime += other.getSumFrontendResponseTime();
                 _sumBackendResponseTime += other.getSumBackendResponseTime();
                 _numAttemptedRequest += other.getNumAttemptedRequest();
@@ -786,4 +839,45 @@ public class MetricsBin extends PersistentEntityImp implements Comparable {
     static int max( final int value1, final Integer value2 ) {
         return value2==null ? value1 : Math.max( value1, value2 );
     }
+
+    /**
+     * Merge response time histograms.
+     *
+     * @param histogram1 the first histogram bytes (may be null)
+     * @param histogram2 the second histogram bytes (may be null)
+     * @return the merged histogram bytes, null if both histograms are null or a histogram is invalid
+     */
+    public static byte[] mergeHistograms( final byte[] histogram1, final byte[] histogram2 ) {
+        if ( histogram1 == null ) return histogram2;
+        if ( histogram2 == null ) return histogram1;
+        try {
+            final LatencyHistogram histogram = LatencyHistogram.fromBytes( histogram1 );
+            histogram.merge( LatencyHistogram.fromBytes( histogram2 ) );
+            return histogram.toBytes();
+        } catch ( IllegalArgumentException e ) {
+            _logger.log( Level.WARNING, "Invalid response time histogram, histogram discarded: " + e.getMessage() );
+            return null;
+        }
+    }
+
+    private static Integer percentile( final byte[] histogramBytes,
+                                       final double percentile,
+                                       final Integer min,
+                                       final Integer max ) {
+        if ( histogramBytes == null ) return null;
+        final LatencyHistogram histogram;
+        try {
+            histogram = LatencyHistogram.fromBytes( histogramBytes );
+        } catch ( IllegalArgumentException e ) {
+            _logger.log( Level.WARNING, "Invalid response time histogram: " + e.getMessage() );
+            return null;
+        }
+        if ( histogram.getTotalCount() == 0L ) return null;
+
+        // bucket values are approximate, keep within the recorded range
+        int value = histogram.getValueAtPercentile( percentile );
+        if ( min != null ) value = Math.max( value, min );
+        if ( max != null ) value = Math.min( value, max );
+        return value;
+    }
 }
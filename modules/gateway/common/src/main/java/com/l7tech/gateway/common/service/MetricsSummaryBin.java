@@ -141,6 +141,8 @@ public class MetricsSummaryBin extends MetricsBin {
         Integer minBackendResponseTime = null;
         Integer maxBackendResponseTime = null;
         long sumBackendResponseTime = 0;
+        byte[] frontendResponseTimeHistogram = null;
+        byte[] backendResponseTimeHistogram = null;
 
         boolean first = true;
         for (Iterator<MetricsBin> it = bins.iterator(); it.hasNext();) {
@@ -159,6 +161,8 @@ public class MetricsSummaryBin extends MetricsBin {
                 minBackendResponseTime = bin.getMinBackendResponseTime();
                 maxBackendResponseTime = bin.getMaxBackendResponseTime();
                 sumBackendResponseTime = bin.getSumBackendResponseTime();
+                frontendResponseTimeHistogram = bin.getFrontendResponseTimeHistogram();
+                backendResponseTimeHistogram = bin.getBackendResponseTimeHistogram();
                 numAttemptedRequest = bin.getNumAttemptedRequest();
                 numAuthorizedRequest = bin.getNumAuthorizedRequest();
                 numCompletedRequest = bin.getNumCompletedRequest();
@@ -194,6 +198,8 @@ public class MetricsSummaryBin extends MetricsBin {
                     }
                 }
                 sumBackendResponseTime += bin.getSumBackendResponseTime();
+                frontendResponseTimeHistogram = MetricsBin.mergeHistograms(frontendResponseTimeHistogram, bin.getFrontendResponseTimeHistogram());
+                backendResponseTimeHistogram = MetricsBin.mergeHistograms(backendResponseTimeHistogram, bin.getBackendResponseTimeHistogram());
                 numAttemptedRequest += bin.getNumAttemptedRequest();
                 numAuthorizedRequest += bin.getNumAuthorizedRequest();
                 numCompletedRequest += bin.getNumCompletedRequest();
@@ -248,6 +254,8 @@ public class MetricsSummaryBin extends MetricsBin {
         setMinBackendResponseTime(minBackendResponseTime);
         setMaxBackendResponseTime(maxBackendResponseTime);
         setSumBackendResponseTime(sumBackendResponseTime);
+        setFrontendResponseTimeHistogram(frontendResponseTimeHistogram);
+        setBackendResponseTimeHistogram(backendResponseTimeHistogram);
         setFirstAttemptedRequest(firstAttemptedRequest);
         setFirstAuthorizedRequest(firstAuthorizedRequest);
         setFirstCompletedRequest(firstCompletedRequest);
@@ -241,6 +241,18 @@ public interface ServiceAdmin extends AsyncAdminMethods, AliasAdmin<PublishedSer
     @Secured(stereotype=SET_PROPERTY_BY_UNIQUE_ATTRIBUTE)
     void setTracingEnabled(Goid serviceGoid, boolean tracingEnabled) throws UpdateException;
 
+    /**
+     * Get the assertion profiling statistics for the policy of the specified service.
+     *
+     * @param serviceGoid the GOID of the published service.  Must not be null.
+     * @return the statistics for each profiled assertion ordered by assertion ordinal.  May be empty but never null.
+     * @throws FindException if the service could not be found.
+     */
+    @Secured(stereotype=GET_PROPERTY_BY_ID, relevantArg=0)
+    @Transactional(readOnly=true)
+    @Administrative(licensed=false, background=true)
+    List<AssertionProfileStatistics> getAssertionProfile(Goid serviceGoid) throws FindException;
+
     /**
      * Validate the service policy and return the policy validation result. Only the server side validation rules
      * are invoked here.
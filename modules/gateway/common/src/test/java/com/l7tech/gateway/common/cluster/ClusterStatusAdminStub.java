@@ -1,5 +1,6 @@
 package com.l7tech.gateway.common.cluster;
 
+import com.l7tech.common.io.CacheStatistics;
 import com.l7tech.common.io.failover.FailoverStrategy;
 import com.l7tech.common.io.failover.FailoverStrategyFactory;
 import com.l7tech.gateway.common.InvalidLicenseException;
@@ -126,6 +127,11 @@ public class ClusterStatusAdminStub implements ClusterStatusAdmin {
         return serviceUsage;
     }
 
+    @Override
+    public Collection<CacheStatistics> getCacheStatistics() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void changeNodeName(String nodeid, String newName) throws UpdateException {
         throw new UnsupportedOperationException();
@@ -68,4 +68,19 @@ public class JsonDataToCustomConverterTest {
         assertEquals(jsonObjInputChild2.get("firstName"), "Peter");
         assertEquals(jsonObjInputChild2.get("lastName"), "Jones");
     }
+
+    @Test
+    public void testJsonObjectCopied() throws Exception {
+        final CustomJsonData jsonData = new JsonDataToCustomConverter(JSONFactory.INSTANCE.newJsonData(JSON_SOURCE));
+
+        @SuppressWarnings("unchecked")
+        final Map<String,Object> jsonObjRoot = (Map<String,Object>) jsonData.getJsonObject();
+        ((List) jsonObjRoot.get("input")).clear();
+        jsonObjRoot.put("other", "value");
+
+        final Map secondRoot = (Map) jsonData.getJsonObject();
+        assertNotSame(jsonObjRoot, secondRoot);
+        assertEquals(1, secondRoot.size());
+        assertEquals(3, ((List) secondRoot.get("input")).size());
+    }
 }
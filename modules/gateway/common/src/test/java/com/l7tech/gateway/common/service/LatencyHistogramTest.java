@@ -0,0 +1,116 @@
+package com.l7tech.gateway.common.service;
+
+import com.l7tech.objectmodel.Goid;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals( 0L, histogram.getTotalCount() );
+        assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+        assertEquals( histogram, LatencyHistogram.fromBytes( null ) );
+        assertEquals( histogram, LatencyHistogram.fromBytes( histogram.toBytes() ) );
+    }
+
+    @Test
+    public void testBucketIndex() {
+        assertEquals( 0, LatencyHistogram.bucketIndex( -5 ) );
+        assertEquals( 15, LatencyHistogram.bucketIndex( 15 ) );
+        assertEquals( 16, LatencyHistogram.bucketIndex( 16 ) );
+        assertEquals( 16, LatencyHistogram.bucketIndex( 17 ) );
+        assertEquals( 17, LatencyHistogram.bucketIndex( 18 ) );
+        assertEquals( LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex( Integer.MAX_VALUE ) );
+        for ( int value = 1; value < 1000000; value += 7 ) {
+            assertTrue( "bucket order", LatencyHistogram.bucketIndex( value ) >= LatencyHistogram.bucketIndex( value - 1 ) );
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for ( int i = 1; i <= 1000; i++ ) {
+            histogram.recordValue( i );
+        }
+        assertEquals( 1000L, histogram.getTotalCount() );
+        assertEquals( 1, histogram.getValueAtPercentile( 0 ) );
+        assertEquals( 500.0, histogram.getValueAtPercentile( 50 ), 500.0 / 16 );
+        assertEquals( 950.0, histogram.getValueAtPercentile( 95 ), 950.0 / 16 );
+        assertEquals( 990.0, histogram.getValueAtPercentile( 99 ), 990.0 / 16 );
+        assertEquals( 1000.0, histogram.getValueAtPercentile( 100 ), 1000.0 / 16 );
+    }
+
+    @Test
+    public void testExactForSmallValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue( 3 );
+        histogram.recordValue( 7 );
+        assertEquals( 3, histogram.getValueAtPercentile( 50 ) );
+        assertEquals( 7, histogram.getValueAtPercentile( 99 ) );
+    }
+
+    @Test
+    public void testMergeAndBytes() {
+        final LatencyHistogram histogram1 = new LatencyHistogram();
+        final LatencyHistogram histogram2 = new LatencyHistogram();
+        final LatencyHistogram expected = new LatencyHistogram();
+        for ( int i = 0; i < 500; i++ ) {
+            histogram1.recordValue( i );
+            histogram2.recordValue( i * 1000 );
+            expected.recordValue( i );
+            expected.recordValue( i * 1000 );
+        }
+
+        final LatencyHistogram merged = LatencyHistogram.fromBytes( histogram1.toBytes() );
+        merged.merge( LatencyHistogram.fromBytes( histogram2.toBytes() ) );
+        assertEquals( expected, merged );
+        assertEquals( 1000L, merged.getTotalCount() );
+        assertTrue( "compact", merged.toBytes().length < LatencyHistogram.BUCKET_COUNT * 3 );
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidBytes() {
+        LatencyHistogram.fromBytes( new byte[]{ 1, (byte) 0x80 } );
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidBucketOffset() {
+        // bucket offset of 2^31 - 1 would overflow an int index
+        LatencyHistogram.fromBytes( new byte[]{ 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 1 } );
+    }
+
+    @Test
+    public void testMetricsBinMerge() {
+        final MetricsBin bin1 = bin( 10, 20 );
+        final MetricsBin bin2 = bin( 30, 400 );
+        bin1.merge( bin2 );
+
+        assertEquals( 4, bin1.getNumAttemptedRequest() );
+        assertEquals( 4L, LatencyHistogram.fromBytes( bin1.getFrontendResponseTimeHistogram() ).getTotalCount() );
+        assertEquals( Integer.valueOf( 10 ), bin1.getFrontendResponseTimePercentile( 0 ) );
+        assertEquals( Integer.valueOf( 400 ), bin1.getFrontendResponseTimePercentile( 99 ) );
+        assertNull( "no backend histogram", bin1.getBackendResponseTimePercentile( 99 ) );
+
+        final MetricsSummaryBin summary = new MetricsSummaryBin( Arrays.asList( bin( 1, 2 ), bin( 3, 4 ) ) );
+        assertEquals( Integer.valueOf( 2 ), summary.getFrontendResponseTimePercentile( 50 ) );
+        assertEquals( Integer.valueOf( 4 ), summary.getFrontendResponseTimePercentile( 100 ) );
+    }
+
+    private static MetricsBin bin( final int frontTime1, final int frontTime2 ) {
+        final MetricsBin bin = new MetricsBin( 0L, 5000, MetricsBin.RES_FINE, "node", new Goid( 0, 1 ) );
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue( frontTime1 );
+        histogram.recordValue( frontTime2 );
+        bin.setFrontendResponseTimeHistogram( histogram.toBytes() );
+        bin.setMinFrontendResponseTime( Math.min( frontTime1, frontTime2 ) );
+        bin.setMaxFrontendResponseTime( Math.max( frontTime1, frontTime2 ) );
+        bin.setSumFrontendResponseTime( frontTime1 + frontTime2 );
+        bin.setNumAttemptedRequest( 2 );
+        return bin;
+    }
+}
@@ -1,11 +1,10 @@
 package com.l7tech.server.processcontroller.monitoring.notification;
 
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.server.management.config.monitoring.EmailNotificationRule;
 import com.l7tech.server.management.config.monitoring.HttpNotificationRule;
 import com.l7tech.server.management.config.monitoring.NotificationRule;
 import com.l7tech.server.management.config.monitoring.SnmpTrapNotificationRule;
-import com.whirlycott.cache.Cache;
 
 import java.lang.reflect.Constructor;
 import java.util.Collections;
@@ -19,11 +18,11 @@ public final class NotifierFactory {
         put(HttpNotificationRule.class, HttpNotifier.class);
     }});
 
-    private final Cache notifierCache = WhirlycacheFactory.createCache("notifierCache", 500, 9931, WhirlycacheFactory.POLICY_LRU);
+    private final SegmentedCache<NotificationRule,Notifier> notifierCache = new SegmentedCache<NotificationRule,Notifier>("notifierCache", 500L);
 
     public <RT extends NotificationRule> Notifier<RT> getNotifier(RT rule) {
         @SuppressWarnings({"unchecked"})
-        Notifier<RT> notifier = (Notifier<RT>) notifierCache.retrieve(rule);
+        Notifier<RT> notifier = (Notifier<RT>) notifierCache.get(rule);
         if (notifier != null) return notifier;
 
         final Class<? extends Notifier> notifierClass = registry.get(rule.getClass());
@@ -32,7 +31,7 @@ public final class NotifierFactory {
             Constructor<? extends Notifier> ctor = notifierClass.getConstructor(rule.getClass());
             //noinspection unchecked
             notifier = ctor.newInstance(rule);
-            notifierCache.store(rule, notifier);
+            notifierCache.put(rule, notifier);
             return notifier;
         } catch (Exception e) {
             throw new IllegalArgumentException("Couldn't make Notifier", e);
@@ -7,6 +7,7 @@
 package com.l7tech.server;
 
 import com.l7tech.common.mime.HybridStashManager;
+import com.l7tech.common.mime.OffHeapStashManager;
 import com.l7tech.common.mime.StashManager;
 
 import java.io.File;
@@ -26,6 +27,7 @@ public final class DefaultStashManagerFactory implements StashManagerFactory {
     private static class ConfigHolder {
         private static final int DISK_THRESHOLD = ServerConfig.getInstance().getAttachmentDiskThreshold();
         private static final File ATTACHMENT_DIR = ServerConfig.getInstance().getAttachmentDirectory();
+        private static final boolean OFF_HEAP = ServerConfig.getInstance().getBooleanProperty( ServerConfigParams.PARAM_ATTACHMENT_OFF_HEAP, true );
         private static final StashManagerFactory INSTANCE = new DefaultStashManagerFactory();
     }
 
@@ -39,14 +41,22 @@ public final class DefaultStashManagerFactory implements StashManagerFactory {
     }
 
     /**
-     * Create a new StashManager to use for some request.  A HybridStashManager will be created
+     * Create a new StashManager to use for some request.  An OffHeapStashManager will be created, or a
+     * HybridStashManager if off-heap stashing is disabled.
      *
      * @return a new StashManager instance.  Never null.
      */
     public StashManager createStashManager() {
-        StashManager stashManager = new HybridStashManager(ConfigHolder.DISK_THRESHOLD,
-                                                           ConfigHolder.ATTACHMENT_DIR,
-                                                           "att" + getStashFileUnique());
+        final StashManager stashManager;
+        if ( ConfigHolder.OFF_HEAP ) {
+            stashManager = new OffHeapStashManager(ConfigHolder.DISK_THRESHOLD,
+                                                   ConfigHolder.ATTACHMENT_DIR,
+                                                   "att" + getStashFileUnique());
+        } else {
+            stashManager = new HybridStashManager(ConfigHolder.DISK_THRESHOLD,
+                                                  ConfigHolder.ATTACHMENT_DIR,
+                                                  "att" + getStashFileUnique());
+        }
         return stashManager;
     }
 }
@@ -42,6 +42,7 @@ import com.l7tech.server.policy.PolicyCache;
 import com.l7tech.server.policy.PolicyMetadata;
 import com.l7tech.server.policy.PolicyVersionException;
 import com.l7tech.server.policy.ServerPolicyHandle;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.policy.assertion.ServerAssertion;
 import com.l7tech.server.service.ServiceCache;
 import com.l7tech.server.service.ServiceMetricsServices;
@@ -57,6 +58,8 @@ import com.l7tech.xml.SoapFaultLevel;
 import com.l7tech.xml.soap.SoapFaultUtils;
 import com.l7tech.xml.soap.SoapUtil;
 import com.l7tech.xml.soap.SoapVersion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.support.ApplicationObjectSupport;
@@ -76,6 +79,8 @@ import java.util.Collections;
 import java.util.Set;
 import java.util.TimerTask;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -317,6 +322,142 @@ public class MessageProcessor extends ApplicationObjectSupport implements Initia
         }
     }
 
+    /**
+     * Process a message, allowing policy evaluation to be suspended.
+     * <p/>
+     * This is the same as {@link #processMessage(PolicyEnforcementContext)} except that evaluation of the service
+     * policy may be suspended by a {@link com.l7tech.server.policy.assertion.SuspendableServerAssertion}, such as a
+     * non-blocking routing assertion, so that the calling thread is released. In this case null is returned and
+     * processing continues on a thread from the executor of the given resumption when the policy is resumed.
+     * <p/>
+     * A new audit context is created for message processing and is flushed when processing finishes, before the
+     * callback of the resumption is invoked with the status or exception. The callback is only invoked if processing
+     * was suspended, and the caller must not use or close the context until then.
+     *
+     * @param context the PEC to process.  Required.
+     * @param resumption the resumption for suspended processing.  Required.
+     * @return the AssertionStatus from policy evaluation, or null if processing was suspended.
+     * @throws IOException if an IOException occurs during service resolution or policy processing.
+     * @throws PolicyAssertionException if a policy assertion is misconfigured.
+     * @throws PolicyVersionException if the request arrived over HTTP with a policy version header that indicates use of an obsolete version of the resolved policy.
+     * @throws LicenseException if a required operation is not permitted by the current license
+     * @throws MethodNotAllowedException if the request's HTTP method is not permitted by the current port or policy
+     * @throws MessageProcessingSuspendedException thrown if message processing is suspended due to a full audit audit log
+     * @see #processMessage(PolicyEnforcementContext)
+     */
+    @Nullable
+    public AssertionStatus processMessage(final PolicyEnforcementContext context, final AssertionResumption resumption)
+        throws IOException, PolicyAssertionException, PolicyVersionException, LicenseException, MethodNotAllowedException, MessageProcessingSuspendedException
+    {
+        final AuditContext auditContext = auditContextFactory.createAuditContext();
+        final AssertionResumption messageResumption = new AssertionResumption(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                resumption.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            AuditContextFactory.doWithCustomAuditContext(auditContext, new Callable<Void>() {
+                                @Override
+                                public Void call() {
+                                    command.run();
+                                    return null;
+                                }
+                            });
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            // Shouldn't be possible
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            }
+        }, new AssertionResumption.Callback() {
+            @Override
+            public void completed(@NotNull final AssertionStatus status) {
+                try {
+                    messageProcessed(context, auditContext, status);
+                } catch (Throwable t) {
+                    resumption.getCallback().failed(t);
+                    return;
+                }
+                resumption.getCallback().completed(status);
+            }
+
+            @Override
+            public void failed(@NotNull final Throwable failure) {
+                try {
+                    messageProcessed(context, auditContext, AssertionStatus.UNDEFINED);
+                } catch (Throwable t) {
+                    logger.log(Level.WARNING, "Error completing message processing: " + ExceptionUtils.getMessage(t), ExceptionUtils.getDebugException(t));
+                }
+                resumption.getCallback().failed(failure);
+            }
+        });
+
+        AssertionStatus status = AssertionStatus.UNDEFINED;
+        try {
+            status = AuditContextFactory.doWithCustomAuditContext(auditContext, new Callable<AssertionStatus>() {
+                @Override
+                public AssertionStatus call() throws Exception {
+                    context.setAuditContext(auditContext);
+                    return reallyProcessMessage(context, messageResumption);
+                }
+            });
+            return status;
+        } catch (IOException |
+                 PolicyAssertionException |
+                 PolicyVersionException |
+                 LicenseException |
+                 MethodNotAllowedException |
+                 MessageProcessingSuspendedException |
+                 RuntimeException e)
+        {
+            throw e;
+        } catch (Exception e) {
+            // Shouldn't be possible
+            throw new RuntimeException(e);
+        } finally {
+            // once suspended processing is completed by the resumption callback
+            if (status != null) messageProcessed(context, auditContext, status);
+        }
+    }
+
+    /**
+     * Post process and audit a message for which processing was started by
+     * {@link #processMessage(PolicyEnforcementContext, AssertionResumption)}.
+     */
+    private void messageProcessed(final PolicyEnforcementContext context, final AuditContext auditContext, final AssertionStatus status) {
+        try {
+            AuditContextFactory.doWithCustomAuditContext(auditContext, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        doRequestPostProcessing(context, status);
+
+                        /*
+                        * 5.0 Audit Request Id
+                        * need to extract the required context variables from PEC used in the audit logging
+                        */
+                        String[] ctxVariables = AuditLogFormatter.getContextVariablesUsed();
+                        if (ctxVariables != null && ctxVariables.length > 0) {
+                            auditContext.setContextVariables(context.getVariableMap(ctxVariables, auditor));
+                        }
+                    } finally {
+                        AuditContextFactory.flushAuditContext(auditContext, messageSummaryAuditFactory.makeEvent(context, status));
+                    }
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Shouldn't be possible
+            throw new RuntimeException(e);
+        }
+    }
+
     private AssertionStatus reallyProcessMessage(final PolicyEnforcementContext context)
         throws IOException, PolicyAssertionException, PolicyVersionException, LicenseException, MethodNotAllowedException, MessageProcessingSuspendedException
     {
@@ -331,26 +472,75 @@ public class MessageProcessor extends ApplicationObjectSupport implements Initia
             return mc.processRequest();
 
         } catch (PublishedService.ServiceException se) {
-            auditor.logAndAudit(MessageProcessingMessages.EXCEPTION_SEVERE_WITH_MORE_INFO, new String[]{ExceptionUtils.getMessage(se)}, se);
-            context.setPolicyResult(AssertionStatus.SERVER_ERROR);
-            return AssertionStatus.SERVER_ERROR;
+            return processingError(context, ExceptionUtils.getMessage(se), se);
         } catch (ServiceResolutionException sre) {
-            auditor.logAndAudit(MessageProcessingMessages.EXCEPTION_SEVERE_WITH_MORE_INFO, new String[]{ExceptionUtils.getMessage(sre)}, ExceptionUtils.getDebugException(sre));
-            context.setPolicyResult(AssertionStatus.SERVER_ERROR);
-            return AssertionStatus.SERVER_ERROR;
+            return processingError(context, ExceptionUtils.getMessage(sre), ExceptionUtils.getDebugException(sre));
         } catch (SAXException e) {
-            auditor.logAndAudit(MessageProcessingMessages.EXCEPTION_SEVERE_WITH_MORE_INFO, new String[]{ExceptionUtils.getMessage(e)}, e);
-            context.setPolicyResult(AssertionStatus.SERVER_ERROR);
-            return AssertionStatus.SERVER_ERROR;
+            return processingError(context, ExceptionUtils.getMessage(e), e);
         } catch (VariableNameSyntaxException e) {
-            auditor.logAndAudit(MessageProcessingMessages.EXCEPTION_SEVERE_WITH_MORE_INFO, new String[]{"Missing or invalid context variable: " + ExceptionUtils.getMessage(e)}, ExceptionUtils.getDebugException(e));
-            context.setPolicyResult(AssertionStatus.SERVER_ERROR);
-            return AssertionStatus.SERVER_ERROR;
+            return processingError(context, "Missing or invalid context variable: " + ExceptionUtils.getMessage(e), ExceptionUtils.getDebugException(e));
         } finally {
             ResourceUtils.closeQuietly(mc);
         }
     }
 
+    private AssertionStatus reallyProcessMessage(final PolicyEnforcementContext context, final AssertionResumption resumption)
+        throws IOException, PolicyAssertionException, PolicyVersionException, LicenseException, MethodNotAllowedException, MessageProcessingSuspendedException
+    {
+        doRequestPreChecks( context );
+
+        // set gateway metrics publisher
+        GatewayMetricsUtils.setPublisher(context, isRelayGatewayMetricsEnable() ? gatewayMetricsEventsPublisher : null);
+
+        final MessageProcessingContext mc = new MessageProcessingContext(context);
+
+        boolean suspended = false;
+        try {
+            final AssertionStatus status = mc.processRequest(resumption.withCallback(new AssertionResumption.Callback() {
+                @Override
+                public void completed(@NotNull final AssertionStatus status) {
+                    ResourceUtils.closeQuietly(mc);
+                    resumption.getCallback().completed(status);
+                }
+
+                @Override
+                public void failed(@NotNull final Throwable failure) {
+                    ResourceUtils.closeQuietly(mc);
+                    final AssertionStatus status;
+                    if (failure instanceof SAXException) {
+                        status = processingError(context, ExceptionUtils.getMessage(failure), failure);
+                    } else if (failure instanceof VariableNameSyntaxException) {
+                        status = processingError(context, "Missing or invalid context variable: " + ExceptionUtils.getMessage(failure), ExceptionUtils.getDebugException(failure));
+                    } else {
+                        resumption.getCallback().failed(failure);
+                        return;
+                    }
+                    resumption.getCallback().completed(status);
+                }
+            }));
+            suspended = status == null;
+            return status;
+
+        } catch (PublishedService.ServiceException se) {
+            return processingError(context, ExceptionUtils.getMessage(se), se);
+        } catch (ServiceResolutionException sre) {
+            return processingError(context, ExceptionUtils.getMessage(sre), ExceptionUtils.getDebugException(sre));
+        } catch (SAXException e) {
+            return processingError(context, ExceptionUtils.getMessage(e), e);
+        } catch (VariableNameSyntaxException e) {
+            return processingError(context, "Missing or invalid context variable: " + ExceptionUtils.getMessage(e), ExceptionUtils.getDebugException(e));
+        } finally {
+            // once suspended the message processing context is closed by the resumption callback
+            if (!suspended) ResourceUtils.closeQuietly(mc);
+        }
+    }
+
+    private AssertionStatus processingError(final PolicyEnforcementContext context, final String message, final Throwable exception) {
+        auditor.logAndAudit(MessageProcessingMessages.EXCEPTION_SEVERE_WITH_MORE_INFO, new String[]{message}, exception);
+        context.setPolicyResult(AssertionStatus.SERVER_ERROR);
+        return AssertionStatus.SERVER_ERROR;
+    }
+
     private void doRequestPreChecks(PolicyEnforcementContext context) throws LicenseException, MessageProcessingSuspendedException {
         context.setAuditLevel( DEFAULT_MESSAGE_AUDIT_LEVEL );
         // License check hook
@@ -588,24 +778,151 @@ public class MessageProcessor extends ApplicationObjectSupport implements Initia
                 }
                 completed = true;
             } finally {
-                debugManager.onMessageFinished(context, context.getPolicyResult());
+                status = messageFinished( status, completed );
+            }
 
-                // Process message completed
-                if ( status == AssertionStatus.NONE && completed ) {
-                    status = processMessageCompletedPolicy( false );
-                } else {
-                    // If there is an exception or policy failure then run the
-                    // completed policy but an exception/failure should not be
-                    // used
-                    processMessageCompletedPolicy( true );
+            return status;
+        }
+
+        /**
+         * Process the request, allowing evaluation of the service policy to be suspended.
+         *
+         * @param resumption The resumption for the outcome of processing if suspended
+         * @return The status or null if processing was suspended
+         */
+        @Nullable
+        private AssertionStatus processRequest( final AssertionResumption resumption )
+            throws ServiceResolutionException, IOException, MethodNotAllowedException, PolicyVersionException, PublishedService.ServiceException, PolicyAssertionException, SAXException
+        {
+            boolean completed = false;
+            boolean suspended = false;
+            AssertionStatus status = AssertionStatus.NONE;
+            try {
+                // Process message received policy
+                status = processMessageReceivedPolicy();
+                if ( status == AssertionStatus.NONE ) {
+                    // Process request
+                    status = reallyProcessRequest( resumption.withCallback( new AssertionResumption.Callback() {
+                        @Override
+                        public void completed( @NotNull final AssertionStatus status ) {
+                            final AssertionStatus result;
+                            try {
+                                result = messageFinished( status, true );
+                            } catch ( Throwable t ) {
+                                resumption.getCallback().failed( t );
+                                return;
+                            }
+                            resumption.getCallback().completed( result );
+                        }
+
+                        @Override
+                        public void failed( @NotNull final Throwable failure ) {
+                            if ( failure instanceof RejectedExecutionException ) {
+                                // processing could not be resumed, so no further policy is run on this thread
+                                debugManager.onMessageFinished( context, context.getPolicyResult() );
+                            } else {
+                                try {
+                                    messageFinished( AssertionStatus.NONE, false );
+                                } catch ( Throwable t ) {
+                                    logger.log( Level.WARNING, "Error running message completed policy: " + ExceptionUtils.getMessage( t ), ExceptionUtils.getDebugException( t ) );
+                                }
+                            }
+                            resumption.getCallback().failed( failure );
+                        }
+                    } ) );
+                    suspended = status == null;
                 }
+                completed = true;
+            } finally {
+                // once suspended the message is finished by the resumption callback
+                if ( !suspended ) status = messageFinished( status, completed );
             }
 
             return status;
         }
 
+        private AssertionStatus messageFinished( final AssertionStatus status, final boolean completed ) throws IOException, PolicyAssertionException {
+            debugManager.onMessageFinished(context, context.getPolicyResult());
+
+            // Process message completed
+            if ( status == AssertionStatus.NONE && completed ) {
+                return processMessageCompletedPolicy( false );
+            } else {
+                // If there is an exception or policy failure then run the
+                // completed policy but an exception/failure should not be
+                // used
+                processMessageCompletedPolicy( true );
+                return status;
+            }
+        }
+
         private AssertionStatus reallyProcessRequest()
                 throws ServiceResolutionException, IOException, MethodNotAllowedException, PolicyVersionException, PublishedService.ServiceException, PolicyAssertionException, SAXException
+        {
+            final AssertionStatus status = startRequest();
+            if ( status != null ) {
+                return status;
+            }
+
+            return finishRequest( serverPolicy.checkRequest( context ) );
+        }
+
+        @Nullable
+        private AssertionStatus reallyProcessRequest( final AssertionResumption resumption )
+                throws ServiceResolutionException, IOException, MethodNotAllowedException, PolicyVersionException, PublishedService.ServiceException, PolicyAssertionException, SAXException
+        {
+            final AssertionStatus status = startRequest();
+            if ( status != null ) {
+                return status;
+            }
+
+            final HybridDiagnosticContext.SavedDiagnosticContext diagnosticContext = HybridDiagnosticContext.save();
+            final AssertionStatus policyStatus = serverPolicy.checkRequest( context, resumption.withExecutor( new Executor() {
+                @Override
+                public void execute( final Runnable command ) {
+                    resumption.getExecutor().execute( new Runnable() {
+                        @Override
+                        public void run() {
+                            HybridDiagnosticContext.doWithContext( diagnosticContext, new Functions.Nullary<Void>() {
+                                @Override
+                                public Void call() {
+                                    command.run();
+                                    return null;
+                                }
+                            } );
+                        }
+                    } );
+                }
+            } ).withCallback( new AssertionResumption.Callback() {
+                @Override
+                public void completed( @NotNull final AssertionStatus status ) {
+                    final AssertionStatus result;
+                    try {
+                        result = finishRequest( status );
+                    } catch ( Throwable t ) {
+                        resumption.getCallback().failed( t );
+                        return;
+                    }
+                    resumption.getCallback().completed( result );
+                }
+
+                @Override
+                public void failed( @NotNull final Throwable failure ) {
+                    resumption.getCallback().failed( failure );
+                }
+            } ) );
+
+            return policyStatus == null ? null : finishRequest( policyStatus );
+        }
+
+        /**
+         * Resolve the service and run the policies that precede the service policy.
+         *
+         * @return The status if processing should not continue, or null to run the service policy
+         */
+        @Nullable
+        private AssertionStatus startRequest()
+                throws ServiceResolutionException, IOException, MethodNotAllowedException, PolicyVersionException, PublishedService.ServiceException, PolicyAssertionException, SAXException
         {
             // Policy Verification Step
             AssertionStatus serviceResolutionStatus = resolveService();
@@ -646,8 +963,16 @@ public class MessageProcessor extends ApplicationObjectSupport implements Initia
                 maybeEnableTracing();
 
             debugManager.onMessageArrived(context, context.getService().getPolicy().getGoid());
-            status = serverPolicy.checkRequest(context);
+            return null;
+        }
 
+        /**
+         * Run the policies and security processing that follow the service policy.
+         *
+         * @param status The status of the service policy
+         * @return The status
+         */
+        private AssertionStatus finishRequest( AssertionStatus status ) throws IOException, PolicyAssertionException, SAXException {
             // Execute deferred actions for request, then response
             if (status == AssertionStatus.NONE) {
                 status = doDeferredAssertions(context);
@@ -21,6 +21,7 @@ public interface ServerConfigParams {
     String PARAM_SSG_LOG_FILE_PATTERN_TEMPLATE = "logFileTemplate";
     String PARAM_ATTACHMENT_DIRECTORY = "attachmentDirectory";
     String PARAM_ATTACHMENT_DISK_THRESHOLD = "attachmentDiskThreshold";
+    String PARAM_ATTACHMENT_OFF_HEAP = "attachmentOffHeap";
     String PARAM_MESSAGECACHE_DIRECTORY = "messageCacheDirectory";
     String PARAM_MESSAGECACHE_RESETGENERATION = "messageCacheResetGeneration";
     String PARAM_MESSAGECACHE_DISK_THRESHOLD = "messageCacheDiskThreshold";
@@ -41,6 +42,13 @@ public interface ServerConfigParams {
     String PARAM_AUDIT_MESSAGE_SAVE_TO_INTERNAL = "auditMessageSaveToInternal";
     String PARAM_AUDIT_ADMIN_SAVE_TO_INTERNAL = "auditAdminSaveToInternal";
     String PARAM_AUDIT_SYSTEM_SAVE_TO_INTERNAL = "auditSystemSaveToInternal";
+    String PARAM_AUDIT_WRITER_ASYNC = "auditWriterAsync";
+    String PARAM_AUDIT_WRITER_QUEUE_SIZE = "auditWriterQueueSize";
+    String PARAM_AUDIT_WRITER_BATCH_SIZE = "auditWriterBatchSize";
+    String PARAM_AUDIT_WRITER_OVERFLOW = "auditWriterOverflow";
+    String PARAM_AUDIT_WRITER_RETRY_INTERVAL = "auditWriterRetryInterval";
+    String PARAM_AUDIT_JOURNAL_DIRECTORY = "auditJournalDirectory";
+    String PARAM_AUDIT_JOURNAL_MAX_SIZE = "auditJournalMaxSize";
     String PARAM_AUDIT_ASSERTION_STATUS_ENABLED = "auditAssertionStatusEnabled";
     String PARAM_AUDIT_ASSOCIATED_LOGS_THRESHOLD = "auditAssociatedLogsThreshold";
     String PARAM_AUDIT_USE_ASSOCIATED_LOGS_THRESHOLD = "auditAssociatedLogsThresholdRespected";
@@ -201,6 +209,9 @@ public interface ServerConfigParams {
     String PARAM_DEBUG_SSL_VALUE = "ioDebugSslValue";
     String PARAM_LOG_STDOUT_LEVEL = "logStdOutLevel";
     String PARAM_LOG_STDERR_LEVEL = "logStdErrLevel";
+    String PARAM_LOG_SINK_ASYNC = "logSinkAsync";
+    String PARAM_LOG_SINK_BUFFER_SIZE = "logSinkBufferSize";
+    String PARAM_LOG_SINK_FULL_POLICY = "logSinkFullPolicy";
     String PARAM_IO_HTTP_RESPONSE_STREAM_UNLIMITED = "ioHttpResponseStreamUnlimited";
     String PARAM_IO_HTTP_RESPONSE_STREAMING = "ioHttpResponseStreaming";
     String PARAM_IO_JMS_MESSAGE_MAX_BYTES = "ioJmsMessageMaxBytes";
@@ -1,6 +1,6 @@
 package com.l7tech.server;
 
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.gateway.common.security.keystore.SsgKeyEntry;
 import com.l7tech.objectmodel.FindException;
 import com.l7tech.objectmodel.ObjectNotFoundException;
@@ -20,7 +20,6 @@ import com.l7tech.util.Background;
 import com.l7tech.util.Config;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.SoapConstants;
-import com.whirlycott.cache.Cache;
 import org.springframework.context.ApplicationEvent;
 
 import javax.security.auth.x500.X500Principal;
@@ -42,7 +41,7 @@ public class TrustedCertificateResolver implements SecurityTokenResolver, PostSt
     private static final Logger logger = Logger.getLogger(TrustedCertificateResolver.class.getName());
     private final TrustedCertManager trustedCertManager;
 
-    private final Cache encryptedKeyCache;
+    private final SegmentedCache<SecretKeyKey,byte[]> encryptedKeyCache;
     private final AtomicBoolean encryptedKeyCacheEnabled = new AtomicBoolean();
 
     private final SsgKeyStoreManager keyStoreManager;
@@ -68,10 +67,7 @@ public class TrustedCertificateResolver implements SecurityTokenResolver, PostSt
         final int csize = config.getIntProperty( ServerConfigParams.PARAM_EPHEMERAL_KEY_CACHE_MAX_ENTRIES, defaultSize );
         encryptedKeyCacheEnabled.set(csize > 0);
         final int cacheSize = encryptedKeyCacheEnabled.get() ? csize : defaultSize;
-        encryptedKeyCache = WhirlycacheFactory.createCache("Ephemeral key cache",
-                                                           cacheSize,
-                                                           127,
-                                                           WhirlycacheFactory.POLICY_LRU);
+        encryptedKeyCache = new SegmentedCache<SecretKeyKey,byte[]>("Ephemeral key cache", (long) cacheSize);
         logger.info("Initializing ephemeral key cache with size " + cacheSize);
 
         Background.scheduleRepeated(new TimerTask() {
@@ -232,14 +228,14 @@ public class TrustedCertificateResolver implements SecurityTokenResolver, PostSt
     public byte[] getSecretKeyByTokenIdentifier( final String type,
                                                  final String identifier ) {
         if (!encryptedKeyCacheEnabled.get()) return null;
-        return (byte[])encryptedKeyCache.retrieve( new SecretKeyKey( type, identifier ) );
+        return encryptedKeyCache.get( new SecretKeyKey( type, identifier ) );
     }
 
     @Override
     public void putSecretKeyByTokenIdentifier( final String type,
                                                final String identifier,
                                                final byte[] secretKey ) {
-        if (encryptedKeyCacheEnabled.get()) encryptedKeyCache.store( new SecretKeyKey( type, identifier ), secretKey);
+        if (encryptedKeyCacheEnabled.get()) encryptedKeyCache.put( new SecretKeyKey( type, identifier ), secretKey);
     }
 
     /**
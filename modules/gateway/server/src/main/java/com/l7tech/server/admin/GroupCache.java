@@ -1,14 +1,13 @@
 package com.l7tech.server.admin;
 
 import com.l7tech.identity.*;
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.objectmodel.EntityType;
 import com.l7tech.objectmodel.Goid;
 import com.l7tech.objectmodel.IdentityHeader;
 import com.l7tech.objectmodel.FindException;
 import com.l7tech.util.Either;
 import com.l7tech.util.ExceptionUtils;
-import com.whirlycott.cache.Cache;
 
 import java.util.Map;
 import java.util.Set;
@@ -32,13 +31,13 @@ class GroupCache {
     private final AtomicInteger cacheMaxTime = new AtomicInteger();
     private final AtomicInteger cacheMaxGroups = new AtomicInteger();
     private final Map<Goid,Long> providerInvalidation = new ConcurrentHashMap<Goid,Long>();
-    private final Cache cache;
+    private final SegmentedCache<CacheKey,Object> cache;
     
     GroupCache( final String name, final int cacheMaxSize, final int cacheMaxTime, final int cacheMaxGroups ){
         this.cacheMaxTime.set(cacheMaxTime);
         this.cacheMaxGroups.set(cacheMaxGroups);
         cache = cacheMaxSize < 1 ? null :
-                WhirlycacheFactory.createCache(name, cacheMaxSize, 293, WhirlycacheFactory.POLICY_LFU);
+                new SegmentedCache<CacheKey,Object>(name, (long) cacheMaxSize);
     }
 
     /*
@@ -106,7 +105,7 @@ class GroupCache {
 
         CacheEntry groups = null;
 
-        final Object cachedObj = cache.retrieve(ckey);
+        final Object cachedObj = cache.get(ckey);
         if( cachedObj != null && cachedObj instanceof CacheEntry ){
             groups = (CacheEntry) cachedObj;
         }
@@ -199,7 +198,7 @@ class GroupCache {
                 count++;
             }
             CacheEntry<Set<IdentityHeader>> groupPrincipals = new CacheEntry<Set<IdentityHeader>>(groupSet);
-            this.cache.store(ckey, groupPrincipals);
+            this.cache.put(ckey, groupPrincipals);
             if (logger.isLoggable(Level.FINE))
                 logger.log(Level.FINE,
                            "Cached group membership principals for user/group {0} on IdP \"{1}\"",
@@ -213,7 +212,7 @@ class GroupCache {
 
     /*Only used by unit tests*/
     void dispose() {
-        WhirlycacheFactory.shutdown(cache);
+        if (cache != null) cache.shutdown();
     }
 
     public static class CacheKey {
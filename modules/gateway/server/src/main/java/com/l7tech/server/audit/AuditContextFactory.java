@@ -25,6 +25,7 @@ public class AuditContextFactory {
     private final AuditLogListener listener;
     private Config config;
     private AuditRecordManager auditRecordManager;
+    private AuditRecordWriter auditRecordWriter;
     private String nodeId;
     private AuditPolicyEvaluator auditPolicyEvaluator;
     private AuditFilterPolicyManager auditFilterPolicyManager;
@@ -46,6 +47,7 @@ public class AuditContextFactory {
      */
     void activateServerAuditing(Config config,
                                 AuditRecordManager auditRecordManager,
+                                AuditRecordWriter auditRecordWriter,
                                 String nodeId,
                                 AuditPolicyEvaluator auditPolicyEvaluator,
                                 AuditFilterPolicyManager auditFilterPolicyManager,
@@ -53,6 +55,7 @@ public class AuditContextFactory {
     {
         this.config = config;
         this.auditRecordManager = auditRecordManager;
+        this.auditRecordWriter = auditRecordWriter;
         this.nodeId = nodeId;
         this.auditPolicyEvaluator = auditPolicyEvaluator;
         this.auditFilterPolicyManager = auditFilterPolicyManager;
@@ -103,6 +106,35 @@ public class AuditContextFactory {
         }
     }
 
+    /**
+     * Create a new audit context that is not the active context for any thread.
+     * <p/>
+     * This is for operations that do not complete on the thread that started them, such as suspended policy
+     * evaluation. The context can be made active using {@link #doWithCustomAuditContext(AuditContext, java.util.concurrent.Callable)}
+     * on each thread that performs part of the operation and must be flushed using {@link #flushAuditContext(AuditContext, AuditRecord)}
+     * once the operation has completed.
+     *
+     * @return a new audit context.  Never null.
+     */
+    @NotNull
+    public AuditContext createAuditContext() {
+        return newContext();
+    }
+
+    /**
+     * Flush an audit context that was created using {@link #createAuditContext()}.
+     *
+     * @param context the audit context to flush.  Required.
+     * @param auditRecord audit record that will be set just before the context is flushed.  Required.
+     */
+    public static void flushAuditContext(@NotNull AuditContext context, @NotNull AuditRecord auditRecord) {
+        if (context instanceof AuditContextImpl) {
+            final AuditContextImpl acImpl = (AuditContextImpl) context;
+            acImpl.setCurrentRecord(auditRecord);
+            acImpl.flush();
+        }
+    }
+
     /**
      * Emit the specified audit record immediately using a new audit context, with no audit details, without affecting the current
      * audit context (if any).
@@ -242,6 +274,6 @@ public class AuditContextFactory {
     protected AuditContext newContext() {
         if (!readyToCreateActiveContexts)
             return createLogOnlyAuditContext();
-        return new AuditContextImpl(config, auditRecordManager, auditPolicyEvaluator, auditFilterPolicyManager, nodeId, keystore, listener);
+        return new AuditContextImpl(config, auditRecordManager, auditRecordWriter, auditPolicyEvaluator, auditFilterPolicyManager, nodeId, keystore, listener);
     }
 }
@@ -17,11 +17,13 @@ public class AuditContextFactoryActivator {
                                         String clusterNodeId,
                                         DefaultKeyImpl defaultKey,
                                         AuditPolicyEvaluator auditPolicyEvaluator,
-                                        AuditFilterPolicyManager auditFilterPolicyManager)
+                                        AuditFilterPolicyManager auditFilterPolicyManager,
+                                        AuditRecordWriter auditRecordWriter)
     {
         logger.info("Activating server audit subsystem");
         auditContextFactory.activateServerAuditing(serverConfig,
                                                           auditRecordManager,
+                                                          auditRecordWriter,
                                                           clusterNodeId,
                                                           auditPolicyEvaluator,
                                                           auditFilterPolicyManager,
@@ -62,6 +62,25 @@ public class AuditContextImpl implements AuditContext {
                              final String nodeId,
                              final DefaultKey defaultKey,
                              final AuditLogListener auditLogListener) {
+        this(config, auditRecordManager, null, auditPolicyEvaluator, auditFilterPolicyManager, nodeId, defaultKey, auditLogListener);
+    }
+
+    /**
+     * @param config   required
+     * @param auditRecordManager   required
+     * @param auditRecordWriter  may be null, if null records are saved using the audit record manager
+     * @param auditPolicyEvaluator  may be null
+     * @param auditFilterPolicyManager may be null
+     * @param nodeId should not be null
+     */
+    AuditContextImpl( final Config config,
+                      final AuditRecordManager auditRecordManager,
+                      final AuditRecordWriter auditRecordWriter,
+                      final AuditPolicyEvaluator auditPolicyEvaluator,
+                      final AuditFilterPolicyManager auditFilterPolicyManager,
+                      final String nodeId,
+                      final DefaultKey defaultKey,
+                      final AuditLogListener auditLogListener) {
         if ( config == null) {
             throw new IllegalArgumentException("Server Config is required");
         }
@@ -70,6 +89,7 @@ public class AuditContextImpl implements AuditContext {
         }
         this.config = config;
         this.auditRecordManager = auditRecordManager;
+        this.auditRecordWriter = auditRecordWriter;
         this.auditPolicyEvaluator = auditPolicyEvaluator;
         this.auditFilterPolicyManager = auditFilterPolicyManager;
         this.nodeId = nodeId;
@@ -400,6 +420,8 @@ public class AuditContextImpl implements AuditContext {
 
             if (update) {
                 auditRecordManager.update(rec);
+            } else if (auditRecordWriter != null) {
+                auditRecordWriter.save(rec);
             } else {
                 auditRecordManager.save(rec);
             }
@@ -634,6 +656,7 @@ public class AuditContextImpl implements AuditContext {
 
     private final Config config;
     private final AuditRecordManager auditRecordManager;
+    private final AuditRecordWriter auditRecordWriter;
     private final String nodeId;
     private AuditPolicyEvaluator auditPolicyEvaluator;
     private final AuditFilterPolicyManager auditFilterPolicyManager;
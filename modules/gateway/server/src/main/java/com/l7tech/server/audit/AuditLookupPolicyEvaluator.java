@@ -1,6 +1,6 @@
 package com.l7tech.server.audit;
 
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.gateway.common.audit.*;
 import com.l7tech.gateway.common.service.PublishedService;
 import com.l7tech.objectmodel.FindException;
@@ -15,7 +15,6 @@ import com.l7tech.server.message.PolicyEnforcementContextFactory;
 import com.l7tech.server.policy.PolicyCache;
 import com.l7tech.server.policy.ServerPolicyHandle;
 import com.l7tech.util.*;
-import com.whirlycott.cache.Cache;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.xml.sax.InputSource;
@@ -43,8 +42,8 @@ public class AuditLookupPolicyEvaluator implements PropertyChangeListener {
     private final Config config;
     private ValidatedConfig validatedConfig;
     private final PolicyCache policyCache;
-    private final Cache auditRecordsCache;  // guid -> audit record
-    private final Cache auditRecordsIDCache; // guid -> oid for retrieved audit record
+    private final SegmentedCache<String,AuditRecord> auditRecordsCache;  // guid -> audit record
+    private final SegmentedCache<String,Goid> auditRecordsIDCache; // guid -> oid for retrieved audit record
 //    private final AuditDetailPropertiesDomUnmarshaller detailUnmarshaller = new AuditDetailPropertiesDomUnmarshaller();
     private static final AtomicLong nextFakeOid = new AtomicLong(100);
     private long messageLimitSize;
@@ -54,9 +53,9 @@ public class AuditLookupPolicyEvaluator implements PropertyChangeListener {
         validatedConfig = new ValidatedConfig( config, logger);
         this.policyCache = policyCache;
         this.auditRecordsCache =
-                WhirlycacheFactory.createCache("AuditLookupPolicyCache", 10000, 120, WhirlycacheFactory.POLICY_LRU);
+                new SegmentedCache<String,AuditRecord>("AuditLookupPolicyCache", 10000L);
         this.auditRecordsIDCache =
-                WhirlycacheFactory.createCache("AuditLookupPolicyIDCache", 100000, 120, WhirlycacheFactory.POLICY_LRU);
+                new SegmentedCache<String,Goid>("AuditLookupPolicyIDCache", 100000L);
 
         validatedConfig.setMinimumValue( ServerConfigParams.PARAM_AUDIT_LOOKUP_CACHE_MESSAGE_LIMIT_SIZE, 0);
         validatedConfig.setMaximumValue( ServerConfigParams.PARAM_AUDIT_LOOKUP_CACHE_MESSAGE_LIMIT_SIZE, Long.MAX_VALUE);
@@ -193,7 +192,7 @@ public class AuditLookupPolicyEvaluator implements PropertyChangeListener {
                 Integer componentId = ExternalAuditsUtils.getIntegerData(componentId_var[i]);
                 String action = ExternalAuditsUtils.getStringData(action_var[i]);
 
-                AuditRecord record = (AuditRecord) auditRecordsCache.retrieve(id) ;
+                AuditRecord record = auditRecordsCache.get(id) ;
                 if(record == null){
                     // response length may be null
                     if(responseLength == null)
@@ -206,13 +205,13 @@ public class AuditLookupPolicyEvaluator implements PropertyChangeListener {
                             entityClass,entityId,status,requestId,serviceOid,operationName,authenticated,authenticationType,
                             requestLength,responseLength,requestZip,responseZip,responseStatus,latency,componentId,action,properties);
 
-                    Goid goid = (Goid)auditRecordsIDCache.retrieve(id);
+                    Goid goid = auditRecordsIDCache.get(id);
                     record.setGoid(goid == null ? GoidUpgradeMapper.mapOid(null,nextFakeOid.incrementAndGet()) : goid);
                     if(messageLimitSize > 0L && (requestLength > messageLimitSize || responseLength > messageLimitSize)){
-                        auditRecordsIDCache.store(id,goid);
+                        auditRecordsIDCache.put(id,goid);
                         largeMessageAudits.put(id, record);
                     }else{
-                        auditRecordsCache.store(id,record);
+                        auditRecordsCache.put(id,record);
                     }
                 }
 
@@ -259,11 +258,11 @@ public class AuditLookupPolicyEvaluator implements PropertyChangeListener {
                 AuditRecord record = getAuditRecordFromCache(id,null);
                 Goid goid ;
                 if(record == null ){
-                    Object get  = auditRecordsIDCache.retrieve(id);
+                    Object get  = auditRecordsIDCache.get(id);
                     if(get == null){
                         goid = GoidUpgradeMapper.mapOid(null,nextFakeOid.incrementAndGet());
                         // save guid -> fake id mapping
-                        auditRecordsIDCache.store(id,goid);
+                        auditRecordsIDCache.put(id,goid);
                     }else {
                         goid = (Goid)get;
                     }
@@ -504,7 +503,7 @@ public class AuditLookupPolicyEvaluator implements PropertyChangeListener {
     }
 
     private AuditRecord getAuditRecordFromCache(String guid, @Nullable Map<String , AuditRecord> otherSource){
-        Object get = auditRecordsCache.retrieve(guid);
+        Object get = auditRecordsCache.get(guid);
         if(otherSource!= null && get == null){
             return otherSource.get(guid);
         }
@@ -0,0 +1,279 @@
+package com.l7tech.server.audit;
+
+import com.l7tech.gateway.common.audit.AuditDetail;
+import com.l7tech.gateway.common.audit.AuditRecord;
+import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.ResourceUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only journal for audit records that could not be saved to the database.
+ *
+ * <p>Records are appended to the journal file as length and checksum prefixed
+ * serialized records. For replay the journal file is renamed so that records
+ * appended during the replay go to a new journal file. The replay position is
+ * saved after each replayed batch so that records are not replayed again after
+ * a restart (records from a batch that was saved but not marked as replayed
+ * will be saved again).</p>
+ *
+ * <p>A truncated or corrupt record ends the journal, any following records are
+ * discarded.</p>
+ */
+class AuditRecordJournal {
+
+    //- PACKAGE
+
+    /**
+     * Create a journal in the given directory.
+     *
+     * @param directory The journal directory (created if necessary)
+     */
+    AuditRecordJournal( @NotNull final File directory ) {
+        this.journalFile = new File( directory, JOURNAL_FILE );
+        this.replayFile = new File( directory, REPLAY_FILE );
+        this.positionFile = new File( directory, POSITION_FILE );
+        this.replayPosition = readPosition();
+        this.journalSize = journalFile.length();
+    }
+
+    /**
+     * Append the given records to the journal.
+     *
+     * @param records The records to append
+     * @param maxSize The maximum size of the journal in bytes
+     * @return true if the records were appended, false if the journal is full
+     * @throws IOException If an error occurs
+     */
+    synchronized boolean append( @NotNull final Collection<AuditRecord> records,
+                                 final long maxSize ) throws IOException {
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream( 4096 );
+        final DataOutputStream out = new DataOutputStream( frames );
+        for ( final AuditRecord record : records ) {
+            writeFrame( out, record );
+        }
+        out.flush();
+
+        if ( getSize() + (long) frames.size() > maxSize ) {
+            return false;
+        }
+
+        final File directory = journalFile.getParentFile();
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException( "Unable to create audit journal directory '" + directory.getAbsolutePath() + "'" );
+        }
+
+        FileOutputStream journalOut = null;
+        try {
+            journalOut = new FileOutputStream( journalFile, true );
+            frames.writeTo( journalOut );
+            journalOut.getFD().sync();
+        } finally {
+            ResourceUtils.closeQuietly( journalOut );
+        }
+        journalSize = journalFile.length();
+        return true;
+    }
+
+    /**
+     * Check if there are records in the journal.
+     *
+     * @return true if there are records to replay
+     */
+    synchronized boolean hasRecords() {
+        return replayFile.isFile() || journalSize > 0L;
+    }
+
+    /**
+     * Get the size of the journal.
+     *
+     * @return The size in bytes of the journal, including records being replayed.
+     */
+    synchronized long getSize() {
+        return journalSize + (replayFile.isFile() ? replayFile.length() - replayPosition : 0L);
+    }
+
+    /**
+     * Read the next batch of records to replay.
+     *
+     * <p>The same records are read again until the batch is marked as
+     * replayed.</p>
+     *
+     * @param max The maximum number of records to read
+     * @return The records (may be empty)
+     * @throws IOException If an error occurs
+     * @see #replayed()
+     */
+    @NotNull
+    synchronized List<AuditRecord> readBatch( final int max ) throws IOException {
+        if ( !replayFile.isFile() ) {
+            if ( journalSize <= 0L ) return Collections.emptyList();
+            if ( !journalFile.renameTo( replayFile ) ) {
+                throw new IOException( "Unable to rename audit journal '" + journalFile.getAbsolutePath() + "'" );
+            }
+            journalSize = 0L;
+            updatePosition( 0L );
+        }
+
+        final List<AuditRecord> records = new ArrayList<AuditRecord>( max );
+        long position = replayPosition;
+        DataInputStream in = null;
+        try {
+            final FileInputStream fileIn = new FileInputStream( replayFile );
+            fileIn.getChannel().position( position );
+            in = new DataInputStream( new BufferedInputStream( fileIn ) );
+
+            while ( records.size() < max ) {
+                final AuditRecord record = readFrame( in );
+                if ( record == null ) {
+                    position = replayFile.length();
+                    break;
+                }
+                records.add( record );
+                position = fileIn.getChannel().position() - (long) in.available();
+            }
+        } finally {
+            ResourceUtils.closeQuietly( in );
+        }
+
+        batchEndPosition = position;
+        return records;
+    }
+
+    /**
+     * Mark the last batch read as replayed.
+     *
+     * @throws IOException If an error occurs
+     */
+    synchronized void replayed() throws IOException {
+        if ( batchEndPosition >= replayFile.length() ) {
+            if ( !replayFile.delete() && replayFile.exists() ) {
+                throw new IOException( "Unable to delete replayed audit journal '" + replayFile.getAbsolutePath() + "'" );
+            }
+            if ( !positionFile.delete() && positionFile.exists() ) {
+                logger.warning( "Unable to delete audit journal position '" + positionFile.getAbsolutePath() + "'" );
+            }
+            replayPosition = 0L;
+        } else {
+            updatePosition( batchEndPosition );
+        }
+    }
+
+    //- PRIVATE
+
+    private static final Logger logger = Logger.getLogger( AuditRecordJournal.class.getName() );
+
+    private static final String JOURNAL_FILE = "audit.journal";
+    private static final String REPLAY_FILE = "audit.journal.replay";
+    private static final String POSITION_FILE = "audit.journal.position";
+    private static final int FRAME_MAGIC = 0x4C374144;
+
+    private final File journalFile;
+    private final File replayFile;
+    private final File positionFile;
+    private long journalSize;
+    private long replayPosition;
+    private long batchEndPosition;
+
+    private static void writeFrame( final DataOutputStream out,
+                                    final AuditRecord record ) throws IOException {
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream( 1024 );
+        final ObjectOutputStream objectOut = new ObjectOutputStream( serialized );
+        objectOut.writeObject( record );
+        objectOut.close();
+
+        final byte[] data = serialized.toByteArray();
+        out.writeInt( FRAME_MAGIC );
+        out.writeInt( data.length );
+        out.writeLong( checksum( data ) );
+        out.write( data );
+    }
+
+    /**
+     * Read a record, returns null at the end of the journal.
+     */
+    private AuditRecord readFrame( final DataInputStream in ) throws IOException {
+        final byte[] data;
+        try {
+            if ( in.readInt() != FRAME_MAGIC ) {
+                logger.warning( "Invalid record in audit journal '" + replayFile.getAbsolutePath() + "', remaining records discarded." );
+                return null;
+            }
+            final int length = in.readInt();
+            final long checksum = in.readLong();
+            if ( length < 0 || (long) length > replayFile.length() ) {
+                logger.warning( "Invalid record length in audit journal '" + replayFile.getAbsolutePath() + "', remaining records discarded." );
+                return null;
+            }
+            data = new byte[length];
+            in.readFully( data );
+            if ( checksum != checksum( data ) ) {
+                logger.warning( "Invalid record checksum in audit journal '" + replayFile.getAbsolutePath() + "', remaining records discarded." );
+                return null;
+            }
+        } catch ( EOFException e ) {
+            return null; // end of journal or truncated record
+        }
+
+        final AuditRecord record;
+        ObjectInputStream objectIn = null;
+        try {
+            objectIn = new ObjectInputStream( new ByteArrayInputStream( data ) );
+            record = (AuditRecord) objectIn.readObject();
+        } catch ( ClassNotFoundException e ) {
+            logger.log( Level.WARNING, "Unable to read record from audit journal, remaining records discarded: " + ExceptionUtils.getMessage( e ), ExceptionUtils.getDebugException( e ) );
+            return null;
+        } finally {
+            ResourceUtils.closeQuietly( objectIn );
+        }
+
+        // the detail link to the record is not serialized
+        for ( final AuditDetail detail : record.getDetails() ) {
+            detail.setAuditRecord( record );
+        }
+        return record;
+    }
+
+    private static long checksum( final byte[] data ) {
+        final CRC32 crc = new CRC32();
+        crc.update( data );
+        return crc.getValue();
+    }
+
+    private long readPosition() {
+        if ( positionFile.isFile() && replayFile.isFile() ) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream( new FileInputStream( positionFile ) );
+                return in.readLong();
+            } catch ( IOException e ) {
+                logger.log( Level.WARNING, "Unable to read audit journal position, journal will be replayed from the start: " + ExceptionUtils.getMessage( e ), ExceptionUtils.getDebugException( e ) );
+            } finally {
+                ResourceUtils.closeQuietly( in );
+            }
+        }
+        return 0L;
+    }
+
+    private void updatePosition( final long position ) throws IOException {
+        DataOutputStream out = null;
+        try {
+            final FileOutputStream fileOut = new FileOutputStream( positionFile );
+            out = new DataOutputStream( fileOut );
+            out.writeLong( position );
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            ResourceUtils.closeQuietly( out );
+        }
+        replayPosition = position;
+    }
+}
@@ -115,5 +115,17 @@ public interface AuditRecordManager extends EntityManager<AuditRecord, AuditReco
     public long getCurrentUsage() throws FindException;
 
     void setDatabaseFull(boolean val);
+
+    /**
+     * Save the given audit records in a single transaction.
+     *
+     * <p>If the save fails no records are saved, the caller can save them
+     * again individually.</p>
+     *
+     * @param records The records to save (not null)
+     * @return true if the records were saved, false if not saved because the database is full
+     * @throws SaveException if the records could not be saved
+     */
+    boolean saveAll( Collection<AuditRecord> records ) throws SaveException;
 }
 
@@ -6,11 +6,17 @@ import com.l7tech.objectmodel.*;
 import com.l7tech.server.HibernateEntityManager;
 import com.l7tech.server.ServerConfigParams;
 import com.l7tech.server.service.ServiceCache;
+import com.l7tech.server.util.CompressedStringType;
+import com.l7tech.server.util.GoidType;
+import com.l7tech.server.util.SecurityTokenUserType;
 import com.l7tech.util.*;
 import com.l7tech.server.event.admin.AuditPurgeInitiated;
 import com.l7tech.server.event.system.AuditPurgeEvent;
 import org.hibernate.*;
 import org.hibernate.criterion.*;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.jdbc.Work;
+import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
@@ -505,6 +511,46 @@ public class AuditRecordManagerImpl
         }
     }
 
+    @Override
+    public boolean saveAll(final Collection<AuditRecord> records) throws SaveException {
+        if(!databaseFull.get()) {
+            try {
+                getHibernateTemplate().execute(new HibernateCallback<Void>() {
+                    @Override
+                    public Void doInHibernate(final Session session) throws HibernateException, SQLException {
+                        final List<MessageSummaryAuditRecord> messageRecords = new ArrayList<MessageSummaryAuditRecord>(records.size());
+                        for (final AuditRecord record : records) {
+                            if (record instanceof MessageSummaryAuditRecord) {
+                                final MessageSummaryAuditRecord messageRecord = (MessageSummaryAuditRecord) record;
+                                // may save the mapping values, so resolve before the insert
+                                messageRecord.getMappingValuesId();
+                                assignIdentifiers(session, messageRecord);
+                                messageRecords.add(messageRecord);
+                            } else {
+                                session.save(record);
+                            }
+                        }
+                        session.flush();
+                        session.doWork(new Work() {
+                            @Override
+                            public void execute(final Connection connection) throws SQLException {
+                                insertMessageRecords(connection, messageRecords);
+                            }
+                        });
+                        return null;
+                    }
+                });
+            } catch (RuntimeException e) {
+                throw new SaveException("Couldn't save " + records.size() + " AuditRecords", e);
+            }
+            return true;
+        }
+        else {
+            logger.log(Level.WARNING, "Unable to save " + records.size() + " AuditRecords: Database is full!");
+            return false;
+        }
+    }
+
     @Override
     public Config getAuditValidatedConfig() {
         return validatedConfig;
@@ -519,6 +565,122 @@ public class AuditRecordManagerImpl
 
     //- PRIVATE
 
+    private static final String SQL_INSERT_AUDIT_MAIN = "INSERT INTO audit_main (goid, nodeid, time, audit_level, name, message, ip_address, user_name, user_id, provider_goid, signature) VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String SQL_INSERT_AUDIT_MESSAGE = "INSERT INTO audit_message (goid, status, request_id, service_goid, operation_name, authenticated, authenticationType, request_length, response_length, request_zipxml, response_zipxml, response_status, routing_latency, mapping_values_goid) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String SQL_INSERT_AUDIT_DETAIL = "INSERT INTO audit_detail (goid, audit_goid, time, component_id, ordinal, message_id, exception_message) VALUES (?,?,?,?,?,?,?)";
+    private static final String SQL_INSERT_AUDIT_DETAIL_PARAM = "INSERT INTO audit_detail_params (audit_detail_goid, position, value) VALUES (?,?,?)";
+
+    private static final GoidType GOID_TYPE = new GoidType();
+    private static final CompressedStringType COMPRESSED_STRING_TYPE = new CompressedStringType();
+    private static final SecurityTokenUserType SECURITY_TOKEN_TYPE = new SecurityTokenUserType();
+
+    /**
+     * Assign identifiers as Hibernate would on save.
+     */
+    @SuppressWarnings({"deprecation"})
+    private static void assignIdentifiers(final Session session, final AuditRecord record) {
+        final SessionImplementor sessionImplementor = (SessionImplementor) session;
+        record.setGoid((Goid) sessionImplementor.getEntityPersister(null, record).getIdentifierGenerator().generate(sessionImplementor, record));
+        for (final AuditDetail detail : record.getDetails()) {
+            detail.setAuditRecord(record);
+            detail.setGoid((Goid) sessionImplementor.getEntityPersister(null, detail).getIdentifierGenerator().generate(sessionImplementor, detail));
+        }
+    }
+
+    /**
+     * Insert message audit records using JDBC batches, one statement per
+     * table for all the records.
+     *
+     * <p>The columns are those of the Hibernate mappings for the records and
+     * details, custom typed columns use the same user types.</p>
+     */
+    private static void insertMessageRecords(final Connection connection, final Collection<MessageSummaryAuditRecord> records) throws SQLException {
+        if (records.isEmpty()) return;
+
+        PreparedStatement mainStatement = null;
+        PreparedStatement messageStatement = null;
+        PreparedStatement detailStatement = null;
+        PreparedStatement paramStatement = null;
+        try {
+            mainStatement = connection.prepareStatement(SQL_INSERT_AUDIT_MAIN);
+            messageStatement = connection.prepareStatement(SQL_INSERT_AUDIT_MESSAGE);
+            detailStatement = connection.prepareStatement(SQL_INSERT_AUDIT_DETAIL);
+            paramStatement = connection.prepareStatement(SQL_INSERT_AUDIT_DETAIL_PARAM);
+
+            boolean hasDetails = false;
+            boolean hasParams = false;
+            for (final MessageSummaryAuditRecord record : records) {
+                int i = 0;
+                GOID_TYPE.nullSafeSet(mainStatement, record.getGoid(), ++i);
+                mainStatement.setString(++i, record.getNodeId());
+                mainStatement.setLong(++i, record.getMillis());
+                mainStatement.setString(++i, record.getStrLvl());
+                mainStatement.setString(++i, record.getName());
+                mainStatement.setString(++i, record.getMessage());
+                mainStatement.setString(++i, record.getIpAddress());
+                mainStatement.setString(++i, record.getUserName());
+                mainStatement.setString(++i, record.getUserId());
+                GOID_TYPE.nullSafeSet(mainStatement, record.getIdentityProviderGoid(), ++i);
+                mainStatement.setString(++i, record.getSignature());
+                mainStatement.addBatch();
+
+                i = 0;
+                GOID_TYPE.nullSafeSet(messageStatement, record.getGoid(), ++i);
+                messageStatement.setInt(++i, record.getStatus());
+                messageStatement.setString(++i, record.getStrRequestId());
+                GOID_TYPE.nullSafeSet(messageStatement, record.getServiceGoid(), ++i);
+                messageStatement.setString(++i, record.getOperationName());
+                messageStatement.setBoolean(++i, record.isAuthenticated());
+                SECURITY_TOKEN_TYPE.nullSafeSet(messageStatement, record.getAuthenticationType(), ++i);
+                messageStatement.setInt(++i, record.getRequestContentLength());
+                messageStatement.setInt(++i, record.getResponseContentLength());
+                COMPRESSED_STRING_TYPE.nullSafeSet(messageStatement, record.getRequestXml(), ++i);
+                COMPRESSED_STRING_TYPE.nullSafeSet(messageStatement, record.getResponseXml(), ++i);
+                messageStatement.setInt(++i, record.getResponseHttpStatus());
+                messageStatement.setInt(++i, record.getRoutingLatency());
+                GOID_TYPE.nullSafeSet(messageStatement, record.getMappingValuesId(), ++i);
+                messageStatement.addBatch();
+
+                for (final AuditDetail detail : record.getDetails()) {
+                    i = 0;
+                    GOID_TYPE.nullSafeSet(detailStatement, detail.getGoid(), ++i);
+                    GOID_TYPE.nullSafeSet(detailStatement, record.getGoid(), ++i);
+                    detailStatement.setLong(++i, detail.getTime());
+                    detailStatement.setInt(++i, detail.getComponentId());
+                    detailStatement.setInt(++i, detail.getOrdinal());
+                    detailStatement.setInt(++i, detail.getMessageId());
+                    detailStatement.setString(++i, detail.getException());
+                    detailStatement.addBatch();
+                    hasDetails = true;
+
+                    final String[] params = detail.getParams();
+                    if (params != null) {
+                        for (int position = 0; position < params.length; position++) {
+                            // null elements are not persisted for the mapped array
+                            if (params[position] == null) continue;
+                            GOID_TYPE.nullSafeSet(paramStatement, detail.getGoid(), 1);
+                            paramStatement.setInt(2, position);
+                            paramStatement.setString(3, params[position]);
+                            paramStatement.addBatch();
+                            hasParams = true;
+                        }
+                    }
+                }
+            }
+
+            // parent rows first for the foreign keys
+            mainStatement.executeBatch();
+            messageStatement.executeBatch();
+            if (hasDetails) detailStatement.executeBatch();
+            if (hasParams) paramStatement.executeBatch();
+        } finally {
+            ResourceUtils.closeQuietly(paramStatement);
+            ResourceUtils.closeQuietly(detailStatement);
+            ResourceUtils.closeQuietly(messageStatement);
+            ResourceUtils.closeQuietly(mainStatement);
+        }
+    }
+
     private static final Level[] LEVELS_IN_ORDER = { Level.ALL, Level.FINEST, Level.FINER, Level.FINE, Level.CONFIG, Level.INFO, Level.WARNING, Level.SEVERE, Level.OFF };
     private static final String PROP_TIME = "millis";
     private static final String PROP_LEVEL = "strLvl";
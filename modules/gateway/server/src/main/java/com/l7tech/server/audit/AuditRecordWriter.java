@@ -0,0 +1,477 @@
+package com.l7tech.server.audit;
+
+import com.l7tech.gateway.common.audit.AuditDetail;
+import com.l7tech.gateway.common.audit.AuditRecord;
+import com.l7tech.gateway.common.audit.MessageSummaryAuditRecord;
+import com.l7tech.objectmodel.PersistentEntity;
+import com.l7tech.objectmodel.SaveException;
+import com.l7tech.server.ServerConfigParams;
+import com.l7tech.util.Config;
+import com.l7tech.util.ExceptionUtils;
+import org.hibernate.exception.JDBCConnectionException;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.TransactionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves message audit records to the database from a background thread.
+ *
+ * <p>Message summary audit records are queued by the request thread and saved
+ * in batches by a single writer thread. Other audit records are saved on the
+ * calling thread.</p>
+ *
+ * <p>When the queue is full the configured overflow policy is applied, the
+ * record is either saved on the calling thread, written to the local journal
+ * or dropped.</p>
+ *
+ * <p>If the database is unavailable, batches are written to the local journal
+ * and the journal is replayed once the database can be used again.</p>
+ *
+ * @see ServerConfigParams#PARAM_AUDIT_WRITER_ASYNC
+ * @see ServerConfigParams#PARAM_AUDIT_WRITER_OVERFLOW
+ */
+@ManagedResource(description="Audit record writer", objectName="l7tech:type=AuditRecordWriter")
+public class AuditRecordWriter implements InitializingBean, DisposableBean {
+
+    //- PUBLIC
+
+    /**
+     * Policy for records that do not fit in the queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Save the record on the calling thread.
+         */
+        SAVE,
+
+        /**
+         * Write the record to the local journal.
+         */
+        JOURNAL,
+
+        /**
+         * Discard the record.
+         */
+        DROP
+    }
+
+    public AuditRecordWriter( @NotNull final Config config,
+                              @NotNull final AuditRecordManager auditRecordManager ) {
+        this.config = config;
+        this.auditRecordManager = auditRecordManager;
+    }
+
+    /**
+     * Save the given audit record.
+     *
+     * <p>Message summary audit records are queued when asynchronous writing is
+     * enabled, other records are saved immediately.</p>
+     *
+     * @param record The record to save
+     * @throws SaveException If the record is saved immediately and an error occurs
+     */
+    public void save( @NotNull final AuditRecord record ) throws SaveException {
+        if ( !(record instanceof MessageSummaryAuditRecord) ||
+             !started ||
+             !config.getBooleanProperty( ServerConfigParams.PARAM_AUDIT_WRITER_ASYNC, true ) ) {
+            auditRecordManager.save( record );
+            return;
+        }
+
+        // Resolve properties that reference the policy enforcement context while it is still available
+        final MessageSummaryAuditRecord messageRecord = (MessageSummaryAuditRecord) record;
+        messageRecord.resolveLazyProperties( false );
+        messageRecord.originalPolicyEnforcementContext( null );
+
+        if ( !enqueue( messageRecord ) ) {
+            overflow( messageRecord );
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        final String journalDirectory = config.getProperty( ServerConfigParams.PARAM_AUDIT_JOURNAL_DIRECTORY );
+        if ( journalDirectory != null && !journalDirectory.trim().isEmpty() ) {
+            journal = new AuditRecordJournal( new File( journalDirectory.trim() ) );
+        } else {
+            logger.warning( "Audit journal directory not configured, audit records will be lost if the database is unavailable." );
+        }
+
+        final Thread thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "AuditRecordWriter" );
+        thread.setDaemon( true );
+        writerThread = thread;
+        started = true;
+        thread.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        started = false;
+        final Thread thread = writerThread;
+        if ( thread != null ) {
+            writerThread = null;
+            quit = true;
+            LockSupport.unpark( thread );
+            thread.join( SHUTDOWN_WAIT_MILLIS );
+        }
+
+        // Anything not written by the writer thread is saved or journaled now
+        while ( writeBatch() > 0 ) {}
+    }
+
+    @ManagedAttribute(description="Number of audit records waiting to be saved", currencyTimeLimit=30)
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    @ManagedAttribute(description="Number of audit records in the last batch saved", currencyTimeLimit=30)
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    @ManagedAttribute(description="Age in milliseconds of the oldest audit record waiting to be saved", currencyTimeLimit=30)
+    public long getLagMillis() {
+        final Entry entry = queue.peek();
+        return entry == null ? 0L : Math.max( 0L, System.currentTimeMillis() - entry.queued );
+    }
+
+    @ManagedAttribute(description="Number of audit records saved", currencyTimeLimit=30)
+    public long getRecordsSaved() {
+        return recordsSaved.get();
+    }
+
+    @ManagedAttribute(description="Number of audit records dropped", currencyTimeLimit=30)
+    public long getRecordsDropped() {
+        return recordsDropped.get();
+    }
+
+    @ManagedAttribute(description="Number of audit records written to the journal", currencyTimeLimit=30)
+    public long getRecordsJournaled() {
+        return recordsJournaled.get();
+    }
+
+    @ManagedAttribute(description="Size in bytes of the audit journal", currencyTimeLimit=30)
+    public long getJournalSize() {
+        final AuditRecordJournal journal = this.journal;
+        return journal == null ? 0L : journal.getSize();
+    }
+
+    //- PACKAGE
+
+    /**
+     * Create a writer that is not started, records are queued until written using {@link #writeBatch()}.
+     */
+    AuditRecordWriter( @NotNull final Config config,
+                       @NotNull final AuditRecordManager auditRecordManager,
+                       final AuditRecordJournal journal ) {
+        this( config, auditRecordManager );
+        this.journal = journal;
+        this.started = true;
+    }
+
+    /**
+     * Save or journal the next batch of queued records.
+     *
+     * @return The number of records taken from the queue
+     */
+    int writeBatch() {
+        final int batchSize = config.getIntProperty( ServerConfigParams.PARAM_AUDIT_WRITER_BATCH_SIZE, DEFAULT_BATCH_SIZE );
+        final List<AuditRecord> batch = new ArrayList<AuditRecord>( Math.min( batchSize, depth.get() ) );
+        Entry entry;
+        while ( batch.size() < batchSize && (entry = queue.poll()) != null ) {
+            depth.decrementAndGet();
+            batch.add( entry.record );
+        }
+
+        if ( !batch.isEmpty() ) {
+            if ( isDatabaseAvailable() ) {
+                saveBatch( batch );
+            } else {
+                journal( batch );
+            }
+        }
+
+        return batch.size();
+    }
+
+    /**
+     * Replay the next batch of journaled records if the database is available.
+     *
+     * @return The number of records replayed
+     */
+    int replayBatch() {
+        final AuditRecordJournal journal = this.journal;
+        if ( journal == null || !journal.hasRecords() || !isDatabaseAvailable() ) return 0;
+
+        final int batchSize = config.getIntProperty( ServerConfigParams.PARAM_AUDIT_WRITER_BATCH_SIZE, DEFAULT_BATCH_SIZE );
+        try {
+            final List<AuditRecord> batch = journal.readBatch( batchSize );
+            if ( !batch.isEmpty() ) {
+                try {
+                    batchSaved( batch, auditRecordManager.saveAll( batch ) );
+                } catch ( SaveException e ) {
+                    resetIdentifiers( batch );
+                    if ( isDatabaseUnavailable( e ) ) {
+                        databaseUnavailable( e );
+                        return 0;
+                    }
+                    saveIndividually( batch );
+                }
+            }
+            journal.replayed();
+            if ( !journal.hasRecords() ) {
+                logger.info( "Audit journal replay completed." );
+            }
+            return batch.size();
+        } catch ( IOException e ) {
+            logger.log( Level.WARNING, "Error replaying audit journal: " + ExceptionUtils.getMessage( e ), ExceptionUtils.getDebugException( e ) );
+            databaseRetryTime = System.currentTimeMillis() + getRetryInterval();
+            return 0;
+        }
+    }
+
+    //- PRIVATE
+
+    private static final Logger logger = Logger.getLogger( AuditRecordWriter.class.getName() );
+
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis( 30L );
+    private static final long DEFAULT_JOURNAL_MAX_SIZE = 1073741824L;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos( 1L );
+    private static final long SHUTDOWN_WAIT_MILLIS = TimeUnit.SECONDS.toMillis( 30L );
+
+    private final Config config;
+    private final AuditRecordManager auditRecordManager;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong recordsSaved = new AtomicLong();
+    private final AtomicLong recordsDropped = new AtomicLong();
+    private final AtomicLong recordsJournaled = new AtomicLong();
+    private volatile AuditRecordJournal journal;
+    private volatile Thread writerThread;
+    private volatile boolean started;
+    private volatile boolean quit;
+    private volatile int lastBatchSize;
+    private volatile long databaseRetryTime;
+
+    private static final class Entry {
+        private final AuditRecord record;
+        private final long queued;
+
+        private Entry( final AuditRecord record ) {
+            this.record = record;
+            this.queued = System.currentTimeMillis();
+        }
+    }
+
+    private void write() {
+        logger.info( "Audit record writer started." );
+        while ( !quit ) {
+            try {
+                if ( writeBatch() == 0 && replayBatch() == 0 && depth.get() == 0 ) {
+                    LockSupport.parkNanos( this, IDLE_WAIT_NANOS );
+                }
+            } catch ( Exception e ) {
+                logger.log( Level.WARNING, "Unexpected error writing audit records: " + ExceptionUtils.getMessage( e ), e );
+            }
+        }
+        logger.info( "Audit record writer stopped." );
+    }
+
+    private boolean enqueue( final AuditRecord record ) {
+        final int capacity = config.getIntProperty( ServerConfigParams.PARAM_AUDIT_WRITER_QUEUE_SIZE, DEFAULT_QUEUE_SIZE );
+        int current;
+        do {
+            current = depth.get();
+            if ( current >= capacity ) return false;
+        } while ( !depth.compareAndSet( current, current + 1 ) );
+
+        queue.add( new Entry( record ) );
+        if ( current == 0 ) {
+            final Thread thread = writerThread;
+            if ( thread != null ) LockSupport.unpark( thread );
+        }
+        return true;
+    }
+
+    private void overflow( final MessageSummaryAuditRecord record ) throws SaveException {
+        switch ( getOverflowPolicy() ) {
+            case JOURNAL:
+                if ( journal != null ) {
+                    journal( Collections.<AuditRecord>singletonList( record ) );
+                    break;
+                }
+                // fall through to save if there is no journal
+            case SAVE:
+                recordSaved( auditRecordManager.save( record ) != null );
+                break;
+            default:
+                recordsDropped.incrementAndGet();
+                logger.warning( "Audit record queue is full, message audit record dropped." );
+                break;
+        }
+    }
+
+    private OverflowPolicy getOverflowPolicy() {
+        final String value = config.getProperty( ServerConfigParams.PARAM_AUDIT_WRITER_OVERFLOW, OverflowPolicy.SAVE.name() );
+        try {
+            return OverflowPolicy.valueOf( value.trim().toUpperCase() );
+        } catch ( IllegalArgumentException e ) {
+            logger.warning( "Invalid audit writer overflow policy '" + value + "', using " + OverflowPolicy.SAVE.name() );
+            return OverflowPolicy.SAVE;
+        }
+    }
+
+    private long getRetryInterval() {
+        return config.getTimeUnitProperty( ServerConfigParams.PARAM_AUDIT_WRITER_RETRY_INTERVAL, DEFAULT_RETRY_INTERVAL );
+    }
+
+    private boolean isDatabaseAvailable() {
+        return System.currentTimeMillis() >= databaseRetryTime;
+    }
+
+    private void databaseUnavailable( final Exception e ) {
+        logger.log( Level.WARNING, "Database unavailable for audit records, will retry later: " + ExceptionUtils.getMessage( e ), ExceptionUtils.getDebugException( e ) );
+        databaseRetryTime = System.currentTimeMillis() + getRetryInterval();
+    }
+
+    private void saveBatch( final List<AuditRecord> batch ) {
+        try {
+            batchSaved( batch, auditRecordManager.saveAll( batch ) );
+        } catch ( SaveException e ) {
+            resetIdentifiers( batch );
+            if ( journal != null && isDatabaseUnavailable( e ) ) {
+                databaseUnavailable( e );
+                journal( batch );
+            } else {
+                saveIndividually( batch );
+            }
+        }
+    }
+
+    /**
+     * Save each record so that a single bad record does not lose the batch.
+     */
+    private void saveIndividually( final List<AuditRecord> batch ) {
+        int saved = 0;
+        for ( final AuditRecord record : batch ) {
+            try {
+                if ( recordSaved( auditRecordManager.save( record ) != null ) ) saved++;
+            } catch ( SaveException e ) {
+                recordsDropped.incrementAndGet();
+                logger.log( Level.SEVERE, "Unable to save audit record: " + ExceptionUtils.getMessage( e ), ExceptionUtils.getDebugException( e ) );
+            }
+        }
+        lastBatchSize = saved;
+    }
+
+    /**
+     * Count a saved batch, records are not saved if the database is full.
+     */
+    private void batchSaved( final List<AuditRecord> batch, final boolean saved ) {
+        if ( saved ) {
+            recordsSaved.addAndGet( (long) batch.size() );
+            lastBatchSize = batch.size();
+        } else {
+            recordsDropped.addAndGet( (long) batch.size() );
+            lastBatchSize = 0;
+        }
+    }
+
+    private boolean recordSaved( final boolean saved ) {
+        if ( saved ) {
+            recordsSaved.incrementAndGet();
+        } else {
+            recordsDropped.incrementAndGet();
+        }
+        return saved;
+    }
+
+    private void journal( final List<AuditRecord> records ) {
+        final AuditRecordJournal journal = this.journal;
+        if ( journal == null ) {
+            recordsDropped.addAndGet( (long) records.size() );
+            logger.severe( "Audit journal not available, " + records.size() + " audit record(s) dropped." );
+            return;
+        }
+
+        for ( final AuditRecord record : records ) {
+            if ( record instanceof MessageSummaryAuditRecord ) {
+                resolveForJournal( (MessageSummaryAuditRecord) record );
+            }
+        }
+
+        try {
+            if ( journal.append( records, config.getLongProperty( ServerConfigParams.PARAM_AUDIT_JOURNAL_MAX_SIZE, DEFAULT_JOURNAL_MAX_SIZE ) ) ) {
+                recordsJournaled.addAndGet( (long) records.size() );
+            } else {
+                recordsDropped.addAndGet( (long) records.size() );
+                logger.severe( "Audit journal is full, " + records.size() + " audit record(s) dropped." );
+            }
+        } catch ( IOException e ) {
+            recordsDropped.addAndGet( (long) records.size() );
+            logger.log( Level.SEVERE, "Error writing audit journal, " + records.size() + " audit record(s) dropped: " + ExceptionUtils.getMessage( e ), ExceptionUtils.getDebugException( e ) );
+        }
+    }
+
+    /**
+     * Mapping values are saved on access so they must be resolved before the
+     * record is journaled, if the database is not available they are omitted.
+     */
+    private void resolveForJournal( final MessageSummaryAuditRecord record ) {
+        try {
+            record.resolveLazyProperties( true );
+        } catch ( RuntimeException e ) {
+            logger.log( Level.FINE, "Unable to resolve message context mappings for journaled audit record: " + ExceptionUtils.getMessage( e ), ExceptionUtils.getDebugException( e ) );
+            record.setMappingValuesId( null );
+            record.resolveLazyProperties( true );
+        }
+    }
+
+    private static boolean isDatabaseUnavailable( final Exception e ) {
+        return ExceptionUtils.causedBy( e, TransactionException.class ) ||
+               ExceptionUtils.causedBy( e, DataAccessResourceFailureException.class ) ||
+               ExceptionUtils.causedBy( e, TransientDataAccessException.class ) ||
+               ExceptionUtils.causedBy( e, RecoverableDataAccessException.class ) ||
+               ExceptionUtils.causedBy( e, JDBCConnectionException.class );
+    }
+
+    /**
+     * Identifiers are assigned on save so must be cleared for records that were not saved.
+     */
+    @SuppressWarnings({ "deprecation" })
+    private static void resetIdentifiers( final Collection<AuditRecord> records ) {
+        for ( final AuditRecord record : records ) {
+            record.setGoid( null );
+            for ( final AuditDetail detail : record.getDetails() ) {
+                detail.setGoid( PersistentEntity.DEFAULT_GOID );
+            }
+        }
+    }
+}
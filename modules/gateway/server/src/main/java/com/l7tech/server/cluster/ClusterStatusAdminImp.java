@@ -1,5 +1,7 @@
 package com.l7tech.server.cluster;
 
+import com.l7tech.common.io.CacheStatistics;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.common.io.failover.FailoverStrategy;
 import com.l7tech.common.io.failover.FailoverStrategyFactory;
 import com.l7tech.gateway.common.InvalidLicenseException;
@@ -178,6 +180,11 @@ public class ClusterStatusAdminImp extends AsyncAdminMethodsImpl implements Clus
         return output;
     }
 
+    @Override
+    public Collection<CacheStatistics> getCacheStatistics() {
+        return SegmentedCache.getAllStatistics();
+    }
+
     /**
      * lets the administrator change the human readable name of a node part of the cluster. these
      * names are originally automatically set by the server when they join the cluster.
@@ -4,6 +4,7 @@ import com.l7tech.common.io.XmlUtil;
 import com.l7tech.common.mime.NoSuchPartException;
 import com.l7tech.message.Message;
 import com.l7tech.message.ValidationTarget;
+import com.l7tech.message.XmlKnob;
 import com.l7tech.server.util.AbstractReferenceCounted;
 import com.l7tech.util.*;
 import com.l7tech.xml.ElementCursor;
@@ -30,6 +31,7 @@ import java.util.logging.Logger;
 
 final class CompiledSchema extends AbstractReferenceCounted<SchemaHandle> {
     private static final Logger logger = Logger.getLogger(CompiledSchema.class.getName());
+    private static final String PROP_STREAMING_VALIDATION = "com.l7tech.server.communityschemas.streamingValidation";
 
     private static Map<String,Long> systemIdGeneration = new HashMap<String,Long>();
 
@@ -172,7 +174,13 @@ final class CompiledSchema extends AbstractReferenceCounted<SchemaHandle> {
         final Lock readLock = manager.getReadLock();
         readLock.lock();
         try {
-            doValidateElements(validationTarget.elementsToValidate(msg.getXmlKnob().getDocumentReadOnly()), errorHandler);
+            final XmlKnob xmlKnob = msg.getXmlKnob();
+            if (!xmlKnob.isDomParsed() && isStreamingValidation()) {
+                // Validate straight from the first part, unless the DOM rules are required to select the elements
+                if (StreamingSchemaValidator.validate(softwareSchema, xmlKnob.getInputSource(false), validationTarget, errorHandler))
+                    return;
+            }
+            doValidateElements(validationTarget.elementsToValidate(xmlKnob.getDocumentReadOnly()), errorHandler);
         } catch (InvalidDocumentFormatException e) {
             throw new SAXException("Error getting elements to validate for " + validationTarget, e);
         } finally {
@@ -180,6 +188,10 @@ final class CompiledSchema extends AbstractReferenceCounted<SchemaHandle> {
         }
     }
 
+    private static boolean isStreamingValidation() {
+        return ConfigFactory.getBooleanProperty(PROP_STREAMING_VALIDATION, true);
+    }
+
     Map<String, SchemaHandle> getDependencies() {
         return dependencies;
     }
@@ -0,0 +1,336 @@
+package com.l7tech.server.communityschemas;
+
+import com.l7tech.common.io.XmlUtil;
+import com.l7tech.message.ValidationTarget;
+import com.l7tech.util.ConfigFactory;
+import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.InvalidDocumentFormatException;
+import com.l7tech.util.SoapConstants;
+import org.jetbrains.annotations.NotNull;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Validates the elements selected by a ValidationTarget while parsing a message with SAX.
+ *
+ * <p>Each selected element is validated as the root of its own document with
+ * all in scope namespaces declared, as for validation of a DOM element. If
+ * the SOAP structure of the message can only be classified using the DOM
+ * rules once elements have already been validated (for example a second
+ * Body element) then validation is abandoned and the caller should use
+ * DOM.</p>
+ */
+final class StreamingSchemaValidator extends DefaultHandler {
+
+    //- PUBLIC
+
+    @Override
+    public void setDocumentLocator( final Locator locator ) {
+        this.locator = locator;
+    }
+
+    @Override
+    public void startPrefixMapping( final String prefix, final String uri ) throws SAXException {
+        pendingPrefixes.add( prefix );
+        pendingPrefixes.add( uri );
+    }
+
+    @Override
+    public void startElement( final String uri, final String localName, final String qName, final Attributes attributes ) throws SAXException {
+        namespaces.pushContext();
+        for ( int i = 0; i < pendingPrefixes.size(); i += 2 ) {
+            namespaces.declarePrefix( pendingPrefixes.get( i ), pendingPrefixes.get( i + 1 ) );
+        }
+        depth++;
+
+        if ( depth == 1 ) {
+            soap = !sawProcessingInstruction && "Envelope".equals( localName ) && SoapConstants.ENVELOPE_URIS.contains( uri );
+            soapNamespace = uri;
+        } else if ( soap && depth == 2 && "Body".equals( localName ) && soapNamespace.equals( uri ) ) {
+            if ( ++bodyCount > 1 && validationTarget != ValidationTarget.ENVELOPE ) throw new UseDomException(); // not SOAP according to the DOM rules
+            inBody = true;
+        } else if ( soap && depth == 3 && inBody && !sawPayload ) {
+            sawPayload = true;
+            inPayload = true;
+        }
+
+        if ( handler != null ) {
+            try {
+                for ( int i = 0; i < pendingPrefixes.size(); i += 2 ) {
+                    handler.startPrefixMapping( pendingPrefixes.get( i ), pendingPrefixes.get( i + 1 ) );
+                }
+                handler.startElement( uri, localName, qName, attributes );
+            } catch ( SAXException e ) {
+                validationFailed( e );
+            }
+        } else if ( !failed && isValidationRoot() ) {
+            startValidation( uri, localName, qName, attributes );
+        }
+        pendingPrefixes.clear();
+    }
+
+    @Override
+    public void endElement( final String uri, final String localName, final String qName ) throws SAXException {
+        if ( handler != null ) {
+            final boolean root = depth == rootDepth;
+            try {
+                handler.endElement( uri, localName, qName );
+                if ( root ) {
+                    for ( final String prefix : rootPrefixes ) {
+                        handler.endPrefixMapping( prefix );
+                    }
+                    handler.endDocument();
+                } else {
+                    final Enumeration declared = namespaces.getDeclaredPrefixes();
+                    while ( declared.hasMoreElements() ) {
+                        handler.endPrefixMapping( (String) declared.nextElement() );
+                    }
+                }
+            } catch ( SAXException e ) {
+                validationFailed( e );
+            }
+            if ( root ) handler = null;
+        }
+        if ( failed && depth == rootDepth ) failed = false;
+
+        if ( depth == 2 ) inBody = false;
+        if ( depth == 3 ) inPayload = false;
+        namespaces.popContext();
+        depth--;
+    }
+
+    @Override
+    public void characters( final char[] ch, final int start, final int length ) throws SAXException {
+        if ( handler != null ) {
+            try {
+                handler.characters( ch, start, length );
+            } catch ( SAXException e ) {
+                validationFailed( e );
+            }
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace( final char[] ch, final int start, final int length ) throws SAXException {
+        if ( handler != null ) {
+            try {
+                handler.ignorableWhitespace( ch, start, length );
+            } catch ( SAXException e ) {
+                validationFailed( e );
+            }
+        }
+    }
+
+    @Override
+    public void processingInstruction( final String target, final String data ) throws SAXException {
+        if ( depth == 0 ) sawProcessingInstruction = true;
+        if ( handler != null ) {
+            try {
+                handler.processingInstruction( target, data );
+            } catch ( SAXException e ) {
+                validationFailed( e );
+            }
+        }
+    }
+
+    //- PACKAGE
+
+    /**
+     * Validate the elements of the document selected by the target.
+     *
+     * @param schema The schema to validate with
+     * @param source The source for the document
+     * @param validationTarget The parts of the document to validate
+     * @param errorHandler The handler for validation errors
+     * @return true if validated, false if DOM validation must be used instead
+     * @throws IOException if the document cannot be read
+     * @throws SAXException if the document is not well formed or is invalid (the first validation error)
+     */
+    static boolean validate( @NotNull final Schema schema,
+                             @NotNull final InputSource source,
+                             @NotNull final ValidationTarget validationTarget,
+                             @NotNull final SchemaValidationErrorHandler errorHandler ) throws IOException, SAXException {
+        final StreamingSchemaValidator validator = new StreamingSchemaValidator( schema, validationTarget, errorHandler );
+
+        final SAXParser saxParser = borrowSaxParser();
+        try {
+            final XMLReader xmlReader = saxParser.getXMLReader();
+            xmlReader.setFeature( XmlUtil.XERCES_DISALLOW_DOCTYPE, true );
+            xmlReader.setEntityResolver( XmlUtil.getSafeEntityResolver() );
+            xmlReader.setErrorHandler( XmlUtil.getStrictErrorHandler() );
+            xmlReader.setContentHandler( validator );
+            xmlReader.parse( source );
+        } catch ( UseDomException e ) {
+            errorHandler.reset();
+            return false;
+        } catch ( SAXException e ) {
+            errorHandler.reset(); // not well formed, so nothing was validated
+            throw e;
+        } finally {
+            returnSaxParser( saxParser );
+        }
+
+        if ( validator.soap && validationTarget == ValidationTarget.BODY && validator.bodyCount == 0 ) {
+            // no Body to select elements from, leave this case to DOM
+            errorHandler.reset();
+            return false;
+        }
+        if ( validator.soap && validationTarget == ValidationTarget.ARGUMENTS && !validator.sawPayload ) {
+            throw new SAXException( "Error getting elements to validate for " + validationTarget,
+                    new InvalidDocumentFormatException( "The soap body does not have a child element as expected" ) );
+        }
+
+        if ( validator.firstException != null ) throw validator.firstException;
+
+        final Collection<SAXParseException> errors = errorHandler.recordedErrors();
+        if ( !errors.isEmpty() ) throw errors.iterator().next();
+        return true;
+    }
+
+    //- PRIVATE
+
+    private static final Logger logger = Logger.getLogger( StreamingSchemaValidator.class.getName() );
+
+    private static final String PROP_SAX_PARSER_POOL_SIZE = "com.l7tech.server.communityschemas.saxParserPoolSize";
+    private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+    static {
+        SAX_PARSER_FACTORY.setNamespaceAware( true );
+    }
+    private static final BlockingQueue<SAXParser> saxParserPool =
+            new ArrayBlockingQueue<SAXParser>( Math.max( 1, ConfigFactory.getIntProperty( PROP_SAX_PARSER_POOL_SIZE, 16 ) ) );
+
+    private final Schema schema;
+    private final ValidationTarget validationTarget;
+    private final SchemaValidationErrorHandler errorHandler;
+    private final NamespaceSupport namespaces = new NamespaceSupport();
+    private final List<String> pendingPrefixes = new ArrayList<String>();
+    private final List<String> rootPrefixes = new ArrayList<String>();
+    private Locator locator;
+    private ValidatorHandler handler; // non-null while validating an element
+    private boolean failed; // true if validation of the current element was abandoned
+    private SAXException firstException;
+    private int depth;
+    private int rootDepth;
+    private boolean sawProcessingInstruction;
+    private boolean soap;
+    private String soapNamespace;
+    private int bodyCount;
+    private boolean inBody;
+    private boolean sawPayload;
+    private boolean inPayload;
+
+    private StreamingSchemaValidator( final Schema schema,
+                                      final ValidationTarget validationTarget,
+                                      final SchemaValidationErrorHandler errorHandler ) {
+        this.schema = schema;
+        this.validationTarget = validationTarget;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Is the current element one of the elements selected by the validation target.
+     */
+    private boolean isValidationRoot() {
+        if ( !soap || validationTarget == ValidationTarget.ENVELOPE ) {
+            return depth == 1;
+        } else if ( validationTarget == ValidationTarget.BODY ) {
+            return depth == 3 && inBody;
+        } else {
+            return depth == 4 && inPayload;
+        }
+    }
+
+    /**
+     * Start validation of the current element as a document, declaring all in scope namespaces.
+     */
+    private void startValidation( final String uri, final String localName, final String qName, final Attributes attributes ) throws SAXException {
+        handler = schema.newValidatorHandler();
+        handler.setErrorHandler( errorHandler );
+        handler.setResourceResolver( XmlUtil.getSafeLSResourceResolver() );
+        rootDepth = depth;
+        rootPrefixes.clear();
+        try {
+            if ( locator != null ) handler.setDocumentLocator( locator );
+            handler.startDocument();
+            final Enumeration prefixes = namespaces.getPrefixes();
+            while ( prefixes.hasMoreElements() ) {
+                final String prefix = (String) prefixes.nextElement();
+                if ( "xml".equals( prefix ) ) continue;
+                rootPrefixes.add( prefix );
+                handler.startPrefixMapping( prefix, namespaces.getURI( prefix ) );
+            }
+            final String defaultNamespace = namespaces.getURI( "" );
+            if ( defaultNamespace != null && !defaultNamespace.isEmpty() ) {
+                rootPrefixes.add( "" );
+                handler.startPrefixMapping( "", defaultNamespace );
+            }
+            handler.startElement( uri, localName, qName, attributes );
+        } catch ( SAXException e ) {
+            validationFailed( e );
+        }
+    }
+
+    /**
+     * A validator exception abandons validation of the current element, as for DOM validation.
+     */
+    private void validationFailed( final SAXException e ) {
+        if ( firstException == null ) firstException = e;
+        handler = null;
+        failed = true;
+    }
+
+    /**
+     * Get a parser from the pool or create a new one, parsers are shared by all schemas.
+     */
+    private static SAXParser borrowSaxParser() throws SAXException {
+        final SAXParser saxParser = saxParserPool.poll();
+        if ( saxParser != null ) return saxParser;
+        try {
+            return SAX_PARSER_FACTORY.newSAXParser();
+        } catch ( ParserConfigurationException e ) {
+            throw new SAXException( "Unable to create XML parser: " + ExceptionUtils.getMessage( e ), e );
+        }
+    }
+
+    /**
+     * Reset and pool a parser, the reset discards all handlers and features.
+     */
+    private static void returnSaxParser( final SAXParser saxParser ) {
+        try {
+            saxParser.reset();
+            saxParserPool.offer( saxParser );
+        } catch ( UnsupportedOperationException e ) {
+            logger.log( Level.FINE, "Parser cannot be reset, not pooling", e );
+        }
+    }
+
+    /**
+     * Thrown to stop parsing when DOM validation is required.
+     */
+    private static final class UseDomException extends SAXException {
+        private UseDomException() {
+            super( "DOM validation required" );
+        }
+    }
+}
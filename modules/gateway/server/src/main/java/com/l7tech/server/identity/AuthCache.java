@@ -1,6 +1,6 @@
 package com.l7tech.server.identity;
 
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.identity.AuthenticationException;
 import com.l7tech.identity.BadCredentialsException;
 import com.l7tech.identity.IdentityProvider;
@@ -11,7 +11,6 @@ import com.l7tech.server.ServerConfigParams;
 import com.l7tech.server.identity.internal.InternalIdentityProvider;
 import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.TimeSource;
-import com.whirlycott.cache.Cache;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,17 +21,14 @@ import java.util.logging.Logger;
 public final class AuthCache {
     private static final Logger logger = Logger.getLogger(AuthCache.class.getName());
 
-    private static final int SUCCESS_CACHE_TUNER_INTERVAL = 59;
-    private static final int FAILURE_CACHE_TUNER_INTERVAL = 61;
-
     public final static int SUCCESS_CACHE_SIZE = ConfigFactory.getIntProperty( ServerConfigParams.PARAM_AUTH_CACHE_SUCCESS_CACHE_SIZE, 200 );
     public final static int FAILURE_CACHE_SIZE = ConfigFactory.getIntProperty( ServerConfigParams.PARAM_AUTH_CACHE_FAILURE_CACHE_SIZE, 100 );
 
     private static final boolean AUTH_MUTEX_ENABLED = ConfigFactory.getBooleanProperty( "com.l7tech.server.identity.authCacheMutexEnabled", true );
 
     private final TimeSource timeSource;
-    private final Cache successCache;
-    private final Cache failureCache;
+    private final SegmentedCache<CacheKey,AuthenticationResult> successCache;
+    private final SegmentedCache<CacheKey,AuthenticationResultFailure> failureCache;
     private final boolean successCacheDisabled;
     private final boolean failureCacheDisabled;
 
@@ -40,21 +36,17 @@ public final class AuthCache {
         this(   "AuthCache",
                 new TimeSource(),
                 SUCCESS_CACHE_SIZE,
-                SUCCESS_CACHE_TUNER_INTERVAL,
-                FAILURE_CACHE_SIZE,
-                FAILURE_CACHE_TUNER_INTERVAL);
+                FAILURE_CACHE_SIZE);
     }
 
     AuthCache(final String name,
               final TimeSource source,
               final int successCacheSize,
-              final int successTunerInterval,
-              final int failureCacheSize,
-              final int failureTunerInterval) {
+              final int failureCacheSize) {
         timeSource = source;
 
         successCache = successCacheSize < 1 ? null :
-                WhirlycacheFactory.createCache(name + ".success", successCacheSize, successTunerInterval, WhirlycacheFactory.POLICY_LFU);
+                new SegmentedCache<CacheKey,AuthenticationResult>(name + ".success", (long) successCacheSize);
         successCacheDisabled = (successCache == null);
         if(successCacheDisabled){
             if (logger.isLoggable(Level.WARNING))
@@ -62,7 +54,7 @@ public final class AuthCache {
         }
 
         failureCache = failureCacheSize < 1 ? null :
-                WhirlycacheFactory.createCache(name + ".failure", failureCacheSize, failureTunerInterval, WhirlycacheFactory.POLICY_LFU); 
+                new SegmentedCache<CacheKey,AuthenticationResultFailure>(name + ".failure", (long) failureCacheSize);
 
         failureCacheDisabled = (failureCache == null);
         if(failureCacheDisabled){
@@ -80,8 +72,8 @@ public final class AuthCache {
     }
 
     void dispose() {
-        WhirlycacheFactory.shutdown(successCache);
-        WhirlycacheFactory.shutdown(failureCache);    
+        if (successCache != null) successCache.shutdown();
+        if (failureCache != null) failureCache.shutdown();
     }
 
     private static class CacheKey {
@@ -223,10 +215,10 @@ public final class AuthCache {
         if (!failureCacheDisabled && result == null) {
             which = "failed";
             AuthenticationResultFailure authFailure = new AuthenticationResultFailure(currentTimeMillis(),thrown != null ? thrown.getMessage() : null);
-            failureCache.store(ckey, authFailure);
+            failureCache.put(ckey, authFailure);
         }else if(!successCacheDisabled){
             which = "successful";
-            successCache.store(ckey, result);
+            successCache.put(ckey, result);
         }
 
         if(which != null){
@@ -262,7 +254,7 @@ public final class AuthCache {
 
         //Determine if the success cache has this key
         if(!successCacheDisabled){
-            Object cachedObj = successCache.retrieve(ckey);
+            Object cachedObj = successCache.get(ckey);
             if(cachedObj != null && cachedObj instanceof AuthenticationResult){
                 cachedAuthResult = (AuthenticationResult)cachedObj;
             }
@@ -274,7 +266,7 @@ public final class AuthCache {
             //If no success cache and failure cache is enabled, check it
             if(!failureCacheDisabled){
                 //check if it's a fail for these creds
-                Object cachedObj = failureCache.retrieve(ckey);
+                Object cachedObj = failureCache.get(ckey);
                 if(cachedObj != null && cachedObj instanceof AuthenticationResultFailure){
                     cacheAuthFailureResult = (AuthenticationResultFailure) cachedObj;
                     cachedFailureTime = cacheAuthFailureResult.getCacheFailureTime();
@@ -1,6 +1,6 @@
 package com.l7tech.server.identity;
 
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.identity.Group;
 import com.l7tech.identity.User;
 import com.l7tech.objectmodel.Goid;
@@ -9,7 +9,6 @@ import com.l7tech.security.token.SecurityToken;
 import com.l7tech.server.ServerConfigParams;
 import com.l7tech.util.CollectionUtils;
 import com.l7tech.util.ConfigFactory;
-import com.whirlycott.cache.Cache;
 import org.jetbrains.annotations.Nullable;
 
 import java.security.cert.X509Certificate;
@@ -285,17 +284,14 @@ public final class AuthenticationResult {
             private final int cacheSize =
                     ConfigFactory.getIntProperty( ServerConfigParams.PARAM_AUTH_CACHE_GROUP_MEMB_CACHE_SIZE, 1000 );
             @Nullable
-            private final Cache membershipCache = cacheSize < 1
+            private final SegmentedCache<CacheKey,Long> membershipCache = cacheSize < 1
                                                ? null
-                                               : WhirlycacheFactory.createCache("groupMemberships",
-                    cacheSize,
-                                                                                71,
-                                                                                WhirlycacheFactory.POLICY_LFU);
+                                               : new SegmentedCache<CacheKey,Long>("groupMemberships", (long) cacheSize);
 
             @Override
             public void put( final CacheKey key, final Long value ) {
                 if ( membershipCache != null && key.isValid() ) {
-                    membershipCache.store( key, value );
+                    membershipCache.put( key, value );
                 }
             }
 
@@ -303,7 +299,7 @@ public final class AuthenticationResult {
             public Long get( final CacheKey key ) {
                 Long expiryAndFlag = null;
                 if ( membershipCache != null ) {
-                    expiryAndFlag = (Long) membershipCache.retrieve( key );
+                    expiryAndFlag = membershipCache.get( key );
                 }
                 return expiryAndFlag;
             }
@@ -8,10 +8,9 @@ import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.ResourceUtils;
 import com.l7tech.util.Pair;
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.server.Lifecycle;
 import com.l7tech.server.LifecycleException;
-import com.whirlycott.cache.Cache;
 import org.jetbrains.annotations.NotNull;
 
 import javax.naming.*;
@@ -62,15 +61,15 @@ public class LdapGroupManagerImpl implements LdapGroupManager, Lifecycle {
     @Override
     public void start() throws LifecycleException {
         groupCache = cacheSize < 1 ? null :
-                WhirlycacheFactory.createCache("LDAP Group Cache ("+getId()+")", cacheSize, 33, WhirlycacheFactory.POLICY_LFU);
+                new SegmentedCache<GroupCacheKey,GroupCacheEntry>("LDAP Group Cache ("+getId()+")", (long) cacheSize, cacheMaxAge, 0L, null, null);
     }
 
     @Override
     public void stop() throws LifecycleException {
-        Cache cache = groupCache;
+        SegmentedCache<GroupCacheKey,GroupCacheEntry> cache = groupCache;
         groupCache = null;
         if ( cache != null ) {
-            WhirlycacheFactory.shutdown(cache);
+            cache.shutdown();
         }
     }
 
@@ -1170,9 +1169,9 @@ public class LdapGroupManagerImpl implements LdapGroupManager, Lifecycle {
     private LdapGroup getCachedGroup( final GroupCacheKey key ) {
         LdapGroup ldapGroup = null;
 
-        final Cache groupCache = this.groupCache;
+        final SegmentedCache<GroupCacheKey,GroupCacheEntry> groupCache = this.groupCache;
         if ( groupCache != null ) {
-            GroupCacheEntry entry = (GroupCacheEntry) groupCache.retrieve( key );
+            GroupCacheEntry entry = groupCache.get( key );
             if ( !isExpired(entry) ) {
                 ldapGroup = entry.asLdapGroup();
             }
@@ -1182,20 +1181,20 @@ public class LdapGroupManagerImpl implements LdapGroupManager, Lifecycle {
     }
 
     private void cacheGroup( final LdapGroup group ) {
-        final Cache groupCache = this.groupCache;
+        final SegmentedCache<GroupCacheKey,GroupCacheEntry> groupCache = this.groupCache;
         if ( groupCache != null && group != null ) {
             GroupCacheEntry entry = new GroupCacheEntry(group);
-            groupCache.store( GroupCacheKey.buildDnKey( group.getDn() ), entry, entry.timestamp );
-            groupCache.store( GroupCacheKey.buildCnKey( group.getCn() ), entry, entry.timestamp );           
+            groupCache.put( GroupCacheKey.buildDnKey( group.getDn() ), entry );
+            groupCache.put( GroupCacheKey.buildCnKey( group.getCn() ), entry );
         }
     }
 
     private boolean isNonGroup( final LdapGroup group, final String member ) {
         boolean nonGroup = false;
 
-        final Cache groupCache = this.groupCache;
+        final SegmentedCache<GroupCacheKey,GroupCacheEntry> groupCache = this.groupCache;
         if ( groupCache != null ) {
-            GroupCacheEntry entry = (GroupCacheEntry) groupCache.retrieve( GroupCacheKey.buildDnKey(group.getDn()) );
+            GroupCacheEntry entry = groupCache.get( GroupCacheKey.buildDnKey(group.getDn()) );
             if ( !isExpired(entry) ) {
                 nonGroup = entry.isNonGroup( member );
             }
@@ -1205,9 +1204,9 @@ public class LdapGroupManagerImpl implements LdapGroupManager, Lifecycle {
     }
 
     private void cacheNonGroups( final LdapGroup group, final Collection<String> nonGroupMembers ) {
-        final Cache groupCache = this.groupCache;
+        final SegmentedCache<GroupCacheKey,GroupCacheEntry> groupCache = this.groupCache;
         if ( groupCache != null && !nonGroupMembers.isEmpty() ) {
-            GroupCacheEntry entry = (GroupCacheEntry) groupCache.retrieve( GroupCacheKey.buildDnKey(group.getDn()) );
+            GroupCacheEntry entry = groupCache.get( GroupCacheKey.buildDnKey(group.getDn()) );
             if ( !isExpired(entry) ) {
                 entry.addNonGroups( nonGroupMembers );
             }
@@ -1221,9 +1220,9 @@ public class LdapGroupManagerImpl implements LdapGroupManager, Lifecycle {
     private boolean getCachedSubgroups( final LdapGroup group, final Collection<LdapGroup> subgroups ) {
         boolean foundSubgroups = false;
 
-        final Cache groupCache = this.groupCache;
+        final SegmentedCache<GroupCacheKey,GroupCacheEntry> groupCache = this.groupCache;
         if ( groupCache != null ) {
-            GroupCacheEntry entry = (GroupCacheEntry) groupCache.retrieve( GroupCacheKey.buildDnKey(group.getDn()) );
+            GroupCacheEntry entry = groupCache.get( GroupCacheKey.buildDnKey(group.getDn()) );
             if ( !isExpired(entry) ) {
                 Collection<LdapGroup> entrySubgroups = entry.getSubgroups();
                 if ( entrySubgroups != null ) {
@@ -1237,9 +1236,9 @@ public class LdapGroupManagerImpl implements LdapGroupManager, Lifecycle {
     }
 
     private void cacheSubgroups( final LdapGroup group, final Collection<LdapGroup> subgroups ) {
-        final Cache groupCache = this.groupCache;
+        final SegmentedCache<GroupCacheKey,GroupCacheEntry> groupCache = this.groupCache;
         if ( groupCache != null ) {
-            GroupCacheEntry entry = (GroupCacheEntry) groupCache.retrieve( GroupCacheKey.buildDnKey(group.getDn()) );
+            GroupCacheEntry entry = groupCache.get( GroupCacheKey.buildDnKey(group.getDn()) );
             if ( !isExpired(entry) ) {
                 entry.setSubgroups( subgroups );
             }
@@ -1376,7 +1375,7 @@ public class LdapGroupManagerImpl implements LdapGroupManager, Lifecycle {
     private LdapRuntimeConfig ldapRuntimeConfig;
     private Goid providerOid;
     private LdapUtils.LdapTemplate ldapTemplate;
-    private Cache groupCache;
+    private SegmentedCache<GroupCacheKey,GroupCacheEntry> groupCache;
     private int cacheSize = DEFAULT_GROUP_CACHE_SIZE;
     private long cacheMaxAge = DEFAULT_GROUP_CACHE_HIERARCHY_MAXAGE;
     private int groupMaxNesting = DEFAULT_GROUP_MAX_NESTING;
@@ -0,0 +1,326 @@
+package com.l7tech.server.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Background writer for a message sink.
+ *
+ * <p>Accepted messages are captured in a preallocated ring buffer and the
+ * sink processes them in batches on a dedicated writer thread, so a slow disk
+ * or syslog peer does not delay the logging thread.</p>
+ *
+ * <p>Messages are processed in the order they were logged. Any source
+ * information that is required is captured on the logging thread (see
+ * {@link LogRecord#getSourceMethodName()}), log records must not be modified
+ * after they are logged.</p>
+ *
+ * @see FullBufferPolicy
+ */
+class AsyncMessageWriter {
+
+    //- PACKAGE
+
+    /**
+     * What happens to a message when the buffer is full.
+     */
+    enum FullBufferPolicy {
+        /**
+         * The logging thread waits for space in the buffer.
+         */
+        BLOCK,
+
+        /**
+         * The oldest message in the buffer is discarded.
+         */
+        DROP_OLDEST,
+
+        /**
+         * The new message is discarded.
+         */
+        DROP
+    }
+
+    /**
+     * Create a writer for the given sink.
+     *
+     * @param sink The sink that processes the messages
+     * @param bufferSize The buffer size (rounded up to a power of two)
+     * @param policy The policy for a full buffer
+     * @param sourceRequired True if the sink uses the source class or method of a log record
+     */
+    AsyncMessageWriter( final MessageSinkSupport sink,
+                        final int bufferSize,
+                        final FullBufferPolicy policy,
+                        final boolean sourceRequired ) {
+        final int capacity = Integer.highestOneBit( Math.max( MIN_BUFFER_SIZE, Math.min( MAX_BUFFER_SIZE, bufferSize ) ) - 1 ) << 1;
+        this.sink = sink;
+        this.policy = policy;
+        this.sourceRequired = sourceRequired;
+        this.categories = new MessageCategory[capacity];
+        this.records = new LogRecord[capacity];
+        this.mask = capacity - 1;
+        this.batchCategories = new MessageCategory[Math.min( capacity, MAX_BATCH_SIZE )];
+        this.batchRecords = new LogRecord[batchCategories.length];
+        this.thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                WRITER_THREAD.set( Boolean.TRUE );
+                try {
+                    write();
+                } finally {
+                    stopped();
+                }
+            }
+        }, "LogSinkWriter-" + sink.getConfiguration().getName() );
+        this.thread.setDaemon( true );
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Add a message to the buffer.
+     *
+     * <p>Messages logged by any sink writer thread (e.g. a sink error) are
+     * never blocked, they are discarded if the buffer is full. This ensures
+     * that writers for different sinks cannot wait on each other. Messages are
+     * processed on the logging thread once the writer is closed.</p>
+     *
+     * @param category The message category
+     * @param record The message data
+     */
+    void message( final MessageCategory category, final LogRecord record ) {
+        if ( sourceRequired ) {
+            // infers the caller from the current stack if not already set
+            record.getSourceMethodName();
+        }
+
+        final boolean writerThread = WRITER_THREAD.get() != null;
+        lock.lock();
+        try {
+            if ( tail - head == records.length ) {
+                if ( policy == FullBufferPolicy.BLOCK && !writerThread ) {
+                    while ( tail - head == records.length && !closed ) {
+                        notFull.awaitUninterruptibly();
+                    }
+                } else if ( policy == FullBufferPolicy.DROP_OLDEST && !writerThread ) {
+                    clear( (int) head & mask );
+                    head++;
+                    dropped.increment();
+                } else {
+                    dropped.increment();
+                    return;
+                }
+            }
+
+            if ( !closed ) {
+                final int index = (int) tail & mask;
+                categories[index] = category;
+                records[index] = record;
+                tail++;
+                if ( writerWaiting ) {
+                    notEmpty.signal();
+                }
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        sink.processMessage( category, record );
+    }
+
+    /**
+     * @return the number of messages waiting to be written
+     */
+    int getQueued() {
+        lock.lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages discarded because the buffer was full or the sink failed
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of messages written
+     */
+    long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Stop the writer once the messages in the buffer are written.
+     *
+     * @param timeout The maximum time to wait in milliseconds
+     */
+    void close( final long timeout ) {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if ( Thread.currentThread() != thread ) {
+            try {
+                thread.join( timeout );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            if ( thread.isAlive() ) {
+                logger.log( Level.WARNING, "Timed out waiting for log sink ''{0}'' to write {1} records.",
+                        new Object[]{ sink.getConfiguration().getName(), getQueued() } );
+            }
+        }
+    }
+
+    //- PRIVATE
+
+    private static final Logger logger = Logger.getLogger( AsyncMessageWriter.class.getName() );
+
+    private static final int MIN_BUFFER_SIZE = 16;
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final long DROP_REPORT_INTERVAL = TimeUnit.SECONDS.toMillis( 10L );
+    private static final ThreadLocal<Boolean> WRITER_THREAD = new ThreadLocal<Boolean>(); // set for all sink writer threads
+
+    private final MessageSinkSupport sink;
+    private final FullBufferPolicy policy;
+    private final boolean sourceRequired;
+    private final Thread thread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final MessageCategory[] categories;
+    private final LogRecord[] records;
+    private final int mask;
+    private long head; // next message to write
+    private long tail; // next free slot
+    private boolean writerWaiting;
+    private volatile boolean closed;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    // only accessed by the writer thread
+    private final MessageCategory[] batchCategories;
+    private final LogRecord[] batchRecords;
+    private long droppedReported;
+    private long droppedReportTime;
+
+    private void clear( final int index ) {
+        categories[index] = null;
+        records[index] = null;
+    }
+
+    /**
+     * Write messages until the writer is closed and the buffer is empty.
+     */
+    private void write() {
+        while ( true ) {
+            final int count;
+            lock.lock();
+            try {
+                while ( head == tail && !closed ) {
+                    writerWaiting = true;
+                    try {
+                        notEmpty.awaitUninterruptibly();
+                    } finally {
+                        writerWaiting = false;
+                    }
+                }
+                if ( head == tail ) {
+                    break;
+                }
+
+                count = (int) Math.min( tail - head, (long) batchRecords.length );
+                for ( int i = 0; i < count; i++ ) {
+                    final int index = (int) (head + (long) i) & mask;
+                    batchCategories[i] = categories[index];
+                    batchRecords[i] = records[index];
+                    clear( index );
+                }
+                head += (long) count;
+                if ( policy == FullBufferPolicy.BLOCK ) {
+                    notFull.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            boolean processed = false;
+            try {
+                sink.processMessages( batchCategories, batchRecords, count );
+                processed = true;
+            } catch ( Exception e ) {
+                // not a good idea to log here, as with synchronous sinks
+            } finally {
+                if ( processed ) {
+                    written.add( (long) count );
+                } else {
+                    dropped.add( (long) count );
+                }
+                for ( int i = 0; i < count; i++ ) {
+                    batchCategories[i] = null;
+                    batchRecords[i] = null;
+                }
+            }
+            reportDropped();
+        }
+        reportDropped();
+    }
+
+    /**
+     * Close the writer when the writer thread exits.
+     *
+     * <p>If the sink failed with an error the messages still in the buffer are
+     * discarded and blocked logging threads are released, later messages are
+     * processed on the logging thread.</p>
+     */
+    private void stopped() {
+        lock.lock();
+        try {
+            closed = true;
+            while ( head != tail ) {
+                clear( (int) head & mask );
+                head++;
+                dropped.increment();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reportDropped() {
+        final long droppedTotal = dropped.sum();
+        final long now = System.currentTimeMillis();
+        if ( droppedTotal != droppedReported && (closed || now - droppedReportTime >= DROP_REPORT_INTERVAL) ) {
+            logger.log( Level.WARNING, "Discarded {0} log records for log sink ''{1}'', the buffer was full or the sink failed ({2} records discarded in total).",
+                    new Object[]{ droppedTotal - droppedReported, sink.getConfiguration().getName(), droppedTotal } );
+            droppedReported = droppedTotal;
+            droppedReportTime = now;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.l7tech.server.log;
+
+/**
+ * Interface that can be implemented by Handlers that can write a batch of
+ * records with a single flush.
+ */
+public interface BatchingHandler {
+
+    /**
+     * Defer flushing of published records until the batch ends.
+     */
+    void beginBatch();
+
+    /**
+     * Flush any records published since the batch began.
+     */
+    void endBatch();
+}
@@ -27,6 +27,7 @@ class FileMessageSink extends MessageSinkSupport implements Serializable {
 
     @Override
     public void close() throws IOException {
+        stopAsyncWriter();
         handler.setErrorManager( new ErrorUnManager() );
         handler.close();
     }
@@ -50,6 +51,39 @@ class FileMessageSink extends MessageSinkSupport implements Serializable {
         handler.publish( record );
     }
 
+    /**
+     * Write the batch with a single flush if supported by the handler.
+     */
+    @Override
+    void processMessages( final MessageCategory[] categories, final LogRecord[] records, final int count ) {
+        if ( handler instanceof BatchingHandler ) {
+            final BatchingHandler batchingHandler = (BatchingHandler) handler;
+            batchingHandler.beginBatch();
+            try {
+                super.processMessages( categories, records, count );
+            } finally {
+                batchingHandler.endBatch();
+            }
+        } else {
+            super.processMessages( categories, records, count );
+        }
+    }
+
+    @Override
+    boolean isSourceRequired() {
+        return logFileConfiguration.getFormatPattern().contains( "%6$" );
+    }
+
+    /**
+     * The diagnostic context filter for the handler is not used, messages are
+     * filtered on the logging thread before they are passed to the writer.
+     */
+    @Override
+    void startAsyncWriter( final int bufferSize, final AsyncMessageWriter.FullBufferPolicy policy ) {
+        handler.setFilter( null );
+        super.startAsyncWriter( bufferSize, policy );
+    }
+
     /**
      * Threshold can be overridden locally.
      */
@@ -114,10 +114,30 @@ public class LogFileConfiguration implements Serializable {
     private final boolean rollingEnabled;
     private final SinkConfiguration.RollingInterval rollingInterval;
 
-    private static final class StartupAwareFileHandler extends FileHandler implements StartupAwareHandler{
+    private static final class StartupAwareFileHandler extends FileHandler implements StartupAwareHandler, BatchingHandler {
+        private boolean batching;
+
         private StartupAwareFileHandler(String pattern, int limit, int count, boolean append) throws IOException, SecurityException {
             super(pattern, limit, count, append);
         }
+
+        @Override
+        public synchronized void flush() {
+            if ( !batching ) {
+                super.flush();
+            }
+        }
+
+        @Override
+        public synchronized void beginBatch() {
+            batching = true;
+        }
+
+        @Override
+        public synchronized void endBatch() {
+            batching = false;
+            super.flush();
+        }
     }
 
 }
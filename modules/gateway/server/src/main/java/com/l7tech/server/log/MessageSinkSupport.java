@@ -25,7 +25,12 @@ abstract class MessageSinkSupport implements MessageSink {
     @Override
     public void message( final MessageCategory category, final LogRecord record ) {        
         if ( record != null && acceptMessage( category, record ) ) {
-            processMessage( category, record );
+            final AsyncMessageWriter writer = this.writer;
+            if ( writer != null ) {
+                writer.message( category, record );
+            } else {
+                processMessage( category, record );
+            }
         }
     }
 
@@ -83,6 +88,64 @@ abstract class MessageSinkSupport implements MessageSink {
      */
     abstract void processMessage( final MessageCategory category, final LogRecord record );
 
+    /**
+     * Process a batch of records from the background writer.
+     *
+     * @param categories The categories for the messages
+     * @param records The records to process
+     * @param count The number of records in the batch
+     */
+    void processMessages( final MessageCategory[] categories, final LogRecord[] records, final int count ) {
+        for ( int i = 0; i < count; i++ ) {
+            processMessage( categories[i], records[i] );
+        }
+    }
+
+    /**
+     * Does this sink use the source class or method of log records.
+     *
+     * <p>The source is inferred from the logging thread so must be captured
+     * before the record is passed to the background writer.</p>
+     *
+     * @return True if the source is used.
+     */
+    boolean isSourceRequired() {
+        return false;
+    }
+
+    /**
+     * Process accepted messages on a background writer thread.
+     *
+     * @param bufferSize The maximum number of messages waiting to be processed
+     * @param policy What to do with a message when the buffer is full
+     */
+    void startAsyncWriter( final int bufferSize, final AsyncMessageWriter.FullBufferPolicy policy ) {
+        final AsyncMessageWriter writer = new AsyncMessageWriter( this, bufferSize, policy, isSourceRequired() );
+        writer.start();
+        this.writer = writer;
+    }
+
+    /**
+     * Stop the background writer (if any) once waiting messages are processed.
+     *
+     * <p>Sinks should call this before releasing resources on close.</p>
+     */
+    void stopAsyncWriter() {
+        final AsyncMessageWriter writer = this.writer;
+        if ( writer != null ) {
+            writer.close( ASYNC_WRITER_CLOSE_TIMEOUT );
+        }
+    }
+
+    /**
+     * Get the background writer for this sink.
+     *
+     * @return The writer or null if messages are processed on the logging thread.
+     */
+    AsyncMessageWriter getAsyncWriter() {
+        return writer;
+    }
+
     /**
      * Exception class used for initialization errors
      */
@@ -98,10 +161,13 @@ abstract class MessageSinkSupport implements MessageSink {
 
     //- PRIVATE
 
+    private static final long ASYNC_WRITER_CLOSE_TIMEOUT = 5000L;
+
     private final SinkConfiguration configuration;
     private final Set<MessageCategory> categories;
     private final int threshold;
     private final MatcherRules rules;
+    private volatile AsyncMessageWriter writer;
 
     private boolean acceptMessage( final MessageCategory category,
                                    final LogRecord record ) {
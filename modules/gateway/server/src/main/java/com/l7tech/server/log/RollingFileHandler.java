@@ -18,12 +18,13 @@ import java.util.logging.*;
  * <p>This class is based on the @{link java.util.logging.FileHandler}.</p>
  * @author KDiep
  */
-public class RollingFileHandler extends StreamHandler implements StartupAwareHandler {
+public class RollingFileHandler extends StreamHandler implements StartupAwareHandler, BatchingHandler {
 
     private final SinkConfiguration.RollingInterval interval;
     private final String prefix;
 
     private long nextRollOver;
+    private boolean batching;
 
     /**
      * Construct a new handler with the given filename prefix and the rolling interval.
@@ -55,6 +56,24 @@ public class RollingFileHandler extends StreamHandler implements StartupAwareHan
         flush();
     }
 
+    @Override
+    public synchronized void flush() {
+        if (!batching) {
+            super.flush();
+        }
+    }
+
+    @Override
+    public synchronized void beginBatch() {
+        batching = true;
+    }
+
+    @Override
+    public synchronized void endBatch() {
+        batching = false;
+        super.flush();
+    }
+
     private synchronized void open() throws IOException {
         LogManager.getLogManager().checkAccess();
         final SimpleDateFormat sdf = new SimpleDateFormat(interval.getPattern());
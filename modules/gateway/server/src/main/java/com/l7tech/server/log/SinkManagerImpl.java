@@ -429,7 +429,11 @@ public class SinkManagerImpl
 
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
-        updateLogLevels( (String)evt.getOldValue(), (String)evt.getNewValue() );
+        if ( SCPROP_LOG_LEVELS.equals( evt.getPropertyName() ) ) {
+            updateLogLevels( (String)evt.getOldValue(), (String)evt.getNewValue() );
+        } else {
+            rebuildLogSinks();
+        }
     }
 
     @Override
@@ -479,6 +483,7 @@ public class SinkManagerImpl
     private static final String DEFAULT_TRAFFIC_LOG_NAME_POSTFIX = "_%g_%u.log";
     private static final long ONE_GIGABYTE = 1024L * 1024L * 1024L;
     private static final long DEFAULT_FILE_SPACE_LIMIT = ONE_GIGABYTE * 5L; //5GB
+    private static final int DEFAULT_ASYNC_BUFFER_SIZE = 8192;
 
     private static final String ROLE_NAME_TYPE_SUFFIX = LogSinkAdmin.ROLE_NAME_TYPE_SUFFIX;
     private static final String ROLE_READ_NAME_PATTERN = RbacAdmin.ROLE_NAME_PREFIX_READ + " {0} " + ROLE_NAME_TYPE_SUFFIX + RbacAdmin.ROLE_NAME_OID_SUFFIX;
@@ -746,6 +751,7 @@ public class SinkManagerImpl
         addConsoleSink( sinks );
         processOldTrafficLoggerConfig( sinks );
         updateTrafficLoggingEnabledState( sinks );
+        startAsyncWriters( sinks );
 
         // install new
         dispatchingSink.setMessageSinks( sinks );
@@ -777,6 +783,31 @@ public class SinkManagerImpl
         }
     }
 
+    /**
+     * Start background writers for file and syslog sinks (if enabled)
+     */
+    private void startAsyncWriters( final List<MessageSink> sinks ) {
+        if ( serverConfig.getBooleanProperty( ServerConfigParams.PARAM_LOG_SINK_ASYNC, true ) ) {
+            final int bufferSize = serverConfig.getIntProperty( ServerConfigParams.PARAM_LOG_SINK_BUFFER_SIZE, DEFAULT_ASYNC_BUFFER_SIZE );
+            final AsyncMessageWriter.FullBufferPolicy policy = getFullBufferPolicy();
+            for ( MessageSink sink : sinks ) {
+                if ( sink instanceof FileMessageSink || sink instanceof SyslogMessageSink ) {
+                    ((MessageSinkSupport) sink).startAsyncWriter( bufferSize, policy );
+                }
+            }
+        }
+    }
+
+    private AsyncMessageWriter.FullBufferPolicy getFullBufferPolicy() {
+        final String value = serverConfig.getProperty( ServerConfigParams.PARAM_LOG_SINK_FULL_POLICY, AsyncMessageWriter.FullBufferPolicy.BLOCK.name() );
+        try {
+            return AsyncMessageWriter.FullBufferPolicy.valueOf( value.trim().toUpperCase() );
+        } catch ( IllegalArgumentException e ) {
+            logger.warning( "Invalid log sink full buffer policy '" + value + "', using " + AsyncMessageWriter.FullBufferPolicy.BLOCK.name() );
+            return AsyncMessageWriter.FullBufferPolicy.BLOCK;
+        }
+    }
+
     /**
      * Enable traffic logging if there are any (enabled) sinks
      */
@@ -55,6 +55,7 @@ class SyslogMessageSink extends MessageSinkSupport {
 
     @Override
     public void close() throws IOException {
+        stopAsyncWriter();
         syslog.close();
     }
 
@@ -82,6 +83,32 @@ class SyslogMessageSink extends MessageSinkSupport {
 
     @Override
     void processMessage(final MessageCategory category, final LogRecord record) {
+        syslog.log(
+                getSeverity(record.getLevel()),
+                process,
+                record.getThreadID(),
+                record.getMillis(),
+                new ConfigurableLogFormatter(getFormatPattern()).format(record,new Object[] {this.getConfiguration().getName()})
+        );
+    }
+
+    @Override
+    boolean isSourceRequired() {
+        return getFormatPattern().contains( "%6$" );
+    }
+
+    //- PRIVATE
+
+    private final Syslog syslog;
+    private final String process;
+    private final boolean isTest;
+
+    /**
+     * Get the format pattern for this sink.
+     *
+     * The format pattern can be overridden either for all sinks or per sink.
+     */
+    private String getFormatPattern() {
         final String name = getConfiguration().getName();
         final String formatName = getConfiguration().getProperty(SinkConfiguration.PROP_SYSLOG_FORMAT);
 
@@ -105,21 +132,9 @@ class SyslogMessageSink extends MessageSinkSupport {
             }
         }
 
-        syslog.log(
-                getSeverity(record.getLevel()),
-                process,
-                record.getThreadID(),
-                record.getMillis(),
-                new ConfigurableLogFormatter(formatPattern).format(record,new Object[] {this.getConfiguration().getName()})
-        );
+        return formatPattern;
     }
 
-    //- PRIVATE
-
-    private final Syslog syslog;
-    private final String process;
-    private final boolean isTest;
-
     /**
      * Map the log record level to a Syslog severity.
      */
@@ -163,12 +163,55 @@ class ChildPolicyEnforcementContext extends PolicyEnforcementContextWrapper impl
             }
         }
 
-        Map<String, Object> vars = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, Object> vars = new ContextVariableMap();
         vars.putAll(context.getVariableMap(forChild.toArray(new String[forChild.size()]), auditor));
         vars.putAll(super.getVariableMap(forParent.toArray(new String[forParent.size()]), auditor));
         return vars;
     }
 
+    @Override
+    public void setVariable( @NotNull final ContextVariableSlot slot, final Object value ) throws VariableNotSettableException {
+        if (isParentVariable(slot.getName())) {
+            super.setVariable(slot, value);
+        } else {
+            context.setVariable( slot, value );
+        }
+    }
+
+    @Override
+    public Object getVariable( @NotNull final ContextVariableSlot slot ) throws NoSuchVariableException {
+        if (isParentVariable(slot.getName())) {
+            return super.getVariable(slot);
+        } else {
+            return context.getVariable(slot);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getVariableMap( @NotNull final ContextVariableSlot[] references, final Audit auditor ) {
+        List<ContextVariableSlot> forChild = new ArrayList<>();
+        List<ContextVariableSlot> forParent = new ArrayList<>();
+
+        for (ContextVariableSlot reference : references) {
+            if (isParentVariable(reference.getName())) {
+                forParent.add(reference);
+            } else {
+                forChild.add(reference);
+            }
+        }
+
+        if (forParent.isEmpty()) {
+            return context.getVariableMap(references, auditor);
+        } else if (forChild.isEmpty()) {
+            return super.getVariableMap(references, auditor);
+        }
+
+        Map<String, Object> vars = new ContextVariableMap();
+        vars.putAll(context.getVariableMap(forChild.toArray(new ContextVariableSlot[forChild.size()]), auditor));
+        vars.putAll(super.getVariableMap(forParent.toArray(new ContextVariableSlot[forParent.size()]), auditor));
+        return vars;
+    }
+
     @Override
     public RoutingResultListener getRoutingResultListener() {
         return context.getRoutingResultListener();
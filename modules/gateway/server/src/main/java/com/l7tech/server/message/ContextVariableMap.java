@@ -0,0 +1,238 @@
+package com.l7tech.server.message;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Mutable case-insensitive map of variable names to values, as returned by
+ * {@link PolicyEnforcementContext#getVariableMap}.
+ *
+ * <p>The map is a copy of the requested variables, built once when the map is created. Later
+ * changes to the context are not visible in the map and changes to the map do not affect the
+ * context.</p>
+ *
+ * <p>Names are case-preserving and entries are iterated in case-insensitive name order, as for
+ * a <code>TreeMap</code> using {@link String#CASE_INSENSITIVE_ORDER}. Entries are held in sorted
+ * arrays, which suits the few variables an assertion uses; lookups are a binary search and
+ * size and iteration need no copying.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+final class ContextVariableMap extends AbstractMap<String,Object> {
+
+    //- PUBLIC
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey( final Object key ) {
+        return key instanceof String && index( (String) key ) >= 0;
+    }
+
+    @Override
+    public Object get( final Object key ) {
+        if ( !(key instanceof String) ) return null;
+        final int index = index( (String) key );
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public Object put( final String key, final Object value ) {
+        if ( key == null ) throw new NullPointerException();
+        final int index = index( key );
+        if ( index >= 0 ) {
+            final Object previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        final int insert = -(index + 1);
+        if ( size == names.length ) {
+            final int capacity = Math.max( DEFAULT_CAPACITY, size * 2 );
+            names = Arrays.copyOf( names, capacity );
+            values = Arrays.copyOf( values, capacity );
+        }
+        System.arraycopy( names, insert, names, insert + 1, size - insert );
+        System.arraycopy( values, insert, values, insert + 1, size - insert );
+        names[insert] = key;
+        values[insert] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public Object remove( final Object key ) {
+        if ( !(key instanceof String) ) return null;
+        final int index = index( (String) key );
+        if ( index < 0 ) return null;
+        final Object previous = values[index];
+        removeAt( index );
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill( names, 0, size, null );
+        Arrays.fill( values, 0, size, null );
+        size = 0;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String,Object>> entrySet() {
+        return entrySet;
+    }
+
+    //- PACKAGE
+
+    /**
+     * Create an empty map.
+     */
+    ContextVariableMap() {
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Create an empty map for the given number of variables.
+     *
+     * @param capacity The expected number of variables
+     */
+    ContextVariableMap( final int capacity ) {
+        names = new String[Math.max( 1, capacity )];
+        values = new Object[names.length];
+    }
+
+    //- PRIVATE
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private String[] names;
+    private Object[] values;
+    private int size;
+    private final Set<Entry<String,Object>> entrySet = new AbstractSet<Entry<String,Object>>() {
+        @NotNull
+        @Override
+        public Iterator<Entry<String,Object>> iterator() {
+            return new Iterator<Entry<String,Object>>() {
+                private int next;
+                private int current = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Entry<String,Object> next() {
+                    if ( next >= size ) throw new NoSuchElementException();
+                    current = next++;
+                    return new VariableEntry( current );
+                }
+
+                @Override
+                public void remove() {
+                    if ( current < 0 ) throw new IllegalStateException();
+                    removeAt( current );
+                    next = current;
+                    current = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            ContextVariableMap.this.clear();
+        }
+    };
+
+    private int index( final String name ) {
+        int low = 0;
+        int high = size - 1;
+        while ( low <= high ) {
+            final int mid = (low + high) >>> 1;
+            final int comparison = String.CASE_INSENSITIVE_ORDER.compare( names[mid], name );
+            if ( comparison < 0 ) {
+                low = mid + 1;
+            } else if ( comparison > 0 ) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void removeAt( final int index ) {
+        final int moved = size - index - 1;
+        System.arraycopy( names, index + 1, names, index, moved );
+        System.arraycopy( values, index + 1, values, index, moved );
+        size--;
+        names[size] = null;
+        values[size] = null;
+    }
+
+    /**
+     * Entry for the variable at an index, valid until the map is next modified.
+     */
+    private final class VariableEntry implements Entry<String,Object> {
+        private final int index;
+
+        private VariableEntry( final int index ) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return names[index];
+        }
+
+        @Override
+        public Object getValue() {
+            return values[index];
+        }
+
+        @Override
+        public Object setValue( final Object value ) {
+            final Object previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( !(o instanceof Entry) ) return false;
+            final Entry<?,?> entry = (Entry<?,?>) o;
+            return eq( getKey(), entry.getKey() ) && eq( getValue(), entry.getValue() );
+        }
+
+        @Override
+        public int hashCode() {
+            final Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+
+        private boolean eq( final Object o1, final Object o2 ) {
+            return o1 == null ? o2 == null : o1.equals( o2 );
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.l7tech.server.message;
+
+import com.l7tech.policy.variable.BuiltinVariables;
+import com.l7tech.util.ConfigFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pre-resolved handle for a context variable name.
+ *
+ * <p>Variable names are interned into integer slots when policies are compiled, so that a
+ * policy enforcement context can store and find them without case-insensitive string
+ * comparisons. Server assertions that access fixed variables on every request should
+ * obtain slots once at construction time and use
+ * {@link PolicyEnforcementContext#getVariable(ContextVariableSlot)},
+ * {@link PolicyEnforcementContext#setVariable(ContextVariableSlot, Object)} and
+ * {@link PolicyEnforcementContext#getVariableMap(ContextVariableSlot[], com.l7tech.gateway.common.audit.Audit)}.</p>
+ *
+ * <p>Slots are only registered while a {@link Scope} is active, which is normally the scope
+ * of a compiled server policy. A slot is released once every scope that registered it has
+ * been closed, after which its index can be reused for another name. Handles obtained outside
+ * of a scope use the slot of a name registered elsewhere if there is one.</p>
+ *
+ * <p>The number of registered slots is bounded by the
+ * <code>com.l7tech.server.message.maxContextVariableSlots</code> property. Built-in
+ * variables are never assigned a slot, nor are names registered once the limit is
+ * reached; such handles are still usable but are resolved by name.</p>
+ */
+public final class ContextVariableSlot {
+
+    //- PUBLIC
+
+    /**
+     * Get the slot for the given variable name, registering the name in the active scope.
+     *
+     * <p>Use this for variables that are set or accessed by their exact name.</p>
+     *
+     * @param name The variable name (case-insensitive, required)
+     * @return The slot, never null
+     */
+    @NotNull
+    public static ContextVariableSlot forName( @NotNull final String name ) {
+        return slot( name, key( name ) );
+    }
+
+    /**
+     * Get slots for the given referenced variable names, registering the names in the active scope.
+     *
+     * <p>A referenced name such as <code>var.mainpart</code> matches the longest period-delimited
+     * prefix that is a set variable, so the slots for each prefix are also resolved.</p>
+     *
+     * @param names The referenced variable names, as returned by {@link com.l7tech.policy.assertion.UsesVariables#getVariablesUsed()}
+     * @return The slots, never null
+     */
+    @NotNull
+    public static ContextVariableSlot[] forReferences( @NotNull final String[] names ) {
+        final ContextVariableSlot[] references = new ContextVariableSlot[names.length];
+        for ( int i=0; i<names.length; i++ ) {
+            references[i] = reference( names[i] );
+        }
+        return references;
+    }
+
+    /**
+     * Get the variable name, as spelled when this handle was obtained.
+     *
+     * @return The variable name, never null
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Is this handle backed by a slot?
+     *
+     * @return false if the variable must be accessed by name
+     */
+    public boolean isSlotted() {
+        return index != UNSLOTTED;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + index + "]";
+    }
+
+    /**
+     * Create a scope for slot registrations.
+     *
+     * @return The new scope, which must be closed to release its slots
+     */
+    @NotNull
+    public static Scope newScope() {
+        return new Scope();
+    }
+
+    /**
+     * The owner of a set of slot registrations, such as a compiled server policy.
+     *
+     * <p>Names are registered in the scope that is active for the current thread. Closing
+     * the scope releases its slots, so it must not be closed while anything that obtained
+     * slots in the scope is still in use.</p>
+     */
+    public static final class Scope implements Closeable {
+
+        /**
+         * Make this the active scope for the current thread.
+         *
+         * <p>Each call must be paired with a call to {@link #exit()}.</p>
+         */
+        public void enter() {
+            activeScopes.get().push( this );
+        }
+
+        /**
+         * Restore the scope that was active when {@link #enter()} was called.
+         */
+        public void exit() {
+            if ( activeScopes.get().pop() != this ) {
+                throw new IllegalStateException( "Scope is not active" );
+            }
+        }
+
+        /**
+         * Release the slots registered in this scope.
+         */
+        @Override
+        public void close() {
+            synchronized ( slots ) {
+                for ( final ContextVariableSlot slot : registered.values() ) {
+                    release( slot );
+                }
+                registered.clear();
+                closed = true;
+            }
+        }
+
+        private final Map<String,ContextVariableSlot> registered = new HashMap<>(); // guarded by slots
+        private boolean closed; // guarded by slots
+
+        private Scope() {
+        }
+    }
+
+    //- PACKAGE
+
+    static final int UNSLOTTED = -1;
+
+    /**
+     * Get the case-folded form of a variable name, as used to find slots.
+     */
+    static String key( final String name ) {
+        return name.toLowerCase( Locale.ROOT );
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the case-folded name, computed once when this handle was obtained.
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Is this a built-in variable, which the context must resolve by name.
+     */
+    boolean isBuiltin() {
+        return builtin;
+    }
+
+    /**
+     * Get the slots for this name and each of its period-delimited prefixes, longest first.
+     */
+    @NotNull
+    ContextVariableSlot[] getCandidates() {
+        return candidates;
+    }
+
+    //- PRIVATE
+
+    private static final int MAX_SLOTS = ConfigFactory.getIntProperty( "com.l7tech.server.message.maxContextVariableSlots", 8192 );
+    private static final ConcurrentMap<String,ContextVariableSlot> slots = new ConcurrentHashMap<>();
+    private static final Deque<Integer> freeIndices = new ArrayDeque<>(); // guarded by slots
+    private static int nextIndex; // guarded by slots
+    private static final ThreadLocal<LinkedList<Scope>> activeScopes = new ThreadLocal<LinkedList<Scope>>() {
+        @Override
+        protected LinkedList<Scope> initialValue() {
+            return new LinkedList<>();
+        }
+    };
+
+    private final String name;
+    private final String key;
+    private final int index;
+    private final boolean builtin;
+    private final ContextVariableSlot[] candidates;
+    private int registrations; // guarded by slots
+
+    private ContextVariableSlot( final String name,
+                                 final String key,
+                                 final int index,
+                                 final boolean builtin,
+                                 final ContextVariableSlot[] candidates ) {
+        this.name = name;
+        this.key = key;
+        this.index = index;
+        this.builtin = builtin;
+        this.candidates = candidates == null ? new ContextVariableSlot[]{ this } : candidates;
+    }
+
+    private static ContextVariableSlot slot( final String name, final String key ) {
+        ContextVariableSlot slot;
+        if ( BuiltinVariables.isSupported( name ) ) {
+            slot = new ContextVariableSlot( name, key, UNSLOTTED, true, null );
+        } else {
+            final Scope scope = activeScopes.get().peek();
+            slot = scope == null ? slots.get( key ) : register( scope, name, key );
+            if ( slot == null ) {
+                slot = new ContextVariableSlot( name, key, UNSLOTTED, false, null );
+            }
+        }
+        if ( !slot.name.equals( name ) ) {
+            slot = new ContextVariableSlot( name, key, slot.index, slot.builtin, null ); // preserve the callers spelling
+        }
+        return slot;
+    }
+
+    /**
+     * Register a name in the given scope, returns null if the slot limit is reached.
+     */
+    private static ContextVariableSlot register( final Scope scope, final String name, final String key ) {
+        synchronized ( slots ) {
+            if ( scope.closed ) {
+                throw new IllegalStateException( "Scope is closed" );
+            }
+
+            ContextVariableSlot slot = scope.registered.get( key );
+            if ( slot == null ) {
+                slot = slots.get( key );
+                if ( slot == null ) {
+                    if ( slots.size() >= MAX_SLOTS ) {
+                        return null;
+                    }
+                    final Integer freeIndex = freeIndices.poll();
+                    slot = new ContextVariableSlot( name, key, freeIndex == null ? nextIndex++ : freeIndex, false, null );
+                    slots.put( key, slot );
+                }
+                slot.registrations++;
+                scope.registered.put( key, slot );
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Release a registration, the caller must hold the slots lock.
+     */
+    private static void release( final ContextVariableSlot slot ) {
+        if ( --slot.registrations == 0 ) {
+            slots.remove( slot.key );
+            freeIndices.push( slot.index );
+        }
+    }
+
+    private static ContextVariableSlot reference( final String name ) {
+        final String key = key( name ).trim();
+        final ContextVariableSlot slot = slot( name, key );
+        if ( slot.builtin || key.indexOf( '.' ) < 0 ) {
+            return slot;
+        }
+
+        final List<ContextVariableSlot> candidates = new ArrayList<>();
+        candidates.add( slot );
+        int pos = key.length();
+        while ( (pos = key.lastIndexOf( '.', pos-1 )) > 0 ) {
+            final String prefix = key.substring( 0, pos );
+            candidates.add( slot( prefix, prefix ) );
+        }
+        return new ContextVariableSlot( name, key, slot.index, false, candidates.toArray( new ContextVariableSlot[candidates.size()] ) );
+    }
+}
@@ -0,0 +1,303 @@
+package com.l7tech.server.message;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Storage for the (non built-in) context variables of a single policy enforcement context.
+ *
+ * <p>Variables are kept in a map keyed by lower case name. Variables whose names have a
+ * {@link ContextVariableSlot} are also indexed in a small open addressing table keyed by slot
+ * index, so that access by slot is a probe of the table. A variable is indexed when it is first
+ * accessed by slot. Since slot indexes are reused once a slot is released, table entries are
+ * matched by both index and name, and the map remains the authority for all variables.</p>
+ *
+ * <p>Names are case-preserving upon storage and case-insensitive upon lookup. Setting an
+ * existing variable using a different case adopts the new spelling. Variables are iterated in
+ * case-insensitive name order, as they were when context variables were held in a
+ * <code>TreeMap</code>.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+final class ContextVariableStore {
+
+    //- PACKAGE
+
+    ContextVariableStore() {
+    }
+
+    /**
+     * Set a variable by name.
+     */
+    void put( @NotNull final String name, @Nullable final Object value ) {
+        put( ContextVariableSlot.UNSLOTTED, ContextVariableSlot.key( name ), name, value );
+    }
+
+    /**
+     * Set a variable by slot.
+     */
+    void put( @NotNull final ContextVariableSlot slot, @Nullable final Object value ) {
+        put( slot.getIndex(), slot.getKey(), slot.getName(), value );
+    }
+
+    /**
+     * Get a variable by name.
+     *
+     * @return The value, null if not set (or set to null)
+     */
+    @Nullable
+    Object get( @NotNull final String name ) {
+        return getByKey( ContextVariableSlot.key( name ) );
+    }
+
+    /**
+     * Get a variable by slot.
+     *
+     * @return The value, null if not set (or set to null)
+     */
+    @Nullable
+    Object get( @NotNull final ContextVariableSlot slot ) {
+        final Variable variable = find( slot.getIndex(), slot.getKey() );
+        return variable == null ? null : variable.value;
+    }
+
+    /**
+     * Finds the longest period-delimited subname of the given name that is a set variable.
+     *
+     * <p>This is equivalent to {@link com.l7tech.policy.variable.Syntax#getMatchingName(String, java.util.Set)}
+     * over the names of the variables in this store.</p>
+     *
+     * @param name The name to match
+     * @return The matched (lower case) name or null if there is no match
+     */
+    @Nullable
+    String getMatchingName( @NotNull final String name ) {
+        final String lname = ContextVariableSlot.key( name ).trim();
+        int pos = lname.length();
+        do {
+            final String tryname = pos == lname.length() ? lname : lname.substring( 0, pos );
+            if ( findByKey( tryname ) != null ) return tryname;
+            pos = lname.lastIndexOf( '.', pos-1 );
+        } while ( pos > 0 );
+
+        return null;
+    }
+
+    /**
+     * Finds the candidate for the longest period-delimited subname of the given reference that is a set variable.
+     *
+     * <p>This is equivalent to {@link #getMatchingName(String)} but uses the slots that were
+     * resolved for the reference.</p>
+     *
+     * @param reference The reference to match
+     * @return The matched candidate (see {@link ContextVariableSlot#getCandidates()}) or null if there is no match
+     */
+    @Nullable
+    ContextVariableSlot getMatchingCandidate( @NotNull final ContextVariableSlot reference ) {
+        for ( final ContextVariableSlot candidate : reference.getCandidates() ) {
+            if ( find( candidate.getIndex(), candidate.getKey() ) != null ) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a variable by lower case name.
+     */
+    @Nullable
+    Object getByKey( @NotNull final String lowerCaseName ) {
+        final Variable variable = findByKey( lowerCaseName );
+        return variable == null ? null : variable.value;
+    }
+
+    /**
+     * Get a read only view of all the variables in this store.
+     *
+     * <p>The view is case-insensitive for lookup and reflects later changes
+     * to the store. Variables are iterated in case-insensitive name order.</p>
+     *
+     * @return The map of variables, never null
+     */
+    @NotNull
+    Map<String,Object> asMap() {
+        if ( view == null ) {
+            view = new VariablesView();
+        }
+        return view;
+    }
+
+    //- PRIVATE
+
+    private static final int INITIAL_CAPACITY = 32; // must be a power of two
+
+    // Open addressing table of slotted variables, keyed by slot index
+    private int[] tableIndexes;
+    private Variable[] tableVariables;
+    private int tableSize;
+    private final Map<String,Variable> variablesByKey = new HashMap<>();
+    private Map<String,Object> view;
+
+    private static final Comparator<Variable> NAME_ORDER = new Comparator<Variable>() {
+        @Override
+        public int compare( final Variable variable1, final Variable variable2 ) {
+            return String.CASE_INSENSITIVE_ORDER.compare( variable1.key, variable2.key );
+        }
+    };
+
+    private static final class Variable {
+        private final String key;
+        private String name;
+        private Object value;
+
+        private Variable( final String key ) {
+            this.key = key;
+        }
+    }
+
+    private Variable findByKey( final String lowerCaseName ) {
+        return variablesByKey.get( lowerCaseName );
+    }
+
+    /**
+     * Find by slot index, falling back to the name for variables not yet indexed under the slot.
+     */
+    private Variable find( final int index, final String lowerCaseName ) {
+        Variable variable = probe( index, lowerCaseName );
+        if ( variable == null ) {
+            variable = variablesByKey.get( lowerCaseName );
+            if ( variable != null && index != ContextVariableSlot.UNSLOTTED ) {
+                index( index, variable ); // set by name or under a previous slot
+            }
+        }
+        return variable;
+    }
+
+    private Variable probe( final int index, final String lowerCaseName ) {
+        if ( index != ContextVariableSlot.UNSLOTTED && tableVariables != null ) {
+            final int mask = tableVariables.length - 1;
+            int position = hash( index ) & mask;
+            Variable current;
+            while ( (current = tableVariables[position]) != null ) {
+                if ( tableIndexes[position] == index && current.key.equals( lowerCaseName ) ) return current;
+                position = (position + 1) & mask;
+            }
+        }
+        return null;
+    }
+
+    private void put( final int index, final String lowerCaseName, final String name, final Object value ) {
+        Variable variable = find( index, lowerCaseName );
+        if ( variable == null ) {
+            variable = new Variable( lowerCaseName );
+            variablesByKey.put( lowerCaseName, variable );
+            if ( index != ContextVariableSlot.UNSLOTTED ) {
+                index( index, variable );
+            }
+        }
+        variable.name = name;
+        variable.value = value;
+    }
+
+    private void index( final int index, final Variable variable ) {
+        if ( tableVariables == null ) {
+            tableIndexes = new int[INITIAL_CAPACITY];
+            tableVariables = new Variable[INITIAL_CAPACITY];
+        } else if ( (tableSize + 1) * 2 > tableVariables.length ) {
+            final int[] oldIndexes = tableIndexes;
+            final Variable[] oldVariables = tableVariables;
+            tableIndexes = new int[oldVariables.length * 2];
+            tableVariables = new Variable[oldVariables.length * 2];
+            for ( int i=0; i<oldVariables.length; i++ ) {
+                if ( oldVariables[i] != null ) insert( oldIndexes[i], oldVariables[i] );
+            }
+        }
+        insert( index, variable );
+        tableSize++;
+    }
+
+    private void insert( final int index, final Variable variable ) {
+        final int mask = tableVariables.length - 1;
+        int position = hash( index ) & mask;
+        while ( tableVariables[position] != null ) {
+            position = (position + 1) & mask;
+        }
+        tableIndexes[position] = index;
+        tableVariables[position] = variable;
+    }
+
+    private static int hash( final int index ) {
+        final int h = (index + 1) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Read only view of the variables.
+     */
+    private final class VariablesView extends AbstractMap<String,Object> {
+        private final Set<Entry<String,Object>> entries = new AbstractSet<Entry<String,Object>>() {
+            @NotNull
+            @Override
+            public Iterator<Entry<String,Object>> iterator() {
+                final Variable[] sorted = variablesByKey.values().toArray( new Variable[variablesByKey.size()] );
+                Arrays.sort( sorted, NAME_ORDER );
+                return new Iterator<Entry<String,Object>>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < sorted.length;
+                    }
+
+                    @Override
+                    public Entry<String,Object> next() {
+                        if ( next >= sorted.length ) throw new NoSuchElementException();
+                        final Variable variable = sorted[next++];
+                        return new SimpleImmutableEntry<>( variable.name, variable.value );
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return variablesByKey.size();
+            }
+        };
+
+        @Override
+        public int size() {
+            return variablesByKey.size();
+        }
+
+        @Override
+        public boolean containsKey( final Object key ) {
+            return key instanceof String && findByKey( ContextVariableSlot.key( (String) key ) ) != null;
+        }
+
+        @Override
+        public Object get( final Object key ) {
+            return key instanceof String ? getByKey( ContextVariableSlot.key( (String) key ) ) : null;
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<String,Object>> entrySet() {
+            return entries;
+        }
+    }
+}
@@ -214,6 +214,32 @@ public interface PolicyEnforcementContext extends AssertionOrdinalProcessor, Clo
      */
     Object getVariable(String name) throws NoSuchVariableException;
 
+    /**
+     * Sets the value of a new or existing context variable using a pre-resolved name.
+     *
+     * <p>This is equivalent to {@link #setVariable(String, Object)} with the slot name
+     * but avoids resolving the name on each call.</p>
+     *
+     * @param slot the slot for the variable to set.  Required.
+     * @param value may be null.
+     * @throws VariableNotSettableException if the variable is known, but not settable.
+     * @see ContextVariableSlot#forName(String)
+     */
+    void setVariable(@NotNull ContextVariableSlot slot, @Nullable Object value) throws VariableNotSettableException;
+
+    /**
+     * Get the value of a context variable using a pre-resolved name.
+     *
+     * <p>This is equivalent to {@link #getVariable(String)} with the slot name
+     * but avoids resolving the name on each call.</p>
+     *
+     * @param slot the slot for the variable to get.  Required.
+     * @return  the Object representing the value of the specified variable.
+     * @throws NoSuchVariableException  if no value is set for the specified variable
+     * @see ContextVariableSlot#forName(String)
+     */
+    Object getVariable(@NotNull ContextVariableSlot slot) throws NoSuchVariableException;
+
     /**
      * Get all none built-in context variables.
      *
@@ -230,6 +256,21 @@ public interface PolicyEnforcementContext extends AssertionOrdinalProcessor, Clo
      */
     Map<String, Object> getVariableMap(String[] names, Audit auditor);
 
+    /**
+     * Get variables Map for pre-resolved variable references in a mutable case-insensitive map.
+     *
+     * <p>This is equivalent to {@link #getVariableMap(String[], Audit)} with the reference
+     * names but avoids resolving the names on each call. The map is a copy of the variables
+     * when it is created, later changes to this context are not visible in the map and
+     * changes to the map do not affect this context.</p>
+     *
+     * @param references variables to retrieve
+     * @param auditor for any audit messages
+     * @return a mutable map of case-insensitive variable name to value. Never null.
+     * @see ContextVariableSlot#forReferences(String[])
+     */
+    Map<String, Object> getVariableMap(@NotNull ContextVariableSlot[] references, Audit auditor);
+
     @RoutingMetricsRelated
     void routingStarted();
 
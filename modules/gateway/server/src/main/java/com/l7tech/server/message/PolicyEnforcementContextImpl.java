@@ -18,7 +18,6 @@ import com.l7tech.policy.assertion.MessageTargetable;
 import com.l7tech.policy.assertion.RoutingStatus;
 import com.l7tech.policy.variable.BuiltinVariables;
 import com.l7tech.policy.variable.NoSuchVariableException;
-import com.l7tech.policy.variable.Syntax;
 import com.l7tech.policy.variable.VariableNotSettableException;
 import com.l7tech.security.xml.processor.ProcessorResult;
 import com.l7tech.server.RequestIdGenerator;
@@ -71,7 +70,7 @@ class PolicyEnforcementContextImpl extends ProcessingContext<AuthenticationConte
     private boolean isRequestClaimingWrongPolicyVersion = false;
     private PublishedService service;
     private Set<AssertionStatus> seenAssertionStatus = new HashSet<>();
-    private final Map<String,Object> variables = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final ContextVariableStore variables = new ContextVariableStore();
     private PolicyContextCache cache;
     private CompositeRoutingResultListener routingResultListener = new CompositeRoutingResultListener();
     private boolean operationAttempted = false;
@@ -332,13 +331,28 @@ class PolicyEnforcementContextImpl extends ProcessingContext<AuthenticationConte
                 throw new RuntimeException("Variable '" + name + "' is supposedly supported, but doesn't exist", e);
             }
         } else {
-            if (variables.containsKey(name)) {
-                variables.remove(name); // So that case change in name will cause map key to be updated as well.
-            }
             variables.put(name, value);
         }
     }
 
+    /**
+     * Sets the value of a new or existing context variable by slot.
+     *
+     * <p>Built-in variables are set by name.</p>
+     *
+     * @param slot the slot for the variable to set.
+     * @param value may be null.
+     * @throws VariableNotSettableException if the variable is known, but not settable.
+     */
+    @Override
+    public void setVariable(@NotNull ContextVariableSlot slot, Object value) throws VariableNotSettableException {
+        if (slot.isBuiltin()) {
+            setVariable(slot.getName(), value);
+        } else {
+            variables.put(slot, value);
+        }
+    }
+
     protected boolean isBuiltinVariable(String name) {
         return BuiltinVariables.isSupported(name) && ServerVariables.isValidForContext(name, this);
     }
@@ -374,9 +388,27 @@ class PolicyEnforcementContextImpl extends ProcessingContext<AuthenticationConte
         return value;
     }
 
+    @Override
+    public Object getVariable(@NotNull ContextVariableSlot slot) throws NoSuchVariableException {
+        if (slot.isBuiltin()) {
+            return getVariable(slot.getName());
+        }
+
+        final Object value = variables.get(slot);
+        if (value == null)
+            throw new NoSuchVariableException(slot.getName(), "The variable \"" + slot.getName() + "\" could not be found.");
+
+        return value;
+    }
+
+    /**
+     * Get a read only view of all non built-in context variables.
+     *
+     * @return A read only map containing none built-in context variable names and values.
+     */
     @Override
     public Map<String, Object> getAllVariables() {
-        return Collections.unmodifiableMap(variables);
+        return variables.asMap();
     }
 
     /**
@@ -393,10 +425,10 @@ class PolicyEnforcementContextImpl extends ProcessingContext<AuthenticationConte
         if (isBuiltinVariable(inName)) {
             value = getBuiltinVariable(inName);
         } else {
-            String mname = Syntax.getMatchingName(inName, variables.keySet());
+            String mname = variables.getMatchingName(inName);
             if (mname != null) {
                 outName = mname;
-                value = variables.get(mname);
+                value = variables.getByKey(mname);
             } else {
                 throw new NoSuchVariableException(inName, "The variable \"" + inName + "\" could not be found.");
             }
@@ -407,7 +439,7 @@ class PolicyEnforcementContextImpl extends ProcessingContext<AuthenticationConte
 
     @Override
     public Map<String, Object> getVariableMap(String[] names, Audit auditor) {
-        Map<String, Object> vars = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, Object> vars = new ContextVariableMap();
         for (String name : names) {
             try {
                 final Pair<String, Object> tuple = getVariableWithNameLookup(name);
@@ -422,6 +454,37 @@ class PolicyEnforcementContextImpl extends ProcessingContext<AuthenticationConte
         return vars;
     }
 
+    @Override
+    public Map<String, Object> getVariableMap(@NotNull ContextVariableSlot[] references, Audit auditor) {
+        Map<String, Object> vars = new ContextVariableMap(references.length);
+        for (ContextVariableSlot reference : references) {
+            final String name = reference.getName();
+            if (reference.isBuiltin()) {
+                try {
+                    final Pair<String, Object> tuple = getVariableWithNameLookup(name);
+                    vars.put(tuple.left, tuple.right);
+                    if (tuple.right == null) {
+                        auditor.logAndAudit(AssertionMessages.VARIABLE_IS_NULL, name);
+                    }
+                } catch (NoSuchVariableException e) {
+                    auditor.logAndAudit(AssertionMessages.NO_SUCH_VARIABLE, name);
+                }
+            } else {
+                final ContextVariableSlot candidate = variables.getMatchingCandidate(reference);
+                if (candidate == null) {
+                    auditor.logAndAudit(AssertionMessages.NO_SUCH_VARIABLE, name);
+                } else {
+                    final Object value = variables.get(candidate);
+                    vars.put(candidate.getKey(), value);
+                    if (value == null) {
+                        auditor.logAndAudit(AssertionMessages.VARIABLE_IS_NULL, name);
+                    }
+                }
+            }
+        }
+        return vars;
+    }
+
     @Override
     public void routingStarted() {
         this.routingStartTime = System.currentTimeMillis();
@@ -274,7 +274,7 @@ public class PolicyEnforcementContextWrapper implements PolicyEnforcementContext
 
     @Override
     public Map<String, Object> getVariableMap(String[] names, Audit auditor) {
-        final Map<String,Object> vars = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final Map<String,Object> vars = new ContextVariableMap();
         final List<String> variableNames = new ArrayList<>();
 
         for (String name : names) {
@@ -295,6 +295,47 @@ public class PolicyEnforcementContextWrapper implements PolicyEnforcementContext
         return vars;
     }
 
+    @Override
+    public void setVariable(@NotNull ContextVariableSlot slot, Object value) throws VariableNotSettableException {
+        if (slot.isBuiltin()) {
+            setVariable(slot.getName(), value);
+        } else {
+            delegate.setVariable( slot, value );
+        }
+    }
+
+    @Override
+    public Object getVariable(@NotNull ContextVariableSlot slot) throws NoSuchVariableException {
+        if (slot.isBuiltin()) {
+            return getVariable(slot.getName());
+        } else {
+            return delegate.getVariable(slot);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getVariableMap(@NotNull ContextVariableSlot[] references, Audit auditor) {
+        final Map<String,Object> vars = new ContextVariableMap();
+        final List<ContextVariableSlot> variableReferences = new ArrayList<>();
+
+        for (ContextVariableSlot reference : references) {
+            if ( reference.isBuiltin() && isBuiltinVariable(reference.getName()) ) {
+                try {
+                    Object value = getBuiltinVariable(reference.getName());
+                    vars.put( reference.getName(), value );
+                } catch (NoSuchVariableException e) {
+                    auditor.logAndAudit( AssertionMessages.NO_SUCH_VARIABLE, reference.getName());
+                }
+            } else {
+                variableReferences.add( reference );
+            }
+        }
+
+        vars.putAll( delegate.getVariableMap( variableReferences.toArray( new ContextVariableSlot[variableReferences.size()] ), auditor ) );
+
+        return vars;
+    }
+
     @Override
     public void routingStarted() {
         delegate.routingStarted();
@@ -14,6 +14,7 @@ import com.l7tech.server.event.metrics.ServiceFinished;
 import com.l7tech.server.event.metrics.GatewayMetricsEvent;
 import com.l7tech.server.message.AssertionTraceListener;
 import com.l7tech.server.message.AuthenticationContext;
+import com.l7tech.server.message.ContextVariableSlot;
 import com.l7tech.server.message.PolicyContextCache;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.PolicyMetadata;
@@ -352,6 +353,23 @@ public final class GatewayMetricsUtils {
                 return Collections.unmodifiableMap(delegate.getVariableMap(names, auditor));
             }
 
+            @Override
+            public void setVariable(@NotNull final ContextVariableSlot slot, @Nullable final Object value) throws VariableNotSettableException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object getVariable(@NotNull final ContextVariableSlot slot) throws NoSuchVariableException {
+                checkOwnerThread();
+                return delegate.getVariable(slot);
+            }
+
+            @Override
+            public Map<String, Object> getVariableMap(@NotNull final ContextVariableSlot[] references, final Audit auditor) {
+                checkOwnerThread();
+                return Collections.unmodifiableMap(delegate.getVariableMap(references, auditor));
+            }
+
             @Override
             public void routingStarted() {
                 throw new UnsupportedOperationException();
@@ -0,0 +1,280 @@
+package com.l7tech.server.policy;
+
+import com.l7tech.gateway.common.service.AssertionProfileStatistics;
+import com.l7tech.objectmodel.Goid;
+import com.l7tech.policy.assertion.Assertion;
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.util.ConfigFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always on profiler for the child assertions of composite assertions.
+ *
+ * <p>Invocation and failure counts are recorded for every evaluation, latency
+ * is recorded for a random sample of evaluations. Counters are striped per
+ * thread and are only merged when statistics are read, latency is recorded
+ * in fixed size log scale histograms, one for each stripe of threads. The
+ * histogram for a stripe is created when it is first used, after that
+ * recording never locks or allocates.</p>
+ *
+ * <p>Statistics are kept by policy and assertion ordinal, so are only
+ * available for assertions in policies from the policy cache.</p>
+ */
+public class AssertionProfiler {
+
+    //- PUBLIC
+
+    public static final String PROP_ENABLED = AssertionProfiler.class.getName() + ".enabled";
+    public static final String PROP_SAMPLE_RATE = AssertionProfiler.class.getName() + ".sampleRate";
+
+    public AssertionProfiler() {
+        this( ConfigFactory.getBooleanProperty( PROP_ENABLED, true ),
+              ConfigFactory.getIntProperty( PROP_SAMPLE_RATE, 16 ) );
+    }
+
+    /**
+     * Create a profiler.
+     *
+     * @param enabled True to enable profiling
+     * @param sampleRate The latency of 1 in sampleRate evaluations is recorded (rounded up to a power of two)
+     */
+    public AssertionProfiler( final boolean enabled, final int sampleRate ) {
+        this.enabled = enabled;
+        this.sampleMask = sampleRate <= 1 ? 0 : Integer.highestOneBit( sampleRate - 1 ) * 2 - 1;
+    }
+
+    /**
+     * Get the profile for an assertion.
+     *
+     * <p>If the assertion at the ordinal in the policy has changed type then
+     * previous statistics are discarded.</p>
+     *
+     * @param assertion The assertion to profile
+     * @return The profile or null if the assertion cannot be profiled
+     */
+    @Nullable
+    public Profile getProfile( @NotNull final Assertion assertion ) {
+        final Goid policyGoid = assertion.ownerPolicyGoid();
+        if ( !enabled || policyGoid == null ) return null;
+
+        ConcurrentMap<Integer,Profile> policyProfiles = profiles.get( policyGoid );
+        if ( policyProfiles == null ) {
+            final ConcurrentMap<Integer,Profile> created = new ConcurrentHashMap<Integer,Profile>();
+            policyProfiles = profiles.putIfAbsent( policyGoid, created );
+            if ( policyProfiles == null ) policyProfiles = created;
+        }
+
+        final Integer ordinal = assertion.getOrdinal();
+        final String assertionName = assertion.getClass().getName();
+        Profile profile = policyProfiles.get( ordinal );
+        if ( profile == null || !profile.assertionName.equals( assertionName ) ) {
+            final Profile created = new Profile( policyGoid, ordinal, assertionName, sampleMask );
+            if ( profile == null ) {
+                profile = policyProfiles.putIfAbsent( ordinal, created );
+                if ( profile == null ) profile = created;
+            } else {
+                policyProfiles.put( ordinal, created );
+                profile = created;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Get the statistics for assertions in a policy.
+     *
+     * @param policyGoid The policy GOID
+     * @return The statistics ordered by assertion ordinal, never null
+     */
+    @NotNull
+    public List<AssertionProfileStatistics> getStatistics( @NotNull final Goid policyGoid ) {
+        final ConcurrentMap<Integer,Profile> policyProfiles = profiles.get( policyGoid );
+        if ( policyProfiles == null ) return Collections.emptyList();
+
+        final List<Integer> ordinals = new ArrayList<Integer>( policyProfiles.keySet() );
+        Collections.sort( ordinals );
+        final List<AssertionProfileStatistics> statistics = new ArrayList<AssertionProfileStatistics>( ordinals.size() );
+        for ( final Integer ordinal : ordinals ) {
+            final Profile profile = policyProfiles.get( ordinal );
+            if ( profile != null ) {
+                statistics.add( profile.getStatistics() );
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Discard the statistics for a policy.
+     *
+     * @param policyGoid The policy GOID
+     */
+    public void reset( @NotNull final Goid policyGoid ) {
+        profiles.remove( policyGoid );
+    }
+
+    /**
+     * Profile for a single assertion.
+     */
+    public static final class Profile {
+
+        /**
+         * Should the latency of the current evaluation be recorded.
+         *
+         * @return True to record latency
+         */
+        public boolean sample() {
+            return sampleMask == 0 || (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+        }
+
+        /**
+         * Record an evaluation of the assertion.
+         *
+         * @param status The status of the evaluation
+         * @param nanos The latency if sampled, else -1
+         */
+        public void record( final AssertionStatus status, final long nanos ) {
+            invocations.increment();
+            if ( status != AssertionStatus.NONE ) {
+                failures.increment();
+            }
+            if ( nanos >= 0L ) {
+                histogram().incrementAndGet( bucket( nanos ) );
+                totalNanos.add( nanos );
+                long max;
+                while ( nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet( max, nanos ) ) {
+                    // retry
+                }
+            }
+        }
+
+        //- PRIVATE
+
+        private final Goid policyGoid;
+        private final int ordinal;
+        private final String assertionName;
+        private final int sampleMask;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicReferenceArray<AtomicLongArray> histograms = new AtomicReferenceArray<AtomicLongArray>( HISTOGRAM_STRIPES );
+
+        private Profile( final Goid policyGoid,
+                         final int ordinal,
+                         final String assertionName,
+                         final int sampleMask ) {
+            this.policyGoid = policyGoid;
+            this.ordinal = ordinal;
+            this.assertionName = assertionName;
+            this.sampleMask = sampleMask;
+        }
+
+        /**
+         * Get the histogram for the current thread's stripe, creating it if necessary.
+         */
+        private AtomicLongArray histogram() {
+            final long id = Thread.currentThread().getId();
+            final int stripe = (int) (id ^ (id >>> 32)) & (HISTOGRAM_STRIPES - 1);
+            AtomicLongArray histogram = histograms.get( stripe );
+            if ( histogram == null ) {
+                histograms.compareAndSet( stripe, null, new AtomicLongArray( BUCKETS ) );
+                histogram = histograms.get( stripe );
+            }
+            return histogram;
+        }
+
+        private AssertionProfileStatistics getStatistics() {
+            final long[] counts = new long[BUCKETS];
+            long samples = 0L;
+            for ( int stripe = 0; stripe < HISTOGRAM_STRIPES; stripe++ ) {
+                final AtomicLongArray histogram = histograms.get( stripe );
+                if ( histogram == null ) continue;
+                for ( int i = 0; i < BUCKETS; i++ ) {
+                    final long count = histogram.get( i );
+                    counts[i] += count;
+                    samples += count;
+                }
+            }
+            final long max = maxNanos.get();
+
+            return new AssertionProfileStatistics(
+                    policyGoid,
+                    ordinal,
+                    assertionName.substring( assertionName.lastIndexOf( '.' ) + 1 ),
+                    invocations.sum(),
+                    failures.sum(),
+                    samples,
+                    samples == 0L ? 0L : totalNanos.sum() / samples,
+                    percentile( counts, samples, 0.50, max ),
+                    percentile( counts, samples, 0.90, max ),
+                    percentile( counts, samples, 0.99, max ),
+                    max );
+        }
+    }
+
+    //- PACKAGE
+
+    /**
+     * Get the histogram bucket for a value, there are four buckets per power of two.
+     */
+    static int bucket( final long nanos ) {
+        final long value = Math.min( nanos, MAX_VALUE );
+        if ( value < 4L ) return (int) Math.max( 0L, value );
+        final int msb = 63 - Long.numberOfLeadingZeros( value );
+        return (msb - 1) * 4 + (int) ((value >>> (msb - 2)) & 3L);
+    }
+
+    /**
+     * Get the smallest value in a histogram bucket.
+     */
+    static long bucketLowerBound( final int bucket ) {
+        if ( bucket < 4 ) return bucket;
+        final int msb = bucket / 4 + 1;
+        return (4L + (long) (bucket % 4)) << (msb - 2);
+    }
+
+    //- PRIVATE
+
+    private static final long MAX_VALUE = (1L << 40) - 1L; // ~18 minutes
+    private static final int BUCKETS = bucket( MAX_VALUE ) + 1;
+    private static final int HISTOGRAM_STRIPES = histogramStripes();
+
+    private final boolean enabled;
+    private final int sampleMask;
+    private final ConcurrentMap<Goid,ConcurrentMap<Integer,Profile>> profiles = new ConcurrentHashMap<Goid,ConcurrentMap<Integer,Profile>>();
+
+    /**
+     * A power of two that is at least twice the number of processors.
+     */
+    private static int histogramStripes() {
+        return Integer.highestOneBit( Math.max( 1, Runtime.getRuntime().availableProcessors() ) * 4 - 1 );
+    }
+
+    /**
+     * The percentile is the upper bound of the bucket containing the value, limited by the maximum.
+     */
+    private static long percentile( final long[] counts, final long samples, final double percentile, final long max ) {
+        if ( samples == 0L ) return 0L;
+        final long rank = (long) Math.ceil( percentile * (double) samples );
+        long seen = 0L;
+        for ( int i = 0; i < counts.length; i++ ) {
+            seen += counts[i];
+            if ( seen >= rank ) {
+                return Math.min( max, bucketLowerBound( i + 1 ) - 1L );
+            }
+        }
+        return max;
+    }
+}
@@ -22,6 +22,7 @@ import com.l7tech.server.event.system.LicenseChangeEvent;
 import com.l7tech.server.event.system.PolicyReloadEvent;
 import com.l7tech.server.event.system.Started;
 import com.l7tech.server.folder.FolderCache;
+import com.l7tech.server.message.ContextVariableSlot;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.assertion.AbstractServerAssertion;
 import com.l7tech.server.policy.assertion.ServerAssertion;
@@ -109,6 +110,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     private ApplicationEventPublisher eventSink;
     private PolicyManager policyManager;
     private PolicyVersionManager policyVersionManager;
+    private AssertionProfiler assertionProfiler;
     private final ServerPolicyFactory policyFactory;
     private final FolderCache folderCache;
     private final EntitiesProcessedInBatch entitiesProcessedInBatch;
@@ -124,6 +126,14 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     private final Map<String, Goid> guidToGoidMap = new HashMap<>();
     private final ConcurrentMap<Pair<PolicyType,String>, Set<String>> policyTypeAndTagToGuidsMap = new ConcurrentHashMap<>();
     private final Map<String, RegisteredPolicy> guidToPolicyMap = new HashMap<>();
+    private volatile CacheSnapshot snapshot = new CacheSnapshot( Collections.emptyMap(), Collections.emptyMap() );
+    private boolean snapshotStale = false;
+    private final Runnable snapshotPublisher = new Runnable() {
+        @Override
+        public void run() {
+            publishSnapshot();
+        }
+    };
 
     //- PUBLIC
 
@@ -151,6 +161,10 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
         this.policyVersionManager = policyVersionManager;
     }
 
+    public void setAssertionProfiler( final AssertionProfiler assertionProfiler ) {
+        this.assertionProfiler = assertionProfiler;
+    }
+
     /**
      *
      */
@@ -178,6 +192,11 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     public PolicyMetadata getPolicyMetadata(Goid policyGoid) {
         checkArgument(!Goid.isDefault(policyGoid), COMPILE_BRAND_NEW_POLICY);
 
+        if ( !ServiceAndPolicyCacheSharedLock.isUpdatingOnCurrentThread() ) {
+            final PolicyCacheEntry pce = snapshot.policies.get( policyGoid );
+            return pce != null && pce.isValid() ? pce.getPolicyMetadata() : null;
+        }
+
         final Lock read = lock.readLock();
         read.lock();
         try {
@@ -195,6 +214,15 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     @Override
     public PolicyMetadata getPolicyMetadataByGuid(String guid) {
 
+        if ( !ServiceAndPolicyCacheSharedLock.isUpdatingOnCurrentThread() ) {
+            final CacheSnapshot current = snapshot;
+            final Goid policyGoid = current.guidToGoid.get( guid );
+            if ( policyGoid == null ) return null;
+            checkArgument(!Goid.isDefault(policyGoid), COMPILE_BRAND_NEW_POLICY);
+            final PolicyCacheEntry pce = current.policies.get( policyGoid );
+            return pce != null && pce.isValid() ? pce.getPolicyMetadata() : null;
+        }
+
         final Lock read = lock.readLock();
         read.lock();
         try {
@@ -244,6 +272,14 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     public ServerPolicyHandle getServerPolicy( final Goid policyGoid ) {
         checkArgument(!Goid.isDefault(policyGoid), COMPILE_BRAND_NEW_POLICY);
 
+        if ( !ServiceAndPolicyCacheSharedLock.isUpdatingOnCurrentThread() ) {
+            final PolicyCacheEntry pce = snapshot.policies.get( policyGoid );
+            if ( pce == null || !pce.isValid() ) return null;
+            final ServerPolicyHandle handle = pce.serverPolicy.tryRef();
+            if ( handle != null ) return handle;
+            // else the entry was closed after being replaced, get the current entry with a lock
+        }
+
         final Lock read = lock.readLock();
         read.lock();
         try {
@@ -262,6 +298,17 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     public ServerPolicyHandle getServerPolicy(final String policyGuid) {
         checkArgument(policyGuid != null, COMPILE_BRAND_NEW_POLICY);
 
+        if ( !ServiceAndPolicyCacheSharedLock.isUpdatingOnCurrentThread() ) {
+            final CacheSnapshot current = snapshot;
+            final Goid goid = current.guidToGoid.get( policyGuid );
+            if ( goid == null ) return null;
+            final PolicyCacheEntry pce = current.policies.get( goid );
+            if ( pce == null || !pce.isValid() ) return null;
+            final ServerPolicyHandle handle = pce.serverPolicy.tryRef();
+            if ( handle != null ) return handle;
+            // else the entry was closed after being replaced, get the current entry with a lock
+        }
+
         final Lock read = lock.readLock();
         read.lock();
         try {
@@ -332,6 +379,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
             guidToPolicyMap.put( policy.getGuid(), policy );
             updateInternal( policy );
         } finally {
+            publishSnapshot();
             write.unlock();
         }
 
@@ -521,6 +569,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
             }
             policyCache.clear();
             guidToGoidMap.clear();
+            snapshotStale = true;
             policyTypeAndTagToGuidsMap.clear();
 
             // rebuild
@@ -539,6 +588,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
             markDirty();
             logger.log( Level.WARNING, "Error accessing policies", fe );
         } finally {
+            publishSnapshot();
             write.unlock();
         }
 
@@ -592,10 +642,19 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     }
 
     private void processEntityInvalidationEvent(EntityInvalidationEvent event) {
-        if( Policy.class.isAssignableFrom( event.getEntityClass() ) ) {
-            processPolicyEntityInvalidationEvent(event);
-        } else if ( PolicyVersion.class.isAssignableFrom( event.getEntityClass() ) ) {
-            processPolicyVersionEntityInvalidationEvent(event);
+        if( Policy.class.isAssignableFrom( event.getEntityClass() ) ||
+                PolicyVersion.class.isAssignableFrom( event.getEntityClass() ) ) {
+            // publish the cache snapshot once for all the policies in the event
+            ServiceAndPolicyCacheSharedLock.beginBatch();
+            try {
+                if( Policy.class.isAssignableFrom( event.getEntityClass() ) ) {
+                    processPolicyEntityInvalidationEvent(event);
+                } else {
+                    processPolicyVersionEntityInvalidationEvent(event);
+                }
+            } finally {
+                ServiceAndPolicyCacheSharedLock.endBatch();
+            }
         }
     }
 
@@ -879,6 +938,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
         if (!PersistentEntityUtil.isLocked(pce.policy))
             throw new IllegalArgumentException("Unlocked policy may not be placed into the policy cache");
         PolicyCacheEntry replaced = policyCache.put( pce.policyId, pce );
+        snapshotStale = true;
         if ( replaced != null ) {
             ResourceUtils.closeQuietly( replaced );
             guidToGoidMap.remove(replaced.policy.getGuid());
@@ -899,6 +959,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     private PolicyCacheEntry cacheRemove( final Goid policyId ) {
         PolicyCacheEntry removed = policyCache.remove( policyId );
         if ( removed != null ) {
+            snapshotStale = true;
             ResourceUtils.closeQuietly( removed );
             guidToGoidMap.remove(removed.policy.getGuid());
             updateUsage( policyId, false, removed.getUsedPolicyIds());
@@ -918,6 +979,16 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
         return removed;
     }
 
+    /**
+     * Discard any assertion profile statistics for the policy
+     */
+    private void resetProfile( final Goid policyId ) {
+        final AssertionProfiler profiler = assertionProfiler;
+        if ( profiler != null ) {
+            profiler.reset( policyId );
+        }
+    }
+
     /**
      * Get an item from the cache
      */
@@ -925,6 +996,20 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
         return policyCache.get( policyId );
     }
 
+    /**
+     * Publish the current cache contents for lock-free readers, if modified.
+     *
+     * If a batch is in progress on the current thread publishing is deferred until the batch ends.
+     *
+     * Caller must hold write lock.
+     */
+    private void publishSnapshot() {
+        if ( snapshotStale && !ServiceAndPolicyCacheSharedLock.deferPublish( snapshotPublisher ) ) {
+            snapshot = new CacheSnapshot( new HashMap<>( policyCache ), new HashMap<>( guidToGoidMap ) );
+            snapshotStale = false;
+        }
+    }
+
     /**
      * Get an item from the cache with a read lock
      */
@@ -979,6 +1064,12 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
             final Map<Goid, Policy> usingPolicies = new HashMap<>();
             findAllUsages( policy.getGoid(), usingPolicies );
 
+            // profiles are by assertion ordinal so must be discarded before the changed policy is compiled
+            final PolicyCacheEntry previous = cacheGet( policy.getGoid() );
+            if ( previous == null || previous.policy == null || !previous.policy.getXml().equals( policy.getXml() ) ) {
+                resetProfile( policy.getGoid() );
+            }
+
             // mark self and users as dirty
             markDirty( Collections.singleton( policy.getGoid() ) );
             markDirty( usingPolicies.keySet() );
@@ -994,6 +1085,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
 
             trace( cacheGet( policy.getGoid() ) );
         } finally {
+            publishSnapshot();
             write.unlock();
         }
 
@@ -1018,6 +1110,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
             } else {
                 removedPolicy = true;
                 final Policy deletedPolicy = pce.policy;
+                resetProfile( goid );
                 final Map<Goid,Policy> usingPolicies = new HashMap<>();
                 findAllUsages( goid, usingPolicies );
                 markDirty( usingPolicies.keySet() );
@@ -1038,6 +1131,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
                 trace( cacheGet( goid ));
             }
         } finally {
+            publishSnapshot();
             write.unlock();
         }
 
@@ -1130,6 +1224,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
         Assertion assertion;
         PolicyMetadata meta = null;
         ServerAssertion serverAssertion = null;
+        ContextVariableSlot.Scope variableSlots = ContextVariableSlot.newScope();
         Exception exception = null;
         MutableObject<Goid> usedInvalidPolicyId = new MutableObject<>();
         try {
@@ -1174,7 +1269,12 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
 
                 // construct server policy and related metadata
                 meta = collectMetadata( thisPolicy, assertion, descendentPolicies );
-                serverAssertion = buildServerPolicy( thisPolicy );
+                variableSlots.enter();
+                try {
+                    serverAssertion = buildServerPolicy( thisPolicy );
+                } finally {
+                    variableSlots.exit();
+                }
             } catch ( ServerPolicyException spe ) {
                 boolean alwaysAuditException = true;
                 if (ExceptionUtils.causedBy(spe, PolicyAssertionException.class)) {
@@ -1194,9 +1294,10 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
             // update cache structure (even if policy is invalid)
             seenGoids.remove( thisPolicyId );
 
-            PolicyCacheEntry pce = createPolicyCacheEntry(thisPolicyId, thisPolicy, dependentVersions, descendentPolicies, meta, serverAssertion, usedInvalidPolicyId.getValue());
+            PolicyCacheEntry pce = createPolicyCacheEntry(thisPolicyId, thisPolicy, dependentVersions, descendentPolicies, meta, serverAssertion, variableSlots, usedInvalidPolicyId.getValue());
 
             cacheReplace(pce);
+            if ( serverAssertion != null ) variableSlots = null; // owned by the cached server policy
             serverAssertion = null; // null here since serverAssertion now in the cache, and will be closed on removal
 
             createPolicyCacheEvent(thisPolicyId, thisPolicy, exception, events, pce);
@@ -1204,6 +1305,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
             return pce;
         } finally {
             ResourceUtils.closeQuietly( serverAssertion );
+            ResourceUtils.closeQuietly( variableSlots );
         }
     }
 
@@ -1293,10 +1395,10 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
     }
 
     @NotNull
-    private PolicyCacheEntry createPolicyCacheEntry(Goid thisPolicyId, Policy thisPolicy, Map<Goid, Integer> dependentVersions, Set<Goid> descendentPolicies, PolicyMetadata meta, ServerAssertion serverAssertion, Goid usedInvalidPolicyId) {
+    private PolicyCacheEntry createPolicyCacheEntry(Goid thisPolicyId, Policy thisPolicy, Map<Goid, Integer> dependentVersions, Set<Goid> descendentPolicies, PolicyMetadata meta, ServerAssertion serverAssertion, ContextVariableSlot.Scope variableSlots, Goid usedInvalidPolicyId) {
         PolicyCacheEntry pce;
         if ( serverAssertion != null ) {
-            ServerPolicy serverPolicy = new ServerPolicy( thisPolicy, meta, descendentPolicies, dependentVersions, serverAssertion, new Nullary<Collection<Folder>>(){
+            ServerPolicy serverPolicy = new ServerPolicy( thisPolicy, meta, descendentPolicies, dependentVersions, serverAssertion, variableSlots, new Nullary<Collection<Folder>>(){
                 @Override
                 public Collection<Folder> call() {
                     return getFolderPath( thisPolicyId );
@@ -1549,6 +1651,7 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
                 }
             }
         } finally {
+            publishSnapshot();
             write.unlock();
         }
 
@@ -1634,6 +1737,23 @@ public class PolicyCacheImpl implements PolicyCache, ApplicationContextAware, Po
         }
     }
 
+    /**
+     * Immutable copy of the cache entries, replaced as a whole when the cache is updated.
+     *
+     * <p>Entries in a snapshot may have been closed since it was published, so a server policy
+     * obtained from a snapshot must be referenced using {@link ServerPolicy#tryRef()}.</p>
+     */
+    private static final class CacheSnapshot {
+        private final Map<Goid, PolicyCacheEntry> policies;
+        private final Map<String, Goid> guidToGoid;
+
+        private CacheSnapshot( final Map<Goid, PolicyCacheEntry> policies,
+                               final Map<String, Goid> guidToGoid ) {
+            this.policies = policies;
+            this.guidToGoid = guidToGoid;
+        }
+    }
+
     private static class PolicyCacheEntry implements Closeable {
         private final Goid policyId;
         private final Policy policy;
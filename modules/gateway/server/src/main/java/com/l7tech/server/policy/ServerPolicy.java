@@ -7,14 +7,19 @@ import com.l7tech.policy.assertion.Assertion;
 import com.l7tech.server.message.metrics.LatencyMetrics;
 import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
+import com.l7tech.server.message.ContextVariableSlot;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.message.metrics.GatewayMetricsUtils;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.policy.assertion.AssertionStatusException;
 import com.l7tech.server.policy.assertion.ServerAssertion;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
 import com.l7tech.server.util.AbstractReferenceCounted;
 import com.l7tech.util.Functions.Nullary;
 import com.l7tech.util.ResourceUtils;
 import com.l7tech.util.TimeSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.*;
@@ -43,6 +48,26 @@ public class ServerPolicy extends AbstractReferenceCounted<ServerPolicyHandle> {
                         final Map<Goid, Integer> dependentVersions,
                         final ServerAssertion rootAssertion,
                         final Nullary<Collection<Folder>> folderPathCallback ) {
+        this( policy, policyMetadata, usedPolicyIds, dependentVersions, rootAssertion, null, folderPathCallback );
+    }
+
+    /**
+     * Create a server policy that owns the context variable slots registered when it was compiled.
+     *
+     * @param policy The policy that the server policy is based on
+     * @param policyMetadata The metadata for the policy
+     * @param usedPolicyIds Identifiers of all used policies (dependencies)
+     * @param dependentVersions Version map for the polcicy dependencies
+     * @param rootAssertion The root of the server policy
+     * @param variableSlots The slot scope the root assertion was compiled in, closed with the policy (may be null)
+     */
+    public ServerPolicy(final Policy policy,
+                        final PolicyMetadata policyMetadata,
+                        final Set<Goid> usedPolicyIds,
+                        final Map<Goid, Integer> dependentVersions,
+                        final ServerAssertion rootAssertion,
+                        @Nullable final ContextVariableSlot.Scope variableSlots,
+                        final Nullary<Collection<Folder>> folderPathCallback ) {
         if ( policy == null ) throw new IllegalArgumentException("policy must not be null");
         if ( policyMetadata == null ) throw new IllegalArgumentException("policyMetadata must not be null");
         if ( usedPolicyIds == null ) throw new IllegalArgumentException("usedPolicyIds must not be null");
@@ -57,6 +82,7 @@ public class ServerPolicy extends AbstractReferenceCounted<ServerPolicyHandle> {
                 folderPathCallback );
         this.policyMetadata = policyMetadata;
         this.rootAssertion = rootAssertion;
+        this.variableSlots = variableSlots;
     }
 
     public AssertionStatus checkRequest(PolicyEnforcementContext context) throws PolicyAssertionException, IOException {
@@ -85,6 +111,57 @@ public class ServerPolicy extends AbstractReferenceCounted<ServerPolicyHandle> {
         return result;
     }
 
+    /**
+     * Check the request, allowing evaluation to be suspended.
+     *
+     * <p>Evaluation can only be suspended if the root assertion of the policy
+     * is a {@link SuspendableServerAssertion}, otherwise this is the same as
+     * {@link #checkRequest(PolicyEnforcementContext)}.</p>
+     *
+     * @param context The context to process (required)
+     * @param resumption The resumption to use if evaluation is suspended (required)
+     * @return The assertion status or null if evaluation was suspended
+     * @throws PolicyAssertionException If there is an error in the policy
+     * @throws IOException If there is a problem reading a request or response
+     * @see SuspendableServerAssertion
+     */
+    public AssertionStatus checkRequest(final PolicyEnforcementContext context,
+                                        final AssertionResumption resumption) throws PolicyAssertionException, IOException {
+        if (!(rootAssertion instanceof SuspendableServerAssertion)) {
+            return checkRequest(context);
+        }
+
+        context.assertionStarting(rootAssertion);
+
+        final long assLatencyStartTime = timeSource.currentTimeMillis();
+        AssertionStatus result;
+        try {
+            result = ((SuspendableServerAssertion<?>) rootAssertion).checkRequest(context, resumption.withCallback(new AssertionResumption.Callback() {
+                @Override
+                public void completed(@NotNull final AssertionStatus status) {
+                    context.assertionFinished(rootAssertion, status, new LatencyMetrics(assLatencyStartTime, timeSource.currentTimeMillis()));
+                    resumption.getCallback().completed(status);
+                }
+
+                @Override
+                public void failed(@NotNull final Throwable failure) {
+                    GatewayMetricsUtils.publishAssertionFinish(context, rootAssertion, new LatencyMetrics(assLatencyStartTime, timeSource.currentTimeMillis()));
+                    resumption.getCallback().failed(failure);
+                }
+            }));
+        } catch (AssertionStatusException e) {
+            result = e.getAssertionStatus();
+        } catch (final Throwable ex) {
+            GatewayMetricsUtils.publishAssertionFinish(context, rootAssertion, new LatencyMetrics(assLatencyStartTime, timeSource.currentTimeMillis()));
+            throw ex;
+        }
+
+        if (result != null)
+            context.assertionFinished(rootAssertion, result, new LatencyMetrics(assLatencyStartTime, timeSource.currentTimeMillis()));
+
+        return result;
+    }
+
     public Assertion getPolicyAssertion() throws IOException {
         return serverPolicyMetadata.getPolicy().getAssertion();
     }
@@ -103,6 +180,7 @@ public class ServerPolicy extends AbstractReferenceCounted<ServerPolicyHandle> {
     @Override
     protected void doClose() {
         ResourceUtils.closeQuietly(rootAssertion);
+        ResourceUtils.closeQuietly(variableSlots);
     }
 
     //- PRIVATE
@@ -110,6 +188,7 @@ public class ServerPolicy extends AbstractReferenceCounted<ServerPolicyHandle> {
     private final PolicyMetadata policyMetadata;
     private final ServerPolicyMetadata serverPolicyMetadata;
     private final ServerAssertion rootAssertion;
+    private final ContextVariableSlot.Scope variableSlots;
     private final TimeSource timeSource = new TimeSource();
 
     private PolicyUniqueIdentifier buildPolicyUniqueIdentifier( final Policy policy,
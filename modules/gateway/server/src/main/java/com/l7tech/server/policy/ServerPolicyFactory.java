@@ -3,6 +3,8 @@ package com.l7tech.server.policy;
 import com.l7tech.gateway.common.LicenseException;
 import com.l7tech.policy.AssertionLicense;
 import com.l7tech.policy.assertion.*;
+import com.l7tech.policy.variable.VariableMetadata;
+import com.l7tech.server.message.ContextVariableSlot;
 import com.l7tech.server.policy.assertion.ServerAssertion;
 import com.l7tech.server.util.Injector;
 import com.l7tech.util.ConstructorInvocation;
@@ -138,6 +140,9 @@ public class ServerPolicyFactory implements ApplicationContextAware {
             if (genericAssertion instanceof CommentAssertion)
                 throw new ServerPolicyException(genericAssertion, "Assertion cannot be compiled because it is a comment assertion");
 
+            if (genericAssertion instanceof SetsVariables)
+                registerVariableSlots((SetsVariables) genericAssertion);
+
             Class genericAssertionClass = genericAssertion.getClass();
             String productClassname = (String)genericAssertion.meta().get(AssertionMetadata.SERVER_ASSERTION_CLASSNAME);
             if (productClassname == null)
@@ -200,6 +205,19 @@ public class ServerPolicyFactory implements ApplicationContextAware {
         }
     }
 
+    /**
+     * Pre-resolve the names of the variables set by the given assertion so that
+     * policy enforcement contexts can store them by slot.
+     */
+    private static void registerVariableSlots(SetsVariables setsVariables) {
+        final VariableMetadata[] variablesSet = setsVariables.getVariablesSet();
+        if (variablesSet == null) return;
+        for (VariableMetadata variableMetadata : variablesSet) {
+            if (variableMetadata != null && !variableMetadata.isPrefixed() && variableMetadata.getName() != null)
+                ContextVariableSlot.forName(variableMetadata.getName());
+        }
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext)
       throws BeansException {
@@ -5,6 +5,7 @@ import com.l7tech.gateway.common.log.GatewayDiagnosticContextKeys;
 import static com.l7tech.objectmodel.EntityUtil.id;
 
 import com.l7tech.policy.assertion.Assertion;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.util.Handle;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.policy.assertion.AssertionStatus;
@@ -13,12 +14,16 @@ import com.l7tech.util.CollectionUtils;
 import com.l7tech.util.Eithers;
 import com.l7tech.util.Eithers.E2;
 import com.l7tech.util.Functions.Nullary;
+import com.l7tech.util.Option;
+import org.jetbrains.annotations.NotNull;
 import static com.l7tech.util.Functions.map;
+import static com.l7tech.util.Option.optional;
 import static java.util.Collections.singleton;
 
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Handle pointing at a ServerPolicy instance.
@@ -51,6 +56,80 @@ public class ServerPolicyHandle extends Handle<ServerPolicy> {
                 } ) );
     }
 
+    /**
+     * Check the request, allowing evaluation to be suspended.
+     *
+     * <p>If evaluation is suspended then the remainder of the policy is
+     * evaluated with the diagnostic context for this policy when resumed. The
+     * handle must not be closed until the resumption callback is invoked.</p>
+     *
+     * @param context The context to process (required)
+     * @param resumption The resumption to use if evaluation is suspended (required)
+     * @return The assertion status or null if evaluation was suspended
+     * @throws PolicyAssertionException If there is an error in the policy
+     * @throws IOException If there is a problem reading a request or response
+     * @see ServerPolicy#checkRequest(PolicyEnforcementContext, AssertionResumption)
+     */
+    public AssertionStatus checkRequest( final PolicyEnforcementContext context,
+                                         final AssertionResumption resumption ) throws PolicyAssertionException, IOException {
+        final ServerPolicy target = getTarget();
+        if (target == null) throw new IllegalStateException("ServerPolicyHandle has already been closed");
+
+        final Map<String,Collection<String>> diagnosticContext = getContext();
+        final PolicyMetadata prev = context.getCurrentPolicyMetadata();
+        final AssertionResumption policyResumption = resumption.withExecutor( new Executor() {
+            @Override
+            public void execute( final Runnable command ) {
+                resumption.getExecutor().execute( new Runnable() {
+                    @Override
+                    public void run() {
+                        HybridDiagnosticContext.doInContext( diagnosticContext, new Nullary<Void>() {
+                            @Override
+                            public Void call() {
+                                command.run();
+                                return null;
+                            }
+                        } );
+                    }
+                } );
+            }
+        } ).withCallback( new AssertionResumption.Callback() {
+            @Override
+            public void completed( @NotNull final AssertionStatus status ) {
+                context.setCurrentPolicyMetadata( prev );
+                resumption.getCallback().completed( status );
+            }
+
+            @Override
+            public void failed( @NotNull final Throwable failure ) {
+                context.setCurrentPolicyMetadata( prev );
+                resumption.getCallback().failed( failure );
+            }
+        } );
+
+        return Eithers.extract2( HybridDiagnosticContext.doInContext(
+                diagnosticContext,
+                new Nullary<E2<PolicyAssertionException, IOException, Option<AssertionStatus>>>() {
+                    @Override
+                    public E2<PolicyAssertionException, IOException, Option<AssertionStatus>> call() {
+                        boolean suspended = false;
+                        try {
+                            context.setCurrentPolicyMetadata( policyMetadata );
+                            final AssertionStatus status = target.checkRequest( context, policyResumption );
+                            suspended = status == null;
+                            return Eithers.right2( optional( status ) );
+                        } catch ( PolicyAssertionException e ) {
+                            return Eithers.left2_1( e );
+                        } catch ( IOException e ) {
+                            return Eithers.left2_2( e );
+                        } finally {
+                            // once suspended the context belongs to the resumed evaluation
+                            if ( !suspended ) context.setCurrentPolicyMetadata( prev );
+                        }
+                    }
+                } ) ).toNull();
+    }
+
     public Assertion getPolicyAssertion() throws IOException {
         final ServerPolicy target = getTarget();
         if (target == null) throw new IllegalStateException("ServerPolicyHandle has already been closed");
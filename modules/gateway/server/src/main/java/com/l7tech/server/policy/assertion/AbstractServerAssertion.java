@@ -7,6 +7,7 @@ import com.l7tech.gateway.common.audit.AuditHaver;
 import com.l7tech.gateway.common.audit.LoggingAudit;
 import com.l7tech.policy.assertion.Assertion;
 import com.l7tech.policy.assertion.UsesVariables;
+import com.l7tech.server.message.ContextVariableSlot;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.variable.ExpandVariables;
 import com.l7tech.server.util.Injector;
@@ -55,7 +56,7 @@ public abstract class AbstractServerAssertion<AT extends Assertion> implements S
 
         if ( assertion instanceof UsesVariables ) {
             final UsesVariables usesVariables = (UsesVariables) assertion;
-            variablesUsed = Option.some( usesVariables.getVariablesUsed() ); //TODO [steve] presumably we want to throw here on invalid variable names?
+            variablesUsed = Option.some( ContextVariableSlot.forReferences( usesVariables.getVariablesUsed() ) ); //TODO [steve] presumably we want to throw here on invalid variable names?
         } else {
             variablesUsed = Option.none();
         }
@@ -209,6 +210,26 @@ public abstract class AbstractServerAssertion<AT extends Assertion> implements S
         return new VariableExpander( audit, variables );
     }
 
+    /**
+     * Get the values of the variables used by this assertion.
+     *
+     * <p>This is equivalent to calling {@link PolicyEnforcementContext#getVariableMap(String[], Audit)}
+     * with the variables used by the assertion, but the variable names are resolved once when
+     * the server assertion is created.</p>
+     *
+     * @param context The context for the request
+     * @return A mutable case-insensitive map of variables, never null
+     * @see ContextVariableSlot#forReferences(String[])
+     */
+    @NotNull
+    protected final Map<String,Object> getVariableMap( @NotNull final PolicyEnforcementContext context ) {
+        if ( variablesUsed.isSome() ) {
+            return context.getVariableMap( variablesUsed.some(), getAudit() );
+        } else {
+            return context.getVariableMap( NO_VARIABLES_USED, getAudit() );
+        }
+    }
+
     /**
      * Support class for variable expansion.
      */
@@ -252,11 +273,13 @@ public abstract class AbstractServerAssertion<AT extends Assertion> implements S
 
     //- PRIVATE
 
+    private static final ContextVariableSlot[] NO_VARIABLES_USED = new ContextVariableSlot[0];
+
     @Inject
     private AuditFactory auditFactory;
     private Injector injector;
     private final AtomicReference<Audit> auditReference = new AtomicReference<Audit>();
-    private final Option<String[]> variablesUsed;
+    private final Option<ContextVariableSlot[]> variablesUsed;
 
     private Audit getAudit( boolean allowLazy ) {
         Audit audit = auditReference.get();
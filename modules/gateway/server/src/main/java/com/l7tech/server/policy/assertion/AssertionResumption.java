@@ -0,0 +1,225 @@
+package com.l7tech.server.policy.assertion;
+
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.util.Functions;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resumes evaluation of a policy that was suspended by a {@link SuspendableServerAssertion}.
+ *
+ * <p>A suspended assertion calls {@link #resume(AssertionStatus)} or
+ * {@link #fail(Throwable)} exactly once when its outcome is available. The
+ * remainder of the policy is then evaluated using the executor, which is
+ * provided by the caller that evaluated the policy and is responsible for
+ * any thread context the policy requires (such as the audit context).</p>
+ *
+ * <p>If the executor rejects the evaluation, for example because it is
+ * saturated or shut down, then the callback is failed with the
+ * {@link RejectedExecutionException} on the calling thread. The remainder
+ * of the policy is never evaluated on the calling thread.</p>
+ *
+ * <p>Composite assertions derive a resumption with their own callback so
+ * that evaluation of their remaining children continues when a child is
+ * resumed.</p>
+ *
+ * @see SuspendableServerAssertion
+ */
+public final class AssertionResumption {
+
+    //- PUBLIC
+
+    /**
+     * Callback for the outcome of a suspended evaluation.
+     *
+     * <p>Callbacks are invoked on the thread that resumes the evaluation and
+     * must not throw.</p>
+     */
+    public interface Callback {
+
+        /**
+         * Report that evaluation completed with the given status.
+         *
+         * @param status The assertion status (never null)
+         */
+        void completed( @NotNull AssertionStatus status );
+
+        /**
+         * Report that evaluation failed.
+         *
+         * @param failure The exception thrown by the evaluation (never null)
+         */
+        void failed( @NotNull Throwable failure );
+    }
+
+    /**
+     * Create a resumption.
+     *
+     * @param executor The executor on which evaluation is resumed
+     * @param callback The callback for the outcome of the evaluation
+     */
+    public AssertionResumption( @NotNull final Executor executor,
+                                @NotNull final Callback callback ) {
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    /**
+     * Resume evaluation with the given status.
+     *
+     * @param status The status of the suspended assertion
+     * @return true if resumed, false if this resumption was already used
+     */
+    public boolean resume( @NotNull final AssertionStatus status ) {
+        return resume( new Callable<AssertionStatus>() {
+            @Override
+            public AssertionStatus call() {
+                return status;
+            }
+        } );
+    }
+
+    /**
+     * Resume evaluation with the status from the given completion.
+     *
+     * <p>The completion is run on the resumed thread before evaluation of the
+     * policy continues, so it can be used to update the context with the
+     * outcome of the non-blocking operation.</p>
+     *
+     * @param completion The completion for the suspended assertion
+     * @return true if resumed, false if this resumption was already used
+     */
+    public boolean resume( @NotNull final Callable<AssertionStatus> completion ) {
+        if ( !resumed.compareAndSet( false, true ) ) return false;
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                AssertionStatus status;
+                try {
+                    status = completion.call();
+                } catch ( AssertionStatusException e ) {
+                    status = e.getAssertionStatus();
+                } catch ( Throwable e ) {
+                    callback.failed( e );
+                    return;
+                }
+                callback.completed( status );
+            }
+        } );
+        return true;
+    }
+
+    /**
+     * Resume evaluation with the given failure.
+     *
+     * <p>An {@link AssertionStatusException} is treated as completion with
+     * the status of the exception, as for synchronous evaluation.</p>
+     *
+     * @param failure The exception for the suspended assertion
+     * @return true if resumed, false if this resumption was already used
+     */
+    public boolean fail( @NotNull final Throwable failure ) {
+        if ( failure instanceof AssertionStatusException ) {
+            return resume( ((AssertionStatusException) failure).getAssertionStatus() );
+        }
+        if ( !resumed.compareAndSet( false, true ) ) return false;
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                callback.failed( failure );
+            }
+        } );
+        return true;
+    }
+
+    /**
+     * Get the callback for the outcome of evaluation.
+     *
+     * <p>The callback is invoked directly when evaluation completes on the
+     * thread that was resumed.</p>
+     *
+     * @return The callback
+     */
+    @NotNull
+    public Callback getCallback() {
+        return callback;
+    }
+
+    /**
+     * Get the executor on which evaluation is resumed.
+     *
+     * @return The executor
+     */
+    @NotNull
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Create a resumption that uses the same executor with a different callback.
+     *
+     * @param callback The callback to use
+     * @return The new resumption
+     */
+    @NotNull
+    public AssertionResumption withCallback( @NotNull final Callback callback ) {
+        return new AssertionResumption( executor, callback );
+    }
+
+    /**
+     * Create a resumption that uses a different executor with the same callback.
+     *
+     * @param executor The executor to use
+     * @return The new resumption
+     */
+    @NotNull
+    public AssertionResumption withExecutor( @NotNull final Executor executor ) {
+        return new AssertionResumption( executor, callback );
+    }
+
+    /**
+     * Create a resumption that transforms the status before invoking this resumption's callback.
+     *
+     * @param transform The transformation for the status
+     * @return The new resumption
+     */
+    @NotNull
+    public AssertionResumption map( @NotNull final Functions.Unary<AssertionStatus, AssertionStatus> transform ) {
+        return withCallback( new Callback() {
+            @Override
+            public void completed( @NotNull final AssertionStatus status ) {
+                final AssertionStatus result;
+                try {
+                    result = transform.call( status );
+                } catch ( Throwable e ) {
+                    callback.failed( e );
+                    return;
+                }
+                callback.completed( result );
+            }
+
+            @Override
+            public void failed( @NotNull final Throwable failure ) {
+                callback.failed( failure );
+            }
+        } );
+    }
+
+    //- PRIVATE
+
+    private final Executor executor;
+    private final Callback callback;
+    private final AtomicBoolean resumed = new AtomicBoolean( false );
+
+    private void execute( final Runnable command ) {
+        try {
+            executor.execute( command );
+        } catch ( RejectedExecutionException e ) {
+            callback.failed( e );
+        }
+    }
+}
@@ -9,7 +9,7 @@ import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
 import com.l7tech.server.message.AuthenticationContext;
 import com.l7tech.server.message.PolicyEnforcementContext;
-import com.l7tech.server.policy.variable.ExpandVariables;
+import com.l7tech.server.policy.variable.ExpandVariablesTemplate;
 import com.l7tech.util.ExceptionUtils;
 import org.apache.commons.lang.StringUtils;
 
@@ -23,15 +23,18 @@ import java.util.regex.PatternSyntaxException;
  * Add/remove header(s) to/from a message.
  */
 public class ServerAddHeaderAssertion extends AbstractMessageTargetableServerAssertion<AddHeaderAssertion> {
-    private final String[] variablesUsed;
 
     // comma followed by an even number of double quotes (i.e. exclude quoted commas)
     private static final Pattern MULTIVALUED_HTTP_HEADER =
             Pattern.compile("(,\\s*)(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
 
+    private final ExpandVariablesTemplate headerNameTemplate;
+    private final ExpandVariablesTemplate headerValueTemplate;
+
     public ServerAddHeaderAssertion(final AddHeaderAssertion assertion) {
         super(assertion);
-        this.variablesUsed = assertion.getVariablesUsed();
+        headerNameTemplate = assertion.getHeaderName() == null ? null : ExpandVariablesTemplate.compile(assertion.getHeaderName());
+        headerValueTemplate = assertion.getHeaderValue() == null ? null : ExpandVariablesTemplate.compile(assertion.getHeaderValue());
     }
 
     @Override
@@ -40,20 +43,20 @@ public class ServerAddHeaderAssertion extends AbstractMessageTargetableServerAss
         AssertionStatus status = AssertionStatus.NONE;
         final HeadersKnob headersKnob = message.getHeadersKnob();
 
-        if (assertion.getHeaderName() == null) {
+        if (headerNameTemplate == null) {
             throw new PolicyAssertionException(assertion, "Header name is null.");
         }
 
-        final Map<String, ?> varMap = context.getVariableMap(variablesUsed, getAudit());
-        final String name = ExpandVariables.process(assertion.getHeaderName(), varMap, getAudit());
+        final Map<String, ?> varMap = getVariableMap(context);
+        final String name = headerNameTemplate.process(varMap, getAudit());
 
         if (StringUtils.isBlank(name)) {
             status = AssertionStatus.FALSIFIED;
             logAndAudit(AssertionMessages.EMPTY_HEADER_NAME);
         } else {
-            final String value = assertion.getHeaderValue() == null
+            final String value = headerValueTemplate == null
                     ? null
-                    : ExpandVariables.process(assertion.getHeaderValue(), varMap, getAudit());
+                    : headerValueTemplate.process(varMap, getAudit());
 
             // TODO validate header name and value before setting
             switch (assertion.getOperation()) {
@@ -10,6 +10,7 @@ import com.l7tech.server.audit.AuditLogFormatter;
 import com.l7tech.server.audit.Auditor;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.variable.ExpandVariables;
+import com.l7tech.server.policy.variable.ExpandVariablesTemplate;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
@@ -29,15 +30,15 @@ public class ServerAuditDetailAssertion extends AbstractServerAssertion<AuditDet
     private static final AuditLogFormatter formatter = new AuditLogFormatter();
     private Logger logger;
     private Auditor auditor;
-    private final String[] varsUsed;
     private final AuditDetailMessage detailMessage;
+    private final ExpandVariablesTemplate detailTemplate;
     private final ApplicationContext springContext;
 
     public ServerAuditDetailAssertion(AuditDetailAssertion subject, ApplicationContext springContext) {
         super(subject);
         this.springContext = springContext;
-        varsUsed = subject.getVariablesUsed();
         detailMessage = findDetailMessage(Level.parse(subject.getLevel()));
+        detailTemplate = subject.getDetail() == null ? null : ExpandVariablesTemplate.compile(subject.getDetail());
     }
 
     @Override
@@ -52,7 +53,7 @@ public class ServerAuditDetailAssertion extends AbstractServerAssertion<AuditDet
 
         for (int i = 0; i < loggerNameVars.length; i++) {
             String loggerNameVar = loggerNameVars[i];
-            String varValue = ExpandVariables.process("${" + loggerNameVar + "}", context.getVariableMap(varsUsed, getAudit()), getAudit()).trim();
+            String varValue = ExpandVariables.process("${" + loggerNameVar + "}", getVariableMap(context), getAudit()).trim();
 
             if (varValue.isEmpty()) {
                 if (i > 0 && varsNotExisting.length() > 0) varsNotExisting.append(", ");
@@ -68,7 +69,7 @@ public class ServerAuditDetailAssertion extends AbstractServerAssertion<AuditDet
         if (varsNotExisting.length() > 0 || varsWithInvalidPackageName.length() > 0) {
             loggerName = ServerAuditDetailAssertion.class.getName();
         } else {
-            loggerName = ExpandVariables.process(loggerName, context.getVariableMap(varsUsed, getAudit()), getAudit());
+            loggerName = ExpandVariables.process(loggerName, getVariableMap(context), getAudit());
         }
 
         logger = Logger.getLogger(loggerName);
@@ -83,8 +84,9 @@ public class ServerAuditDetailAssertion extends AbstractServerAssertion<AuditDet
                 varsWithInvalidPackageName.toString(), ServerAuditDetailAssertion.class.getName());
         }
 
-        String detail = assertion.getDetail();
-        detail = ExpandVariables.process(detail, context.getVariableMap(varsUsed, getAudit()), getAudit());
+        final String detail = detailTemplate == null ?
+                ExpandVariables.process(assertion.getDetail(), getVariableMap(context), getAudit()) :
+                detailTemplate.process(getVariableMap(context), getAudit());
 
         if (assertion.isLoggingOnly()) {
             LogRecord record = new LogRecord(detailMessage.getLevel(), formatter.formatDetail(detailMessage));
@@ -29,7 +29,6 @@ public class ServerContentTypeAssertion extends AbstractMessageTargetableServerA
 
     private final Integer fixedMessagePartNum;
     private final ContentTypeHeader fixedContentType;
-    private final String[] varsUsed;
     private final StashManagerFactory stashManagerFactory;
 
     public ServerContentTypeAssertion(final ContentTypeAssertion assertion, final ApplicationContext springContext ) throws PolicyAssertionException {
@@ -54,14 +53,13 @@ public class ServerContentTypeAssertion extends AbstractMessageTargetableServerA
             fixedMessagePartNum = null;
         }
 
-        varsUsed = assertion.getVariablesUsed();
     }
 
     @Override
     protected AssertionStatus doCheckRequest(PolicyEnforcementContext context, Message message, String messageDescription, AuthenticationContext authContext)
             throws IOException, PolicyAssertionException
     {
-        final Map<String,?> varMap = context.getVariableMap(varsUsed, getAudit());
+        final Map<String,?> varMap = getVariableMap(context);
 
         try {
             if (!assertion.isChangeContentType())
@@ -18,6 +18,7 @@ import com.l7tech.policy.variable.Syntax;
 import com.l7tech.server.StashManagerFactory;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.policy.variable.ExpandVariables;
+import com.l7tech.server.policy.variable.ExpandVariablesTemplate;
 import com.l7tech.util.ConversionUtils;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.IOUtils;
@@ -43,9 +44,11 @@ public class ServerHardcodedResponseAssertion extends AbstractServerAssertion<Ha
 
     private final String message; // message if dynamically processed, else null
     private final byte[] messageBytesNoVar; // message if static, else null
+    private final ExpandVariablesTemplate messageTemplate; // message template if dynamically processed, else null
     private final ContentTypeHeader contentType; // content type if static, else null
+    private final ExpandVariablesTemplate contentTypeTemplate; // content type template if dynamic, else null
+    private final ExpandVariablesTemplate statusTemplate;
     private final boolean earlyResponse;
-    private final String[] variablesUsed;
     private final String singleVariableExpression;
 
     public ServerHardcodedResponseAssertion(final HardcodedResponseAssertion ass,
@@ -72,22 +75,25 @@ public class ServerHardcodedResponseAssertion extends AbstractServerAssertion<Ha
         } else {
             this.contentType = null; // dynamic
         }
+        this.contentTypeTemplate = this.contentType == null ? ExpandVariablesTemplate.compile(ass.getResponseContentType()) : null;
+        this.statusTemplate = ExpandVariablesTemplate.compile(ass.getResponseStatus() == null ? "" : ass.getResponseStatus());
 
         // If the content type is dynamic we cannot cache the response since
         // the encoding can change
         final String responseBody = ass.responseBodyString() == null ? "" : ass.responseBodyString();
         if (this.contentType != null && Syntax.getReferencedNames(responseBody).length == 0) {
             this.message = null;
+            this.messageTemplate = null;
             this.messageBytesNoVar = responseBody.getBytes(contentType.getEncoding());
             this.singleVariableExpression = null;
         } else {
             this.message = responseBody;
+            this.messageTemplate = ExpandVariablesTemplate.compile(responseBody);
             this.messageBytesNoVar = null;
             this.singleVariableExpression = Syntax.getSingleVariableReferenced( responseBody );
         }
 
         this.earlyResponse = ass.isEarlyResponse();
-        this.variablesUsed = ass.getVariablesUsed();
     }
 
     @Override
@@ -101,7 +107,7 @@ public class ServerHardcodedResponseAssertion extends AbstractServerAssertion<Ha
         final HttpResponseKnob hrk = getHttpResponseKnob(response);
 
         final Map<String, Object> variableMap;
-        variableMap = context.getVariableMap(variablesUsed, getAudit());
+        variableMap = getVariableMap(context);
 
 
         final ContentTypeHeader contentType = getResponseContentType(variableMap);
@@ -110,7 +116,7 @@ public class ServerHardcodedResponseAssertion extends AbstractServerAssertion<Ha
         final byte[] bytes = getResponseContent(variableMap, contentType);
 
         final Integer status;
-        final String statusStr = ExpandVariables.process(assertion.getResponseStatus(), variableMap, getAudit());
+        final String statusStr = statusTemplate.process(variableMap, getAudit());
         final Option<Integer> option = ConversionUtils.getTextToIntegerConverter().call(statusStr);
         if (option.isSome() && option.some() > 0) {
             status = option.some();
@@ -178,11 +184,8 @@ public class ServerHardcodedResponseAssertion extends AbstractServerAssertion<Ha
     private ContentTypeHeader getResponseContentType(final Map<String, Object> variableMap) {
         ContentTypeHeader contentType = this.contentType;
 
-        if (contentType == null && assertion.getResponseContentType() != null) {
-            final String contentTypeStr = ExpandVariables.process(
-                    assertion.getResponseContentType(),
-                    variableMap,
-                    getAudit());
+        if (contentType == null && contentTypeTemplate != null) {
+            final String contentTypeStr = contentTypeTemplate.process(variableMap, getAudit());
             try {
                 contentType = ContentTypeHeader.parseValue(contentTypeStr);
             } catch (IOException e) {
@@ -216,7 +219,7 @@ public class ServerHardcodedResponseAssertion extends AbstractServerAssertion<Ha
             }
 
             if ( null == bytes ) {
-                msg = ExpandVariables.process( msg, variableMap, getAudit() );
+                msg = messageTemplate.process( variableMap, getAudit() );
                 bytes = msg.getBytes( contentType.getEncoding() );
             }
         } else {
@@ -30,7 +30,6 @@ public class ServerMapValueAssertion extends AbstractServerAssertion<MapValueAss
     private static final int PATTERN_FLAGS = Pattern.DOTALL | Pattern.MULTILINE;
 
     private final List<MapValueMapping> mappings;
-    private final String[] varsUsed;
 
     public ServerMapValueAssertion(@NotNull final MapValueAssertion assertion) {
         this(assertion, null);
@@ -47,7 +46,6 @@ public class ServerMapValueAssertion extends AbstractServerAssertion<MapValueAss
         }
 
         this.mappings = mappings;
-        this.varsUsed = assertion.getVariablesUsed();
     }
 
     @Override
@@ -57,7 +55,7 @@ public class ServerMapValueAssertion extends AbstractServerAssertion<MapValueAss
             return AssertionStatus.SERVER_ERROR;
         }
 
-        final Map<String,Object> variableMap = context.getVariableMap(varsUsed, getAudit());
+        final Map<String,Object> variableMap = getVariableMap(context);
         String inputStr = ExpandVariables.process(assertion.getInputExpr(), variableMap, getAudit());
 
         for (MapValueMapping mapping : mappings) {
@@ -30,7 +30,6 @@ public class ServerResolveServiceAssertion extends AbstractServerAssertion<Resol
     @Inject
     ServiceCache serviceCache;
 
-    private final String[] varsUsed;
 
     @SuppressWarnings({"UnusedDeclaration"})
     public ServerResolveServiceAssertion(@NotNull final ResolveServiceAssertion assertion) {
@@ -39,12 +38,11 @@ public class ServerResolveServiceAssertion extends AbstractServerAssertion<Resol
 
     public ServerResolveServiceAssertion(@NotNull ResolveServiceAssertion assertion, @Nullable AuditFactory auditFactory) {
         super(assertion, auditFactory);
-        this.varsUsed = assertion.getVariablesUsed();
     }
 
     @Override
     public AssertionStatus checkRequest(PolicyEnforcementContext context) throws IOException, PolicyAssertionException {
-        Map<String, ?> vars = context.getVariableMap(varsUsed, getAudit());
+        Map<String, ?> vars = getVariableMap(context);
 
         final String variablePrefix = assertion.getPrefix();
 
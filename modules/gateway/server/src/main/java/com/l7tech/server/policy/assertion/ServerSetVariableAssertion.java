@@ -33,7 +33,6 @@ import java.util.Map;
  * @author alex
  */
 public class ServerSetVariableAssertion extends AbstractServerAssertion<SetVariableAssertion> {
-    private final String[] varsUsed;
     @Inject
     private DateTimeConfigUtils dateParser;
     @Inject
@@ -51,7 +50,6 @@ public class ServerSetVariableAssertion extends AbstractServerAssertion<SetVaria
 
     public ServerSetVariableAssertion(SetVariableAssertion assertion) throws PolicyAssertionException {
         super(assertion);
-        varsUsed = assertion.getVariablesUsed();
         compiledTemplate = new ExpandVariablesTemplate(assertion.expression());
         singleVariableName = Syntax.getSingleVariableReferenced( assertion.expression() );
         final String dateFormat = assertion.getDateFormat();
@@ -67,7 +65,7 @@ public class ServerSetVariableAssertion extends AbstractServerAssertion<SetVaria
 
     @Override
     public AssertionStatus checkRequest(PolicyEnforcementContext context) throws IOException, PolicyAssertionException {
-        final Map<String,Object> vars = context.getVariableMap(varsUsed, getAudit());
+        final Map<String,Object> vars = getVariableMap(context);
 
         final DataType dataType = assertion.getDataType();
         if (dataType == DataType.STRING) {
@@ -137,7 +137,8 @@ public abstract class ServerXpathAssertion<AT extends SimpleXpathAssertion> exte
             return AssertionStatus.FAILED;
         }
 
-        final ElementCursor cursor;
+        ElementCursor cursor = null;
+        XpathResult xpathResult = null;
         try {
             boolean usePlaceholderMessage = false;
             if (!message.isXml()) {
@@ -160,6 +161,13 @@ public abstract class ServerXpathAssertion<AT extends SimpleXpathAssertion> exte
                 // Use a cursor backed by DOM so we can have Element results and/or XPath variables and/or XPath versions above 1.0
                 logAndAudit( AssertionMessages.XPATH_NOT_ACCELERATED );
                 cursor = new DomElementCursor(message.getXmlKnob().getDocumentReadOnly());
+            } else if ( velement == null && compiledXpath instanceof StreamingCompiledXpath && !message.getXmlKnob().isDomParsed() ) {
+                // Forward only expression, evaluate over the message bytes without building a DOM
+                final XmlKnob xmlKnob = message.getXmlKnob();
+                xpathResult = ((StreamingCompiledXpath) compiledXpath).evaluate(xmlKnob.getInputSource(false));
+                if (xpathResult == null) {
+                    cursor = xmlKnob.getElementCursor();
+                }
             } else {
                 final XmlKnob xmlKnob = message.getXmlKnob();
                 cursor = xmlKnob.getElementCursor();
@@ -174,16 +182,17 @@ public abstract class ServerXpathAssertion<AT extends SimpleXpathAssertion> exte
             return AssertionStatus.FAILED;
         }
 
-        cursor.moveToRoot();
+        if (cursor != null) {
+            cursor.moveToRoot();
 
-        XpathResult xpathResult = null;
-        try {
-            XpathVariableFinder variableFinder = xpathContainsVariables ? new PolicyEnforcementContextXpathVariableFinder(context) : null;
-            xpathResult = cursor.getXpathResult(compiledXpath, variableFinder, velement != null);
-        } catch (XPathExpressionException e) {
-            // Log it, but treat it as null
-            if (logger.isLoggable(Level.WARNING))
-                logger.log(Level.WARNING, "XPath failed: " + ExceptionUtils.getMessage(e), ExceptionUtils.getDebugException(e));
+            try {
+                XpathVariableFinder variableFinder = xpathContainsVariables ? new PolicyEnforcementContextXpathVariableFinder(context) : null;
+                xpathResult = cursor.getXpathResult(compiledXpath, variableFinder, velement != null);
+            } catch (XPathExpressionException e) {
+                // Log it, but treat it as null
+                if (logger.isLoggable(Level.WARNING))
+                    logger.log(Level.WARNING, "XPath failed: " + ExceptionUtils.getMessage(e), ExceptionUtils.getDebugException(e));
+            }
         }
         if (xpathResult == null) {
             logAndAudit( req ? AssertionMessages.XPATH_PATTERN_NOT_MATCHED_REQUEST_MI
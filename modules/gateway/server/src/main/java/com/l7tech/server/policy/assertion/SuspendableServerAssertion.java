@@ -0,0 +1,43 @@
+package com.l7tech.server.policy.assertion;
+
+import com.l7tech.policy.assertion.Assertion;
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.policy.assertion.PolicyAssertionException;
+import com.l7tech.server.message.PolicyEnforcementContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * A server assertion that can suspend policy evaluation while it waits for a
+ * non-blocking operation, such as a routing request, to complete.
+ *
+ * <p>Suspension is only possible when the caller evaluates the assertion
+ * with a resumption. When evaluated with
+ * {@link #checkRequest(PolicyEnforcementContext)} the assertion must
+ * complete before returning as for any other assertion.</p>
+ *
+ * <p>After suspending, the assertion and the caller must not use the
+ * context until evaluation is resumed, since the resumption may occur on
+ * another thread at any time (including before the suspending call
+ * returns).</p>
+ *
+ * @see AssertionResumption
+ */
+public interface SuspendableServerAssertion<AT extends Assertion> extends ServerAssertion<AT> {
+
+    /**
+     * Process the given request, suspending evaluation if necessary.
+     *
+     * @param context the PolicyEnforcementContext.  Never null.
+     * @param resumption the resumption to use if evaluation is suspended.  Never null.
+     * @return The assertion status or null if evaluation was suspended
+     * @throws PolicyAssertionException something is wrong in the policy
+     * @throws IOException if there is a problem reading a request or response
+     * @throws AssertionStatusException as an alternate mechanism to return an assertion status other than AssertionStatus.NONE.
+     */
+    @Nullable
+    AssertionStatus checkRequest( @NotNull PolicyEnforcementContext context,
+                                  @NotNull AssertionResumption resumption ) throws IOException, PolicyAssertionException;
+}
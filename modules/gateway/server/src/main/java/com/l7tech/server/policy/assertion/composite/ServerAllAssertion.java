@@ -5,11 +5,13 @@ import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
 import com.l7tech.policy.assertion.composite.AllAssertion;
 import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.policy.assertion.AssertionResumption;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
 
-public final class ServerAllAssertion extends ServerCompositeAssertion<AllAssertion> {
+public final class ServerAllAssertion extends ServerCompositeAssertion<AllAssertion> implements SuspendableServerAssertion<AllAssertion> {
 
     private final AssertionResultListener assertionResultListener = new AssertionResultListener() {
         @Override
@@ -32,4 +34,9 @@ public final class ServerAllAssertion extends ServerCompositeAssertion<AllAssert
         return iterateChildren(context, assertionResultListener);
     }
 
+    @Override
+    public AssertionStatus checkRequest( final PolicyEnforcementContext context, final AssertionResumption resumption ) throws IOException, PolicyAssertionException {
+        return iterateChildren(context, assertionResultListener, resumption);
+    }
+
 }
@@ -10,13 +10,18 @@ import com.l7tech.policy.variable.BuiltinVariables;
 import com.l7tech.policy.variable.PolicyVariableUtils;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.message.metrics.GatewayMetricsUtils;
+import com.l7tech.server.policy.AssertionProfiler;
 import com.l7tech.server.policy.ServerPolicyFactory;
 import com.l7tech.server.policy.assertion.AbstractServerAssertion;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.policy.assertion.AssertionStatusException;
 import com.l7tech.server.policy.assertion.ServerAssertion;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.ResourceUtils;
 import com.l7tech.util.TimeSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.BeanFactory;
 
 import java.io.IOException;
@@ -33,6 +38,7 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
     private static final Logger logger = Logger.getLogger(ServerCompositeAssertion.class.getName());
     private List<ServerAssertion> children;
     private final boolean[] recordLatencyInContext;
+    private final AssertionProfiler.Profile[] profiles;
     protected final TimeSource timeSource;
 
     public ServerCompositeAssertion(CT composite, BeanFactory beanFactory) throws PolicyAssertionException, LicenseException {
@@ -41,11 +47,15 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
             throw new IllegalArgumentException("The Application Context is required");
 
         final ServerPolicyFactory pf = beanFactory.getBean("policyFactory", ServerPolicyFactory.class);
+        final AssertionProfiler profiler = beanFactory.containsBean("assertionProfiler") ?
+                beanFactory.getBean("assertionProfiler", AssertionProfiler.class) :
+                null;
 
         final List<ServerAssertion> result = new ArrayList<ServerAssertion>(composite.getChildren().size());
 
         timeSource = getTimeSource();
         recordLatencyInContext = new boolean[composite.getChildren().size()];
+        profiles = new AssertionProfiler.Profile[composite.getChildren().size()];
         try {
             Assertion prevChild = null;
             int index = 0;
@@ -58,6 +68,7 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
                     }
                 }
                 prevChild = child;
+                profiles[index] = profiler == null ? null : profiler.getProfile(child);
                 index++;
                 final ServerAssertion sass = pf.compileSubtree(child);
                 assert sass != null;
@@ -114,7 +125,7 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
      * Iterate the children of composite assertion, notify the context that an assertion
      * is about to begin evaluation, evaluate the child assertion, notify the context that
      * an assertion is finished, notify the AssertionResultListener that an assertion is finished
-     * and if necessary, capture the assertion latency.
+     * and if necessary, capture the assertion latency and profile the assertion.
      *
      * @param context The PolicyEnforcementContext attached to the request
      * @param listener The listener which will be notified when a child assertion is finished.
@@ -135,6 +146,8 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
             if (recordLatencyInContext[i]) {
                 startTime = timeSource.nanoTime();
             }
+            final AssertionProfiler.Profile profile = profiles[i];
+            final long profileStartTime = profile != null && profile.sample() ? timeSource.nanoTime() : -1L;
             final long assLatencyStartTime = timeSource.currentTimeMillis();
             final long assLatencyEndTime;
             try {
@@ -142,11 +155,17 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
             } catch (AssertionStatusException e) {
                 result = e.getAssertionStatus();
             } catch (final Throwable ex) {
+                if (profile != null) {
+                    profile.record(AssertionStatus.SERVER_ERROR, profileStartTime < 0L ? -1L : timeSource.nanoTime() - profileStartTime);
+                }
                 GatewayMetricsUtils.publishAssertionFinish(context, kid, new LatencyMetrics(assLatencyStartTime, timeSource.currentTimeMillis()));
                 throw ex;
             } finally {
                 assLatencyEndTime = timeSource.currentTimeMillis();
             }
+            if (profile != null) {
+                profile.record(result, profileStartTime < 0L ? -1L : timeSource.nanoTime() - profileStartTime);
+            }
             if (recordLatencyInContext[i]) {
                 context.setAssertionLatencyNanos(timeSource.nanoTime() - startTime);
             }
@@ -164,6 +183,29 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
         return result;
     }
 
+    /**
+     * Iterate the children of composite assertion as for {@link #iterateChildren(PolicyEnforcementContext, AssertionResultListener)}
+     * but allow evaluation to be suspended by a {@link SuspendableServerAssertion} child.
+     *
+     * <p>If a child suspends evaluation then this method returns null and
+     * iteration of the remaining children continues when the child is resumed.
+     * The status of the iteration is then passed to the callback of the given
+     * resumption.</p>
+     *
+     * @param context The PolicyEnforcementContext attached to the request
+     * @param listener The listener which will be notified when a child assertion is finished.
+     * @param resumption The resumption for the result of the iteration
+     * @return The assertion status or null if evaluation was suspended
+     * @throws IOException if there is a problem reading a request or response
+     * @throws PolicyAssertionException as an alternate mechanism to return an assertion status other than AssertionStatus.NONE.
+     */
+    @Nullable
+    protected final AssertionStatus iterateChildren(final PolicyEnforcementContext context,
+                                                    final AssertionResultListener listener,
+                                                    final AssertionResumption resumption) throws IOException, PolicyAssertionException {
+        return iterateChildren(context, listener, resumption, 0, AssertionStatus.NONE);
+    }
+
     @Override
     public void close() {
         for (ServerAssertion child : children) {
@@ -175,6 +217,143 @@ public abstract class ServerCompositeAssertion<CT extends CompositeAssertion>
         }
     }
 
+    @Nullable
+    private AssertionStatus iterateChildren(final PolicyEnforcementContext context,
+                                            final AssertionResultListener listener,
+                                            final AssertionResumption resumption,
+                                            final int from,
+                                            AssertionStatus result) throws IOException, PolicyAssertionException {
+        final List<ServerAssertion> kids = getChildren();
+
+        for (int i = from; i < kids.size(); i++) {
+            final ChildEvaluation evaluation = new ChildEvaluation(context, i);
+            final long assLatencyEndTime;
+            try {
+                if (evaluation.kid instanceof SuspendableServerAssertion) {
+                    result = ((SuspendableServerAssertion<?>) evaluation.kid).checkRequest(
+                            context,
+                            resumption.withCallback(new ChildResumption(context, listener, resumption, evaluation)));
+                    if (result == null) {
+                        // suspended, the context may now be in use by another thread
+                        return null;
+                    }
+                } else {
+                    result = evaluation.kid.checkRequest(context);
+                }
+            } catch (AssertionStatusException e) {
+                result = e.getAssertionStatus();
+            } catch (final Throwable ex) {
+                evaluation.failed(context);
+                throw ex;
+            } finally {
+                assLatencyEndTime = timeSource.currentTimeMillis();
+            }
+
+            if (!evaluation.finished(context, result, assLatencyEndTime, listener)) {
+                return result;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Profiling and latency information for the evaluation of a child assertion.
+     */
+    private final class ChildEvaluation {
+        private final ServerAssertion kid;
+        private final int index;
+        private final AssertionProfiler.Profile profile;
+        private final long startTime;
+        private final long profileStartTime;
+        private final long assLatencyStartTime;
+
+        private ChildEvaluation(final PolicyEnforcementContext context, final int index) {
+            this.kid = children.get(index);
+            this.index = index;
+
+            context.assertionStarting(kid);
+
+            startTime = recordLatencyInContext[index] ? timeSource.nanoTime() : 0L;
+            profile = profiles[index];
+            profileStartTime = profile != null && profile.sample() ? timeSource.nanoTime() : -1L;
+            assLatencyStartTime = timeSource.currentTimeMillis();
+        }
+
+        private void failed(final PolicyEnforcementContext context) {
+            if (profile != null) {
+                profile.record(AssertionStatus.SERVER_ERROR, profileStartTime < 0L ? -1L : timeSource.nanoTime() - profileStartTime);
+            }
+            GatewayMetricsUtils.publishAssertionFinish(context, kid, new LatencyMetrics(assLatencyStartTime, timeSource.currentTimeMillis()));
+        }
+
+        /**
+         * @return True to proceed to the next child assertion.
+         */
+        private boolean finished(final PolicyEnforcementContext context,
+                                 final AssertionStatus result,
+                                 final long assLatencyEndTime,
+                                 final AssertionResultListener listener) {
+            if (profile != null) {
+                profile.record(result, profileStartTime < 0L ? -1L : timeSource.nanoTime() - profileStartTime);
+            }
+            if (recordLatencyInContext[index]) {
+                context.setAssertionLatencyNanos(timeSource.nanoTime() - startTime);
+            }
+            context.assertionFinished(kid, result, new LatencyMetrics(assLatencyStartTime, assLatencyEndTime));
+
+            return listener == null || listener.assertionFinished(context, result);
+        }
+    }
+
+    /**
+     * Callback that finishes a resumed child and continues with the remaining children.
+     */
+    private final class ChildResumption implements AssertionResumption.Callback {
+        private final PolicyEnforcementContext context;
+        private final AssertionResultListener listener;
+        private final AssertionResumption resumption;
+        private final ChildEvaluation evaluation;
+
+        private ChildResumption(final PolicyEnforcementContext context,
+                                final AssertionResultListener listener,
+                                final AssertionResumption resumption,
+                                final ChildEvaluation evaluation) {
+            this.context = context;
+            this.listener = listener;
+            this.resumption = resumption;
+            this.evaluation = evaluation;
+        }
+
+        @Override
+        public void completed(@NotNull final AssertionStatus status) {
+            final AssertionStatus result;
+            try {
+                if (evaluation.finished(context, status, timeSource.currentTimeMillis(), listener)) {
+                    result = iterateChildren(context, listener, resumption, evaluation.index + 1, status);
+                } else {
+                    result = status;
+                }
+            } catch (AssertionStatusException e) {
+                resumption.getCallback().completed(e.getAssertionStatus());
+                return;
+            } catch (Throwable e) {
+                resumption.getCallback().failed(e);
+                return;
+            }
+
+            if (result != null) {
+                resumption.getCallback().completed(result);
+            }
+        }
+
+        @Override
+        public void failed(@NotNull final Throwable failure) {
+            evaluation.failed(context);
+            resumption.getCallback().failed(failure);
+        }
+    }
+
     /**
      * Interface that can be implemented by ServerCompositeAssertion users who wish to be notified every time a
      * child ServerAssertion finishes executing in a Composite Assertion.
@@ -5,30 +5,53 @@ import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
 import com.l7tech.policy.assertion.composite.ExactlyOneAssertion;
 import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.policy.assertion.AssertionResumption;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
+import com.l7tech.util.Functions;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
 
-public final class ServerExactlyOneAssertion extends ServerCompositeAssertion<ExactlyOneAssertion> {
+public final class ServerExactlyOneAssertion extends ServerCompositeAssertion<ExactlyOneAssertion> implements SuspendableServerAssertion<ExactlyOneAssertion> {
     public ServerExactlyOneAssertion( ExactlyOneAssertion data, ApplicationContext applicationContext ) throws PolicyAssertionException, LicenseException {
         super( data, applicationContext );
     }
 
     @Override
     public AssertionStatus checkRequest(PolicyEnforcementContext context) throws IOException, PolicyAssertionException {
-        AssertionStatus result;
         final int[] numSucceeded = {0};
-        result = iterateChildren(context, new AssertionResultListener() {
+        iterateChildren(context, successCounter(numSucceeded));
+
+        return childrenFinished(context, numSucceeded);
+    }
+
+    @Override
+    public AssertionStatus checkRequest(final PolicyEnforcementContext context, final AssertionResumption resumption) throws IOException, PolicyAssertionException {
+        final int[] numSucceeded = {0};
+        final AssertionStatus result = iterateChildren(context, successCounter(numSucceeded), resumption.map(new Functions.Unary<AssertionStatus, AssertionStatus>() {
+            @Override
+            public AssertionStatus call(final AssertionStatus result) {
+                return childrenFinished(context, numSucceeded);
+            }
+        }));
+
+        return result == null ? null : childrenFinished(context, numSucceeded);
+    }
+
+    private AssertionResultListener successCounter(final int[] numSucceeded) {
+        return new AssertionResultListener() {
             @Override
             public boolean assertionFinished(PolicyEnforcementContext context, AssertionStatus result) {
                 if (result == AssertionStatus.NONE) {
                     ++numSucceeded[0];
                 }
-                return true;  //To change body of implemented methods use File | Settings | File Templates.
+                return true;
             }
-        });
+        };
+    }
 
-        result = numSucceeded[0] == 1 ? AssertionStatus.NONE : AssertionStatus.FALSIFIED;
+    private AssertionStatus childrenFinished(final PolicyEnforcementContext context, final int[] numSucceeded) {
+        final AssertionStatus result = numSucceeded[0] == 1 ? AssertionStatus.NONE : AssertionStatus.FALSIFIED;
 
         if (result != AssertionStatus.NONE)
             rollbackDeferredAssertions(context);
@@ -5,13 +5,16 @@ import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.PolicyAssertionException;
 import com.l7tech.policy.assertion.composite.OneOrMoreAssertion;
 import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.policy.assertion.ServerAssertion;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
+import com.l7tech.util.Functions;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
 import java.util.List;
 
-public final class ServerOneOrMoreAssertion extends ServerCompositeAssertion<OneOrMoreAssertion> {
+public final class ServerOneOrMoreAssertion extends ServerCompositeAssertion<OneOrMoreAssertion> implements SuspendableServerAssertion<OneOrMoreAssertion> {
 
     private final AssertionResultListener assertionResultListener = new AssertionResultListener() {
         @Override
@@ -38,6 +41,26 @@ public final class ServerOneOrMoreAssertion extends ServerCompositeAssertion<One
             result = iterateChildren(context, assertionResultListener);
         }
 
+        return childrenFinished(context, result);
+    }
+
+    @Override
+    public AssertionStatus checkRequest(final PolicyEnforcementContext context, final AssertionResumption resumption) throws IOException, PolicyAssertionException {
+        if (getChildren().isEmpty()) {
+            return checkRequest(context);
+        }
+
+        final AssertionStatus result = iterateChildren(context, assertionResultListener, resumption.map(new Functions.Unary<AssertionStatus, AssertionStatus>() {
+            @Override
+            public AssertionStatus call(final AssertionStatus result) {
+                return childrenFinished(context, result);
+            }
+        }));
+
+        return result == null ? null : childrenFinished(context, result);
+    }
+
+    private AssertionStatus childrenFinished(final PolicyEnforcementContext context, final AssertionStatus result) {
         if (result != AssertionStatus.NONE)
             rollbackDeferredAssertions(context);
 
@@ -42,11 +42,16 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.BeanFactory;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.TransformerException;
 import javax.xml.xpath.XPathExpressionException;
@@ -54,7 +59,9 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -80,6 +87,19 @@ public class ServerXslTransformation
         }
     }
 
+    private static final XMLInputFactory staxInputFactory = XMLInputFactory.newInstance();
+    static {
+        staxInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        staxInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        staxInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        staxInputFactory.setXMLResolver(new XMLResolver() {
+            @Override
+            public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) throws XMLStreamException {
+                throw new XMLStreamException("External entity access forbidden '" + systemID + "' relative to '" + baseURI + "'.");
+            }
+        });
+    }
+
     private static final HttpObjectCache.UserObjectFactory<CompiledStylesheet> cacheObjectFactory =
                 new HttpObjectCache.UserObjectFactory<CompiledStylesheet>() {
                     @Override
@@ -309,6 +329,10 @@ public class ServerXslTransformation
                     public void setBytes(byte[] bytes) throws IOException {
                         message.getMimeKnob().getFirstPart().setBodyBytes(bytes);
                     }
+                    @Override
+                    public void setBytes(byte[] buffer, int offset, int length) throws IOException {
+                        message.getMimeKnob().getFirstPart().setBodyBytes(buffer, offset, length); // stashed without a copy
+                    }
                 };
             } else {
                 // Make a new PartInfo based input and/or output
@@ -326,6 +350,10 @@ public class ServerXslTransformation
                     public void setBytes(byte[] bytes) throws IOException {
                         partInfo.setBodyBytes(bytes);
                     }
+                    @Override
+                    public void setBytes(byte[] buffer, int offset, int length) throws IOException {
+                        partInfo.setBodyBytes(buffer, offset, length); // stashed without a copy
+                    }
                 };
             }
 
@@ -443,9 +471,17 @@ public class ServerXslTransformation
      */
     private String findXslHref(XmlKnob knob) throws SAXException, InvalidDocumentFormatException, IOException {
         if (!knob.isDomParsed()) {
-            // TODO use StAX to find URL without parsing the whole document, if it hasn't already been parsed (and hence we are going to end up streaming it into the actual transform)
-            // the goal is to avoid forcing a DOM or Tarari parse when we are just going to throw it all away after the transform anyway
-            //return findXslHrefWithoutDomOrTarariParse_perhapsUsingStAX(knob);
+            // use StAX so that finding the URL does not force a DOM parse, the transform can then stream the message
+            final List<String> piValues = findStylesheetPIValues(knob);
+            if (piValues != null) {
+                if (piValues.isEmpty()) return null;
+                if (piValues.size() != 1) {
+                    logAndAudit(AssertionMessages.XSLT_MULTIPLE_PIS);
+                    throw new InvalidDocumentFormatException();
+                }
+                String url = extractHref(piValues.get(0));
+                return url == null ? null : decorateWithXsltVersion(url);
+            }
         }
 
         ElementCursor ec = knob.getElementCursor();
@@ -473,6 +509,52 @@ public class ServerXslTransformation
         return null;
     }
 
+    /**
+     * Get the values of the xml-stylesheet processing instructions that are children of the document using StAX.
+     *
+     * @param knob the XmlKnob for the document.  Required.
+     * @return the processing instruction values, or null if the document has a DTD and should be checked using DOM
+     * @throws SAXException if the document is not well-formed
+     * @throws IOException if there is a problem reading the source document
+     */
+    @Nullable
+    private static List<String> findStylesheetPIValues(XmlKnob knob) throws SAXException, IOException {
+        final List<String> values = new ArrayList<String>();
+        final InputSource source = knob.getInputSource(false);
+        XMLStreamReader reader = null;
+        try {
+            reader = source.getByteStream() != null ?
+                    staxInputFactory.createXMLStreamReader(source.getByteStream(), source.getEncoding()) :
+                    staxInputFactory.createXMLStreamReader(source.getCharacterStream());
+            int depth = 0;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.DTD:
+                        return null;
+                    case XMLStreamReader.START_ELEMENT:
+                        depth++;
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        depth--;
+                        break;
+                    case XMLStreamReader.PROCESSING_INSTRUCTION:
+                        if (depth == 0 && "xml-stylesheet".equals(reader.getPITarget())) {
+                            final String data = reader.getPIData();
+                            values.add(data == null ? "" : data);
+                        }
+                        break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new SAXException("Unable to parse XML: " + ExceptionUtils.getMessage(e), e);
+        } finally {
+            ResourceUtils.closeQuietly(reader);
+            ResourceUtils.closeQuietly(source.getByteStream());
+            ResourceUtils.closeQuietly(source.getCharacterStream());
+        }
+        return values;
+    }
+
     /**
      * Parse the attribute list from a processing instruction and verify that the type is
      * text/xsl and return the href attribute if it is.
@@ -276,7 +276,18 @@ public final class ExpandVariables {
 
     @Nullable
     static Object[] getAndFilter(Map<String,?> vars, Syntax syntax, Audit audit, boolean strict) {
-        String matchingName = Syntax.getMatchingName(syntax.remainingName.toLowerCase(), vars.keySet());
+        return getAndFilter(vars, syntax, null, audit, strict);
+    }
+
+    /**
+     * Get and filter the values for the given syntax.
+     *
+     * @param lowerCaseName The lower case remaining name of the syntax (null to calculate)
+     */
+    @Nullable
+    static Object[] getAndFilter(Map<String,?> vars, Syntax syntax, @Nullable String lowerCaseName, Audit audit, boolean strict) {
+        final String lname = lowerCaseName != null ? lowerCaseName : syntax.remainingName.toLowerCase();
+        String matchingName = Syntax.getMatchingName(lname, vars.keySet());
         if (matchingName == null) {
             badVariable(syntax.remainingName, strict, audit);
             return null;
@@ -286,7 +297,7 @@ public final class ExpandVariables {
         final Syntax.SyntaxErrorHandler handler = new DefaultSyntaxErrorHandler(audit);
 
         Selector.Selection selection;
-        if (!matchingName.toLowerCase().equals(syntax.remainingName.toLowerCase().trim())) {
+        if (!matchingName.toLowerCase().equals(lname.trim())) {
             if (contextValue == null) {
                 String msg = handler.handleBadVariable(syntax.remainingName);
                 if (strict) throw new IllegalArgumentException(msg);
@@ -566,32 +577,8 @@ public final class ExpandVariables {
     public static String process(String s, Map<String,?> vars, Audit audit, boolean strict, @Nullable Functions.Unary<String,String> valueFilter) {
         if (s == null) throw new IllegalArgumentException();
 
-        Matcher matcher = Syntax.regexPattern.matcher(s);
-        StringBuffer sb = new StringBuffer();
-
-        while (matcher.find()) {
-            int matchingCount = matcher.groupCount();
-            if (matchingCount != 1) {
-                throw new IllegalStateException("Expecting 1 matching group, received: " + matchingCount);
-            }
-
-            final Syntax syntax = Syntax.parse(matcher.group(1), defaultDelimiter());
-            Object[] newVals = getAndFilter(vars, syntax, audit, strict);
-            String replacement;
-            if (newVals == null || newVals.length == 0) {
-                replacement = "";
-            } else {
-                // TODO support formatters for other data types!
-                Syntax.SyntaxErrorHandler handler = new DefaultSyntaxErrorHandler(audit);
-                replacement = syntax.format(newVals, Syntax.getFormatter( newVals[0] ), handler, strict);
-            }
-
-            replacement = valueFilter != null ? valueFilter.call(replacement) : replacement;
-            replacement = Matcher.quoteReplacement(replacement); // bugzilla 3022 and 6813
-            matcher.appendReplacement(sb, replacement);
-        }
-        matcher.appendTail(sb);
-
+        final StringBuilder sb = new StringBuilder(s.length());
+        ExpandVariablesTemplate.compiled(s).appendTo(sb, vars, audit, strict, valueFilter);
         return sb.toString();
     }
 
@@ -626,29 +613,7 @@ public final class ExpandVariables {
                                                final boolean strict)
             throws VariableNameSyntaxException{
 
-        Matcher matcher = Syntax.regexPattern.matcher(s);
-        List<Object> result = new ArrayList<Object>();
-
-        int previousMatchEndIndex = 0;
-        while (matcher.find()) {
-            int matchingCount = matcher.groupCount();
-            if (matchingCount != 1) {
-                throw new IllegalStateException("Expecting 1 matching group, received: " + matchingCount);
-            }
-            final String preceedingText = s.substring(previousMatchEndIndex, matcher.start());
-            //note if there is actually an empty space, we will preserve it, so no .trim() before .isEmpty()
-            if (!preceedingText.isEmpty()) result.add(s.substring(previousMatchEndIndex, matcher.start()));
-
-            final Object[] newVals = getAndFilter(vars, Syntax.parse(matcher.group(1), defaultDelimiter()), audit, strict);
-            if (newVals != null) {
-                Collections.addAll(result, newVals);
-            }
-
-            previousMatchEndIndex = matcher.end();
-        }
-        if (previousMatchEndIndex < s.length())
-            result.add(s.substring(previousMatchEndIndex, s.length()));
-        return result;
+        return ExpandVariablesTemplate.compiled(s).processNoFormat(vars, audit, strict);
     }
 
     /**
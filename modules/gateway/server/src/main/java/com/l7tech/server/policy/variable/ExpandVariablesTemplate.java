@@ -1,14 +1,17 @@
 package com.l7tech.server.policy.variable;
 
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.gateway.common.DefaultSyntaxErrorHandler;
 import com.l7tech.gateway.common.audit.Audit;
 import com.l7tech.policy.variable.Syntax;
-import com.l7tech.util.Either;
+import com.l7tech.policy.variable.VariableNameSyntaxException;
+import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.Functions;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -18,11 +21,17 @@ import java.util.regex.Matcher;
  * <p/>
  * This can be used instead of calling process() directly to improve performance in cases where the same template string is used
  * repeatedly with different variable map contents.
+ * <p/>
+ * The template is scanned once, into literal segments and parsed variable references. The process methods of
+ * {@link ExpandVariables} also use (cached) compiled templates, so the regex scan of a template is not repeated
+ * for each expansion. Server assertions with a fixed template should compile it when the assertion is created
+ * (see {@link #compile(String)}) rather than relying on the cache. The strict mode setting is read for each
+ * expansion, so compiled templates follow changes to it.
  */
 public class ExpandVariablesTemplate {
     private final String staticTemplate;
-    private final List<Either<String,Syntax>> components = new ArrayList<>();
-    private final boolean strict;
+    private final String delimiter;
+    private final Segment[] segments;
     private final Functions.Unary<String,String> valueFilter;
 
     /**
@@ -41,39 +50,51 @@ public class ExpandVariablesTemplate {
      * @param valueFilter    A filter to call on each substituted value (or null for no filtering)
      */
     public ExpandVariablesTemplate(@NotNull String template, @Nullable Functions.Unary<String,String> valueFilter) {
-        // Optimize a static template as a special case
-        String staticTemplate = null;
-        String[] refs = Syntax.getReferencedNames(template);
-        if (refs.length < 1) {
-            staticTemplate = template;
+        this(template, valueFilter, ExpandVariables.defaultDelimiter(), false);
+    }
+
+    private ExpandVariablesTemplate(@NotNull final String template,
+                                    @Nullable final Functions.Unary<String,String> valueFilter,
+                                    @NotNull final String delimiter,
+                                    final boolean deferSyntaxErrors) {
+        if (!deferSyntaxErrors) {
+            Syntax.getReferencedNames(template); // validate references
         }
-        this.staticTemplate = staticTemplate;
+        this.delimiter = delimiter;
         this.valueFilter = valueFilter;
-        this.strict = ExpandVariables.strict();
-
-        Matcher matcher = Syntax.regexPattern.matcher(template);
-        StringBuffer sb = new StringBuffer();
 
+        final List<Segment> segments = new ArrayList<>();
+        final Matcher matcher = Syntax.regexPattern.matcher(template);
+        int previousMatchEndIndex = 0;
         while (matcher.find()) {
             int matchingCount = matcher.groupCount();
             if (matchingCount != 1) {
                 throw new IllegalStateException("Expecting 1 matching group, received: " + matchingCount);
             }
 
-            matcher.appendReplacement(sb, "");
-            final String beforeStr = sb.toString();
-            if (beforeStr.length() > 0)
-                components.add(Either.<String,Syntax>left(beforeStr));
-            sb.setLength(0);
+            if (matcher.start() > previousMatchEndIndex)
+                segments.add(new Segment(template.substring(previousMatchEndIndex, matcher.start())));
 
-            final Syntax syntax = Syntax.parse(matcher.group(1), ExpandVariables.defaultDelimiter());
-            components.add(Either.<String, Syntax>right(syntax));
+            final String rawName = matcher.group(1);
+            Syntax syntax = null;
+            try {
+                syntax = Syntax.parse(rawName, delimiter);
+            } catch (VariableNameSyntaxException e) {
+                // when deferred, the error is reported when the reference is reached during expansion
+                if (!deferSyntaxErrors) throw e;
+            }
+            segments.add(new Segment(rawName, syntax));
+
+            previousMatchEndIndex = matcher.end();
         }
 
-        matcher.appendTail(sb);
-        final String tail = sb.toString();
-        if (tail.length() > 0)
-            components.add(Either.<String,Syntax>left(tail));
+        if (previousMatchEndIndex < template.length())
+            segments.add(new Segment(template.substring(previousMatchEndIndex)));
+
+        this.segments = segments.toArray(new Segment[segments.size()]);
+
+        // Optimize a static template as a special case
+        this.staticTemplate = hasReference(this.segments) ? null : template;
     }
 
     /**
@@ -93,13 +114,84 @@ public class ExpandVariablesTemplate {
         if (staticTemplate != null)
             return staticTemplate;
 
-        StringBuilder sb = new StringBuilder();
-        for (Either<String, Syntax> comp : components) {
-            if (comp.isLeft()) {
-                sb.append(comp.left());
+        final StringBuilder sb = new StringBuilder();
+        appendTo(sb, vars, audit, ExpandVariables.strict(), valueFilter);
+        return sb.toString();
+    }
+
+    /**
+     * Expand the current template with the specified variable map and audit, appending the result to the given
+     * builder.
+     * <p/>
+     * This allows a caller to reuse a builder across expansions.
+     *
+     * @param sb the builder to append to.  Required.
+     * @param vars variable map.  Required.
+     * @param audit audit impl to use for reporting errors.  Required.
+     * @return the given builder
+     * @throws RuntimeException subclass in case of error
+     */
+    @NotNull
+    public StringBuilder appendTo(@NotNull StringBuilder sb, @NotNull Map<String, ?> vars, @NotNull Audit audit) {
+        if (staticTemplate != null)
+            return sb.append(staticTemplate);
+
+        appendTo(sb, vars, audit, ExpandVariables.strict(), valueFilter);
+        return sb;
+    }
+
+    /**
+     * Compile a template for repeated expansion with the same behaviour as {@link ExpandVariables#process(String, Map, Audit)}.
+     * <p/>
+     * Unlike the constructors, any syntax errors in variable references are reported when the template is
+     * expanded rather than when compiled.
+     *
+     * @param template The template string.  Required.
+     * @return The compiled template, never null
+     */
+    @NotNull
+    public static ExpandVariablesTemplate compile(@NotNull final String template) {
+        return new ExpandVariablesTemplate(template, null, ExpandVariables.defaultDelimiter(), true);
+    }
+
+    /**
+     * Get the compiled template for the given template string.
+     * <p/>
+     * Compiled templates are cached, any syntax errors in variable references are reported when the template is
+     * expanded rather than when compiled. Templates longer than the configured maximum length are compiled but not
+     * cached, since these are usually built at runtime and not repeated.
+     *
+     * @param template The template string.  Required.
+     * @return The compiled template, never null
+     */
+    @NotNull
+    static ExpandVariablesTemplate compiled(@NotNull final String template) {
+        final String delimiter = ExpandVariables.defaultDelimiter();
+        if (template.length() > MAX_CACHED_TEMPLATE_LENGTH) {
+            return new ExpandVariablesTemplate(template, null, delimiter, true);
+        }
+        ExpandVariablesTemplate compiled = compiledTemplates.get(template);
+        if (compiled == null || !compiled.delimiter.equals(delimiter)) {
+            compiled = new ExpandVariablesTemplate(template, null, delimiter, true);
+            compiledTemplates.put(template, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Expand this template, as per {@link ExpandVariables#process(String, Map, Audit, boolean, Functions.Unary)}.
+     */
+    void appendTo(@NotNull final StringBuilder sb,
+                  @NotNull final Map<String, ?> vars,
+                  @NotNull final Audit audit,
+                  final boolean strict,
+                  @Nullable final Functions.Unary<String,String> valueFilter) {
+        for (final Segment segment : segments) {
+            if (segment.literal != null) {
+                sb.append(segment.literal);
             } else {
-                Syntax syntax = comp.right();
-                Object[] newVals = ExpandVariables.getAndFilter(vars, syntax, audit, strict);
+                final Syntax syntax = segment.syntax();
+                final Object[] newVals = ExpandVariables.getAndFilter(vars, syntax, segment.lowerCaseName, audit, strict);
                 String replacement;
                 if (newVals == null || newVals.length == 0) {
                     replacement = "";
@@ -114,6 +206,66 @@ public class ExpandVariablesTemplate {
                 sb.append(replacement);
             }
         }
-        return sb.toString();
+    }
+
+    /**
+     * Expand this template, as per {@link ExpandVariables#processNoFormat(String, Map, Audit, boolean)}.
+     */
+    @NotNull
+    List<Object> processNoFormat(@NotNull final Map<String, ?> vars,
+                                 @NotNull final Audit audit,
+                                 final boolean strict) {
+        final List<Object> result = new ArrayList<>(segments.length);
+        for (final Segment segment : segments) {
+            if (segment.literal != null) {
+                result.add(segment.literal);
+            } else {
+                final Object[] newVals = ExpandVariables.getAndFilter(vars, segment.syntax(), segment.lowerCaseName, audit, strict);
+                if (newVals != null) {
+                    Collections.addAll(result, newVals);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasReference(final Segment[] segments) {
+        for (final Segment segment : segments) {
+            if (segment.literal == null) return true;
+        }
+        return false;
+    }
+
+    private static final int MAX_CACHED_TEMPLATES = ConfigFactory.getIntProperty( "com.l7tech.server.policy.variable.compiledTemplateCacheSize", 4096 );
+    private static final int MAX_CACHED_TEMPLATE_LENGTH = ConfigFactory.getIntProperty( "com.l7tech.server.policy.variable.compiledTemplateMaxLength", 1024 );
+    private static final SegmentedCache<String,ExpandVariablesTemplate> compiledTemplates =
+            new SegmentedCache<>( "expandVariablesTemplates", (long) MAX_CACHED_TEMPLATES );
+
+    /**
+     * A literal segment or a variable reference.
+     */
+    private final class Segment {
+        private final String literal;
+        private final String rawName;
+        private final Syntax syntax;
+        private final String lowerCaseName;
+
+        private Segment(final String literal) {
+            this.literal = literal;
+            this.rawName = null;
+            this.syntax = null;
+            this.lowerCaseName = null;
+        }
+
+        private Segment(final String rawName, @Nullable final Syntax syntax) {
+            this.literal = null;
+            this.rawName = rawName;
+            this.syntax = syntax;
+            this.lowerCaseName = syntax == null ? null : syntax.remainingName.toLowerCase();
+        }
+
+        private Syntax syntax() {
+            return syntax != null ? syntax : Syntax.parse(rawName, delimiter); // throws
+        }
     }
 }
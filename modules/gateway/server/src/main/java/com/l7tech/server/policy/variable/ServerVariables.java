@@ -7,6 +7,7 @@ import com.l7tech.gateway.common.cluster.ClusterNodeInfo;
 import com.l7tech.gateway.common.cluster.ClusterProperty;
 import com.l7tech.gateway.common.mapping.MessageContextMapping;
 import com.l7tech.gateway.common.security.password.SecurePassword;
+import com.l7tech.gateway.common.service.AssertionProfileStatistics;
 import com.l7tech.gateway.common.service.PublishedService;
 import com.l7tech.identity.User;
 import com.l7tech.message.*;
@@ -27,6 +28,7 @@ import com.l7tech.server.cluster.ClusterInfoManager;
 import com.l7tech.server.cluster.ClusterPropertyCache;
 import com.l7tech.server.message.HasOriginalContext;
 import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.policy.AssertionProfiler;
 import com.l7tech.server.policy.PolicyMetadata;
 import com.l7tech.server.security.password.SecurePasswordManager;
 import com.l7tech.server.trace.TracePolicyEnforcementContext;
@@ -71,6 +73,7 @@ public class ServerVariables {
     private static ClusterPropertyCache clusterPropertyCache;
     private static SecurePasswordManager securePasswordManager;
     private static ClusterInfoManager clusterInfoManager;
+    private static AssertionProfiler assertionProfiler;
     // Take care before deciding to add new entity managers to this class: exposing entities via built in variables bypasses RBAC controls
 
     private static final long SELF_NODE_INF_CACHE_INTERVAL = SyspropUtil.getLong("com.l7tech.server.policy.variable.ssgnode.cacheMillis", 30000L);
@@ -765,6 +768,21 @@ public class ServerVariables {
                 }
             }),
 
+            new Variable(BuiltinVariables.PREFIX_SERVICE + "." + BuiltinVariables.SERVICE_SUFFIX_ASSERTION_PROFILE, new Getter() {
+                @Override
+                public Object get( final String name, final PolicyEnforcementContext context) {
+                    final PublishedService service = context.getService();
+                    final AssertionProfiler profiler = assertionProfiler;
+                    if ( service == null || service.getPolicy() == null || profiler == null ) return new String[0];
+
+                    final List<String> profile = new ArrayList<String>();
+                    for ( final AssertionProfileStatistics statistics : profiler.getStatistics( service.getPolicy().getGoid() ) ) {
+                        profile.add( statistics.toString() );
+                    }
+                    return profile.toArray( new String[profile.size()] );
+                }
+            }),
+
             new Variable(BuiltinVariables.PREFIX_SERVICE + "." + BuiltinVariables.SERVICE_SUFFIX_POLICY_GUID, new Getter() {
                 @Override
                 public Object get( final String name, final PolicyEnforcementContext context) {
@@ -1149,6 +1167,10 @@ public class ServerVariables {
         securePasswordManager = spm;
     }
 
+    public static void setAssertionProfiler(AssertionProfiler profiler) {
+        assertionProfiler = profiler;
+    }
+
     /**
      * Configure the TimeSource. Called via spring and reflection in test cases.
      * @param timeSource TimeSource to set
@@ -2,7 +2,7 @@ package com.l7tech.server.security.cert;
 
 import com.l7tech.common.http.GenericHttpClientFactory;
 import com.l7tech.common.io.CertUtils;
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.common.mime.ContentTypeHeader;
 import com.l7tech.gateway.common.audit.Audit;
 import com.l7tech.gateway.common.audit.SystemMessages;
@@ -12,7 +12,6 @@ import com.l7tech.server.url.AbstractUrlObjectCache;
 import com.l7tech.server.url.HttpObjectCache;
 import com.l7tech.server.url.LdapUrlObjectCache;
 import com.l7tech.util.*;
-import com.whirlycott.cache.Cache;
 import org.springframework.beans.factory.DisposableBean;
 
 import java.io.BufferedReader;
@@ -50,10 +49,10 @@ public class CrlCacheImpl implements CrlCache, DisposableBean {
     private static final String PROP_EXPIRY_MIN = "pkixCRL.minExpiryAge";
     private static final String PROP_EXPIRY_MAX = "pkixCRL.maxExpiryAge";
 
-    /** Cache&lt;String, CrlCacheEntry&gt; where String is a CRL URL */
-    private final Cache crlCache;
-    /** Cache&lt;X509Certificate, CertCacheEntry&gt; */
-    private final Cache certCache;
+    /** Cache of CRL URL to CRL entry */
+    private final SegmentedCache<String,CrlCacheEntry> crlCache;
+    /** Cache of certificate to CRL URLs */
+    private final SegmentedCache<CrlUrlCacheKey,String[]> certCache;
 
     private final LdapUrlObjectCache<X509CRL> ldapUrlObjectCache;
     private final HttpObjectCache<X509CRL> httpObjectCache;
@@ -74,8 +73,8 @@ public class CrlCacheImpl implements CrlCache, DisposableBean {
     public CrlCacheImpl( final GenericHttpClientFactory httpClientFactory,
                          final Config config,
                          final Timer cacheTimer ) throws Exception {
-        this.crlCache = WhirlycacheFactory.createCache(CrlCache.class.getSimpleName() + ".crlCache", 100, 1800, WhirlycacheFactory.POLICY_LRU);
-        this.certCache = WhirlycacheFactory.createCache(CrlCache.class.getSimpleName() + ".certCache", 1000, 1800, WhirlycacheFactory.POLICY_LRU);
+        this.crlCache = new SegmentedCache<String,CrlCacheEntry>(CrlCache.class.getSimpleName() + ".crlCache", 100L);
+        this.certCache = new SegmentedCache<CrlUrlCacheKey,String[]>(CrlCache.class.getSimpleName() + ".certCache", 1000L);
 
         this.config = config;
         final long maxCacheAge = config.getTimeUnitProperty( CRL_CACHE_EXPIRY, DEFAULT_CRL_CACHE_EXPIRY );
@@ -119,6 +118,8 @@ public class CrlCacheImpl implements CrlCache, DisposableBean {
     @Override
     public void destroy() throws Exception {
         if ( executor != null ) executor.shutdown();
+        crlCache.shutdown();
+        certCache.shutdown();
     }
 
     private static class CrlHttpObjectFactory implements AbstractUrlObjectCache.UserObjectFactory<X509CRL> {
@@ -169,13 +170,13 @@ public class CrlCacheImpl implements CrlCache, DisposableBean {
         X509CRL crl;
         X509CRL cachedCRL = null;
         Lock read = null, write = null;
-        CrlCacheEntry crlCacheEntry = (CrlCacheEntry) crlCache.retrieve(crlUrl);
+        CrlCacheEntry crlCacheEntry = crlCache.get(crlUrl);
 
         try {
             if (crlCacheEntry == null) {
                 auditor.logAndAudit(SystemMessages.CERTVAL_REV_CACHE_MISS, "CRL", crlUrl);
                 crlCacheEntry = new CrlCacheEntry();
-                crlCache.store(crlUrl, crlCacheEntry);
+                crlCache.put(crlUrl, crlCacheEntry);
                 crl = null;
 
                 read = crlCacheEntry.lock.readLock();
@@ -231,7 +232,7 @@ public class CrlCacheImpl implements CrlCache, DisposableBean {
                 crlCacheEntry.setCrl(crl);
                 write.unlock(); write = null;
 
-                crlCache.store(crlUrl, crlCacheEntry);
+                crlCache.put(crlUrl, crlCacheEntry);
             }
 
             return crl;
@@ -378,12 +379,11 @@ public class CrlCacheImpl implements CrlCache, DisposableBean {
 
     private String[] getCachedCrlUrls(final X509Certificate subjectCert) throws IOException {
         final CrlUrlCacheKey key = new CrlUrlCacheKey(subjectCert);
-        //noinspection unchecked
-        String[] urls = (String[]) certCache.retrieve(key);
+        String[] urls = certCache.get(key);
 
         if (urls == null) {
             urls = CertUtils.getCrlUrls(subjectCert);
-            certCache.store(key, urls);
+            certCache.put(key, urls);
         }
         return urls;
     }
@@ -6,8 +6,7 @@ import com.l7tech.gateway.common.audit.Audit;
 import com.l7tech.gateway.common.audit.SystemMessages;
 import com.l7tech.util.Config;
 import com.l7tech.util.TimeUnit;
-import com.l7tech.common.io.WhirlycacheFactory;
-import com.whirlycott.cache.Cache;
+import com.l7tech.common.io.SegmentedCache;
 
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
@@ -40,7 +39,7 @@ public class OCSPCache {
         this.httpClientFactory = httpClientFactory;
         this.config = config;
         this.certValidationCache =
-                WhirlycacheFactory.createCache("OCSPResponseCache", 1000, 57, WhirlycacheFactory.POLICY_LRU);
+                new SegmentedCache<OcspKey,OcspValue>("OCSPResponseCache", 1000L);
     }
 
     /**
@@ -77,7 +76,7 @@ public class OCSPCache {
         try {
             OCSPClient.OCSPStatus status;
             OCSPClient.OCSPStatus cachedStatus = null;
-            OcspValue ocspValue = (OcspValue) certValidationCache.retrieve(key);
+            OcspValue ocspValue = certValidationCache.get(key);
 
             //grab the cached status, regardless if it's expired already
             if ( ocspValue != null ) {
@@ -102,7 +101,7 @@ public class OCSPCache {
                         status = cachedStatus;
 
                         auditor.logAndAudit(SystemMessages.CERTVAL_REV_USE_CACHE, "OCSP", certificate.getSubjectDN().toString(), new Date(status.getExpiry()).toString());
-                        certValidationCache.store(key, new OcspValue(cachedStatus, status.getExpiry()), status.getExpiry());
+                        certValidationCache.put(key, new OcspValue(cachedStatus, status.getExpiry()), status.getExpiry());
 
                         return status;  //return the cached version
                     }
@@ -114,7 +113,7 @@ public class OCSPCache {
 
                 long timeNow = System.currentTimeMillis();
                 long expiryPeriod = getExpiryPeriod(status.getExpiry(), timeNow);
-                certValidationCache.store(key, new OcspValue(status, timeNow + expiryPeriod), expiryPeriod);
+                certValidationCache.put(key, new OcspValue(status, timeNow + expiryPeriod), expiryPeriod);
             }
 
             return status;
@@ -150,7 +149,7 @@ public class OCSPCache {
     private static final String PROP_EXPIRY_MAX = "pkixOCSP.maxExpiryAge";
     private static final String PROP_USE_NONCE = "pkixOCSP.useNonce";
 
-    private final Cache certValidationCache;
+    private final SegmentedCache<OcspKey,OcspValue> certValidationCache;
     private final GenericHttpClientFactory httpClientFactory;
     private final Config config;
 
@@ -1,7 +1,7 @@
 package com.l7tech.server.security.cert;
 
 import com.l7tech.common.io.CertUtils;
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.gateway.common.audit.Audit;
 import com.l7tech.gateway.common.audit.SystemMessages;
 import com.l7tech.gateway.common.security.RevocationCheckPolicy;
@@ -15,7 +15,6 @@ import com.l7tech.security.types.CertificateValidationResult;
 import com.l7tech.security.types.CertificateValidationType;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.Functions;
-import com.whirlycott.cache.Cache;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 
 import java.io.IOException;
@@ -51,12 +50,12 @@ public class RevocationCheckerFactory {
         this.ocspCache = ocspCache;
 
         // initialize maps and map lock
-        // use Whirlycache for checkers by cert as this could be large
+        // use a bounded cache for checkers by cert as this could be large
         this.mapLock = new ReentrantReadWriteLock();
         this.keysByTrustedCertOid = new HashMap<Goid,Set<CertKey>>();
         this.keysByRevocationCheckPolicyOid = new HashMap<Goid,Set<CertKey>>();
         this.checkersByCert =
-                WhirlycacheFactory.createCache("RevocationPolicyCache", 1000, 66, WhirlycacheFactory.POLICY_LRU);
+                new SegmentedCache<CertKey,CompositeRevocationChecker>("RevocationPolicyCache", 1000L);
     }
 
     /**
@@ -72,7 +71,7 @@ public class RevocationCheckerFactory {
 
             mapLock.readLock().lock();
             try {
-                checker = (CompositeRevocationChecker) checkersByCert.retrieve(key);
+                checker = checkersByCert.get(key);
             } finally {
                 mapLock.readLock().unlock();
             }
@@ -86,7 +85,7 @@ public class RevocationCheckerFactory {
 
                 mapLock.writeLock().lock();
                 try {
-                    checkersByCert.store(key, checker);
+                    checkersByCert.put(key, checker);
 
                     if (trustedCert != null)
                         addChecker(keysByTrustedCertOid, trustedCert.getGoid(), checker);
@@ -157,7 +156,7 @@ public class RevocationCheckerFactory {
     private final OCSPCache ocspCache;
 
     private final ReadWriteLock mapLock;
-    private final Cache checkersByCert;
+    private final SegmentedCache<CertKey,CompositeRevocationChecker> checkersByCert;
     private final Map<Goid,Set<CertKey>> keysByTrustedCertOid;
     private final Map<Goid,Set<CertKey>> keysByRevocationCheckPolicyOid;
 
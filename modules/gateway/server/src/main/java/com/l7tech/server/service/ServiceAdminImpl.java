@@ -16,6 +16,7 @@ import com.l7tech.server.ServerConfig;
 import com.l7tech.server.ServerConfigParams;
 import com.l7tech.server.admin.AsyncAdminMethodsImpl;
 import com.l7tech.server.event.AdminInfo;
+import com.l7tech.server.policy.AssertionProfiler;
 import com.l7tech.server.policy.PolicyAssertionRbacChecker;
 import com.l7tech.server.policy.PolicyVersionManager;
 import com.l7tech.server.service.resolution.NonUniqueServiceResolutionException;
@@ -76,6 +77,9 @@ public final class ServiceAdminImpl implements ServiceAdmin, DisposableBean {
     @Inject
     private PolicyAssertionRbacChecker policyChecker;
 
+    @Inject
+    private AssertionProfiler assertionProfiler;
+
     private CollectionUpdateProducer<ServiceHeader, FindException> publishedServicesUpdateProducer =
             new CollectionUpdateProducer<ServiceHeader, FindException>(5 * 60 * 1000, 100, new ServiceHeaderDifferentiator()) {
                 @Override
@@ -435,6 +439,14 @@ public final class ServiceAdminImpl implements ServiceAdmin, DisposableBean {
         }
     }
 
+    @Override
+    public List<AssertionProfileStatistics> getAssertionProfile(Goid serviceGoid) throws FindException {
+        final PublishedService service = serviceManager.findByPrimaryKey(serviceGoid);
+        if (service == null) throw new FindException("Unable to find service with goid " + serviceGoid.toHexString());
+        if (service.getPolicy() == null || assertionProfiler == null) return Collections.emptyList();
+        return new ArrayList<AssertionProfileStatistics>(assertionProfiler.getStatistics(service.getPolicy().getGoid()));
+    }
+
     @Override
     public void deletePublishedService(String serviceID) throws DeleteException {
         final PublishedService service;
@@ -1,5 +1,7 @@
 package com.l7tech.server.service;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -10,9 +12,13 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * the {@code PolicyCache} is refreshed from another thread, causing both of them lock each other.
  * <p/>
  * For more details see <a href="https://jira.l7tech.com:8443/browse/SSG-11400">SSG-11400</a>
+ * <p/>
+ * Also tracks batches of cache updates, so the caches can publish snapshots of their state once per batch rather
+ * than once for each updated entity.
  */
 public class ServiceAndPolicyCacheSharedLock {
-    private static final ReadWriteLock sharedLock = new ReentrantReadWriteLock();
+    private static final ReentrantReadWriteLock sharedLock = new ReentrantReadWriteLock();
+    private static final ThreadLocal<Batch> batch = new ThreadLocal<>();
 
     /**
      * Get the shared lock.
@@ -20,4 +26,72 @@ public class ServiceAndPolicyCacheSharedLock {
     public static ReadWriteLock getLock() {
         return sharedLock;
     }
+
+    /**
+     * Check if the caches are being updated by the current thread.
+     * <p/>
+     * This is the case when the current thread holds the shared write lock or has a batch in progress. Readers
+     * that use published snapshots of cache state must read the live state instead when this is true.
+     */
+    public static boolean isUpdatingOnCurrentThread() {
+        return sharedLock.isWriteLockedByCurrentThread() || batch.get() != null;
+    }
+
+    /**
+     * Start a batch of cache updates on the current thread.
+     * <p/>
+     * Batches may be nested, every call must be matched by a call to {@link #endBatch()}.
+     */
+    public static void beginBatch() {
+        Batch current = batch.get();
+        if ( current == null ) {
+            current = new Batch();
+            batch.set( current );
+        }
+        current.depth++;
+    }
+
+    /**
+     * End a batch of cache updates on the current thread.
+     * <p/>
+     * When the outermost batch ends any deferred snapshots are published with the write lock held.
+     *
+     * @throws IllegalStateException if there is no batch in progress
+     */
+    public static void endBatch() {
+        final Batch current = batch.get();
+        if ( current == null ) throw new IllegalStateException( "No batch in progress" );
+
+        if ( --current.depth == 0 ) {
+            batch.remove();
+            if ( !current.publishers.isEmpty() ) {
+                sharedLock.writeLock().lock();
+                try {
+                    for ( final Runnable publisher : current.publishers ) {
+                        publisher.run();
+                    }
+                } finally {
+                    sharedLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Defer publishing of a snapshot to the end of the current thread's batch.
+     *
+     * @param publisher The publisher to run with the write lock held when the batch ends
+     * @return true if deferred, false if there is no batch in progress and the snapshot should be published now
+     */
+    public static boolean deferPublish( final Runnable publisher ) {
+        final Batch current = batch.get();
+        if ( current == null ) return false;
+        current.publishers.add( publisher );
+        return true;
+    }
+
+    private static final class Batch {
+        private int depth;
+        private final Set<Runnable> publishers = new LinkedHashSet<>();
+    }
 }
@@ -61,6 +61,9 @@ import java.util.logging.Logger;
  * <p/>
  * Entry point for runtime resolution.
  * <p/>
+ * Updates are made under the lock shared with the policy cache, after which an immutable snapshot of the
+ * cached services is published. Resolution and service lookups use the current snapshot and do not lock.
+ * <p/>
  * Thread safe.
  */
 public class ServiceCache
@@ -76,6 +79,15 @@ public class ServiceCache
     private final ConcurrentMap<Goid, ServiceStatistics> serviceStatistics = new ConcurrentHashMap<Goid, ServiceStatistics>();
     private final Map<Goid, String> servicesThatAreThrowing = new HashMap<Goid, String>();
     private final Set<Goid> servicesThatAreDisabled = new HashSet<Goid>();
+    private volatile ServiceSnapshot snapshot = new ServiceSnapshot(Collections.<Goid, PublishedService>emptyMap(), null); // for lock-free readers
+    private boolean deferSnapshot = false;
+    private final Runnable snapshotPublisher = new Runnable() {
+        @Override
+        public void run() {
+            publishSnapshot();
+        }
+    };
+    private final Object pendingCacheChangesKey = new Object(); // transaction resource for changes applied on commit
 
     private final PlatformTransactionManager transactionManager;
     private final ServiceManager serviceManager;
@@ -92,7 +104,6 @@ public class ServiceCache
     private boolean running = false;
 
     private Auditor auditor;
-    private Goid nonSoapCatchAllServiceOid = null;
     private final PolicyCache policyCache;
     private final ServiceResolutionManager serviceResolutionManager;
     private final AtomicBoolean needXpathCompile = new AtomicBoolean(true);
@@ -183,28 +194,65 @@ public class ServiceCache
     }
 
     private void doCacheDelete(final ServiceCacheEvent.Deleted deleted) {
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        pendingCacheChanges().add(new Runnable() {
             @Override
-            public void afterCompletion(int status) {
-                if (status == TransactionSynchronization.STATUS_COMMITTED) {
-                    removeFromCache(deleted.getService());
-                }
+            public void run() {
+                removeFromCache(deleted.getService());
             }
         });
     }
 
     private void doCacheUpdate(final ServiceCacheEvent.Updated updated) {
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        pendingCacheChanges().add(new Runnable() {
             @Override
-            public void afterCompletion(int status) {
-                if (status == TransactionSynchronization.STATUS_COMMITTED) {
-                    // reload service. version property must be up-to-date
-                    loadServiceToCache( updated.getService().getGoid() );
-                }
+            public void run() {
+                // reload service. version property must be up-to-date
+                loadServiceToCache( updated.getService().getGoid() );
             }
         });
     }
 
+    /**
+     * Get the cache changes to apply when the current transaction commits.
+     *
+     * <p>The changes for a transaction are applied in order as a single batch, so the cached services are
+     * published once per transaction instead of once per service (e.g. for a bulk import).</p>
+     */
+    private List<Runnable> pendingCacheChanges() {
+        @SuppressWarnings("unchecked")
+        List<Runnable> changes = (List<Runnable>) TransactionSynchronizationManager.getResource(pendingCacheChangesKey);
+        if (changes == null) {
+            final List<Runnable> transactionChanges = new ArrayList<Runnable>();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingCacheChangesKey);
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        applyCacheChanges(transactionChanges);
+                    }
+                }
+            });
+            TransactionSynchronizationManager.bindResource(pendingCacheChangesKey, transactionChanges);
+            changes = transactionChanges;
+        }
+        return changes;
+    }
+
+    private void applyCacheChanges(final List<Runnable> changes) {
+        ServiceAndPolicyCacheSharedLock.beginBatch();
+        try {
+            for (Runnable change : changes) {
+                try {
+                    change.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "could not update service cache: " + ExceptionUtils.getMessage(e), e);
+                }
+            }
+        } finally {
+            ServiceAndPolicyCacheSharedLock.endBatch();
+        }
+    }
+
     private void loadServiceToCache( final Goid serviceGoid ) {
         PublishedService publishedService;
         try {
@@ -234,25 +282,34 @@ public class ServiceCache
                 logger.info("Building service cache");
                 final long startTime = System.currentTimeMillis();
                 Collection<PublishedService> services = serviceManager.findAll();
-                for (PublishedService service : services) {
-                    try {
-                        // cache a copy not bound to hibernate session
-                        cache(  new PublishedService( service, true ));
-                    } catch (ServerPolicyException e) {
-                        Assertion ass = e.getAssertion();
-
-                        String ordinal = ass == null ? "" : "#" + Integer.toString(ass.getOrdinal());
-                        String what = ass == null ? "<unknown>" : "(" + ass.getClass().getSimpleName() + ")";
-                        String msg = MessageFormat.format( "Disabling PublishedService #{0} ({1}); policy could not be compiled (assertion {2} {3})",
-                                        service.getGoid(), service.getName(), ordinal, what );
-                        logger.log(Level.WARNING, msg, e);
-                        // We don't actually disable the service here -- only the admin should be doing that.
-                        // Instead, we will let the service cache continue to monitor the situation
-                    } catch (Exception e) {
-                        String msg = MessageFormat.format( "Disabling PublishedService #{0} ({1}); policy could not be compiled",
-                                        service.getGoid(), service.getName() );
-                        logger.log(Level.WARNING, msg, e);
+                // publish the services once when all are cached
+                rwlock.writeLock().lock();
+                deferSnapshot = true;
+                try {
+                    for (PublishedService service : services) {
+                        try {
+                            // cache a copy not bound to hibernate session
+                            cache(  new PublishedService( service, true ));
+                        } catch (ServerPolicyException e) {
+                            Assertion ass = e.getAssertion();
+
+                            String ordinal = ass == null ? "" : "#" + Integer.toString(ass.getOrdinal());
+                            String what = ass == null ? "<unknown>" : "(" + ass.getClass().getSimpleName() + ")";
+                            String msg = MessageFormat.format( "Disabling PublishedService #{0} ({1}); policy could not be compiled (assertion {2} {3})",
+                                            service.getGoid(), service.getName(), ordinal, what );
+                            logger.log(Level.WARNING, msg, e);
+                            // We don't actually disable the service here -- only the admin should be doing that.
+                            // Instead, we will let the service cache continue to monitor the situation
+                        } catch (Exception e) {
+                            String msg = MessageFormat.format( "Disabling PublishedService #{0} ({1}); policy could not be compiled",
+                                            service.getGoid(), service.getName() );
+                            logger.log(Level.WARNING, msg, e);
+                        }
                     }
+                } finally {
+                    deferSnapshot = false;
+                    publishSnapshot();
+                    rwlock.writeLock().unlock();
                 }
                 logger.info("Built service cache in " + (System.currentTimeMillis()-startTime) + "ms.");
             }
@@ -302,12 +359,7 @@ public class ServiceCache
      * @return the number of services currently cached
      */
     public int size() {
-        rwlock.readLock().lock();
-        try {
-            return services.size();
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return snapshot.services.size();
     }
 
     /**
@@ -329,14 +381,9 @@ public class ServiceCache
      * @param serviceGoid id of the service of which we want the parsed server side root assertion
      */
     public ServerPolicyHandle getServerPolicy(Goid serviceGoid) {
-        rwlock.readLock().lock();
-        try {
-            PublishedService service = services.get( serviceGoid );
-            if (service == null) return null;
-            return getServerPolicyForService( service );
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        PublishedService service = snapshot.services.get( serviceGoid );
+        if (service == null) return null;
+        return getServerPolicyForService( service );
     }
 
     /**
@@ -396,19 +443,14 @@ public class ServiceCache
      */
     @Override
     public PublishedService resolve(Message req, ResolutionListener rl) throws ServiceResolutionException {
-        rwlock.readLock().lock();
-        try {
-            Collection<PublishedService> serviceSet = Collections.unmodifiableCollection(services.values());
-            PublishedService result = resolve( req, rl, serviceSet );
-            if (result == null && rl.notifyResolveCatchAll() && nonSoapCatchAllServiceOid != null && UriResolver.canResolveByURI(req)) {
-                result = services.get(nonSoapCatchAllServiceOid);
-                if (result != null)
-                    auditor.logAndAudit(MessageProcessingMessages.SERVICE_CACHE_RESOLVED_CATCHALL, result.getName(), result.getId());
-            }
-            return result;
-        } finally {
-            rwlock.readLock().unlock();
+        final ServiceSnapshot current = snapshot;
+        PublishedService result = resolve( req, rl, current.serviceSet );
+        if (result == null && rl.notifyResolveCatchAll() && current.nonSoapCatchAllServiceGoid != null && UriResolver.canResolveByURI(req)) {
+            result = current.services.get(current.nonSoapCatchAllServiceGoid);
+            if (result != null)
+                auditor.logAndAudit(MessageProcessingMessages.SERVICE_CACHE_RESOLVED_CATCHALL, result.getName(), result.getId());
         }
+        return result;
     }
 
     /**
@@ -423,13 +465,7 @@ public class ServiceCache
     public Collection<PublishedService> resolve( final @Nullable String path,
                                                  final @Nullable String soapAction,
                                                  final @Nullable String namespace ) throws ServiceResolutionException {
-        rwlock.readLock().lock();
-        try {
-            Collection<PublishedService> serviceSet = Collections.unmodifiableCollection(services.values());
-            return serviceResolutionManager.resolve( path, soapAction, namespace, serviceSet );
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return serviceResolutionManager.resolve( path, soapAction, namespace, snapshot.serviceSet );
     }
 
     /**
@@ -450,9 +486,6 @@ public class ServiceCache
         }
     }
 
-    /**
-     * Caller must hold read lock
-     */
     private PublishedService resolve( final Message req,
                                       final ResolutionListener rl,
                                       final Collection<PublishedService> serviceSet ) throws ServiceResolutionException {
@@ -531,7 +564,7 @@ public class ServiceCache
         rwlock.writeLock().lock();
         try {
             cacheNoLock(service, notificationMap);
-            updateCatchAll();
+            publishSnapshot();
         } finally {
             rwlock.writeLock().unlock();
         }
@@ -645,7 +678,7 @@ public class ServiceCache
         rwlock.writeLock().lock();
         try {
             removeNoLock(service);
-            updateCatchAll();
+            publishSnapshot();
         } finally {
             rwlock.writeLock().unlock();
         }
@@ -745,26 +778,22 @@ public class ServiceCache
      * @return The services.
      */
     public Collection<PublishedService> getCachedServices() {
-        rwlock.readLock().lock();
-        try {
-            return  Collections.unmodifiableCollection(services.values());
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return snapshot.serviceSet;
     }
 
     /**
      * gets a service from the cache
      */
     public PublishedService getCachedService(Goid goid) {
-        PublishedService out = null;
-        rwlock.readLock().lock();
-        try {
-            out = services.get(goid);
-        } finally {
-            rwlock.readLock().unlock();
+        if (ServiceAndPolicyCacheSharedLock.isUpdatingOnCurrentThread()) {
+            rwlock.readLock().lock();
+            try {
+                return services.get(goid);
+            } finally {
+                rwlock.readLock().unlock();
+            }
         }
-        return out;
+        return snapshot.services.get(goid);
     }
 
     /**
@@ -952,7 +981,7 @@ public class ServiceCache
                             removeNoLock(serviceToDelete);
                         }
                     }
-                    updateCatchAll();
+                    publishSnapshot();
                 } finally {
                     ciWriteLock.unlock();
                 }
@@ -965,14 +994,39 @@ public class ServiceCache
         }
     }
 
-    private void updateCatchAll() {
+    /**
+     * Update the catch all service and publish the cached services for lock-free readers.
+     *
+     * Caller must hold write lock
+     */
+    private void publishSnapshot() {
+        if (deferSnapshot || ServiceAndPolicyCacheSharedLock.deferPublish(snapshotPublisher)) return;
+        snapshot = new ServiceSnapshot(new HashMap<Goid, PublishedService>(services), findCatchAll());
+    }
+
+    private Goid findCatchAll() {
         for (PublishedService p : services.values()) {
             if (!p.isDisabled() && !p.isSoap() && "/*".equals(p.getRoutingUri())) {
-                nonSoapCatchAllServiceOid = p.getGoid();
-                return;
+                return p.getGoid();
             }
         }
-        nonSoapCatchAllServiceOid = null;
+        return null;
+    }
+
+    /**
+     * Immutable copy of the cached services, replaced as a whole when the cache is updated.
+     */
+    private static final class ServiceSnapshot {
+        private final Map<Goid, PublishedService> services;
+        private final Collection<PublishedService> serviceSet;
+        private final Goid nonSoapCatchAllServiceGoid;
+
+        private ServiceSnapshot(final Map<Goid, PublishedService> services,
+                                final Goid nonSoapCatchAllServiceGoid) {
+            this.services = services;
+            this.serviceSet = Collections.unmodifiableCollection(services.values());
+            this.nonSoapCatchAllServiceGoid = nonSoapCatchAllServiceGoid;
+        }
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.l7tech.server.service;
 
+import com.l7tech.gateway.common.service.LatencyHistogram;
 import com.l7tech.gateway.common.service.ServiceState;
 import com.l7tech.gateway.common.mapping.MessageContextMapping;
 import com.l7tech.identity.User;
@@ -11,32 +12,28 @@ import java.util.logging.Logger;
 import java.util.List;
 import java.util.Set;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Collections;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A ServiceMetrics accumulates request statistics (for one single published
  * service on one gateway node). An external timer can use ServiceMetrics to
  * record metrics periodically.
  *
+ * <p>Requests are recorded without locking. Counters are striped so that
+ * concurrent requests for the same service do not contend, and the current
+ * collectors are replaced (rather than locked) when the bin is archived.</p>
+ *
  * @author rmak
  */
 class ServiceMetrics {
     private static final Logger _logger = Logger.getLogger(ServiceMetrics.class.getName());
 
-    /**
-     * Protects {@link #_currentCollector}. This is reader-preference because the MessageProcessor "reads"
-     * the currentFineBin, whereas the archive task "writes."
-     * <p/>
-     * Note that we can't use {@link # _currentBin}'s monitor to protect the field,
-     * since the monitor belongs to the object, not the field, which gets reset constantly.
-     */
-    private final ReadWriteLock _metricsLock = new ReentrantReadWriteLock();
-    private final ReadWriteLock _metricsDetailLock = new ReentrantReadWriteLock();  // used in conjunction with _metricsLock
-
     /**
      * The OID of the {@link com.l7tech.gateway.common.service.PublishedService} for which these MetricsBins were
      * collected.
@@ -44,14 +41,9 @@ class ServiceMetrics {
     private final Goid _serviceGoid;
 
     /**
-     * The collector for summary statistics.
-     */
-    private MetricsCollector _currentCollector;
-
-    /**
-     * The fine resolution bin that is currently collecting statistics.
+     * The collectors for the fine resolution bin that is currently collecting statistics.
      */
-    private Map<MetricsDetailKey, MetricsCollector> _currentDetailCollector;
+    private volatile Collectors _current;
 
     private volatile ServiceState lastServiceState;
 
@@ -64,8 +56,7 @@ class ServiceMetrics {
         if (Goid.isDefault(serviceGoid)) throw new IllegalArgumentException("serviceGoid must not be the default");
 
         _serviceGoid = serviceGoid;
-        _currentCollector = new MetricsCollector(System.currentTimeMillis());
-        _currentDetailCollector = new HashMap<MetricsDetailKey,MetricsCollector>();
+        _current = new Collectors(System.currentTimeMillis());
     }
 
     public Goid getServiceGoid() {
@@ -81,45 +72,33 @@ class ServiceMetrics {
      * @param backTime   Time taken by the protected service
      */
     public void addRequest(String operation, User user, List<MessageContextMapping> mappings, boolean authorized, boolean completed, int frontTime, int backTime) {
-        _metricsLock.readLock().lock();
+        final Collectors collectors = enter();
         try {
-            // get details for key
-            MetricsDetailKey detailsKey = new MetricsDetailKey( operation, user, mappings );
-            MetricsCollector detailCollector = null;
-            _metricsDetailLock.readLock().lock();
-            try {
-                detailCollector = _currentDetailCollector.get(detailsKey);
-            } finally {
-                _metricsDetailLock.readLock().unlock();
-            }
-
-            // no existing details for key, so create and share
+            // get details for key, if there are no existing details for key then create and share
+            final MetricsDetailKey detailsKey = new MetricsDetailKey( operation, user, mappings );
+            MetricsCollector detailCollector = collectors.details.get(detailsKey);
             if ( detailCollector == null ) {
-                _metricsDetailLock.writeLock().lock();
-                try {
-                    detailCollector = _currentDetailCollector.get(detailsKey);
-                    if (detailCollector==null) {
-                        detailCollector = new MetricsCollector(_currentCollector.startTime);
-                        _currentDetailCollector.put(detailsKey, detailCollector);
-                    }
-                } finally {
-                    _metricsDetailLock.writeLock().unlock();
+                final MetricsCollector created = new MetricsCollector(collectors.summary.startTime, false);
+                detailCollector = collectors.details.putIfAbsent(detailsKey, created);
+                if ( detailCollector == null ) {
+                    detailCollector = created;
                 }
             }
 
             // record metrics for detail and summary
-            _currentCollector.addAttemptedRequest(frontTime);
+            final MetricsCollector summaryCollector = collectors.summary;
+            summaryCollector.addAttemptedRequest(frontTime);
             detailCollector.addAttemptedRequest(frontTime);
             if (authorized) {
-                _currentCollector.addAuthorizedRequest();
+                summaryCollector.addAuthorizedRequest();
                 detailCollector.addAuthorizedRequest();
                 if (completed) {
-                    _currentCollector.addCompletedRequest(backTime);
+                    summaryCollector.addCompletedRequest(backTime);
                     detailCollector.addCompletedRequest(backTime);
                 }
             }
         } finally {
-            _metricsLock.readLock().unlock();
+            collectors.exit();
         }
     }
 
@@ -128,32 +107,108 @@ class ServiceMetrics {
      * For performance reason, the current bin will not be archived if there was
      * no request message.
      *
-     * @return true if the current bin was archived
+     * <p>The current collectors are replaced so that new requests are recorded
+     * in the next bin, requests already being recorded are completed before
+     * the archived collectors are returned.</p>
+     *
+     * @return the archived metrics, or null if the current bin was not archived
      */
     MetricsCollectorSet getMetricsCollectorSet(final ServiceState currentServiceState) {
         MetricsCollectorSet set = null;
 
-        // Use locking to stop further modification to the current bin before it is archived.
-        _metricsLock.writeLock().lock();
+        final Collectors collectors;
+        synchronized (this) {
+            collectors = _current;
+            _current = new Collectors(System.currentTimeMillis());
+        }
+
+        // Wait for requests that were being recorded when the collectors were replaced
+        while ( collectors.isWriting() ) {
+            Thread.yield();
+        }
+
         try {
             // Bug 3728: Omit no-traffic fine bins to improve performance.
             // Dashboard will use empty uptime bins to keep moving chart advancing.
-            if (currentServiceState != lastServiceState || _currentCollector.getNumAttemptedRequest() > 0) {
-                set = new MetricsCollectorSet(_serviceGoid, currentServiceState, _currentCollector, _currentDetailCollector);
+            if (currentServiceState != lastServiceState || collectors.summary.getNumAttemptedRequest() > 0) {
+                set = new MetricsCollectorSet(_serviceGoid, currentServiceState, collectors.summary, collectors.details);
             }
-
-            _currentCollector = new MetricsCollector(System.currentTimeMillis());
-            _currentDetailCollector = new HashMap<MetricsDetailKey,MetricsCollector>();
         } finally {
-            _metricsLock.writeLock().unlock();
             lastServiceState = currentServiceState;
         }
-        
+
         return set;
     }
 
+    /**
+     * Get the current collectors, registering the caller as a writer.
+     *
+     * <p>The caller must call {@link Collectors#exit()} when recording is complete.</p>
+     */
+    private Collectors enter() {
+        while ( true ) {
+            final Collectors collectors = _current;
+            collectors.enter();
+            if ( collectors == _current ) {
+                return collectors;
+            }
+            // replaced while entering, record in the new collectors
+            collectors.exit();
+        }
+    }
+
+    /**
+     * The summary and detail collectors for a bin.
+     *
+     * <p>Writers are counted in a slot chosen by thread, so a thread always
+     * increments and decrements the same slot and no slot is ever negative.
+     * When every slot reads as zero there is no writer that entered before
+     * the collectors were replaced.</p>
+     */
+    private static final class Collectors {
+        private static final int WRITER_SLOTS = writerSlots();
+        private static final int WRITER_SLOT_STRIDE = 8; // one slot per cache line
+
+        private final MetricsCollector summary;
+        private final ConcurrentMap<MetricsDetailKey, MetricsCollector> details = new ConcurrentHashMap<MetricsDetailKey, MetricsCollector>();
+        private final AtomicLongArray writers = new AtomicLongArray(WRITER_SLOTS * WRITER_SLOT_STRIDE);
+
+        private Collectors( final long startTime ) {
+            this.summary = new MetricsCollector(startTime, true);
+        }
+
+        private void enter() {
+            writers.incrementAndGet(writerSlot());
+        }
+
+        private void exit() {
+            writers.decrementAndGet(writerSlot());
+        }
+
+        private boolean isWriting() {
+            for ( int i = 0; i < writers.length(); i += WRITER_SLOT_STRIDE ) {
+                if ( writers.get(i) != 0L ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int writerSlot() {
+            final long id = Thread.currentThread().getId();
+            return ((int) (id ^ (id >>> 32)) & (WRITER_SLOTS - 1)) * WRITER_SLOT_STRIDE;
+        }
+
+        /**
+         * A power of two that is at least twice the number of processors.
+         */
+        private static int writerSlots() {
+            return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1);
+        }
+    }
+
     static MetricsCollectorSet getEmptyMetricsSet( final long startTime, final long endTime ) {
-        MetricsCollector collector = new MetricsCollector( -1L );
+        MetricsCollector collector = new MetricsCollector( -1L, false );
         return new MetricsCollectorSet( PersistentEntity.DEFAULT_GOID, startTime, endTime, collector, Collections.<MetricsDetailKey,MetricsCollector>emptyMap() );
     }
 
@@ -292,192 +347,175 @@ class ServiceMetrics {
         }
     }
 
+    /**
+     * Collector for request statistics.
+     *
+     * <p>Counts and sums use striped adders and the minimum and maximum times
+     * are only written when they change, so concurrent requests do not
+     * contend.</p>
+     *
+     * <p>Response time histograms are optional, when recorded each bucket
+     * count is an adder, so concurrent requests do not contend however many
+     * processors there are. The adders are created with the collector, which
+     * happens when the current collectors are replaced rather than while a
+     * request is being recorded.</p>
+     */
     @NonObfuscatable
     static class MetricsCollector {
         private final long startTime;
-        private int _numAttemptedRequest;
-        private int _numAuthorizedRequest;
-        private int _numCompletedRequest;
+        private final LongAdder _numAttemptedRequest = new LongAdder();
+        private final LongAdder _numAuthorizedRequest = new LongAdder();
+        private final LongAdder _numCompletedRequest = new LongAdder();
 
         /** Minimum frontend response time (in milliseconds) of all attempted requests. */
-        private int _minFrontendResponseTime;
+        private final AtomicInteger _minFrontendResponseTime = new AtomicInteger(NO_MIN);
 
         /** Maximum frontend response time (in milliseconds) of all attempted requests. */
-        private int _maxFrontendResponseTime;
+        private final AtomicInteger _maxFrontendResponseTime = new AtomicInteger(NO_MAX);
 
         /** Sum over frontend response times (in milliseconds) of all attempted requests. */
-        private long _sumFrontendResponseTime;
+        private final LongAdder _sumFrontendResponseTime = new LongAdder();
 
         /** Minimum backend response time (in milliseconds) of all completed requests. */
-        private int _minBackendResponseTime;
+        private final AtomicInteger _minBackendResponseTime = new AtomicInteger(NO_MIN);
 
         /** Maximum backend response time (in milliseconds) of all completed requests. */
-        private int _maxBackendResponseTime;
+        private final AtomicInteger _maxBackendResponseTime = new AtomicInteger(NO_MAX);
 
         /** Sum over backend response times (in milliseconds) of all completed requests. */
-        private long _sumBackendResponseTime;
+        private final LongAdder _sumBackendResponseTime = new LongAdder();
 
-        /** Protects write access to {@link #_numAttemptedRequest}, {@link #_minFrontendResponseTime},
-         * {@link #_maxFrontendResponseTime} and {@link #_sumFrontendResponseTime}. */
-        private final Object _attemptedLock = new Object();
+        /** Histogram bucket counts for frontend response times, null if not recorded. */
+        private final LongAdder[] _frontendHistogram;
 
-        /** Protects write access to {@link #_numAuthorizedRequest}. */
-        private final Object _authorizedLock = new Object();
+        /** Histogram bucket counts for backend response times, null if not recorded. */
+        private final LongAdder[] _backendHistogram;
 
-        /** Protects write access to {@link #_numCompletedRequest}, {@link #_minBackendResponseTime},
-         * {@link #_maxBackendResponseTime} and {@link #_sumBackendResponseTime}. */
-        private final Object _completedLock = new Object();
+        private static final int NO_MIN = Integer.MAX_VALUE;
+        private static final int NO_MAX = -1;
 
         MetricsCollector( long startTime ) {
+            this( startTime, false );
+        }
+
+        /**
+         * @param startTime the start time for the collected metrics
+         * @param histograms true to record response time histograms
+         */
+        MetricsCollector( long startTime, boolean histograms ) {
             this.startTime = startTime;
+            this._frontendHistogram = histograms ? newHistogram() : null;
+            this._backendHistogram = histograms ? newHistogram() : null;
         }
 
         public int getNumAttemptedRequest() {
-            synchronized(_attemptedLock) {
-                return _numAttemptedRequest;
-            }
+            return _numAttemptedRequest.intValue();
         }
 
         public int getNumAuthorizedRequest() {
-            synchronized(_authorizedLock){
-                return _numAuthorizedRequest;
-            }
+            return _numAuthorizedRequest.intValue();
         }
 
         public int getNumCompletedRequest() {
-            synchronized(_completedLock){
-                return _numCompletedRequest;
-            }
+            return _numCompletedRequest.intValue();
         }
 
         /** @return number of successful requests in this bin */
         public int getNumSuccess() {
-            synchronized(_completedLock) {
-                return _numCompletedRequest;
-            }
+            return getNumCompletedRequest();
         }
 
         /** @return number of requests with policy violations in this bin */
         public int getNumPolicyViolation() {
-            synchronized(_attemptedLock) {
-                synchronized(_authorizedLock) {
-                    return _numAttemptedRequest - _numAuthorizedRequest;
-                }
-            }
+            return getNumAttemptedRequest() - getNumAuthorizedRequest();
         }
 
         /** @return number of requests with routing failures in this bin */
         public int getNumRoutingFailure() {
-            synchronized(_authorizedLock) {
-                synchronized(_completedLock) {
-                    return _numAuthorizedRequest - _numCompletedRequest;
-                }
-            }
+            return getNumAuthorizedRequest() - getNumCompletedRequest();
         }
 
         /** @return number of all requests in this bin */
         public int getNumTotal() {
-            synchronized(_attemptedLock) {
-                return _numAttemptedRequest;
-            }
+            return getNumAttemptedRequest();
         }
 
         /** @return the minimum frontend response time (in milliseconds) of all attempted requests;
          *          this is meaningful only if {@link #getNumAttemptedRequest()} returns non-zero */
         public int getMinFrontendResponseTime() {
-            synchronized(_attemptedLock) {
-                return _minFrontendResponseTime;
-            }
+            return min(_minFrontendResponseTime);
         }
 
         /** @return the maximum frontend response time (in milliseconds) of all attempted requests;
          *          this is meaningful only if {@link #getNumAttemptedRequest()} returns non-zero */
         public int getMaxFrontendResponseTime() {
-            synchronized(_attemptedLock) {
-                return _maxFrontendResponseTime;
-            }
+            return max(_maxFrontendResponseTime);
         }
 
         public long getSumFrontendResponseTime() {
-            synchronized(_attemptedLock){
-                return _sumFrontendResponseTime;
-            }
+            return _sumFrontendResponseTime.sum();
         }
 
         /** @return the minimum backend response time (in milliseconds) of all completed requests;
          *          this is meaningful only if {@link #getNumCompletedRequest()} returns non-zero */
         public int getMinBackendResponseTime() {
-            synchronized(_completedLock){
-                return _minBackendResponseTime;
-            }
+            return min(_minBackendResponseTime);
         }
 
         /** @return the maximum backend response time (in milliseconds) of all completed requests;
          *          this is meaningful only if {@link #getNumCompletedRequest()} returns non-zero */
         public int getMaxBackendResponseTime() {
-            synchronized(_completedLock){
-                return _maxBackendResponseTime;
-            }
+            return max(_maxBackendResponseTime);
         }
 
         public long getSumBackendResponseTime() {
-            synchronized(_completedLock){
-                return _sumBackendResponseTime;
-            }
+            return _sumBackendResponseTime.sum();
+        }
+
+        /** @return the histogram of frontend response times of all attempted requests, null if not recorded */
+        public LatencyHistogram getFrontendResponseTimeHistogram() {
+            return histogram(_frontendHistogram);
+        }
+
+        /** @return the histogram of backend response times of all completed requests, null if not recorded */
+        public LatencyHistogram getBackendResponseTimeHistogram() {
+            return histogram(_backendHistogram);
         }
 
         public void setNumAttemptedRequest(int numAttemptedRequest) {
-            synchronized(_attemptedLock){
-                _numAttemptedRequest = numAttemptedRequest;
-            }
+            set(_numAttemptedRequest, numAttemptedRequest);
         }
 
         public void setNumAuthorizedRequest(int numAuthorizedRequest) {
-            synchronized(_authorizedLock){
-                _numAuthorizedRequest = numAuthorizedRequest;
-            }
+            set(_numAuthorizedRequest, numAuthorizedRequest);
         }
 
         public void setNumCompletedRequest(int numCompletedRequest) {
-            synchronized(_completedLock){
-                _numCompletedRequest = numCompletedRequest;
-            }
+            set(_numCompletedRequest, numCompletedRequest);
         }
 
         public void setMinFrontendResponseTime(int minFrontendResponseTime) {
-            synchronized(_attemptedLock) {
-                _minFrontendResponseTime = minFrontendResponseTime;
-            }
+            _minFrontendResponseTime.set(minFrontendResponseTime);
         }
 
         public void setMaxFrontendResponseTime(int maxFrontendResponseTime) {
-            synchronized(_attemptedLock) {
-                _maxFrontendResponseTime = maxFrontendResponseTime;
-            }
+            _maxFrontendResponseTime.set(maxFrontendResponseTime);
         }
 
         public void setSumFrontendResponseTime(long sumFrontendResponseTime) {
-            synchronized(_attemptedLock){
-                _sumFrontendResponseTime = sumFrontendResponseTime;
-            }
+            set(_sumFrontendResponseTime, sumFrontendResponseTime);
         }
 
         public void setMinBackendResponseTime(int minBackendResponseTime) {
-            synchronized(_completedLock){
-                _minBackendResponseTime = minBackendResponseTime;
-            }
+            _minBackendResponseTime.set(minBackendResponseTime);
         }
 
         public void setMaxBackendResponseTime(int maxBackendResponseTime) {
-            synchronized(_completedLock){
-                _maxBackendResponseTime = maxBackendResponseTime;
-            }
+            _maxBackendResponseTime.set(maxBackendResponseTime);
         }
 
         public void setSumBackendResponseTime(long sumBackendResponseTime) {
-            synchronized(_completedLock){
-                _sumBackendResponseTime = sumBackendResponseTime;
-            }
+            set(_sumBackendResponseTime, sumBackendResponseTime);
         }
 
         /**
@@ -493,28 +531,16 @@ class ServiceMetrics {
                 frontendResponseTime = 0;
             }
 
-            synchronized(_attemptedLock) {
-                if (_numAttemptedRequest == 0) {
-                    _minFrontendResponseTime = frontendResponseTime;
-                    _maxFrontendResponseTime = frontendResponseTime;
-                } else {
-                    if (frontendResponseTime < _minFrontendResponseTime) {
-                        _minFrontendResponseTime = frontendResponseTime;
-                    }
-                    if (frontendResponseTime > _maxFrontendResponseTime) {
-                        _maxFrontendResponseTime = frontendResponseTime;
-                    }
-                }
-                _sumFrontendResponseTime += frontendResponseTime;
-                ++ _numAttemptedRequest;
-            }
+            updateMin(_minFrontendResponseTime, frontendResponseTime);
+            updateMax(_maxFrontendResponseTime, frontendResponseTime);
+            _sumFrontendResponseTime.add(frontendResponseTime);
+            record(_frontendHistogram, frontendResponseTime);
+            _numAttemptedRequest.increment();
         }
 
         /** Records an authorized request. */
         public void addAuthorizedRequest() {
-            synchronized(_authorizedLock) {
-                ++ _numAuthorizedRequest;
-            }
+            _numAuthorizedRequest.increment();
         }
 
         /**
@@ -530,20 +556,67 @@ class ServiceMetrics {
                 backendResponseTime = 0;
             }
 
-            synchronized(_completedLock) {
-                if (_numCompletedRequest == 0) {
-                    _minBackendResponseTime = backendResponseTime;
-                    _maxBackendResponseTime = backendResponseTime;
-                } else {
-                    if (backendResponseTime < _minBackendResponseTime) {
-                        _minBackendResponseTime = backendResponseTime;
-                    }
-                    if (backendResponseTime > _maxBackendResponseTime) {
-                        _maxBackendResponseTime = backendResponseTime;
-                    }
+            updateMin(_minBackendResponseTime, backendResponseTime);
+            updateMax(_maxBackendResponseTime, backendResponseTime);
+            _sumBackendResponseTime.add(backendResponseTime);
+            record(_backendHistogram, backendResponseTime);
+            _numCompletedRequest.increment();
+        }
+
+        private static LongAdder[] newHistogram() {
+            final LongAdder[] histogram = new LongAdder[LatencyHistogram.BUCKET_COUNT];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = new LongAdder();
+            }
+            return histogram;
+        }
+
+        private static void record(final LongAdder[] histogram, final int value) {
+            if (histogram != null) {
+                histogram[LatencyHistogram.bucketIndex(value)].increment();
+            }
+        }
+
+        private static LatencyHistogram histogram(final LongAdder[] counts) {
+            if (counts == null) return null;
+            final LatencyHistogram histogram = new LatencyHistogram();
+            for (int i = 0; i < counts.length; i++) {
+                final long sum = counts[i].sum();
+                if (sum != 0L) {
+                    histogram.addCount(i, sum);
                 }
-                _sumBackendResponseTime += backendResponseTime;
-                ++ _numCompletedRequest;
+            }
+            return histogram;
+        }
+
+        private static void set(final LongAdder adder, final long value) {
+            adder.reset();
+            adder.add(value);
+        }
+
+        private static int min(final AtomicInteger min) {
+            final int value = min.get();
+            return value == NO_MIN ? 0 : value;
+        }
+
+        private static int max(final AtomicInteger max) {
+            final int value = max.get();
+            return value == NO_MAX ? 0 : value;
+        }
+
+        /** Only writes when the value is a new minimum, so the common case is a read. */
+        private static void updateMin(final AtomicInteger min, final int value) {
+            int current;
+            while (value < (current = min.get())) {
+                if (min.compareAndSet(current, value)) break;
+            }
+        }
+
+        /** Only writes when the value is a new maximum, so the common case is a read. */
+        private static void updateMax(final AtomicInteger max, final int value) {
+            int current;
+            while (value > (current = max.get())) {
+                if (max.compareAndSet(current, value)) break;
             }
         }
     }
@@ -33,6 +33,7 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.inject.Inject;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
@@ -448,6 +449,21 @@ public class ServiceMetricsManagerImpl extends HibernateDaoSupport implements Se
         "    front_max=values(front_max),\n" +
         "    front_sum=values(front_sum);";
 
+    private static final String SQL_SELECT_HISTOGRAMS =
+        "SELECT front_histogram,back_histogram FROM service_metrics WHERE\n" +
+        "    nodeid=? AND\n" +
+        "    published_service_goid=? AND\n" +
+        "    resolution=? AND\n" +
+        "    period_start>=?  AND\n" +
+        "    period_start+interval_size<=?";
+
+    private static final String SQL_UPDATE_HISTOGRAMS =
+        "UPDATE service_metrics SET front_histogram=?,back_histogram=? WHERE\n" +
+        "    nodeid=? AND\n" +
+        "    published_service_goid=? AND\n" +
+        "    resolution=? AND\n" +
+        "    period_start=?";
+
     private static final Logger _logger = Logger.getLogger(ServiceMetricsManagerImpl.class.getName());
 
     private final String _clusterNodeId;
@@ -521,6 +537,10 @@ public class ServiceMetricsManagerImpl extends HibernateDaoSupport implements Se
                                 statement = null;
                                 _logger.log(Level.FINE, "Row count for inserting/updating summary bin is " + result + ".");
 
+                                if (result > 0) {
+                                    updateSummaryHistograms(connection, serviceGoid, startTime, bin.getInterval(), binResolution, summaryResolution);
+                                }
+
                                 statement = connection.prepareStatement(SQL_INSERT_OR_UPDATE_DETAILS);
                                 i = 0;
 
@@ -552,6 +572,67 @@ public class ServiceMetricsManagerImpl extends HibernateDaoSupport implements Se
         }
     }
 
+    /**
+     * Merge the response time histograms of the source bins into the summary bin.
+     *
+     * <p>Histograms cannot be merged in SQL so they are read and merged here
+     * after the summary bin is created.</p>
+     */
+    private void updateSummaryHistograms( final Connection connection,
+                                          final Goid serviceGoid,
+                                          final long startTime,
+                                          final int interval,
+                                          final int binResolution,
+                                          final int summaryResolution ) throws SQLException {
+        byte[] frontendHistogram = null;
+        byte[] backendHistogram = null;
+
+        PreparedStatement statement = null;
+        ResultSet results = null;
+        try {
+            statement = connection.prepareStatement(SQL_SELECT_HISTOGRAMS);
+            int i = 0;
+            statement.setString(++i, _clusterNodeId);
+            statement.setBytes(++i, serviceGoid.getBytes());
+            statement.setInt(++i, summaryResolution);
+            statement.setLong(++i, startTime);
+            statement.setLong(++i, startTime + interval);
+
+            results = statement.executeQuery();
+            while (results.next()) {
+                frontendHistogram = MetricsBin.mergeHistograms(frontendHistogram, results.getBytes(1));
+                backendHistogram = MetricsBin.mergeHistograms(backendHistogram, results.getBytes(2));
+            }
+        } finally {
+            ResourceUtils.closeQuietly(results);
+            ResourceUtils.closeQuietly(statement);
+        }
+
+        if (frontendHistogram == null && backendHistogram == null) return;
+
+        try {
+            statement = connection.prepareStatement(SQL_UPDATE_HISTOGRAMS);
+            int i = 0;
+            setBytes(statement, ++i, frontendHistogram);
+            setBytes(statement, ++i, backendHistogram);
+            statement.setString(++i, _clusterNodeId);
+            statement.setBytes(++i, serviceGoid.getBytes());
+            statement.setInt(++i, binResolution);
+            statement.setLong(++i, startTime);
+            statement.executeUpdate();
+        } finally {
+            ResourceUtils.closeQuietly(statement);
+        }
+    }
+
+    private static void setBytes( final PreparedStatement statement, final int index, final byte[] bytes ) throws SQLException {
+        if (bytes == null) {
+            statement.setNull(index, Types.BLOB);
+        } else {
+            statement.setBytes(index, bytes);
+        }
+    }
+
     private void saveDetails( final Session session, final Goid goid, final Map<ServiceMetrics.MetricsDetailKey,ServiceMetrics.MetricsCollector> detailMap ) {
         if ( detailMap != null ) {
             for ( Map.Entry<ServiceMetrics.MetricsDetailKey,ServiceMetrics.MetricsCollector> entry : detailMap.entrySet() ) {
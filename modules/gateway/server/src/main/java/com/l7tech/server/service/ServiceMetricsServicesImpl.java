@@ -1,6 +1,7 @@
 package com.l7tech.server.service;
 
 import com.l7tech.gateway.common.mapping.MessageContextMapping;
+import com.l7tech.gateway.common.service.LatencyHistogram;
 import com.l7tech.gateway.common.service.MetricsBin;
 import com.l7tech.gateway.common.service.PublishedService;
 import com.l7tech.gateway.common.service.ServiceHeader;
@@ -33,6 +34,7 @@ import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -126,13 +128,12 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
      */
     ServiceMetrics getServiceMetrics(final Goid serviceGoid) {
         if (isEnabled()) {
-            ServiceMetrics serviceMetrics;
-            synchronized (_serviceMetricsMapLock) {
-                if (! _serviceMetricsMap.containsKey(serviceGoid)) {
-                    serviceMetrics = new ServiceMetrics(serviceGoid);
-                    _serviceMetricsMap.put(serviceGoid, serviceMetrics);
-                } else {
-                    serviceMetrics = _serviceMetricsMap.get(serviceGoid);
+            ServiceMetrics serviceMetrics = _serviceMetricsMap.get(serviceGoid);
+            if (serviceMetrics == null) {
+                final ServiceMetrics created = new ServiceMetrics(serviceGoid);
+                serviceMetrics = _serviceMetricsMap.putIfAbsent(serviceGoid, created);
+                if (serviceMetrics == null) {
+                    serviceMetrics = created;
                 }
             }
             return serviceMetrics;
@@ -191,15 +192,13 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
             // {@link _serviceMetricsMap} should be empty here; whether because the
             // gateway is starting or cleared during the previous call to {@link #disable()}.
             try {
-                synchronized (_serviceMetricsMapLock) {
-                    Collection<ServiceHeader> serviceHeaders = serviceMetricsManager.findAllServiceHeaders();
-                    for ( ServiceHeader service : serviceHeaders) {
-                        final Goid goid = service.getGoid();
-                        ServiceMetrics serviceMetrics = new ServiceMetrics(service.getGoid());
-                         _serviceMetricsMap.put(goid, serviceMetrics);
-                        // There won't be any deleted services on startup
-                        serviceStates.put(goid, service.isDisabled() ? ServiceState.DISABLED : ServiceState.ENABLED);
-                    }
+                Collection<ServiceHeader> serviceHeaders = serviceMetricsManager.findAllServiceHeaders();
+                for ( ServiceHeader service : serviceHeaders) {
+                    final Goid goid = service.getGoid();
+                    ServiceMetrics serviceMetrics = new ServiceMetrics(service.getGoid());
+                     _serviceMetricsMap.put(goid, serviceMetrics);
+                    // There won't be any deleted services on startup
+                    serviceStates.put(goid, service.isDisabled() ? ServiceState.DISABLED : ServiceState.ENABLED);
                 }
             } catch (FindException e) {
                 logger.log( Level.WARNING, "Failed to fetch list of published service. Metric bins generation will not start until requests arrive. Cause: " + e.getMessage(), ExceptionUtils.getDebugException( e ) );
@@ -278,10 +277,8 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
                 logger.log(Level.WARNING, "Caught exception while disabling ServiceMetrics collection", e);
             }
 
-            synchronized(_serviceMetricsMapLock) {
-                // Discards all the currently open metric bins.
-                _serviceMetricsMap.clear();
-            }
+            // Discards all the currently open metric bins.
+            _serviceMetricsMap.clear();
 
             _enabled.set(false);
         }
@@ -363,10 +360,7 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
     private class FineTask extends ManagedTimerTask {
         @Override
         protected void doRun() {
-            List<ServiceMetrics> list = new ArrayList<ServiceMetrics>();
-            synchronized(_serviceMetricsMapLock) {
-                list.addAll(_serviceMetricsMap.values());
-            }
+            List<ServiceMetrics> list = new ArrayList<ServiceMetrics>(_serviceMetricsMap.values());
             int numArchived = 0;
             for (ServiceMetrics serviceMetrics : list) {
                 final ServiceState state = serviceStates.get(serviceMetrics.getServiceGoid());
@@ -406,10 +400,7 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
     private class HourlyTask extends ManagedTimerTask {
         @Override
         protected void doRun() {
-            Set<Goid> list = new HashSet<Goid>();
-            synchronized(_serviceMetricsMapLock) {
-                list.addAll(_serviceMetricsMap.keySet());
-            }
+            Set<Goid> list = new HashSet<Goid>(_serviceMetricsMap.keySet());
 
             // get start time for the last hourly period
             long startTime = MetricsBin.periodStartFor( MetricsBin.RES_HOURLY, 0, System.currentTimeMillis() ) - TimeUnit.HOURS.toMillis(1);
@@ -456,10 +447,7 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
         }
 
         private void performTask( final boolean reschedule ) {
-            Set<Goid> list = new HashSet<Goid>();
-            synchronized(_serviceMetricsMapLock) {
-                list.addAll(_serviceMetricsMap.keySet());
-            }
+            Set<Goid> list = new HashSet<Goid>(_serviceMetricsMap.keySet());
 
             // get start time for the last daily period
             long startTime = MetricsBin.periodStartFor( MetricsBin.RES_DAILY, 0, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1) );
@@ -630,6 +618,11 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
             }
             bin.setSumBackendResponseTime( metricsSet.getSummaryMetrics().getSumBackendResponseTime() );
 
+            final LatencyHistogram frontendHistogram = metricsSet.getSummaryMetrics().getFrontendResponseTimeHistogram();
+            if ( frontendHistogram != null ) bin.setFrontendResponseTimeHistogram( frontendHistogram.toBytes() );
+            final LatencyHistogram backendHistogram = metricsSet.getSummaryMetrics().getBackendResponseTimeHistogram();
+            if ( backendHistogram != null ) bin.setBackendResponseTimeHistogram( backendHistogram.toBytes() );
+
             bin.setNumAttemptedRequest( metricsSet.getSummaryMetrics().getNumAttemptedRequest() );
             bin.setNumAuthorizedRequest( metricsSet.getSummaryMetrics().getNumAuthorizedRequest() );
             bin.setNumCompletedRequest( metricsSet.getSummaryMetrics().getNumCompletedRequest() );
@@ -679,7 +672,6 @@ public class ServiceMetricsServicesImpl implements ServiceMetricsServices, PostS
     private Thread _flusherThread;
     private static final BlockingQueue<ServiceMetrics.MetricsCollectorSet> _flusherQueue = new ArrayBlockingQueue<ServiceMetrics.MetricsCollectorSet>(500);
 
-    private final Map<Goid, ServiceMetrics> _serviceMetricsMap = new HashMap<Goid, ServiceMetrics>();
-    private final Object _serviceMetricsMapLock = new Object();
+    private final ConcurrentMap<Goid, ServiceMetrics> _serviceMetricsMap = new ConcurrentHashMap<Goid, ServiceMetrics>();
     private AtomicBoolean _addMappingsIntoServiceMetrics = new AtomicBoolean(false);
 }
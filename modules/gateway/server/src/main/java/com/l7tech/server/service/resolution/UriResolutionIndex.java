@@ -0,0 +1,216 @@
+package com.l7tech.server.service.resolution;
+
+import com.l7tech.server.service.resolution.UriResolver.URIResolutionParam;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Index of wildcard resolution URIs.
+ *
+ * <p>Wildcard URIs are indexed by their literal prefix (the text before the first '*') in a
+ * compressed radix trie, so finding the candidates for a request URI costs time proportional
+ * to the length of the URI rather than the number of wildcard URIs.</p>
+ *
+ * <p>Path patterns of the form "/foo/*" are matched directly. Any other patterns (such as the
+ * extension pattern "/foo/*.jsp") are kept separately on each trie node and are checked using
+ * their regular expression. The global wildcard "/*" matches any URI.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+final class UriResolutionIndex {
+
+    //- PACKAGE
+
+    UriResolutionIndex() {
+    }
+
+    /**
+     * Add a wildcard URI to the index.
+     *
+     * @param param The URI, ignored if it does not have wildcards
+     */
+    void add( @NotNull final URIResolutionParam param ) {
+        if ( !param.hasWildcards ) return;
+        if ( param.globalWildcard ) {
+            globalWildcard = param;
+        } else {
+            root.add( literalPrefix( param ), 0, param );
+        }
+    }
+
+    /**
+     * Remove a wildcard URI from the index.
+     *
+     * @param param The URI to remove
+     */
+    void remove( @NotNull final URIResolutionParam param ) {
+        if ( !param.hasWildcards ) return;
+        if ( param.globalWildcard ) {
+            globalWildcard = null;
+        } else {
+            root.remove( literalPrefix( param ), 0, param );
+        }
+    }
+
+    /**
+     * Find all wildcard URIs that match the given value.
+     *
+     * @param value The value to match
+     * @param matches The collection to add matching URIs to
+     */
+    void findMatches( @NotNull final String value,
+                      @NotNull final Collection<URIResolutionParam> matches ) {
+        if ( globalWildcard != null ) {
+            matches.add( globalWildcard );
+        }
+
+        Node node = root;
+        int position = 0;
+        while ( node != null ) {
+            node.addMatches( value, position, matches );
+            if ( position >= value.length() ) break;
+
+            final Node child = node.child( value.charAt( position ) );
+            if ( child == null || !value.startsWith( child.label, position ) ) break;
+            position += child.label.length();
+            node = child;
+        }
+    }
+
+    //- PRIVATE
+
+    private final Node root = new Node( "" );
+    private URIResolutionParam globalWildcard;
+
+    private static String literalPrefix( final URIResolutionParam param ) {
+        return param.uri.substring( 0, param.uri.indexOf( '*' ) );
+    }
+
+    /**
+     * Check if the given text would be matched by ".*" (the regex dot does not match line terminators)
+     */
+    private static boolean isWildcardMatch( final String value, final int start ) {
+        for ( int i=start; i<value.length(); i++ ) {
+            switch ( value.charAt( i ) ) {
+                case '\n':
+                case '\r':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+        private String label;
+        private Map<Character,Node> children;
+        private List<URIResolutionParam> prefixPatterns; // "prefix*"
+        private List<URIResolutionParam> otherPatterns;  // "prefix*suffix", etc
+
+        private Node( final String label ) {
+            this.label = label;
+        }
+
+        private Node child( final char c ) {
+            return children == null ? null : children.get( c );
+        }
+
+        private boolean isEmpty() {
+            return children == null && prefixPatterns == null && otherPatterns == null;
+        }
+
+        /**
+         * Add the given param for the prefix, which matches this node up to the given offset.
+         */
+        private void add( final String prefix, final int offset, final URIResolutionParam param ) {
+            if ( offset == prefix.length() ) {
+                if ( param.uri.indexOf( '*' ) == param.uri.length() - 1 ) {
+                    if ( prefixPatterns == null ) prefixPatterns = new ArrayList<URIResolutionParam>( 1 );
+                    if ( !prefixPatterns.contains( param ) ) prefixPatterns.add( param );
+                } else {
+                    if ( otherPatterns == null ) otherPatterns = new ArrayList<URIResolutionParam>( 1 );
+                    if ( !otherPatterns.contains( param ) ) otherPatterns.add( param );
+                }
+                return;
+            }
+
+            final char c = prefix.charAt( offset );
+            Node child = child( c );
+            if ( child == null ) {
+                child = new Node( prefix.substring( offset ) );
+                if ( children == null ) children = new HashMap<Character,Node>( 4 );
+                children.put( c, child );
+            } else {
+                // find common prefix length and split the child if required
+                final String childLabel = child.label;
+                int common = 1;
+                while ( common < childLabel.length() &&
+                        offset + common < prefix.length() &&
+                        childLabel.charAt( common ) == prefix.charAt( offset + common ) ) {
+                    common++;
+                }
+                if ( common < childLabel.length() ) {
+                    final Node split = new Node( childLabel.substring( 0, common ) );
+                    child.label = childLabel.substring( common );
+                    split.children = new HashMap<Character,Node>( 4 );
+                    split.children.put( child.label.charAt( 0 ), child );
+                    children.put( c, split );
+                    child = split;
+                }
+            }
+            child.add( prefix, offset + child.label.length(), param );
+        }
+
+        /**
+         * Remove the given param for the prefix, pruning any nodes that are no longer required.
+         */
+        private void remove( final String prefix, final int offset, final URIResolutionParam param ) {
+            if ( offset == prefix.length() ) {
+                if ( prefixPatterns != null && prefixPatterns.remove( param ) && prefixPatterns.isEmpty() ) prefixPatterns = null;
+                if ( otherPatterns != null && otherPatterns.remove( param ) && otherPatterns.isEmpty() ) otherPatterns = null;
+                return;
+            }
+
+            final char c = prefix.charAt( offset );
+            final Node child = child( c );
+            if ( child == null || !prefix.startsWith( child.label, offset ) ) return;
+
+            child.remove( prefix, offset + child.label.length(), param );
+            if ( child.isEmpty() ) {
+                children.remove( c );
+                if ( children.isEmpty() ) children = null;
+            } else if ( child.prefixPatterns == null && child.otherPatterns == null && child.children.size() == 1 ) {
+                // merge with the only remaining grandchild to keep the trie compressed
+                final Node grandchild = child.children.values().iterator().next();
+                grandchild.label = child.label + grandchild.label;
+                children.put( c, grandchild );
+            }
+        }
+
+        /**
+         * Add the params of this node that match the value, the value up to the position matches this node.
+         */
+        private void addMatches( final String value,
+                                 final int position,
+                                 final Collection<URIResolutionParam> matches ) {
+            if ( prefixPatterns != null && isWildcardMatch( value, position ) ) {
+                matches.addAll( prefixPatterns );
+            }
+            if ( otherPatterns != null ) {
+                for ( final URIResolutionParam param : otherPatterns ) {
+                    if ( ((Pattern) param.pattern).matcher( value ).matches() ) {
+                        matches.add( param );
+                    }
+                }
+            }
+        }
+    }
+}
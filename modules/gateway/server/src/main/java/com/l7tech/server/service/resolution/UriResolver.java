@@ -1,5 +1,6 @@
 package com.l7tech.server.service.resolution;
 
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.common.protocol.SecureSpanConstants;
 import com.l7tech.gateway.common.audit.AuditFactory;
 import com.l7tech.gateway.common.audit.MessageProcessingMessages;
@@ -9,6 +10,7 @@ import com.l7tech.message.HttpRequestKnob;
 import com.l7tech.message.Message;
 import com.l7tech.message.UriKnob;
 import com.l7tech.objectmodel.Goid;
+import com.l7tech.util.ConfigFactory;
 
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
@@ -43,6 +45,9 @@ import java.util.regex.Pattern;
  * <li>we finally prefer path matches over filetype matches</li>
  * <li>we then prefer to match the longest pattern</li>
  * </ol>
+ * </p><p>
+ * Wildcard resolution URIs are held in a {@link UriResolutionIndex} so that the cost of finding the matching
+ * URIs depends on the length of the request URI rather than the number of services.
  * </p>
  *
  * @author franco
@@ -57,6 +62,9 @@ public class UriResolver extends ServiceResolver<String> {
                            final boolean caseSensitive ) {
         super( auditorFactory );
         this.caseSensitive = caseSensitive;
+        this.knownToFail = new SegmentedCache<String,Boolean>(
+                "uriResolutionFailures" + (caseSensitive ? "" : ".caseInsensitive"),
+                (long) ConfigFactory.getIntProperty( "com.l7tech.server.service.resolution.uriFailureCacheSize", 1000 ) );
     }
 
     @Override
@@ -88,22 +96,19 @@ public class UriResolver extends ServiceResolver<String> {
         }
 
         // otherwise, try to match using wildcards
-        Set<URIResolutionParam> keys = uriToServiceMap.keySet();
+        List<URIResolutionParam> candidates = new ArrayList<URIResolutionParam>();
+        wildcardIndex.findMatches(requestValue, candidates);
         boolean encounteredPathPattern = false;
         boolean encounteredExtensionPattern = false;
         ArrayList<URIResolutionParam> matchingRegexKeys = new ArrayList<URIResolutionParam>();
-        for (URIResolutionParam key : keys) {
-            if (key.hasWildcards) {
-                // only consider cached URI associated to at least one service in the passed subset
-                // this ensures that further calls to narrowList will not yield empty service sets and
-                // that the best fit will chosen from a set of potentially valid ones only
-                if (isInSubset(serviceSubset, uriToServiceMap.get(key))) {
-                    if (key.globalWildcard || ((Pattern) key.pattern).matcher(requestValue).matches()) {
-                        if (key.pathPattern) encounteredPathPattern = true;
-                        else encounteredExtensionPattern = true;
-                        matchingRegexKeys.add(key);
-                    }
-                }
+        for (URIResolutionParam key : candidates) {
+            // only consider cached URI associated to at least one service in the passed subset
+            // this ensures that further calls to narrowList will not yield empty service sets and
+            // that the best fit will chosen from a set of potentially valid ones only
+            if (isInSubset(serviceSubset, uriToServiceMap.get(key))) {
+                if (key.pathPattern) encounteredPathPattern = true;
+                else encounteredExtensionPattern = true;
+                matchingRegexKeys.add(key);
             }
         }
         if (matchingRegexKeys.size() <= 0) {
@@ -122,6 +127,9 @@ public class UriResolver extends ServiceResolver<String> {
             if (auditor != null) {
                 auditor.logAndAudit(MessageProcessingMessages.SR_HTTPURI_WILD_MULTI, requestValue);
             }
+            if (hasLongestTie(matchingRegexKeys, encounteredPathPattern, encounteredExtensionPattern)) {
+                matchingRegexKeys = inMapOrder(matchingRegexKeys);
+            }
             URIResolutionParam best = whichOneIsBest(matchingRegexKeys,
                                                     encounteredPathPattern,
                                                     encounteredExtensionPattern);
@@ -148,15 +156,14 @@ public class UriResolver extends ServiceResolver<String> {
         rwlock.readLock().lock();
         try {
             // first look at repetitive failures
-            if (knownToFail.contains(requestValue)) { // why is this suspicious?
+            if (knownToFail.get(requestValue) != null) { // why is this suspicious?
                 auditor.logAndAudit(MessageProcessingMessages.SR_HTTPURI_CACHEDFAIL, requestValue);
                 return Result.NO_MATCH;
             }
             Result res = doResolve(requestValue, serviceSubset, exactOnly);
             if (res == Result.NO_MATCH && !exactOnly) {
-                // todo, this could be exploited as an attack. we should either not try to do this or
-                // we should have a worker thread making sure this does not grow too big
-                knownToFail.add(requestValue);
+                // the cache is bounded so that requests for many distinct URIs cannot grow it without limit
+                knownToFail.put(requestValue, Boolean.TRUE);
             }
             return res;
         } finally {
@@ -248,6 +255,8 @@ public class UriResolver extends ServiceResolver<String> {
         if (listedServicesForThatURI == null) {
             listedServicesForThatURI = new ArrayList<Goid>();
             uriToServiceMap.put(uriparam, listedServicesForThatURI);
+            wildcardIndex.add(uriparam);
+            mapOrder = null;
         }
         listedServicesForThatURI.add(service.getGoid());
         servicetoURIMap.put(service.getGoid(), uriparam);
@@ -260,9 +269,69 @@ public class UriResolver extends ServiceResolver<String> {
         }
         List<Goid> listedServicesForThatURI = uriToServiceMap.get(uriparam);
         listedServicesForThatURI.remove(service.getGoid());
+        if (listedServicesForThatURI.isEmpty()) {
+            uriToServiceMap.remove(uriparam);
+            wildcardIndex.remove(uriparam);
+            mapOrder = null;
+        }
         servicetoURIMap.remove(service.getGoid());
     }
 
+    /**
+     * Check if more than one of the given matches could be chosen as the longest by whichOneIsBest.
+     *
+     * <p>The choice between matches of the same length depends on their order, which must then be the
+     * (historical) iteration order of the URI map.</p>
+     */
+    private static boolean hasLongestTie(List<URIResolutionParam> in,
+                                         boolean containsPathPattern,
+                                         boolean containsExtensionPattern) {
+        int longestlength = 0;
+        int longestcount = 0;
+        for (URIResolutionParam p : in) {
+            if (CATCHALLRESOLUTION.equals(p)) continue;
+            if (containsPathPattern && containsExtensionPattern && !p.pathPattern) continue;
+            if (p.uri.length() > longestlength) {
+                longestlength = p.uri.length();
+                longestcount = 1;
+            } else if (p.uri.length() == longestlength) {
+                longestcount++;
+            }
+        }
+        return longestcount > 1;
+    }
+
+    private ArrayList<URIResolutionParam> inMapOrder(List<URIResolutionParam> in) {
+        final Map<URIResolutionParam, Integer> order = getMapOrder();
+        final ArrayList<URIResolutionParam> ordered = new ArrayList<URIResolutionParam>(in);
+        Collections.sort(ordered, new Comparator<URIResolutionParam>() {
+            @Override
+            public int compare(URIResolutionParam p1, URIResolutionParam p2) {
+                return order.get(p1).compareTo(order.get(p2));
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Get the position of each URI in the iteration order of the URI map.
+     *
+     * <p>The positions are worked out once after the map changes. Callers must hold the read
+     * lock, concurrent callers may each build the same positions.</p>
+     */
+    private Map<URIResolutionParam, Integer> getMapOrder() {
+        Map<URIResolutionParam, Integer> order = mapOrder;
+        if (order == null) {
+            order = new HashMap<URIResolutionParam, Integer>(uriToServiceMap.size() * 2);
+            int position = 0;
+            for (URIResolutionParam key : uriToServiceMap.keySet()) {
+                order.put(key, position++);
+            }
+            mapOrder = order;
+        }
+        return order;
+    }
+
     private static URIResolutionParam whichOneIsBest(List<URIResolutionParam> in,
                                               boolean containsPathPattern,
                                               boolean containsExtensionPattern) {
@@ -392,8 +461,10 @@ public class UriResolver extends ServiceResolver<String> {
     protected final String PROP_EXACT_ONLY = PROP_BASE + SUFFIX_EXACT_ONLY;
 
     private final boolean caseSensitive;
-    private final ArrayList<String> knownToFail = new ArrayList<String>();
+    private final SegmentedCache<String, Boolean> knownToFail; // updated under read lock
     private final Map<URIResolutionParam, List<Goid>> uriToServiceMap = new HashMap<URIResolutionParam, List<Goid>>();
+    private volatile Map<URIResolutionParam, Integer> mapOrder; // reset under write lock, built under read lock
+    private final UriResolutionIndex wildcardIndex = new UriResolutionIndex();
     private final Map<Goid, URIResolutionParam> servicetoURIMap = new HashMap<Goid, URIResolutionParam>();
     private final ReadWriteLock rwlock = new ReentrantReadWriteLock(false);
     private static final URIResolutionParam CATCHALLRESOLUTION = new URIResolutionParam("/*");
@@ -21,6 +21,11 @@ import java.util.logging.Logger;
  * connection strategy. The default strategy avoids context switches by
  * processing connections in the same Thread that accepts the connection. If
  * this strategy is changed this valve will break.</p>
+ *
+ * <p>Non-blocking connectors do not use a thread per connection, for these
+ * the connection is identified each time it is processed.</p>
+ *
+ * @see SsgNioEndpoint
  */
 public class ConnectionIdValve extends ValveBase {
     public static final String ATTRIBUTE_CONNECTION_ID = "com.l7tech.server.connectionId";
@@ -49,12 +54,21 @@ public class ConnectionIdValve extends ValveBase {
                     // not for us
                     return;
 
-                long id = connectionSequence.incrementAndGet();
+                long id = nextConnectionId();
                 if (logger.isLoggable(Level.FINE))
                     logger.log(Level.FINE, "Setting id for connection '{0}'", id);
                 connectionId.set(id);
                 ssgConnectorGoid.set(connectorGoid);
             }
+
+            public void onProcessConnection(long transportModuleInstanceId, Goid connectorGoid, long id) {
+                if (transportModuleInstanceId != transportId)
+                    // not for us
+                    return;
+
+                connectionId.set(id);
+                ssgConnectorGoid.set(connectorGoid);
+            }
         });
     }
 
@@ -89,6 +103,15 @@ public class ConnectionIdValve extends ValveBase {
         }
     }
 
+    /**
+     * Allocate an identifier for a new connection.
+     *
+     * @return the connection id, unique for all transport modules
+     */
+    public static long nextConnectionId() {
+        return connectionSequence.incrementAndGet();
+    }
+
     /**
      * Get the current thread's connector GOID, if known.
      *
@@ -105,5 +128,5 @@ public class ConnectionIdValve extends ValveBase {
     private static final ThreadLocal<Goid> ssgConnectorGoid = new ThreadLocal<Goid>();
     private final HttpTransportModule httpTransportModule;
     private final ThreadLocal<Long> connectionId = new ThreadLocal<Long>();
-    private final AtomicLong connectionSequence = new AtomicLong(0);
+    private static final AtomicLong connectionSequence = new AtomicLong(0);
 }
@@ -0,0 +1,36 @@
+package com.l7tech.server.tomcat;
+
+import com.l7tech.server.transport.http.HttpTransportModule;
+import org.apache.coyote.http11.Constants;
+import org.apache.coyote.http11.Http11NioProtocol;
+
+/**
+ * HTTP/1.1 protocol handler for non-blocking listeners.
+ *
+ * <p>Idle keep-alive connections are held by the poller rather than by a
+ * thread from the executor, so the number of open connections is not limited
+ * by the size of the thread pool.</p>
+ *
+ * @see SsgNioEndpoint
+ */
+public class SsgHttp11NioProtocol extends Http11NioProtocol {
+
+    //- PUBLIC
+
+    public SsgHttp11NioProtocol() {
+        ep = new SsgNioEndpoint();
+
+        // defaults as set by the super constructor on the replaced endpoint
+        setSoLinger( Constants.DEFAULT_CONNECTION_LINGER );
+        setSoTimeout( Constants.DEFAULT_CONNECTION_TIMEOUT );
+        setTcpNoDelay( Constants.DEFAULT_TCP_NO_DELAY );
+    }
+
+    @Override
+    public void init() throws Exception {
+        ((SsgNioEndpoint) ep).setConnectorIdentity(
+                getAttribute( HttpTransportModule.CONNECTOR_ATTR_TRANSPORT_MODULE_ID ),
+                getAttribute( HttpTransportModule.CONNECTOR_ATTR_CONNECTOR_OID ) );
+        super.init();
+    }
+}
@@ -0,0 +1,150 @@
+package com.l7tech.server.tomcat;
+
+import com.l7tech.gateway.common.transport.SsgConnector;
+import com.l7tech.objectmodel.EntityType;
+import com.l7tech.objectmodel.Goid;
+import com.l7tech.server.transport.http.HttpTransportModule;
+import com.l7tech.server.transport.tls.SsgConnectorSslHelper;
+import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.GoidUpgradeMapper;
+import org.apache.tomcat.util.net.NioChannel;
+import org.apache.tomcat.util.net.NioEndpoint;
+import org.apache.tomcat.util.net.SocketStatus;
+
+import javax.net.ssl.SSLEngine;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-blocking endpoint that knows how to obtain TLS and connection information with the rest of the SSG.
+ *
+ * <p>TLS is configured from the SsgConnector in the same way as for
+ * blocking listeners, including client authentication, enabled cipher suites
+ * and protocols and renegotiation.</p>
+ *
+ * <p>Since connections are not processed by a dedicated thread, connection
+ * listeners are notified each time a connection is processed.</p>
+ *
+ * @see SsgHttp11NioProtocol
+ * @see ConnectionIdValve
+ */
+public class SsgNioEndpoint extends NioEndpoint {
+
+    //- PUBLIC
+
+    /**
+     * Set the identity of the connector for this endpoint.
+     *
+     * @param transportModuleId The transport module identifier (may be null)
+     * @param connectorGoid The connector identifier (may be null)
+     */
+    public void setConnectorIdentity( final Object transportModuleId, final Object connectorGoid ) {
+        this.transportModuleId = transportModuleId == null ? -1L : Long.parseLong( transportModuleId.toString() );
+        this.connectorGoid = connectorGoid == null ? null : GoidUpgradeMapper.mapId( EntityType.SSG_CONNECTOR, connectorGoid.toString() );
+    }
+
+    @Override
+    public void init() throws Exception {
+        if ( initialized || !isSSLEnabled() ) {
+            super.init();
+            return;
+        }
+
+        sslHelper = createSslHelper();
+
+        // The SSL context is from the SSG rather than a key store file, the
+        // context must be set since secure channels are only created when
+        // there is an SSL context.
+        setSSLContext( sslHelper.getSslContext() );
+        setSSLEnabled( false );
+        try {
+            super.init();
+        } finally {
+            setSSLEnabled( true );
+        }
+    }
+
+    @Override
+    public void setHandler( final Handler handler ) {
+        super.setHandler( handler == null ? null : new Handler() {
+            @Override
+            public SocketState process( final NioChannel socket ) {
+                dispatchProcessConnection( socket );
+                return released( socket, handler.process( socket ) );
+            }
+
+            @Override
+            public SocketState event( final NioChannel socket, final SocketStatus status ) {
+                dispatchProcessConnection( socket );
+                return released( socket, handler.event( socket, status ) );
+            }
+
+            @Override
+            public void releaseCaches() {
+                handler.releaseCaches();
+            }
+
+            @Override
+            public void release( final NioChannel socket ) {
+                connectionIds.remove( socket.getIOChannel() );
+                handler.release( socket );
+            }
+        } );
+    }
+
+    //- PROTECTED
+
+    @Override
+    protected SSLEngine createSSLEngine() {
+        final SSLEngine engine = sslHelper.createSSLEngine( null, 0 );
+        engine.setUseClientMode( false );
+        return engine;
+    }
+
+    //- PACKAGE
+
+    /**
+     * Create the SSL helper for the connector of this endpoint.
+     *
+     * @return The SSL helper (never null)
+     * @throws Exception if TLS cannot be configured for the connector
+     */
+    SsgConnectorSslHelper createSslHelper() throws Exception {
+        final HttpTransportModule httpTransportModule = HttpTransportModule.getInstance( transportModuleId );
+        if ( httpTransportModule == null )
+            throw new IllegalStateException( "No HttpTransportModule with ID " + transportModuleId + " was found" );
+
+        try {
+            final SsgConnector ssgConnector = httpTransportModule.getActiveConnectorByGoid( connectorGoid );
+            return new SsgConnectorSslHelper( httpTransportModule, ssgConnector );
+        } catch ( Exception e ) {
+            httpTransportModule.reportMisconfiguredConnector( connectorGoid );
+            throw new Exception( "Unable to initialize TLS for endpoint: " + ExceptionUtils.getMessage( e ), e );
+        }
+    }
+
+    //- PRIVATE
+
+    private final Map<SocketChannel, Long> connectionIds = new ConcurrentHashMap<>();
+    private long transportModuleId = -1L;
+    private Goid connectorGoid;
+    private SsgConnectorSslHelper sslHelper;
+
+    private void dispatchProcessConnection( final NioChannel socket ) {
+        final SocketChannel channel = socket.getIOChannel();
+        Long connectionId = connectionIds.get( channel );
+        if ( connectionId == null ) {
+            connectionId = ConnectionIdValve.nextConnectionId();
+            connectionIds.put( channel, connectionId );
+        }
+        SsgServerSocketFactory.dispatchProcessConnection( transportModuleId, connectorGoid, connectionId );
+    }
+
+    private Handler.SocketState released( final NioChannel socket, final Handler.SocketState state ) {
+        if ( state == Handler.SocketState.CLOSED ) {
+            connectionIds.remove( socket.getIOChannel() );
+        }
+        return state;
+    }
+}
@@ -275,11 +275,34 @@ public class SsgServerSocketFactory extends ServerSocketFactory {
         dispatchingListener.addListener(listener);
     }
 
+    public static void removeListener(Listener listener) {
+        dispatchingListener.removeListener(listener);
+    }
+
+    /**
+     * Notify listeners that processing of a non-blocking connection is starting on the current thread.
+     *
+     * @param transportModuleInstanceId The transport module that accepted the connection
+     * @param connectorGoid The connector that accepted the connection
+     * @param connectionId The identifier for the connection
+     */
+    public static void dispatchProcessConnection(long transportModuleInstanceId, Goid connectorGoid, long connectionId) {
+        dispatchingListener.onProcessConnection(transportModuleInstanceId, connectorGoid, connectionId);
+    }
+
     /**
      * Invokes delegate
      */
     public static interface Listener {
         public void onGetInputStream(long transportModuleInstanceId, Goid connectorGoid, Socket accepted);
+
+        /**
+         * Called when a connection that is not processed by a dedicated thread is processed by the current thread.
+         *
+         * <p>This is called for each request on the connection, the connection id is the same each time.</p>
+         */
+        public default void onProcessConnection(long transportModuleInstanceId, Goid connectorGoid, long connectionId) {
+        }
     }
 
     //- PRIVATE
@@ -301,6 +324,10 @@ public class SsgServerSocketFactory extends ServerSocketFactory {
             listeners.add(listener);
         }
 
+        void removeListener(Listener listener) {
+            listeners.remove(listener);
+        }
+
         @Override
         public void onGetInputStream(long transportModuleInstanceId, Goid connectorGoid, Socket accepted) {
             for (Listener listener : listeners) {
@@ -312,6 +339,18 @@ public class SsgServerSocketFactory extends ServerSocketFactory {
                 }
             }
         }
+
+        @Override
+        public void onProcessConnection(long transportModuleInstanceId, Goid connectorGoid, long connectionId) {
+            for (Listener listener : listeners) {
+                try {
+                    listener.onProcessConnection(transportModuleInstanceId, connectorGoid, connectionId);
+                }
+                catch (Exception e) {
+                    logger.log(Level.WARNING, "Unexpected exception in listener.", e);
+                }
+            }
+        }
     }
 
     private static class DispatchSupport {
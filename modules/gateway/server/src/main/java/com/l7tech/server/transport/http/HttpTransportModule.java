@@ -33,6 +33,7 @@ import org.apache.catalina.loader.WebappLoader;
 import org.apache.catalina.session.ManagerBase;
 import org.apache.catalina.startup.Embedded;
 import org.apache.coyote.ProtocolHandler;
+import org.apache.coyote.http11.Http11NioProtocol;
 import org.apache.coyote.http11.Http11Protocol;
 import org.apache.naming.resources.DirContextURLStreamHandlerFactory;
 import org.apache.naming.resources.FileDirContext;
@@ -684,7 +685,7 @@ public class HttpTransportModule extends TransportModule implements PropertyChan
         }
 
         // Allow overrides of any parameters we didn't already handle
-        List<String> handledProperties = asList(PROP_BIND_ADDRESS, PROP_PORT_RANGE_START, PROP_PORT_RANGE_COUNT, PROP_TLS_CIPHERLIST, PROP_TLS_PROTOCOLS);
+        List<String> handledProperties = asList(PROP_BIND_ADDRESS, PROP_PORT_RANGE_START, PROP_PORT_RANGE_COUNT, PROP_TLS_CIPHERLIST, PROP_TLS_PROTOCOLS, PROP_NON_BLOCKING_IO);
         List<String> extraPropNames = c.getPropertyNames();
         for (String name : extraPropNames) {
             if (handledProperties.contains(name)) {
@@ -784,7 +785,7 @@ public class HttpTransportModule extends TransportModule implements PropertyChan
     }
 
     private void addHttpConnector(SsgConnector ssgConn, int port, Map<String, Object> attrs) throws ListenerException {
-        Connector c = embedded.createConnector((String)null, port, "http");
+        Connector c = embedded.createConnector((String)null, port, protocol(ssgConn, "http"));
         c.setEnableLookups(false);
         setConnectorAttributes(c, attrs);
 
@@ -792,6 +793,8 @@ public class HttpTransportModule extends TransportModule implements PropertyChan
         if (ph instanceof Http11Protocol) {
             // DE286454 : adding the Private Thread Pool feature for HTTP listen ports
             ((Http11Protocol)ph).setExecutor( createAndRegisterExecutorIfRequired( executorName(ssgConn), ssgConn ) );
+        } else if (ph instanceof Http11NioProtocol) {
+            ((Http11NioProtocol)ph).setExecutor( createAndRegisterExecutorIfRequired( executorName(ssgConn), ssgConn ) );
         } else
             throw new ListenerException("Unable to start HTTP listener on port " + c.getPort() + ": Unrecognized protocol handler: " + ph.getClass().getName());
 
@@ -799,7 +802,7 @@ public class HttpTransportModule extends TransportModule implements PropertyChan
     }
 
     private void addHttpsConnector(SsgConnector ssgConn, int port, Map<String, Object> attrs) throws ListenerException {
-        Connector c = embedded.createConnector((String)null, port, "https");
+        Connector c = embedded.createConnector((String)null, port, protocol(ssgConn, "https"));
         c.setScheme("https");
         c.setProperty("SSLEnabled","true");
         c.setSecure(true);
@@ -823,12 +826,28 @@ public class HttpTransportModule extends TransportModule implements PropertyChan
         ProtocolHandler ph = c.getProtocolHandler();
         if (ph instanceof Http11Protocol) {
             ((Http11Protocol)ph).setExecutor( createAndRegisterExecutorIfRequired( executorName(ssgConn), ssgConn ) );
+        } else if (ph instanceof Http11NioProtocol) {
+            ((Http11NioProtocol)ph).setExecutor( createAndRegisterExecutorIfRequired( executorName(ssgConn), ssgConn ) );
         } else
             throw new ListenerException("Unable to start HTTPS listener on port " + c.getPort() + ": Unrecognized protocol handler: " + ph.getClass().getName());
 
         activateConnector(ssgConn, c);
     }
 
+    /**
+     * Get the protocol to use when creating a Tomcat connector.
+     *
+     * <p>Non-blocking connectors use the Gateway's NIO protocol handler, which
+     * applies the same TLS configuration as for blocking connectors.</p>
+     *
+     * @param connector the connector to get the protocol for.  Required.
+     * @param scheme the protocol to use for a blocking connector.
+     * @return the protocol (or protocol handler class name)
+     */
+    private static String protocol( final SsgConnector connector, final String scheme ) {
+        return connector.getBooleanProperty( PROP_NON_BLOCKING_IO ) ? SsgHttp11NioProtocol.class.getName() : scheme;
+    }
+
     /**
      * Create a name for an executor associated with this connector.
      *
@@ -5,10 +5,9 @@ package com.l7tech.server.url;
 
 import com.l7tech.util.CausedIOException;
 import com.l7tech.util.ResourceUtils;
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.server.identity.ldap.LdapUtils;
 import com.sun.jndi.ldap.LdapURL;
-import com.whirlycott.cache.Cache;
 
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
@@ -34,7 +33,8 @@ public class LdapUrlObjectCache<PT> extends AbstractUrlObjectCache<LdapUrlObject
     private final long readTimeout;
     private final boolean binary;
 
-    private final Cache cache = WhirlycacheFactory.createCache(this.getClass().getSimpleName() + ".cache", 100, 1800, WhirlycacheFactory.POLICY_LRU);
+    private final SegmentedCache<String,AbstractCacheEntry<LdapCacheEntry<PT>>> cache =
+            new SegmentedCache<String,AbstractCacheEntry<LdapCacheEntry<PT>>>(this.getClass().getSimpleName() + ".cache", 100L);
 
     /**
      * Construct a new AbstractUrlObjectCache.
@@ -63,19 +63,18 @@ public class LdapUrlObjectCache<PT> extends AbstractUrlObjectCache<LdapUrlObject
 
     @Override
     protected AbstractCacheEntry<LdapCacheEntry<PT>> cacheGet(String url) {
-        //noinspection unchecked
-        return (AbstractCacheEntry<LdapCacheEntry<PT>>)cache.retrieve(url);
+        return cache.get(url);
     }
 
     @Override
     protected void cachePut(String url, AbstractCacheEntry abstractCacheEntry) {
-        cache.store(url, abstractCacheEntry);
+        //noinspection unchecked
+        cache.put(url, abstractCacheEntry);
     }
 
     @Override
     protected AbstractCacheEntry<LdapCacheEntry<PT>> cacheRemove(String url) {
-        //noinspection unchecked
-        return (AbstractCacheEntry<LdapCacheEntry<PT>>) cache.remove(url);
+        return cache.remove(url);
     }
 
     @SuppressWarnings({"unchecked"})
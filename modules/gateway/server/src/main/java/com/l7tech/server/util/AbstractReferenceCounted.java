@@ -20,6 +20,23 @@ public abstract class AbstractReferenceCounted<HT extends Handle> extends Abstra
         return createHandle();
     }
 
+    /**
+     * Get a new handle unless the reference count has already dropped to zero.
+     * <p/>
+     * This allows a handle to be safely obtained without holding a lock that prevents the last reference from
+     * being released.
+     *
+     * @return the new handle, or null if this object has been (or is being) closed
+     */
+    public HT tryRef() {
+        int current;
+        do {
+            current = refcount.get();
+            if (current <= 0) return null;
+        } while (!refcount.compareAndSet(current, current + 1));
+        return createHandle();
+    }
+
     public void unref() {
         int nval = refcount.decrementAndGet();
         if (nval <= 0) {
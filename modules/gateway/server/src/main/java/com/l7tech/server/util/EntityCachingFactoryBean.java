@@ -1,9 +1,8 @@
 package com.l7tech.server.util;
 
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.util.Cacheable;
 import com.l7tech.util.TimeSource;
-import com.whirlycott.cache.Cache;
 import org.springframework.beans.factory.config.AbstractFactoryBean;
 
 import java.lang.reflect.InvocationHandler;
@@ -84,7 +83,7 @@ public class EntityCachingFactoryBean extends AbstractFactoryBean {
     @Override
     protected Object createInstance() throws Exception {
         if (cache == null) {
-            cache = WhirlycacheFactory.createCache(name + "-" + serviceInterface.getName(), 1000, 63, WhirlycacheFactory.POLICY_LRU);
+            cache = new SegmentedCache<MethodArgumentKey,CachedValue>(name + "-" + serviceInterface.getName(), 1000L);
         }
 
         return Proxy.newProxyInstance(
@@ -102,7 +101,7 @@ public class EntityCachingFactoryBean extends AbstractFactoryBean {
     private final String name;
     private final Class serviceInterface;
     private final Object serviceInstance;
-    private Cache cache;
+    private SegmentedCache<MethodArgumentKey,CachedValue> cache;
 
     private InvocationHandler getInvocationHandler() {
         return new InvocationHandler(){
@@ -123,7 +122,7 @@ public class EntityCachingFactoryBean extends AbstractFactoryBean {
 
                     mak = buildCacheKey(cacheConfig, args, method);
 
-                    cacheResult = (CachedValue) cache.retrieve(mak);
+                    cacheResult = cache.get(mak);
 
                     // Ignore if expired
                     if ( cacheResult != null && cacheResult.isExpired() ) {
@@ -149,7 +148,7 @@ public class EntityCachingFactoryBean extends AbstractFactoryBean {
                                     new Object[]{method.getName(), args[cacheConfig.relevantArg()]});
 
                         long expiryPeriod = cacheConfig.maxAge();
-                        cache.store(mak, new CachedValue(timeSource, result, timeSource.currentTimeMillis() + expiryPeriod), expiryPeriod);
+                        cache.put(mak, new CachedValue(timeSource, result, timeSource.currentTimeMillis() + expiryPeriod), expiryPeriod);
                     }
                 } else {
                     // Use value from cache
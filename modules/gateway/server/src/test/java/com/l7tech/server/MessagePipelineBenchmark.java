@@ -0,0 +1,320 @@
+package com.l7tech.server;
+
+import com.l7tech.common.TestDocuments;
+import com.l7tech.common.mime.ByteArrayStashManager;
+import com.l7tech.common.mime.ContentTypeHeader;
+import com.l7tech.common.mime.MimeBodyTest;
+import com.l7tech.common.mime.PartInfo;
+import com.l7tech.gateway.common.audit.Audit;
+import com.l7tech.gateway.common.audit.NullAudit;
+import com.l7tech.gateway.common.service.PublishedService;
+import com.l7tech.message.HttpServletRequestKnob;
+import com.l7tech.message.HttpServletResponseKnob;
+import com.l7tech.message.Message;
+import com.l7tech.objectmodel.Goid;
+import com.l7tech.policy.StaticResourceInfo;
+import com.l7tech.policy.assertion.*;
+import com.l7tech.policy.assertion.composite.AllAssertion;
+import com.l7tech.policy.assertion.composite.OneOrMoreAssertion;
+import com.l7tech.policy.assertion.xml.XslTransformation;
+import com.l7tech.policy.assertion.xmlsec.RequireWssSignedElement;
+import com.l7tech.policy.assertion.xmlsec.RequireWssX509Cert;
+import com.l7tech.policy.wsp.WspWriter;
+import com.l7tech.security.prov.JceProvider;
+import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.message.PolicyEnforcementContextFactory;
+import com.l7tech.server.policy.ServerPolicyFactory;
+import com.l7tech.server.policy.assertion.ServerAssertion;
+import com.l7tech.server.policy.variable.ExpandVariables;
+import com.l7tech.server.service.ServiceCache;
+import com.l7tech.server.service.ServiceCacheStub;
+import com.l7tech.server.service.ServiceManager;
+import com.l7tech.test.MicroBenchmark;
+import com.l7tech.util.CollectionUtils;
+import com.l7tech.util.IOUtils;
+import com.l7tech.util.ResourceUtils;
+import com.l7tech.xml.xpath.XpathExpression;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks for the message processing pipeline.
+ *
+ * <p>Each stage of request processing is measured in isolation against
+ * realistic messages, with the allocation rate and garbage collection for
+ * each benchmark. Run using the "benchmark" build target, which compares the
+ * allocation per operation with the module baseline to detect regressions.</p>
+ *
+ * @see MicroBenchmark
+ */
+public class MessagePipelineBenchmark {
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 2000;
+    private static final int ROUNDS = 5;
+    private static final String SERVICE_URI = "/benchmark";
+    private static final Map<String,String> NAMESPACES = CollectionUtils.MapBuilder.<String,String>builder()
+            .put( "soapenv", "http://schemas.xmlsoap.org/soap/envelope/" )
+            .put( "ns1", "http://warehouse.acme.com/ws" )
+            .unmodifiableMap();
+
+    private static final MicroBenchmark benchmark = new MicroBenchmark( WARMUP, ITERATIONS, ROUNDS );
+    private static ApplicationContext applicationContext;
+    private static MessageProcessor messageProcessor;
+    private static ServiceCache serviceCache;
+    private static ServerPolicyFactory policyFactory;
+    private static byte[] soapRequest;
+    private static byte[] signedRequest;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        JceProvider.init();
+        applicationContext = ApplicationContexts.getTestApplicationContext();
+        messageProcessor = applicationContext.getBean( "messageProcessor", MessageProcessor.class );
+        policyFactory = applicationContext.getBean( "policyFactory", ServerPolicyFactory.class );
+        final ServiceCacheStub cache = applicationContext.getBean( "serviceCache", ServiceCacheStub.class );
+        cache.initializeServiceCache();
+        serviceCache = cache;
+
+        soapRequest = IOUtils.slurpStream( TestDocuments.getInputStream( TestDocuments.PLACEORDER_CLEARTEXT ) );
+        signedRequest = IOUtils.slurpStream( TestDocuments.getInputStream( TestDocuments.DOTNET_SIGNED_REQUEST ) );
+
+        final PublishedService service = new PublishedService();
+        service.setGoid( new Goid( 0, 1000L ) );
+        service.setName( "benchmark" );
+        service.setRoutingUri( SERVICE_URI );
+        service.setSoap( true );
+        service.setLaxResolution( true );
+        service.getPolicy().setXml( WspWriter.getPolicyXml( new AllAssertion( Arrays.asList(
+                new SetVariableAssertion( "product", "${request.mainpart}" ),
+                regex(),
+                new RequestXpathAssertion( new XpathExpression( "/soapenv:Envelope/soapenv:Body/ns1:placeOrder/productid", NAMESPACES ) ),
+                new TrueAssertion()
+        ) ) ) );
+        service.getPolicy().setGoid( service.getGoid() );
+        applicationContext.getBean( "serviceManager", ServiceManager.class ).update( service );
+    }
+
+    @AfterClass
+    public static void publish() throws Exception {
+        final List<String> regressions = benchmark.publish();
+        assertTrue( "Performance regressions: " + regressions, regressions.isEmpty() );
+    }
+
+    @Test
+    public void processMessage() throws Exception {
+        benchmark.run( "processMessage", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                final MockHttpServletRequest httpRequest = new MockHttpServletRequest( "POST", SERVICE_URI );
+                httpRequest.setContentType( "text/xml; charset=utf-8" );
+                httpRequest.setContent( soapRequest );
+                final Message request = new Message();
+                request.initialize( new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT, new ByteArrayInputStream( soapRequest ) );
+                request.attachHttpRequestKnob( new HttpServletRequestKnob( httpRequest ) );
+                final Message response = new Message();
+                response.attachHttpResponseKnob( new HttpServletResponseKnob( new MockHttpServletResponse() ) );
+
+                final PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext( request, response, true );
+                try {
+                    return check( AssertionStatus.NONE, messageProcessor.processMessage( context ) );
+                } finally {
+                    ResourceUtils.closeQuietly( context );
+                }
+            }
+        } );
+    }
+
+    @Test
+    public void compositePolicy() throws Exception {
+        runPolicy( "policy.composite", soapRequest, new AllAssertion( Arrays.asList(
+                new OneOrMoreAssertion( Arrays.<Assertion>asList( new FalseAssertion(), new FalseAssertion(), new TrueAssertion() ) ),
+                new TrueAssertion(),
+                new OneOrMoreAssertion( Arrays.<Assertion>asList( new TrueAssertion(), new FalseAssertion() ) ),
+                new AllAssertion( Arrays.<Assertion>asList( new TrueAssertion(), new TrueAssertion() ) )
+        ) ) );
+    }
+
+    @Test
+    public void setVariablePolicy() throws Exception {
+        runPolicy( "policy.setVariable", soapRequest, new AllAssertion( Arrays.<Assertion>asList(
+                new SetVariableAssertion( "account", "228" ),
+                new SetVariableAssertion( "product", "-9206260647417300294" ),
+                new SetVariableAssertion( "order", "${account}:${product}" )
+        ) ) );
+    }
+
+    @Test
+    public void regexPolicy() throws Exception {
+        runPolicy( "policy.regex", soapRequest, regex() );
+    }
+
+    @Test
+    public void xpathPolicy() throws Exception {
+        runPolicy( "policy.xpath", soapRequest, new RequestXpathAssertion(
+                new XpathExpression( "/soapenv:Envelope/soapenv:Body/ns1:placeOrder/productid", NAMESPACES ) ) );
+    }
+
+    @Test
+    public void wssPolicy() throws Exception {
+        runPolicy( "policy.wss", signedRequest, new AllAssertion( Arrays.asList(
+                new RequireWssX509Cert(),
+                new RequireWssSignedElement( new XpathExpression( "/soapenv:Envelope/soapenv:Body", NAMESPACES ) )
+        ) ) );
+    }
+
+    @Test
+    public void xslPolicy() throws Exception {
+        runPolicy( "policy.xsl", soapRequest, xsl() );
+    }
+
+    @Test
+    public void xslPolicyDom() throws Exception {
+        // the XPath is not streamable so the transformation is given the parsed DOM
+        runPolicy( "policy.xsl.dom", soapRequest, new AllAssertion( Arrays.asList(
+                new RequestXpathAssertion( new XpathExpression( "//productid", NAMESPACES ) ),
+                xsl()
+        ) ) );
+    }
+
+    @Test
+    public void expandVariables() throws Exception {
+        final Map<String,?> vars = CollectionUtils.MapBuilder.<String,Object>builder()
+                .put( "order.account", "228" )
+                .put( "order.product", "-9206260647417300294" )
+                .put( "order.amount", 1 )
+                .put( "order.price", 5.0f )
+                .unmodifiableMap();
+        final Audit audit = new NullAudit();
+        benchmark.run( "expandVariables", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return ExpandVariables.process( "Order of ${order.amount} x ${order.product} at ${order.price} for account ${order.account}", vars, audit );
+            }
+        } );
+    }
+
+    @Test
+    public void serviceResolution() throws Exception {
+        final ServiceCache.ResolutionListener listener = new ServiceCache.ResolutionListener() {
+            @Override
+            public boolean notifyPreParseServices( final Message message, final Set<ServiceCache.ServiceMetadata> serviceSet ) {
+                return true;
+            }
+
+            @Override
+            public boolean notifyResolveCatchAll() {
+                return true;
+            }
+        };
+        benchmark.run( "serviceResolution", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                final MockHttpServletRequest httpRequest = new MockHttpServletRequest( "POST", SERVICE_URI );
+                final Message request = new Message();
+                request.initialize( new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT, new ByteArrayInputStream( soapRequest ) );
+                request.attachHttpRequestKnob( new HttpServletRequestKnob( httpRequest ) );
+                final PublishedService service = serviceCache.resolve( request, listener );
+                assertNotNull( "Service resolved", service );
+                return service;
+            }
+        } );
+    }
+
+    @Test
+    public void parseMultipartMessage() throws Exception {
+        final byte[] mime = MimeBodyTest.MESS.getBytes( "UTF-8" );
+        final ContentTypeHeader contentType = ContentTypeHeader.parseValue( MimeBodyTest.MESS_CONTENT_TYPE );
+        benchmark.run( "parseMultipartMessage", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                final Message message = new Message( new ByteArrayStashManager(), contentType, new ByteArrayInputStream( mime ) );
+                try {
+                    long size = 0L;
+                    for ( final PartInfo partInfo : message.getMimeKnob() ) {
+                        size += IOUtils.slurpStream( partInfo.getInputStream( false ) ).length;
+                    }
+                    return size;
+                } finally {
+                    message.close();
+                }
+            }
+        } );
+    }
+
+    @Test
+    public void parseXmlMessage() throws Exception {
+        benchmark.run( "parseXmlMessage", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                final Message message = new Message( new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT, new ByteArrayInputStream( soapRequest ) );
+                try {
+                    return message.getXmlKnob().getDocumentReadOnly();
+                } finally {
+                    message.close();
+                }
+            }
+        } );
+    }
+
+    //- PRIVATE
+
+    private static Regex regex() {
+        final Regex regex = new Regex();
+        regex.setRegex( "<productid[^>]*>(-?\\d+)</productid>" );
+        regex.setProceedIfPatternMatches( true );
+        regex.setCaptureVar( "productid" );
+        return regex;
+    }
+
+    private static XslTransformation xsl() {
+        final XslTransformation xsl = new XslTransformation();
+        xsl.setTarget( TargetMessageType.REQUEST );
+        xsl.setResourceInfo( new StaticResourceInfo(
+                "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:template match=\"productid\"><productid>0</productid></xsl:template>" +
+                "<xsl:template match=\"@*|node()\"><xsl:copy><xsl:apply-templates select=\"@*|node()\"/></xsl:copy></xsl:template>" +
+                "</xsl:stylesheet>" ) );
+        return xsl;
+    }
+
+    private static void runPolicy( final String name, final byte[] requestBytes, final Assertion policy ) throws Exception {
+        final ServerAssertion serverPolicy = policyFactory.compilePolicy( policy, false );
+        try {
+            benchmark.run( name, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    final Message request = new Message( new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT, new ByteArrayInputStream( requestBytes ) );
+                    final PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext( request, new Message() );
+                    try {
+                        return check( AssertionStatus.NONE, serverPolicy.checkRequest( context ) );
+                    } finally {
+                        ResourceUtils.closeQuietly( context );
+                    }
+                }
+            } );
+        } finally {
+            ResourceUtils.closeQuietly( serverPolicy );
+        }
+    }
+
+    private static AssertionStatus check( final AssertionStatus expected, final AssertionStatus status ) {
+        if ( status != expected ) {
+            throw new IllegalStateException( "Unexpected status " + status );
+        }
+        return status;
+    }
+}
@@ -10,6 +10,7 @@ import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.security.xml.SecurityTokenResolver;
 import com.l7tech.security.xml.decorator.WssDecorator;
 import com.l7tech.security.xml.processor.SecurityContextFinder;
+import com.l7tech.server.audit.AuditContext;
 import com.l7tech.server.audit.AuditContextFactory;
 import com.l7tech.server.audit.MessageSummaryAuditFactory;
 import com.l7tech.server.event.metrics.ServiceFinished;
@@ -23,6 +24,7 @@ import com.l7tech.server.policy.PolicyCache;
 import com.l7tech.server.policy.PolicyMetadata;
 import com.l7tech.server.policy.PolicyMetadataStub;
 import com.l7tech.server.policy.ServerPolicyHandle;
+import com.l7tech.server.policy.assertion.AssertionResumption;
 import com.l7tech.server.service.ServiceCache;
 import com.l7tech.server.service.ServiceMetricsServices;
 import com.l7tech.server.service.resolution.ServiceResolutionException;
@@ -37,8 +39,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.l7tech.server.ServerConfigParams.PARAM_RELAY_GATEWAY_METRICS_ENABLE;
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
@@ -48,6 +52,8 @@ public class MessageProcessorTest {
     private final static Goid POLICY_GOID = new Goid(1L, 2L);
     private final static Goid SERVICE_GOID = new Goid(3L, 4L);
 
+    private AssertionResumption suspendedResumption;
+
     @Test
     public void shouldFireServiceFinishedWhenProcessMessageSuccessfully() throws Exception {
         final MessageProcessor messageProcessor = newMessageProcessor();
@@ -80,6 +86,39 @@ public class MessageProcessorTest {
         }
     }
 
+    @Test
+    public void shouldFinishSuspendedMessageWhenResumed() throws Exception {
+        final MessageProcessor messageProcessor = newMessageProcessor();
+        final AtomicReference<AssertionStatus> result = new AtomicReference<>();
+        final AssertionStatus status = messageProcessor.processMessage(new PolicyEnforcementContextBuilder()
+                .withRequest(new Message())
+                .withResponse(new Message())
+                .build(), new AssertionResumption(Runnable::run, new AssertionResumption.Callback() {
+                    @Override
+                    public void completed(@NotNull AssertionStatus status) {
+                        result.set(status);
+                    }
+
+                    @Override
+                    public void failed(@NotNull Throwable failure) {
+                        fail("Unexpected failure: " + failure);
+                    }
+                }));
+
+        assertNull("Processing suspended", status);
+        assertNotNull("Policy suspended", suspendedResumption);
+        verify((MockGatewayMetricsPublisher) messageProcessor.gatewayMetricsEventsPublisher,
+                never())
+                .publishEvent(any(ServiceFinished.class));
+
+        suspendedResumption.resume(AssertionStatus.NONE);
+
+        assertEquals("Resumed status", AssertionStatus.NONE, result.get());
+        verify((MockGatewayMetricsPublisher) messageProcessor.gatewayMetricsEventsPublisher,
+                times(1))
+                .publishEvent(any(ServiceFinished.class));
+    }
+
     @NotNull
     private MessageProcessor newMessageProcessor() throws Exception {
         final ApplicationEventPublisher applicationEventPublisher = new ApplicationEventPublisherBuilder().build();
@@ -150,6 +189,11 @@ public class MessageProcessorTest {
                 when(serverPolicyHandle.getPolicyMetadata()).thenReturn(policyMetadata);
                 when(serverPolicyHandle.checkRequest(any(PolicyEnforcementContext.class)))
                         .thenReturn(AssertionStatus.NONE);
+                when(serverPolicyHandle.checkRequest(any(PolicyEnforcementContext.class), any(AssertionResumption.class)))
+                        .thenAnswer(invocationOnMock -> {
+                            suspendedResumption = (AssertionResumption) invocationOnMock.getArguments()[1];
+                            return null;
+                        });
 
             } catch (Exception e) {
                 throw new RuntimeException("Unexpected exception, test failed", e);
@@ -251,6 +295,7 @@ public class MessageProcessorTest {
             try {
                 when(auditContextFactory.doWithNewAuditContext(any(Callable.class), any(Functions.Nullary.class)))
                         .thenAnswer(invocationOnMock -> ((Callable) invocationOnMock.getArguments()[0]).call());
+                when(auditContextFactory.createAuditContext()).thenReturn(mock(AuditContext.class));
 
             } catch (Exception e) {
                 throw new RuntimeException("Unexpected exception, test failed", e);
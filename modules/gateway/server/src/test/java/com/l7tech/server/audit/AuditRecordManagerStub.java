@@ -5,6 +5,7 @@ import com.l7tech.gateway.common.audit.AuditRecordHeader;
 import com.l7tech.gateway.common.audit.AuditSearchCriteria;
 import com.l7tech.objectmodel.DeleteException;
 import com.l7tech.objectmodel.FindException;
+import com.l7tech.objectmodel.SaveException;
 import com.l7tech.objectmodel.UpdateException;
 import com.l7tech.server.EntityManagerStub;
 import com.l7tech.util.Config;
@@ -82,4 +83,12 @@ public class AuditRecordManagerStub extends EntityManagerStub<AuditRecord,AuditR
     public void setDatabaseFull(boolean val) {
         //nothing
     }
+
+    @Override
+    public boolean saveAll(Collection<AuditRecord> records) throws SaveException {
+        for (AuditRecord record : records) {
+            save(record);
+        }
+        return true;
+    }
 }
@@ -0,0 +1,237 @@
+package com.l7tech.server.audit;
+
+import com.l7tech.gateway.common.Component;
+import com.l7tech.gateway.common.audit.*;
+import com.l7tech.objectmodel.Goid;
+import com.l7tech.objectmodel.SaveException;
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.server.ServerConfigParams;
+import com.l7tech.util.FileUtils;
+import com.l7tech.util.MockConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AuditRecordWriterTest {
+    @Mock
+    private AuditRecordManager auditRecordManager;
+
+    private final Properties properties = new Properties();
+    private File journalDirectory;
+    private AuditRecordWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDirectory = FileUtils.createTempDirectory("auditJournal", null, null, false);
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_BATCH_SIZE, "2");
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_QUEUE_SIZE, "3");
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_RETRY_INTERVAL, "0");
+        writer = new AuditRecordWriter(new MockConfig(properties), auditRecordManager, new AuditRecordJournal(journalDirectory));
+        when(auditRecordManager.saveAll(anyCollectionOf(AuditRecord.class))).thenReturn(true);
+        when(auditRecordManager.save(any(AuditRecord.class))).thenReturn(new Goid(0L, 1L));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDir(journalDirectory);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMessageRecordsSavedInBatches() throws Exception {
+        writer.save(messageRecord("1"));
+        writer.save(messageRecord("2"));
+        writer.save(messageRecord("3"));
+        verify(auditRecordManager, never()).save(any(AuditRecord.class));
+        assertEquals(3, writer.getQueueDepth());
+
+        final ArgumentCaptor<Collection> batches = ArgumentCaptor.forClass(Collection.class);
+        assertEquals(2, writer.writeBatch());
+        assertEquals(1, writer.writeBatch());
+        assertEquals(0, writer.writeBatch());
+        verify(auditRecordManager, times(2)).saveAll(batches.capture());
+        assertEquals(2, batches.getAllValues().get(0).size());
+        assertEquals(1, batches.getAllValues().get(1).size());
+
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(1, writer.getLastBatchSize());
+        assertEquals(3L, writer.getRecordsSaved());
+        assertEquals(0L, writer.getLagMillis());
+    }
+
+    @Test
+    public void testSystemRecordSavedImmediately() throws Exception {
+        final AuditRecord record = new SystemAuditRecord(Level.INFO, "node1", Component.GW_SERVER, "test", false, null, null, null, "test", "127.0.0.1");
+        writer.save(record);
+        verify(auditRecordManager).save(record);
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testSynchronousWhenDisabled() throws Exception {
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_ASYNC, "false");
+        final AuditRecord record = messageRecord("1");
+        writer.save(record);
+        verify(auditRecordManager).save(record);
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testOverflowSave() throws Exception {
+        fillQueue();
+        final AuditRecord record = messageRecord("4");
+        writer.save(record);
+        verify(auditRecordManager).save(record);
+        assertEquals(3, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testOverflowDrop() throws Exception {
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_OVERFLOW, "DROP");
+        fillQueue();
+        writer.save(messageRecord("4"));
+        verify(auditRecordManager, never()).save(any(AuditRecord.class));
+        assertEquals(1L, writer.getRecordsDropped());
+        assertEquals(3, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testOverflowJournal() throws Exception {
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_OVERFLOW, "JOURNAL");
+        fillQueue();
+        writer.save(messageRecord("4"));
+        verify(auditRecordManager, never()).save(any(AuditRecord.class));
+        assertEquals(1L, writer.getRecordsJournaled());
+        assertTrue("journal size", writer.getJournalSize() > 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testJournalWhenDatabaseUnavailableAndReplay() throws Exception {
+        final MessageSummaryAuditRecord record = messageRecord("1");
+        record.getDetails().add(new AuditDetail(AssertionMessages.USERDETAIL_WARNING, "detail"));
+        for (final AuditDetail detail : record.getDetails()) detail.setAuditRecord(record);
+        writer.save(record);
+        writer.save(messageRecord("2"));
+        writer.save(messageRecord("3"));
+
+        final SaveException outage = new SaveException("test", new DataAccessResourceFailureException("database down"));
+        doThrow(outage).doThrow(outage).doReturn(true)
+                .when(auditRecordManager).saveAll(anyCollectionOf(AuditRecord.class));
+        assertEquals(2, writer.writeBatch());
+        assertEquals(1, writer.writeBatch());
+        assertEquals(3L, writer.getRecordsJournaled());
+        assertEquals(0L, writer.getRecordsSaved());
+        verify(auditRecordManager, never()).save(any(AuditRecord.class));
+
+        final ArgumentCaptor<Collection> batches = ArgumentCaptor.forClass(Collection.class);
+        assertEquals(2, writer.replayBatch());
+        assertEquals(1, writer.replayBatch());
+        assertEquals(0, writer.replayBatch());
+        verify(auditRecordManager, times(4)).saveAll(batches.capture());
+        assertEquals(3L, writer.getRecordsSaved());
+        assertEquals(0L, writer.getJournalSize());
+
+        final List<AuditRecord> replayed = new ArrayList<AuditRecord>();
+        replayed.addAll(batches.getAllValues().get(2));
+        replayed.addAll(batches.getAllValues().get(3));
+        assertEquals("1", replayed.get(0).getStrRequestId());
+        assertEquals("3", replayed.get(2).getStrRequestId());
+        assertEquals(1, replayed.get(0).getDetails().size());
+        final AuditDetail detail = replayed.get(0).getDetails().iterator().next();
+        assertSame(replayed.get(0), detail.getAuditRecord());
+        assertEquals(AssertionMessages.USERDETAIL_WARNING.getId(), detail.getMessageId());
+    }
+
+    @Test
+    public void testReplayResumesFromLastBatch() throws Exception {
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_OVERFLOW, "JOURNAL");
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_QUEUE_SIZE, "1");
+        writer.save(messageRecord("1"));
+        writer.save(messageRecord("2"));
+        writer.save(messageRecord("3"));
+        writer.save(messageRecord("4"));
+        assertEquals(3L, writer.getRecordsJournaled());
+
+        assertEquals(2, writer.replayBatch());
+
+        final AuditRecordJournal journal = new AuditRecordJournal(journalDirectory);
+        assertTrue(journal.hasRecords());
+        final List<AuditRecord> remaining = journal.readBatch(10);
+        assertEquals(1, remaining.size());
+        assertEquals("4", remaining.get(0).getStrRequestId());
+    }
+
+    @Test
+    public void testFailedBatchSavedIndividually() throws Exception {
+        final AuditRecord bad = messageRecord("2");
+        writer.save(messageRecord("1"));
+        writer.save(bad);
+
+        doThrow(new SaveException("test", new DataIntegrityViolationException("bad record")))
+                .when(auditRecordManager).saveAll(anyCollectionOf(AuditRecord.class));
+        doThrow(new SaveException("test", new DataIntegrityViolationException("bad record")))
+                .when(auditRecordManager).save(bad);
+        assertEquals(2, writer.writeBatch());
+
+        verify(auditRecordManager, times(2)).save(any(AuditRecord.class));
+        assertEquals(1L, writer.getRecordsSaved());
+        assertEquals(1L, writer.getRecordsDropped());
+        assertEquals(0L, writer.getRecordsJournaled());
+    }
+
+    @Test
+    public void testDatabaseFullRecordsDropped() throws Exception {
+        writer.save(messageRecord("1"));
+        writer.save(messageRecord("2"));
+        writer.save(messageRecord("3"));
+
+        when(auditRecordManager.saveAll(anyCollectionOf(AuditRecord.class))).thenReturn(false);
+        when(auditRecordManager.save(any(AuditRecord.class))).thenReturn(null);
+        assertEquals(2, writer.writeBatch());
+        assertEquals(0L, writer.getRecordsSaved());
+        assertEquals(2L, writer.getRecordsDropped());
+        assertEquals(0, writer.getLastBatchSize());
+
+        properties.setProperty(ServerConfigParams.PARAM_AUDIT_WRITER_QUEUE_SIZE, "1");
+        writer.save(messageRecord("4"));
+        verify(auditRecordManager).save(any(AuditRecord.class));
+        assertEquals(0L, writer.getRecordsSaved());
+        assertEquals(3L, writer.getRecordsDropped());
+    }
+
+    private void fillQueue() throws Exception {
+        writer.save(messageRecord("1"));
+        writer.save(messageRecord("2"));
+        writer.save(messageRecord("3"));
+        assertEquals(3, writer.getQueueDepth());
+    }
+
+    private static MessageSummaryAuditRecord messageRecord(final String requestId) {
+        return new MessageSummaryAuditRecord(Level.INFO, "node1", requestId, AssertionStatus.NONE,
+                "127.0.0.1", null, 0,
+                null, 0, 200, 10,
+                null, "service", "operation",
+                true, null, null,
+                null, null, null);
+    }
+}
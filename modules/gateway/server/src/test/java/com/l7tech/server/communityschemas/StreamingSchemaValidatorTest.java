@@ -0,0 +1,123 @@
+package com.l7tech.server.communityschemas;
+
+import com.l7tech.common.io.XmlUtil;
+import com.l7tech.message.ValidationTarget;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for streaming schema validation, results must match DOM validation.
+ */
+public class StreamingSchemaValidatorTest {
+
+    private static final String SCHEMA =
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:t\" xmlns:t=\"urn:t\" elementFormDefault=\"qualified\">" +
+            "<xs:element name=\"order\"><xs:complexType><xs:sequence><xs:element ref=\"t:id\" maxOccurs=\"unbounded\"/></xs:sequence></xs:complexType></xs:element>" +
+            "<xs:element name=\"id\" type=\"xs:int\"/>" +
+            "</xs:schema>";
+
+    private static final String[] DOCUMENTS = {
+            // payload uses a namespace declared on the envelope
+            "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:t=\"urn:t\"><s:Header/><s:Body>\n<t:order><t:id>1</t:id><t:id>2</t:id></t:order></s:Body></s:Envelope>",
+            "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><order xmlns=\"urn:t\"><id>x</id><id>y</id></order><t:id xmlns:t=\"urn:t\">3</t:id></s:Body></s:Envelope>",
+            "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\"><s:Body><t:order xmlns:t=\"urn:t\"><t:other/></t:order></s:Body></s:Envelope>",
+            "<t:order xmlns:t=\"urn:t\"><t:id>1</t:id></t:order>",
+            "<t:order xmlns:t=\"urn:t\"><t:id>a</t:id></t:order>",
+            "<?pi?><s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><t:id xmlns:t=\"urn:t\">1</t:id></s:Body></s:Envelope>",
+    };
+
+    @Test
+    public void testSameResultsAsDom() throws Exception {
+        final Schema schema = schema();
+        for ( final String document : DOCUMENTS ) {
+            for ( final ValidationTarget target : ValidationTarget.values() ) {
+                final String description = target + " " + document;
+
+                final SchemaValidationErrorHandler domErrors = new SchemaValidationErrorHandler();
+                final boolean domValid = validateDom( schema, document, target, domErrors );
+
+                final SchemaValidationErrorHandler streamErrors = new SchemaValidationErrorHandler();
+                boolean streamValid = true;
+                try {
+                    assertTrue( description, StreamingSchemaValidator.validate( schema, source( document ), target, streamErrors ) );
+                } catch ( SAXException e ) {
+                    streamValid = false;
+                }
+
+                assertEquals( description, domValid, streamValid );
+                assertEquals( description, domErrors.recordedErrors().size(), streamErrors.recordedErrors().size() );
+            }
+        }
+    }
+
+    @Test
+    public void testMultipleBodyUsesDom() throws Exception {
+        final String document = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><t:id xmlns:t=\"urn:t\">x</t:id></s:Body><s:Body/></s:Envelope>";
+        final SchemaValidationErrorHandler errors = new SchemaValidationErrorHandler();
+        assertFalse( StreamingSchemaValidator.validate( schema(), source( document ), ValidationTarget.BODY, errors ) );
+        assertTrue( errors.recordedErrors().isEmpty() );
+        assertTrue( StreamingSchemaValidator.validate( schema(), source( "<t:id xmlns:t=\"urn:t\">1</t:id>" ), ValidationTarget.BODY, errors ) );
+    }
+
+    @Test
+    public void testArgumentsWithoutPayload() throws Exception {
+        final String document = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body/></s:Envelope>";
+        try {
+            StreamingSchemaValidator.validate( schema(), source( document ), ValidationTarget.ARGUMENTS, new SchemaValidationErrorHandler() );
+            fail( "Expected failure" );
+        } catch ( SAXException e ) {
+            assertEquals( "Error getting elements to validate for ARGUMENTS", e.getMessage() );
+        }
+    }
+
+    @Test
+    public void testNotWellFormed() throws Exception {
+        final SchemaValidationErrorHandler errors = new SchemaValidationErrorHandler();
+        try {
+            StreamingSchemaValidator.validate( schema(), source( "<t:order xmlns:t=\"urn:t\"><t:id>x</t:id><t:order>" ), ValidationTarget.ENVELOPE, errors );
+            fail( "Expected failure" );
+        } catch ( SAXException e ) {
+            assertTrue( errors.recordedErrors().isEmpty() );
+        }
+    }
+
+    private static Schema schema() throws SAXException {
+        return SchemaFactory.newInstance( XMLConstants.W3C_XML_SCHEMA_NS_URI ).newSchema( new StreamSource( new StringReader( SCHEMA ) ) );
+    }
+
+    private static InputSource source( final String document ) {
+        return new InputSource( new StringReader( document ) );
+    }
+
+    /**
+     * Validate as CompiledSchema does for DOM.
+     */
+    private static boolean validateDom( final Schema schema,
+                                        final String document,
+                                        final ValidationTarget target,
+                                        final SchemaValidationErrorHandler errorHandler ) throws Exception {
+        final Validator validator = schema.newValidator();
+        validator.setErrorHandler( errorHandler );
+        boolean valid = true;
+        for ( final Element element : target.elementsToValidate( XmlUtil.stringToDocument( document ) ) ) {
+            try {
+                validator.validate( new DOMSource( element ) );
+            } catch ( SAXException e ) {
+                valid = false;
+            }
+        }
+        return valid && errorHandler.recordedErrors().isEmpty();
+    }
+}
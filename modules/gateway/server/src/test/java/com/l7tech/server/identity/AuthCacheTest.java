@@ -61,7 +61,7 @@ public class AuthCacheTest {
             public long currentTimeMillis() {
                 return time[0];
             }
-        }, 5, 3, 5, 3);
+        }, 5, 5);
 
         //First authenticate causes the idp to be contacted
         Assert.assertNotNull(aC.getCachedAuthResult(lc, tIP, MAX_AGE, MAX_AGE));
@@ -107,7 +107,7 @@ public class AuthCacheTest {
             public long currentTimeMillis() {
                 return time[0];
             }
-        }, 5, 3, 5, 3);
+        }, 5, 5);
 
         //First authenticate causes the idp to be contacted
         Assert.assertNull(aC.getCachedAuthResult(lc, tIP, MAX_AGE, MAX_AGE));
@@ -139,7 +139,7 @@ public class AuthCacheTest {
     @Test
     public void testSuccessCacheIndependent() throws Exception{
         //Set failure cache == 0, which should disable it
-        AuthCache aC = new AuthCache("TestAuthCache", new TimeSource(), 5, 3, 0, 3);
+        AuthCache aC = new AuthCache("TestAuthCache", new TimeSource(), 5, 0);
         Class c = aC.getClass();
 
         //Confirm internal state
@@ -178,7 +178,7 @@ public class AuthCacheTest {
     @Test
     public void testFailureCacheIndependent() throws Exception{
         //Set success cache == 0, which should disable it
-        AuthCache aC = new AuthCache("TestAuthCache", new TimeSource(), 0, 3, 5, 3);
+        AuthCache aC = new AuthCache("TestAuthCache", new TimeSource(), 0, 5);
         Class c = aC.getClass();
 
         //Confirm internal state
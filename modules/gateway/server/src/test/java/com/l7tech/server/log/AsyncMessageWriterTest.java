@@ -0,0 +1,307 @@
+package com.l7tech.server.log;
+
+import com.l7tech.gateway.common.log.SinkConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for background writing of log sink messages.
+ */
+public class AsyncMessageWriterTest {
+
+    private TestSink sink;
+
+    @After
+    public void tearDown() throws Exception {
+        if ( sink != null ) {
+            sink.release();
+            sink.close();
+        }
+    }
+
+    @Test
+    public void testMessagesWrittenInOrder() throws Exception {
+        sink = new TestSink( 64, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        for ( int i = 0; i < 1000; i++ ) {
+            sink.message( MessageCategory.LOG, record( i ) );
+        }
+        sink.close();
+
+        assertEquals( 1000, sink.processed.size() );
+        for ( int i = 0; i < 1000; i++ ) {
+            assertEquals( String.valueOf( i ), sink.processed.get( i ).getMessage() );
+        }
+        assertEquals( 1000L, sink.getAsyncWriter().getWritten() );
+        assertEquals( 0L, sink.getAsyncWriter().getDropped() );
+        assertEquals( 0, sink.getAsyncWriter().getQueued() );
+        assertFalse( "processed on writer thread", sink.threads.contains( Thread.currentThread() ) );
+    }
+
+    @Test
+    public void testRejectedMessagesNotQueued() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        sink.message( MessageCategory.AUDIT, record( 1 ) );
+        final LogRecord fine = record( 2 );
+        fine.setLevel( Level.FINE );
+        sink.message( MessageCategory.LOG, fine );
+        sink.close();
+
+        assertTrue( sink.processed.isEmpty() );
+        assertEquals( 0L, sink.getAsyncWriter().getWritten() );
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.DROP, false );
+        fillBuffer( 20 );
+        assertEquals( 16, sink.getAsyncWriter().getQueued() );
+        assertEquals( 4L, sink.getAsyncWriter().getDropped() );
+
+        sink.release();
+        sink.close();
+        assertEquals( 17, sink.processed.size() );
+        assertEquals( "0", sink.processed.get( 0 ).getMessage() );
+        assertEquals( "1", sink.processed.get( 1 ).getMessage() );
+        assertEquals( "16", sink.processed.get( 16 ).getMessage() );
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.DROP_OLDEST, false );
+        fillBuffer( 20 );
+        assertEquals( 16, sink.getAsyncWriter().getQueued() );
+        assertEquals( 4L, sink.getAsyncWriter().getDropped() );
+
+        sink.release();
+        sink.close();
+        assertEquals( 17, sink.processed.size() );
+        assertEquals( "0", sink.processed.get( 0 ).getMessage() );
+        assertEquals( "5", sink.processed.get( 1 ).getMessage() );
+        assertEquals( "20", sink.processed.get( 16 ).getMessage() );
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        fillBuffer( 16 );
+
+        final Thread logging = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                sink.message( MessageCategory.LOG, record( 17 ) );
+            }
+        } );
+        logging.start();
+        logging.join( 200L );
+        assertTrue( "logging thread blocked", logging.isAlive() );
+
+        sink.release();
+        logging.join( 10000L );
+        assertFalse( "logging thread blocked", logging.isAlive() );
+        sink.close();
+        assertEquals( 18, sink.processed.size() );
+        assertEquals( "17", sink.processed.get( 17 ).getMessage() );
+        assertEquals( 0L, sink.getAsyncWriter().getDropped() );
+    }
+
+    @Test
+    public void testOtherWriterThreadNotBlocked() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        fillBuffer( 16 );
+
+        final TestSink other = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        try {
+            other.forwardTo = sink;
+            other.message( MessageCategory.LOG, record( 17 ) );
+            other.close(); // waits for the forwarded record
+            assertEquals( 1, other.processed.size() );
+            assertEquals( 1L, sink.getAsyncWriter().getDropped() );
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testFailedBatchCountedAsDropped() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        sink.failing = true;
+        sink.message( MessageCategory.LOG, record( 1 ) );
+        sink.close();
+
+        assertEquals( 0L, sink.getAsyncWriter().getWritten() );
+        assertEquals( 1L, sink.getAsyncWriter().getDropped() );
+    }
+
+    @Test
+    public void testBlockedLoggingThreadReleasedWhenSinkErrors() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        fillBuffer( 16 );
+
+        final Thread logging = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                sink.message( MessageCategory.LOG, record( 17 ) );
+            }
+        } );
+        logging.start();
+        logging.join( 200L );
+        assertTrue( "logging thread blocked", logging.isAlive() );
+
+        sink.error = new Error( "sink error" );
+        sink.release();
+        logging.join( 10000L );
+        assertFalse( "logging thread blocked", logging.isAlive() );
+
+        assertEquals( 1, sink.processed.size() );
+        assertEquals( "17", sink.processed.get( 0 ).getMessage() );
+        assertTrue( "processed on logging thread", sink.threads.contains( logging ) );
+        assertEquals( 0L, sink.getAsyncWriter().getWritten() );
+        assertEquals( 17L, sink.getAsyncWriter().getDropped() );
+        assertEquals( 0, sink.getAsyncWriter().getQueued() );
+    }
+
+    @Test
+    public void testSourceCapturedOnLoggingThread() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, true );
+        final Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers( false );
+        logger.addHandler( new Handler() {
+            @Override
+            public void publish( final LogRecord record ) {
+                sink.message( MessageCategory.LOG, record );
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        } );
+
+        logger.info( "test" );
+        sink.close();
+
+        assertEquals( 1, sink.processed.size() );
+        assertEquals( AsyncMessageWriterTest.class.getName(), sink.processed.get( 0 ).getSourceClassName() );
+        assertEquals( "testSourceCapturedOnLoggingThread", sink.processed.get( 0 ).getSourceMethodName() );
+    }
+
+    @Test
+    public void testProcessedOnLoggingThreadWhenClosed() throws Exception {
+        sink = new TestSink( 16, AsyncMessageWriter.FullBufferPolicy.BLOCK, false );
+        sink.close();
+        sink.message( MessageCategory.LOG, record( 1 ) );
+
+        assertEquals( 1, sink.processed.size() );
+        assertTrue( "processed on logging thread", sink.threads.contains( Thread.currentThread() ) );
+    }
+
+    /**
+     * Block the writer with the first record then log the remaining records.
+     */
+    private void fillBuffer( final int count ) throws InterruptedException {
+        sink.hold();
+        sink.message( MessageCategory.LOG, record( 0 ) );
+        assertTrue( "writer started batch", sink.entered.await( 10L, TimeUnit.SECONDS ) );
+        for ( int i = 1; i <= count; i++ ) {
+            sink.message( MessageCategory.LOG, record( i ) );
+        }
+    }
+
+    private static LogRecord record( final int id ) {
+        return new LogRecord( Level.INFO, String.valueOf( id ) );
+    }
+
+    private static SinkConfiguration configuration() {
+        final SinkConfiguration configuration = new SinkConfiguration();
+        configuration.setName( "test" );
+        configuration.setSeverity( SinkConfiguration.SeverityThreshold.INFO );
+        configuration.setCategories( SinkConfiguration.CATEGORY_GATEWAY_LOGS );
+        return configuration;
+    }
+
+    private static final class TestSink extends MessageSinkSupport {
+        private final List<LogRecord> processed = Collections.synchronizedList( new ArrayList<LogRecord>() );
+        private final List<Thread> threads = Collections.synchronizedList( new ArrayList<Thread>() );
+        private final CountDownLatch entered = new CountDownLatch( 1 );
+        private final boolean sourceRequired;
+        private volatile CountDownLatch released;
+        private volatile TestSink forwardTo;
+        private volatile boolean failing;
+        private volatile Error error;
+
+        private TestSink( final int bufferSize,
+                          final AsyncMessageWriter.FullBufferPolicy policy,
+                          final boolean sourceRequired ) {
+            super( configuration() );
+            this.sourceRequired = sourceRequired;
+            startAsyncWriter( bufferSize, policy );
+        }
+
+        @Override
+        void processMessage( final MessageCategory category, final LogRecord record ) {
+            processed.add( record );
+            threads.add( Thread.currentThread() );
+        }
+
+        @Override
+        void processMessages( final MessageCategory[] categories, final LogRecord[] records, final int count ) {
+            entered.countDown();
+            final CountDownLatch released = this.released;
+            if ( released != null ) {
+                try {
+                    released.await( 10L, TimeUnit.SECONDS );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if ( failing ) {
+                throw new IllegalStateException( "sink failed" );
+            }
+            final Error error = this.error;
+            if ( error != null ) {
+                throw error;
+            }
+            final TestSink forwardTo = this.forwardTo;
+            if ( forwardTo != null ) {
+                for ( int i = 0; i < count; i++ ) {
+                    forwardTo.message( categories[i], records[i] );
+                }
+            }
+            super.processMessages( categories, records, count );
+        }
+
+        @Override
+        boolean isSourceRequired() {
+            return sourceRequired;
+        }
+
+        @Override
+        public void close() {
+            stopAsyncWriter();
+        }
+
+        private void hold() {
+            released = new CountDownLatch( 1 );
+        }
+
+        private void release() {
+            final CountDownLatch released = this.released;
+            if ( released != null ) released.countDown();
+        }
+    }
+}
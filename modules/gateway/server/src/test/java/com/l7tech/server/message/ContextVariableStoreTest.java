@@ -0,0 +1,319 @@
+package com.l7tech.server.message;
+
+import com.l7tech.gateway.common.audit.NullAudit;
+import com.l7tech.message.Message;
+import com.l7tech.policy.variable.NoSuchVariableException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class ContextVariableStoreTest {
+
+    private ContextVariableSlot.Scope scope;
+
+    @Before
+    public void setUp() {
+        scope = ContextVariableSlot.newScope();
+        scope.enter();
+    }
+
+    @After
+    public void tearDown() {
+        scope.exit();
+        scope.close();
+    }
+
+    @Test
+    public void testSlottedAndUnslottedLookup() {
+        ContextVariableSlot.forName( "storeTest.slotted" );
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( "storeTest.Slotted", "a" );
+        store.put( "storeTest.unslotted", "b" );
+
+        assertEquals( "a", store.get( "STORETEST.SLOTTED" ) );
+        assertEquals( "b", store.get( "storetest.Unslotted" ) );
+        assertNull( store.get( "storeTest.missing" ) );
+    }
+
+    @Test
+    public void testCaseChangeAdoptsNewSpelling() {
+        ContextVariableSlot.forName( "storeTest.caseChange" );
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( "storeTest.casechange", "a" );
+        store.put( "storeTest.dynamicCase", "b" );
+        store.put( "storeTest.caseChange", "c" );
+        store.put( "STORETEST.DYNAMICCASE", "d" );
+
+        final Map<String,Object> map = store.asMap();
+        assertEquals( 2, map.size() );
+        assertTrue( map.keySet().contains( "storeTest.caseChange" ) );
+        assertTrue( map.keySet().contains( "STORETEST.DYNAMICCASE" ) );
+        assertEquals( "c", map.get( "storetest.casechange" ) );
+        assertEquals( "d", map.get( "storetest.dynamiccase" ) );
+    }
+
+    @Test
+    public void testRegisteredAfterSet() {
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( "storeTest.lateRegistration", "a" );
+        ContextVariableSlot.forName( "storeTest.lateRegistration" );
+        assertEquals( "a", store.get( "storeTest.lateRegistration" ) );
+
+        store.put( "storeTest.lateRegistration", "b" );
+        assertEquals( "b", store.get( "storeTest.lateRegistration" ) );
+        assertEquals( 1, store.asMap().size() );
+    }
+
+    @Test
+    public void testMatchingName() {
+        ContextVariableSlot.forName( "storeTest.match" );
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( "storeTest.Match", "a" );
+        store.put( "storeTest.dynamic", "b" );
+
+        assertEquals( "storetest.match", store.getMatchingName( "storeTest.match" ) );
+        assertEquals( "storetest.match", store.getMatchingName( " storeTest.match.length " ) );
+        assertEquals( "storetest.dynamic", store.getMatchingName( "storeTest.dynamic.mainpart" ) );
+        assertNull( store.getMatchingName( "storeTest" ) );
+        assertNull( store.getMatchingName( "storeTest.other.match" ) );
+    }
+
+    @Test
+    public void testNullValue() {
+        ContextVariableSlot.forName( "storeTest.null" );
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( "storeTest.null", null );
+        assertNull( store.get( "storeTest.null" ) );
+        assertEquals( "storetest.null", store.getMatchingName( "storeTest.null" ) );
+        assertTrue( store.asMap().containsKey( "storeTest.null" ) );
+    }
+
+    @Test
+    public void testResize() {
+        final ContextVariableStore store = new ContextVariableStore();
+        for ( int i=0; i<500; i++ ) {
+            ContextVariableSlot.forName( "storeTest.resize" + i );
+            store.put( "storeTest.resize" + i, i );
+        }
+        for ( int i=0; i<500; i++ ) {
+            assertEquals( i, store.get( "storeTest.RESIZE" + i ) );
+        }
+        assertEquals( 500, store.asMap().size() );
+    }
+
+    @Test
+    public void testViewReflectsChanges() {
+        ContextVariableSlot.forName( "storeTest.view" );
+        final ContextVariableStore store = new ContextVariableStore();
+        final Map<String,Object> map = store.asMap();
+        assertTrue( map.isEmpty() );
+
+        store.put( "storeTest.View", "a" );
+        store.put( "storeTest.viewDynamic", "b" );
+        assertSame( map, store.asMap() );
+        assertEquals( 2, map.size() );
+        assertEquals( "a", map.get( "STORETEST.VIEW" ) );
+        assertTrue( map.containsKey( "storetest.viewdynamic" ) );
+
+        final Map<String,Object> copy = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+        copy.putAll( map );
+        assertEquals( "a", copy.get( "storeTest.View" ) );
+        assertEquals( "b", copy.get( "storeTest.viewDynamic" ) );
+
+        try {
+            map.put( "storeTest.other", "c" );
+            fail( "Expected UnsupportedOperationException" );
+        } catch ( UnsupportedOperationException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSlotAccess() {
+        final ContextVariableSlot slot = ContextVariableSlot.forName( "storeTest.slotAccess" );
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( slot, "a" );
+        assertEquals( "a", store.get( slot ) );
+        assertEquals( "a", store.get( "STORETEST.SLOTACCESS" ) );
+
+        store.put( "storeTest.SlotAccess", "b" );
+        assertEquals( "b", store.get( ContextVariableSlot.forName( "storetest.slotaccess" ) ) );
+        assertEquals( 1, store.asMap().size() );
+        assertTrue( store.asMap().keySet().contains( "storeTest.SlotAccess" ) );
+    }
+
+    @Test
+    public void testMatchingReference() {
+        final ContextVariableSlot[] references = ContextVariableSlot.forReferences( new String[]{
+                "storeTest.reference.mainpart", "storeTest.referenceDynamic.length", "storeTest.referenceMissing" } );
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( "storeTest.Reference", "a" );
+        store.put( "storeTest.referenceDynamic", "b" );
+
+        final ContextVariableSlot candidate = store.getMatchingCandidate( references[0] );
+        assertNotNull( candidate );
+        assertEquals( "storetest.reference", candidate.getKey() );
+        assertEquals( "a", store.get( candidate ) );
+        assertEquals( "b", store.get( store.getMatchingCandidate( references[1] ) ) );
+        assertNull( store.getMatchingCandidate( references[2] ) );
+    }
+
+    @Test
+    public void testNameOrder() {
+        ContextVariableSlot.forName( "storeTest.orderSlotted" );
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( "storeTest.orderC", "c" );
+        store.put( "storeTest.orderSlotted", "s" );
+        store.put( "storeTest.ordera", "a" );
+        store.put( "storeTest.orderB", "b" );
+        store.put( "storeTest.orderC", "c2" );
+
+        assertEquals( Arrays.asList( "storeTest.ordera", "storeTest.orderB", "storeTest.orderC", "storeTest.orderSlotted" ), new ArrayList<>( store.asMap().keySet() ) );
+    }
+
+    @Test
+    public void testSlotsReleasedWithScope() {
+        final ContextVariableSlot.Scope other = ContextVariableSlot.newScope();
+        other.enter();
+        final ContextVariableSlot slot;
+        try {
+            slot = ContextVariableSlot.forName( "storeTest.released" );
+        } finally {
+            other.exit();
+        }
+        assertTrue( slot.isSlotted() );
+        assertTrue( ContextVariableSlot.forName( "storeTest.released" ).isSlotted() );
+
+        other.close();
+        scope.exit();
+        try {
+            assertFalse( ContextVariableSlot.forName( "storeTest.released" ).isSlotted() );
+        } finally {
+            scope.enter();
+        }
+        assertTrue( ContextVariableSlot.forName( "storeTest.released" ).isSlotted() );
+    }
+
+    @Test
+    public void testReusedSlotIndex() {
+        final ContextVariableSlot.Scope first = ContextVariableSlot.newScope();
+        first.enter();
+        final ContextVariableSlot released;
+        try {
+            released = ContextVariableSlot.forName( "storeTest.reusedFirst" );
+        } finally {
+            first.exit();
+        }
+        final ContextVariableStore store = new ContextVariableStore();
+        store.put( released, "a" );
+        first.close();
+
+        final ContextVariableSlot reused = ContextVariableSlot.forName( "storeTest.reusedSecond" );
+        assertEquals( released.getIndex(), reused.getIndex() );
+        assertNull( store.get( reused ) );
+        store.put( reused, "b" );
+        assertEquals( "a", store.get( released ) );
+        assertEquals( "b", store.get( reused ) );
+        assertEquals( "a", store.get( ContextVariableSlot.forName( "storeTest.reusedFirst" ) ) );
+        assertEquals( "a", store.get( "storeTest.reusedFirst" ) );
+        assertEquals( 2, store.asMap().size() );
+    }
+
+    @Test
+    public void testBuiltinNotSlotted() {
+        assertFalse( ContextVariableSlot.forName( "request.mainpart" ).isSlotted() );
+    }
+
+    @Test
+    public void testContextVariables() throws Exception {
+        ContextVariableSlot.forName( "storeTest.context" );
+        final PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext( new Message(), new Message() );
+        try {
+            context.getVariable( "storeTest.context" );
+            fail( "Expected NoSuchVariableException" );
+        } catch ( NoSuchVariableException e ) {
+            // expected
+        }
+
+        context.setVariable( "storeTest.context", "value" );
+        assertEquals( "value", context.getVariable( "storeTest.CONTEXT" ) );
+        assertEquals( "value", context.getVariableMap( new String[]{ "storeTest.context" }, null ).get( "storeTest.context" ) );
+        assertEquals( "value", context.getAllVariables().get( "storeTest.Context" ) );
+    }
+
+    @Test
+    public void testContextVariableReferences() throws Exception {
+        final ContextVariableSlot slot = ContextVariableSlot.forName( "storeTest.contextSlot" );
+        final ContextVariableSlot[] references = ContextVariableSlot.forReferences( new String[]{ "storeTest.contextSlot.mainpart", "storeTest.contextMissing" } );
+        final PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext( new Message(), new Message() );
+        try {
+            context.getVariable( slot );
+            fail( "Expected NoSuchVariableException" );
+        } catch ( NoSuchVariableException e ) {
+            // expected
+        }
+
+        context.setVariable( slot, "value" );
+        assertEquals( "value", context.getVariable( "storeTest.CONTEXTSLOT" ) );
+        assertEquals( "value", context.getVariable( slot ) );
+
+        final Map<String,Object> variables = context.getVariableMap( references, new NullAudit() );
+        assertEquals( 1, variables.size() );
+        assertEquals( "value", variables.get( "storeTest.contextSlot" ) );
+        variables.put( "storeTest.other", "other" );
+        assertEquals( "other", variables.get( "STORETEST.OTHER" ) );
+        assertFalse( context.getAllVariables().containsKey( "storeTest.other" ) );
+    }
+
+    @Test
+    public void testContextVariableReferencesMap() throws Exception {
+        final ContextVariableSlot[] references = ContextVariableSlot.forReferences( new String[]{
+                "storeTest.mapC", "storeTest.mapA.length", "storeTest.mapB" } );
+        final PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext( new Message(), new Message() );
+        context.setVariable( "storeTest.mapC", "c" );
+        context.setVariable( "storeTest.mapA", "a" );
+
+        final Map<String,Object> variables = context.getVariableMap( references, new NullAudit() );
+        assertEquals( Arrays.asList( "storetest.mapa", "storetest.mapc" ), new ArrayList<>( variables.keySet() ) );
+        assertTrue( variables.containsKey( "storeTest.MapA" ) );
+        assertFalse( variables.containsKey( "storeTest.mapA.length" ) );
+        assertNull( variables.get( "storeTest.mapB" ) );
+
+        // the map is a copy, later changes to the context are not visible
+        context.setVariable( "storeTest.mapB", "b" );
+        context.setVariable( "storeTest.mapA", "a2" );
+        assertNull( variables.get( "storeTest.mapB" ) );
+        assertEquals( "a", variables.get( "storeTest.mapA" ) );
+        assertEquals( 2, variables.size() );
+        assertEquals( "b", context.getVariableMap( references, new NullAudit() ).get( "storeTest.mapB" ) );
+
+        // and changes to the map do not affect the context
+        variables.remove( "storeTest.mapC" );
+        variables.put( "storeTest.mapD", "d" );
+        variables.put( "STORETEST.MAPA", "A" );
+        assertEquals( Arrays.asList( "storetest.mapa", "storeTest.mapD" ), new ArrayList<>( variables.keySet() ) );
+        assertEquals( "A", variables.get( "storeTest.mapA" ) );
+        assertEquals( 2, variables.size() );
+        assertEquals( "c", context.getVariable( "storeTest.mapC" ) );
+        assertEquals( "a2", context.getVariable( "storeTest.mapA" ) );
+
+        final Iterator<Map.Entry<String,Object>> iterator = variables.entrySet().iterator();
+        assertEquals( "storetest.mapa", iterator.next().getKey() );
+        iterator.remove();
+        assertEquals( "storeTest.mapD", iterator.next().getKey() );
+        assertFalse( iterator.hasNext() );
+        assertEquals( Collections.singletonMap( "storeTest.mapD", "d" ), variables );
+
+        final Map<String,Object> named = context.getVariableMap( new String[]{ "storeTest.mapC", "storeTest.mapA" }, new NullAudit() );
+        assertEquals( Arrays.asList( "storetest.mapa", "storetest.mapc" ), new ArrayList<>( named.keySet() ) );
+    }
+}
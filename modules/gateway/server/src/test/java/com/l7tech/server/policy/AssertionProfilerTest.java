@@ -0,0 +1,188 @@
+package com.l7tech.server.policy;
+
+import com.l7tech.common.io.EmptyInputStream;
+import com.l7tech.common.mime.ByteArrayStashManager;
+import com.l7tech.common.mime.ContentTypeHeader;
+import com.l7tech.gateway.common.service.AssertionProfileStatistics;
+import com.l7tech.message.Message;
+import com.l7tech.objectmodel.Goid;
+import com.l7tech.policy.assertion.Assertion;
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.policy.assertion.FalseAssertion;
+import com.l7tech.policy.assertion.TrueAssertion;
+import com.l7tech.policy.assertion.composite.AllAssertion;
+import com.l7tech.policy.assertion.composite.OneOrMoreAssertion;
+import com.l7tech.server.ApplicationContexts;
+import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.message.PolicyEnforcementContextFactory;
+import com.l7tech.server.policy.assertion.ServerAssertion;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the assertion profiler.
+ */
+public class AssertionProfilerTest {
+
+    @Test
+    public void testBuckets() {
+        int previous = -1;
+        for ( long value = 0L; value < 100000L; value++ ) {
+            final int bucket = AssertionProfiler.bucket( value );
+            assertTrue( "Bucket order for " + value, bucket == previous || bucket == previous + 1 );
+            assertTrue( "Lower bound for " + value, AssertionProfiler.bucketLowerBound( bucket ) <= value );
+            assertTrue( "Upper bound for " + value, AssertionProfiler.bucketLowerBound( bucket + 1 ) > value );
+            previous = bucket;
+        }
+        assertEquals( AssertionProfiler.bucket( Long.MAX_VALUE ), AssertionProfiler.bucket( 1L << 50 ) );
+    }
+
+    @Test
+    public void testStatistics() {
+        final Goid policyGoid = new Goid( 0, 1L );
+        final AssertionProfiler profiler = new AssertionProfiler( true, 1 );
+        final AssertionProfiler.Profile profile = profiler.getProfile( assertion( new TrueAssertion(), policyGoid, 3 ) );
+        assertNotNull( profile );
+        assertSame( profile, profiler.getProfile( assertion( new TrueAssertion(), policyGoid, 3 ) ) );
+
+        for ( int i = 1; i <= 100; i++ ) {
+            assertTrue( profile.sample() );
+            profile.record( i == 100 ? AssertionStatus.FALSIFIED : AssertionStatus.NONE, i * 1000L );
+        }
+        profile.record( AssertionStatus.NONE, -1L );
+
+        final List<AssertionProfileStatistics> statistics = profiler.getStatistics( policyGoid );
+        assertEquals( 1, statistics.size() );
+        final AssertionProfileStatistics stats = statistics.get( 0 );
+        assertEquals( policyGoid, stats.getPolicyGoid() );
+        assertEquals( 3, stats.getOrdinal() );
+        assertEquals( "TrueAssertion", stats.getAssertionName() );
+        assertEquals( 101L, stats.getInvocationCount() );
+        assertEquals( 1L, stats.getFailureCount() );
+        assertEquals( 100L, stats.getSampleCount() );
+        assertEquals( 50500L, stats.getMeanNanos() );
+        assertEquals( 100000L, stats.getMaxNanos() );
+        assertTrue( "p50 " + stats.getP50Nanos(), stats.getP50Nanos() >= 50000L && stats.getP50Nanos() <= 50000L * 5 / 4 );
+        assertTrue( "p99 " + stats.getP99Nanos(), stats.getP99Nanos() >= 99000L && stats.getP99Nanos() <= 100000L );
+    }
+
+    @Test
+    public void testStatisticsMergedAcrossThreads() throws Exception {
+        final Goid policyGoid = new Goid( 0, 1L );
+        final AssertionProfiler profiler = new AssertionProfiler( true, 1 );
+        final AssertionProfiler.Profile profile = profiler.getProfile( assertion( new TrueAssertion(), policyGoid, 3 ) );
+        assertNotNull( profile );
+
+        final Thread[] threads = new Thread[8];
+        for ( int t = 0; t < threads.length; t++ ) {
+            final long nanos = (t + 1) * 1000L;
+            threads[t] = new Thread( new Runnable() {
+                @Override
+                public void run() {
+                    for ( int i = 0; i < 1000; i++ ) {
+                        profile.record( AssertionStatus.NONE, nanos );
+                    }
+                }
+            } );
+            threads[t].start();
+        }
+        for ( final Thread thread : threads ) {
+            thread.join();
+        }
+
+        final AssertionProfileStatistics stats = profiler.getStatistics( policyGoid ).get( 0 );
+        assertEquals( 8000L, stats.getInvocationCount() );
+        assertEquals( 8000L, stats.getSampleCount() );
+        assertEquals( 4500L, stats.getMeanNanos() );
+        assertEquals( 8000L, stats.getMaxNanos() );
+        assertEquals( 8000L, stats.getP99Nanos() );
+    }
+
+    @Test
+    public void testReplacedAssertion() {
+        final Goid policyGoid = new Goid( 0, 1L );
+        final AssertionProfiler profiler = new AssertionProfiler( true, 1 );
+        final AssertionProfiler.Profile profile = profiler.getProfile( assertion( new TrueAssertion(), policyGoid, 3 ) );
+        assertNotNull( profile );
+        profile.record( AssertionStatus.NONE, 10L );
+
+        final AssertionProfiler.Profile replaced = profiler.getProfile( assertion( new FalseAssertion(), policyGoid, 3 ) );
+        assertNotNull( replaced );
+        assertNotSame( profile, replaced );
+        assertEquals( 0L, profiler.getStatistics( policyGoid ).get( 0 ).getInvocationCount() );
+        assertEquals( "FalseAssertion", profiler.getStatistics( policyGoid ).get( 0 ).getAssertionName() );
+
+        profiler.reset( policyGoid );
+        assertTrue( profiler.getStatistics( policyGoid ).isEmpty() );
+    }
+
+    @Test
+    public void testNotProfiled() {
+        assertNull( new AssertionProfiler( true, 1 ).getProfile( new TrueAssertion() ) );
+        assertNull( new AssertionProfiler( false, 1 ).getProfile( assertion( new TrueAssertion(), new Goid( 0, 1L ), 3 ) ) );
+    }
+
+    @Test
+    public void testSampleRate() {
+        final AssertionProfiler.Profile profile = new AssertionProfiler( true, 10 ).getProfile( assertion( new TrueAssertion(), new Goid( 0, 1L ), 3 ) );
+        assertNotNull( profile );
+        int samples = 0;
+        for ( int i = 0; i < 16000; i++ ) {
+            if ( profile.sample() ) samples++;
+        }
+        assertTrue( "Samples " + samples, samples > 500 && samples < 1500 );
+    }
+
+    @Test
+    public void testCompositeChildrenProfiled() throws Exception {
+        final ApplicationContext applicationContext = ApplicationContexts.getTestApplicationContext();
+        final ServerPolicyFactory policyFactory = applicationContext.getBean( "policyFactory", ServerPolicyFactory.class );
+        final AssertionProfiler profiler = applicationContext.getBean( "assertionProfiler", AssertionProfiler.class );
+
+        final Goid policyGoid = new Goid( 0, 7834L );
+        final AllAssertion policy = new AllAssertion( Arrays.<Assertion>asList(
+                new OneOrMoreAssertion( Arrays.<Assertion>asList( new FalseAssertion(), new TrueAssertion() ) ),
+                new TrueAssertion()
+        ) );
+        policy.ownerPolicyGoid( policyGoid );
+
+        final ServerAssertion serverPolicy = policyFactory.compilePolicy( policy, false );
+        try {
+            for ( int i = 0; i < 10; i++ ) {
+                final PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext(
+                        new Message( new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT, new EmptyInputStream() ), new Message() );
+                try {
+                    assertEquals( AssertionStatus.NONE, serverPolicy.checkRequest( context ) );
+                } finally {
+                    context.close();
+                }
+            }
+        } finally {
+            serverPolicy.close();
+        }
+
+        final List<AssertionProfileStatistics> statistics = profiler.getStatistics( policyGoid );
+        assertEquals( 4, statistics.size() );
+        assertEquals( "OneOrMoreAssertion", statistics.get( 0 ).getAssertionName() );
+        assertEquals( 10L, statistics.get( 0 ).getInvocationCount() );
+        assertEquals( 0L, statistics.get( 0 ).getFailureCount() );
+        assertEquals( "FalseAssertion", statistics.get( 1 ).getAssertionName() );
+        assertEquals( 10L, statistics.get( 1 ).getFailureCount() );
+        assertEquals( "TrueAssertion", statistics.get( 2 ).getAssertionName() );
+        assertEquals( 10L, statistics.get( 2 ).getInvocationCount() );
+        assertEquals( "TrueAssertion", statistics.get( 3 ).getAssertionName() );
+        assertEquals( 10L, statistics.get( 3 ).getInvocationCount() );
+    }
+
+    private static Assertion assertion( final Assertion assertion, final Goid policyGoid, final int ordinal ) {
+        final AllAssertion root = new AllAssertion( Arrays.asList( new TrueAssertion(), assertion ) );
+        root.ownerPolicyGoid( policyGoid );
+        assertEquals( ordinal, assertion.getOrdinal() );
+        return assertion;
+    }
+}
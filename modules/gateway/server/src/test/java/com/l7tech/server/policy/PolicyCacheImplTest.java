@@ -6,6 +6,7 @@ import com.l7tech.policy.Policy;
 import com.l7tech.policy.PolicyType;
 import com.l7tech.policy.PolicyVersion;
 import com.l7tech.policy.assertion.Assertion;
+import com.l7tech.policy.assertion.AssertionStatus;
 import com.l7tech.policy.assertion.AuditDetailAssertion;
 import com.l7tech.policy.assertion.HttpRoutingAssertion;
 import com.l7tech.policy.assertion.Include;
@@ -126,6 +127,51 @@ public class PolicyCacheImplTest {
         assertNull(serverPolicy);
     }
 
+    @Test
+    public void testPolicyUpdateReplacesServerPolicy() throws Exception {
+        Policy policy = this.createPolicy(INCLUDE_FRAGMENT, POLICY_FRAGMENT_SIMPLE);
+        EntityInvalidationEvent event = new EntityInvalidationEvent(policy, Policy.class, new Goid[] { policy.getGoid() }, new char[] { CREATE });
+        this.policyCache.onApplicationEvent(event);
+
+        ServerPolicyHandle oldServerPolicy = this.policyCache.getServerPolicy(policy.getGoid());
+        assertNotNull(oldServerPolicy);
+        assertNotNull(this.policyCache.getServerPolicy(policy.getGuid()));
+        assertNotNull(this.policyCache.getPolicyMetadataByGuid(policy.getGuid()));
+
+        policy = this.createPolicy(policy.getGoid(), INCLUDE_FRAGMENT, POLICY_FRAGMENT_SIMPLE_MODIFIED, policy.getVersion() + 1);
+        event = new EntityInvalidationEvent(NULL, Policy.class, toArray(policy.getGoid()), toPrimitive(toArray(UPDATE)));
+        this.policyCache.onApplicationEvent(event);
+
+        // the replaced policy remains usable until released
+        checkAssertions(oldServerPolicy, AuditDetailAssertion.class, HttpRoutingAssertion.class);
+        ServerPolicyHandle serverPolicy = this.policyCache.getServerPolicy(policy.getGoid());
+        assertNotNull(serverPolicy);
+        checkAssertions(serverPolicy, HttpRoutingAssertion.class);
+        checkAssertions(this.policyCache.getServerPolicy(policy.getGuid()), HttpRoutingAssertion.class);
+        oldServerPolicy.close();
+    }
+
+    @Test
+    public void testPolicyChangeResetsAssertionProfiles() throws Exception {
+        final AssertionProfiler profiler = new AssertionProfiler(true, 1);
+        this.policyCache.setAssertionProfiler(profiler);
+        Policy policy = this.createPolicy(INCLUDE_FRAGMENT, POLICY_FRAGMENT_SIMPLE);
+        EntityInvalidationEvent event = new EntityInvalidationEvent(NULL, Policy.class, toArray(policy.getGoid()), toPrimitive(toArray(CREATE)));
+        this.policyCache.onApplicationEvent(event);
+        recordProfile(profiler, policy);
+
+        policy = this.createPolicy(policy.getGoid(), INCLUDE_FRAGMENT, POLICY_FRAGMENT_SIMPLE_MODIFIED, policy.getVersion() + 1);
+        event = new EntityInvalidationEvent(NULL, Policy.class, toArray(policy.getGoid()), toPrimitive(toArray(UPDATE)));
+        this.policyCache.onApplicationEvent(event);
+        assertTrue(profiler.getStatistics(policy.getGoid()).isEmpty());
+        recordProfile(profiler, policy);
+
+        this.removePolicy(policy);
+        event = new EntityInvalidationEvent(NULL, Policy.class, toArray(policy.getGoid()), toPrimitive(toArray(DELETE)));
+        this.policyCache.onApplicationEvent(event);
+        assertTrue(profiler.getStatistics(policy.getGoid()).isEmpty());
+    }
+
     @Test
     public void testIncludedPolicyCaching() throws Exception {
         Policy fragment = this.createPolicy(INCLUDE_FRAGMENT, POLICY_FRAGMENT_SIMPLE);
@@ -309,6 +355,13 @@ public class PolicyCacheImplTest {
         }
     }
 
+    private void recordProfile(AssertionProfiler profiler, Policy policy) throws IOException {
+        final AssertionProfiler.Profile profile = profiler.getProfile(((AllAssertion) policy.getAssertion()).getChildren().get(0));
+        assertNotNull(profile);
+        profile.record(AssertionStatus.NONE, 10L);
+        assertEquals(1, profiler.getStatistics(policy.getGoid()).size());
+    }
+
     private Policy createPolicy(PolicyType policyType, String xmlPath) throws Exception {
         return this.createPolicy((Goid) this.goidGenerator.generate(null, null), policyType, xmlPath, 1);
     }
@@ -43,14 +43,11 @@ public class ServerAddHeaderAssertionTest {
     private Message mess = new Message();
     private PolicyEnforcementContext pec = PolicyEnforcementContextFactory.createPolicyEnforcementContext(mess, new Message());
     private TestAudit testAudit;
-    private ServerAddHeaderAssertion serverAssertion;
 
     @Before
     public void setup() throws Exception {
         mess.initialize(XmlUtil.parse("<xml/>"));
         testAudit = new TestAudit();
-        serverAssertion = new ServerAddHeaderAssertion(ass);
-        configureServerAssertion(serverAssertion);
     }
 
     @Test
@@ -61,7 +58,7 @@ public class ServerAddHeaderAssertionTest {
 
         assertTrue(mess.getHeadersKnob().getHeaders().isEmpty());
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
 
         final HeadersKnob headersKnob = mess.getHeadersKnob();
         assertNotNull(headersKnob);
@@ -81,7 +78,7 @@ public class ServerAddHeaderAssertionTest {
 
         assertTrue(mess.getHeadersKnob().getHeaders().isEmpty());
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
 
         final HeadersKnob headersKnob = mess.getHeadersKnob();
         assertNotNull(headersKnob);
@@ -107,7 +104,7 @@ public class ServerAddHeaderAssertionTest {
         assertNotNull(headersKnob);
         assertEquals(1, headersKnob.getHeaders().size());
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
 
         assertEquals(2, headersKnob.getHeaders().size());
         assertEquals(1, headersKnob.getHeaders(HEADER_TYPE_JMS_PROPERTY).size());
@@ -130,7 +127,7 @@ public class ServerAddHeaderAssertionTest {
         mess.attachHttpRequestKnob(new HttpServletRequestKnob(hrequest));
         mess.initialize(ContentTypeHeader.TEXT_DEFAULT, "blah".getBytes(Charsets.UTF8));
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
 
         final HeadersKnob headersKnob = mess.getHeadersKnob();
         assertNotNull(headersKnob);
@@ -155,7 +152,7 @@ public class ServerAddHeaderAssertionTest {
         mess.getHeadersKnob().addHeader("foo", "orig", HEADER_TYPE_HTTP);
         mess.initialize(ContentTypeHeader.TEXT_DEFAULT, "blah".getBytes(Charsets.UTF8));
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
 
         final HeadersKnob headersKnob = mess.getHeadersKnob();
         assertNotNull(headersKnob);
@@ -224,7 +221,7 @@ public class ServerAddHeaderAssertionTest {
         mess.initialize(ContentTypeHeader.TEXT_DEFAULT, "blah".getBytes(Charsets.UTF8));
         pec = PolicyEnforcementContextFactory.createPolicyEnforcementContext(new Message(), mess);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
 
         final HeadersKnob headersKnob = mess.getHeadersKnob();
         assertNotNull(headersKnob);
@@ -358,7 +355,7 @@ public class ServerAddHeaderAssertionTest {
     public void addHeaderToHeadersKnob() throws Exception {
         ass.setHeaderName("foo");
         ass.setHeaderValue("bar");
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] values = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -373,7 +370,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("foo");
         ass.setHeaderValue("newFoo");
         ass.setRemoveExisting(true);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] values = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -388,7 +385,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("foo");
         ass.setHeaderValue("newFoo");
         ass.setRemoveExisting(false);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final List<String> values = Arrays.asList(headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP));
@@ -402,7 +399,7 @@ public class ServerAddHeaderAssertionTest {
     public void addHeaderEmptyValue() throws Exception {
         ass.setHeaderName("foo");
         ass.setHeaderValue("");
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = mess.getHeadersKnob();
         assertNotNull(headersKnob);
         final String[] headers = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -414,7 +411,7 @@ public class ServerAddHeaderAssertionTest {
     public void addHeaderNullValue() throws Exception {
         ass.setHeaderName("foo");
         ass.setHeaderValue(null);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = mess.getHeadersKnob();
         assertNotNull(headersKnob);
         final String[] headers = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -428,7 +425,7 @@ public class ServerAddHeaderAssertionTest {
         mess.getHeadersKnob().addHeader("foo", "bar2", HEADER_TYPE_HTTP);
         ass.setHeaderName("foo");
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(0, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertTrue(testAudit.isAuditPresent(AssertionMessages.HEADER_REMOVED_BY_NAME));
@@ -448,7 +445,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
         try {
-            serverAssertion.checkRequest(pec);
+            createServerAssertion().checkRequest(pec);
             fail("Expected a PolicyAssertionException to be thrown.");
         } catch (PolicyAssertionException e) {
             assertTrue(e.getMessage().contains("Invalid regular expression: Illegal repetition near index 15"));
@@ -473,7 +470,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
         try {
-            serverAssertion.checkRequest(pec);
+            createServerAssertion().checkRequest(pec);
             fail("Expected a PolicyAssertionException to be thrown.");
         } catch (PolicyAssertionException e) {
             assertTrue(e.getMessage().contains("Invalid regular expression: Illegal repetition near index 15"));
@@ -495,7 +492,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setEvaluateValueExpression(false);
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(0, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertTrue(testAudit.isAuditPresent(AssertionMessages.HEADER_REMOVED_BY_NAME_AND_VALUE));
@@ -512,7 +509,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setEvaluateValueExpression(false);
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(0, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertTrue(testAudit.isAuditPresent(AssertionMessages.HEADER_REMOVED_BY_NAME_AND_VALUE));
@@ -529,7 +526,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setEvaluateValueExpression(false);
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertEquals("\"val\"\"ue1\",value3", headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP, false)[0]);
@@ -547,7 +544,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setEvaluateValueExpression(false);
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertEquals("\"val, ue2\",value3", headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP, false)[0]);
@@ -569,7 +566,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setMetadataType(HEADER_TYPE_JMS_PROPERTY);
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
-        AssertionStatus status = serverAssertion.checkRequest(pec);
+        AssertionStatus status = createServerAssertion().checkRequest(pec);
 
         assertEquals(AssertionStatus.NONE, status);
         assertEquals(2, headersKnob.getHeaders().size());
@@ -589,7 +586,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("foo");
         ass.setHeaderValue("");
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(0, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertTrue(testAudit.isAuditPresent(AssertionMessages.HEADER_REMOVED_BY_NAME));
@@ -602,7 +599,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("foo");
         ass.setHeaderValue("bar");
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] fooValues = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -618,7 +615,7 @@ public class ServerAddHeaderAssertionTest {
         // expression should be evaluated literally (no match)
         ass.setHeaderValue("b.*");
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] fooValues = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -635,7 +632,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("foo");
         ass.setHeaderValue("${value}");
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] fooValues = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -650,7 +647,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("foo");
         ass.setHeaderValue("bar");
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] fooValues = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -664,7 +661,7 @@ public class ServerAddHeaderAssertionTest {
         mess.getHeadersKnob().addHeader("foo", "bar", HEADER_TYPE_HTTP);
         ass.setHeaderName("notFound");
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertEquals("bar", headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP)[0]);
@@ -682,7 +679,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setMetadataType(HEADER_TYPE_JMS_PROPERTY);
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
 
-        AssertionStatus status = serverAssertion.checkRequest(pec);
+        AssertionStatus status = createServerAssertion().checkRequest(pec);
 
         assertEquals(AssertionStatus.NONE, status);
         assertEquals(1, headersKnob.getHeaders().size());
@@ -692,7 +689,7 @@ public class ServerAddHeaderAssertionTest {
     @Test(expected = PolicyAssertionException.class)
     public void nullHeaderName() throws Exception {
         ass.setHeaderName(null);
-        serverAssertion.checkRequest(pec);
+        createServerAssertion().checkRequest(pec);
     }
 
     @Test
@@ -705,7 +702,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
         ass.setEvaluateNameAsExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(2, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] upperCaseFooValues = headersKnob.getHeaderValues("Foo", HEADER_TYPE_HTTP);
@@ -723,7 +720,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
         ass.setEvaluateNameAsExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(0, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertTrue(testAudit.isAuditPresent(AssertionMessages.HEADER_REMOVED_BY_NAME));
@@ -741,7 +738,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
         ass.setEvaluateValueExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(2, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final List<String> fooValues = Arrays.asList(headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP));
@@ -762,7 +759,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
         ass.setEvaluateValueExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(2, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] fooValues = headersKnob.getHeaderValues("foo", HEADER_TYPE_HTTP);
@@ -785,7 +782,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setEvaluateNameAsExpression(true);
         ass.setEvaluateValueExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         final List<String> headerNames = Arrays.asList(headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, true));
         assertEquals(3, headerNames.size());
@@ -813,7 +810,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setEvaluateValueExpression(false);
         pec.setVariable("empty", "");
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         final String[] cookies = headersKnob.getHeaderValues("Cookie");
         assertEquals(1, cookies.length);
@@ -827,7 +824,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setOperation(AddHeaderAssertion.Operation.REMOVE);
         ass.setHeaderName("cookie");
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         assertEquals(0, pec.getRequest().getHeadersKnob().getHeaderNames().length);
     }
 
@@ -839,7 +836,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("cookie");
         ass.setEvaluateNameAsExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final String[] cookies = pec.getRequest().getHeadersKnob().getHeaderValues("cookie");
         assertEquals(1, cookies.length);
         assertEquals("foo=bar", cookies[0]);
@@ -853,7 +850,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("cOOkie");
         ass.setHeaderValue("fOO=bar");
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         assertEquals(0, pec.getRequest().getHeadersKnob().getHeaderNames().length);
     }
 
@@ -867,7 +864,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderValue("foo=bar");
         ass.setEvaluateValueExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final String[] cookies = pec.getRequest().getHeadersKnob().getHeaderValues("cookie");
         assertEquals(1, cookies.length);
         assertEquals("FOO=BAR", cookies[0]);
@@ -881,7 +878,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setEvaluateNameAsExpression(true);
         ass.setEvaluateValueExpression(true);
 
-        assertEquals(AssertionStatus.NONE, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.NONE, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(1, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         final String[] vals = headersKnob.getHeaderValues(STARTS_WITH_F, HEADER_TYPE_HTTP);
@@ -894,7 +891,7 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("${name}");
         ass.setHeaderValue("test");
 
-        assertEquals(AssertionStatus.FALSIFIED, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.FALSIFIED, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(0, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertTrue(testAudit.isAuditPresent(AssertionMessages.EMPTY_HEADER_NAME));
@@ -906,16 +903,21 @@ public class ServerAddHeaderAssertionTest {
         ass.setHeaderName("${name}");
         ass.setHeaderValue("test");
 
-        assertEquals(AssertionStatus.FALSIFIED, serverAssertion.checkRequest(pec));
+        assertEquals(AssertionStatus.FALSIFIED, createServerAssertion().checkRequest(pec));
         final HeadersKnob headersKnob = pec.getRequest().getHeadersKnob();
         assertEquals(0, headersKnob.getHeaderNames(HEADER_TYPE_HTTP, true, false).length);
         assertTrue(testAudit.isAuditPresent(AssertionMessages.EMPTY_HEADER_NAME));
     }
 
-    private void configureServerAssertion(final ServerAddHeaderAssertion serverAssertion) {
+    /**
+     * Create the server assertion for the current assertion configuration, templates are compiled on creation.
+     */
+    private ServerAddHeaderAssertion createServerAssertion() {
+        final ServerAddHeaderAssertion serverAssertion = new ServerAddHeaderAssertion(ass);
         ApplicationContexts.inject(serverAssertion,
                 CollectionUtils.MapBuilder.<String, Object>builder()
                         .put("auditFactory", testAudit.factory())
                         .map());
+        return serverAssertion;
     }
 }
@@ -9,6 +9,7 @@ import com.l7tech.policy.assertion.MapValueAssertion;
 import com.l7tech.policy.variable.NoSuchVariableException;
 import com.l7tech.policy.variable.VariableNotSettableException;
 import com.l7tech.server.ApplicationContexts;
+import com.l7tech.server.message.ContextVariableSlot;
 import com.l7tech.server.message.PolicyEnforcementContext;
 import com.l7tech.server.message.PolicyEnforcementContextFactory;
 import com.l7tech.test.BugNumber;
@@ -246,7 +247,7 @@ public class ServerMapValueAssertionJavaTest {
     public void testCheckRequest_TargetOutputVariableNotSettable_VariableNotSetAuditedAndAssertionFails() throws Exception {
         PolicyEnforcementContext pec = mock(PolicyEnforcementContext.class);
 
-        when(pec.getVariableMap(any(String[].class), any(Audit.class)))
+        when(pec.getVariableMap(any(ContextVariableSlot[].class), any(Audit.class)))
                 .thenReturn(CollectionUtils.<String, Object>mapBuilder().put("in", "cat").map());
 
         doThrow(new VariableNotSettableException("unsettable")).when(pec).setVariable(anyString(), any());
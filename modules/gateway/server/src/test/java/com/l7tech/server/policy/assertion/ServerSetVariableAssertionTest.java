@@ -6,6 +6,7 @@ import com.l7tech.gateway.common.audit.*;
 import com.l7tech.message.Message;
 import com.l7tech.policy.assertion.PolicyAssertionException;
 import com.l7tech.server.*;
+import com.l7tech.server.message.ContextVariableSlot;
 import com.l7tech.server.message.PolicyEnforcementContextFactory;
 import com.l7tech.test.BugId;
 import com.l7tech.test.BugNumber;
@@ -156,7 +157,7 @@ public class ServerSetVariableAssertionTest {
         final HashMap<String, Object> varsUsed = new HashMap<String, Object>();
         final String formatValue = "yyyy-MM-dd'T'HH:mm:ss.SSSX";
         varsUsed.put("dateformat", formatValue);
-        when(mockContext.getVariableMap(Matchers.<String[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
+        when(mockContext.getVariableMap(Matchers.<ContextVariableSlot[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
 
         createServerAssertion(assertion);
 
@@ -184,7 +185,7 @@ public class ServerSetVariableAssertionTest {
         final HashMap<String, Object> varsUsed = new HashMap<String, Object>();
         final String formatValue = "yyyy-MM-dd'T'hh:mm:ss.SSSX"; //hh is invalid for a 24 hour string
         varsUsed.put("dateformat", formatValue);
-        when(mockContext.getVariableMap(Matchers.<String[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
+        when(mockContext.getVariableMap(Matchers.<ContextVariableSlot[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
 
         createServerAssertion(assertion);
 
@@ -210,7 +211,7 @@ public class ServerSetVariableAssertionTest {
         final HashMap<String, Object> varsUsed = new HashMap<String, Object>();
         final String formatValue = "yyyy-MM-ddThh:mm:ss.SSSX"; //hh is invalid for a 24 hour string
         varsUsed.put("dateformat", formatValue);
-        when(mockContext.getVariableMap(Matchers.<String[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
+        when(mockContext.getVariableMap(Matchers.<ContextVariableSlot[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
 
         createServerAssertion(assertion);
 
@@ -357,7 +358,7 @@ public class ServerSetVariableAssertionTest {
 
         final HashMap<String, Object> varsUsed = new HashMap<String, Object>();
         varsUsed.put("offset", "-5000");
-        when(mockContext.getVariableMap(Matchers.<String[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
+        when(mockContext.getVariableMap(Matchers.<ContextVariableSlot[]>any(), Matchers.<Audit>any())).thenReturn(varsUsed);
         final AssertionStatus assertionStatus = fixture.checkRequest(mockContext);
         assertEquals(AssertionStatus.NONE, assertionStatus);
         assertFalse(testAudit.iterator().hasNext());
@@ -0,0 +1,31 @@
+package com.l7tech.server.policy.assertion.composite;
+
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.policy.assertion.PolicyAssertionException;
+import com.l7tech.policy.assertion.SetVariableAssertion;
+import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.policy.assertion.AssertionResumption;
+import com.l7tech.server.policy.assertion.ServerSetVariableAssertion;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Suspends evaluation until resumed by the test, sets the variable when evaluated synchronously.
+ */
+public class ServerSuspendAssertion extends ServerSetVariableAssertion implements SuspendableServerAssertion<SetVariableAssertion> {
+
+    static final Queue<AssertionResumption> suspended = new ConcurrentLinkedQueue<AssertionResumption>();
+
+    public ServerSuspendAssertion(SuspendAssertion assertion) throws PolicyAssertionException {
+        super(assertion);
+    }
+
+    @Override
+    public AssertionStatus checkRequest(PolicyEnforcementContext context, AssertionResumption resumption) throws IOException, PolicyAssertionException {
+        suspended.add(resumption);
+        return null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.l7tech.server.policy.assertion.composite;
+
+import com.l7tech.policy.assertion.AssertionMetadata;
+import com.l7tech.policy.assertion.DefaultAssertionMetadata;
+import com.l7tech.policy.assertion.SetVariableAssertion;
+
+public class SuspendAssertion extends SetVariableAssertion {
+
+    public SuspendAssertion() {
+        this("suspendable", "true");
+    }
+
+    public SuspendAssertion(String variableToSet, String stringValue) {
+        super(variableToSet, stringValue);
+    }
+
+    @Override
+    public AssertionMetadata meta() {
+        DefaultAssertionMetadata meta = defaultMeta();
+        meta.put(AssertionMetadata.SERVER_ASSERTION_CLASSNAME, ServerSuspendAssertion.class.getName());
+        return meta;
+    }
+
+}
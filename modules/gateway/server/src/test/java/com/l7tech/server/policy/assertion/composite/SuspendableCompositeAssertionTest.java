@@ -0,0 +1,286 @@
+package com.l7tech.server.policy.assertion.composite;
+
+import com.l7tech.message.Message;
+import com.l7tech.policy.AssertionRegistry;
+import com.l7tech.policy.assertion.AssertionStatus;
+import com.l7tech.policy.assertion.FalseAssertion;
+import com.l7tech.policy.assertion.SetVariableAssertion;
+import com.l7tech.policy.assertion.composite.AllAssertion;
+import com.l7tech.policy.assertion.composite.ExactlyOneAssertion;
+import com.l7tech.policy.assertion.composite.OneOrMoreAssertion;
+import com.l7tech.policy.variable.NoSuchVariableException;
+import com.l7tech.server.TestLicenseManager;
+import com.l7tech.server.message.PolicyEnforcementContext;
+import com.l7tech.server.message.PolicyEnforcementContextFactory;
+import com.l7tech.server.policy.ServerPolicyFactory;
+import com.l7tech.server.policy.assertion.AssertionResumption;
+import com.l7tech.server.policy.assertion.ServerAssertion;
+import com.l7tech.server.policy.assertion.SuspendableServerAssertion;
+import com.l7tech.server.util.MockInjector;
+import com.l7tech.server.util.SimpleSingletonBeanFactory;
+import com.l7tech.util.TimeSource;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for suspension and resumption of composite assertion evaluation.
+ */
+public class SuspendableCompositeAssertionTest {
+    private PolicyEnforcementContext peCtx;
+    private final List<Object> outcomes = new ArrayList<Object>();
+    private final List<Runnable> resumed = new ArrayList<Runnable>();
+    private boolean rejectResumption;
+    static ServerPolicyFactory serverPolicyFactory;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        final AssertionRegistry assertionRegistry = new AssertionRegistry();
+        assertionRegistry.afterPropertiesSet();
+        serverPolicyFactory = new ServerPolicyFactory(new TestLicenseManager(), new MockInjector());
+        GenericApplicationContext applicationContext = new GenericApplicationContext(new SimpleSingletonBeanFactory(new HashMap<String, Object>() {{
+            put("assertionRegistry", assertionRegistry);
+            put("policyFactory", serverPolicyFactory);
+        }}));
+        serverPolicyFactory.setApplicationContext(applicationContext);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        peCtx = PolicyEnforcementContextFactory.createPolicyEnforcementContext(new Message(), new Message());
+        ServerSuspendAssertion.suspended.clear();
+        outcomes.clear();
+        resumed.clear();
+        rejectResumption = false;
+    }
+
+    @Test
+    public void testSynchronousEvaluation() throws Exception {
+        final AllAssertion all = new AllAssertion();
+        all.addChild(new SetVariableAssertion("a", "1"));
+        all.addChild(new SuspendAssertion("s", "sync"));
+        all.addChild(new SetVariableAssertion("b", "2"));
+
+        final ServerAssertion sass = serverPolicyFactory.compilePolicy(all, false);
+        assertEquals(AssertionStatus.NONE, sass.checkRequest(peCtx));
+        assertEquals("sync", peCtx.getVariable("s"));
+        assertEquals("2", peCtx.getVariable("b"));
+        assertTrue("not suspended", ServerSuspendAssertion.suspended.isEmpty());
+    }
+
+    @Test
+    public void testSuspendAndResume() throws Exception {
+        final AllAssertion all = new AllAssertion();
+        all.addChild(new SetVariableAssertion("a", "1"));
+        all.addChild(new SuspendAssertion());
+        all.addChild(new SetVariableAssertion("b", "2"));
+
+        final SuspendableServerAssertion<?> sass = compile(all);
+        assertNull("suspended", sass.checkRequest(peCtx, resumption()));
+        assertEquals("1", peCtx.getVariable("a"));
+        assertFalse("b not set", isSet("b"));
+        assertTrue(outcomes.isEmpty());
+
+        assertTrue(ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.NONE));
+        assertTrue("resumed on executor", outcomes.isEmpty());
+        runResumed();
+        assertEquals("2", peCtx.getVariable("b"));
+        assertEquals(AssertionStatus.NONE, outcome());
+    }
+
+    @Test
+    public void testResumeOnce() throws Exception {
+        final AllAssertion all = new AllAssertion();
+        all.addChild(new SuspendAssertion());
+
+        assertNull("suspended", compile(all).checkRequest(peCtx, resumption()));
+        final AssertionResumption resumption = ServerSuspendAssertion.suspended.remove();
+        assertTrue(resumption.resume(AssertionStatus.NONE));
+        assertFalse(resumption.resume(AssertionStatus.FAILED));
+        assertFalse(resumption.fail(new IOException()));
+        runResumed();
+        assertEquals(AssertionStatus.NONE, outcome());
+    }
+
+    @Test
+    public void testResumeWithFailureStatus() throws Exception {
+        final AllAssertion all = new AllAssertion();
+        all.addChild(new SuspendAssertion());
+        all.addChild(new SetVariableAssertion("b", "2"));
+
+        assertNull("suspended", compile(all).checkRequest(peCtx, resumption()));
+        ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.FAILED);
+        runResumed();
+        assertFalse("b not set", isSet("b"));
+        assertEquals(AssertionStatus.FAILED, outcome());
+    }
+
+    @Test
+    public void testResumeWithException() throws Exception {
+        final AllAssertion all = new AllAssertion();
+        all.addChild(new SuspendAssertion());
+        all.addChild(new SetVariableAssertion("b", "2"));
+
+        assertNull("suspended", compile(all).checkRequest(peCtx, resumption()));
+        final IOException failure = new IOException("test");
+        ServerSuspendAssertion.suspended.remove().fail(failure);
+        runResumed();
+        assertFalse("b not set", isSet("b"));
+        assertSame(failure, outcome());
+    }
+
+    @Test
+    public void testResumeRejectedByExecutor() throws Exception {
+        final AllAssertion all = new AllAssertion();
+        all.addChild(new SuspendAssertion());
+        all.addChild(new SetVariableAssertion("b", "2"));
+
+        rejectResumption = true;
+        assertNull("suspended", compile(all).checkRequest(peCtx, resumption()));
+        assertTrue(ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.NONE));
+        assertTrue("not resumed on executor", resumed.isEmpty());
+        assertFalse("b not set", isSet("b"));
+        assertTrue(outcome() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void testMultipleSuspensionsInNestedComposites() throws Exception {
+        final AllAssertion inner = new AllAssertion();
+        inner.addChild(new SuspendAssertion());
+        inner.addChild(new SetVariableAssertion("b", "2"));
+        inner.addChild(new SuspendAssertion());
+
+        final AllAssertion all = new AllAssertion();
+        all.addChild(new SetVariableAssertion("a", "1"));
+        all.addChild(inner);
+        all.addChild(new SetVariableAssertion("c", "3"));
+
+        assertNull("suspended", compile(all).checkRequest(peCtx, resumption()));
+        ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.NONE);
+        runResumed();
+        assertEquals("2", peCtx.getVariable("b"));
+        assertFalse("c not set", isSet("c"));
+        assertTrue("suspended again", outcomes.isEmpty());
+
+        ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.NONE);
+        runResumed();
+        assertEquals("3", peCtx.getVariable("c"));
+        assertEquals(AssertionStatus.NONE, outcome());
+    }
+
+    @Test
+    public void testOneOrMore() throws Exception {
+        final OneOrMoreAssertion oneOrMore = new OneOrMoreAssertion();
+        oneOrMore.addChild(new SuspendAssertion());
+        oneOrMore.addChild(new SetVariableAssertion("b", "2"));
+
+        // first child succeeds
+        assertNull("suspended", compile(oneOrMore).checkRequest(peCtx, resumption()));
+        ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.NONE);
+        runResumed();
+        assertFalse("b not set", isSet("b"));
+        assertEquals(AssertionStatus.NONE, outcome());
+
+        // first child fails
+        outcomes.clear();
+        assertNull("suspended", compile(oneOrMore).checkRequest(peCtx, resumption()));
+        ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.FAILED);
+        runResumed();
+        assertEquals("2", peCtx.getVariable("b"));
+        assertEquals(AssertionStatus.NONE, outcome());
+    }
+
+    @Test
+    public void testExactlyOne() throws Exception {
+        final ExactlyOneAssertion exactlyOne = new ExactlyOneAssertion();
+        exactlyOne.addChild(new SuspendAssertion());
+        exactlyOne.addChild(new FalseAssertion());
+
+        assertNull("suspended", compile(exactlyOne).checkRequest(peCtx, resumption()));
+        ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.NONE);
+        runResumed();
+        assertEquals(AssertionStatus.NONE, outcome());
+
+        outcomes.clear();
+        assertNull("suspended", compile(exactlyOne).checkRequest(peCtx, resumption()));
+        ServerSuspendAssertion.suspended.remove().resume(AssertionStatus.FAILED);
+        runResumed();
+        assertEquals(AssertionStatus.FALSIFIED, outcome());
+    }
+
+    @Test
+    public void testNonSuspendableCompositeEvaluatesSynchronously() throws Exception {
+        final MockCompositeAssertion mock = new MockCompositeAssertion();
+        mock.setTimeSource(new TimeSource());
+        mock.addChild(new SuspendAssertion("s", "sync"));
+
+        final AllAssertion all = new AllAssertion();
+        all.addChild(mock);
+        all.addChild(new SetVariableAssertion("b", "2"));
+
+        assertEquals(AssertionStatus.NONE, compile(all).checkRequest(peCtx, resumption()));
+        assertEquals("sync", peCtx.getVariable("s"));
+        assertEquals("2", peCtx.getVariable("b"));
+        assertTrue("not suspended", ServerSuspendAssertion.suspended.isEmpty());
+        assertTrue(outcomes.isEmpty());
+    }
+
+    private SuspendableServerAssertion<?> compile(final com.l7tech.policy.assertion.Assertion assertion) throws Exception {
+        return (SuspendableServerAssertion<?>) serverPolicyFactory.compilePolicy(assertion, false);
+    }
+
+    private AssertionResumption resumption() {
+        return new AssertionResumption(
+                new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        if (rejectResumption) throw new RejectedExecutionException("saturated");
+                        resumed.add(command);
+                    }
+                },
+                new AssertionResumption.Callback() {
+                    @Override
+                    public void completed(@NotNull final AssertionStatus status) {
+                        outcomes.add(status);
+                    }
+
+                    @Override
+                    public void failed(@NotNull final Throwable failure) {
+                        outcomes.add(failure);
+                    }
+                });
+    }
+
+    private void runResumed() {
+        final List<Runnable> commands = new ArrayList<Runnable>(resumed);
+        resumed.clear();
+        for (final Runnable command : commands) {
+            command.run();
+        }
+    }
+
+    private Object outcome() {
+        assertEquals("outcomes", 1, outcomes.size());
+        return outcomes.get(0);
+    }
+
+    private boolean isSet(final String name) {
+        try {
+            peCtx.getVariable(name);
+            return true;
+        } catch (NoSuchVariableException e) {
+            return false;
+        }
+    }
+}
@@ -246,12 +246,43 @@ public class XslTransformationTest {
     @Test
     @BugNumber(13231)
     public void testMessageUrlResourceInfo() throws Exception {
+        ServerXslTransformation sass = messageUrlServerAssertion();
+
+        PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext(new Message(), new Message());
+        context.getRequest().initialize(XmlUtil.stringAsDocument(getResAsString(SOAPMSG_WITH_WSSE_AND_PI)));
+
+        AssertionStatus result = sass.checkRequest(context);
+        assertEquals(AssertionStatus.NONE, result);
+        String xmlAfter = XmlUtil.nodeToString(context.getRequest().getXmlKnob().getDocumentReadOnly());
+        assertEqualsIgnoringWhitespace(EXPECTED_AFTER_BODY_SUBSTITUTION, xmlAfter.replaceAll("<\\?.*?\\?>", ""));
+    }
+
+    @Test
+    public void testMessageUrlResourceInfoStreamed() throws Exception {
+        ServerXslTransformation sass = messageUrlServerAssertion();
+
+        PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext(new Message(), new Message());
+        context.getRequest().initialize(ContentTypeHeader.XML_DEFAULT, getResAsString(SOAPMSG_WITH_WSSE_AND_PI).getBytes(Charsets.UTF8));
+
+        AssertionStatus result = sass.checkRequest(context);
+        assertEquals(AssertionStatus.NONE, result);
+        String xmlAfter = new String(IOUtils.slurpStream(context.getRequest().getMimeKnob().getFirstPart().getInputStream(false)), Charsets.UTF8);
+        assertEqualsIgnoringWhitespace(EXPECTED_AFTER_BODY_SUBSTITUTION, XmlUtil.nodeToString(XmlUtil.stringAsDocument(xmlAfter)).replaceAll("<\\?.*?\\?>", ""));
+
+        // a second processing instruction is not permitted
+        context = PolicyEnforcementContextFactory.createPolicyEnforcementContext(new Message(), new Message());
+        context.getRequest().initialize(ContentTypeHeader.XML_DEFAULT, ("<?xml-stylesheet type=\"text/xsl\" href=\"http://a/1.xsl\"?>" +
+                "<?xml-stylesheet type=\"text/xsl\" href=\"http://a/2.xsl\"?><a/>").getBytes(Charsets.UTF8));
+        assertEquals(AssertionStatus.BAD_REQUEST, sass.checkRequest(context));
+    }
+
+    private ServerXslTransformation messageUrlServerAssertion() throws Exception {
         XslTransformation ass = new XslTransformation();
         ass.setResourceInfo(new MessageUrlResourceInfo(new String[] { ".*" }));
 
         final byte[] xslBytes = getResAsString(XSL_BODYSUBST).getBytes(Charsets.UTF8);
 
-        ServerXslTransformation sass = new ServerXslTransformation(ass, null) {
+        return new ServerXslTransformation(ass, null) {
             @Override
             protected UrlResolver<CompiledStylesheet> getCache(AbstractUrlObjectCache.UserObjectFactory<CompiledStylesheet> cacheObjectFactory, BeanFactory spring) {
                 GenericHttpClientFactory clientFactory = new TestingHttpClientFactory(new MockGenericHttpClient(200, null, ContentTypeHeader.XML_DEFAULT, (long)xslBytes.length, xslBytes));
@@ -263,14 +294,6 @@ public class XslTransformationTest {
                     clientFactory, cacheObjectFactory, HttpObjectCache.WAIT_INITIAL, ServerConfigParams.PARAM_XSL_MAX_DOWNLOAD_SIZE);
             }
         };
-
-        PolicyEnforcementContext context = PolicyEnforcementContextFactory.createPolicyEnforcementContext(new Message(), new Message());
-        context.getRequest().initialize(XmlUtil.stringAsDocument(getResAsString(SOAPMSG_WITH_WSSE_AND_PI)));
-
-        AssertionStatus result = sass.checkRequest(context);
-        assertEquals(AssertionStatus.NONE, result);
-        String xmlAfter = XmlUtil.nodeToString(context.getRequest().getXmlKnob().getDocumentReadOnly());
-        assertEqualsIgnoringWhitespace(EXPECTED_AFTER_BODY_SUBSTITUTION, xmlAfter.replaceAll("<\\?.*?\\?>", ""));
     }
 
     @Test
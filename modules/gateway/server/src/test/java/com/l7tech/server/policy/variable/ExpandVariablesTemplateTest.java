@@ -2,17 +2,21 @@ package com.l7tech.server.policy.variable;
 
 import com.l7tech.gateway.common.audit.Audit;
 import com.l7tech.gateway.common.audit.NullAudit;
+import com.l7tech.policy.variable.VariableNameSyntaxException;
 import com.l7tech.server.audit.Auditor;
 import com.l7tech.test.BenchmarkRunner;
 import com.l7tech.test.BugId;
 import com.l7tech.util.CollectionUtils;
+import com.l7tech.util.SyspropUtil;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  *
@@ -62,6 +66,102 @@ public class ExpandVariablesTemplateTest {
     }
 
 
+    @Test
+    public void appendToReusedBuilder() throws Exception {
+        final ExpandVariablesTemplate template = new ExpandVariablesTemplate("blah ${foo} blah");
+        final StringBuilder sb = new StringBuilder();
+        template.appendTo(sb, vars, audit);
+        assertEquals("blah qwert blah", sb.toString());
+        sb.setLength(0);
+        template.appendTo(sb, vars, audit).append('|');
+        new ExpandVariablesTemplate("static").appendTo(sb, vars, audit);
+        assertEquals("blah qwert blah|static", sb.toString());
+    }
+
+    @Test
+    public void compiledTemplateIsCached() throws Exception {
+        assertSame(ExpandVariablesTemplate.compiled("blah ${foo} blah"), ExpandVariablesTemplate.compiled("blah ${foo} blah"));
+        assertEquals("blah qwert blah", ExpandVariables.process("blah ${foo} blah", vars, audit));
+        assertEquals("blah qwert blah", ExpandVariables.process("blah ${foo} blah", vars, audit));
+    }
+
+    @Test
+    public void compiledTemplateDefersSyntaxErrors() throws Exception {
+        final ExpandVariablesTemplate template = ExpandVariablesTemplate.compiled("${foo} ${bar[x]}");
+        try {
+            template.appendTo(new StringBuilder(), vars, audit, false, null);
+            fail("Expected VariableNameSyntaxException");
+        } catch (VariableNameSyntaxException e) {
+            // expected
+        }
+
+        try {
+            new ExpandVariablesTemplate("${foo} ${bar[x]}");
+            fail("Expected VariableNameSyntaxException");
+        } catch (VariableNameSyntaxException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void longTemplateIsNotCached() throws Exception {
+        final String str = KB + KB + "${foo}";
+        assertNotSame(ExpandVariablesTemplate.compiled(str), ExpandVariablesTemplate.compiled(str));
+        assertEquals(KB + KB + "qwert", ExpandVariables.process(str, vars, audit));
+    }
+
+    @Test
+    public void compileDefersSyntaxErrors() throws Exception {
+        final ExpandVariablesTemplate template = ExpandVariablesTemplate.compile("${foo} ${bar[x]}");
+        try {
+            template.process(vars, audit);
+            fail("Expected VariableNameSyntaxException");
+        } catch (VariableNameSyntaxException e) {
+            // expected
+        }
+        assertEquals("qwert zxcv", ExpandVariablesTemplate.compile("${foo} ${bar}").process(vars, audit));
+    }
+
+    @Test
+    public void compiledTemplateFollowsStrictMode() throws Exception {
+        final ExpandVariablesTemplate template = ExpandVariablesTemplate.compile("blah ");
+        assertEquals("blah ", template.process(vars, nullAudit));
+        try {
+            SyspropUtil.setProperty("com.l7tech.server.template.strictMode", "true");
+            try {
+                template.process(vars, nullAudit);
+                fail("Expected VariableNameSyntaxException in strict mode");
+            } catch (VariableNameSyntaxException e) {
+                // expected
+            }
+        } finally {
+            SyspropUtil.clearProperty("com.l7tech.server.template.strictMode");
+        }
+        assertEquals("blah ", template.process(vars, nullAudit));
+    }
+
+    @Test
+    public void processNoFormat() throws Exception {
+        assertEquals(Arrays.<Object>asList("a ", "qwert", " b ", "zxcv"), ExpandVariables.processNoFormat("a ${foo} b ${bar}", vars, audit));
+        assertEquals(Arrays.<Object>asList("qwert", "zxcv"), ExpandVariables.processNoFormat("${foo}${bar}", vars, audit));
+        assertEquals(Collections.<Object>singletonList("static"), ExpandVariables.processNoFormat("static", vars, audit));
+    }
+
+    @Test
+    @Ignore("Developer benchmark")
+    public void testPerformance_1k_TwoVars_Process() throws Exception {
+        final String str = KB.substring(0, 500) + "${foo}" +
+                           KB.substring(506, 600) + "${bar}" + KB.substring(606);
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; ++i)
+                    ExpandVariables.process(str, vars, nullAudit);
+            }
+        };
+        new BenchmarkRunner(r, 1000, 50, "testPerformance_1k_TwoVars_Process").run();
+    }
+
     @Test
     @Ignore("Developer benchmark")
     public void testPerformance_1k_Static() throws Exception {
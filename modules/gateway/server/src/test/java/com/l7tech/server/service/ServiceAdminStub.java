@@ -139,6 +139,11 @@ public class ServiceAdminStub extends ApplicationObjectSupport implements Servic
         }
     }
 
+    @Override
+    public List<AssertionProfileStatistics> getAssertionProfile(Goid serviceGoid) throws FindException {
+        return Collections.emptyList();
+    }
+
     /**
      * Find service docs by service id
      *
@@ -1,5 +1,7 @@
 package com.l7tech.server.service;
 
+import com.l7tech.gateway.common.service.LatencyHistogram;
+import com.l7tech.gateway.common.service.ServiceState;
 import com.l7tech.objectmodel.Goid;
 import org.junit.Test;
 import org.junit.Assert;
@@ -7,6 +9,7 @@ import com.l7tech.identity.UserBean;
 import com.l7tech.gateway.common.mapping.MessageContextMapping;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 /**
  *
@@ -80,4 +83,118 @@ public class ServiceMetricsTest {
             Assert.assertEquals( "detail keys with user mapping hashcode", mdk1.hashCode(), mdk2.hashCode() );
         }
     }
+
+    @Test
+    public void testRequestStatistics() {
+        ServiceMetrics metrics = new ServiceMetrics(new Goid(0,1));
+        metrics.addRequest("op1", null, null, true, true, 20, 10);
+        metrics.addRequest("op1", null, null, true, false, 5, 0);
+        metrics.addRequest("op2", null, null, false, false, 40, 0);
+
+        ServiceMetrics.MetricsCollectorSet set = metrics.getMetricsCollectorSet(ServiceState.ENABLED);
+        Assert.assertNotNull( "metrics set", set );
+        ServiceMetrics.MetricsCollector summary = set.getSummaryMetrics();
+        Assert.assertEquals( "attempted", 3, summary.getNumAttemptedRequest() );
+        Assert.assertEquals( "authorized", 2, summary.getNumAuthorizedRequest() );
+        Assert.assertEquals( "completed", 1, summary.getNumCompletedRequest() );
+        Assert.assertEquals( "policy violations", 1, summary.getNumPolicyViolation() );
+        Assert.assertEquals( "routing failures", 1, summary.getNumRoutingFailure() );
+        Assert.assertEquals( "min front", 5, summary.getMinFrontendResponseTime() );
+        Assert.assertEquals( "max front", 40, summary.getMaxFrontendResponseTime() );
+        Assert.assertEquals( "sum front", 65L, summary.getSumFrontendResponseTime() );
+        Assert.assertEquals( "min back", 10, summary.getMinBackendResponseTime() );
+        Assert.assertEquals( "max back", 10, summary.getMaxBackendResponseTime() );
+        Assert.assertEquals( "sum back", 10L, summary.getSumBackendResponseTime() );
+
+        Assert.assertEquals( "detail count", 2, set.getDetailMetrics().size() );
+        ServiceMetrics.MetricsCollector op1 = set.getDetailMetrics().get(new ServiceMetrics.MetricsDetailKey("op1", null, null));
+        Assert.assertEquals( "op1 attempted", 2, op1.getNumAttemptedRequest() );
+        Assert.assertEquals( "op1 min back (no completed)", 10, op1.getMinBackendResponseTime() );
+        ServiceMetrics.MetricsCollector op2 = set.getDetailMetrics().get(new ServiceMetrics.MetricsDetailKey("op2", null, null));
+        Assert.assertEquals( "op2 min back (no completed)", 0, op2.getMinBackendResponseTime() );
+        Assert.assertEquals( "op2 max back (no completed)", 0, op2.getMaxBackendResponseTime() );
+    }
+
+    @Test
+    public void testResponseTimeHistograms() {
+        ServiceMetrics metrics = new ServiceMetrics(new Goid(0,1));
+        for ( int i=1; i<=100; i++ ) {
+            metrics.addRequest("op1", null, null, true, i % 2 == 0, i, i / 2);
+        }
+
+        ServiceMetrics.MetricsCollectorSet set = metrics.getMetricsCollectorSet(ServiceState.ENABLED);
+        Assert.assertNotNull( "metrics set", set );
+        LatencyHistogram front = set.getSummaryMetrics().getFrontendResponseTimeHistogram();
+        LatencyHistogram back = set.getSummaryMetrics().getBackendResponseTimeHistogram();
+        Assert.assertEquals( "front count", 100L, front.getTotalCount() );
+        Assert.assertEquals( "back count", 50L, back.getTotalCount() );
+        Assert.assertEquals( "front p99", 99.0, front.getValueAtPercentile(99), 99.0 / 16 );
+        Assert.assertEquals( "back p50", 25.0, back.getValueAtPercentile(50), 25.0 / 16 );
+
+        ServiceMetrics.MetricsCollector op1 = set.getDetailMetrics().get(new ServiceMetrics.MetricsDetailKey("op1", null, null));
+        Assert.assertNull( "no detail histogram", op1.getFrontendResponseTimeHistogram() );
+    }
+
+    @Test
+    public void testRolloverStartsNewBin() {
+        ServiceMetrics metrics = new ServiceMetrics(new Goid(0,1));
+        metrics.addRequest(null, null, null, true, true, 20, 10);
+        Assert.assertNotNull( "first bin", metrics.getMetricsCollectorSet(ServiceState.ENABLED) );
+
+        // no traffic and no state change
+        Assert.assertNull( "empty bin omitted", metrics.getMetricsCollectorSet(ServiceState.ENABLED) );
+
+        metrics.addRequest(null, null, null, true, true, 7, 3);
+        ServiceMetrics.MetricsCollectorSet set = metrics.getMetricsCollectorSet(ServiceState.ENABLED);
+        Assert.assertEquals( "attempted", 1, set.getSummaryMetrics().getNumAttemptedRequest() );
+        Assert.assertEquals( "max front", 7, set.getSummaryMetrics().getMaxFrontendResponseTime() );
+    }
+
+    @Test
+    public void testConcurrentRequestsDuringRollover() throws Exception {
+        final ServiceMetrics metrics = new ServiceMetrics(new Goid(0,1));
+        final int threads = 4;
+        final int requests = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<Thread>();
+        for ( int i=0; i<threads; i++ ) {
+            final Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for ( int r=0; r<requests; r++ ) {
+                        metrics.addRequest("op" + (r % 3), null, null, true, true, r % 100, 1);
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+
+        long total = 0;
+        start.countDown();
+        for ( Thread worker : workers ) {
+            while ( worker.isAlive() ) {
+                total += count(metrics.getMetricsCollectorSet(ServiceState.ENABLED));
+                worker.join(1);
+            }
+        }
+        total += count(metrics.getMetricsCollectorSet(ServiceState.ENABLED));
+
+        Assert.assertEquals( "all requests counted once", (long) threads * requests, total );
+    }
+
+    private static long count( final ServiceMetrics.MetricsCollectorSet set ) {
+        if ( set == null ) return 0L;
+        long detailTotal = 0L;
+        for ( ServiceMetrics.MetricsCollector collector : set.getDetailMetrics().values() ) {
+            detailTotal += collector.getNumAttemptedRequest();
+        }
+        Assert.assertEquals( "detail total", (long) set.getSummaryMetrics().getNumAttemptedRequest(), detailTotal );
+        return set.getSummaryMetrics().getNumAttemptedRequest();
+    }
 }
@@ -0,0 +1,262 @@
+package com.l7tech.server.service.resolution;
+
+import com.l7tech.gateway.common.audit.LoggingAudit;
+import com.l7tech.gateway.common.service.PublishedService;
+import com.l7tech.objectmodel.Goid;
+import com.l7tech.server.service.resolution.UriResolver.URIResolutionParam;
+import com.l7tech.test.BenchmarkRunner;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for URI resolution and the wildcard URI index.
+ */
+public class UriResolverTest {
+
+    @Test
+    public void testIndexPrefixMatches() {
+        final UriResolutionIndex index = index( "/a/*", "/a/b/*", "/ab*", "/b/*", "/a/b/c" );
+        assertEquals( set( "/a/*", "/a/b/*" ), matches( index, "/a/b/c" ) );
+        assertEquals( set( "/ab*" ), matches( index, "/abc" ) );
+        assertEquals( set( "/a/*" ), matches( index, "/a/" ) );
+        assertEquals( set( "/ab*" ), matches( index, "/ab" ) );
+        assertEquals( set(), matches( index, "/a" ) );
+        assertEquals( set(), matches( index, "" ) );
+        assertEquals( set(), matches( index, "/a/b\n" ) );
+    }
+
+    @Test
+    public void testIndexExtensionMatches() {
+        final UriResolutionIndex index = index( "/a/*.jsp", "/a/*/x*", "/*.do", "/a/*" );
+        assertEquals( set( "/a/*.jsp", "/a/*" ), matches( index, "/a/b/c.jsp" ) );
+        assertEquals( set( "/a/*/x*", "/a/*" ), matches( index, "/a/b/xyz" ) );
+        assertEquals( set( "/*.do" ), matches( index, "/b/action.do" ) );
+        assertEquals( set(), matches( index, "/b/action.jsp" ) );
+    }
+
+    @Test
+    public void testIndexGlobalWildcard() {
+        final UriResolutionIndex index = index( "/*", "/a/*" );
+        assertEquals( set( "/*" ), matches( index, "" ) );
+        assertEquals( set( "/*" ), matches( index, "other" ) );
+        assertEquals( set( "/*", "/a/*" ), matches( index, "/a/b" ) );
+
+        index.remove( new URIResolutionParam( "/*" ) );
+        assertEquals( set(), matches( index, "other" ) );
+    }
+
+    @Test
+    public void testIndexRemove() {
+        final UriResolutionIndex index = index( "/abc/*", "/abd/*", "/ab*", "/abcdef/*" );
+        index.remove( new URIResolutionParam( "/ab*" ) );
+        index.remove( new URIResolutionParam( "/abc/*" ) );
+        assertEquals( set( "/abd/*" ), matches( index, "/abd/x" ) );
+        assertEquals( set(), matches( index, "/abc/x" ) );
+        assertEquals( set( "/abcdef/*" ), matches( index, "/abcdef/x" ) );
+
+        index.remove( new URIResolutionParam( "/abd/*" ) );
+        index.remove( new URIResolutionParam( "/abcdef/*" ) );
+        assertEquals( set(), matches( index, "/abcdef/x" ) );
+
+        index.add( new URIResolutionParam( "/abc/*" ) );
+        assertEquals( set( "/abc/*" ), matches( index, "/abc/x" ) );
+    }
+
+    @Test
+    public void testIndexMatchesRegex() {
+        final Random random = new Random( 1234L );
+        final String alphabet = "/ab.*";
+        final List<URIResolutionParam> params = new ArrayList<URIResolutionParam>();
+        final UriResolutionIndex index = new UriResolutionIndex();
+        for ( int i=0; i<200; i++ ) {
+            final URIResolutionParam param = new URIResolutionParam( "/" + random( random, alphabet, 6 ) );
+            if ( param.hasWildcards && !params.contains( param ) ) {
+                params.add( param );
+                index.add( param );
+            }
+        }
+
+        for ( int i=0; i<2000; i++ ) {
+            final String value = "/" + random( random, "/ab.\n", 8 );
+            final Set<String> expected = new HashSet<String>();
+            for ( final URIResolutionParam param : params ) {
+                if ( param.globalWildcard || ((Pattern) param.pattern).matcher( value ).matches() ) {
+                    expected.add( param.uri );
+                }
+            }
+            assertEquals( "Matches for " + value, expected, matches( index, value ) );
+        }
+    }
+
+    @Test
+    public void testResolveLongestWildcard() throws Exception {
+        final UriResolver resolver = resolver( 100 );
+        final Collection<PublishedService> services = services( 100 );
+        services.add( service( 1000L, "/*" ) );
+        services.add( service( 1001L, "/service/5/*" ) );
+        services.add( service( 1002L, "/service/5/sub/*" ) );
+        services.add( service( 1003L, "/service/5/*.jsp" ) );
+        for ( final PublishedService service : services ) {
+            if ( service.getGoid().getLow() >= 1000L ) register( resolver, service );
+        }
+
+        assertEquals( new Goid( 0, 5L ), resolve( resolver, services, "/service/5" ) );
+        assertEquals( new Goid( 0, 1001L ), resolve( resolver, services, "/service/5/other" ) );
+        assertEquals( new Goid( 0, 1002L ), resolve( resolver, services, "/service/5/sub/other" ) );
+        assertEquals( new Goid( 0, 1001L ), resolve( resolver, services, "/service/5/page.jsp" ) );
+        assertEquals( new Goid( 0, 1000L ), resolve( resolver, services, "/other" ) );
+
+        final PublishedService deleted = service( 1002L, "/service/5/sub/*" );
+        resolver.serviceDeleted( deleted );
+        assertEquals( new Goid( 0, 1001L ), resolve( resolver, services, "/service/5/sub/other" ) );
+    }
+
+    @Test
+    public void testResolveSubset() throws Exception {
+        final UriResolver resolver = resolver( 0 );
+        final PublishedService wild = service( 1L, "/wild/*" );
+        final PublishedService wilder = service( 2L, "/wild/er/*" );
+        register( resolver, wild );
+        register( resolver, wilder );
+
+        assertEquals( new Goid( 0, 2L ), resolve( resolver, Arrays.asList( wild, wilder ), "/wild/er/path" ) );
+        assertEquals( new Goid( 0, 1L ), resolve( resolver, Collections.singletonList( wild ), "/wild/er/path" ) );
+    }
+
+    @Test
+    public void testResolveLongestTieInMapOrder() throws Exception {
+        final UriResolver resolver = resolver( 0 );
+        final PublishedService first = service( 1L, "/t/*/x*" );
+        final PublishedService second = service( 2L, "/t/a/*x" );
+        final List<PublishedService> services = Arrays.asList( first, second );
+        register( resolver, first );
+        register( resolver, second );
+
+        final Map<URIResolutionParam,PublishedService> mapOrder = new HashMap<URIResolutionParam,PublishedService>();
+        mapOrder.put( new URIResolutionParam( first.getRoutingUri() ), first );
+        mapOrder.put( new URIResolutionParam( second.getRoutingUri() ), second );
+        final PublishedService winner = mapOrder.values().iterator().next();
+        final PublishedService other = winner == first ? second : first;
+
+        assertEquals( winner.getGoid(), resolve( resolver, services, "/t/a/xx" ) );
+        assertEquals( winner.getGoid(), resolve( resolver, services, "/t/a/xyx" ) );
+
+        resolver.serviceDeleted( winner );
+        assertEquals( other.getGoid(), resolve( resolver, services, "/t/a/xx" ) );
+
+        register( resolver, winner );
+        assertEquals( winner.getGoid(), resolve( resolver, services, "/t/a/xx" ) );
+    }
+
+    /**
+     * Resolve against 10k synthetic services with a mix of exact, path and extension URIs.
+     */
+    @Test
+    @Ignore("Developer benchmark")
+    public void testPerformance_10k_Services() throws Exception {
+        final int serviceCount = 10000;
+        final UriResolver resolver = resolver( serviceCount );
+        final Collection<PublishedService> services = services( serviceCount );
+        for ( int i=0; i<serviceCount; i++ ) {
+            register( resolver, service( serviceCount + i, "/wild/" + i + "/*" ) );
+            register( resolver, service( serviceCount * 2 + i, "/ext/" + i + "/*.jsp" ) );
+        }
+        final Collection<PublishedService> allServices = new ArrayList<PublishedService>( services );
+        for ( int i=0; i<serviceCount; i++ ) {
+            allServices.add( service( serviceCount + i, "/wild/" + i + "/*" ) );
+            allServices.add( service( serviceCount * 2 + i, "/ext/" + i + "/*.jsp" ) );
+        }
+
+        final Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for ( int i=0; i<1000; i++ ) {
+                        resolve( resolver, allServices, "/wild/" + i + "/some/path" );
+                        resolve( resolver, allServices, "/ext/" + i + "/page.jsp" );
+                    }
+                } catch ( ServiceResolutionException e ) {
+                    throw new RuntimeException( e );
+                }
+            }
+        };
+        new BenchmarkRunner( r, 100, 10, "resolve 10k services" ).run();
+    }
+
+    //- PRIVATE
+
+    private static UriResolutionIndex index( final String... uris ) {
+        final UriResolutionIndex index = new UriResolutionIndex();
+        for ( final String uri : uris ) {
+            index.add( new URIResolutionParam( uri ) );
+        }
+        return index;
+    }
+
+    private static Set<String> matches( final UriResolutionIndex index, final String value ) {
+        final List<URIResolutionParam> matches = new ArrayList<URIResolutionParam>();
+        index.findMatches( value, matches );
+        final Set<String> uris = new HashSet<String>();
+        for ( final URIResolutionParam param : matches ) {
+            assertTrue( "Duplicate match " + param, uris.add( param.uri ) );
+        }
+        return uris;
+    }
+
+    private static Set<String> set( final String... values ) {
+        return new HashSet<String>( Arrays.asList( values ) );
+    }
+
+    private static String random( final Random random, final String alphabet, final int maxLength ) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = random.nextInt( maxLength + 1 );
+        for ( int i=0; i<length; i++ ) {
+            builder.append( alphabet.charAt( random.nextInt( alphabet.length() ) ) );
+        }
+        return builder.toString();
+    }
+
+    private static UriResolver resolver( final int serviceCount ) throws Exception {
+        final UriResolver resolver = new UriResolver( LoggingAudit.factory() );
+        for ( final PublishedService service : services( serviceCount ) ) {
+            register( resolver, service );
+        }
+        return resolver;
+    }
+
+    private static void register( final UriResolver resolver, final PublishedService service ) throws Exception {
+        resolver.updateServiceValues( service, resolver.buildTargetValues( service ) );
+    }
+
+    private static Collection<PublishedService> services( final int serviceCount ) {
+        final Collection<PublishedService> services = new ArrayList<PublishedService>();
+        for ( int i=0; i<serviceCount; i++ ) {
+            services.add( service( (long) i, "/service/" + i ) );
+        }
+        return services;
+    }
+
+    private static PublishedService service( final long id, final String uri ) {
+        final PublishedService service = new PublishedService();
+        service.setGoid( new Goid( 0, id ) );
+        service.setName( "Service " + id );
+        service.setRoutingUri( uri );
+        service.setSoap( false );
+        return service;
+    }
+
+    private static Goid resolve( final UriResolver resolver,
+                                 final Collection<PublishedService> services,
+                                 final String uri ) throws ServiceResolutionException {
+        final Map<String,Object> parameters = new HashMap<String,Object>();
+        parameters.put( resolver.PROP_VALUE, uri );
+        final Result result = resolver.resolve( parameters, services );
+        assertEquals( "Match count for " + uri, 1, result.getMatches().size() );
+        return result.getMatches().iterator().next().getGoid();
+    }
+}
@@ -0,0 +1,226 @@
+package com.l7tech.server.tomcat;
+
+import com.l7tech.common.io.PermissiveX509TrustManager;
+import com.l7tech.gateway.common.LicenseManager;
+import com.l7tech.gateway.common.security.keystore.SsgKeyEntry;
+import com.l7tech.gateway.common.transport.SsgConnector;
+import com.l7tech.objectmodel.Goid;
+import com.l7tech.security.cert.TestCertificateGenerator;
+import com.l7tech.server.DefaultKey;
+import com.l7tech.server.ServerConfigStub;
+import com.l7tech.server.identity.cert.TrustedCertServices;
+import com.l7tech.server.transport.SsgConnectorManager;
+import com.l7tech.server.transport.http.HttpTransportModule;
+import com.l7tech.server.transport.tls.SsgConnectorSslHelper;
+import com.l7tech.util.MasterPasswordManager;
+import com.l7tech.util.Pair;
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.http11.Http11NioProtocol;
+import org.apache.tomcat.util.net.NioChannel;
+import org.apache.tomcat.util.net.NioEndpoint;
+import org.apache.tomcat.util.net.SecureNioChannel;
+import org.apache.tomcat.util.net.SocketStatus;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the non-blocking endpoint and protocol handler.
+ */
+public class SsgNioEndpointTest {
+
+    private static final long TRANSPORT_MODULE_ID = 8723L;
+    private static final Goid CONNECTOR_GOID = new Goid( 0L, 1234L );
+
+    @Test
+    public void testProtocolDefaults() {
+        final Http11NioProtocol expected = new Http11NioProtocol();
+        final Http11NioProtocol protocol = new SsgHttp11NioProtocol();
+
+        assertEquals( "soTimeout", expected.getSoTimeout(), protocol.getSoTimeout() );
+        assertEquals( "soLinger", expected.getSoLinger(), protocol.getSoLinger() );
+        assertEquals( "tcpNoDelay", expected.getTcpNoDelay(), protocol.getTcpNoDelay() );
+    }
+
+    @Test
+    public void testConnectorAttributes() throws Exception {
+        final Connector connector = new Connector( SsgHttp11NioProtocol.class.getName() );
+        connector.setAttribute( HttpTransportModule.CONNECTOR_ATTR_TRANSPORT_MODULE_ID, Long.toString( TRANSPORT_MODULE_ID ) );
+        connector.setAttribute( HttpTransportModule.CONNECTOR_ATTR_CONNECTOR_OID, CONNECTOR_GOID.toString() );
+
+        assertTrue( connector.getProtocolHandler() instanceof SsgHttp11NioProtocol );
+        assertEquals( Long.toString( TRANSPORT_MODULE_ID ), connector.getProtocolHandler().getAttribute( HttpTransportModule.CONNECTOR_ATTR_TRANSPORT_MODULE_ID ) );
+        assertEquals( CONNECTOR_GOID.toString(), connector.getProtocolHandler().getAttribute( HttpTransportModule.CONNECTOR_ATTR_CONNECTOR_OID ) );
+    }
+
+    @Test
+    public void testConnectionIdentifiedForEachRequest() throws Exception {
+        final List<Long> connectionIds = new ArrayList<>();
+        final SsgServerSocketFactory.Listener listener = new SsgServerSocketFactory.Listener() {
+            @Override
+            public void onGetInputStream( final long transportModuleInstanceId, final Goid connectorGoid, final Socket accepted ) {
+                fail( "Unexpected blocking connection" );
+            }
+
+            @Override
+            public void onProcessConnection( final long transportModuleInstanceId, final Goid connectorGoid, final long connectionId ) {
+                if ( transportModuleInstanceId == TRANSPORT_MODULE_ID ) {
+                    assertEquals( CONNECTOR_GOID, connectorGoid );
+                    connectionIds.add( connectionId );
+                }
+            }
+        };
+        SsgServerSocketFactory.addListener( listener );
+
+        final List<String> calls = new ArrayList<>();
+        final SsgNioEndpoint endpoint = new SsgNioEndpoint();
+        endpoint.setConnectorIdentity( Long.toString( TRANSPORT_MODULE_ID ), CONNECTOR_GOID.toString() );
+        endpoint.setHandler( new NioEndpoint.Handler() {
+            @Override
+            public SocketState process( final NioChannel socket ) {
+                calls.add( "process" );
+                return SocketState.OPEN;
+            }
+
+            @Override
+            public SocketState event( final NioChannel socket, final SocketStatus status ) {
+                calls.add( "event" );
+                return SocketState.CLOSED;
+            }
+
+            @Override
+            public void releaseCaches() {
+                calls.add( "releaseCaches" );
+            }
+
+            @Override
+            public void release( final NioChannel socket ) {
+                calls.add( "release" );
+            }
+        } );
+
+        final NioChannel first = new NioChannel( SocketChannel.open(), null );
+        final NioChannel second = new NioChannel( SocketChannel.open(), null );
+        final NioEndpoint.Handler handler = endpoint.getHandler();
+        try {
+            handler.process( first );
+            handler.process( first );
+            handler.process( second );
+            handler.release( first );
+            handler.process( first );
+            handler.event( second, SocketStatus.OPEN );
+            handler.process( second );
+            handler.releaseCaches();
+        } finally {
+            SsgServerSocketFactory.removeListener( listener );
+            first.close();
+            second.close();
+        }
+
+        assertEquals( 6, connectionIds.size() );
+        assertEquals( "same connection", connectionIds.get( 0 ), connectionIds.get( 1 ) );
+        assertNotEquals( "other connection", connectionIds.get( 0 ), connectionIds.get( 2 ) );
+        assertNotEquals( "released connection", connectionIds.get( 0 ), connectionIds.get( 3 ) );
+        assertEquals( "same connection", connectionIds.get( 2 ), connectionIds.get( 4 ) );
+        assertNotEquals( "closed connection", connectionIds.get( 4 ), connectionIds.get( 5 ) );
+        assertEquals( "[process, process, process, release, process, event, process, releaseCaches]", calls.toString() );
+    }
+
+    @Test
+    public void testTlsHandshake() throws Exception {
+        final Pair<X509Certificate, PrivateKey> keys = new TestCertificateGenerator().subject( "cn=localhost" ).keySize( 1024 ).generateWithKey();
+        final SsgKeyEntry keyEntry = new SsgKeyEntry( Goid.DEFAULT_GOID, "ALIAS", new X509Certificate[]{ keys.left }, keys.right );
+        final SsgConnector connector = new SsgConnector( CONNECTOR_GOID, "nio https", freePort(), SsgConnector.SCHEME_HTTPS, true, SsgConnector.Endpoint.MESSAGE_INPUT.name(), SsgConnector.CLIENT_AUTH_NEVER, null, null );
+        connector.putProperty( SsgConnector.PROP_TLS_PROTOCOLS, "TLSv1.2" );
+        connector.putProperty( SsgConnector.PROP_NON_BLOCKING_IO, "true" );
+
+        final HttpTransportModule module = Mockito.spy( new HttpTransportModule(
+                new ServerConfigStub(),
+                Mockito.mock( MasterPasswordManager.class ),
+                Mockito.mock( DefaultKey.class ),
+                Mockito.mock( LicenseManager.class ),
+                Mockito.mock( SsgConnectorManager.class ),
+                Mockito.mock( TrustedCertServices.class ) ) );
+        Mockito.doReturn( keyEntry ).when( module ).getKeyEntry( connector );
+
+        final BlockingQueue<NioChannel> processed = new ArrayBlockingQueue<>( 1 );
+        final SsgNioEndpoint endpoint = new SsgNioEndpoint() {
+            @Override
+            SsgConnectorSslHelper createSslHelper() throws Exception {
+                return new SsgConnectorSslHelper( module, connector );
+            }
+        };
+        endpoint.setPort( connector.getPort() );
+        endpoint.setSSLEnabled( true );
+        endpoint.setHandler( new NioEndpoint.Handler() {
+            @Override
+            public SocketState process( final NioChannel socket ) {
+                processed.offer( socket );
+                return SocketState.CLOSED;
+            }
+
+            @Override
+            public SocketState event( final NioChannel socket, final SocketStatus status ) {
+                return SocketState.CLOSED;
+            }
+
+            @Override
+            public void releaseCaches() {
+            }
+
+            @Override
+            public void release( final NioChannel socket ) {
+            }
+        } );
+
+        endpoint.init();
+        endpoint.start();
+        try {
+            final SSLContext clientContext = SSLContext.getInstance( "TLS" );
+            clientContext.init( null, new TrustManager[]{ new PermissiveX509TrustManager() }, null );
+            try ( final SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket( "localhost", connector.getPort() ) ) {
+                socket.setSoTimeout( 10000 );
+                socket.startHandshake();
+
+                final SSLSession session = socket.getSession();
+                assertEquals( "protocol", "TLSv1.2", session.getProtocol() );
+                assertEquals( "server certificate", keys.left, session.getPeerCertificates()[0] );
+
+                final OutputStream out = socket.getOutputStream();
+                out.write( "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes( StandardCharsets.ISO_8859_1 ) );
+                out.flush();
+
+                final NioChannel channel = processed.poll( 10, TimeUnit.SECONDS );
+                assertNotNull( "connection processed", channel );
+                assertTrue( "secure channel", channel instanceof SecureNioChannel );
+            }
+        } finally {
+            endpoint.stop();
+            endpoint.destroy();
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try ( final ServerSocket serverSocket = new ServerSocket( 0 ) ) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
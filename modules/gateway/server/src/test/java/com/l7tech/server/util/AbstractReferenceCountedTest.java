@@ -0,0 +1,45 @@
+package com.l7tech.server.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reference counting.
+ */
+public class AbstractReferenceCountedTest {
+
+    @Test
+    public void testCloseOnLastUnref() {
+        final TestReferenceCounted counted = new TestReferenceCounted();
+        final Handle<TestReferenceCounted> handle1 = counted.ref();
+        final Handle<TestReferenceCounted> handle2 = counted.tryRef();
+        assertNotNull( handle2 );
+
+        handle1.close();
+        assertFalse( counted.isClosed() );
+        handle2.close();
+        assertTrue( counted.isClosed() );
+    }
+
+    @Test
+    public void testTryRefWhenClosed() {
+        final TestReferenceCounted counted = new TestReferenceCounted();
+        assertNull( "No references yet", counted.tryRef() );
+
+        counted.ref().close();
+        assertTrue( counted.isClosed() );
+        assertNull( "Closed", counted.tryRef() );
+    }
+
+    private static final class TestReferenceCounted extends AbstractReferenceCounted<Handle<TestReferenceCounted>> {
+        @Override
+        protected Handle<TestReferenceCounted> createHandle() {
+            return new Handle<TestReferenceCounted>( this );
+        }
+
+        @Override
+        protected void doClose() {
+        }
+    }
+}
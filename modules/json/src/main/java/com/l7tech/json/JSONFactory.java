@@ -20,6 +20,10 @@ public enum JSONFactory {
 
     private static final String UNSUPPORTED_SCHEMA_VERSION = "Unsupported schema version: ";
 
+    // Mappers are thread safe once configured, and are expensive to create
+    private static final org.codehaus.jackson.map.ObjectMapper OBJECT_MAPPER_V2 = new org.codehaus.jackson.map.ObjectMapper();
+    private static final com.fasterxml.jackson.databind.ObjectMapper OBJECT_MAPPER_V4 = new com.fasterxml.jackson.databind.ObjectMapper();
+
     /**
      * Returns an object-based representation of your JSON object string provided in argument {@code jsonData}.
      * The reason that a {@link JsonSchemaVersion version} argument is needed is that the validator we are using
@@ -48,13 +52,11 @@ public enum JSONFactory {
 
     @NotNull
     private JacksonJsonDataCodehaus buildJsonDataV2(final String jsonData) {
-        final org.codehaus.jackson.map.ObjectMapper OBJECT_MAPPER_V2 = new org.codehaus.jackson.map.ObjectMapper();
         return new JacksonJsonDataCodehaus(OBJECT_MAPPER_V2, jsonData);
     }
 
     @NotNull
     private JacksonJsonDataFasterxml buildJsonDataV4(final String jsonData) {
-        final com.fasterxml.jackson.databind.ObjectMapper OBJECT_MAPPER_V4 = new com.fasterxml.jackson.databind.ObjectMapper();
         return new JacksonJsonDataFasterxml(OBJECT_MAPPER_V4, jsonData);
     }
 
@@ -25,4 +25,16 @@ public interface JSONSchema {
      * @throws InvalidJsonException if the JSON schema is invalid JSON data.
      */
     List<String> validate(JSONData jsonData) throws InvalidJsonException;
+
+    /**
+     * Check if this schema validates JSON data while parsing.
+     *
+     * When true there is no benefit in parsing JSON data before validation, data that is not well formed will cause
+     * validation to fail with an InvalidJsonException.
+     *
+     * @return true if validation does not require a parsed representation of the JSON data
+     */
+    default boolean isStreaming() {
+        return false;
+    }
 }
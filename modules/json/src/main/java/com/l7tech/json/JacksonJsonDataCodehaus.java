@@ -35,7 +35,7 @@ public class JacksonJsonDataCodehaus implements JSONData {
 
     @Override
     public Object getJsonObject() throws InvalidJsonException {
-        getJsonThing(() -> {
+        getJsonThing(jsonPojo, () -> {
             final Object pojo = mapper.readValue(jsonData, Object.class);
             final POJONode pojoNode = JsonNodeFactory.instance.POJONode(pojo);
             jsonPojo.compareAndSet(null, pojoNode.getPojo());
@@ -46,12 +46,15 @@ public class JacksonJsonDataCodehaus implements JSONData {
 
     @Override
     public JsonNode getJsonNode() throws InvalidJsonException {
-        getJsonThing(() -> jsonNode.compareAndSet(null, mapper.readTree(jsonData)));
+        getJsonThing(jsonNode, () -> jsonNode.compareAndSet(null, mapper.readTree(jsonData)));
         return jsonNode.get();
     }
 
-    private void getJsonThing(JSONDataCommand command) throws InvalidJsonException {
-        if(jsonNode.get() == null){
+    /**
+     * Run the command to create a representation unless it has already been created.
+     */
+    private void getJsonThing(AtomicReference<?> representation, JSONDataCommand command) throws InvalidJsonException {
+        if (representation.get() == null) {
             try {
                 command.execute();
             } catch (IOException e) {
@@ -37,18 +37,40 @@ public class JacksonJsonDataFasterxml implements JSONData {
 
     @Override
     public Object getJsonObject() throws InvalidJsonException {
-        getJsonThing(() -> jsonPojo.compareAndSet(null, readValue()));
+        getJsonThing(jsonPojo, () -> jsonPojo.compareAndSet(null, readValue()));
         return jsonPojo.get();
     }
 
     @Override
     public JsonNode getJsonNode() throws InvalidJsonException {
-        getJsonThing(() -> jsonNode.compareAndSet(null, readTree()));
+        getJsonThing(jsonNode, () -> jsonNode.compareAndSet(null, readTree()));
         return jsonNode.get();
     }
 
-    private void getJsonThing(JSONDataCommand command) throws InvalidJsonException {
-        if (jsonNode.get() == null) {
+    /**
+     * Check if the tree representation of the data has been created.
+     *
+     * @return true if the JsonNode is available without parsing
+     */
+    boolean isJsonNodeParsed() {
+        return jsonNode.get() != null;
+    }
+
+    /**
+     * Create a parser for the data, the caller is responsible for closing the parser.
+     *
+     * @return The new parser
+     * @throws IOException if the parser cannot be created
+     */
+    JsonParser createParser() throws IOException {
+        return mapper.getFactory().createParser(jsonSchemaString);
+    }
+
+    /**
+     * Run the command to create a representation unless it has already been created.
+     */
+    private void getJsonThing(AtomicReference<?> representation, JSONDataCommand command) throws InvalidJsonException {
+        if (representation.get() == null) {
             try {
                 command.execute();
             } catch (IOException e) {
@@ -58,7 +80,7 @@ public class JacksonJsonDataFasterxml implements JSONData {
     }
 
     private Object readValue() throws IOException {
-        final JsonParser parser = mapper.getFactory().createParser(jsonSchemaString);
+        final JsonParser parser = createParser();
 
         final Object jsonObj;
         try {
@@ -73,7 +95,7 @@ public class JacksonJsonDataFasterxml implements JSONData {
     }
 
     private JsonNode readTree() throws IOException, InvalidJsonException {
-        final JsonParser parser = mapper.getFactory().createParser(jsonSchemaString);
+        final JsonParser parser = createParser();
         final JsonNode jsonNode;
 
         try {
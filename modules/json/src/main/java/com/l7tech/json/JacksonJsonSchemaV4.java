@@ -1,14 +1,18 @@
 package com.l7tech.json;
 
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.l7tech.util.ConfigFactory;
 import com.networknt.schema.JsonSchema;
 import com.networknt.schema.JsonSchemaException;
 import com.networknt.schema.JsonSchemaFactory;
 import com.networknt.schema.ValidationMessage;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -18,22 +22,35 @@ import java.util.List;
  *
  * If any issues arise, then the JacksonSchema instance variable should be removed and an instance created inside of
  * validate to guarantee thread safety.
+ *
+ * Data that has not been parsed is validated while parsing when the schema permits, the tree is only created when the
+ * data is not valid so that the validation messages are unchanged.
  */
 class JacksonJsonSchemaV4 implements JSONSchema {
 
     private static final String MESSAGE_ILLEGAL_TYPE = "jsonData in not an instance of "
             + JacksonJsonDataFasterxml.class.getCanonicalName();
 
+    private static final boolean STREAMING_ENABLED = ConfigFactory.getBooleanProperty("com.l7tech.json.streamingSchemaValidation", true);
+
     private final JsonSchema jacksonSchema;
     private final JsonNode jsonNode;
+    private final StreamingJsonSchema streamingSchema;
 
     JacksonJsonSchemaV4(final JacksonJsonDataFasterxml jsonData) throws InvalidJsonException {
         this.jsonNode = jsonData.getJsonNode();
+        final JsonSchemaFactory factory = new JsonSchemaFactory(new ObjectMapper(), new ConnectionBlockingUrlResolver());
         try {
-            this.jacksonSchema = new JsonSchemaFactory(new ObjectMapper(), new ConnectionBlockingUrlResolver()).getSchema(jsonNode);
+            this.jacksonSchema = factory.getSchema(jsonNode);
         } catch (JsonSchemaException e) {
             throw new InvalidJsonException(e);
         }
+        this.streamingSchema = STREAMING_ENABLED ? StreamingJsonSchema.compile(jsonNode, factory) : null;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return streamingSchema != null;
     }
 
     @Override
@@ -42,10 +59,23 @@ class JacksonJsonSchemaV4 implements JSONSchema {
             throw new IllegalArgumentException(MESSAGE_ILLEGAL_TYPE);
         }
 
+        final JacksonJsonDataFasterxml data = (JacksonJsonDataFasterxml) jsonData;
+        if (streamingSchema != null && !data.isJsonNodeParsed() && isValidStreaming(data)) {
+            return Collections.emptyList();
+        }
+
         final List<String> result = new ArrayList<>();
         for (ValidationMessage message : jacksonSchema.validate(jsonData.getJsonNode())) {
             result.add(message.getMessage());
         }
         return result;
     }
+
+    private boolean isValidStreaming(final JacksonJsonDataFasterxml jsonData) {
+        try (final JsonParser parser = jsonData.createParser()) {
+            return streamingSchema.isValid(parser);
+        } catch (IOException e) {
+            return false; // not well formed, the tree validation reports the error
+        }
+    }
 }
\ No newline at end of file
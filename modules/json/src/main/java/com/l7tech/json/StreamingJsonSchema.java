@@ -0,0 +1,489 @@
+package com.l7tech.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.ValidatorTypeCode;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Validates JSON data against a (draft v4) JSON Schema while parsing, without building a tree for the data.
+ *
+ * The schema is compiled once into an immutable graph. Structural keywords (type, properties, required, items, etc)
+ * are checked as the parser advances and any value not constrained by the schema is skipped. Keywords for scalar
+ * values are checked by the schema library against a node created for each scalar value only.
+ *
+ * Only keywords that can be checked with exactly the same outcome as tree validation are supported, a schema using
+ * any other keyword is not compiled. A document that is not valid (or not well formed) should be validated using the
+ * tree to obtain the validation messages.
+ */
+final class StreamingJsonSchema {
+
+    private static final int TYPE_OBJECT = 1;
+    private static final int TYPE_ARRAY = 1 << 1;
+    private static final int TYPE_STRING = 1 << 2;
+    private static final int TYPE_INTEGER = 1 << 3;
+    private static final int TYPE_NUMBER = 1 << 4;
+    private static final int TYPE_BOOLEAN = 1 << 5;
+    private static final int TYPE_NULL = 1 << 6;
+    private static final int TYPE_ANY = TYPE_OBJECT | TYPE_ARRAY | TYPE_STRING | TYPE_INTEGER | TYPE_NUMBER | TYPE_BOOLEAN | TYPE_NULL;
+
+    private static final Map<String, Integer> TYPES;
+    static {
+        final Map<String, Integer> types = new HashMap<>();
+        types.put("object", TYPE_OBJECT);
+        types.put("array", TYPE_ARRAY);
+        types.put("string", TYPE_STRING);
+        types.put("integer", TYPE_INTEGER);
+        types.put("number", TYPE_NUMBER | TYPE_INTEGER);
+        types.put("boolean", TYPE_BOOLEAN);
+        types.put("null", TYPE_NULL);
+        types.put("any", TYPE_ANY);
+        TYPES = Collections.unmodifiableMap(types);
+    }
+
+    private static final Set<String> SCALAR_KEYWORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "minLength", "maxLength", "pattern", "format", "minimum", "maximum", "multipleOf", "enum")));
+    private static final String[] SCALAR_MODIFIERS = {"exclusiveMinimum", "exclusiveMaximum"};
+
+    private static final Set<String> KEYWORDS;
+    static {
+        final Set<String> keywords = new HashSet<>();
+        for (final ValidatorTypeCode code : ValidatorTypeCode.values()) {
+            keywords.add(code.getValue());
+        }
+        KEYWORDS = Collections.unmodifiableSet(keywords);
+    }
+
+    private final Schema root;
+
+    private StreamingJsonSchema(final Schema root) {
+        this.root = root;
+    }
+
+    /**
+     * Compile the given schema for streaming validation.
+     *
+     * @param schemaNode The JSON schema
+     * @param factory The factory for schemas for scalar values
+     * @return The compiled schema or null if the schema cannot be used for streaming validation
+     */
+    static StreamingJsonSchema compile(final JsonNode schemaNode, final JsonSchemaFactory factory) {
+        try {
+            return new StreamingJsonSchema(new Compiler(schemaNode, factory).compile(schemaNode));
+        } catch (UnsupportedSchemaException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Validate the JSON data from the given parser.
+     *
+     * <p>The parser is not closed and should be discarded after use.</p>
+     *
+     * @param parser The parser for the data
+     * @return true if the data is well formed and valid, false if it must be validated using a tree
+     * @throws IOException if an error occurs reading the data
+     */
+    boolean isValid(final JsonParser parser) throws IOException {
+        final JsonToken token = parser.nextToken();
+        if (token == null) return false;
+
+        final List<Schema> schemas = new ArrayList<>();
+        expand(root, schemas);
+        return validate(parser, token, schemas) && parser.nextToken() == null;
+    }
+
+    private static boolean validate(final JsonParser parser, final JsonToken token, final List<Schema> schemas) throws IOException {
+        final int type = typeOf(parser, token);
+        final boolean scalar = type != TYPE_OBJECT && type != TYPE_ARRAY;
+        JsonNode value = null;
+        for (final Schema schema : schemas) {
+            if ((schema.types & type) == 0) return false;
+            if (schema.required != null && type != TYPE_OBJECT) return false; // required is not met by non-objects
+            if (scalar && schema.scalarSchema != null) {
+                if (value == null) value = scalarNode(parser, token);
+                if (!schema.scalarSchema.validate(value).isEmpty()) return false;
+            }
+        }
+
+        switch (token) {
+            case START_OBJECT:
+                return validateObject(parser, schemas);
+            case START_ARRAY:
+                return validateArray(parser, schemas);
+            default:
+                return true;
+        }
+    }
+
+    private static boolean validateObject(final JsonParser parser, final List<Schema> schemas) throws IOException {
+        // Duplicate names are validated each time, but only count once since the tree keeps the last value
+        Set<String> names = null;
+        for (final Schema schema : schemas) {
+            if (schema.countsProperties()) {
+                names = new HashSet<>();
+                break;
+            }
+        }
+
+        final List<Schema> children = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            if (names != null) names.add(name);
+
+            children.clear();
+            for (final Schema schema : schemas) {
+                if (!schema.propertySchemas(name, children)) return false;
+            }
+
+            token = parser.nextToken();
+            if (children.isEmpty()) {
+                parser.skipChildren();
+            } else if (!validate(parser, token, children)) {
+                return false;
+            }
+        }
+        if (token != JsonToken.END_OBJECT) return false;
+
+        if (names != null) {
+            for (final Schema schema : schemas) {
+                if (schema.required != null && !names.containsAll(schema.required)) return false;
+                if (names.size() < schema.minProperties || names.size() > schema.maxProperties) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean validateArray(final JsonParser parser, final List<Schema> schemas) throws IOException {
+        final List<Schema> items = new ArrayList<>();
+        for (final Schema schema : schemas) {
+            if (schema.items != null) expand(schema.items, items);
+        }
+
+        int count = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) return false;
+            count++;
+            if (items.isEmpty()) {
+                parser.skipChildren();
+            } else if (!validate(parser, token, items)) {
+                return false;
+            }
+        }
+
+        for (final Schema schema : schemas) {
+            if (count < schema.minItems || count > schema.maxItems) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Add the schema and any schemas it references, skipping schemas that do not constrain values.
+     */
+    private static void expand(final Schema schema, final List<Schema> schemas) {
+        if (!schema.constrained) return;
+        for (final Schema existing : schemas) {
+            if (existing == schema) return;
+        }
+        schemas.add(schema);
+        for (final Schema reference : schema.references) {
+            expand(reference, schemas);
+        }
+    }
+
+    private static int typeOf(final JsonParser parser, final JsonToken token) {
+        switch (token) {
+            case START_OBJECT:
+                return TYPE_OBJECT;
+            case START_ARRAY:
+                return TYPE_ARRAY;
+            case VALUE_STRING:
+                return TYPE_STRING;
+            case VALUE_NUMBER_INT:
+                return TYPE_INTEGER;
+            case VALUE_NUMBER_FLOAT:
+                return TYPE_NUMBER;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return TYPE_BOOLEAN;
+            case VALUE_NULL:
+                return TYPE_NULL;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Create the node for a scalar value, as the mapper would when reading a tree.
+     */
+    private static JsonNode scalarNode(final JsonParser parser, final JsonToken token) throws IOException {
+        final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+        switch (token) {
+            case VALUE_STRING:
+                return nodeFactory.textNode(parser.getText());
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return nodeFactory.numberNode(parser.getIntValue());
+                    case LONG:
+                        return nodeFactory.numberNode(parser.getLongValue());
+                    default:
+                        return nodeFactory.numberNode(parser.getBigIntegerValue());
+                }
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL ?
+                        nodeFactory.numberNode(parser.getDecimalValue()) :
+                        nodeFactory.numberNode(parser.getDoubleValue());
+            case VALUE_TRUE:
+                return nodeFactory.booleanNode(true);
+            case VALUE_FALSE:
+                return nodeFactory.booleanNode(false);
+            default:
+                return nodeFactory.nullNode();
+        }
+    }
+
+    /**
+     * Compiled form of a (sub)schema, not modified once compilation completes.
+     */
+    private static final class Schema {
+        private boolean constrained;
+        private int types = TYPE_ANY;
+        private final List<Schema> references = new ArrayList<>();
+        private final Map<String, Schema> properties = new HashMap<>();
+        private final List<Pattern> patterns = new ArrayList<>();
+        private final List<Schema> patternSchemas = new ArrayList<>();
+        private boolean additionalAllowed = true;
+        private Schema additionalSchema;
+        private Set<String> required;
+        private int minProperties = 0;
+        private int maxProperties = Integer.MAX_VALUE;
+        private Schema items;
+        private int minItems = 0;
+        private int maxItems = Integer.MAX_VALUE;
+        private JsonSchema scalarSchema;
+
+        private boolean countsProperties() {
+            return required != null || minProperties > 0 || maxProperties < Integer.MAX_VALUE;
+        }
+
+        /**
+         * Add the schemas for the named property.
+         *
+         * @return false if the property is not permitted
+         */
+        private boolean propertySchemas(final String name, final List<Schema> schemas) {
+            boolean matched = false;
+            final Schema property = properties.get(name);
+            if (property != null) {
+                expand(property, schemas);
+                matched = true;
+            }
+            for (int i = 0; i < patterns.size(); i++) {
+                if (patterns.get(i).matcher(name).find()) {
+                    expand(patternSchemas.get(i), schemas);
+                    matched = true;
+                }
+            }
+            if (!matched && !name.startsWith("#")) { // additionalProperties ignores names starting with #
+                if (!additionalAllowed) return false;
+                if (additionalSchema != null) expand(additionalSchema, schemas);
+            }
+            return true;
+        }
+    }
+
+    private static final class Compiler {
+        private final JsonNode rootNode;
+        private final JsonSchemaFactory factory;
+        private final Map<JsonNode, Schema> compiled = new IdentityHashMap<>();
+
+        private Compiler(final JsonNode rootNode, final JsonSchemaFactory factory) {
+            this.rootNode = rootNode;
+            this.factory = factory;
+        }
+
+        private Schema compile(final JsonNode node) throws UnsupportedSchemaException {
+            Schema schema = compiled.get(node);
+            if (schema != null) return schema;
+
+            schema = new Schema();
+            compiled.put(node, schema);
+            if (!node.isObject()) return schema; // not a schema, anything is valid
+
+            ObjectNode scalarNode = null;
+            boolean hasType = false;
+            final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                final String keyword = field.getKey();
+                final JsonNode value = field.getValue();
+
+                if (keyword.startsWith("$")) {
+                    if ("$ref".equals(keyword) && !node.has("ref")) {
+                        reference(schema, value);
+                    } else if (KEYWORDS.contains(keyword.substring(1))) {
+                        throw new UnsupportedSchemaException(keyword);
+                    }
+                    continue;
+                }
+
+                switch (keyword) {
+                    case "type":
+                        schema.types = types(value);
+                        hasType = true;
+                        break;
+                    case "ref":
+                        if (node.has("$ref")) throw new UnsupportedSchemaException(keyword);
+                        reference(schema, value);
+                        break;
+                    case "properties":
+                        for (final Iterator<Map.Entry<String, JsonNode>> properties = objectValue(keyword, value).fields(); properties.hasNext(); ) {
+                            final Map.Entry<String, JsonNode> property = properties.next();
+                            schema.properties.put(property.getKey(), compile(property.getValue()));
+                        }
+                        break;
+                    case "patternProperties":
+                        for (final Iterator<Map.Entry<String, JsonNode>> properties = objectValue(keyword, value).fields(); properties.hasNext(); ) {
+                            final Map.Entry<String, JsonNode> property = properties.next();
+                            schema.patterns.add(Pattern.compile(property.getKey()));
+                            schema.patternSchemas.add(compile(property.getValue()));
+                        }
+                        break;
+                    case "additionalProperties":
+                        if (value.isBoolean()) {
+                            schema.additionalAllowed = value.booleanValue();
+                        } else {
+                            schema.additionalSchema = compile(objectValue(keyword, value));
+                        }
+                        break;
+                    case "required":
+                        if (value.isArray() && value.size() > 0) {
+                            schema.required = new HashSet<>();
+                            for (final JsonNode name : value) {
+                                schema.required.add(name.asText());
+                            }
+                        }
+                        break;
+                    case "minProperties":
+                        schema.minProperties = limit(keyword, value);
+                        break;
+                    case "maxProperties":
+                        schema.maxProperties = limit(keyword, value);
+                        break;
+                    case "items":
+                        schema.items = compile(objectValue(keyword, value));
+                        break;
+                    case "minItems":
+                        schema.minItems = limit(keyword, value);
+                        break;
+                    case "maxItems":
+                        schema.maxItems = limit(keyword, value);
+                        break;
+                    default:
+                        if (SCALAR_KEYWORDS.contains(keyword)) {
+                            if (scalarNode == null) scalarNode = JsonNodeFactory.instance.objectNode();
+                            scalarNode.set(keyword, value);
+                        } else if (KEYWORDS.contains(keyword)) {
+                            throw new UnsupportedSchemaException(keyword);
+                        }
+                        break;
+                }
+            }
+
+            if (scalarNode != null) {
+                if (scalarNode.has("enum") && (!hasType || (schema.types & (TYPE_OBJECT | TYPE_ARRAY)) != 0)) {
+                    throw new UnsupportedSchemaException("enum");
+                }
+                for (final String modifier : SCALAR_MODIFIERS) {
+                    if (node.has(modifier)) scalarNode.set(modifier, node.get(modifier));
+                }
+                schema.scalarSchema = factory.getSchema(scalarNode);
+            }
+
+            schema.constrained = node.size() > 0 && (
+                    schema.types != TYPE_ANY || !schema.references.isEmpty() || !schema.properties.isEmpty() ||
+                    !schema.patterns.isEmpty() || !schema.additionalAllowed || schema.additionalSchema != null ||
+                    schema.required != null || schema.countsProperties() || schema.items != null ||
+                    schema.minItems > 0 || schema.maxItems < Integer.MAX_VALUE || schema.scalarSchema != null);
+            return schema;
+        }
+
+        /**
+         * Add a local reference, an unresolved reference does not constrain values.
+         */
+        private void reference(final Schema schema, final JsonNode value) throws UnsupportedSchemaException {
+            if (!value.isTextual()) throw new UnsupportedSchemaException("$ref");
+
+            final String reference = value.textValue();
+            JsonNode node = rootNode;
+            if (reference.startsWith("#/")) {
+                for (final String part : reference.substring(2).split("/")) {
+                    final String name;
+                    try {
+                        name = URLDecoder.decode(part, "utf-8");
+                    } catch (UnsupportedEncodingException e) {
+                        throw new UnsupportedSchemaException("$ref");
+                    }
+                    node = name.matches("^[0-9]+$") ? node.get(Integer.parseInt(name)) : node.get(name);
+                    if (node == null) return;
+                }
+            } else if (!"#".equals(reference)) {
+                throw new UnsupportedSchemaException("$ref");
+            }
+            schema.references.add(compile(node));
+        }
+
+        private static JsonNode objectValue(final String keyword, final JsonNode value) throws UnsupportedSchemaException {
+            if (!value.isObject()) throw new UnsupportedSchemaException(keyword);
+            return value;
+        }
+
+        private static int limit(final String keyword, final JsonNode value) throws UnsupportedSchemaException {
+            if (!value.isIntegralNumber()) throw new UnsupportedSchemaException(keyword);
+            return value.intValue();
+        }
+
+        private static int types(final JsonNode value) throws UnsupportedSchemaException {
+            if (value.isTextual()) {
+                final Integer type = TYPES.get(value.textValue());
+                return type == null ? 0 : type; // an unknown type is never valid
+            } else if (value.isArray()) {
+                int types = 0;
+                for (final JsonNode type : value) {
+                    if (!type.isTextual()) throw new UnsupportedSchemaException("type");
+                    types |= types(type);
+                }
+                return types;
+            }
+            throw new UnsupportedSchemaException("type");
+        }
+    }
+
+    private static final class UnsupportedSchemaException extends Exception {
+        private UnsupportedSchemaException(final String keyword) {
+            super(keyword);
+        }
+    }
+}
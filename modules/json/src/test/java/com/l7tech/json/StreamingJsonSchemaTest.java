@@ -0,0 +1,137 @@
+package com.l7tech.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.JsonSchemaFactory;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for streaming JSON schema validation, results must match tree validation.
+ */
+public class StreamingJsonSchemaTest {
+
+    private static final String[] SCHEMAS = {
+            "{\"type\":\"object\",\"properties\":{\"id\":{\"type\":\"integer\",\"minimum\":1},\"name\":{\"type\":\"string\",\"maxLength\":3}},\"required\":[\"id\"],\"additionalProperties\":false}",
+            "{\"type\":\"array\",\"items\":{\"type\":[\"number\",\"null\"],\"maximum\":10,\"exclusiveMaximum\":true},\"minItems\":1,\"maxItems\":3}",
+            "{\"required\":[\"a\"],\"minProperties\":1,\"maxProperties\":2,\"patternProperties\":{\"^x\":{\"type\":\"boolean\"}},\"additionalProperties\":{\"type\":\"string\"}}",
+            "{\"definitions\":{\"node\":{\"type\":\"object\",\"properties\":{\"next\":{\"$ref\":\"#/definitions/node\"},\"v\":{\"enum\":[1,\"a\"],\"type\":[\"integer\",\"string\"]}}}},\"$ref\":\"#/definitions/node\"}",
+            "{\"type\":\"object\",\"properties\":{\"child\":{\"$ref\":\"#\"},\"s\":{\"pattern\":\"^[a-z]+$\",\"format\":\"email\"}}}",
+            "{\"type\":\"integer\",\"multipleOf\":3}",
+    };
+
+    private static final String[] DOCUMENTS = {
+            "{\"id\":1,\"name\":\"abc\"}",
+            "{\"id\":0}",
+            "{\"id\":1,\"name\":\"abcd\"}",
+            "{\"id\":1,\"other\":true}",
+            "{\"name\":\"a\"}",
+            "{\"a\":\"x\",\"xy\":true,\"b\":\"c\"}",
+            "{\"a\":\"x\",\"xy\":1}",
+            "{\"a\":\"x\",\"#x\":1}",
+            "{\"b\":\"x\"}",
+            "{}",
+            "[1,2.5,null]",
+            "[10]",
+            "[]",
+            "[1,2,3,4]",
+            "[\"1\"]",
+            "{\"v\":1,\"next\":{\"v\":\"a\",\"next\":{\"v\":2}}}",
+            "{\"v\":1.0}",
+            "{\"child\":{\"child\":{\"s\":\"abc\"}}}",
+            "{\"child\":{\"s\":\"a@b.com\"}}",
+            "{\"child\":[]}",
+            "9",
+            "10",
+            "9.0",
+            "\"text\"",
+            "null",
+            "{\"id\":1} {}",
+            "{\"id\":1",
+    };
+
+    // The tree keeps the last value for a duplicate name, streaming validates every value
+    private static final String[] DUPLICATE_NAME_DOCUMENTS = {
+            "{\"id\":\"1\",\"id\":1}",
+            "{\"id\":1,\"id\":\"1\"}",
+            "{\"a\":\"x\",\"a\":\"y\"}",
+            "{\"a\":\"x\",\"a\":1}",
+    };
+
+    @Test
+    public void testSameResultsAsTree() throws Exception {
+        for (final String schemaText : SCHEMAS) {
+            final JacksonJsonSchemaV4 treeSchema = new JacksonJsonSchemaV4(data(schemaText));
+            final StreamingJsonSchema streamingSchema = compile(schemaText);
+            assertNotNull(schemaText, streamingSchema);
+
+            for (final String document : DOCUMENTS) {
+                assertEquals(schemaText + " " + document, isValidTree(treeSchema, document), isValidStreaming(streamingSchema, document));
+            }
+            for (final String document : DUPLICATE_NAME_DOCUMENTS) {
+                if (isValidStreaming(streamingSchema, document)) {
+                    assertTrue(schemaText + " " + document, isValidTree(treeSchema, document));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedSchemas() throws Exception {
+        assertNull(compile("{\"anyOf\":[{\"type\":\"string\"},{\"type\":\"integer\"}]}"));
+        assertNull(compile("{\"items\":[{\"type\":\"string\"}]}"));
+        assertNull(compile("{\"enum\":[{\"a\":1}]}"));
+        assertNull(compile("{\"$ref\":\"http://example.com/schema\"}"));
+        assertNotNull(compile("{\"$schema\":\"http://json-schema.org/draft-04/schema#\",\"description\":\"text\"}"));
+    }
+
+    @Test
+    public void testValidateUsesStreaming() throws Exception {
+        final JacksonJsonSchemaV4 schema = new JacksonJsonSchemaV4(data(SCHEMAS[0]));
+        assertTrue(schema.isStreaming());
+
+        final JacksonJsonDataFasterxml valid = data("{\"id\":1}");
+        assertTrue(schema.validate(valid).isEmpty());
+        assertFalse("Tree created", valid.isJsonNodeParsed());
+
+        final JacksonJsonDataFasterxml invalid = data("{\"id\":0}");
+        assertEquals(1, schema.validate(invalid).size());
+        assertTrue("Tree created", invalid.isJsonNodeParsed());
+    }
+
+    @Test(expected = InvalidJsonException.class)
+    public void testValidateNotWellFormed() throws Exception {
+        new JacksonJsonSchemaV4(data(SCHEMAS[0])).validate(data("{\"id\":1}}"));
+    }
+
+    private static boolean isValidTree(final JacksonJsonSchemaV4 schema, final String document) throws InvalidJsonException {
+        final JacksonJsonDataFasterxml data = data(document);
+        try {
+            data.getJsonNode();
+            return schema.validate(data).isEmpty();
+        } catch (InvalidJsonException e) {
+            return false;
+        }
+    }
+
+    private static boolean isValidStreaming(final StreamingJsonSchema schema, final String document) throws InvalidJsonException {
+        try (final JsonParser parser = data(document).createParser()) {
+            return schema.isValid(parser);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static JacksonJsonDataFasterxml data(final String json) throws InvalidJsonException {
+        return (JacksonJsonDataFasterxml) JSONFactory.INSTANCE.newJsonData(json, JsonSchemaVersion.DRAFT_V4);
+    }
+
+    private static StreamingJsonSchema compile(final String schemaText) throws InvalidJsonException {
+        final JsonNode schemaNode = data(schemaText).getJsonNode();
+        return StreamingJsonSchema.compile(schemaNode, new JsonSchemaFactory(new ObjectMapper(), new ConnectionBlockingUrlResolver()));
+    }
+}
@@ -4,13 +4,13 @@
  */
 package com.l7tech.message;
 
-import com.l7tech.common.mime.NoSuchPartException;
-import com.l7tech.common.mime.PartInfo;
+import com.l7tech.common.mime.*;
 import com.l7tech.json.*;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.IOUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.util.concurrent.ConcurrentHashMap;
@@ -18,6 +18,13 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Represents a MimeFacet whose first part is application/json.
+ *
+ * <p>The JSON text and any parsed representations are held by the facet, so
+ * they are shared by all users of the message until the first part is
+ * modified.</p>
+ */
 public class JsonFacet extends MessageFacet{
     /**
      * @param message  the Message that owns this aspect
@@ -29,7 +36,11 @@ public class JsonFacet extends MessageFacet{
 
     @Override
     MessageKnob getKnob(Class c) {
-        if(c == JsonKnob.class){
+        if (c == MimeKnob.class) {
+            // Wrap it so that changes to the first part discard the parsed JSON
+            final MimeKnob mk = (MimeKnob)super.getKnob(MimeKnob.class);
+            return mk == null ? null : new MimeKnobWrapper(mk);
+        } else if(c == JsonKnob.class){
             final MimeKnob mk = (MimeKnob)super.getKnob(MimeKnob.class);
             return new JsonKnobImpl(mk);
         }
@@ -37,12 +48,23 @@ public class JsonFacet extends MessageFacet{
         return super.getKnob(c);
     }
 
-    private static class JsonKnobImpl implements JsonKnob {
+    //- PRIVATE
+
+    private final static Logger logger = Logger.getLogger(JsonFacet.class.getName());
+
+    private final ConcurrentMap<JsonSchemaVersion, JSONData> jsonDataHolder = new ConcurrentHashMap<>(JsonSchemaVersion.values().length);
+    private volatile String jsonText;
+
+    private void onFirstPartChanged() {
+        jsonText = null;
+        jsonDataHolder.clear();
+    }
+
+    private class JsonKnobImpl implements JsonKnob {
 
         public JsonKnobImpl(MimeKnob mimeKnob) {
             if (mimeKnob == null) throw new NullPointerException();
             this.mimeKnob = mimeKnob;
-            jsonDataHolder = new ConcurrentHashMap<>(JsonSchemaVersion.values().length);
         }
 
         @Override
@@ -61,6 +83,11 @@ public class JsonFacet extends MessageFacet{
             }
         }
 
+        @Override
+        public void invalidate() {
+            onFirstPartChanged();
+        }
+
         /**
          * Create json data with unchecked exceptions
          * @param version the version of json schema to create
@@ -79,7 +106,7 @@ public class JsonFacet extends MessageFacet{
         }
 
         /**
-         * Create json data with unchecked exceptions
+         * Create json data, the JSON text of the first part is read once and shared by all versions.
          * @param version the version of json schema to create
          * @return JSONData
          * @throws InvalidJsonException if an unsupported json schema version is provided
@@ -93,20 +120,251 @@ public class JsonFacet extends MessageFacet{
                 throw new IOException("Content type of first part of Message is not JSON (application/json)");
             }
 
-            final String jsonDataStr;
-            try {
-                final Charset encoding = firstPart.getContentType().getEncoding();
-                jsonDataStr = new String(IOUtils.slurpStream(firstPart.getInputStream(false)), encoding);
-            } catch (NoSuchPartException e) {
-                throw new IOException("Unable to parse JSON: " + ExceptionUtils.getMessage(e));
+            String jsonDataStr = jsonText;
+            if (jsonDataStr == null) {
+                try {
+                    final Charset encoding = firstPart.getContentType().getEncoding();
+                    jsonDataStr = new String(IOUtils.slurpStream(firstPart.getInputStream(false)), encoding);
+                } catch (NoSuchPartException e) {
+                    throw new IOException("Unable to parse JSON: " + ExceptionUtils.getMessage(e), e);
+                }
+                jsonText = jsonDataStr;
             }
 
             return JSONFactory.INSTANCE.newJsonData(jsonDataStr, version);
         }
 
-        //- PRIVATE
         private final MimeKnob mimeKnob;
-        private final ConcurrentMap<JsonSchemaVersion, JSONData> jsonDataHolder;
-        private final static Logger logger = Logger.getLogger(JsonFacet.class.getName());
+    }
+
+    /** Wraps the existing MimeKnob to discard parsed JSON when the first part is modified. */
+    private class MimeKnobWrapper implements MimeKnob {
+        private final MimeKnob mk;
+
+        private MimeKnobWrapper(MimeKnob mk) {
+            this.mk = mk;
+        }
+
+        @Override
+        public boolean isMultipart() {
+            return mk.isMultipart();
+        }
+
+        @Override
+        public PartIterator getParts() throws IOException {
+            return new PartIteratorWrapper(mk.getParts());
+        }
+
+        @Override
+        public PartIterator iterator() {
+            try {
+                return getParts();
+            } catch (IOException e) {
+                throw new com.l7tech.common.io.UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public PartInfo getPart(int num) throws IOException, NoSuchPartException {
+            return wrap(mk.getPart(num));
+        }
+
+        @Override
+        public PartInfo getPartByContentId(String contentId) throws IOException, NoSuchPartException {
+            return wrap(mk.getPartByContentId(contentId));
+        }
+
+        @Override
+        public void setContentLengthLimit(long sizeLimit) throws IOException {
+            mk.setContentLengthLimit(sizeLimit);
+        }
+
+        @Override
+        public long getContentLengthLimit() {
+            return mk.getContentLengthLimit();
+        }
+
+        @Override
+        public ContentTypeHeader getOuterContentType() {
+            return mk.getOuterContentType();
+        }
+
+        @Override
+        public void setOuterContentType(ContentTypeHeader contentType) {
+            mk.setOuterContentType(contentType);
+        }
+
+        @Override
+        public long getContentLength() throws IOException {
+            return mk.getContentLength();
+        }
+
+        @Override
+        public void setStreamValidatedPartsOnly() {
+            mk.setStreamValidatedPartsOnly();
+        }
+
+        @Override
+        public InputStream getEntireMessageBodyAsInputStream() throws IOException, NoSuchPartException {
+            return mk.getEntireMessageBodyAsInputStream();
+        }
+
+        @Override
+        public InputStream getEntireMessageBodyAsInputStream(boolean destroyAsRead) throws IOException, NoSuchPartException {
+            return mk.getEntireMessageBodyAsInputStream(destroyAsRead);
+        }
+
+        @Override
+        public PartInfo getFirstPart() throws IOException {
+            return new PartInfoWrapper(mk.getFirstPart());
+        }
+
+        @Override
+        public void setBufferingDisallowed(boolean bufferingDisallowed) {
+            mk.setBufferingDisallowed(bufferingDisallowed);
+        }
+
+        @Override
+        public boolean isBufferingDisallowed() {
+            return mk.isBufferingDisallowed();
+        }
+
+        private PartInfo wrap(PartInfo pi) {
+            return pi.getPosition() == 0 ? new PartInfoWrapper(pi) : pi;
+        }
+
+        private class PartIteratorWrapper implements PartIterator {
+            private final PartIterator delegate;
+
+            private PartIteratorWrapper(PartIterator delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return delegate.hasNext();
+            }
+
+            @Override
+            public PartInfo next() {
+                return wrap(delegate.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+
+    /** Wraps the first part to discard parsed JSON when the body or content type is changed. */
+    private class PartInfoWrapper implements PartInfo {
+        private final PartInfo delegate;
+
+        private PartInfoWrapper(PartInfo delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MimeHeader getHeader(String name) {
+            return delegate.getHeader(name);
+        }
+
+        @Override
+        public int getPosition() {
+            return delegate.getPosition();
+        }
+
+        @Override
+        public InputStream getInputStream(boolean destroyAsRead) throws IOException, NoSuchPartException {
+            return delegate.getInputStream(destroyAsRead);
+        }
+
+        @Override
+        public byte[] getBytesIfAlreadyAvailable() {
+            return delegate.getBytesIfAlreadyAvailable();
+        }
+
+        @Override
+        public byte[] getBytesIfAvailableOrSmallerThan(int maxSize) throws IOException, NoSuchPartException {
+            return delegate.getBytesIfAvailableOrSmallerThan(maxSize);
+        }
+
+        @Override
+        public void setBodyBytes(byte[] newBody) throws IOException {
+            try {
+                delegate.setBodyBytes(newBody);
+            } finally {
+                onFirstPartChanged();
+            }
+        }
+
+        @Override
+        public void setBodyBytes(byte[] newBody, int offset, int length) throws IOException {
+            try {
+                delegate.setBodyBytes(newBody, offset, length);
+            } finally {
+                onFirstPartChanged();
+            }
+        }
+
+        @Override
+        public void setContentType(ContentTypeHeader newContentType) {
+            try {
+                delegate.setContentType(newContentType);
+            } finally {
+                onFirstPartChanged();
+            }
+        }
+
+        @Override
+        public MimeHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public long getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        @Override
+        public long getActualContentLength() throws IOException, NoSuchPartException {
+            return delegate.getActualContentLength();
+        }
+
+        @Override
+        public ContentTypeHeader getContentType() {
+            return delegate.getContentType();
+        }
+
+        @Override
+        public String getContentId(boolean stripAngleBrackets) {
+            return delegate.getContentId(stripAngleBrackets);
+        }
+
+        @Override
+        public boolean isValidated() {
+            return delegate.isValidated();
+        }
+
+        @Override
+        public void setValidated(boolean validated) {
+            delegate.setValidated(validated);
+        }
+
+        @Override
+        public boolean isBodyAvailable() {
+            return delegate.isBodyAvailable();
+        }
+
+        @Override
+        public boolean isBodyStashed() {
+            return delegate.isBodyStashed();
+        }
+
+        @Override
+        public boolean isBodyRead() {
+            return delegate.isBodyRead();
+        }
     }
 }
@@ -14,5 +14,22 @@ public interface JsonKnob extends MessageKnob{
 
     JSONData getJsonData() throws IOException, InvalidJsonException;
 
+    /**
+     * Get the JSON data for the first part of the message.
+     *
+     * <p>The data (and any representation parsed from it) is shared until the
+     * first part of the message is modified, callers must not modify the
+     * objects returned by the data.</p>
+     *
+     * @param version the JSON schema version for the data
+     * @return The JSON data, never null
+     * @throws IOException if the first part cannot be read or is not JSON
+     * @throws InvalidJsonException if the version is not supported
+     */
     JSONData getJsonData(JsonSchemaVersion version) throws IOException, InvalidJsonException;
+
+    /**
+     * Notify this JsonKnob that its caches need to be cleared
+     */
+    void invalidate();
 }
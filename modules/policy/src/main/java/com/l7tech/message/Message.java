@@ -923,6 +923,8 @@ public final class Message implements Closeable {
     void invalidateCaches() {
         SoapKnob sk = getKnob(SoapKnob.class);
         if (sk != null) sk.invalidate();
+        JsonKnob jk = getKnob(JsonKnob.class);
+        if (jk != null) jk.invalidate();
     }
 
     /**
@@ -175,7 +175,7 @@ class SoapFacet extends MessageFacet {
             // can't happen
             throw new IllegalStateException("SoapKnob present on message with no XmlKnob");
         }
-        ElementCursor cursor = xmlKnob.getElementCursor().duplicate();
+        ElementCursor cursor = xmlKnob.getReadOnlyElementCursor().duplicate();
         cursor.moveToDocumentElement();
         envelopeNs = cursor.getNamespaceUri();
         soapVersion = SoapVersion.namespaceToSoapVersion(envelopeNs);
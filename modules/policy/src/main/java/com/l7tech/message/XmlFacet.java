@@ -6,13 +6,17 @@ import com.l7tech.common.mime.*;
 import com.l7tech.util.Charsets;
 import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.Functions;
+import com.l7tech.util.IOUtils;
 import com.l7tech.util.Triple;
+import com.l7tech.xml.CompactElementCursor;
 import com.l7tech.xml.DomElementCursor;
 import com.l7tech.xml.ElementCursor;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -20,8 +24,16 @@ import java.io.InputStream;
  * Represents a MimeFacet whose first part is text/xml.
  */
 public class XmlFacet extends MessageFacet {
+    private static final boolean COMPACT_ELEMENT_CURSOR = ConfigFactory.getBooleanProperty( "com.l7tech.message.XmlFacet.compactElementCursor", true );
+
     private Document originalDocument = null;  // the original Document
     private DomElementCursor workingDocument = null;  // the working Document
+    private CompactElementCursor compactDocument = null;  // read-only cursor used until a DOM is required
+    private WorkingDocumentSource compactDocumentSource = null;
+
+    /** True if the original document has not been captured but is still the first part */
+    private boolean originalDocumentInFirstPart = false;
+    private byte[] originalDocumentBytes = null;
 
     /** Can be assumed to be true if {@link #workingDocument} == null */
     private boolean firstPartValid = true;
@@ -158,6 +170,7 @@ public class XmlFacet extends MessageFacet {
 
             final Triple<byte[],Integer,Integer> bytes = XmlUtil.toRawByteArray(workingDocument.getDocument());
             final PartInfo firstPart = mk.getFirstPart();
+            beforeFirstPartChanged(firstPart);
             firstPart.setBodyBytes(bytes.left, bytes.middle, bytes.right);
 
             final ContentTypeHeader contentType = firstPart.getContentType();
@@ -237,6 +250,7 @@ public class XmlFacet extends MessageFacet {
             }
 
             public void setBodyBytes(byte[] newBody) throws IOException {
+                if (fp) beforeFirstPartChanged(delegate);
                 delegate.setBodyBytes(newBody);
                 if (fp) {
                     onFirstPartChanged();
@@ -244,6 +258,7 @@ public class XmlFacet extends MessageFacet {
             }
 
             public void setBodyBytes(byte[] newBody, int offset, int length) throws IOException {
+                if (fp) beforeFirstPartChanged(delegate);
                 delegate.setBodyBytes(newBody, offset, length);
                 if (fp) {
                     onFirstPartChanged();
@@ -251,14 +266,22 @@ public class XmlFacet extends MessageFacet {
             }
 
             private void onFirstPartChanged() {
-                if (workingDocument != null && originalDocument == null && getMessage().isEnableOriginalDocument())
-                    originalDocument = (Document)workingDocument.getDocument().cloneNode(true); // todo find a way to skip this if it wont be needed
+                if (workingDocument != null && originalDocument == null && originalDocumentBytes == null && getMessage().isEnableOriginalDocument())
+                    originalDocument = (Document)workingDocument.getDocument().cloneNode(true);
                 workingDocument = null;
+                discardCompactDocument();
                 firstPartValid = false;
                 getMessage().invalidateCaches();
             }
 
             public void setContentType(ContentTypeHeader newContentType) {
+                if (fp && !newContentType.isXml()) {
+                    try {
+                        beforeFirstPartChanged(delegate);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
                 delegate.setContentType(newContentType);
                 if (fp && !newContentType.isXml())
                     onFirstPartChanged();
@@ -324,6 +347,31 @@ public class XmlFacet extends MessageFacet {
             return workingDocument;
         }
 
+        /**
+         * Get a cursor for navigating the working document.
+         *
+         * <p>If the working document has not been parsed to DOM this is a
+         * read-only compact cursor, a DOM is only built if required.</p>
+         */
+        public ElementCursor getReadOnlyElementCursor() throws SAXException, IOException {
+            if (workingDocument == null && COMPACT_ELEMENT_CURSOR) {
+                if (compactDocument == null) {
+                    final PartInfo firstPart = mk.getFirstPart();
+                    if (!firstPart.getContentType().isXml())
+                        throw new SAXException("Content type of first part of message is not XML");
+                    final WorkingDocumentSource source = new WorkingDocumentSource(this);
+                    try {
+                        compactDocument = CompactElementCursor.parse(new InputSource(firstPart.getInputStream(false)), source);
+                    } catch (NoSuchPartException e) {
+                        throw new SAXException("Unable to parse XML: " + ExceptionUtils.getMessage(e), e);
+                    }
+                    compactDocumentSource = compactDocument == null ? null : source;
+                }
+                if (compactDocument != null) return compactDocument;
+            }
+            return getElementCursor();
+        }
+
         public Document getDocumentReadOnly() throws SAXException, IOException {
             if (workingDocument == null) {
                 final PartInfo firstPart = mk.getFirstPart();
@@ -334,24 +382,44 @@ public class XmlFacet extends MessageFacet {
                 } catch (NoSuchPartException e) {
                     throw new SAXException("Unable to parse XML: " + ExceptionUtils.getMessage(e), e);
                 }
+                compactDocument = null; // any cursors in use will share the DOM
             }
             return workingDocument.getDocument();
         }
 
         public Document getDocumentWritable() throws SAXException, IOException {
             Document working = getDocumentReadOnly();
+            if (getMessage().isEnableOriginalDocument() && originalDocument == null && originalDocumentBytes == null && !originalDocumentInFirstPart) {
+                if (firstPartValid) {
+                    originalDocumentInFirstPart = true; // parsed only if required
+                } else {
+                    originalDocument = (Document)working.cloneNode(true);
+                }
+            }
             firstPartValid = false;
+            discardCompactDocument();
             getMessage().invalidateCaches();
-            if (getMessage().isEnableOriginalDocument() && originalDocument == null)
-                originalDocument = (Document)working.cloneNode(true); // todo find a way to skip this if it wont be needed
             return working;
         }
 
         public Document getOriginalDocument() throws SAXException, IOException {
             if (!getMessage().isEnableOriginalDocument())
                 throw new UnsupportedOperationException("originalDocumentSupport is not enabled");
-            if (originalDocument == null)
-                originalDocument = (Document)getDocumentReadOnly().cloneNode(true);
+            if (originalDocument == null) {
+                if (originalDocumentBytes != null) {
+                    originalDocument = XmlUtil.parse(new ByteArrayInputStream(originalDocumentBytes));
+                    originalDocumentBytes = null;
+                } else if (originalDocumentInFirstPart) {
+                    try {
+                        originalDocument = XmlUtil.parse(mk.getFirstPart().getInputStream(false));
+                    } catch (NoSuchPartException e) {
+                        throw new SAXException("Unable to parse XML: " + ExceptionUtils.getMessage(e), e);
+                    }
+                    originalDocumentInFirstPart = false;
+                } else {
+                    originalDocument = (Document)getDocumentReadOnly().cloneNode(true);
+                }
+            }
             return originalDocument;
         }
 
@@ -370,12 +438,62 @@ public class XmlFacet extends MessageFacet {
         public void setDocument(Document document) {
             firstPartValid = false;
             workingDocument = new DomElementCursor(document);
+            discardCompactDocument();
             getMessage().invalidateCaches();
         }
 
         public boolean isDomParsed() {
             return workingDocument != null;
         }
+    }
 
+    /**
+     * Capture the original document before the first part is replaced, if it is still the first part.
+     *
+     * <p>The bytes are kept rather than a DOM, the original DOM is only parsed if it is requested.</p>
+     */
+    private void beforeFirstPartChanged(PartInfo firstPart) throws IOException {
+        if (originalDocument != null || originalDocumentBytes != null || !getMessage().isEnableOriginalDocument())
+            return;
+        if (originalDocumentInFirstPart || (workingDocument != null && firstPartValid)) {
+            try {
+                originalDocumentBytes = IOUtils.slurpStream(firstPart.getInputStream(false));
+            } catch (NoSuchPartException e) {
+                throw new IOException("Unable to access first part of message: " + ExceptionUtils.getMessage(e), e);
+            }
+            originalDocumentInFirstPart = false;
+        }
+    }
+
+    /**
+     * Stop using the compact cursor, existing cursors will no longer share the working DOM.
+     */
+    private void discardCompactDocument() {
+        if (compactDocumentSource != null)
+            compactDocumentSource.valid = false;
+        compactDocument = null;
+        compactDocumentSource = null;
+    }
+
+    /**
+     * Supplies the working DOM to compact cursors while it matches the first part.
+     */
+    private static final class WorkingDocumentSource implements Functions.NullaryThrows<Document,SAXException> {
+        private final XmlKnob xmlKnob;
+        private volatile boolean valid = true;
+
+        private WorkingDocumentSource(XmlKnob xmlKnob) {
+            this.xmlKnob = xmlKnob;
+        }
+
+        @Override
+        public Document call() throws SAXException {
+            if (!valid) return null;
+            try {
+                return xmlKnob.getDocumentReadOnly();
+            } catch (IOException e) {
+                throw new SAXException("Unable to parse XML: " + ExceptionUtils.getMessage(e), e);
+            }
+        }
     }
 }
@@ -37,6 +37,21 @@ public interface XmlKnob extends MessageKnob {
      */
     ElementCursor getElementCursor() throws SAXException, IOException;
 
+    /**
+     * Get a read-only cursor for navigating the current working document.
+     * <p/>
+     * If the working document has not been parsed this may be a compact cursor that does not require a DOM.
+     * Callers that evaluate XPaths, serialize or otherwise use a DOM should call {@link #getElementCursor}
+     * instead, to avoid parsing the document twice.
+     * <p/>
+     * The returned cursor is subject to the same restrictions as a cursor from {@link #getElementCursor}.
+     *
+     * @return an ElementCursor, which may have been left in an unexpected position by the last user of this cursor.
+     * @throws SAXException if the XML in the first part's InputStream is not well formed
+     * @throws IOException if there is a problem reading XML from the first part's InputStream
+     */
+    ElementCursor getReadOnlyElementCursor() throws SAXException, IOException;
+
     /**
      * Get a read-only reference to the current working Document.  There is currently no way to enforce
      * that the returned Document is not modified; callers are expected to keep their word and avoid changing
@@ -75,6 +75,7 @@ public class BuiltinVariables {
     public static final String SERVICE_SUFFIX_POLICY_GUID = "policy.guid";
     public static final String SERVICE_SUFFIX_POLICY_VERSION = "policy.version";
     public static final String SERVICE_SUFFIX_PROPERTIES = "property";
+    public static final String SERVICE_SUFFIX_ASSERTION_PROFILE = "assertionProfile";
     @Deprecated
     public static final String SERVICE_SUFFIX_URL = "url";
     @Deprecated
@@ -213,6 +214,7 @@ public class BuiltinVariables {
             new VariableMetadata(PREFIX_SERVICE + "." + SERVICE_SUFFIX_RESOLUTIONURI, false, false, null, false),
             new VariableMetadata(PREFIX_SERVICE + "." + SERVICE_SUFFIX_POLICY_GUID, false, false, null, false),
             new VariableMetadata(PREFIX_SERVICE + "." + SERVICE_SUFFIX_POLICY_VERSION, false, false, null, false, DataType.INTEGER),
+            new VariableMetadata(PREFIX_SERVICE + "." + SERVICE_SUFFIX_ASSERTION_PROFILE, false, true, null, false),
 
             new VariableMetadata(PREFIX_POLICY + "." + POLICY_SUFFIX_NAME, false, false, null, false),
             new VariableMetadata(PREFIX_POLICY + "." + POLICY_SUFFIX_OID, false, false, null, false),
@@ -2,9 +2,8 @@ package com.l7tech.security.cert;
 
 import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.ExceptionUtils;
-import com.l7tech.common.io.WhirlycacheFactory;
 import com.l7tech.common.io.CertUtils;
-import com.whirlycott.cache.Cache;
+import com.l7tech.common.io.SegmentedCache;
 
 import java.security.cert.X509Certificate;
 import java.security.cert.CertificateEncodingException;
@@ -23,11 +22,8 @@ public class CertVerifier {
     private static final String PROPBASE = CertUtils.class.getName();
     public static final int CERT_VERIFY_CACHE_MAX = ConfigFactory.getIntProperty( PROPBASE + ".certVerifyCacheSize", 500 );// Map of VerifiedCert => Boolean.TRUE
 
-    public static final Cache certVerifyCache =
-            WhirlycacheFactory.createCache("certCache",
-                    CERT_VERIFY_CACHE_MAX,
-                    127, WhirlycacheFactory.POLICY_LRU
-            );
+    public static final SegmentedCache<VerifiedCert,Boolean> certVerifyCache =
+            new SegmentedCache<VerifiedCert,Boolean>("certCache", (long) CERT_VERIFY_CACHE_MAX);
 
     /**
      * Test if the specified certificate is verifiable with the specified public key, without throwing
@@ -191,14 +187,13 @@ public class CertVerifier {
 
         /** @return true if this cert has already been verified with this public key. */
         public boolean isVerified() {
-            final Object got;
-            got = certVerifyCache.retrieve(this);
-            return got instanceof Boolean && (Boolean)got;
+            final Boolean got = certVerifyCache.get(this);
+            return got != null && got;
         }
 
         /** Report that this cert was successfully verified with its public key. */
         public void onVerified() {
-            certVerifyCache.store(this, Boolean.TRUE);
+            certVerifyCache.put(this, Boolean.TRUE);
         }
     }
 }
@@ -5,6 +5,7 @@ import com.ibm.xml.dsig.Transform;
 import com.ibm.xml.dsig.TransformContext;
 import com.ibm.xml.dsig.TransformException;
 import com.l7tech.common.io.CertUtils;
+import com.l7tech.common.io.NonCloseableOutputStream;
 import com.l7tech.common.io.XmlUtil;
 import com.l7tech.util.DomUtils;
 import com.l7tech.util.ExceptionUtils;
@@ -18,6 +19,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.cert.X509Certificate;
@@ -65,6 +67,12 @@ public class ApacheExclusiveC14nAdaptor extends Transform implements Canonicaliz
         }
     }
 
+    /**
+     * Canonicalize a reference for XSS4J.
+     *
+     * <p>Unlike {@link #canonicalize}, references cannot be streamed into the digest. XSS4J only accepts transform
+     * output as a byte array and computes reference digests internally from that array.</p>
+     */
     private void doTransform(TransformContext context) throws CanonicalizationException, TransformException, IOException {
         switch(context.getType())
         {
@@ -119,8 +127,11 @@ public class ApacheExclusiveC14nAdaptor extends Transform implements Canonicaliz
 
     public void canonicalize(Node node, OutputStream outputStream) throws IOException {
         try {
-            byte[] result = serializeNode(node, prefixList);
-            outputStream.write(result);
+            // Write directly to the output (the signature method) rather than buffering the canonical form.
+            // The canonicalizer writes small fragments and closes its writer when done, so buffer and protect the stream.
+            final org.apache.xml.security.c14n.Canonicalizer c11r = makeApacheC11r();
+            c11r.setWriter(new BufferedOutputStream(new NonCloseableOutputStream(outputStream)));
+            c11r.canonicalizeSubtree(node, prefixList);
         } catch (CanonicalizationException e) {
             throw new IOException(e);
         }
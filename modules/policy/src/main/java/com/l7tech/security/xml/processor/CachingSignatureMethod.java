@@ -0,0 +1,143 @@
+package com.l7tech.security.xml.processor;
+
+import com.ibm.xml.dsig.SignatureMethod;
+import com.l7tech.common.io.SegmentedCache;
+import com.l7tech.security.xml.SupportedSignatureMethods;
+import com.l7tech.util.Charsets;
+import com.l7tech.util.ConfigFactory;
+import com.l7tech.util.HexUtils;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+
+/**
+ * A SignatureMethod for verification that remembers signature values that were verified.
+ *
+ * <p>Signed tokens such as SAML assertions are often sent unchanged with
+ * every request for their lifetime. When exactly the same verification is
+ * repeated the public key operation is skipped.</p>
+ *
+ * <p>The cache key is a digest of the signature method, the encoded public
+ * key, the canonicalized SignedInfo and the SignatureValue. Since the
+ * SignedInfo includes the reference digest values, and references are still
+ * checked for every message, only the final verification is skipped.</p>
+ *
+ * <p>Only successful public key verifications are cached.</p>
+ */
+class CachingSignatureMethod extends SignatureMethod {
+
+    //- PACKAGE
+
+    /**
+     * Check if verified signatures should be cached.
+     *
+     * @param uri The signature method URI
+     * @return true if signature verification should be cached for the method
+     */
+    static boolean isCacheable( final String uri ) {
+        return verifiedSignatures != null && uri != null && !HMAC_KEY_ALGORITHM.equals( keyAlgorithm( uri ) );
+    }
+
+    CachingSignatureMethod( final SignatureMethod delegate ) throws NoSuchAlgorithmException {
+        this.delegate = delegate;
+        this.digest = MessageDigest.getInstance( "SHA-256" );
+    }
+
+    /**
+     * Get the underlying signature method.
+     *
+     * @return The signature method that performs the verification
+     */
+    SignatureMethod getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Clear the cached signatures.
+     */
+    static void clearCache() {
+        if ( verifiedSignatures != null ) verifiedSignatures.clear();
+    }
+
+    //- PUBLIC
+
+    @Override
+    public String getURI() {
+        return delegate.getURI();
+    }
+
+    @Override
+    public void initSign( final Key key ) throws InvalidKeyException {
+        caching = false;
+        delegate.initSign( key );
+    }
+
+    @Override
+    public void initVerify( final Key key ) throws InvalidKeyException {
+        delegate.initVerify( key );
+        digest.reset();
+        final byte[] encodedKey = key instanceof PublicKey ? key.getEncoded() : null;
+        caching = encodedKey != null;
+        if ( caching ) {
+            digest.update( getURI().getBytes( Charsets.UTF8 ) );
+            digest.update( (byte) 0 );
+            digest.update( encodedKey );
+            digest.update( (byte) 0 );
+        }
+    }
+
+    @Override
+    public void update( final byte[] data ) throws SignatureException {
+        delegate.update( data );
+        if ( caching ) digest.update( data );
+    }
+
+    @Override
+    public byte[] sign() throws SignatureException {
+        return delegate.sign();
+    }
+
+    @Override
+    public boolean verify( final byte[] signatureValue ) throws SignatureException {
+        if ( !caching ) return delegate.verify( signatureValue );
+        caching = false;
+
+        // separate digests so the boundary between signed data and signature value is unambiguous
+        final String key = HexUtils.hexDump( digest.digest() ) + HexUtils.hexDump( digest.digest( signatureValue ) );
+        if ( verifiedSignatures.get( key ) != null ) {
+            return true;
+        }
+
+        final boolean verified = delegate.verify( signatureValue );
+        if ( verified ) {
+            verifiedSignatures.put( key, Boolean.TRUE );
+        }
+        return verified;
+    }
+
+    //- PRIVATE
+
+    private static final String PROP_CACHE_SIZE = "com.l7tech.security.xml.processor.verifiedSignatureCacheSize";
+    private static final String PROP_CACHE_AGE = "com.l7tech.security.xml.processor.verifiedSignatureCacheMaxAge";
+    private static final String HMAC_KEY_ALGORITHM = "SecretKey";
+    private static final SegmentedCache<String,Boolean> verifiedSignatures = buildCache();
+
+    private final SignatureMethod delegate;
+    private final MessageDigest digest;
+    private boolean caching;
+
+    private static SegmentedCache<String,Boolean> buildCache() {
+        final int size = ConfigFactory.getIntProperty( PROP_CACHE_SIZE, 1000 );
+        final long maxAge = ConfigFactory.getLongProperty( PROP_CACHE_AGE, 3600000L );
+        return size <= 0 ? null : new SegmentedCache<String,Boolean>( "verifiedSignatures", (long) size, maxAge, 0L, null, null );
+    }
+
+    private static String keyAlgorithm( final String uri ) {
+        final SupportedSignatureMethods method = SupportedSignatureMethods.fromSignatureAlgorithm( uri );
+        return method == null ? HMAC_KEY_ALGORITHM : method.getKeyAlgorithmName();
+    }
+}
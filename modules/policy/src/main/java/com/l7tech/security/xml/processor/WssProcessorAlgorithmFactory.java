@@ -151,7 +151,12 @@ public class WssProcessorAlgorithmFactory extends AlgorithmFactoryExtn {
             signatureMethod = super.getSignatureMethod(uri, o);
         }
 
-        return checkSignatureMethod(signatureMethod);
+        checkSignatureMethod(signatureMethod);
+        if (verifyMode && CachingSignatureMethod.isCacheable(uri)) {
+            signatureMethod = new CachingSignatureMethod(signatureMethod);
+        }
+
+        return signatureMethod;
     }
 
     public void setVerifyMode(boolean verifyMode) {
@@ -160,6 +165,10 @@ public class WssProcessorAlgorithmFactory extends AlgorithmFactoryExtn {
 
     @Override
     public void releaseSignatureMethod(SignatureMethod sm) {
+        if (sm instanceof CachingSignatureMethod) {
+            sm = ((CachingSignatureMethod) sm).getDelegate();
+        }
+
         if (sm instanceof RsaSha1SignatureMethod) {
             rsaSha1VerificationPool.add((RsaSha1SignatureMethod) sm);
         } else {
@@ -241,6 +250,7 @@ public class WssProcessorAlgorithmFactory extends AlgorithmFactoryExtn {
 
     public static void clearAlgorithmPools() {
         rsaSha1VerificationPool.clear();
+        CachingSignatureMethod.clearCache();
         rsaPool.clear();
         dsaPool.clear();
         sha1Pool.clear();
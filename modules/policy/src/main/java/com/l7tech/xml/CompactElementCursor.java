@@ -0,0 +1,752 @@
+package com.l7tech.xml;
+
+import com.l7tech.common.io.XmlUtil;
+import com.l7tech.util.ArrayUtils;
+import com.l7tech.util.Charsets;
+import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.Functions;
+import com.l7tech.util.PoolByteArrayOutputStream;
+import com.l7tech.util.ResourceUtils;
+import com.l7tech.xml.xpath.CompiledXpath;
+import com.l7tech.xml.xpath.DomCompiledXpath;
+import com.l7tech.xml.xpath.XpathResult;
+import com.l7tech.xml.xpath.XpathVariableFinder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An implementation of {@link ElementCursor} that uses a compact read-only tree as its underlying model.
+ *
+ * <p>The tree is a set of parallel int arrays indexed by node, with all
+ * character data held in a single char array and names held once in a
+ * string table. This uses a fraction of the memory of a DOM tree for the
+ * same document.</p>
+ *
+ * <p>Navigation and accessors use the tree directly. XPath evaluation and
+ * serialization use a DOM document, which is either supplied on demand (so
+ * that a DOM parsed for other purposes is shared) or built once from the
+ * tree.</p>
+ */
+public class CompactElementCursor extends ElementCursor {
+
+    //- PUBLIC
+
+    /**
+     * Parse the document from the given source into a compact tree.
+     *
+     * <p>The supplier is used when a DOM tree is required, it may return null
+     * if its DOM no longer matches the parsed document, in which case a DOM
+     * is built from the compact tree.</p>
+     *
+     * @param source The source for the document.  Must not be null.
+     * @param documentSource Supplier for an equivalent DOM document, may be null.
+     * @return The cursor positioned at the document element, or null if the document has a DOCTYPE and should be parsed using DOM
+     * @throws SAXException if the document is not well formed
+     * @throws IOException if the document cannot be read
+     */
+    @Nullable
+    public static CompactElementCursor parse( @NotNull  final InputSource source,
+                                              @Nullable final Functions.NullaryThrows<Document,SAXException> documentSource ) throws SAXException, IOException {
+        final Tree tree = new TreeBuilder().build( source );
+        if ( tree == null ) return null;
+        tree.documentSource = documentSource;
+        return new CompactElementCursor( tree, tree.documentElement, null, 0 );
+    }
+
+    @Override
+    public ElementCursor duplicate() {
+        return new CompactElementCursor( tree, cur, stackSize == 0 ? null : Arrays.copyOf( stack, stackSize ), stackSize );
+    }
+
+    @Override
+    public void pushPosition() {
+        if ( stack == null ) {
+            stack = new int[8];
+        } else if ( stackSize == stack.length ) {
+            stack = Arrays.copyOf( stack, stackSize * 2 );
+        }
+        stack[stackSize++] = cur;
+    }
+
+    @Override
+    public void popPosition() throws IllegalStateException {
+        popPosition( false );
+    }
+
+    @Override
+    public void popPosition( final boolean discard ) throws IllegalStateException {
+        if ( stackSize == 0 ) throw new IllegalStateException( "No saved position" );
+        final int position = stack[--stackSize];
+        if ( !discard ) cur = position;
+    }
+
+    @Override
+    public void moveToDocumentElement() {
+        cur = tree.documentElement;
+    }
+
+    @Override
+    public void moveToRoot() {
+        cur = ROOT;
+    }
+
+    @Override
+    public boolean moveToParentElement() {
+        final int parent = cur == ROOT ? ROOT : tree.parent[cur];
+        if ( parent == ROOT ) return false;
+        cur = parent;
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirstChildElement() {
+        for ( int node = tree.firstChild[element()]; node != NONE; node = tree.nextSibling[node] ) {
+            if ( tree.kind[node] == Node.ELEMENT_NODE ) {
+                cur = node;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean moveToNextSiblingElement() {
+        if ( cur == ROOT ) return false;
+        for ( int node = tree.nextSibling[cur]; node != NONE; node = tree.nextSibling[node] ) {
+            if ( tree.kind[node] == Node.ELEMENT_NODE ) {
+                cur = node;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean moveToNextSiblingElement( final String localName, final String[] namespaceUris ) {
+        if ( cur == ROOT ) return false;
+        for ( int node = tree.nextSibling[cur]; node != NONE; node = tree.nextSibling[node] ) {
+            if ( tree.kind[node] == Node.ELEMENT_NODE &&
+                    localName.equals( tree.string( tree.name[node] ) ) &&
+                    ArrayUtils.contains( namespaceUris, tree.string( tree.namespace[node] ) ) ) {
+                cur = node;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean moveToNextSiblingElement( final String localName, final String namespaceUri ) {
+        if ( cur == ROOT ) return false;
+        for ( int node = tree.nextSibling[cur]; node != NONE; node = tree.nextSibling[node] ) {
+            if ( tree.kind[node] == Node.ELEMENT_NODE &&
+                    localName.equals( tree.string( tree.name[node] ) ) &&
+                    namespaceUri.equals( tree.string( tree.namespace[node] ) ) ) {
+                cur = node;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the value of the attribute with the given qualified name.
+     *
+     * <p>As for DOM, the value is empty if there is no such attribute.</p>
+     */
+    @Override
+    public String getAttributeValue( final String name ) {
+        final int element = element();
+        for ( int attr = tree.attributeStart[element]; attr < tree.attributeEnd[element]; attr++ ) {
+            if ( name.equals( tree.attributeName( attr ) ) ) {
+                return tree.text( tree.attributeValueStart[attr], tree.attributeValueLength[attr] );
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Get the value of the attribute with the given local name and namespace.
+     *
+     * <p>As for DOM, the value is empty if there is no such attribute.</p>
+     */
+    @Override
+    public String getAttributeValue( final String localName, final String namespaceUri ) {
+        final int element = element();
+        for ( int attr = tree.attributeStart[element]; attr < tree.attributeEnd[element]; attr++ ) {
+            if ( localName.equals( tree.string( tree.attributeLocalName[attr] ) ) &&
+                    ( namespaceUri == null ? tree.attributeNamespace[attr] == NONE : namespaceUri.equals( tree.string( tree.attributeNamespace[attr] ) ) ) ) {
+                return tree.text( tree.attributeValueStart[attr], tree.attributeValueLength[attr] );
+            }
+        }
+        return "";
+    }
+
+    @Override
+    public String getAttributeValue( final String localName, final String[] namespaceUris ) {
+        final int element = element();
+        for ( int attr = tree.attributeStart[element]; attr < tree.attributeEnd[element]; attr++ ) {
+            if ( localName.equals( tree.string( tree.attributeLocalName[attr] ) ) &&
+                    ArrayUtils.contains( namespaceUris, tree.string( tree.attributeNamespace[attr] ) ) ) {
+                return tree.text( tree.attributeValueStart[attr], tree.attributeValueLength[attr] );
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsMixedModeContent( final boolean ignoreWhitespace, final boolean ignoreComments ) {
+        for ( int node = tree.firstChild[cur]; node != NONE; node = tree.nextSibling[node] ) {
+            switch ( tree.kind[node] ) {
+                case Node.ELEMENT_NODE:
+                    continue;
+
+                case Node.COMMENT_NODE:
+                    if ( ignoreComments )
+                        continue;
+                    return true;
+
+                case Node.TEXT_NODE:
+                    if ( ignoreWhitespace && tree.isWhitespace( node ) )
+                        continue;
+                    return true;
+
+                default:
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String getLocalName() {
+        return cur == ROOT ? null : tree.string( tree.name[cur] );
+    }
+
+    @Override
+    public String getNamespaceUri() {
+        return cur == ROOT ? null : tree.string( tree.namespace[cur] );
+    }
+
+    @Override
+    public String getPrefix() {
+        return cur == ROOT ? null : tree.string( tree.prefix[cur] );
+    }
+
+    @Override
+    public String getTextValue() {
+        final StringBuilder output = new StringBuilder();
+        for ( int node = tree.firstChild[element()]; node != NONE; node = tree.nextSibling[node] ) {
+            final short kind = tree.kind[node];
+            if ( kind == Node.TEXT_NODE || kind == Node.CDATA_SECTION_NODE ) {
+                output.append( tree.chars, tree.valueStart[node], tree.valueLength[node] );
+            }
+        }
+        return output.toString().trim();
+    }
+
+    @Override
+    public void write( final OutputStream outputStream ) throws IOException {
+        XmlUtil.nodeToOutputStream( asDomNode(), outputStream, "UTF-8" );
+    }
+
+    @Override
+    public String asString() throws IOException {
+        PoolByteArrayOutputStream baos = new PoolByteArrayOutputStream(4096);
+        XmlUtil.canonicalize( asDomNode(), baos );
+        return baos.toString( Charsets.UTF8 );
+    }
+
+    @Override
+    public Element asDomElement( final Document factory ) {
+        return (Element) factory.importNode( domElement(), true );
+    }
+
+    /**
+     * Get a DOM view of the current element.
+     *
+     * <p>This is the element from the shared DOM document, so must not be
+     * modified in any way.</p>
+     */
+    @Override
+    public Element asDomElement() {
+        return domElement();
+    }
+
+    @Override
+    public XpathResult getXpathResult( final CompiledXpath compiledXpath,
+                                       final XpathVariableFinder variableFinder,
+                                       final boolean requireCursor ) throws XPathExpressionException {
+        if (compiledXpath == CompiledXpath.ALWAYS_TRUE)
+            return XpathResult.RESULT_TRUE;
+        if (compiledXpath == CompiledXpath.ALWAYS_FALSE)
+            return XpathResult.RESULT_FALSE;
+
+        if (compiledXpath instanceof DomCompiledXpath) {
+            final Node node;
+            try {
+                node = domNode();
+            } catch ( IllegalStateException e ) {
+                throw new XPathExpressionException( ExceptionUtils.getMessage( e ) );
+            }
+            return ((DomCompiledXpath)compiledXpath).getXpathResult( new DomElementCursor( node, false ), variableFinder );
+        }
+
+        throw new IllegalArgumentException("Unsupported CompiledXpath of type " + compiledXpath.getClass().getName());
+    }
+
+    @Override
+    public byte[] canonicalize( final String[] inclusiveNamespacePrefixes ) throws IOException {
+        PoolByteArrayOutputStream baos = new PoolByteArrayOutputStream();
+        try {
+            XmlUtil.canonicalize( asDomNode(), baos );
+            return baos.toByteArray();
+        } finally {
+            baos.close();
+        }
+    }
+
+    //- PRIVATE
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final XMLInputFactory INPUT_FACTORY = buildInputFactory();
+
+    private final Tree tree;
+    private int cur;
+    private int[] stack;
+    private int stackSize;
+
+    private CompactElementCursor( final Tree tree, final int cur, final int[] stack, final int stackSize ) {
+        this.tree = tree;
+        this.cur = cur;
+        this.stack = stack;
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * The current element, the document element when positioned at the root.
+     */
+    private int element() {
+        return cur == ROOT ? tree.documentElement : cur;
+    }
+
+    private Element domElement() {
+        final Node node = domNode();
+        return node instanceof Document ? ((Document) node).getDocumentElement() : (Element) node;
+    }
+
+    private Node asDomNode() {
+        try {
+            return domNode();
+        } catch ( IllegalStateException e ) {
+            throw new IllegalStateException( "Unable to access DOM for cursor: " + ExceptionUtils.getMessage( e ), e );
+        }
+    }
+
+    /**
+     * Find the DOM node for the current position by following the path of child element indexes from the root.
+     */
+    private Node domNode() {
+        final Document document = tree.getDocument();
+
+        int depth = 0;
+        for ( int node = cur; node != ROOT; node = tree.parent[node] ) depth++;
+        final int[] path = new int[depth];
+        for ( int node = cur; node != ROOT; node = tree.parent[node] ) {
+            int index = 0;
+            for ( int sibling = tree.firstChild[tree.parent[node]]; sibling != node; sibling = tree.nextSibling[sibling] ) {
+                if ( tree.kind[sibling] == Node.ELEMENT_NODE ) index++;
+            }
+            path[--depth] = index;
+        }
+
+        Node domNode = document;
+        for ( final int index : path ) {
+            Node child = domNode.getFirstChild();
+            for ( int i = -1; child != null; child = child.getNextSibling() ) {
+                if ( child.getNodeType() == Node.ELEMENT_NODE && ++i == index ) break;
+            }
+            if ( child == null ) throw new IllegalStateException( "DOM document does not match cursor document" );
+            domNode = child;
+        }
+        return domNode;
+    }
+
+    private static XMLInputFactory buildInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE );
+        factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+        factory.setXMLResolver( new XMLResolver() {
+            @Override
+            public Object resolveEntity( final String publicID,
+                                         final String systemID,
+                                         final String baseURI,
+                                         final String namespace ) throws XMLStreamException {
+                throw new XMLStreamException( "External entity access forbidden '" + systemID + "' relative to '" + baseURI + "'." );
+            }
+        } );
+        return factory;
+    }
+
+    /**
+     * The compact tree, node 0 is the document node.
+     *
+     * <p>For elements the name arrays hold string table indexes, for other
+     * nodes the value arrays hold the location of the node text in the
+     * character array (for processing instructions the name is the target).</p>
+     */
+    private static final class Tree {
+        private short[] kind;
+        private int[] parent;
+        private int[] firstChild;
+        private int[] nextSibling;
+        private int[] name;
+        private int[] namespace;
+        private int[] prefix;
+        private int[] valueStart;
+        private int[] valueLength;
+        private int[] attributeStart;
+        private int[] attributeEnd;
+        private int[] attributeLocalName;
+        private int[] attributeNamespace;
+        private int[] attributePrefix;
+        private int[] attributeValueStart;
+        private int[] attributeValueLength;
+        private char[] chars;
+        private String[] strings;
+        private int nodeCount;
+        private int documentElement;
+
+        private Functions.NullaryThrows<Document,SAXException> documentSource;
+        private Document document;
+
+        private String string( final int index ) {
+            return index == NONE ? null : strings[index];
+        }
+
+        private String text( final int start, final int length ) {
+            return new String( chars, start, length );
+        }
+
+        private String attributeName( final int attr ) {
+            final String localName = strings[attributeLocalName[attr]];
+            return attributePrefix[attr] == NONE ? localName : strings[attributePrefix[attr]] + ":" + localName;
+        }
+
+        private boolean isWhitespace( final int node ) {
+            for ( int i = valueStart[node]; i < valueStart[node] + valueLength[node]; i++ ) {
+                if ( !Character.isWhitespace( chars[i] ) ) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Get the DOM document, using the supplied document if available.
+         */
+        private synchronized Document getDocument() {
+            if ( document == null ) {
+                if ( documentSource != null ) {
+                    try {
+                        final Document supplied = documentSource.call();
+                        if ( supplied != null ) return supplied;
+                    } catch ( SAXException e ) {
+                        throw new IllegalStateException( ExceptionUtils.getMessage( e ), e );
+                    }
+                }
+                document = toDocument();
+            }
+            return document;
+        }
+
+        private Document toDocument() {
+            final Document document = XmlUtil.createEmptyDocument();
+            appendChildren( document, document, ROOT );
+            return document;
+        }
+
+        private void appendChildren( final Document document, final Node domParent, final int parentNode ) {
+            for ( int node = firstChild[parentNode]; node != NONE; node = nextSibling[node] ) {
+                final Node domNode;
+                switch ( kind[node] ) {
+                    case Node.ELEMENT_NODE:
+                        final Element element = document.createElementNS( string( namespace[node] ),
+                                prefix[node] == NONE ? strings[name[node]] : strings[prefix[node]] + ":" + strings[name[node]] );
+                        for ( int attr = attributeStart[node]; attr < attributeEnd[node]; attr++ ) {
+                            element.setAttributeNS( string( attributeNamespace[attr] ), attributeName( attr ),
+                                    text( attributeValueStart[attr], attributeValueLength[attr] ) );
+                        }
+                        appendChildren( document, element, node );
+                        domNode = element;
+                        break;
+                    case Node.TEXT_NODE:
+                        domNode = document.createTextNode( text( valueStart[node], valueLength[node] ) );
+                        break;
+                    case Node.CDATA_SECTION_NODE:
+                        domNode = document.createCDATASection( text( valueStart[node], valueLength[node] ) );
+                        break;
+                    case Node.COMMENT_NODE:
+                        domNode = document.createComment( text( valueStart[node], valueLength[node] ) );
+                        break;
+                    default:
+                        domNode = document.createProcessingInstruction( strings[name[node]], text( valueStart[node], valueLength[node] ) );
+                        break;
+                }
+                domParent.appendChild( domNode );
+            }
+        }
+    }
+
+    /**
+     * Builds a tree from StAX events.
+     */
+    private static final class TreeBuilder {
+        private final Tree tree = new Tree();
+        private final Map<String,Integer> stringIndexes = new HashMap<String,Integer>();
+        private int[] lastChild = new int[64];
+        private int attributeCount;
+        private int charCount;
+
+        private TreeBuilder() {
+            tree.kind = new short[64];
+            tree.parent = new int[64];
+            tree.firstChild = new int[64];
+            tree.nextSibling = new int[64];
+            tree.name = new int[64];
+            tree.namespace = new int[64];
+            tree.prefix = new int[64];
+            tree.valueStart = new int[64];
+            tree.valueLength = new int[64];
+            tree.attributeStart = new int[64];
+            tree.attributeEnd = new int[64];
+            tree.attributeLocalName = new int[32];
+            tree.attributeNamespace = new int[32];
+            tree.attributePrefix = new int[32];
+            tree.attributeValueStart = new int[32];
+            tree.attributeValueLength = new int[32];
+            tree.chars = new char[1024];
+            tree.documentElement = NONE;
+        }
+
+        private Tree build( final InputSource source ) throws SAXException, IOException {
+            XMLStreamReader reader = null;
+            try {
+                reader = source.getByteStream() != null ?
+                        INPUT_FACTORY.createXMLStreamReader( source.getByteStream(), source.getEncoding() ) :
+                        INPUT_FACTORY.createXMLStreamReader( source.getCharacterStream() );
+
+                int current = addNode( Node.DOCUMENT_NODE, NONE );
+                while ( reader.hasNext() ) {
+                    switch ( reader.next() ) {
+                        case XMLStreamReader.DTD:
+                        case XMLStreamReader.ENTITY_REFERENCE:
+                            return null;
+                        case XMLStreamReader.START_ELEMENT:
+                            current = addElement( reader, current );
+                            break;
+                        case XMLStreamReader.END_ELEMENT:
+                            current = tree.parent[current];
+                            break;
+                        case XMLStreamReader.CHARACTERS:
+                        case XMLStreamReader.SPACE:
+                            if ( current != ROOT ) addText( reader, Node.TEXT_NODE, current );
+                            break;
+                        case XMLStreamReader.CDATA:
+                            addText( reader, Node.CDATA_SECTION_NODE, current );
+                            break;
+                        case XMLStreamReader.COMMENT:
+                            addText( reader, Node.COMMENT_NODE, current );
+                            break;
+                        case XMLStreamReader.PROCESSING_INSTRUCTION:
+                            final int node = addNode( Node.PROCESSING_INSTRUCTION_NODE, current );
+                            tree.name[node] = stringIndex( reader.getPITarget() );
+                            final String data = reader.getPIData();
+                            tree.valueStart[node] = addChars( data == null ? "" : data );
+                            tree.valueLength[node] = charCount - tree.valueStart[node];
+                            break;
+                    }
+                }
+            } catch ( XMLStreamException e ) {
+                throw new SAXException( "Unable to parse XML: " + ExceptionUtils.getMessage( e ), e );
+            } finally {
+                ResourceUtils.closeQuietly( reader );
+            }
+
+            if ( tree.documentElement == NONE ) throw new SAXException( "Unable to parse XML: no document element" );
+            tree.strings = new String[stringIndexes.size()];
+            for ( final Map.Entry<String,Integer> entry : stringIndexes.entrySet() ) {
+                tree.strings[entry.getValue()] = entry.getKey();
+            }
+            trim();
+            return tree;
+        }
+
+        private int addElement( final XMLStreamReader reader, final int parent ) {
+            final int node = addNode( Node.ELEMENT_NODE, parent );
+            if ( parent == ROOT ) tree.documentElement = node;
+            tree.name[node] = stringIndex( reader.getLocalName() );
+            tree.namespace[node] = stringIndex( reader.getNamespaceURI() );
+            tree.prefix[node] = stringIndex( reader.getPrefix() );
+
+            tree.attributeStart[node] = attributeCount;
+            for ( int i = 0; i < reader.getNamespaceCount(); i++ ) {
+                final String nsPrefix = reader.getNamespacePrefix( i );
+                final String nsUri = reader.getNamespaceURI( i );
+                if ( nsPrefix == null || nsPrefix.isEmpty() ) {
+                    addAttribute( XMLConstants.XMLNS_ATTRIBUTE, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, null, nsUri );
+                } else {
+                    addAttribute( nsPrefix, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE, nsUri );
+                }
+            }
+            for ( int i = 0; i < reader.getAttributeCount(); i++ ) {
+                addAttribute( reader.getAttributeLocalName( i ), reader.getAttributeNamespace( i ),
+                        reader.getAttributePrefix( i ), reader.getAttributeValue( i ) );
+            }
+            tree.attributeEnd[node] = attributeCount;
+            return node;
+        }
+
+        private void addAttribute( final String localName, final String namespace, final String prefix, final String value ) {
+            if ( attributeCount == tree.attributeLocalName.length ) {
+                final int size = attributeCount * 2;
+                tree.attributeLocalName = Arrays.copyOf( tree.attributeLocalName, size );
+                tree.attributeNamespace = Arrays.copyOf( tree.attributeNamespace, size );
+                tree.attributePrefix = Arrays.copyOf( tree.attributePrefix, size );
+                tree.attributeValueStart = Arrays.copyOf( tree.attributeValueStart, size );
+                tree.attributeValueLength = Arrays.copyOf( tree.attributeValueLength, size );
+            }
+            tree.attributeLocalName[attributeCount] = stringIndex( localName );
+            tree.attributeNamespace[attributeCount] = stringIndex( namespace );
+            tree.attributePrefix[attributeCount] = stringIndex( prefix );
+            tree.attributeValueStart[attributeCount] = addChars( value == null ? "" : value );
+            tree.attributeValueLength[attributeCount] = charCount - tree.attributeValueStart[attributeCount];
+            attributeCount++;
+        }
+
+        /**
+         * Add text, adjacent text of the same kind is merged into a single node.
+         */
+        private void addText( final XMLStreamReader reader, final short kind, final int parent ) {
+            final int last = lastChild[parent];
+            final int start = charCount;
+            ensureChars( reader.getTextLength() );
+            System.arraycopy( reader.getTextCharacters(), reader.getTextStart(), tree.chars, charCount, reader.getTextLength() );
+            charCount += reader.getTextLength();
+
+            if ( kind != Node.COMMENT_NODE && last != NONE && tree.kind[last] == kind &&
+                    tree.valueStart[last] + tree.valueLength[last] == start ) {
+                tree.valueLength[last] += charCount - start;
+            } else {
+                final int node = addNode( kind, parent );
+                tree.valueStart[node] = start;
+                tree.valueLength[node] = charCount - start;
+            }
+        }
+
+        private int addNode( final short kind, final int parent ) {
+            if ( tree.nodeCount == tree.kind.length ) {
+                final int size = tree.nodeCount * 2;
+                tree.kind = Arrays.copyOf( tree.kind, size );
+                tree.parent = Arrays.copyOf( tree.parent, size );
+                tree.firstChild = Arrays.copyOf( tree.firstChild, size );
+                tree.nextSibling = Arrays.copyOf( tree.nextSibling, size );
+                tree.name = Arrays.copyOf( tree.name, size );
+                tree.namespace = Arrays.copyOf( tree.namespace, size );
+                tree.prefix = Arrays.copyOf( tree.prefix, size );
+                tree.valueStart = Arrays.copyOf( tree.valueStart, size );
+                tree.valueLength = Arrays.copyOf( tree.valueLength, size );
+                tree.attributeStart = Arrays.copyOf( tree.attributeStart, size );
+                tree.attributeEnd = Arrays.copyOf( tree.attributeEnd, size );
+                lastChild = Arrays.copyOf( lastChild, size );
+            }
+
+            final int node = tree.nodeCount++;
+            tree.kind[node] = kind;
+            tree.parent[node] = parent;
+            tree.firstChild[node] = NONE;
+            tree.nextSibling[node] = NONE;
+            tree.name[node] = NONE;
+            tree.namespace[node] = NONE;
+            tree.prefix[node] = NONE;
+            lastChild[node] = NONE;
+
+            if ( parent != NONE ) {
+                if ( lastChild[parent] == NONE ) {
+                    tree.firstChild[parent] = node;
+                } else {
+                    tree.nextSibling[lastChild[parent]] = node;
+                }
+                lastChild[parent] = node;
+            }
+            return node;
+        }
+
+        private int addChars( final String text ) {
+            final int start = charCount;
+            ensureChars( text.length() );
+            text.getChars( 0, text.length(), tree.chars, charCount );
+            charCount += text.length();
+            return start;
+        }
+
+        private void ensureChars( final int length ) {
+            if ( charCount + length > tree.chars.length ) {
+                tree.chars = Arrays.copyOf( tree.chars, Math.max( tree.chars.length * 2, charCount + length ) );
+            }
+        }
+
+        private int stringIndex( final String value ) {
+            if ( value == null || value.isEmpty() ) return NONE;
+            Integer index = stringIndexes.get( value );
+            if ( index == null ) {
+                index = stringIndexes.size();
+                stringIndexes.put( value, index );
+            }
+            return index;
+        }
+
+        /**
+         * Release unused array capacity, the tree may be retained for the life of a message.
+         */
+        private void trim() {
+            final int size = tree.nodeCount;
+            tree.kind = Arrays.copyOf( tree.kind, size );
+            tree.parent = Arrays.copyOf( tree.parent, size );
+            tree.firstChild = Arrays.copyOf( tree.firstChild, size );
+            tree.nextSibling = Arrays.copyOf( tree.nextSibling, size );
+            tree.name = Arrays.copyOf( tree.name, size );
+            tree.namespace = Arrays.copyOf( tree.namespace, size );
+            tree.prefix = Arrays.copyOf( tree.prefix, size );
+            tree.valueStart = Arrays.copyOf( tree.valueStart, size );
+            tree.valueLength = Arrays.copyOf( tree.valueLength, size );
+            tree.attributeStart = Arrays.copyOf( tree.attributeStart, size );
+            tree.attributeEnd = Arrays.copyOf( tree.attributeEnd, size );
+            tree.attributeLocalName = Arrays.copyOf( tree.attributeLocalName, attributeCount );
+            tree.attributeNamespace = Arrays.copyOf( tree.attributeNamespace, attributeCount );
+            tree.attributePrefix = Arrays.copyOf( tree.attributePrefix, attributeCount );
+            tree.attributeValueStart = Arrays.copyOf( tree.attributeValueStart, attributeCount );
+            tree.attributeValueLength = Arrays.copyOf( tree.attributeValueLength, attributeCount );
+            tree.chars = Arrays.copyOf( tree.chars, charCount );
+            lastChild = null;
+        }
+    }
+}
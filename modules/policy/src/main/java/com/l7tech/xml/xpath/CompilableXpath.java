@@ -54,10 +54,14 @@ public abstract class CompilableXpath {
     /**
      * Return a CompiledXpath that will work with Jaxen.
      *
+     * <p>If the expression is in the forward only subset the returned xpath
+     * will also support streaming evaluation, see {@link StreamingCompiledXpath}.</p>
+     *
      * @return a compiled xpath.  Never null.
      * @throws InvalidXpathException if this CompilableXpath turned out not to be quite so compilable after all
      */
     public CompiledXpath compile() throws InvalidXpathException {
-        return new DomCompiledXpath(this);
+        final CompiledXpath streamingXpath = StreamingCompiledXpath.compileIfSupported(this);
+        return streamingXpath != null ? streamingXpath : new DomCompiledXpath(this);
     }
 }
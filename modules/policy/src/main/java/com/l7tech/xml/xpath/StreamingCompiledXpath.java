@@ -0,0 +1,345 @@
+package com.l7tech.xml.xpath;
+
+import com.l7tech.util.ConfigFactory;
+import com.l7tech.util.ExceptionUtils;
+import com.l7tech.util.ResourceUtils;
+import com.l7tech.xml.ElementCursor;
+import com.l7tech.xml.InvalidXpathException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A CompiledXpath for forward only expressions that can also be evaluated
+ * while streaming a document with StAX.
+ *
+ * <p>The supported subset is an absolute location path of child element
+ * steps, each a (possibly prefixed) name or wildcard with an optional
+ * position predicate, optionally followed by a single named attribute
+ * step, for example <code>/soapenv:Envelope/soapenv:Body/*[1]/ns:orderId</code>.</p>
+ *
+ * <p>Instances can also be used anywhere a DomCompiledXpath can be used.</p>
+ */
+public class StreamingCompiledXpath extends DomCompiledXpath {
+
+    //- PUBLIC
+
+    public static final String PROP_ENABLED = StreamingCompiledXpath.class.getName() + ".enabled";
+
+    /**
+     * Compile the given expression for streaming if it is in the supported subset.
+     *
+     * @param xp the expression to compile.  Must not be null.
+     * @return the compiled xpath, or null if the expression cannot be streamed.
+     * @throws InvalidXpathException if the expression is invalid
+     */
+    @Nullable
+    public static StreamingCompiledXpath compileIfSupported( @NotNull final CompilableXpath xp ) throws InvalidXpathException {
+        if ( !ConfigFactory.getBooleanProperty( PROP_ENABLED, true ) ) return null;
+
+        final XpathVersion version = xp.getXpathVersion();
+        if ( !XpathVersion.XPATH_1_0.equals( version ) && !XpathVersion.UNSPECIFIED.equals( version ) ) return null;
+
+        final List<Step> steps = parse( xp.getExpression(), xp.getNamespaces() );
+        return steps == null ? null : new StreamingCompiledXpath( xp, steps );
+    }
+
+    /**
+     * Evaluate this xpath against the document from the given source.
+     *
+     * <p>The entire document is read, so a document that is not well formed
+     * is always reported.</p>
+     *
+     * @param source The source for the document.  Must not be null.
+     * @return The result, or null if the document cannot be streamed and should be evaluated using DOM
+     * @throws SAXException if the document is not well formed
+     * @throws IOException if the document cannot be read
+     */
+    @Nullable
+    public XpathResult evaluate( @NotNull final InputSource source ) throws SAXException, IOException {
+        final List<Match> matches = new ArrayList<Match>();
+        final int elementSteps = attributeStep == null ? steps.size() : steps.size() - 1;
+        final int[] positions = new int[elementSteps + 1];
+        int depth = 0;
+        int matchedDepth = 0;
+        StringBuilder value = null;
+
+        XMLStreamReader reader = null;
+        try {
+            reader = source.getByteStream() != null ?
+                    INPUT_FACTORY.createXMLStreamReader( source.getByteStream(), source.getEncoding() ) :
+                    INPUT_FACTORY.createXMLStreamReader( source.getCharacterStream() );
+            while ( reader.hasNext() ) {
+                switch ( reader.next() ) {
+                    case XMLStreamReader.DTD:
+                        return null;
+                    case XMLStreamReader.START_ELEMENT:
+                        depth++;
+                        if ( depth == matchedDepth + 1 && depth <= elementSteps ) {
+                            final Step step = steps.get( depth - 1 );
+                            if ( step.matches( reader.getNamespaceURI(), reader.getLocalName() ) &&
+                                 ( step.position == 0 || ++positions[depth - 1] == step.position ) ) {
+                                matchedDepth = depth;
+                                positions[depth] = 0;
+                                if ( depth == elementSteps ) {
+                                    if ( attributeStep == null ) {
+                                        matches.add( new Match( Node.ELEMENT_NODE, reader.getPrefix(), reader.getLocalName(), null ) );
+                                        value = new StringBuilder();
+                                    } else {
+                                        addAttributeMatch( reader, matches );
+                                    }
+                                }
+                            }
+                        }
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        if ( depth == matchedDepth ) {
+                            matchedDepth--;
+                            if ( value != null ) {
+                                matches.get( matches.size() - 1 ).value = value.toString();
+                                value = null;
+                            }
+                        }
+                        depth--;
+                        break;
+                    case XMLStreamReader.CHARACTERS:
+                    case XMLStreamReader.CDATA:
+                    case XMLStreamReader.SPACE:
+                        if ( value != null ) {
+                            value.append( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+                        }
+                        break;
+                }
+            }
+        } catch ( XMLStreamException e ) {
+            throw new SAXException( "Unable to parse XML: " + ExceptionUtils.getMessage( e ), e );
+        } finally {
+            ResourceUtils.closeQuietly( reader );
+        }
+
+        return matches.isEmpty() ? XpathResult.RESULT_EMPTY : new StreamingXpathResult( matches );
+    }
+
+    //- PRIVATE
+
+    private static final Pattern STEP_PATTERN = Pattern.compile(
+            "(@)?(?:([A-Za-z_][\\w.\\-]*):)?(\\*|[A-Za-z_][\\w.\\-]*)(?:\\[([1-9][0-9]{0,8})\\])?" );
+    private static final XMLInputFactory INPUT_FACTORY = buildInputFactory();
+
+    private final List<Step> steps;
+    private final Step attributeStep;
+
+    private StreamingCompiledXpath( final CompilableXpath xp,
+                                    final List<Step> steps ) throws InvalidXpathException {
+        super( xp );
+        this.steps = steps;
+        final Step last = steps.get( steps.size() - 1 );
+        this.attributeStep = last.attribute ? last : null;
+    }
+
+    private void addAttributeMatch( final XMLStreamReader reader, final List<Match> matches ) {
+        for ( int i = 0; i < reader.getAttributeCount(); i++ ) {
+            if ( attributeStep.matches( reader.getAttributeNamespace( i ), reader.getAttributeLocalName( i ) ) ) {
+                final String prefix = reader.getAttributePrefix( i );
+                matches.add( new Match( Node.ATTRIBUTE_NODE, prefix, reader.getAttributeLocalName( i ), reader.getAttributeValue( i ) ) );
+                break;
+            }
+        }
+    }
+
+    /**
+     * Parse the expression into steps, returns null if the expression is not in the supported subset.
+     */
+    private static List<Step> parse( final String expression, final Map<String,String> namespaces ) {
+        if ( expression == null ) return null;
+        final String path = expression.trim();
+        if ( path.length() < 2 || path.charAt( 0 ) != '/' ) return null;
+
+        final String[] stepTexts = path.substring( 1 ).split( "/", -1 );
+        final List<Step> steps = new ArrayList<Step>( stepTexts.length );
+        for ( int i = 0; i < stepTexts.length; i++ ) {
+            final Matcher matcher = STEP_PATTERN.matcher( stepTexts[i] );
+            if ( !matcher.matches() ) return null;
+
+            final boolean attribute = matcher.group( 1 ) != null;
+            final String prefix = matcher.group( 2 );
+            final String localName = matcher.group( 3 );
+            final String position = matcher.group( 4 );
+            if ( attribute && ( i < stepTexts.length - 1 || i == 0 || position != null || "*".equals( localName ) ) ) return null;
+
+            final String namespace;
+            if ( prefix == null ) {
+                namespace = "";
+            } else {
+                namespace = namespaces == null ? null : namespaces.get( prefix );
+                if ( namespace == null || namespace.isEmpty() ) return null;
+            }
+            steps.add( new Step( attribute, namespace, "*".equals( localName ) ? null : localName,
+                    prefix == null && "*".equals( localName ), position == null ? 0 : Integer.parseInt( position ) ) );
+        }
+        return steps;
+    }
+
+    private static XMLInputFactory buildInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE );
+        factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+        factory.setXMLResolver( new XMLResolver() {
+            @Override
+            public Object resolveEntity( final String publicID,
+                                         final String systemID,
+                                         final String baseURI,
+                                         final String namespace ) throws XMLStreamException {
+                throw new XMLStreamException( "External entity access forbidden '" + systemID + "' relative to '" + baseURI + "'." );
+            }
+        } );
+        return factory;
+    }
+
+    /**
+     * A step in the location path.
+     */
+    private static final class Step {
+        private final boolean attribute;
+        private final String namespace; // null for any namespace
+        private final String localName; // null for any name
+        private final int position; // 0 for any position
+
+        private Step( final boolean attribute,
+                      final String namespace,
+                      final String localName,
+                      final boolean anyNamespace,
+                      final int position ) {
+            this.attribute = attribute;
+            this.namespace = anyNamespace ? null : namespace;
+            this.localName = localName;
+            this.position = position;
+        }
+
+        private boolean matches( final String namespaceUri, final String name ) {
+            return ( localName == null || localName.equals( name ) ) &&
+                   ( namespace == null || namespace.equals( namespaceUri == null ? "" : namespaceUri ) );
+        }
+    }
+
+    /**
+     * A matched node, the value of an element is set when the element ends.
+     */
+    private static final class Match {
+        private final int type;
+        private final String prefix;
+        private final String localName;
+        private String value;
+
+        private Match( final int type, final String prefix, final String localName, final String value ) {
+            this.type = type;
+            this.prefix = prefix == null || prefix.isEmpty() ? null : prefix;
+            this.localName = localName;
+            this.value = value;
+        }
+
+        private String getNodeName() {
+            return prefix == null ? localName : prefix + ":" + localName;
+        }
+    }
+
+    /**
+     * Nodeset result for matches, there is no cursor for the matched nodes.
+     */
+    private static final class StreamingXpathResult extends XpathResult.XpathResultAdapter implements XpathResultNodeSet {
+        private final List<Match> matches;
+
+        private StreamingXpathResult( final List<Match> matches ) {
+            this.matches = Collections.unmodifiableList( matches );
+        }
+
+        @Override
+        public short getType() {
+            return TYPE_NODESET;
+        }
+
+        @Override
+        public XpathResultNodeSet getNodeSet() {
+            return this;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return matches.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return matches.size();
+        }
+
+        @Override
+        public XpathResultIterator getIterator() {
+            return new XpathResultIterator() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < matches.size();
+                }
+
+                @Override
+                public void next( final XpathResultNode template ) throws NoSuchElementException {
+                    if ( !hasNext() ) throw new NoSuchElementException();
+                    final Match match = matches.get( index++ );
+                    template.type = match.type;
+                    template.localNameHaver = match.localName;
+                    template.prefixHaver = match.prefix;
+                    template.nodeNameHaver = match.getNodeName();
+                    template.nodeValueHaver = match.value;
+                }
+
+                @Override
+                public ElementCursor nextElementAsCursor() throws NoSuchElementException {
+                    throw new UnsupportedOperationException( "Streaming XPath results do not support cursors" );
+                }
+            };
+        }
+
+        @Override
+        public int getType( final int ordinal ) {
+            return matches.get( ordinal ).type;
+        }
+
+        @Override
+        public String getNodePrefix( final int ordinal ) {
+            return matches.get( ordinal ).prefix;
+        }
+
+        @Override
+        public String getNodeLocalName( final int ordinal ) {
+            return matches.get( ordinal ).localName;
+        }
+
+        @Override
+        public String getNodeName( final int ordinal ) {
+            return matches.get( ordinal ).getNodeName();
+        }
+
+        @Override
+        public String getNodeValue( final int ordinal ) {
+            return matches.get( ordinal ).value;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.l7tech.xml.xslt;
 
 import com.l7tech.common.io.XmlUtil;
 import com.l7tech.message.XmlKnob;
+import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.ExceptionUtils;
 import com.l7tech.util.PoolByteArrayOutputStream;
 import com.l7tech.xml.ElementCursor;
@@ -10,38 +11,69 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.LocatorImpl;
-import org.xml.sax.helpers.XMLReaderFactory;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Represents an XSLT that has been compiled and is ready to apply to a Message or Message part.
  * Use {@link StylesheetCompiler#compileStylesheet} to obtain an instance of this class.
+ *
+ * <p>Transformers are pooled per stylesheet and parsers for streamed input
+ * are shared, both are reset between uses. Output is collected in a pooled
+ * buffer that is handed to the TransformOutput.</p>
  */
 public class CompiledStylesheet {
     protected static final Logger logger = Logger.getLogger(CompiledStylesheet.class.getName());
 
     private static final String SYSTEM_ID_MESSAGE = "http://layer7tech.com/message"; // Dummy system identifier used to identify errors parsing a message.
+    private static final String PROP_TRANSFORMER_POOL_SIZE = "com.l7tech.xml.xslt.transformerPoolSize";
+    private static final String PROP_SAX_PARSER_POOL_SIZE = "com.l7tech.xml.xslt.saxParserPoolSize";
+    private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+    static {
+        SAX_PARSER_FACTORY.setNamespaceAware(true);
+    }
+    private static final BlockingQueue<SAXParser> saxParserPool = buildSaxParserPool();
 
     private final Templates softwareStylesheet;
     private final String[] varsUsed;
+    private final boolean streamable;
+    private final BlockingQueue<Transformer> transformerPool;
 
     /**
      * Produce a CompiledStylesheet using the specified software stylesheet.
      *
      * @param softwareStylesheet  a software stylesheet to use Required.
      * @param varsUsed     context variables used by the stylesheet
+     * @param streamable   true if the stylesheet should always be given a streamed source
      */
-    CompiledStylesheet(Templates softwareStylesheet, String[] varsUsed) {
+    CompiledStylesheet(Templates softwareStylesheet, String[] varsUsed, boolean streamable) {
         this.softwareStylesheet = softwareStylesheet;
         this.varsUsed = varsUsed;
+        this.streamable = streamable;
         if (softwareStylesheet == null)
             throw new IllegalArgumentException("softwareStylesheet must be provided");
+        final int poolSize = ConfigFactory.getIntProperty(PROP_TRANSFORMER_POOL_SIZE, 16);
+        this.transformerPool = poolSize > 0 ? new ArrayBlockingQueue<Transformer>(poolSize) : null;
+    }
+
+    /**
+     * Check if this stylesheet streams its input rather than using an existing DOM.
+     *
+     * @return true if the input is always streamed
+     */
+    public boolean isStreamable() {
+        return streamable;
     }
 
     /**
@@ -58,7 +90,7 @@ public class CompiledStylesheet {
     public void transform(TransformInput input, TransformOutput output, ErrorListener errorListener)
             throws SAXException, IOException, TransformerException {
         XmlKnob xmlKnob = input.getXmlKnob();
-        if (xmlKnob.isDomParsed() ) {
+        if (xmlKnob.isDomParsed() && !streamable) {
             transformDom(input, output, errorListener);
         } else {
             transformSax(input, output, errorListener);
@@ -80,13 +112,17 @@ public class CompiledStylesheet {
         // Read the part content non-destructively so that content will not be lost if parser/transformer fails for any reason.
         final InputSource input = t.getXmlKnob().getInputSource(false);
         input.setSystemId( SYSTEM_ID_MESSAGE ); // used to identify parse errors in message
-        final XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-        xmlReader.setFeature( "http://xml.org/sax/features/namespaces", true );
-        xmlReader.setFeature( XmlUtil.XERCES_DISALLOW_DOCTYPE, true );
-        xmlReader.setEntityResolver( XmlUtil.getSafeEntityResolver() );
-        xmlReader.setErrorHandler( XmlUtil.getStrictErrorHandler() );
-        final Source source = new SAXSource( xmlReader, input );
-        transformUsingSoftwareStylesheet( source, t, output, errorListener );
+        final SAXParser saxParser = borrowSaxParser();
+        try {
+            final XMLReader xmlReader = saxParser.getXMLReader();
+            xmlReader.setFeature( XmlUtil.XERCES_DISALLOW_DOCTYPE, true );
+            xmlReader.setEntityResolver( XmlUtil.getSafeEntityResolver() );
+            xmlReader.setErrorHandler( XmlUtil.getStrictErrorHandler() );
+            final Source source = new SAXSource( xmlReader, input );
+            transformUsingSoftwareStylesheet( source, t, output, errorListener );
+        } finally {
+            returnSaxParser( saxParser );
+        }
     }
 
     private void transformUsingSoftwareStylesheet(Source source, TransformInput t, TransformOutput output, ErrorListener errorListener) throws SAXException, TransformerException, IOException {
@@ -94,7 +130,8 @@ public class CompiledStylesheet {
         final StreamResult sr = new StreamResult(os);
 
         try {
-            Transformer transformer = softwareStylesheet.newTransformer();
+            final Transformer transformer = borrowTransformer();
+            final ErrorListener defaultErrorListener = transformer.getErrorListener();
             transformer.setURIResolver(XmlUtil.getSafeURIResolver());
             if (errorListener != null)
                 transformer.setErrorListener(errorListener);
@@ -104,7 +141,11 @@ public class CompiledStylesheet {
                     transformer.setParameter(variableName, value);
             }
             transformer.transform(source, sr);
-            output.setBytes(os.toByteArray());
+            returnTransformer(transformer, defaultErrorListener);
+
+            // the output owns the buffer from here, so it can be stashed without a copy
+            final int length = os.size();
+            output.setBytes(os.detachPooledByteArray(), 0, length);
             logger.finest("software xsl transformation completed");
         } catch ( TransformerException e ) {
             final SourceLocator locator = e.getLocator();
@@ -128,4 +169,66 @@ public class CompiledStylesheet {
             os.close();
         }
     }
+
+    /**
+     * Get a parser from the pool or create a new one, parsers are shared by all stylesheets.
+     */
+    private static SAXParser borrowSaxParser() throws SAXException {
+        final SAXParser saxParser = saxParserPool == null ? null : saxParserPool.poll();
+        if (saxParser != null) return saxParser;
+        try {
+            return SAX_PARSER_FACTORY.newSAXParser();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException("Unable to create XML parser: " + ExceptionUtils.getMessage(e), e);
+        }
+    }
+
+    /**
+     * Reset and pool a parser, the reset discards all handlers and features.
+     */
+    private static void returnSaxParser(final SAXParser saxParser) {
+        if (saxParserPool != null) {
+            try {
+                saxParser.reset();
+                saxParserPool.offer(saxParser);
+            } catch (UnsupportedOperationException e) {
+                logger.log(Level.FINE, "Parser cannot be reset, not pooling", e);
+            }
+        }
+    }
+
+    /**
+     * Create the shared parser pool, a size of zero or less disables pooling.
+     */
+    private static BlockingQueue<SAXParser> buildSaxParserPool() {
+        final int poolSize = ConfigFactory.getIntProperty(PROP_SAX_PARSER_POOL_SIZE, 16);
+        return poolSize > 0 ? new ArrayBlockingQueue<SAXParser>(poolSize) : null;
+    }
+
+    /**
+     * Get a transformer from the pool or create a new one.
+     */
+    private Transformer borrowTransformer() throws TransformerConfigurationException {
+        final Transformer transformer = transformerPool == null ? null : transformerPool.poll();
+        return transformer != null ? transformer : softwareStylesheet.newTransformer();
+    }
+
+    /**
+     * Reset and pool a transformer after a successful transformation.
+     *
+     * <p>Transformers that fail are not pooled since their state is unknown.</p>
+     */
+    private void returnTransformer(final Transformer transformer, final ErrorListener defaultErrorListener) {
+        if (transformerPool != null) {
+            try {
+                // not all implementations clear these on reset
+                transformer.clearParameters();
+                transformer.setErrorListener(defaultErrorListener);
+                transformer.reset();
+                transformerPool.offer(transformer);
+            } catch (UnsupportedOperationException e) {
+                logger.log(Level.FINE, "Transformer cannot be reset, not pooling", e);
+            }
+        }
+    }
 }
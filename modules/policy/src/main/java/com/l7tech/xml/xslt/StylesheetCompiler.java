@@ -3,6 +3,7 @@ package com.l7tech.xml.xslt;
 import com.l7tech.common.io.XmlUtil;
 import com.l7tech.util.ConfigFactory;
 import com.l7tech.util.ExceptionUtils;
+import net.sf.saxon.PreparedStylesheet;
 import org.jetbrains.annotations.Nullable;
 import org.w3c.dom.*;
 import org.xml.sax.InputSource;
@@ -50,7 +51,7 @@ public class StylesheetCompiler {
             xsltVersion = "1.0";
         final Document cleanXslt = preprocessStylesheet( xslt );
         final Templates templates = compileSoftware(cleanXslt, xsltVersion);
-        return new CompiledStylesheet(templates, getVariablesUsed(templates));
+        return new CompiledStylesheet(templates, getVariablesUsed(templates), templates instanceof PreparedStylesheet && isStreamable(cleanXslt));
     }
 
     /**
@@ -120,6 +121,30 @@ public class StylesheetCompiler {
         return varsUsed;
     }
 
+    /**
+     * Check if the default mode of the stylesheet is declared streamable (xsl:mode streamable="yes").
+     *
+     * <p>Saxon can only stream a stylesheet when it is given a streamed
+     * source, so such stylesheets are never given an existing DOM.</p>
+     */
+    private static boolean isStreamable(final Document document) {
+        NodeList nodes = document.getDocumentElement().getChildNodes();
+        for (int i=0; i<nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if ( node.getNodeType() == Node.ELEMENT_NODE &&
+                 NAMESPACE_XSLT.equals(node.getNamespaceURI()) &&
+                 "mode".equals(node.getLocalName())) {
+
+                Element mode = (Element) node;
+                if ( !mode.hasAttribute("name") ) {
+                    String streamable = mode.getAttribute("streamable").trim();
+                    return "yes".equals(streamable) || "true".equals(streamable) || "1".equals(streamable);
+                }
+            }
+        }
+        return false;
+    }
+
     private static void removeOutputXalanAndSaxonExtensions(final Document document) {
 
         // find the output elements that use xalan extensions
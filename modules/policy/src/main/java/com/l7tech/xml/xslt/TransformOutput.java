@@ -1,6 +1,9 @@
 package com.l7tech.xml.xslt;
 
+import com.l7tech.util.BufferPool;
+
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Represents the output of an XSL transformation using {@link CompiledStylesheet}.
@@ -18,6 +21,26 @@ public class TransformOutput {
         this.bytes = bytes;
     }
 
+    /**
+     * Report the result of a successful transformation that is held in part of a buffer.
+     *
+     * <p>The buffer belongs to this output once passed, so an implementation
+     * can keep it rather than copying. By default the bytes are copied and
+     * the buffer is returned to the {@link BufferPool}.</p>
+     *
+     * @param buffer the buffer holding the bytes that were emitted by the transformation.  Required.
+     * @param offset the offset of the first byte in the buffer
+     * @param length the number of bytes
+     * @throws IOException if there is a problem sending these bytes wherever they needed to go.
+     */
+    public void setBytes(byte[] buffer, int offset, int length) throws IOException {
+        try {
+            setBytes(Arrays.copyOfRange(buffer, offset, offset + length));
+        } finally {
+            BufferPool.returnBuffer(buffer);
+        }
+    }
+
     /**
      * Obtain the bytes that were last set with {@link #setBytes}.
      *
@@ -1,10 +1,24 @@
 package com.l7tech.message;
 
 import com.l7tech.common.http.HttpConstants;
+import com.l7tech.common.io.XmlUtil;
+import com.l7tech.common.mime.ByteArrayStashManager;
+import com.l7tech.common.mime.ContentTypeHeader;
+import com.l7tech.json.JSONData;
+import com.l7tech.json.JsonSchemaVersion;
+import com.l7tech.util.Charsets;
+import com.l7tech.util.IOUtils;
+import com.l7tech.xml.DomElementCursor;
+import com.l7tech.xml.ElementCursor;
+import com.l7tech.xml.xpath.XpathExpression;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
 
 import static org.junit.Assert.*;
 
@@ -65,4 +79,63 @@ public class MessageTest {
     public void findHttpCookiesKnobNotAttached() {
         assertNull(message.getKnob(HttpCookiesKnob.class));
     }
+
+    @Test
+    public void jsonDataSharedUntilBodyChanged() throws Exception {
+        final Message jsonMessage = new Message(new ByteArrayStashManager(), ContentTypeHeader.APPLICATION_JSON,
+                new ByteArrayInputStream("{\"a\":1}".getBytes(Charsets.UTF8)));
+        final JSONData jsonData = jsonMessage.getJsonKnob().getJsonData(JsonSchemaVersion.DRAFT_V4);
+        final Object jsonObject = jsonData.getJsonObject();
+        assertSame(jsonData, jsonMessage.getJsonKnob().getJsonData(JsonSchemaVersion.DRAFT_V4));
+        assertSame(jsonObject, jsonMessage.getJsonKnob().getJsonData(JsonSchemaVersion.DRAFT_V4).getJsonObject());
+        assertEquals(jsonData.getJsonData(), jsonMessage.getJsonKnob().getJsonData(JsonSchemaVersion.DRAFT_V2).getJsonData());
+
+        jsonMessage.getMimeKnob().getFirstPart().setBodyBytes("{\"a\":2}".getBytes(Charsets.UTF8));
+        assertEquals("{\"a\":2}", jsonMessage.getJsonKnob().getJsonData(JsonSchemaVersion.DRAFT_V4).getJsonData());
+        assertEquals(Collections.singletonMap("a", 2), jsonMessage.getJsonKnob().getJsonData(JsonSchemaVersion.DRAFT_V4).getJsonObject());
+    }
+
+    @Test
+    public void xmlCursorWithoutDom() throws Exception {
+        final Message xmlMessage = new Message(new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT,
+                new ByteArrayInputStream("<a><b>text</b></a>".getBytes(Charsets.UTF8)));
+        final ElementCursor cursor = xmlMessage.getXmlKnob().getReadOnlyElementCursor();
+        cursor.moveToDocumentElement();
+        assertTrue(cursor.moveToFirstChildElement());
+        assertEquals("text", cursor.getTextValue());
+        assertFalse(xmlMessage.getXmlKnob().isDomParsed());
+
+        assertTrue(cursor.matches(new XpathExpression("self::b").compile()));
+        assertTrue(xmlMessage.getXmlKnob().isDomParsed());
+        assertSame(cursor.asDomElement().getOwnerDocument(), xmlMessage.getXmlKnob().getDocumentReadOnly());
+    }
+
+    @Test
+    public void xmlCursorWithDom() throws Exception {
+        final Message xmlMessage = new Message(new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT,
+                new ByteArrayInputStream("<a><b>text</b></a>".getBytes(Charsets.UTF8)));
+        final ElementCursor cursor = xmlMessage.getXmlKnob().getElementCursor();
+        assertTrue(xmlMessage.getXmlKnob().isDomParsed());
+        assertTrue(cursor instanceof DomElementCursor);
+        assertSame(cursor, xmlMessage.getXmlKnob().getReadOnlyElementCursor());
+    }
+
+    @Test
+    public void originalDocumentAfterUpdate() throws Exception {
+        final Message xmlMessage = new Message(new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT,
+                new ByteArrayInputStream("<a><b>text</b></a>".getBytes(Charsets.UTF8)));
+        xmlMessage.setEnableOriginalDocument();
+
+        final Document writable = xmlMessage.getXmlKnob().getDocumentWritable();
+        writable.getDocumentElement().setAttribute("c", "d");
+        final String body = new String(IOUtils.slurpStream(xmlMessage.getMimeKnob().getEntireMessageBodyAsInputStream()), Charsets.UTF8);
+        assertEquals(XmlUtil.nodeToString(writable), body);
+
+        xmlMessage.getMimeKnob().getFirstPart().setBodyBytes("<e/>".getBytes(Charsets.UTF8));
+        assertEquals("e", xmlMessage.getXmlKnob().getDocumentReadOnly().getDocumentElement().getNodeName());
+        final Document original = xmlMessage.getXmlKnob().getOriginalDocument();
+        assertEquals("a", original.getDocumentElement().getNodeName());
+        assertFalse(original.getDocumentElement().hasAttribute("c"));
+        assertSame(original, xmlMessage.getXmlKnob().getOriginalDocument());
+    }
 }
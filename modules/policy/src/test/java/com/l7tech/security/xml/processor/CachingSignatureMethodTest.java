@@ -0,0 +1,87 @@
+package com.l7tech.security.xml.processor;
+
+import com.l7tech.security.xml.SupportedSignatureMethods;
+import com.l7tech.util.Charsets;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CachingSignatureMethod.
+ */
+public class CachingSignatureMethodTest {
+    private static final String URI = SupportedSignatureMethods.RSA_SHA1.getAlgorithmIdentifier();
+    private static final byte[] DATA = "<ds:SignedInfo>data</ds:SignedInfo>".getBytes( Charsets.UTF8 );
+
+    private static KeyPair keyPair;
+    private static KeyPair otherKeyPair;
+    private static byte[] signatureValue;
+    private int verifications;
+
+    @BeforeClass
+    public static void initKeys() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance( "RSA" );
+        generator.initialize( 1024 );
+        keyPair = generator.generateKeyPair();
+        otherKeyPair = generator.generateKeyPair();
+
+        final Signature signature = Signature.getInstance( "SHA1withRSA" );
+        signature.initSign( keyPair.getPrivate() );
+        signature.update( DATA );
+        signatureValue = signature.sign();
+    }
+
+    @Before
+    public void clearCache() {
+        CachingSignatureMethod.clearCache();
+        verifications = 0;
+    }
+
+    @Test
+    public void testRepeatedVerificationCached() throws Exception {
+        assertTrue( verify( keyPair, DATA, signatureValue ) );
+        assertTrue( verify( keyPair, DATA, signatureValue ) );
+        assertTrue( verify( keyPair, DATA, signatureValue ) );
+        assertEquals( "Public key verifications", 1, verifications );
+    }
+
+    @Test
+    public void testFailureNotCached() throws Exception {
+        final byte[] tampered = signatureValue.clone();
+        tampered[tampered.length - 1] ^= 1;
+
+        assertTrue( verify( keyPair, DATA, signatureValue ) );
+        assertFalse( verify( keyPair, DATA, tampered ) );
+        assertFalse( verify( keyPair, DATA, tampered ) );
+        assertFalse( verify( keyPair, "<ds:SignedInfo>other</ds:SignedInfo>".getBytes( Charsets.UTF8 ), signatureValue ) );
+        assertFalse( verify( otherKeyPair, DATA, signatureValue ) );
+        assertEquals( "Public key verifications", 5, verifications );
+    }
+
+    @Test
+    public void testCacheable() {
+        assertTrue( CachingSignatureMethod.isCacheable( URI ) );
+        assertTrue( CachingSignatureMethod.isCacheable( SupportedSignatureMethods.ECDSA_SHA256.getAlgorithmIdentifier() ) );
+        assertFalse( CachingSignatureMethod.isCacheable( SupportedSignatureMethods.HMAC_SHA1.getAlgorithmIdentifier() ) );
+    }
+
+    private boolean verify( final KeyPair keyPair, final byte[] data, final byte[] value ) throws Exception {
+        final CachingSignatureMethod method = new CachingSignatureMethod( new RsaSha1SignatureMethod( Signature.getInstance( "SHA1withRSA" ), URI ) {
+            @Override
+            public boolean verify( final byte[] signature ) throws SignatureException {
+                verifications++;
+                return super.verify( signature );
+            }
+        } );
+        method.initVerify( keyPair.getPublic() );
+        method.update( data );
+        return method.verify( value );
+    }
+}
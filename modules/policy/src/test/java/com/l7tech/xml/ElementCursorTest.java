@@ -10,13 +10,17 @@ import com.l7tech.test.SystemPropertyPrerequisite;
 import com.l7tech.test.SystemPropertySwitchedRunner;
 import com.l7tech.util.Charsets;
 import com.l7tech.util.InvalidDocumentFormatException;
+import com.l7tech.xml.xpath.DomCompiledXpath;
+import com.l7tech.xml.xpath.XpathExpression;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
 
 /**
  * Unit tests for an ElementCursor implementation.
@@ -36,11 +40,28 @@ public class ElementCursorTest {
         }
     }
 
+    private static class CompactElementCursorFactory implements ElementCursorFactory {
+        @Override
+        public ElementCursor newElementCursor(String xml) throws SAXException {
+            try {
+                return CompactElementCursor.parse(new InputSource(new StringReader(xml)), null);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
+
     @Test
     public void testDomCursor() throws Exception {
         testAll(new DomElementCursorFactory());
     }
 
+    @Test
+    public void testCompactCursor() throws Exception {
+        testAll(new CompactElementCursorFactory());
+        testCompact(new CompactElementCursorFactory(), new DomElementCursorFactory());
+    }
+
     private void testAll(ElementCursorFactory f) throws Exception {
         testSimple(f);
         testMixed(f);
@@ -154,4 +175,69 @@ public class ElementCursorTest {
         } );
         Assert.assertEquals( "Element node count", 17, count2[0] );
     }
-}
\ No newline at end of file
+
+    // Xml for testCompact
+    private static final String SOAP = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<!-- comment --><?pi data?>\n" +
+            "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:wsu=\"urn:wsu\">" +
+            "<s:Body wsu:Id=\"body\" a=\"1 &amp; 2\">" +
+            "<o:order xmlns:o=\"urn:orders\" xmlns=\"urn:default\"> 12<![CDATA[<34>]]><!-- c --><item/>5 </o:order>" +
+            "</s:Body>" +
+            "</s:Envelope>";
+
+    /**
+     * Compare a compact cursor with a DOM cursor for the same document.
+     */
+    private void testCompact(ElementCursorFactory compact, ElementCursorFactory dom) throws Exception {
+        final ElementCursor c = compact.newElementCursor(SOAP);
+        final ElementCursor d = dom.newElementCursor(SOAP);
+        Assert.assertNull(compact.newElementCursor("<!DOCTYPE a [<!ENTITY e 'x'>]><a>&e;</a>"));
+        try {
+            compact.newElementCursor("<a><b></a>");
+            Assert.fail("Expected parse failure");
+        } catch (SAXException e) {
+            // Ok
+        }
+
+        for (ElementCursor e : new ElementCursor[] { c, d }) {
+            e.moveToRoot();
+            Assert.assertFalse(e.moveToParentElement());
+            Assert.assertTrue(e.containsMixedModeContent(true, true));
+            e.moveToDocumentElement();
+            Assert.assertEquals("Envelope", e.getLocalName());
+            Assert.assertEquals("s", e.getPrefix());
+            Assert.assertEquals("", e.getAttributeValue("missing"));
+            Assert.assertTrue(e.moveToFirstChildElement("Body", "http://schemas.xmlsoap.org/soap/envelope/"));
+            Assert.assertEquals("body", e.getAttributeValue("wsu:Id"));
+            Assert.assertEquals("body", e.getAttributeValue("Id", "urn:wsu"));
+            Assert.assertEquals("body", e.getAttributeValue("Id", new String[] { "urn:other", "urn:wsu" }));
+            Assert.assertNull(e.getAttributeValue("Id", new String[] { "urn:other" }));
+            Assert.assertEquals("1 & 2", e.getAttributeValue("a"));
+            Assert.assertEquals("1 & 2", e.getAttributeValue("a", (String) null));
+            Assert.assertFalse(e.containsMixedModeContent(true, true));
+            Assert.assertTrue(e.moveToOnlyOneChildElement());
+            Assert.assertEquals("urn:orders", e.getNamespaceUri());
+            Assert.assertEquals("12<34>5", e.getTextValue());
+            Assert.assertTrue(e.containsMixedModeContent(true, true));
+            Assert.assertTrue(e.moveToFirstChildElement("item", "urn:default"));
+            Assert.assertNull(e.getPrefix());
+            Assert.assertFalse(e.moveToFirstChildElement());
+            Assert.assertFalse(e.moveToNextSiblingElement());
+            Assert.assertTrue(e.moveToParentElement());
+            Assert.assertTrue(e.moveToParentElement());
+            Assert.assertEquals("Body", e.getLocalName());
+        }
+
+        c.moveToDocumentElement();
+        d.moveToDocumentElement();
+        Assert.assertEquals(d.asString(), c.asString());
+        Assert.assertEquals(XmlUtil.nodeToString(d.asDomElement()), XmlUtil.nodeToString(c.asDomElement()));
+
+        final XpathExpression xpath = new XpathExpression("//o:order", "o", "urn:orders");
+        c.moveToRoot();
+        Assert.assertEquals(1, c.getXpathResult(new DomCompiledXpath(xpath)).getNodeSet().size());
+        c.moveToFirstChildElement();
+        c.moveToFirstChildElement();
+        Assert.assertEquals("item", c.getXpathResult(new DomCompiledXpath(new XpathExpression("*[1]"))).getNodeSet().getNodeLocalName(0));
+    }
+}
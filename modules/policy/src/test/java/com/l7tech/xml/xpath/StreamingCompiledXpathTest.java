@@ -0,0 +1,113 @@
+package com.l7tech.xml.xpath;
+
+import com.l7tech.common.io.XmlUtil;
+import com.l7tech.util.CollectionUtils;
+import com.l7tech.util.Charsets;
+import com.l7tech.xml.DomElementCursor;
+import com.l7tech.xml.ElementCursor;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StreamingCompiledXpath.
+ */
+public class StreamingCompiledXpathTest {
+    private static final Map<String,String> NAMESPACES = CollectionUtils.MapBuilder.<String,String>builder()
+            .put( "s", "http://schemas.xmlsoap.org/soap/envelope/" )
+            .put( "ns", "urn:orders" )
+            .map();
+
+    private static final String DOCUMENT =
+            "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">" +
+            "<soapenv:Header><h>1</h></soapenv:Header>" +
+            "<soapenv:Body>" +
+            "<o:order xmlns:o=\"urn:orders\" id=\"a1\"><o:orderId>12<![CDATA[34]]><!-- c --><x>5</x></o:orderId><o:item/></o:order>" +
+            "<o:order xmlns:o=\"urn:orders\" id=\"a2\"><o:orderId>678</o:orderId></o:order>" +
+            "</soapenv:Body>" +
+            "</soapenv:Envelope>";
+
+    @Test
+    public void testSupportedSubset() throws Exception {
+        assertNotNull( compile( "/s:Envelope/s:Body/*[1]/ns:orderId" ) );
+        assertNotNull( compile( "/s:Envelope/s:Body/ns:*" ) );
+        assertNotNull( compile( "/s:Envelope/s:Body/ns:order/@id" ) );
+        assertNotNull( compile( " /a/b[12]/c " ) );
+
+        assertNull( compile( "//ns:orderId" ) );
+        assertNull( compile( "/s:Envelope/s:Body/ns:order[@id='a1']" ) );
+        assertNull( compile( "/s:Envelope/s:Body/ns:order/text()" ) );
+        assertNull( compile( "/s:Envelope/s:Body/ns:order/@*" ) );
+        assertNull( compile( "/s:Envelope/s:Body/../s:Header" ) );
+        assertNull( compile( "count(/s:Envelope)" ) );
+        assertNull( compile( "/a[0]" ) );
+        assertNull( compile( "/" ) );
+        assertNull( compile( "a/b" ) );
+    }
+
+    @Test
+    public void testCompileSelectsStreaming() throws Exception {
+        assertTrue( new XpathExpression( "/s:Envelope/s:Body", NAMESPACES ).compile() instanceof StreamingCompiledXpath );
+        assertFalse( new XpathExpression( "//s:Body", NAMESPACES ).compile() instanceof StreamingCompiledXpath );
+    }
+
+    @Test
+    public void testSameResultsAsDom() throws Exception {
+        final String[] expressions = {
+                "/s:Envelope/s:Body/*[1]/ns:orderId",
+                "/s:Envelope/s:Body/ns:order/ns:orderId",
+                "/s:Envelope/s:Body/ns:order[2]/ns:orderId",
+                "/s:Envelope/s:Body/ns:order[3]/ns:orderId",
+                "/s:Envelope/s:Body/ns:order/@id",
+                "/s:Envelope/s:Body/ns:*",
+                "/s:Envelope/s:Header/h",
+                "/s:Envelope/s:Header/*/x",
+                "/s:Envelope/ns:Body",
+                "/s:Envelope",
+        };
+
+        final ElementCursor cursor = new DomElementCursor( XmlUtil.stringAsDocument( DOCUMENT ) );
+        for ( final String expression : expressions ) {
+            final StreamingCompiledXpath xpath = compile( expression );
+            assertNotNull( expression, xpath );
+
+            cursor.moveToRoot();
+            final XpathResultNodeSet expected = cursor.getXpathResult( xpath ).getNodeSet();
+            final XpathResult result = xpath.evaluate( source( DOCUMENT ) );
+            assertNotNull( expression, result );
+            assertEquals( expression, XpathResult.TYPE_NODESET, result.getType() );
+            final XpathResultNodeSet actual = result.getNodeSet();
+
+            assertEquals( expression, expected.size(), actual.size() );
+            for ( int i = 0; i < expected.size(); i++ ) {
+                assertEquals( expression, expected.getType( i ), actual.getType( i ) );
+                assertEquals( expression, expected.getNodeName( i ), actual.getNodeName( i ) );
+                assertEquals( expression, expected.getNodeLocalName( i ), actual.getNodeLocalName( i ) );
+                assertEquals( expression, expected.getNodeValue( i ), actual.getNodeValue( i ) );
+            }
+        }
+    }
+
+    @Test
+    public void testDoctypeNotStreamed() throws Exception {
+        assertNull( compile( "/a" ).evaluate( source( "<!DOCTYPE a [<!ENTITY e 'x'>]><a>&e;</a>" ) ) );
+    }
+
+    @Test(expected = SAXException.class)
+    public void testNotWellFormed() throws Exception {
+        compile( "/a/b" ).evaluate( source( "<a><b>text</b><c></a>" ) );
+    }
+
+    private static StreamingCompiledXpath compile( final String expression ) throws Exception {
+        return StreamingCompiledXpath.compileIfSupported( new XpathExpression( expression, NAMESPACES ) );
+    }
+
+    private static InputSource source( final String xml ) {
+        return new InputSource( new ByteArrayInputStream( xml.getBytes( Charsets.UTF8 ) ) );
+    }
+}
@@ -154,12 +154,25 @@ public class StylesheetCompilerTest {
         }
     }
 
+    @Test
+    public void testPooledTransformerReset() throws Exception {
+        final CompiledStylesheet xsl = StylesheetCompiler.compileStylesheet(PARAM_XSL, "1.0");
+        Assert.assertFalse("XSLT 1.0 stylesheet streamable", xsl.isStreamable());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("<r>value" + i + "</r>", doTransform(xsl, "<a/>", i % 2 == 0, "value" + i));
+            Assert.assertEquals("parameter cleared", "<r>default</r>", doTransform(xsl, "<a/>", i % 2 == 1, null));
+        }
+    }
+
     private boolean isXalan() {
         return TransformerFactory.newInstance().getClass().getName().equals("org.apache.xalan.processor.TransformerFactoryImpl");
     }
 
     private String doTransform(String xslt, String xml, boolean useSax) throws Exception {
-        CompiledStylesheet xsl = StylesheetCompiler.compileStylesheet(xslt, "1.0");
+        return doTransform(StylesheetCompiler.compileStylesheet(xslt, "1.0"), xml, useSax, null);
+    }
+
+    private String doTransform(CompiledStylesheet xsl, String xml, boolean useSax, final String param) throws Exception {
         TransformOutput to = new TransformOutput();
         final Message mess = useSax
                 ? new Message(new ByteArrayStashManager(), ContentTypeHeader.XML_DEFAULT, new ByteArrayInputStream(xml.getBytes(Charsets.UTF8)))
@@ -167,7 +180,7 @@ public class StylesheetCompilerTest {
         xsl.transform(
                 new TransformInput(mess.getXmlKnob(), null, new Functions.Unary<Object, String>() {
                     public Object call(String s) {
-                        return null;
+                        return param;
                     }
                 }),
                 to,
@@ -302,5 +315,11 @@ public class StylesheetCompilerTest {
                     "    </xsl:template>\n" +
                     "</xsl:stylesheet>";
 
+    private static final String PARAM_XSL =
+            "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+            "<xsl:param name=\"p\" select=\"'default'\"/>" +
+            "<xsl:template match=\"/\"><r><xsl:value-of select=\"$p\"/></r></xsl:template>" +
+            "</xsl:stylesheet>";
+
     private static final String XALAN_TEST_RESULT = "<tns:a xmlns:tns=\"http://test.tns\">Xalan-Test-Transformation result</tns:a>";
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 package com.ca.siteminder;
 
-import com.whirlycott.cache.Cache;
+import com.l7tech.common.io.SegmentedCache;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -39,11 +39,11 @@ public class SiteMinderAgentContextCache {
     public static class AgentContextSubCache {
 
         private AgentContextSubCacheType cacheType;
-        private final Cache cache;
+        private final SegmentedCache<Object,Object> cache;
         private final int maxSize;
         private final long maxAge;
 
-        public AgentContextSubCache(@Nullable Cache cache, AgentContextSubCacheType cacheType, int maxSize, long maxAge) {
+        public AgentContextSubCache(@Nullable SegmentedCache<Object,Object> cache, AgentContextSubCacheType cacheType, int maxSize, long maxAge) {
             this.cache = cache;
             this.cacheType = cacheType;
             this.maxSize = maxSize;
@@ -54,7 +54,7 @@ public class SiteMinderAgentContextCache {
             return cacheType;
         }
 
-        public Cache getCache() {
+        public SegmentedCache<Object,Object> getCache() {
             return cache;
         }
 
@@ -2,9 +2,8 @@ package com.ca.siteminder;
 
 import com.ca.siteminder.SiteMinderAgentContextCache.AgentContextSubCache;
 import com.ca.siteminder.SiteMinderAgentContextCache.AgentContextSubCacheType;
-import com.l7tech.common.io.WhirlycacheFactory;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.objectmodel.Goid;
-import com.whirlycott.cache.Cache;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -53,8 +52,8 @@ public class SiteMinderAgentContextCacheManagerImpl implements SiteMinderAgentCo
 
                 for (AgentContextSubCache subCache : subCaches) {
                     newSubCaches.add(new AgentContextSubCache(
-                            (subCache.getMaxSize() > 0) ? createWhirlycache(getSubCacheKeyString(primaryKey, subCache.getCacheType()),
-                                    subCache.getMaxSize(), 59, WhirlycacheFactory.POLICY_LRU) : null,
+                            (subCache.getMaxSize() > 0) ? createSubCache(getSubCacheKeyString(primaryKey, subCache.getCacheType()),
+                                    subCache.getMaxSize(), subCache.getMaxAge()) : null,
                             subCache.getCacheType(),
                             subCache.getMaxSize(),
                             subCache.getMaxAge()));
@@ -93,8 +92,8 @@ public class SiteMinderAgentContextCacheManagerImpl implements SiteMinderAgentCo
         }
     }
 
-    private Cache createWhirlycache(String name, int size, int tunerInterval, String maintenancePolicy) {
-        return WhirlycacheFactory.createCache(name, size, tunerInterval, maintenancePolicy);
+    private SegmentedCache<Object,Object> createSubCache(String name, int size, long maxAge) {
+        return new SegmentedCache<>(name, (long) size, Math.max(0L, maxAge), 0L, null, null);
     }
 
     @Override
@@ -126,7 +125,7 @@ public class SiteMinderAgentContextCacheManagerImpl implements SiteMinderAgentCo
             lock.unlock();
         }
 
-        // for each removed SiteMinderAgentContextCache, shutdown its Whirlycache instances
+        // for each removed SiteMinderAgentContextCache, shutdown its sub cache instances
         for (SiteMinderAgentContextCache agentContextCache : agentContextCacheList) {
             shutdownCaches(agentContextCache);
         }
@@ -150,22 +149,22 @@ public class SiteMinderAgentContextCacheManagerImpl implements SiteMinderAgentCo
             lock.unlock();
         }
 
-        // for each removed SiteMinderAgentContextCache, shutdown its Whirlycache instances
+        // for each removed SiteMinderAgentContextCache, shutdown its sub cache instances
         for (SiteMinderAgentContextCache agentContextCache : agentContextCacheList) {
             shutdownCaches(agentContextCache);
         }
     }
 
     /**
-     * Shut down each of the Whirlycache instances for the specified SiteMinderAgentContextCache
+     * Shut down each of the sub cache instances for the specified SiteMinderAgentContextCache
      *
-     * @param agentContextCache the SiteMinderAgentContextCache of whose Whirlycaches to shut down
+     * @param agentContextCache the SiteMinderAgentContextCache of whose sub caches to shut down
      */
     private void shutdownCaches(@NotNull SiteMinderAgentContextCache agentContextCache) {
         for (AgentContextSubCacheType subCacheType : AgentContextSubCacheType.values()) {
             AgentContextSubCache subCache = agentContextCache.getSubCache(subCacheType);
             if (subCache != null && subCache.getCache() != null) {
-                WhirlycacheFactory.shutdown(subCache.getCache());
+                subCache.getCache().shutdown();
             }
         }
     }
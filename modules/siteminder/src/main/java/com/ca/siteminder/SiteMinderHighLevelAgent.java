@@ -6,11 +6,11 @@ import java.util.logging.Logger;
 
 import com.ca.siteminder.util.SiteMinderUtil;
 import com.l7tech.gateway.common.siteminder.SiteMinderConfiguration;
+import com.l7tech.common.io.SegmentedCache;
 import com.l7tech.util.Config;
 import com.l7tech.util.ExceptionUtils;
 
 import com.l7tech.util.Functions;
-import com.whirlycott.cache.Cache;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.Nullable;
 
@@ -60,11 +60,11 @@ public class SiteMinderHighLevelAgent {
         final SiteMinderAgentContextCache agentCache = getCache(context.getConfig(), smAgentName);
         final AgentContextSubCache resourceSubCache = agentCache.getSubCache(AgentContextSubCacheType.AGENT_CACHE_RESOURCE);
         if (resourceSubCache.getMaxSize() > 0) {
-            final Cache cache = resourceSubCache.getCache();
+            final SegmentedCache<Object,Object> cache = resourceSubCache.getCache();
             final ResourceCacheKey resourceCacheKey = new ResourceCacheKey(resource, action, serverName != null ? serverName : "");
             //Check the cache or call isProtected to initialize the Resource and Realm Definition in the context (SMContext) in the event a cache miss occurs
 
-            if ((resourceDetails = (SiteMinderResourceDetails) cache.retrieve(resourceCacheKey)) != null) {
+            if ((resourceDetails = (SiteMinderResourceDetails) cache.get(resourceCacheKey)) != null) {
                 //now check if the cached entry exceeded the max cached time then remove from cache
                 logger.log(Level.FINE, "Found resource cache entry: " + resourceCacheKey);
                 if (System.currentTimeMillis() - resourceDetails.getTimeStamp() <= resourceSubCache.getMaxAge()) {
@@ -93,7 +93,7 @@ public class SiteMinderHighLevelAgent {
                 resourceDetails = new SiteMinderResourceDetails(isProtected, context.getResContextDef(),
                         context.getRealmDef(), context.getAuthSchemes());
 
-                cache.store(resourceCacheKey, resourceDetails);
+                cache.put(resourceCacheKey, resourceDetails);
             }
         }
         //we are not caching anything
@@ -161,7 +161,7 @@ public class SiteMinderHighLevelAgent {
         AuthorizationCacheKey cacheKey = new AuthorizationCacheKey(sessionId, reqResource, action);
         final SiteMinderAgentContextCache agentCache = getCache(context.getConfig(), smAgentName);
         final AgentContextSubCache authzSubCache = agentCache.getSubCache(AgentContextSubCacheType.AGENT_CACHE_AUTHORIZATION);
-        final Cache authzCache = authzSubCache.getCache();
+        final SegmentedCache<Object,Object> authzCache = authzSubCache.getCache();
 
         //Perform Session Validation
         if (!validateDecodedSession(context.getSessionDef(), currentAgentTimeSeconds)) {
@@ -199,7 +199,7 @@ public class SiteMinderHighLevelAgent {
                 cacheKey = new AuthorizationCacheKey(sessionId, reqResource, action);  // recreate key because session ID should be different
 
                 // ensure caching context attributes other than ACO parameters
-                authzCache.store(cacheKey, new SiteMinderAuthResponseDetails(context.getSessionDef(), context.getNonAcoAttrList()));
+                authzCache.put(cacheKey, new SiteMinderAuthResponseDetails(context.getSessionDef(), context.getNonAcoAttrList()));
                 //set stored attribute list to avoid loosing the attributes
                 context.getAttrList().addAll(attrList);
             } else {
@@ -210,7 +210,7 @@ public class SiteMinderHighLevelAgent {
                     //recreate the cache entry with the new attribute list
                     logger.log(Level.FINE, "SiteMinder authorization - updating SiteMinder authorization cache for the key " + cacheKey);
                     SiteMinderAuthResponseDetails cacheEntry = new SiteMinderAuthResponseDetails(context.getSessionDef(), updatedAttributes);
-                    authzCache.store(cacheKey, cacheEntry);
+                    authzCache.put(cacheKey, cacheEntry);
                 } else if (status != SUCCESS) {
                     logger.log(Level.FINE, "SiteMinder authorization - unable to update attributes. Removing cache entry for the key " + cacheKey + " from the cache");
                     //remove from the cache if attribute update was unsuccessful
@@ -399,7 +399,7 @@ public class SiteMinderHighLevelAgent {
 
         final SiteMinderAgentContextCache agentCache = getCache(context.getConfig(), context.getResContextDef().getAgent());
         final AgentContextSubCache authnSubCache = agentCache.getSubCache(AgentContextSubCacheType.AGENT_CACHE_AUTHENTICATION);
-        final Cache authnCache = authnSubCache.getCache();
+        final SegmentedCache<Object,Object> authnCache = authnSubCache.getCache();
 
         //Obtain the AttributeList encase isAuthN was called before
         List<SiteMinderContext.Attribute> attrList = context.getAttrList();
@@ -465,7 +465,7 @@ public class SiteMinderHighLevelAgent {
                     context.getAttrList().addAll(attrList);//we might have some attributes from the contexts needs to be preserved
 
                     // ensure caching context attributes other than ACO parameters
-                    authnCache.store(cacheKey, new SiteMinderAuthResponseDetails(context.getSessionDef(), context.getNonAcoAttrList()));
+                    authnCache.put(cacheKey, new SiteMinderAuthResponseDetails(context.getSessionDef(), context.getNonAcoAttrList()));
                 } else {
                     List<SiteMinderContext.Attribute> updatedAttributes = new ArrayList<>();
                     //Ensure all attributes are updated
@@ -474,7 +474,7 @@ public class SiteMinderHighLevelAgent {
                         //recreate the cache entry with the new attribute list
                         logger.log(Level.FINE, "SiteMinder authentication - updating SiteMinder authorization cache for the key " + cacheKey);
                         SiteMinderAuthResponseDetails cacheEntry = new SiteMinderAuthResponseDetails(context.getSessionDef(), updatedAttributes);
-                        authnCache.store(cacheKey, cacheEntry);
+                        authnCache.put(cacheKey, cacheEntry);
                     } else if (status != SUCCESS) {
                         logger.log(Level.FINE, "SiteMinder authentication - unable to update attributes. Removing cache entry for the key " + cacheKey + " from the cache");
                         //remove from the cache
@@ -572,7 +572,7 @@ public class SiteMinderHighLevelAgent {
                     context.getSessionDef().setCurrentServerTime(currentAgentTimeSeconds);
 
                     // ensure caching context attributes other than ACO parameters
-                    authnCache.store(cacheKey, new SiteMinderAuthResponseDetails(context.getSessionDef(), context.getNonAcoAttrList()));
+                    authnCache.put(cacheKey, new SiteMinderAuthResponseDetails(context.getSessionDef(), context.getNonAcoAttrList()));
                 }
             }
         }
@@ -637,14 +637,14 @@ public class SiteMinderHighLevelAgent {
         SiteMinderAcoDetails acoDetails;
 
         if (acoSubCache.getMaxSize() > 0) {
-            final Cache cache = acoSubCache.getCache();
+            final SegmentedCache<Object,Object> cache = acoSubCache.getCache();
             final String cacheKey = context.getAcoName();
 
             acoDetails = getAcoCacheEntry(cache, cacheKey, acoSubCache.getMaxAge());
             if (acoDetails == null) {
                 acoDetails = new SiteMinderAcoDetails(context.getAcoName(),
                         agent.getAcoAttributes(smAgentName, context));
-                cache.store(cacheKey, acoDetails);
+                cache.put(cacheKey, acoDetails);
             }
         } else {
             acoDetails = new SiteMinderAcoDetails(context.getAcoName(),
@@ -654,9 +654,9 @@ public class SiteMinderHighLevelAgent {
         context.getAttrList().addAll(acoDetails.getAttrList());
     }
 
-    private SiteMinderAcoDetails getAcoCacheEntry(Cache cache, Object cacheKey, long entryMaxAge) {
+    private SiteMinderAcoDetails getAcoCacheEntry(SegmentedCache<Object,Object> cache, Object cacheKey, long entryMaxAge) {
         SiteMinderAcoDetails cachedAcoDetails =
-                (SiteMinderAcoDetails) cache.retrieve(cacheKey);
+                (SiteMinderAcoDetails) cache.get(cacheKey);
 
         if (null != cachedAcoDetails) {
             logger.log(Level.FINE, "Found SiteMinder ACO cache entry: " + cacheKey);
@@ -675,9 +675,9 @@ public class SiteMinderHighLevelAgent {
         return cachedAcoDetails;
     }
 
-    private SiteMinderAuthResponseDetails getAuthorizationCacheEntry(Cache cache, Object cacheKey, long entryMaxAge) {
+    private SiteMinderAuthResponseDetails getAuthorizationCacheEntry(SegmentedCache<Object,Object> cache, Object cacheKey, long entryMaxAge) {
         SiteMinderAuthResponseDetails cachedAuthResponseDetails =
-                (SiteMinderAuthResponseDetails) cache.retrieve(cacheKey);
+                (SiteMinderAuthResponseDetails) cache.get(cacheKey);
 
         if (null != cachedAuthResponseDetails) {
             logger.log(Level.FINE, "Found SiteMinder Authorization cache entry: " + cacheKey);
@@ -696,9 +696,9 @@ public class SiteMinderHighLevelAgent {
         return cachedAuthResponseDetails;
     }
 
-    private SiteMinderAuthResponseDetails getAuthenticationCacheEntry(Cache cache, Object cacheKey, long entryMaxAge) {
+    private SiteMinderAuthResponseDetails getAuthenticationCacheEntry(SegmentedCache<Object,Object> cache, Object cacheKey, long entryMaxAge) {
         SiteMinderAuthResponseDetails cachedAuthResponseDetails =
-                (SiteMinderAuthResponseDetails) cache.retrieve(cacheKey);
+                (SiteMinderAuthResponseDetails) cache.get(cacheKey);
 
         if (null != cachedAuthResponseDetails) {
             logger.log(Level.FINE, "Found SiteMinder Authentication cache entry: " + cacheKey);
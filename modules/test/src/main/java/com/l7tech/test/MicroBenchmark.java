@@ -0,0 +1,346 @@
+package com.l7tech.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
+
+/**
+ * The <code>MicroBenchmark</code> measures the latency and allocation of a
+ * single operation on the current thread.
+ * <p/>
+ * Each benchmark runs warm up iterations followed by a number of measured
+ * rounds, the fastest round is reported so that results are stable between
+ * runs. Allocation is measured per thread (where supported by the JVM) and
+ * garbage collection counts and times are recorded for the measured rounds.
+ * <p/>
+ * Results can be saved to a properties file and compared with a previously
+ * saved baseline to detect regressions between builds:
+ * <ul>
+ *   <li><code>com.l7tech.test.MicroBenchmark.output</code> - the file to save results to</li>
+ *   <li><code>com.l7tech.test.MicroBenchmark.baseline</code> - the baseline results file</li>
+ *   <li><code>com.l7tech.test.MicroBenchmark.tolerance</code> - the permitted regression (default 0.25 = 25%)</li>
+ *   <li><code>com.l7tech.test.MicroBenchmark.metrics</code> - the metrics to compare (default bytesPerOp)</li>
+ * </ul>
+ * <p/>
+ * Only allocation is compared by default, it does not depend on the hardware
+ * so a baseline recorded on one machine is valid for others. Latency
+ * (nsPerOp) should only be compared with a baseline from the same machine.
+ */
+public class MicroBenchmark {
+
+    //- PUBLIC
+
+    public static final String PROP_OUTPUT = MicroBenchmark.class.getName() + ".output";
+    public static final String PROP_BASELINE = MicroBenchmark.class.getName() + ".baseline";
+    public static final String PROP_TOLERANCE = MicroBenchmark.class.getName() + ".tolerance";
+    public static final String PROP_METRICS = MicroBenchmark.class.getName() + ".metrics";
+    public static final String METRIC_NANOS = "nsPerOp";
+    public static final String METRIC_BYTES = "bytesPerOp";
+
+    /**
+     * Create a benchmark with the given iteration counts.
+     *
+     * @param warmupIterations The number of unmeasured iterations to run first
+     * @param iterations The number of iterations in each measured round
+     * @param rounds The number of measured rounds
+     */
+    public MicroBenchmark( final int warmupIterations, final int iterations, final int rounds ) {
+        if ( warmupIterations < 0 || iterations < 1 || rounds < 1 ) throw new IllegalArgumentException();
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Run a benchmark.
+     *
+     * <p>The result of each operation is consumed so it cannot be optimized away.</p>
+     *
+     * @param name The name of the benchmark (used as the key for baseline results)
+     * @param operation The operation to measure
+     * @return The result
+     * @throws Exception If the operation fails
+     */
+    public Result run( final String name, final Callable<?> operation ) throws Exception {
+        for ( int i = 0; i < warmupIterations; i++ ) {
+            consume( operation.call() );
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        long gcCount = 0L;
+        long gcMillis = 0L;
+        for ( int round = 0; round < rounds; round++ ) {
+            final long startGcCount = gcCount();
+            final long startGcMillis = gcMillis();
+            final long startBytes = allocatedBytes();
+            final long start = System.nanoTime();
+            for ( int i = 0; i < iterations; i++ ) {
+                consume( operation.call() );
+            }
+            final long nanos = System.nanoTime() - start;
+            final long bytes = allocatedBytes() - startBytes;
+            gcCount += gcCount() - startGcCount;
+            gcMillis += gcMillis() - startGcMillis;
+
+            bestNanos = Math.min( bestNanos, nanos );
+            if ( startBytes >= 0L ) bestBytes = Math.min( bestBytes, bytes );
+        }
+
+        final Result result = new Result(
+                name,
+                (double) bestNanos / (double) iterations,
+                bestBytes == Long.MAX_VALUE ? -1.0 : (double) bestBytes / (double) iterations,
+                gcCount,
+                gcMillis );
+        synchronized ( results ) {
+            results.add( result );
+        }
+        logger.info( result.toString() );
+        return result;
+    }
+
+    /**
+     * @return The results for all benchmarks run so far
+     */
+    public List<Result> getResults() {
+        synchronized ( results ) {
+            return Collections.unmodifiableList( new ArrayList<Result>( results ) );
+        }
+    }
+
+    /**
+     * Save results to the configured output file and check for regressions against the configured baseline.
+     *
+     * @return The regressions, empty if none or if no baseline is configured
+     * @throws IOException If an error occurs reading or writing results, or if the configured baseline does not exist
+     */
+    public List<String> publish() throws IOException {
+        final String output = System.getProperty( PROP_OUTPUT );
+        if ( output != null ) {
+            save( new File( output ) );
+        }
+
+        final String baseline = System.getProperty( PROP_BASELINE );
+        if ( baseline != null ) {
+            final File baselineFile = new File( baseline );
+            if ( !baselineFile.isFile() ) throw new IOException( "Baseline results not found: " + baselineFile );
+            return compare(
+                    baselineFile,
+                    Double.parseDouble( System.getProperty( PROP_TOLERANCE, "0.25" ) ),
+                    System.getProperty( PROP_METRICS, METRIC_BYTES ).split( "\\s*,\\s*" ) );
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Save results to the given file, results for other benchmarks in the file are retained.
+     *
+     * @param file The file to save to
+     * @throws IOException If an error occurs
+     */
+    public void save( final File file ) throws IOException {
+        final Properties properties = load( file );
+        for ( final Result result : getResults() ) {
+            properties.setProperty( result.getName() + "." + METRIC_NANOS, String.valueOf( result.getNanosPerOperation() ) );
+            if ( result.getBytesPerOperation() >= 0.0 ) {
+                properties.setProperty( result.getName() + "." + METRIC_BYTES, String.valueOf( result.getBytesPerOperation() ) );
+            }
+        }
+
+        final OutputStream out = new FileOutputStream( file );
+        try {
+            properties.store( out, "Benchmark results" );
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Compare latency and allocation results with a baseline.
+     *
+     * @param file The baseline file
+     * @param tolerance The permitted increase in latency or allocation as a fraction of the baseline
+     * @return The regressions, empty if none
+     * @throws IOException If an error occurs
+     */
+    public List<String> compare( final File file, final double tolerance ) throws IOException {
+        return compare( file, tolerance, METRIC_NANOS, METRIC_BYTES );
+    }
+
+    /**
+     * Compare the given metrics with a baseline.
+     *
+     * @param file The baseline file
+     * @param tolerance The permitted increase as a fraction of the baseline
+     * @param metrics The metrics to compare (nsPerOp, bytesPerOp)
+     * @return The regressions, empty if none
+     * @throws IOException If an error occurs
+     */
+    public List<String> compare( final File file, final double tolerance, final String... metrics ) throws IOException {
+        final Properties baseline = load( file );
+        final List<String> regressions = new ArrayList<String>();
+        for ( final Result result : getResults() ) {
+            for ( final String metric : metrics ) {
+                if ( METRIC_NANOS.equals( metric ) ) {
+                    check( regressions, result.getName(), metric, baseline, result.getNanosPerOperation(), tolerance );
+                } else if ( METRIC_BYTES.equals( metric ) ) {
+                    check( regressions, result.getName(), metric, baseline, result.getBytesPerOperation(), tolerance );
+                } else {
+                    throw new IllegalArgumentException( "Unknown metric: " + metric );
+                }
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Result of a benchmark run.
+     */
+    public static final class Result {
+        private final String name;
+        private final double nanosPerOperation;
+        private final double bytesPerOperation;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Result( final String name,
+                final double nanosPerOperation,
+                final double bytesPerOperation,
+                final long gcCount,
+                final long gcMillis ) {
+            this.name = name;
+            this.nanosPerOperation = nanosPerOperation;
+            this.bytesPerOperation = bytesPerOperation;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The time per operation in the fastest round
+         */
+        public double getNanosPerOperation() {
+            return nanosPerOperation;
+        }
+
+        /**
+         * @return The bytes allocated per operation in the round with least allocation, -1 if not supported
+         */
+        public double getBytesPerOperation() {
+            return bytesPerOperation;
+        }
+
+        /**
+         * @return The number of garbage collections during all measured rounds
+         */
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        /**
+         * @return The garbage collection time during all measured rounds
+         */
+        public long getGcMillis() {
+            return gcMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s: %.1f ns/op (%.0f ops/s), %.0f B/op, %d GCs (%d ms)",
+                    name,
+                    nanosPerOperation,
+                    1000000000.0 / nanosPerOperation,
+                    bytesPerOperation,
+                    gcCount,
+                    gcMillis );
+        }
+    }
+
+    //- PRIVATE
+
+    private static final Logger logger = Logger.getLogger( MicroBenchmark.class.getName() );
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final int rounds;
+    private final List<Result> results = new ArrayList<Result>();
+
+    @SuppressWarnings({ "UnusedDeclaration" })
+    private volatile int sink;
+
+    private void consume( final Object value ) {
+        if ( value != null ) sink ^= System.identityHashCode( value );
+    }
+
+    private static void check( final List<String> regressions,
+                               final String name,
+                               final String metric,
+                               final Properties baseline,
+                               final double value,
+                               final double tolerance ) {
+        final String baselineValue = baseline.getProperty( name + "." + metric );
+        if ( baselineValue == null || value < 0.0 ) return;
+
+        final double limit = Double.parseDouble( baselineValue ) * (1.0 + tolerance);
+        if ( value > limit ) {
+            regressions.add( String.format( "%s %s %.1f exceeds baseline %s", name, metric, value, baselineValue ) );
+        }
+    }
+
+    private static Properties load( final File file ) throws IOException {
+        final Properties properties = new Properties();
+        if ( file.isFile() ) {
+            final InputStream in = new FileInputStream( file );
+            try {
+                properties.load( in );
+            } finally {
+                in.close();
+            }
+        }
+        return properties;
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if ( threadMXBean instanceof com.sun.management.ThreadMXBean ) {
+            final com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if ( allocationMXBean.isThreadAllocatedMemorySupported() && allocationMXBean.isThreadAllocatedMemoryEnabled() ) {
+                return allocationMXBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+            }
+        }
+        return -1L;
+    }
+
+    private static long gcCount() {
+        long count = 0L;
+        for ( final GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans() ) {
+            count += Math.max( 0L, gcBean.getCollectionCount() );
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0L;
+        for ( final GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans() ) {
+            millis += Math.max( 0L, gcBean.getCollectionTime() );
+        }
+        return millis;
+    }
+}
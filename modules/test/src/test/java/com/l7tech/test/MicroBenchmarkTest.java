@@ -0,0 +1,73 @@
+package com.l7tech.test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the micro benchmark harness.
+ */
+public class MicroBenchmarkTest {
+
+    @Test
+    public void testRun() throws Exception {
+        final AtomicInteger invocations = new AtomicInteger();
+        final MicroBenchmark benchmark = new MicroBenchmark( 10, 100, 3 );
+        final MicroBenchmark.Result result = benchmark.run( "test", new Callable<Object>() {
+            @Override
+            public Object call() {
+                invocations.incrementAndGet();
+                return new byte[1024];
+            }
+        } );
+
+        assertEquals( 310, invocations.get() );
+        assertEquals( "test", result.getName() );
+        assertTrue( result.getNanosPerOperation() > 0.0 );
+        if ( result.getBytesPerOperation() >= 0.0 ) {
+            assertTrue( "Allocation " + result.getBytesPerOperation(), result.getBytesPerOperation() >= 1024.0 );
+        }
+        assertEquals( 1, benchmark.getResults().size() );
+    }
+
+    @Test
+    public void testSaveAndCompare() throws Exception {
+        final File file = File.createTempFile( "benchmark", ".properties" );
+        try {
+            final MicroBenchmark benchmark = new MicroBenchmark( 0, 10, 1 );
+            benchmark.run( "fast", new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return null;
+                }
+            } );
+            benchmark.save( file );
+            assertTrue( benchmark.compare( file, 1000.0 ).isEmpty() );
+
+            final Properties baseline = new Properties();
+            baseline.setProperty( "fast.nsPerOp", "0.0001" );
+            baseline.setProperty( "other.nsPerOp", "1" );
+            final OutputStream out = new FileOutputStream( file );
+            try {
+                baseline.store( out, null );
+            } finally {
+                out.close();
+            }
+
+            final List<String> regressions = benchmark.compare( file, 0.25 );
+            assertEquals( 1, regressions.size() );
+            assertTrue( regressions.get( 0 ).startsWith( "fast nsPerOp" ) );
+            assertTrue( "Latency not compared", benchmark.compare( file, 0.25, MicroBenchmark.METRIC_BYTES ).isEmpty() );
+        } finally {
+            file.delete();
+        }
+    }
+}